@@ -85,7 +85,11 @@ public abstract class DataManipulationHelper {
       PreparedStatement ps = null;
       try {
          conn = connectionFactory.getConnection();
-         String sql = tableManipulation.getInsertRowSql();
+         // upserts don't fail on the entries already present in the store
+         String sql = tableManipulation.getUpsertRowSql();
+         if (sql == null) {
+            sql = tableManipulation.getInsertRowSql();
+         }
          ps = conn.prepareStatement(sql);
 
          int readCount = 0;
@@ -78,6 +78,11 @@ public class TableManipulation implements Cloneable {
    private String deleteAllRows;
    private String selectExpiredRowsSql;
    private String deleteExpiredRowsSql;
+   private String selectExpiredRowIdsSql;
+   private String deleteExpiredRowSql;
+   private String upsertRowSql;
+   private boolean upsertRowSqlInitialized;
+   private String selectMultipleRowsSql;
    private String loadSomeRowsSql;
    public DatabaseType databaseType;
    private String loadAllKeysBinarySql;
@@ -340,6 +345,103 @@ public class TableManipulation implements Cloneable {
       return deleteExpiredRowsSql;
    }
 
+   /**
+    * Returns the ids of the expired rows. Used together with {@link #getDeleteExpiredRowSql()} to purge the expired rows
+    * in batches of {@link #getBatchSize()} rows, rather than all of them within a single statement.
+    */
+   public String getSelectExpiredRowIdsSql() {
+      if (selectExpiredRowIdsSql == null) {
+         selectExpiredRowIdsSql = "SELECT " + idColumnName + " FROM " + getTableName() + " WHERE " + timestampColumnName + "< ? AND " + timestampColumnName + "> 0";
+      }
+      return selectExpiredRowIdsSql;
+   }
+
+   /**
+    * Deletes a row by id, provided it is still expired.
+    *
+    * @see #getSelectExpiredRowIdsSql()
+    */
+   public String getDeleteExpiredRowSql() {
+      if (deleteExpiredRowSql == null) {
+         deleteExpiredRowSql = "DELETE FROM " + getTableName() + " WHERE " + idColumnName + " = ? AND " + timestampColumnName + "< ? AND " + timestampColumnName + "> 0";
+      }
+      return deleteExpiredRowSql;
+   }
+
+   /**
+    * Returns a statement that inserts a row, or updates it if a row with the same id already exists, in a single round
+    * trip. The parameters are the same, and in the same order, as the ones of {@link #getInsertRowSql()} and {@link
+    * #getUpdateRowSql()}: data, timestamp and id.
+    *
+    * @return the upsert statement of the database, or null if the database type has none, or cannot be determined. In
+    *         this case callers should run {@link #getUpdateRowSql()} first, and {@link #getInsertRowSql()} if the
+    *         update did not find the row.
+    */
+   public String getUpsertRowSql() {
+      if (!upsertRowSqlInitialized) {
+         DatabaseType type = databaseType;
+         if (type == null) {
+            type = databaseType = guessDatabaseType();
+         }
+         if (type == null) {
+            log.info("Unable to detect database type, falling back to updating and inserting rows in separate statements.");
+         } else {
+            upsertRowSql = buildUpsertRowSql(type);
+         }
+         if (log.isTraceEnabled()) {
+            log.trace("Using upsert statement: '" + upsertRowSql + "'");
+         }
+         upsertRowSqlInitialized = true;
+      }
+      return upsertRowSql;
+   }
+
+   private String buildUpsertRowSql(DatabaseType type) {
+      switch (type) {
+         case MYSQL:
+            return String.format("INSERT INTO %1$s (%2$s, %3$s, %4$s) VALUES(?,?,?) ON DUPLICATE KEY UPDATE %2$s = VALUES(%2$s), %3$s = VALUES(%3$s)",
+                                 getTableName(), dataColumnName, timestampColumnName, idColumnName);
+         case POSTGRES:
+            return String.format("INSERT INTO %1$s (%2$s, %3$s, %4$s) VALUES(?,?,?) ON CONFLICT (%4$s) DO UPDATE SET %2$s = EXCLUDED.%2$s, %3$s = EXCLUDED.%3$s",
+                                 getTableName(), dataColumnName, timestampColumnName, idColumnName);
+         case H2:
+            return String.format("MERGE INTO %1$s (%2$s, %3$s, %4$s) KEY(%4$s) VALUES(?,?,?)",
+                                 getTableName(), dataColumnName, timestampColumnName, idColumnName);
+         case SQLITE:
+            return String.format("INSERT OR REPLACE INTO %1$s (%2$s, %3$s, %4$s) VALUES(?,?,?)",
+                                 getTableName(), dataColumnName, timestampColumnName, idColumnName);
+         case SQL_SERVER:
+            return String.format("MERGE %1$s WITH (HOLDLOCK) USING (VALUES (?, ?, ?)) AS tmp (%2$s, %3$s, %4$s) ON %1$s.%4$s = tmp.%4$s " +
+                                       "WHEN MATCHED THEN UPDATE SET %2$s = tmp.%2$s, %3$s = tmp.%3$s " +
+                                       "WHEN NOT MATCHED THEN INSERT (%2$s, %3$s, %4$s) VALUES (tmp.%2$s, tmp.%3$s, tmp.%4$s);",
+                                 getTableName(), dataColumnName, timestampColumnName, idColumnName);
+         default:
+            // Oracle and DB2 have MERGE too, but they don't accept untyped (LOB) parameters in its USING clause
+            return null;
+      }
+   }
+
+   /**
+    * Selects the id and data of the rows with the given ids, e.g. for loading several keys in a single round trip.
+    *
+    * @param idCount the number of ids, i.e. parameters, in the IN clause
+    */
+   public String getSelectMultipleRowsSql(int idCount) {
+      if (idCount == batchSize && selectMultipleRowsSql != null) {
+         return selectMultipleRowsSql;
+      }
+      StringBuilder sql = new StringBuilder("SELECT ").append(idColumnName).append(", ").append(dataColumnName)
+            .append(" FROM ").append(getTableName()).append(" WHERE ").append(idColumnName).append(" IN (");
+      for (int i = 0; i < idCount; i++) {
+         sql.append(i == 0 ? "?" : ",?");
+      }
+      String result = sql.append(")").toString();
+      if (idCount == batchSize) {
+         selectMultipleRowsSql = result;
+      }
+      return result;
+   }
+
    @Override
    public TableManipulation clone() {
       try {
@@ -409,8 +511,9 @@ public class TableManipulation implements Cloneable {
 
    /**
     * When doing repetitive DB inserts (e.g. on {@link org.infinispan.loaders.CacheStore#fromStream(java.io.ObjectInput)}
-    * this will be batched according to this parameter. This is an optional parameter, and if it is not specified it
-    * will be defaulted to {@link #DEFAULT_BATCH_SIZE}.
+    * this will be batched according to this parameter. The same limit applies to the batches of writes of transactions
+    * and bulk operations, to purging and to multi-key loads. This is an optional parameter, and if it is not specified
+    * it will be defaulted to {@link #DEFAULT_BATCH_SIZE}.
     */
    public int getBatchSize() {
       return batchSize;
@@ -421,6 +524,7 @@ public class TableManipulation implements Cloneable {
     */
    public void setBatchSize(int batchSize) {
       this.batchSize = batchSize;
+      this.selectMultipleRowsSql = null;
    }
 
    public void setCacheName(String cacheName) {
@@ -481,23 +585,7 @@ public class TableManipulation implements Cloneable {
 
    private DatabaseType getDatabaseType() {
       if (databaseType == null) {
-         // need to guess from the database type!
-         try {
-            String dbProduct = connectionFactory.getConnection().getMetaData().getDatabaseProductName();
-            databaseType = guessDatabaseType(dbProduct);
-         } catch (Exception e) {
-            log.debug("Unable to guess database type from JDBC metadata.", e);
-         }
-         if (databaseType == null) {
-            log.info("Unable to detect database type using connection metadata.  Attempting to guess on driver name.");
-         }
-         try {
-            String dbProduct = connectionFactory.getConnection().getMetaData().getDriverName();
-            databaseType = guessDatabaseType(dbProduct);
-         } catch (Exception e) {
-            log.debug("Unable to guess database type from JDBC driver name.", e);
-         }
-
+         databaseType = guessDatabaseType();
          if (databaseType == null) {
             throw new ConfigurationException("Unable to detect database type from JDBC driver name or connection metadata.  Please provide this manually using the 'databaseType' property in your configuration.  Supported database type strings are " + Arrays.toString(DatabaseType.values()));
          } else {
@@ -507,6 +595,34 @@ public class TableManipulation implements Cloneable {
       return databaseType;
    }
 
+   private DatabaseType guessDatabaseType() {
+      // need to guess from the database type!
+      DatabaseType type = null;
+      Connection connection = null;
+      try {
+         connection = connectionFactory.getConnection();
+         DatabaseMetaData metaData = connection.getMetaData();
+         try {
+            type = guessDatabaseType(metaData.getDatabaseProductName());
+         } catch (Exception e) {
+            log.debug("Unable to guess database type from JDBC metadata.", e);
+         }
+         if (type == null) {
+            log.info("Unable to detect database type using connection metadata.  Attempting to guess on driver name.");
+            try {
+               type = guessDatabaseType(metaData.getDriverName());
+            } catch (Exception e) {
+               log.debug("Unable to guess database type from JDBC driver name.", e);
+            }
+         }
+      } catch (Exception e) {
+         log.debug("Unable to read JDBC metadata.", e);
+      } finally {
+         if (connection != null) connectionFactory.releaseConnection(connection);
+      }
+      return type;
+   }
+
    private DatabaseType guessDatabaseType(String name) {
       DatabaseType type = null;
       if (name != null) {
@@ -38,6 +38,10 @@ import org.infinispan.util.logging.LogFactory;
 
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -149,6 +153,30 @@ public class JdbcMixedCacheStore extends AbstractCacheStore {
       getCacheStore(ed.getKey()).store(ed);
    }
 
+   @Override
+   public void storeAll(Collection<InternalCacheEntry> entries) throws CacheLoaderException {
+      if (entries == null || entries.isEmpty()) return;
+      List<InternalCacheEntry> stringKeyed = new ArrayList<InternalCacheEntry>();
+      List<InternalCacheEntry> bucketed = new ArrayList<InternalCacheEntry>();
+      for (InternalCacheEntry entry : entries) {
+         (getCacheStore(entry.getKey()) == stringBasedCacheStore ? stringKeyed : bucketed).add(entry);
+      }
+      stringBasedCacheStore.storeAll(stringKeyed);
+      binaryCacheStore.storeAll(bucketed);
+   }
+
+   @Override
+   public void removeAll(Set<Object> keys) throws CacheLoaderException {
+      if (keys == null || keys.isEmpty()) return;
+      Set<Object> stringKeyed = new HashSet<Object>();
+      Set<Object> bucketed = new HashSet<Object>();
+      for (Object key : keys) {
+         (getCacheStore(key) == stringBasedCacheStore ? stringKeyed : bucketed).add(key);
+      }
+      stringBasedCacheStore.removeAll(stringKeyed);
+      binaryCacheStore.removeAll(bucketed);
+   }
+
    public void fromStream(ObjectInput inputStream) throws CacheLoaderException {
       binaryCacheStore.fromStream(inputStream);
       stringBasedCacheStore.fromStream(inputStream);
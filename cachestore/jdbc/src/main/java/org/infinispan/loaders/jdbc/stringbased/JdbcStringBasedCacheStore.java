@@ -29,6 +29,9 @@ import org.infinispan.loaders.CacheLoaderConfig;
 import org.infinispan.loaders.CacheLoaderException;
 import org.infinispan.loaders.CacheLoaderMetadata;
 import org.infinispan.loaders.LockSupportCacheStore;
+import org.infinispan.loaders.modifications.Modification;
+import org.infinispan.loaders.modifications.Remove;
+import org.infinispan.loaders.modifications.Store;
 import org.infinispan.loaders.jdbc.DataManipulationHelper;
 import org.infinispan.loaders.jdbc.JdbcUtil;
 import org.infinispan.loaders.jdbc.TableManipulation;
@@ -48,6 +51,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -187,33 +200,16 @@ public class JdbcStringBasedCacheStore extends LockSupportCacheStore {
 
    @Override
    public void storeLockSafe(InternalCacheEntry ed, String lockingKey) throws CacheLoaderException {
-      InternalCacheEntry existingOne = readStoredEntry(ed, lockingKey);
-      String sql;
-      if (existingOne == null) {
-         sql = tableManipulation.getInsertRowSql();
-      } else {
-         sql = tableManipulation.getUpdateRowSql();
-      }
-      if (log.isTraceEnabled())
-         log.trace("Running sql '" + sql + "' on " + ed + ". Key string is '" + lockingKey + "'");
       Connection connection = null;
-      PreparedStatement ps = null;
-      ByteBuffer byteBuffer = null;
       try {
-         byteBuffer = JdbcUtil.marshall(getMarshaller(), ed.toInternalCacheValue());
          connection = connectionFactory.getConnection();
-         ps = connection.prepareStatement(sql);
-         ps.setBinaryStream(1, byteBuffer.getStream(), byteBuffer.getLength());
-         ps.setLong(2, ed.getExpiryTime());
-         ps.setString(3, lockingKey);
-         ps.executeUpdate();
+         storeRows(connection, Collections.singletonMap(lockingKey, ed));
       } catch (SQLException ex) {
-         logAndThrow(ex, "Error while storing string key to database; key: '" + lockingKey + "', buffer size of value: " + byteBuffer.getLength() + " bytes");
+         logAndThrow(ex, "Error while storing string key to database; key: '" + lockingKey + "'");
       } catch (InterruptedException e) {
          if (log.isTraceEnabled()) log.trace("Interrupted while marshalling to store");
          Thread.currentThread().interrupt();
       } finally {
-         JdbcUtil.safeClose(ps);
          connectionFactory.releaseConnection(connection);
       }
    }
@@ -269,22 +265,58 @@ public class JdbcStringBasedCacheStore extends LockSupportCacheStore {
       return dmHelper.loadAllKeysSupport(keysToExclude);
    }
 
+   /**
+    * Deletes the expired rows in batches of {@link TableManipulation#getBatchSize()} rows, so that purging a large
+    * number of rows doesn't end up in a single, long running, statement and transaction.
+    */
    @Override
    public void purgeInternal() throws CacheLoaderException {
       Connection conn = null;
-      PreparedStatement ps = null;
+      PreparedStatement select = null;
+      PreparedStatement delete = null;
+      ResultSet rs = null;
       try {
-         String sql = tableManipulation.getDeleteExpiredRowsSql();
+         long now = System.currentTimeMillis();
+         int batchSize = tableManipulation.getBatchSize();
          conn = connectionFactory.getConnection();
-         ps = conn.prepareStatement(sql);
-         ps.setLong(1, System.currentTimeMillis());
-         int result = ps.executeUpdate();
+         select = conn.prepareStatement(tableManipulation.getSelectExpiredRowIdsSql());
+         select.setMaxRows(batchSize);
+         select.setLong(1, now);
+         delete = conn.prepareStatement(tableManipulation.getDeleteExpiredRowSql());
+         List<String> ids = new ArrayList<String>(batchSize);
+         int result = 0;
+         boolean progress;
+         do {
+            ids.clear();
+            rs = select.executeQuery();
+            while (rs.next()) {
+               ids.add(rs.getString(1));
+            }
+            JdbcUtil.safeClose(rs);
+            rs = null;
+            if (ids.isEmpty()) break;
+            for (String id : ids) {
+               delete.setString(1, id);
+               delete.setLong(2, now);
+               delete.setLong(3, now);
+               delete.addBatch();
+            }
+            // rows found expired are only left in place if they were updated in the meantime, in which case they
+            // won't be selected again; stop anyway if the driver says nothing was deleted, so as to never spin
+            progress = false;
+            for (int count : delete.executeBatch()) {
+               if (count != 0) progress = true;
+               if (count > 0) result += count;
+            }
+         } while (progress && ids.size() == batchSize);
          if (log.isTraceEnabled())
             log.trace("Successfully purged " + result + " rows.");
       } catch (SQLException ex) {
-         logAndThrow(ex, "Failed purging JdbcBinaryCacheStore");
+         logAndThrow(ex, "Failed purging JdbcStringBasedCacheStore");
       } finally {
-         JdbcUtil.safeClose(ps);
+         JdbcUtil.safeClose(rs);
+         JdbcUtil.safeClose(select);
+         JdbcUtil.safeClose(delete);
          connectionFactory.releaseConnection(conn);
       }
    }
@@ -306,6 +338,246 @@ public class JdbcStringBasedCacheStore extends LockSupportCacheStore {
       return JdbcStringBasedCacheStoreConfig.class;
    }
 
+   /**
+    * Applies the modifications of a transaction in JDBC batches on a single connection, rather than one statement on
+    * its own connection per modification. Modifications of the same key are coalesced, only the last one is written.
+    */
+   @Override
+   protected void applyModifications(List<? extends Modification> mods) throws CacheLoaderException {
+      Map<String, InternalCacheEntry> toStore = new LinkedHashMap<String, InternalCacheEntry>();
+      Set<String> toRemove = new HashSet<String>();
+      for (Modification m : mods) {
+         switch (m.getType()) {
+            case STORE:
+               addStore(((Store) m).getStoredEntry(), toStore, toRemove);
+               break;
+            case CLEAR:
+               // overrides all the preceding modifications
+               toStore.clear();
+               toRemove.clear();
+               clear();
+               break;
+            case REMOVE:
+               String keyStr = getLockFromKey(((Remove) m).getKey());
+               toStore.remove(keyStr);
+               toRemove.add(keyStr);
+               break;
+            default:
+               throw new IllegalArgumentException("Unknown modification type " + m.getType());
+         }
+      }
+      writeRows(toStore, toRemove);
+   }
+
+   @Override
+   public void storeAll(Collection<InternalCacheEntry> entries) throws CacheLoaderException {
+      if (entries == null || entries.isEmpty()) return;
+      Map<String, InternalCacheEntry> toStore = new LinkedHashMap<String, InternalCacheEntry>();
+      Set<String> toRemove = new HashSet<String>();
+      for (InternalCacheEntry entry : entries) {
+         addStore(entry, toStore, toRemove);
+      }
+      writeRows(toStore, toRemove);
+   }
+
+   @Override
+   public void removeAll(Set<Object> keys) throws CacheLoaderException {
+      if (keys == null || keys.isEmpty()) return;
+      Set<String> toRemove = new HashSet<String>();
+      for (Object key : keys) {
+         toRemove.add(getLockFromKey(key));
+      }
+      writeRows(Collections.<String, InternalCacheEntry>emptyMap(), toRemove);
+   }
+
+   /**
+    * Loads the entries of several keys at once, with a query per {@link TableManipulation#getBatchSize()} keys.
+    *
+    * @return the entries found in the store and not yet expired, mapped by key
+    */
+   public Map<Object, InternalCacheEntry> load(Collection<Object> keys) throws CacheLoaderException {
+      Map<String, Object> keysByString = new HashMap<String, Object>();
+      for (Object key : keys) {
+         keysByString.put(getLockFromKey(key), key);
+      }
+      Map<Object, InternalCacheEntry> result = new HashMap<Object, InternalCacheEntry>();
+      if (keysByString.isEmpty()) return result;
+      Set<String> lockingKeys = keysByString.keySet();
+      lockAllForReading(lockingKeys);
+      Connection conn = null;
+      PreparedStatement ps = null;
+      ResultSet rs = null;
+      try {
+         conn = connectionFactory.getConnection();
+         List<String> ids = new ArrayList<String>(lockingKeys);
+         int batchSize = tableManipulation.getBatchSize();
+         for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            ps = conn.prepareStatement(tableManipulation.getSelectMultipleRowsSql(batch.size()));
+            for (int i = 0; i < batch.size(); i++) {
+               ps.setString(i + 1, batch.get(i));
+            }
+            rs = ps.executeQuery();
+            while (rs.next()) {
+               Object key = keysByString.get(rs.getString(1));
+               InputStream inputStream = rs.getBinaryStream(2);
+               InternalCacheValue icv = (InternalCacheValue) JdbcUtil.unmarshall(getMarshaller(), inputStream);
+               if (key != null && !icv.isExpired()) {
+                  result.put(key, icv.toInternalCacheEntry(key));
+               }
+            }
+            JdbcUtil.safeClose(rs);
+            rs = null;
+            JdbcUtil.safeClose(ps);
+            ps = null;
+         }
+      } catch (SQLException e) {
+         logAndThrow(e, "SQL error while fetching the stored entries of " + keys.size() + " keys");
+      } finally {
+         JdbcUtil.safeClose(rs);
+         JdbcUtil.safeClose(ps);
+         connectionFactory.releaseConnection(conn);
+         unlockAll(lockingKeys, false);
+      }
+      return result;
+   }
+
+   private void addStore(InternalCacheEntry entry, Map<String, InternalCacheEntry> toStore, Set<String> toRemove) throws CacheLoaderException {
+      if (entry == null) return;
+      String keyStr = getLockFromKey(entry.getKey());
+      if (entry.isExpired()) {
+         // same as store(), an expired entry is just removed
+         toStore.remove(keyStr);
+         toRemove.add(keyStr);
+      } else {
+         toRemove.remove(keyStr);
+         toStore.put(keyStr, entry);
+      }
+   }
+
+   /**
+    * Deletes and stores the given rows on a single connection, holding the write locks of all their keys.
+    */
+   private void writeRows(Map<String, InternalCacheEntry> toStore, Set<String> toRemove) throws CacheLoaderException {
+      if (toStore.isEmpty() && toRemove.isEmpty()) return;
+      Set<String> lockingKeys = new HashSet<String>(toStore.keySet());
+      lockingKeys.addAll(toRemove);
+      lockAllForWriting(lockingKeys);
+      Connection connection = null;
+      try {
+         connection = connectionFactory.getConnection();
+         if (!toRemove.isEmpty()) {
+            List<Row> rows = new ArrayList<Row>(toRemove.size());
+            for (String keyStr : toRemove) {
+               rows.add(new Row(keyStr, null, 0));
+            }
+            executeBatches(connection, tableManipulation.getDeleteRowSql(), rows);
+         }
+         storeRows(connection, toStore);
+      } catch (SQLException ex) {
+         logAndThrow(ex, "Error while storing " + toStore.size() + " and removing " + toRemove.size() + " string keys");
+      } catch (InterruptedException e) {
+         if (log.isTraceEnabled()) log.trace("Interrupted while marshalling to store");
+         Thread.currentThread().interrupt();
+      } finally {
+         connectionFactory.releaseConnection(connection);
+         unlockAll(lockingKeys, true);
+      }
+   }
+
+   /**
+    * Stores the given entries, mapped by their key strings, with an upsert per entry if the database has one. If not,
+    * the entries are updated first, and the ones the update didn't find a row for are inserted: either way the
+    * existing rows are never read back.  Drivers may not report the update count of each statement of a batch, in
+    * which case the rows with an unknown count are updated again one at a time.
+    */
+   private void storeRows(Connection connection, Map<String, InternalCacheEntry> entries) throws SQLException, CacheLoaderException, InterruptedException {
+      if (entries.isEmpty()) return;
+      List<Row> rows = new ArrayList<Row>(entries.size());
+      for (Map.Entry<String, InternalCacheEntry> e : entries.entrySet()) {
+         InternalCacheEntry ice = e.getValue();
+         rows.add(new Row(e.getKey(), JdbcUtil.marshall(getMarshaller(), ice.toInternalCacheValue()), ice.getExpiryTime()));
+      }
+      String upsertSql = tableManipulation.getUpsertRowSql();
+      if (upsertSql != null) {
+         executeBatches(connection, upsertSql, rows);
+      } else {
+         String updateSql = tableManipulation.getUpdateRowSql();
+         int[] updated = executeBatches(connection, updateSql, rows);
+         List<Row> toInsert = new ArrayList<Row>();
+         List<Row> unknown = new ArrayList<Row>();
+         for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) toInsert.add(rows.get(i));
+            else if (updated[i] < 0) unknown.add(rows.get(i));
+         }
+         if (!unknown.isEmpty()) {
+            if (log.isTraceEnabled()) log.trace("Update count unknown for " + unknown.size() + " rows, updating them one at a time");
+            int[] counts = executeEach(connection, updateSql, unknown);
+            for (int i = 0; i < counts.length; i++) {
+               if (counts[i] == 0) toInsert.add(unknown.get(i));
+            }
+         }
+         executeBatches(connection, tableManipulation.getInsertRowSql(), toInsert);
+      }
+   }
+
+   /**
+    * Runs the statement for each of the rows, in batches of {@link TableManipulation#getBatchSize()} statements.
+    *
+    * @return the update counts, in the order of the rows, {@link Statement#SUCCESS_NO_INFO} for the rows the driver
+    *         did not report a count for
+    */
+   private int[] executeBatches(Connection connection, String sql, List<Row> rows) throws SQLException {
+      int[] counts = new int[rows.size()];
+      if (rows.isEmpty()) return counts;
+      Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+      if (log.isTraceEnabled()) log.trace("Running sql '" + sql + "' on " + rows.size() + " rows");
+      PreparedStatement ps = null;
+      try {
+         ps = connection.prepareStatement(sql);
+         if (rows.size() == 1) {
+            rows.get(0).bind(ps);
+            counts[0] = ps.executeUpdate();
+            return counts;
+         }
+         int batchSize = tableManipulation.getBatchSize();
+         int batchStart = 0;
+         for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).bind(ps);
+            ps.addBatch();
+            if (i + 1 - batchStart == batchSize || i == rows.size() - 1) {
+               int[] batchCounts = ps.executeBatch();
+               System.arraycopy(batchCounts, 0, counts, batchStart, Math.min(batchCounts.length, i + 1 - batchStart));
+               batchStart = i + 1;
+            }
+         }
+         return counts;
+      } finally {
+         JdbcUtil.safeClose(ps);
+      }
+   }
+
+
+   /**
+    * Runs the statement for each of the rows, one at a time.
+    *
+    * @return the update counts, in the order of the rows
+    */
+   private int[] executeEach(Connection connection, String sql, List<Row> rows) throws SQLException {
+      int[] counts = new int[rows.size()];
+      PreparedStatement ps = null;
+      try {
+         ps = connection.prepareStatement(sql);
+         for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).bind(ps);
+            counts[i] = ps.executeUpdate();
+         }
+         return counts;
+      } finally {
+         JdbcUtil.safeClose(ps);
+      }
+   }
+
    protected void logAndThrow(Exception e, String message) throws CacheLoaderException {
       log.error(message, e);
       throw new CacheLoaderException(message, e);
@@ -381,5 +653,31 @@ public class JdbcStringBasedCacheStore extends LockSupportCacheStore {
          connectionFactory.releaseConnection(conn);
       }
       return storedEntry;
-   }   
+   }
+
+   /**
+    * The parameters of a row statement: data, timestamp and id for inserts, updates and upserts, only the id for
+    * deletes.
+    */
+   private static final class Row {
+      final String keyStr;
+      final ByteBuffer value;
+      final long expiryTime;
+
+      Row(String keyStr, ByteBuffer value, long expiryTime) {
+         this.keyStr = keyStr;
+         this.value = value;
+         this.expiryTime = expiryTime;
+      }
+
+      void bind(PreparedStatement ps) throws SQLException {
+         if (value == null) {
+            ps.setString(1, keyStr);
+         } else {
+            ps.setBinaryStream(1, value.getStream(), value.getLength());
+            ps.setLong(2, expiryTime);
+            ps.setString(3, keyStr);
+         }
+      }
+   }
 }
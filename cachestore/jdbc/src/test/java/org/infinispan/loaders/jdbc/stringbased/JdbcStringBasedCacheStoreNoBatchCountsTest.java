@@ -0,0 +1,61 @@
+package org.infinispan.loaders.jdbc.stringbased;
+
+import org.infinispan.loaders.CacheLoaderException;
+import org.infinispan.loaders.jdbc.connectionfactory.SimpleConnectionFactory;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * JdbcStringBasedCacheStoreNoUpsertTest with a driver that reports {@link Statement#SUCCESS_NO_INFO} for every
+ * statement of a batch, as some Oracle and DB2 drivers do, so that the rows to insert cannot be told apart from the
+ * updated ones by the batch update counts.
+ *
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "loaders.jdbc.stringbased.JdbcStringBasedCacheStoreNoBatchCountsTest")
+public class JdbcStringBasedCacheStoreNoBatchCountsTest extends JdbcStringBasedCacheStoreNoUpsertTest {
+   @Override
+   protected void configure(JdbcStringBasedCacheStoreConfig config) {
+      super.configure(config);
+      config.setConnectionFactoryClass(NoBatchCountsConnectionFactory.class.getName());
+   }
+
+   public static class NoBatchCountsConnectionFactory extends SimpleConnectionFactory {
+      @Override
+      public Connection getConnection() throws CacheLoaderException {
+         final Connection connection = super.getConnection();
+         return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+               Object result = invokeOn(connection, method, args);
+               return method.getName().equals("prepareStatement") ? noBatchCounts((PreparedStatement) result) : result;
+            }
+         });
+      }
+
+      private static PreparedStatement noBatchCounts(final PreparedStatement ps) {
+         return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class[]{PreparedStatement.class}, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+               Object result = invokeOn(ps, method, args);
+               if (method.getName().equals("executeBatch")) Arrays.fill((int[]) result, Statement.SUCCESS_NO_INFO);
+               return result;
+            }
+         });
+      }
+
+      private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+         try {
+            return method.invoke(target, args);
+         } catch (InvocationTargetException e) {
+            throw e.getCause();
+         }
+      }
+   }
+}
@@ -22,8 +22,14 @@
 package org.infinispan.loaders.jdbc.stringbased;
 
 import static org.easymock.classextension.EasyMock.*;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.container.entries.InternalEntryFactory;
 import org.infinispan.loaders.BaseCacheStoreTest;
 import org.infinispan.loaders.CacheStore;
+import org.infinispan.loaders.modifications.Clear;
+import org.infinispan.loaders.modifications.Modification;
+import org.infinispan.loaders.modifications.Remove;
+import org.infinispan.loaders.modifications.Store;
 import org.infinispan.loaders.jdbc.TableManipulation;
 import org.infinispan.loaders.jdbc.connectionfactory.ConnectionFactory;
 import org.infinispan.loaders.jdbc.connectionfactory.ConnectionFactoryConfig;
@@ -31,6 +37,12 @@ import org.infinispan.test.fwk.UnitTestDatabaseManager;
 import org.infinispan.CacheDelegate;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * Tester class  for {@link org.infinispan.loaders.jdbc.stringbased.JdbcStringBasedCacheStore}.
  *
@@ -43,6 +55,7 @@ public class JdbcStringBasedCacheStoreTest extends BaseCacheStoreTest {
       ConnectionFactoryConfig connectionFactoryConfig = UnitTestDatabaseManager.getUniqueConnectionFactoryConfig();
       TableManipulation tm = UnitTestDatabaseManager.buildDefaultTableManipulation();
       JdbcStringBasedCacheStoreConfig config = new JdbcStringBasedCacheStoreConfig(connectionFactoryConfig, tm);
+      configure(config);
       JdbcStringBasedCacheStore stringBasedCacheStore = new JdbcStringBasedCacheStore();
       CacheDelegate cache = new CacheDelegate("aName");
       stringBasedCacheStore.init(config, cache, getMarshaller());
@@ -50,6 +63,79 @@ public class JdbcStringBasedCacheStoreTest extends BaseCacheStoreTest {
       return stringBasedCacheStore;
    }
 
+   protected void configure(JdbcStringBasedCacheStoreConfig config) {
+   }
+
+   public void testStoreAllAndLoadMultipleKeys() throws Exception {
+      JdbcStringBasedCacheStore store = (JdbcStringBasedCacheStore) cs;
+      List<InternalCacheEntry> entries = new ArrayList<InternalCacheEntry>();
+      Set<Object> keys = new HashSet<Object>();
+      for (int i = 0; i < 250; i++) {
+         entries.add(InternalEntryFactory.create("k" + i, "v" + i));
+         keys.add("k" + i);
+      }
+      cs.storeAll(entries);
+      keys.add("missing");
+      Map<Object, InternalCacheEntry> loaded = store.load(keys);
+      assert loaded.size() == 250 : "Expected 250 entries, loaded " + loaded.size();
+      for (int i = 0; i < 250; i++) {
+         assert loaded.get("k" + i).getValue().equals("v" + i);
+      }
+
+      // overwrite some, remove some others
+      entries.clear();
+      Set<Object> removed = new HashSet<Object>();
+      for (int i = 0; i < 250; i++) {
+         if (i % 2 == 0) entries.add(InternalEntryFactory.create("k" + i, "v" + i + "-2"));
+         else if (i % 3 == 0) removed.add("k" + i);
+      }
+      cs.storeAll(entries);
+      cs.removeAll(removed);
+      loaded = store.load(keys);
+      for (int i = 0; i < 250; i++) {
+         InternalCacheEntry entry = loaded.get("k" + i);
+         if (i % 2 == 0) assert entry.getValue().equals("v" + i + "-2");
+         else if (i % 3 == 0) assert entry == null;
+         else assert entry.getValue().equals("v" + i);
+      }
+   }
+
+   public void testPrepareCoalescesModifications() throws Exception {
+      cs.store(InternalEntryFactory.create("k0", "v0"));
+      cs.store(InternalEntryFactory.create("k1", "v1"));
+      List<Modification> mods = new ArrayList<Modification>();
+      mods.add(new Store(InternalEntryFactory.create("k2", "v2")));
+      mods.add(new Clear());
+      for (int i = 0; i < 150; i++) {
+         mods.add(new Store(InternalEntryFactory.create("k" + i, "v" + i)));
+      }
+      mods.add(new Remove("k3"));
+      mods.add(new Store(InternalEntryFactory.create("k4", "v4-2")));
+      mods.add(new Remove("k5"));
+      mods.add(new Store(InternalEntryFactory.create("k5", "v5-2")));
+      cs.prepare(mods, gtf.newGlobalTransaction(null, false), true);
+
+      assert cs.loadAll().size() == 149;
+      assert cs.load("k3") == null;
+      assert cs.load("k4").getValue().equals("v4-2");
+      assert cs.load("k5").getValue().equals("v5-2");
+      assert cs.load("k149").getValue().equals("v149");
+   }
+
+   public void testPurgeInBatches() throws Exception {
+      JdbcStringBasedCacheStore store = (JdbcStringBasedCacheStore) cs;
+      for (int i = 0; i < 250; i++) {
+         cs.store(InternalEntryFactory.create("expiring" + i, "v", 100));
+      }
+      cs.store(InternalEntryFactory.create("immortal", "v"));
+      cs.store(InternalEntryFactory.create("mortal", "v", 60000));
+      Thread.sleep(200);
+      store.purgeInternal();
+      assert UnitTestDatabaseManager.rowCount(store.getConnectionFactory(), store.getTableManipulation().getTableName()) == 2;
+      assert cs.containsKey("immortal");
+      assert cs.containsKey("mortal");
+   }
+
    public void testNotCreateConnectionFactory() throws Exception {
       JdbcStringBasedCacheStore stringBasedCacheStore = new JdbcStringBasedCacheStore();
       JdbcStringBasedCacheStoreConfig config = new JdbcStringBasedCacheStoreConfig(false);
@@ -0,0 +1,125 @@
+package org.infinispan.loaders.jdbc.stringbased;
+
+import org.infinispan.CacheDelegate;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.container.entries.InternalEntryFactory;
+import org.infinispan.loaders.CacheLoaderException;
+import org.infinispan.loaders.jdbc.DatabaseType;
+import org.infinispan.loaders.jdbc.TableManipulation;
+import org.infinispan.loaders.modifications.Modification;
+import org.infinispan.loaders.modifications.Store;
+import org.infinispan.marshall.TestObjectStreamMarshaller;
+import org.infinispan.test.fwk.UnitTestDatabaseManager;
+import org.infinispan.transaction.xa.TransactionFactory;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the write throughput of {@link JdbcStringBasedCacheStore} per write mode: a read of the existing row
+ * followed by a store per entry (the cost of a store before upserts), a store per entry, bulk stores and one phase
+ * transactional prepares, each with an upsert statement (H2's MERGE) and without (the UPDATE then INSERT fallback used
+ * for Derby).
+ *
+ * @since 5.0
+ */
+@Test(testName = "loaders.jdbc.stringbased.JdbcStringBasedCacheStoreThroughputTest", groups = "profiling", enabled = false, description = "Disabled by default, designed to be run manually.")
+public class JdbcStringBasedCacheStoreThroughputTest {
+
+   final int NUM_KEYS = 10000;
+   final int LOOPS = 3;
+   final int BATCH = 100;
+   final int VALUE_SIZE = 256;
+
+   private final TransactionFactory gtf = new TransactionFactory();
+
+   public void testWithUpsert() throws Exception {
+      doTest(DatabaseType.H2);
+   }
+
+   public void testWithoutUpsert() throws Exception {
+      doTest(DatabaseType.DERBY);
+   }
+
+   private void doTest(DatabaseType databaseType) throws Exception {
+      JdbcStringBasedCacheStore store = createStore(databaseType);
+      try {
+         System.out.println("Performance for " + databaseType + " statements, batch size " + BATCH);
+         for (int loop = 0; loop < LOOPS; loop++) {
+            store.clear();
+            report("load and store", loop, loadAndStore(store));
+            report("store", loop, store(store));
+            report("storeAll", loop, storeAll(store));
+            report("prepare", loop, prepare(store));
+         }
+      } finally {
+         store.stop();
+      }
+   }
+
+   private long loadAndStore(JdbcStringBasedCacheStore store) throws CacheLoaderException {
+      long start = System.nanoTime();
+      for (int i = 0; i < NUM_KEYS; i++) {
+         InternalCacheEntry entry = entry(i);
+         store.load(entry.getKey());
+         store.store(entry);
+      }
+      return System.nanoTime() - start;
+   }
+
+   private long store(JdbcStringBasedCacheStore store) throws CacheLoaderException {
+      long start = System.nanoTime();
+      for (int i = 0; i < NUM_KEYS; i++) {
+         store.store(entry(i));
+      }
+      return System.nanoTime() - start;
+   }
+
+   private long storeAll(JdbcStringBasedCacheStore store) throws CacheLoaderException {
+      long start = System.nanoTime();
+      List<InternalCacheEntry> entries = new ArrayList<InternalCacheEntry>(BATCH);
+      for (int i = 0; i < NUM_KEYS; i++) {
+         entries.add(entry(i));
+         if (entries.size() == BATCH) {
+            store.storeAll(entries);
+            entries.clear();
+         }
+      }
+      store.storeAll(entries);
+      return System.nanoTime() - start;
+   }
+
+   private long prepare(JdbcStringBasedCacheStore store) throws CacheLoaderException {
+      long start = System.nanoTime();
+      List<Modification> mods = new ArrayList<Modification>(BATCH);
+      for (int i = 0; i < NUM_KEYS; i++) {
+         mods.add(new Store(entry(i)));
+         if (mods.size() == BATCH || i == NUM_KEYS - 1) {
+            store.prepare(mods, gtf.newGlobalTransaction(null, false), true);
+            mods.clear();
+         }
+      }
+      return System.nanoTime() - start;
+   }
+
+   private InternalCacheEntry entry(int i) {
+      return InternalEntryFactory.create("key" + i, new byte[VALUE_SIZE]);
+   }
+
+   private void report(String mode, int loop, long nanos) {
+      System.out.println("  loop " + loop + ", " + mode + ": " + (NUM_KEYS * 1000000000L / nanos) + " entries/s");
+   }
+
+   private JdbcStringBasedCacheStore createStore(DatabaseType databaseType) throws CacheLoaderException {
+      TableManipulation tm = UnitTestDatabaseManager.buildDefaultTableManipulation();
+      JdbcStringBasedCacheStoreConfig config = new JdbcStringBasedCacheStoreConfig(UnitTestDatabaseManager.getUniqueConnectionFactoryConfig(), tm);
+      config.setDatabaseType(databaseType.toString());
+      config.setBatchSize(BATCH);
+      config.setPurgeSynchronously(true);
+      JdbcStringBasedCacheStore store = new JdbcStringBasedCacheStore();
+      store.init(config, new CacheDelegate("throughput"), new TestObjectStreamMarshaller());
+      store.start();
+      return store;
+   }
+}
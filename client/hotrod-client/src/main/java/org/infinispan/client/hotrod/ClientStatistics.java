@@ -0,0 +1,64 @@
+package org.infinispan.client.hotrod;
+
+import java.util.Map;
+
+/**
+ * Defines the possible list of statistics gathered by the Hot Rod client itself, as opposed to the ones of the {@link
+ * ServerStatistics}. The near cache statistics can be obtained through {@link RemoteCache#clientStatistics()}, and
+ * the statistics of the requests sent to each server through {@link RemoteCacheManager#getServerStatistics()}
+ *
+ * @since 5.0
+ */
+public interface ClientStatistics {
+
+   /**
+    * Number of gets served by the near cache.
+    */
+   public static final String NEAR_CACHE_HITS = "nearCacheHits";
+
+   /**
+    * Number of gets the near cache could not serve, and which were sent to the servers.
+    */
+   public static final String NEAR_CACHE_MISSES = "nearCacheMisses";
+
+   /**
+    * Ratio of the gets served by the near cache, between 0 and 1.
+    */
+   public static final String NEAR_CACHE_HIT_RATIO = "nearCacheHitRatio";
+
+   /**
+    * Number of keys invalidated in the near cache, because they were modified or removed.
+    */
+   public static final String NEAR_CACHE_INVALIDATIONS = "nearCacheInvalidations";
+
+   /**
+    * Number of entries currently in the near cache.
+    */
+   public static final String NEAR_CACHE_SIZE = "nearCacheSize";
+
+   /**
+    * Number of requests sent to the server.
+    */
+   public static final String SERVER_REQUESTS = "serverRequests";
+
+   /**
+    * Number of requests sent to the server which failed because of connection problems.
+    */
+   public static final String SERVER_FAILED_REQUESTS = "serverFailedRequests";
+
+   /**
+    * Number of requests sent to the server which have not been responded to yet.
+    */
+   public static final String SERVER_REQUESTS_IN_FLIGHT = "serverRequestsInFlight";
+
+   /**
+    * Moving average of the response times of the server, in microseconds.
+    */
+   public static final String SERVER_AVERAGE_RESPONSE_TIME = "serverAverageResponseTime";
+
+   public Map<String, String> getStatsMap();
+
+   public String getStatistic(String statsName);
+
+   public Integer getIntStatistic(String statsName);
+}
@@ -25,10 +25,10 @@ import java.util.concurrent.TimeUnit;
  * is returned instead. E.g. {@link java.util.Map#put(Object, Object)} returns the previous value associated to the
  * supplied key. In case of RemoteCache, this returns null.
  * <p/>
- * <b>Synthetic operations</b>: aggregate operations are being implemented based on other Hot Rod operations. E.g. all
- * the {@link java.util.Map#putAll(java.util.Map)} is implemented through multiple individual puts. This means that the
- * these operations are not atomic and that they are costly, e.g. as the number of network round-trips is not one, but
- * the size of the added map. All these synthetic operations are documented as such.
+ * <b>Synthetic operations</b>: aggregate operations are being implemented based on other Hot Rod operations. E.g. the
+ * {@link java.util.Map#putAll(java.util.Map)} is implemented through a put all request per server owning some of the
+ * added entries. This means that these operations are not atomic across servers, and that the number of network
+ * round-trips is not one, but the number of servers involved. All these synthetic operations are documented as such.
  * <p/>
  * <b>changing default behavior through {@link org.infinispan.client.hotrod.Flag}s</b>: it is possible to change the
  * default cache behaviour by using flags on an per invocation basis. E.g.
@@ -338,6 +338,11 @@ public interface RemoteCache<K, V> extends Cache<K, V> {
 
    ServerStatistics stats();
 
+   /**
+    * Returns the statistics gathered by this client, such as the hit ratio of its near cache.
+    */
+   ClientStatistics clientStatistics();
+
    /**
     * Applies one or more {@link Flag}s to the scope of a single invocation.  See the {@link Flag} enumeration to for
     * information on available flags.
@@ -370,4 +375,12 @@ public interface RemoteCache<K, V> extends Cache<K, V> {
     * guarantee that "size" elements are returned( e.g. if the number of elements in the back-end server is smaller that "size")
     */
    Map<K, V> getBulk(int size);
+
+   /**
+    * Retrieves the values associated with the given keys.  Synthetic operation: the keys are grouped by the server
+    * owning them, and each server is sent a single request for its keys, in parallel.
+    *
+    * @return the keys found, mapped to their values. The returned Map is unmodifiable.
+    */
+   Map<K, V> getAll(Set<? extends K> keys);
 }
@@ -4,7 +4,11 @@ import org.infinispan.client.hotrod.exceptions.HotRodClientException;
 import org.infinispan.client.hotrod.impl.ConfigurationProperties;
 import org.infinispan.client.hotrod.impl.operations.OperationsFactory;
 import org.infinispan.client.hotrod.impl.RemoteCacheImpl;
+import org.infinispan.client.hotrod.impl.nearcache.InvalidationListener;
+import org.infinispan.client.hotrod.impl.nearcache.NearCache;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.tcp.LoadAwareBalancingStrategy;
+import org.infinispan.client.hotrod.impl.transport.tcp.RequestBalancingStrategy;
 import org.infinispan.executors.ExecutorFactory;
 import org.infinispan.manager.CacheContainer;
 import org.infinispan.marshall.Marshaller;
@@ -15,8 +19,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ExecutorService;
@@ -47,14 +54,14 @@ import static org.infinispan.util.Util.getInstance;
  * Below is the list of supported configuration elements:
  * <ul>
  * <li><tt>infinispan.client.hotrod.request_balancing_strategy</tt>, default = org.infinispan.client.hotrod.impl.transport.tcp.RoundRobinBalancingStrategy.  For replicated (vs distributed) Hot Rod server clusters, the client balances requests to the
- * servers according to this strategy.</li>
+ * servers according to this strategy.  Set it to org.infinispan.client.hotrod.impl.transport.tcp.LeastLoadedBalancingStrategy to send each request to the server with the fewest requests in flight and the lowest response times, and each read to the fastest of the owners of the key for distributed clusters, with the statistics of each server available through {@link #getServerStatistics()}.</li>
  * <li><tt>infinispan.client.hotrod.server_list</tt>, default = 127.0.0.1:11222.  This is the initial list of Hot Rod servers to connect to, specified in the following format: host1:port1;host2:port2...
  * At least one host:port must be specified.</li>
  * <li><tt>infinispan.client.hotrod.force_return_values</tt>, default = false.  Whether or not to implicitly {@link org.infinispan.client.hotrod.Flag#FORCE_RETURN_VALUE} for all calls.</li>
  * <li><tt>infinispan.client.hotrod.tcp_no_delay</tt>, default = true.  Affects TCP NODELAY on the TCP stack.</li>
  * <li><tt>infinispan.client.hotrod.ping_on_startup</tt>, default = true.  If true, a ping request is sent to a back end server in order to fetch cluster's topology.</li>
- * <li><tt>infinispan.client.hotrod.transport_factory</tt>, default = org.infinispan.client.hotrod.impl.transport.tcp.TcpTransportFactory - controls which transport to use.  Currently only the TcpTransport is supported.</li>
- * <li><tt>infinispan.client.hotrod.marshaller</tt>, default = org.infinispan.marshall.jboss.GenericJBossMarshaller.  Allows you to specify a custom {@link org.infinispan.marshall.Marshaller} implementation to serialize and deserialize user objects. For portable serialization payloads, you should configure the marshaller to be {@link org.infinispan.client.hotrod.marshall.ApacheAvroMarshaller}</li>
+ * <li><tt>infinispan.client.hotrod.transport_factory</tt>, default = org.infinispan.client.hotrod.impl.transport.tcp.TcpTransportFactory - controls which transport to use.  Set it to org.infinispan.client.hotrod.impl.transport.nio.NioTransportFactory to multiplex the requests over a few non blocking connections per server.</li>
+ * <li><tt>infinispan.client.hotrod.marshaller</tt>, default = org.infinispan.marshall.jboss.GenericJBossMarshaller.  Allows you to specify a custom {@link org.infinispan.marshall.Marshaller} implementation to serialize and deserialize user objects. For portable serialization payloads, you should configure the marshaller to be {@link org.infinispan.client.hotrod.marshall.ApacheAvroMarshaller}. For the most compact payloads, use {@link org.infinispan.client.hotrod.marshall.CompactMarshaller}, which also supports user classes through externalizers.</li>
  * <li><tt>infinispan.client.hotrod.async_executor_factory</tt>, default = org.infinispan.client.hotrod.impl.async.DefaultAsyncExecutorFactory.  Allows you to specify a custom asynchroous executor for async calls.</li>
  * <li><tt>infinispan.client.hotrod.default_executor_factory.pool_size</tt>, default = 10.  If the default executor is used, this configures the number of threads to initialize the executor with.</li>
  * <li><tt>infinispan.client.hotrod.default_executor_factory.queue_size</tt>, default = 100000.  If the default executor is used, this configures the queue size to initialize the executor with.</li>
@@ -62,6 +69,11 @@ import static org.infinispan.util.Util.getInstance;
  * <li><tt>infinispan.client.hotrod.key_size_estimate</tt>, default = 64.  This hint allows sizing of byte buffers when serializing and deserializing keys, to minimize array resizing.</li>
  * <li><tt>infinispan.client.hotrod.value_size_estimate</tt>, default = 512.  This hint allows sizing of byte buffers when serializing and deserializing values, to minimize array resizing.</li>
  * <li><tt>infinispan.client.hotrod.socket_timeout</tt>, default = 60000 (60 seconds).  This property defines the maximum socket read timeout before giving up waiting for bytes from the server.</li>
+ * <li><tt>infinispan.client.hotrod.nio.connections_per_server</tt>, default = 2.  If the NioTransportFactory is used, the number of connections opened to each server, over which the requests are multiplexed.</li>
+ * <li><tt>infinispan.client.hotrod.nio.buffer_pool_size</tt>, default = 256.  If the NioTransportFactory is used, the maximum number of request buffers kept for reuse.</li>
+ * <li><tt>infinispan.client.hotrod.near_cache.max_entries</tt>, default = 0.  If positive, each remote cache keeps up to this many of the values it reads in a near cache, which the servers keep coherent by notifying the keys modified or removed. A connection per server is dedicated to these notifications. 0 disables the near cache.</li>
+ * <li><tt>infinispan.client.hotrod.near_cache.eviction_strategy</tt>, default = LRU.  Which entries to evict once the near cache is full, either LRU or LIRS.</li>
+ * <li><tt>infinispan.client.hotrod.near_cache.lifespan</tt>, default = -1.  Maximum number of milliseconds a value is kept in the near cache, so that values expiring on the servers are not returned for too long. -1 means no limit.</li>
  * </ul>
  * <br/>
  * <i>The following properties are related to connection pooling</i>:
@@ -131,6 +143,7 @@ public class RemoteCacheManager implements CacheContainer {
    private boolean forceReturnValueDefault = false;
    private ExecutorService asyncExecutorService;
    private final Map<String, RemoteCacheImpl> cacheName2RemoteCache = new HashMap<String, RemoteCacheImpl>();
+   private final List<InvalidationListener> invalidationListeners = new ArrayList<InvalidationListener>();
    private AtomicInteger topologyId = new AtomicInteger();
 
 
@@ -321,6 +334,10 @@ public class RemoteCacheManager implements CacheContainer {
    @Override
    public void stop() {
       if (isStarted()) {
+         synchronized (cacheName2RemoteCache) {
+            for (InvalidationListener listener : invalidationListeners) listener.stop();
+            invalidationListeners.clear();
+         }
          transportFactory.destroy();
       }
       started = false;
@@ -330,6 +347,18 @@ public class RemoteCacheManager implements CacheContainer {
       return started;
    }
 
+   /**
+    * @return the statistics of the requests sent to each server, named as in {@link ClientStatistics}, or an empty map
+    *         if the request balancing strategy does not track the servers' load
+    */
+   public Map<InetSocketAddress, ClientStatistics> getServerStatistics() {
+      RequestBalancingStrategy balancer = transportFactory.getBalancer();
+      if (balancer instanceof LoadAwareBalancingStrategy) {
+         return ((LoadAwareBalancingStrategy) balancer).getServerStatistics();
+      }
+      return Collections.emptyMap();
+   }
+
    private void loadFromStream(InputStream stream) {
       Properties properties = new Properties();
       try {
@@ -355,7 +384,14 @@ public class RemoteCacheManager implements CacheContainer {
 
    private <K, V> void startRemoteCache(RemoteCacheImpl<K, V> result) {
       OperationsFactory operationsFactory = new OperationsFactory(transportFactory, result.getName(), topologyId, forceReturnValueDefault);
-      result.init(marshaller, asyncExecutorService, operationsFactory, config.getKeySizeEstimate(), config.getValueSizeEstimate());
+      NearCache nearCache = null;
+      if (config.getNearCacheMaxEntries() > 0) {
+         nearCache = new NearCache(config.getNearCacheMaxEntries(), config.getNearCacheEvictionStrategy(), config.getNearCacheLifespan());
+         InvalidationListener listener = new InvalidationListener(result.getName(), nearCache, transportFactory, operationsFactory);
+         listener.start();
+         invalidationListeners.add(listener);
+      }
+      result.init(marshaller, asyncExecutorService, operationsFactory, config.getKeySizeEstimate(), config.getValueSizeEstimate(), nearCache);
    }
 
    private void setMarshaller(Marshaller marshaller) {
@@ -33,6 +33,11 @@ public class ConfigurationProperties {
    public static final String HASH_FUNCTION_PREFIX = "infinispan.client.hotrod.hash_function_impl";
    public static final String DEFAULT_EXECUTOR_FACTORY_QUEUE_SIZE ="infinispan.client.hotrod.default_executor_factory.queue_size";
    public static final String SO_TIMEOUT = "infinispan.client.hotrod.socket_timeout";
+   public static final String NIO_CONNECTIONS_PER_SERVER = "infinispan.client.hotrod.nio.connections_per_server";
+   public static final String NIO_BUFFER_POOL_SIZE = "infinispan.client.hotrod.nio.buffer_pool_size";
+   public static final String NEAR_CACHE_MAX_ENTRIES = "infinispan.client.hotrod.near_cache.max_entries";
+   public static final String NEAR_CACHE_EVICTION_STRATEGY = "infinispan.client.hotrod.near_cache.eviction_strategy";
+   public static final String NEAR_CACHE_LIFESPAN = "infinispan.client.hotrod.near_cache.lifespan";
 
    // defaults
 
@@ -40,6 +45,11 @@ public class ConfigurationProperties {
    private static final int DEFAULT_VALUE_SIZE = 512;
    private static final int DEFAULT_HOTROD_PORT = 11222;
    private static final int DEFAULT_SO_TIMEOUT = 60000;
+   private static final int DEFAULT_NIO_CONNECTIONS_PER_SERVER = 2;
+   private static final int DEFAULT_NIO_BUFFER_POOL_SIZE = 256;
+   private static final int DEFAULT_NEAR_CACHE_MAX_ENTRIES = 0;
+   private static final String DEFAULT_NEAR_CACHE_EVICTION_STRATEGY = "LRU";
+   private static final long DEFAULT_NEAR_CACHE_LIFESPAN = -1;
 
    private final TypedProperties props;
 
@@ -120,4 +130,24 @@ public class ConfigurationProperties {
    public int getSoTimeout() {
       return props.getIntProperty(SO_TIMEOUT, DEFAULT_SO_TIMEOUT);
    }
+
+   public int getNioConnectionsPerServer() {
+      return props.getIntProperty(NIO_CONNECTIONS_PER_SERVER, DEFAULT_NIO_CONNECTIONS_PER_SERVER);
+   }
+
+   public int getNioBufferPoolSize() {
+      return props.getIntProperty(NIO_BUFFER_POOL_SIZE, DEFAULT_NIO_BUFFER_POOL_SIZE);
+   }
+
+   public int getNearCacheMaxEntries() {
+      return props.getIntProperty(NEAR_CACHE_MAX_ENTRIES, DEFAULT_NEAR_CACHE_MAX_ENTRIES);
+   }
+
+   public String getNearCacheEvictionStrategy() {
+      return props.getProperty(NEAR_CACHE_EVICTION_STRATEGY, DEFAULT_NEAR_CACHE_EVICTION_STRATEGY);
+   }
+
+   public long getNearCacheLifespan() {
+      return props.getLongProperty(NEAR_CACHE_LIFESPAN, DEFAULT_NEAR_CACHE_LIFESPAN);
+   }
 }
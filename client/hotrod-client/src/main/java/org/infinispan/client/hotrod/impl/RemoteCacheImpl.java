@@ -1,25 +1,34 @@
 package org.infinispan.client.hotrod.impl;
 
+import org.infinispan.client.hotrod.ClientStatistics;
 import org.infinispan.client.hotrod.Flag;
 import org.infinispan.client.hotrod.RemoteCache;
 import org.infinispan.client.hotrod.RemoteCacheManager;
 import org.infinispan.client.hotrod.ServerStatistics;
 import org.infinispan.client.hotrod.Version;
 import org.infinispan.client.hotrod.VersionedValue;
+import org.infinispan.client.hotrod.exceptions.HotRodClientException;
 import org.infinispan.client.hotrod.exceptions.RemoteCacheManagerNotStartedException;
 import org.infinispan.client.hotrod.exceptions.TransportException;
+import org.infinispan.client.hotrod.impl.async.CompletableNotifyingFuture;
 import org.infinispan.client.hotrod.impl.async.NotifyingFutureImpl;
+import org.infinispan.client.hotrod.impl.nearcache.NearCache;
 import org.infinispan.client.hotrod.impl.operations.*;
 import org.infinispan.marshall.Marshaller;
+import org.infinispan.util.concurrent.FutureListener;
 import org.infinispan.util.concurrent.NotifyingFuture;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -39,7 +48,7 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    private OperationsFactory operationsFactory;
    private int estimateKeySize;
    private int estimateValueSize;
-
+   private NearCache nearCache;
 
    public RemoteCacheImpl(RemoteCacheManager rcm, String name) {
       if (log.isTraceEnabled()) {
@@ -49,12 +58,16 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
       this.remoteCacheManager = rcm;
    }
 
-   public void init(Marshaller marshaller, ExecutorService executorService, OperationsFactory operationsFactory, int estimateKeySize, int estimateValueSize) {
+   /**
+    * @param nearCache the near cache of the values read, or null if values should always be read from the servers
+    */
+   public void init(Marshaller marshaller, ExecutorService executorService, OperationsFactory operationsFactory, int estimateKeySize, int estimateValueSize, NearCache nearCache) {
       this.marshaller = marshaller;
       this.executorService = executorService;
       this.operationsFactory = operationsFactory;
       this.estimateKeySize = estimateKeySize;
       this.estimateValueSize = estimateValueSize;
+      this.nearCache = nearCache;
    }
 
    public RemoteCacheManager getRemoteCacheManager() {
@@ -64,14 +77,20 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    @Override
    public boolean removeWithVersion(K key, long version) {
       assertRemoteCacheManagerIsStarted();
-      RemoveIfUnmodifiedOperation op = operationsFactory.newRemoveIfUnmodifiedOperation(obj2bytes(key, true), version);
+      byte[] keyBytes = obj2bytes(key, true);
+      RemoveIfUnmodifiedOperation op = operationsFactory.newRemoveIfUnmodifiedOperation(keyBytes, version);
       VersionedOperationResponse response = (VersionedOperationResponse) op.execute();
+      invalidate(keyBytes);
       return response.getCode().isUpdated();
    }
 
    @Override
    public NotifyingFuture<Boolean> removeWithVersionAsync(final K key, final long version) {
       assertRemoteCacheManagerIsStarted();
+      if (operationsFactory.isMultiplexed()) {
+         byte[] keyBytes = obj2bytes(key, true);
+         return updatedAsync(operationsFactory.newRemoveIfUnmodifiedOperation(keyBytes, version), keyBytes);
+      }
       final NotifyingFutureImpl<Boolean> result = new NotifyingFutureImpl<Boolean>();
       Future future = executorService.submit(new Callable() {
          @Override
@@ -88,14 +107,20 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    @Override
    public boolean replaceWithVersion(K key, V newValue, long version, int lifespanSeconds, int maxIdleTimeSeconds) {
       assertRemoteCacheManagerIsStarted();
-      ReplaceIfUnmodifiedOperation op = operationsFactory.newReplaceIfUnmodifiedOperation(obj2bytes(key, true), obj2bytes(newValue, false), lifespanSeconds, maxIdleTimeSeconds, version);
+      byte[] keyBytes = obj2bytes(key, true);
+      ReplaceIfUnmodifiedOperation op = operationsFactory.newReplaceIfUnmodifiedOperation(keyBytes, obj2bytes(newValue, false), lifespanSeconds, maxIdleTimeSeconds, version);
       VersionedOperationResponse response = (VersionedOperationResponse) op.execute();
+      invalidate(keyBytes);
       return response.getCode().isUpdated();
    }
 
    @Override
    public NotifyingFuture<Boolean> replaceWithVersionAsync(final K key, final V newValue, final long version, final int lifespanSeconds, final int maxIdleSeconds) {
       assertRemoteCacheManagerIsStarted();
+      if (operationsFactory.isMultiplexed()) {
+         byte[] keyBytes = obj2bytes(key, true);
+         return updatedAsync(operationsFactory.newReplaceIfUnmodifiedOperation(keyBytes, obj2bytes(newValue, false), lifespanSeconds, maxIdleSeconds, version), keyBytes);
+      }
       final NotifyingFutureImpl<Boolean> result = new NotifyingFutureImpl<Boolean>();
       Future future = executorService.submit(new Callable() {
          @Override
@@ -120,9 +145,71 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    @Override
    public void putAll(Map<? extends K, ? extends V> map, long lifespan, TimeUnit lifespanUnit, long maxIdleTime, TimeUnit maxIdleTimeUnit) {
       assertRemoteCacheManagerIsStarted();
+      if (map.isEmpty()) return;
+      Map<byte[], byte[]> entries = new HashMap<byte[], byte[]>(map.size() * 4 / 3 + 1);
       for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
-         put(entry.getKey(), entry.getValue(), lifespan, lifespanUnit, maxIdleTime, maxIdleTimeUnit);
+         entries.put(obj2bytes(entry.getKey(), true), obj2bytes(entry.getValue(), false));
       }
+      executeAll(operationsFactory.newPutAllOperations(entries, toSeconds(lifespan, lifespanUnit), toSeconds(maxIdleTime, maxIdleTimeUnit)));
+      for (byte[] keyBytes : entries.keySet()) invalidate(keyBytes);
+   }
+
+   @Override
+   public Map<K, V> getAll(Set<? extends K> keys) {
+      assertRemoteCacheManagerIsStarted();
+      if (keys.isEmpty()) return Collections.emptyMap();
+      Map<byte[], K> keysByBytes = new HashMap<byte[], K>(keys.size() * 4 / 3 + 1);
+      for (K key : keys) {
+         keysByBytes.put(obj2bytes(key, true), key);
+      }
+      Map<K, V> result = new HashMap<K, V>(keys.size() * 4 / 3 + 1);
+      for (Object values : executeAll(operationsFactory.newGetAllOperations(keysByBytes.keySet()))) {
+         for (Map.Entry<byte[], byte[]> entry : ((Map<byte[], byte[]>) values).entrySet()) {
+            result.put(keysByBytes.get(entry.getKey()), (V) bytes2obj(entry.getValue()));
+         }
+      }
+      return Collections.unmodifiableMap(result);
+   }
+
+   /**
+    * Executes the operations, each targeting a different server, in parallel.
+    *
+    * @return the results of the operations
+    */
+   private List<Object> executeAll(List<? extends RetryOnFailureOperation> operations) {
+      if (operations.size() == 1) {
+         return Collections.singletonList(operations.get(0).execute());
+      }
+      List<Future<Object>> futures = new ArrayList<Future<Object>>(operations.size());
+      boolean multiplexed = operationsFactory.isMultiplexed();
+      for (int i = multiplexed ? 0 : 1; i < operations.size(); i++) {
+         final RetryOnFailureOperation op = operations.get(i);
+         if (multiplexed) {
+            futures.add(op.executeAsync());
+         } else {
+            futures.add(executorService.submit(new Callable<Object>() {
+               @Override
+               public Object call() throws Exception {
+                  return op.execute();
+               }
+            }));
+         }
+      }
+      List<Object> results = new ArrayList<Object>(operations.size());
+      // without multiplexing, the calling thread executes an operation too rather than just waiting
+      if (!multiplexed) results.add(operations.get(0).execute());
+      for (Future<Object> future : futures) {
+         try {
+            results.add(future.get());
+         } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new HotRodClientException(e.getCause());
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HotRodClientException(e);
+         }
+      }
+      return results;
    }
 
    @Override
@@ -166,6 +253,19 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
       return stats;
    }
 
+   @Override
+   public ClientStatistics clientStatistics() {
+      ClientStatisticsImpl stats = new ClientStatisticsImpl();
+      long hits = nearCache == null ? 0 : nearCache.getHits();
+      long misses = nearCache == null ? 0 : nearCache.getMisses();
+      stats.addStats(ClientStatistics.NEAR_CACHE_HITS, String.valueOf(hits));
+      stats.addStats(ClientStatistics.NEAR_CACHE_MISSES, String.valueOf(misses));
+      stats.addStats(ClientStatistics.NEAR_CACHE_HIT_RATIO, String.valueOf(hits + misses == 0 ? 0 : (double) hits / (hits + misses)));
+      stats.addStats(ClientStatistics.NEAR_CACHE_INVALIDATIONS, String.valueOf(nearCache == null ? 0 : nearCache.getInvalidations()));
+      stats.addStats(ClientStatistics.NEAR_CACHE_SIZE, String.valueOf(nearCache == null ? 0 : nearCache.size()));
+      return stats;
+   }
+
    @Override
    public V put(K key, V value, long lifespan, TimeUnit lifespanUnit, long maxIdleTime, TimeUnit maxIdleTimeUnit) {
       assertRemoteCacheManagerIsStarted();
@@ -174,8 +274,10 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
       if (log.isTraceEnabled()) {
          log.trace("About to add (K,V): (" + key + ", " + value + ") lifespanSecs:" + lifespanSecs + ", maxIdleSecs:" + maxIdleSecs);
       }
-      PutOperation op = operationsFactory.newPutKeyValueOperation(obj2bytes(key, true), obj2bytes(value, false), lifespanSecs, maxIdleSecs);
+      byte[] keyBytes = obj2bytes(key, true);
+      PutOperation op = operationsFactory.newPutKeyValueOperation(keyBytes, obj2bytes(value, false), lifespanSecs, maxIdleSecs);
       byte[] result = (byte[]) op.execute();
+      invalidate(keyBytes);
       return (V) bytes2obj(result);
    }
 
@@ -185,8 +287,10 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
       assertRemoteCacheManagerIsStarted();
       int lifespanSecs = toSeconds(lifespan, lifespanUnit);
       int maxIdleSecs = toSeconds(maxIdleTime, maxIdleTimeUnit);
-      PutIfAbsentOperation op = operationsFactory.newPutIfAbsentOperation(obj2bytes(key, true), obj2bytes(value, false), lifespanSecs, maxIdleSecs);
+      byte[] keyBytes = obj2bytes(key, true);
+      PutIfAbsentOperation op = operationsFactory.newPutIfAbsentOperation(keyBytes, obj2bytes(value, false), lifespanSecs, maxIdleSecs);
       byte[] bytes = (byte[]) op.execute();
+      invalidate(keyBytes);
       return (V) bytes2obj(bytes);
    }
 
@@ -195,14 +299,20 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
       assertRemoteCacheManagerIsStarted();
       int lifespanSecs = toSeconds(lifespan, lifespanUnit);
       int maxIdleSecs = toSeconds(maxIdleTime, maxIdleTimeUnit);
-      ReplaceOperation op = operationsFactory.newReplaceOperation(obj2bytes(key, true), obj2bytes(value, false), lifespanSecs, maxIdleSecs);
+      byte[] keyBytes = obj2bytes(key, true);
+      ReplaceOperation op = operationsFactory.newReplaceOperation(keyBytes, obj2bytes(value, false), lifespanSecs, maxIdleSecs);
       byte[] bytes = (byte[]) op.execute();
+      invalidate(keyBytes);
       return (V) bytes2obj(bytes);
    }
 
    @Override
    public NotifyingFuture<V> putAsync(final K key, final V value, final long lifespan, final TimeUnit lifespanUnit, final long maxIdle, final TimeUnit maxIdleUnit) {
       assertRemoteCacheManagerIsStarted();
+      if (operationsFactory.isMultiplexed()) {
+         byte[] keyBytes = obj2bytes(key, true);
+         return valueAsync(operationsFactory.newPutKeyValueOperation(keyBytes, obj2bytes(value, false), toSeconds(lifespan, lifespanUnit), toSeconds(maxIdle, maxIdleUnit)), keyBytes);
+      }
       final NotifyingFutureImpl<V> result = new NotifyingFutureImpl<V>();
       Future future = executorService.submit(new Callable() {
          @Override
@@ -219,6 +329,22 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    @Override
    public NotifyingFuture<Void> clearAsync() {
       assertRemoteCacheManagerIsStarted();
+      if (operationsFactory.isMultiplexed()) {
+         final CompletableNotifyingFuture<Void> result = new CompletableNotifyingFuture<Void>();
+         operationsFactory.newClearOperation().executeAsync().attachListener(new FutureListener<Object>() {
+            @Override
+            public void futureDone(Future<Object> future) {
+               try {
+                  future.get();
+                  if (nearCache != null) nearCache.clear();
+                  result.complete(null);
+               } catch (Exception e) {
+                  result.completeExceptionally(e instanceof ExecutionException ? e.getCause() : e);
+               }
+            }
+         });
+         return result;
+      }
       final NotifyingFutureImpl<Void> result = new NotifyingFutureImpl<Void>();
       Future future = executorService.submit(new Callable() {
          @Override
@@ -235,6 +361,10 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    @Override
    public NotifyingFuture<V> putIfAbsentAsync(final K key,final V value,final long lifespan,final TimeUnit lifespanUnit,final long maxIdle,final TimeUnit maxIdleUnit) {
       assertRemoteCacheManagerIsStarted();
+      if (operationsFactory.isMultiplexed()) {
+         byte[] keyBytes = obj2bytes(key, true);
+         return valueAsync(operationsFactory.newPutIfAbsentOperation(keyBytes, obj2bytes(value, false), toSeconds(lifespan, lifespanUnit), toSeconds(maxIdle, maxIdleUnit)), keyBytes);
+      }
       final NotifyingFutureImpl<V> result = new NotifyingFutureImpl<V>();
       Future future = executorService.submit(new Callable() {
          @Override
@@ -251,6 +381,10 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    @Override
    public NotifyingFuture<V> removeAsync(final Object key) {
       assertRemoteCacheManagerIsStarted();
+      if (operationsFactory.isMultiplexed()) {
+         byte[] keyBytes = obj2bytes(key, true);
+         return valueAsync(operationsFactory.newRemoveOperation(keyBytes), keyBytes);
+      }
       final NotifyingFutureImpl<V> result = new NotifyingFutureImpl<V>();
       Future future = executorService.submit(new Callable() {
          @Override
@@ -267,6 +401,10 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    @Override
    public NotifyingFuture<V> replaceAsync(final K key,final V value,final long lifespan,final TimeUnit lifespanUnit,final long maxIdle,final TimeUnit maxIdleUnit) {
       assertRemoteCacheManagerIsStarted();
+      if (operationsFactory.isMultiplexed()) {
+         byte[] keyBytes = obj2bytes(key, true);
+         return valueAsync(operationsFactory.newReplaceOperation(keyBytes, obj2bytes(value, false), toSeconds(lifespan, lifespanUnit), toSeconds(maxIdle, maxIdleUnit)), keyBytes);
+      }
       final NotifyingFutureImpl<V> result = new NotifyingFutureImpl<V>();
       Future future = executorService.submit(new Callable() {
          @Override
@@ -291,8 +429,13 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    public V get(Object key) {
       assertRemoteCacheManagerIsStarted();
       byte[] keyBytes = obj2bytes(key, true);
-      GetOperation gco = operationsFactory.newGetKeyOperation(keyBytes);
-      byte[] bytes = (byte[]) gco.execute();
+      byte[] bytes = nearCache == null ? null : nearCache.get(keyBytes);
+      if (bytes == null) {
+         long readEpoch = nearCache == null ? 0 : nearCache.beginRead(keyBytes);
+         GetOperation gco = operationsFactory.newGetKeyOperation(keyBytes);
+         bytes = (byte[]) gco.execute();
+         if (nearCache != null) nearCache.putIfNotInvalidated(keyBytes, bytes, readEpoch);
+      }
       V result = (V) bytes2obj(bytes);
       if (log.isTraceEnabled()) {
          log.trace("For key(" + key + ") returning " + result);
@@ -322,8 +465,10 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    @Override
    public V remove(Object key) {
       assertRemoteCacheManagerIsStarted();
-      RemoveOperation removeOperation = operationsFactory.newRemoveOperation(obj2bytes(key, true));
+      byte[] keyBytes = obj2bytes(key, true);
+      RemoveOperation removeOperation = operationsFactory.newRemoveOperation(keyBytes);
       byte[] existingValue = (byte[]) removeOperation.execute();
+      invalidate(keyBytes);
       return (V) bytes2obj(existingValue);
    }
 
@@ -332,6 +477,7 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
       assertRemoteCacheManagerIsStarted();
       ClearOperation op = operationsFactory.newClearOperation() ;
       op.execute();
+      if (nearCache != null) nearCache.clear();
    }
 
    @Override
@@ -367,6 +513,16 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
    @Override
    public NotifyingFuture<V> getAsync(final K key) {
       assertRemoteCacheManagerIsStarted();
+      if (operationsFactory.isMultiplexed()) {
+         byte[] keyBytes = obj2bytes(key, true);
+         byte[] cached = nearCache == null ? null : nearCache.get(keyBytes);
+         if (cached != null) {
+            CompletableNotifyingFuture<V> result = new CompletableNotifyingFuture<V>();
+            result.complete((V) bytes2obj(cached));
+            return result;
+         }
+         return valueAsync(operationsFactory.newGetKeyOperation(keyBytes), null);
+      }
       final NotifyingFutureImpl<V> result = new NotifyingFutureImpl<V>();
       Future future = executorService.submit(new Callable() {
          @Override
@@ -380,6 +536,60 @@ public class RemoteCacheImpl<K, V> extends RemoteCacheSupport<K, V> {
       return result;
    }
 
+   /**
+    * Executes the operation without blocking any thread, and unmarshalls the value it returns.
+    *
+    * @param modifiedKey the key modified by the operation, to invalidate in the near cache once done, or null
+    */
+   private NotifyingFuture<V> valueAsync(RetryOnFailureOperation op, final byte[] modifiedKey) {
+      final CompletableNotifyingFuture<V> result = new CompletableNotifyingFuture<V>();
+      op.executeAsync().attachListener(new FutureListener<Object>() {
+         @Override
+         public void futureDone(Future<Object> future) {
+            try {
+               Object value = future.get();
+               if (modifiedKey != null) invalidate(modifiedKey);
+               result.complete((V) bytes2obj((byte[]) value));
+            } catch (ExecutionException e) {
+               result.completeExceptionally(e.getCause());
+            } catch (Exception e) {
+               result.completeExceptionally(e);
+            }
+         }
+      });
+      return result;
+   }
+
+   /**
+    * Executes the versioned operation without blocking any thread.
+    */
+   private NotifyingFuture<Boolean> updatedAsync(RetryOnFailureOperation op, final byte[] modifiedKey) {
+      final CompletableNotifyingFuture<Boolean> result = new CompletableNotifyingFuture<Boolean>();
+      op.executeAsync().attachListener(new FutureListener<Object>() {
+         @Override
+         public void futureDone(Future<Object> future) {
+            try {
+               VersionedOperationResponse response = (VersionedOperationResponse) future.get();
+               invalidate(modifiedKey);
+               result.complete(response.getCode().isUpdated());
+            } catch (ExecutionException e) {
+               result.completeExceptionally(e.getCause());
+            } catch (Exception e) {
+               result.completeExceptionally(e);
+            }
+         }
+      });
+      return result;
+   }
+
+   /**
+    * Invalidates the key modified by this client right away, rather than when the servers notify it, so that this
+    * client reads its own writes.
+    */
+   private void invalidate(byte[] keyBytes) {
+      if (nearCache != null) nearCache.invalidate(keyBytes);
+   }
+
    private byte[] obj2bytes(Object o, boolean isKey) {
       try {
          return marshaller.objectToByteBuffer(o, isKey ? estimateKeySize : estimateValueSize);
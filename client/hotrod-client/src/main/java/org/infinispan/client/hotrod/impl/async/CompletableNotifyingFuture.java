@@ -0,0 +1,138 @@
+package org.infinispan.client.hotrod.impl.async;
+
+import org.infinispan.util.concurrent.FutureListener;
+import org.infinispan.util.concurrent.NotifyingFuture;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Notifying future completed explicitly, by the thread that produces its result rather than by a task running in an
+ * executor.  Listeners are notified by the completing thread, or by the attaching thread if the future is already
+ * done.
+ *
+ * @since 5.0
+ */
+public class CompletableNotifyingFuture<T> implements NotifyingFuture<T> {
+
+   private static final Log log = LogFactory.getLog(CompletableNotifyingFuture.class);
+
+   private final CountDownLatch done = new CountDownLatch(1);
+   private List<FutureListener<T>> listeners;
+   private boolean completed;
+   private volatile T result;
+   private volatile Throwable failure;
+   private volatile boolean cancelled;
+
+   /**
+    * @return true if this call completed the future, false if it was already done
+    */
+   public boolean complete(T result) {
+      List<FutureListener<T>> toNotify;
+      synchronized (this) {
+         if (completed) return false;
+         this.result = result;
+         toNotify = markCompleted();
+      }
+      notifyListeners(toNotify);
+      return true;
+   }
+
+   /**
+    * @return true if this call completed the future, false if it was already done
+    */
+   public boolean completeExceptionally(Throwable failure) {
+      List<FutureListener<T>> toNotify;
+      synchronized (this) {
+         if (completed) return false;
+         this.failure = failure;
+         toNotify = markCompleted();
+      }
+      notifyListeners(toNotify);
+      return true;
+   }
+
+   private List<FutureListener<T>> markCompleted() {
+      completed = true;
+      done.countDown();
+      List<FutureListener<T>> toNotify = listeners;
+      listeners = null;
+      return toNotify;
+   }
+
+   private void notifyListeners(List<FutureListener<T>> toNotify) {
+      if (toNotify == null) return;
+      for (FutureListener<T> listener : toNotify) notifyListener(listener);
+   }
+
+   private void notifyListener(FutureListener<T> listener) {
+      try {
+         listener.futureDone(this);
+      } catch (Throwable t) {
+         log.warn("Future listener " + listener + " failed", t);
+      }
+   }
+
+   @Override
+   public NotifyingFuture<T> attachListener(FutureListener<T> listener) {
+      synchronized (this) {
+         if (!completed) {
+            if (listeners == null) listeners = new ArrayList<FutureListener<T>>(2);
+            listeners.add(listener);
+            return this;
+         }
+      }
+      notifyListener(listener);
+      return this;
+   }
+
+   /**
+    * Cancelling does not abort the request, whose response is discarded when received.
+    */
+   @Override
+   public boolean cancel(boolean mayInterruptIfRunning) {
+      List<FutureListener<T>> toNotify;
+      synchronized (this) {
+         if (completed) return false;
+         cancelled = true;
+         toNotify = markCompleted();
+      }
+      notifyListeners(toNotify);
+      return true;
+   }
+
+   @Override
+   public boolean isCancelled() {
+      return cancelled;
+   }
+
+   @Override
+   public boolean isDone() {
+      return done.getCount() == 0;
+   }
+
+   @Override
+   public T get() throws InterruptedException, ExecutionException {
+      done.await();
+      return getResult();
+   }
+
+   @Override
+   public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+      if (!done.await(timeout, unit)) throw new TimeoutException();
+      return getResult();
+   }
+
+   private T getResult() throws ExecutionException {
+      if (cancelled) throw new CancellationException();
+      if (failure != null) throw new ExecutionException(failure);
+      return result;
+   }
+}
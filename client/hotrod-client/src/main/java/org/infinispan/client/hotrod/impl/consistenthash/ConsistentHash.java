@@ -2,6 +2,7 @@ package org.infinispan.client.hotrod.impl.consistenthash;
 
 import java.net.InetSocketAddress;
 import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * Abstraction for the used consistent hash.
@@ -11,7 +12,16 @@ import java.util.LinkedHashMap;
  */
 public interface ConsistentHash {
    
-   void init(LinkedHashMap<InetSocketAddress,Integer> servers2HashCode, int numKeyOwners, int hashSpace);
+   /**
+    * @param servers2HashCodes the hash ids of each server, as a server owning several ranges of the hash space has one
+    *                          per range
+    */
+   void init(LinkedHashMap<InetSocketAddress, List<Integer>> servers2HashCodes, int numKeyOwners, int hashSpace);
 
    InetSocketAddress getServer(byte[] key);
+
+   /**
+    * @return all the servers owning the key, starting with the one returned by {@link #getServer(byte[])}
+    */
+   List<InetSocketAddress> getOwners(byte[] key);
 }
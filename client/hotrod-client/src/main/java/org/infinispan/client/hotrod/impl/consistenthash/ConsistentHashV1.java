@@ -6,7 +6,10 @@ import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -23,25 +26,26 @@ public class ConsistentHashV1 implements ConsistentHash {
    private final SortedMap<Integer, InetSocketAddress> positions = new TreeMap<Integer, InetSocketAddress>();
 
    private volatile int hashSpace;
+   private volatile int numKeyOwners;
    Hash mmh = new MurmurHash2();
 
    @Override
-   public void init(LinkedHashMap<InetSocketAddress,Integer> servers2HashCode, int numKeyOwners, int hashSpace) {
-      for (InetSocketAddress addr :servers2HashCode.keySet()) {
-         positions.put(servers2HashCode.get(addr), addr);
+   public void init(LinkedHashMap<InetSocketAddress, List<Integer>> servers2HashCodes, int numKeyOwners, int hashSpace) {
+      for (InetSocketAddress addr : servers2HashCodes.keySet()) {
+         for (int hashCode : servers2HashCodes.get(addr)) {
+            // a server not owning any range of the hash space is given a negative hash id
+            if (hashCode >= 0) positions.put(hashCode, addr);
+         }
       }
       if (log.isTraceEnabled())
          log.trace("Positions are: " + positions);
       this.hashSpace = hashSpace;
+      this.numKeyOwners = numKeyOwners;
    }
 
    @Override
    public InetSocketAddress getServer(byte[] key) {
-      int keyHashCode = mmh.hash(key);
-      if (keyHashCode == Integer.MIN_VALUE) keyHashCode += 1;
-      int hash = Math.abs(keyHashCode);
-
-      SortedMap<Integer, InetSocketAddress> candidates = positions.tailMap(hash % hashSpace);
+      SortedMap<Integer, InetSocketAddress> candidates = positions.tailMap(getNormalizedHash(key));
       if (log.isTraceEnabled()) {
          log.trace("Found possible candidates: " + candidates);
       }
@@ -57,4 +61,33 @@ public class ConsistentHashV1 implements ConsistentHash {
          return socketAddress;
       }
    }
+
+   /**
+    * The owners are the distinct servers following the key on the wheel, as located by the servers' own consistent
+    * hash.
+    */
+   @Override
+   public List<InetSocketAddress> getOwners(byte[] key) {
+      int numOwners = Math.min(numKeyOwners, new HashSet<InetSocketAddress>(positions.values()).size());
+      List<InetSocketAddress> owners = new ArrayList<InetSocketAddress>(numOwners);
+      for (InetSocketAddress server : positions.tailMap(getNormalizedHash(key)).values()) {
+         if (owners.size() == numOwners) break;
+         if (!owners.contains(server)) owners.add(server);
+      }
+      // over the wheel
+      for (InetSocketAddress server : positions.values()) {
+         if (owners.size() == numOwners) break;
+         if (!owners.contains(server)) owners.add(server);
+      }
+      if (log.isTraceEnabled()) {
+         log.trace("Owners are: " + owners);
+      }
+      return owners;
+   }
+
+   private int getNormalizedHash(byte[] key) {
+      int keyHashCode = mmh.hash(key);
+      if (keyHashCode == Integer.MIN_VALUE) keyHashCode += 1;
+      return Math.abs(keyHashCode) % hashSpace;
+   }
 }
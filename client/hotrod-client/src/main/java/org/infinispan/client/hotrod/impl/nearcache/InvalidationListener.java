@@ -0,0 +1,179 @@
+package org.infinispan.client.hotrod.impl.nearcache;
+
+import org.infinispan.client.hotrod.exceptions.TransportException;
+import org.infinispan.client.hotrod.impl.operations.AddInvalidationListenerOperation;
+import org.infinispan.client.hotrod.impl.operations.OperationsFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.tcp.TcpTransport;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps a {@link NearCache} coherent with the servers. A connection is opened to each server, and subscribed to the
+ * invalidation events of the cache, each connection being read by its own thread. The servers are checked
+ * periodically, so that the servers joining the cluster are subscribed to as well.
+ * <p/>
+ * Invalidations might be missed while a server is not subscribed to, so the near cache only caches values while all
+ * the servers are subscribed to.
+ *
+ * @since 5.0
+ */
+public class InvalidationListener implements Runnable {
+
+   private static final Log log = LogFactory.getLog(InvalidationListener.class);
+
+   private static final long SERVER_CHECK_INTERVAL_MILLIS = 5000;
+   private static final long RESUBSCRIBE_INTERVAL_MILLIS = 1000;
+
+   private final String cacheName;
+   private final NearCache nearCache;
+   private final TransportFactory transportFactory;
+   private final OperationsFactory operationsFactory;
+   // guarded by this
+   private final Map<InetSocketAddress, Subscriber> subscribers = new HashMap<InetSocketAddress, Subscriber>();
+   private volatile boolean stopped;
+   private Thread thread;
+
+   public InvalidationListener(String cacheName, NearCache nearCache, TransportFactory transportFactory, OperationsFactory operationsFactory) {
+      this.cacheName = cacheName;
+      this.nearCache = nearCache;
+      this.transportFactory = transportFactory;
+      this.operationsFactory = operationsFactory;
+   }
+
+   public void start() {
+      thread = new Thread(this, "HotRodClientInvalidationListener-" + cacheName);
+      thread.setDaemon(true);
+      thread.start();
+   }
+
+   public void stop() {
+      stopped = true;
+      thread.interrupt();
+      synchronized (this) {
+         for (Subscriber subscriber : subscribers.values()) subscriber.stop();
+         subscribers.clear();
+      }
+      nearCache.setCoherent(false);
+   }
+
+   @Override
+   public void run() {
+      try {
+         while (!stopped) {
+            updateSubscribers(transportFactory.getServers());
+            Thread.sleep(SERVER_CHECK_INTERVAL_MILLIS);
+         }
+      } catch (InterruptedException e) {
+         // stopped
+      }
+   }
+
+   private synchronized void updateSubscribers(Collection<InetSocketAddress> servers) {
+      if (stopped) return;
+      for (Iterator<Map.Entry<InetSocketAddress, Subscriber>> it = subscribers.entrySet().iterator(); it.hasNext();) {
+         Map.Entry<InetSocketAddress, Subscriber> entry = it.next();
+         if (!servers.contains(entry.getKey())) {
+            if (log.isDebugEnabled()) log.debug("Server " + entry.getKey() + " left, unsubscribing from it");
+            entry.getValue().stop();
+            it.remove();
+         }
+      }
+      for (InetSocketAddress server : servers) {
+         if (!subscribers.containsKey(server)) {
+            Subscriber subscriber = new Subscriber(server);
+            subscribers.put(server, subscriber);
+            subscriber.start();
+         }
+      }
+      updateCoherence();
+   }
+
+   private synchronized void updateCoherence() {
+      boolean coherent = !stopped && !subscribers.isEmpty();
+      for (Subscriber subscriber : subscribers.values()) coherent &= subscriber.subscribed;
+      if (coherent != nearCache.isCoherent()) {
+         if (log.isDebugEnabled()) log.debug("Near cache of '" + cacheName + "' " + (coherent ? "enabled" : "disabled"));
+         nearCache.setCoherent(coherent);
+      }
+   }
+
+   /**
+    * Reads the invalidation events of one server, subscribing again whenever the connection is lost.
+    */
+   private class Subscriber implements Runnable {
+      private final InetSocketAddress server;
+      private volatile boolean subscribed;
+      private volatile boolean stopped;
+      private volatile TcpTransport transport;
+      private Thread thread;
+
+      Subscriber(InetSocketAddress server) {
+         this.server = server;
+      }
+
+      void start() {
+         thread = new Thread(this, "HotRodClientInvalidationListener-" + cacheName + "-" + server);
+         thread.setDaemon(true);
+         thread.start();
+      }
+
+      void stop() {
+         stopped = true;
+         thread.interrupt();
+         TcpTransport transport = this.transport;
+         // unblocks the thread reading from it
+         if (transport != null) transport.destroy();
+      }
+
+      @Override
+      public void run() {
+         boolean failedBefore = false;
+         while (!stopped) {
+            try {
+               transport = new TcpTransport(server, transportFactory);
+               AddInvalidationListenerOperation op = operationsFactory.newAddInvalidationListenerOperation(transport);
+               op.execute();
+               if (log.isDebugEnabled()) log.debug("Subscribed to the invalidations of '" + cacheName + "' on " + server);
+               failedBefore = false;
+               setSubscribed(true);
+               while (!stopped) {
+                  byte[] key;
+                  try {
+                     key = op.readInvalidatedKey();
+                  } catch (TransportException e) {
+                     // no invalidation for a while
+                     if (e.getCause() instanceof SocketTimeoutException) continue;
+                     throw e;
+                  }
+                  nearCache.invalidate(key);
+               }
+            } catch (Exception e) {
+               if (!stopped && !failedBefore) log.warn("Not subscribed to the invalidations of '" + cacheName + "' on " + server + ", retrying", e);
+               failedBefore = true;
+            } finally {
+               setSubscribed(false);
+               if (transport != null) transport.destroy();
+               transport = null;
+            }
+            try {
+               Thread.sleep(RESUBSCRIBE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+               return;
+            }
+         }
+      }
+
+      private void setSubscribed(boolean subscribed) {
+         this.subscribed = subscribed;
+         updateCoherence();
+      }
+   }
+}
@@ -0,0 +1,151 @@
+package org.infinispan.client.hotrod.impl.nearcache;
+
+import org.infinispan.util.ByteArrayKey;
+import org.infinispan.util.concurrent.BoundedConcurrentHashMap;
+import org.infinispan.util.concurrent.BoundedConcurrentHashMap.Eviction;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded client side cache of the values read from the servers, kept in their marshalled form so that callers never
+ * share a value instance. It is kept coherent with the servers by an {@link InvalidationListener}, which invalidates
+ * the keys modified or removed on the servers.
+ * <p/>
+ * A value read from the servers is only cached if no invalidation of a key hashing to the same stripe happened while it
+ * was being read, and if the listener is subscribed to the invalidation events of all the servers. Otherwise, the value might be older than an
+ * invalidation which has already been applied, or than one which was never received.
+ *
+ * @since 5.0
+ */
+public class NearCache {
+
+   private static final int CONCURRENCY_LEVEL = 16;
+   private static final int EPOCH_STRIPES = 1024;
+
+   private final BoundedConcurrentHashMap<ByteArrayKey, Entry> entries;
+   private final long lifespan;
+   // A stripe changes with every invalidation of a key hashing to it, and they all change whenever the near cache is
+   // cleared or stops or starts being coherent
+   private final AtomicLongArray epochs = new AtomicLongArray(EPOCH_STRIPES);
+   private final AtomicLong hits = new AtomicLong();
+   private final AtomicLong misses = new AtomicLong();
+   private final AtomicLong invalidations = new AtomicLong();
+   private volatile boolean coherent;
+
+   /**
+    * @param maxEntries       maximum number of entries cached
+    * @param evictionStrategy either LRU or LIRS
+    * @param lifespan         maximum number of milliseconds an entry is cached for, or -1 for no limit
+    */
+   public NearCache(int maxEntries, String evictionStrategy, long lifespan) {
+      Eviction eviction = Eviction.valueOf(evictionStrategy.toUpperCase());
+      if (eviction == Eviction.NONE)
+         throw new IllegalArgumentException("The near cache must be bounded, use either LRU or LIRS eviction");
+      this.entries = new BoundedConcurrentHashMap<ByteArrayKey, Entry>(maxEntries, CONCURRENCY_LEVEL, eviction);
+      this.lifespan = lifespan;
+   }
+
+   /**
+    * @return the cached value, or null if the key is not cached
+    */
+   public byte[] get(byte[] key) {
+      ByteArrayKey k = new ByteArrayKey(key);
+      Entry entry = entries.get(k);
+      if (entry != null) {
+         if (!entry.isExpired(System.currentTimeMillis())) {
+            hits.incrementAndGet();
+            return entry.value;
+         }
+         entries.remove(k, entry);
+      }
+      misses.incrementAndGet();
+      return null;
+   }
+
+   /**
+    * Must be called before reading from the servers a value which might be cached once read.
+    *
+    * @return the token to pass to {@link #putIfNotInvalidated(byte[], byte[], long)}
+    */
+   public long beginRead(byte[] key) {
+      return epochs.get(stripe(key));
+   }
+
+   /**
+    * Caches the value read from the servers, unless the key, or another key in the same stripe, was invalidated since
+    * the read began.
+    */
+   public void putIfNotInvalidated(byte[] key, byte[] value, long readEpoch) {
+      int stripe = stripe(key);
+      if (value == null || !coherent || epochs.get(stripe) != readEpoch) return;
+      ByteArrayKey k = new ByteArrayKey(key);
+      Entry entry = new Entry(value, lifespan < 0 ? -1 : System.currentTimeMillis() + lifespan);
+      entries.put(k, entry);
+      // An invalidation happening while caching the value might not have seen it
+      if (epochs.get(stripe) != readEpoch) entries.remove(k, entry);
+   }
+
+   public void invalidate(byte[] key) {
+      epochs.incrementAndGet(stripe(key));
+      invalidations.incrementAndGet();
+      entries.remove(new ByteArrayKey(key));
+   }
+
+   public void clear() {
+      for (int i = 0; i < EPOCH_STRIPES; i++) epochs.incrementAndGet(i);
+      entries.clear();
+   }
+
+   /**
+    * Whether the invalidation listener is subscribed to all the servers. Some invalidations might have been missed
+    * while it was not, so the cached entries are dropped whenever this changes.
+    */
+   public void setCoherent(boolean coherent) {
+      this.coherent = coherent;
+      clear();
+   }
+
+   public boolean isCoherent() {
+      return coherent;
+   }
+
+   public long getHits() {
+      return hits.get();
+   }
+
+   public long getMisses() {
+      return misses.get();
+   }
+
+   public long getInvalidations() {
+      return invalidations.get();
+   }
+
+   public int size() {
+      return entries.size();
+   }
+
+   private static int stripe(byte[] key) {
+      int h = Arrays.hashCode(key);
+      // spread the higher bits, as in java.util.HashMap
+      h ^= (h >>> 20) ^ (h >>> 12);
+      h ^= (h >>> 7) ^ (h >>> 4);
+      return h & (EPOCH_STRIPES - 1);
+   }
+
+   private static class Entry {
+      final byte[] value;
+      final long expiry;
+
+      Entry(byte[] value, long expiry) {
+         this.value = value;
+         this.expiry = expiry;
+      }
+
+      boolean isExpired(long now) {
+         return expiry >= 0 && now > expiry;
+      }
+   }
+}
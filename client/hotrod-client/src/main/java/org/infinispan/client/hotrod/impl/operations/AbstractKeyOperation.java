@@ -3,8 +3,9 @@ package org.infinispan.client.hotrod.impl.operations;
 import net.jcip.annotations.Immutable;
 import org.infinispan.client.hotrod.Flag;
 import org.infinispan.client.hotrod.impl.VersionedOperationResponse;
-import org.infinispan.client.hotrod.impl.transport.Transport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 import org.infinispan.util.Util;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
@@ -30,25 +31,29 @@ public abstract class AbstractKeyOperation extends RetryOnFailureOperation {
    }
 
    @Override
-   protected Transport getTransport(int retryCount) {
+   protected TransportOutput getTransport(int retryCount) {
       if (retryCount == 0) {
-         return transportFactory.getTransport(key);
+         return isReadOnly() ? transportFactory.getReadTransport(key) : transportFactory.getTransport(key);
       } else {
          return transportFactory.getTransport();
       }
    }
 
-   protected short sendKeyOperation(byte[] key, Transport transport, byte opCode, byte opRespCode) {
-      // 1) write [header][key length][key]
+   /**
+    * Whether this operation only reads the key, so that any owner of the key can serve it.
+    */
+   protected boolean isReadOnly() {
+      return false;
+   }
+
+   protected long writeKeyRequest(TransportOutput transport, byte opCode) {
+      // [header][key length][key]
       long messageId = writeHeader(transport, opCode);
       transport.writeArray(key);
-      transport.flush();
-
-      // 2) now read the header
-      return readHeaderAndValidate(transport, messageId, opRespCode);
+      return messageId;
    }
 
-   protected byte[] returnPossiblePrevValue(Transport transport) {
+   protected byte[] returnPossiblePrevValue(TransportInput transport) {
       if (hasForceReturn(flags)) {
          byte[] bytes = transport.readArray();
          if (log.isTraceEnabled()) log.trace("Previous value bytes is: " + Util.printArray(bytes, false));
@@ -67,7 +72,7 @@ public abstract class AbstractKeyOperation extends RetryOnFailureOperation {
       return false;
    }
 
-   protected VersionedOperationResponse returnVersionedOperationResponse(Transport transport, long messageId, byte response) {
+   protected VersionedOperationResponse returnVersionedOperationResponse(TransportInput transport, long messageId, byte response) {
       //3) ...
       short respStatus = readHeaderAndValidate(transport, messageId, response);
 
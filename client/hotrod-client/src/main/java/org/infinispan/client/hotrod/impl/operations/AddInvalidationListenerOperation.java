@@ -0,0 +1,50 @@
+package org.infinispan.client.hotrod.impl.operations;
+
+import net.jcip.annotations.Immutable;
+import org.infinispan.client.hotrod.Flag;
+import org.infinispan.client.hotrod.impl.protocol.HotRodConstants;
+import org.infinispan.client.hotrod.impl.transport.Transport;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Subscribes a connection to the invalidation events of a cache. Once subscribed, the server pushes an event over the
+ * connection each time a key of the cache is modified or removed, and the connection must not be used for anything
+ * else.
+ *
+ * @since 5.0
+ */
+@Immutable
+public class AddInvalidationListenerOperation extends HotRodOperation {
+
+   private final Transport transport;
+
+   public AddInvalidationListenerOperation(Flag[] flags, byte[] cacheName, AtomicInteger topologyId, Transport transport) {
+      super(flags, cacheName, topologyId);
+      this.transport = transport;
+   }
+
+   @Override
+   public Object execute() {
+      long messageId = writeHeader(transport, HotRodConstants.ADD_INVALIDATION_LISTENER_REQUEST);
+      return sendRequest(transport, messageId);
+   }
+
+   @Override
+   public Object decodeResponse(TransportInput transport, long messageId) {
+      readHeaderAndValidate(transport, messageId, HotRodConstants.ADD_INVALIDATION_LISTENER_RESPONSE);
+      return null;
+   }
+
+   /**
+    * Blocks until the next invalidation event is received.
+    *
+    * @return the key invalidated by the event
+    */
+   public byte[] readInvalidatedKey() {
+      // events are not responses to any request, so their message id is always 0
+      readHeaderAndValidate(transport, 0, HotRodConstants.INVALIDATION_EVENT);
+      return transport.readArray();
+   }
+}
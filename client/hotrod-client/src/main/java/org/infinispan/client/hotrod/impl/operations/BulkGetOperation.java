@@ -1,8 +1,9 @@
 package org.infinispan.client.hotrod.impl.operations;
 
 import org.infinispan.client.hotrod.Flag;
-import org.infinispan.client.hotrod.impl.transport.Transport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 
 import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -23,15 +24,19 @@ public class BulkGetOperation extends RetryOnFailureOperation {
    }
    
    @Override
-   protected Transport getTransport(int retryCount) {
+   protected TransportOutput getTransport(int retryCount) {
       return transportFactory.getTransport();
    }
 
    @Override
-   protected Object executeOperation(Transport transport) {
+   protected long writeRequest(TransportOutput transport) {
       long messageId = writeHeader(transport, BULK_GET_REQUEST);
       transport.writeVInt(entryCount);
-      transport.flush();
+      return messageId;
+   }
+
+   @Override
+   public Object decodeResponse(TransportInput transport, long messageId) {
       readHeaderAndValidate(transport, messageId, BULK_GET_RESPONSE);
       HashMap result = new HashMap();
       while ( transport.readByte() == 1) { //there's more!
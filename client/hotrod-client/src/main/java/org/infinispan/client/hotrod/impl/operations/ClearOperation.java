@@ -2,8 +2,9 @@ package org.infinispan.client.hotrod.impl.operations;
 
 import net.jcip.annotations.Immutable;
 import org.infinispan.client.hotrod.Flag;
-import org.infinispan.client.hotrod.impl.transport.Transport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -21,13 +22,17 @@ public class ClearOperation extends RetryOnFailureOperation {
    }
 
    @Override
-   protected Transport getTransport(int retryCount) {
+   protected TransportOutput getTransport(int retryCount) {
       return transportFactory.getTransport();
    }
 
    @Override
-   protected Object executeOperation(Transport transport) {
-      long messageId = writeHeader(transport, CLEAR_REQUEST);
+   protected long writeRequest(TransportOutput transport) {
+      return writeHeader(transport, CLEAR_REQUEST);
+   }
+
+   @Override
+   public Object decodeResponse(TransportInput transport, long messageId) {
       readHeaderAndValidate(transport, messageId, CLEAR_RESPONSE);
       return null;
    }
@@ -2,8 +2,9 @@ package org.infinispan.client.hotrod.impl.operations;
 
 import net.jcip.annotations.Immutable;
 import org.infinispan.client.hotrod.Flag;
-import org.infinispan.client.hotrod.impl.transport.Transport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -21,9 +22,19 @@ public class ContainsKeyOperation extends AbstractKeyOperation {
    }
 
    @Override
-   protected Object executeOperation(Transport transport) {
+   protected long writeRequest(TransportOutput transport) {
+      return writeKeyRequest(transport, CONTAINS_KEY_REQUEST);
+   }
+
+   @Override
+   protected boolean isReadOnly() {
+      return true;
+   }
+
+   @Override
+   public Object decodeResponse(TransportInput transport, long messageId) {
       boolean containsKey = false;
-      short status = sendKeyOperation(key, transport, CONTAINS_KEY_REQUEST, CONTAINS_KEY_RESPONSE);
+      short status = readHeaderAndValidate(transport, messageId, CONTAINS_KEY_RESPONSE);
       if (status == KEY_DOES_NOT_EXIST_STATUS) {
          containsKey = false;
       } else if (status == NO_ERROR_STATUS) {
@@ -0,0 +1,66 @@
+package org.infinispan.client.hotrod.impl.operations;
+
+import net.jcip.annotations.Immutable;
+import org.infinispan.client.hotrod.Flag;
+import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads several keys at once.  The keys are expected to be owned by the same server.  The server returns the values in
+ * the order of the requested keys, so the keys are not sent back.
+ *
+ * @since 5.0
+ */
+@Immutable
+public class GetAllOperation extends RetryOnFailureOperation {
+
+   private final List<byte[]> keys;
+
+   public GetAllOperation(TransportFactory transportFactory, byte[] cacheName, AtomicInteger topologyId, Flag[] flags,
+                          List<byte[]> keys) {
+      super(transportFactory, cacheName, topologyId, flags);
+      this.keys = keys;
+   }
+
+   @Override
+   protected TransportOutput getTransport(int retryCount) {
+      if (retryCount == 0) {
+         return transportFactory.getTransport(keys.get(0));
+      } else {
+         return transportFactory.getTransport();
+      }
+   }
+
+   //[header][key count]([key length][key])*
+   @Override
+   protected long writeRequest(TransportOutput transport) {
+      long messageId = writeHeader(transport, GET_ALL_REQUEST);
+      transport.writeVInt(keys.size());
+      for (byte[] key : keys) {
+         transport.writeArray(key);
+      }
+      return messageId;
+   }
+
+   /**
+    * @return the values found, mapped by the requested keys
+    */
+   @Override
+   public Object decodeResponse(TransportInput transport, long messageId) {
+      readHeaderAndValidate(transport, messageId, GET_ALL_RESPONSE);
+      int count = transport.readVInt();
+      Map<byte[], byte[]> result = new HashMap<byte[], byte[]>(count * 4 / 3 + 1);
+      for (int i = 0; i < count; i++) {
+         if (transport.readByte() == 1) { // found
+            result.put(keys.get(i), transport.readArray());
+         }
+      }
+      return result;
+   }
+}
@@ -6,12 +6,18 @@ import org.infinispan.client.hotrod.exceptions.HotRodClientException;
 import org.infinispan.client.hotrod.exceptions.HotRodTimeoutException;
 import org.infinispan.client.hotrod.exceptions.InvalidResponseException;
 import org.infinispan.client.hotrod.impl.protocol.HotRodConstants;
+import org.infinispan.client.hotrod.impl.transport.MultiplexedTransport;
+import org.infinispan.client.hotrod.impl.transport.ResponseDecoder;
 import org.infinispan.client.hotrod.impl.transport.Transport;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -24,7 +30,7 @@ import java.util.concurrent.atomic.AtomicLong;
  * @since 4.1
  */
 @Immutable
-public abstract class HotRodOperation implements HotRodConstants {
+public abstract class HotRodOperation implements HotRodConstants, ResponseDecoder {
 
    static final AtomicLong MSG_ID = new AtomicLong();
 
@@ -48,7 +54,20 @@ public abstract class HotRodOperation implements HotRodConstants {
 
    public abstract Object execute();
 
-   protected final long writeHeader(Transport transport, short operationCode) {
+   /**
+    * Sends the request written to the transport and reads the response to it.  Multiplexed transports decode the
+    * response on their I/O thread while the calling thread waits for it, any other transport is a {@link Transport}
+    * the response is read from.
+    */
+   protected final Object sendRequest(TransportOutput transport, long messageId) {
+      if (transport instanceof MultiplexedTransport) {
+         return ((MultiplexedTransport) transport).invoke(messageId, this);
+      }
+      transport.flush();
+      return decodeResponse((Transport) transport, messageId);
+   }
+
+   protected final long writeHeader(TransportOutput transport, short operationCode) {
       transport.writeByte(HotRodConstants.REQUEST_MAGIC);
       long messageId = MSG_ID.incrementAndGet();
       transport.writeVLong(messageId);
@@ -76,7 +95,7 @@ public abstract class HotRodOperation implements HotRodConstants {
    /**
     * Magic	| Message Id | Op code | Status | Topology Change Marker
     */
-   protected short readHeaderAndValidate(Transport transport, long messageId, short opRespCode) {
+   protected short readHeaderAndValidate(TransportInput transport, long messageId, short opRespCode) {
       short magic = transport.readByte();
       if (magic != HotRodConstants.RESPONSE_MAGIC) {
          String message = "Invalid magic number. Expected " + Integer.toHexString(HotRodConstants.RESPONSE_MAGIC) + " and received " + Integer.toHexString(magic);
@@ -109,7 +128,7 @@ public abstract class HotRodOperation implements HotRodConstants {
       return status;
    }
 
-   protected void checkForErrorsInResponseStatus(short status, long messageId, Transport transport) {
+   protected void checkForErrorsInResponseStatus(short status, long messageId, TransportInput transport) {
       final boolean isTrace = log.isTraceEnabled();
       if (isTrace) log.trace("Received operation status: " + status);
 
@@ -135,13 +154,13 @@ public abstract class HotRodOperation implements HotRodConstants {
       }
    }
 
-   private void readNewTopologyIfPresent(Transport transport) {
+   private void readNewTopologyIfPresent(TransportInput transport) {
       short topologyChangeByte = transport.readByte();
       if (topologyChangeByte == 1)
          readNewTopologyAndHash(transport, topologyId);
    }
 
-   private void readNewTopologyAndHash(Transport transport, AtomicInteger topologyId) {
+   private void readNewTopologyAndHash(TransportInput transport, AtomicInteger topologyId) {
       int newTopologyId = transport.readVInt();
       topologyId.set(newTopologyId);
       int numKeyOwners = transport.readUnsignedShort();
@@ -154,7 +173,8 @@ public abstract class HotRodOperation implements HotRodConstants {
                ", hashFunctionVersion=" + hashFunctionVersion + ", hashSpaceSize=" + hashSpace + ", clusterSize=" + clusterSize);
       }
 
-      LinkedHashMap<InetSocketAddress, Integer> servers2HashCode = new LinkedHashMap<InetSocketAddress, Integer>();
+      // a server owning several ranges of the hash space is read once per range
+      LinkedHashMap<InetSocketAddress, List<Integer>> servers2HashCodes = new LinkedHashMap<InetSocketAddress, List<Integer>>();
 
       for (int i = 0; i < clusterSize; i++) {
          String host = transport.readString();
@@ -163,20 +183,26 @@ public abstract class HotRodOperation implements HotRodConstants {
             log.trace("Server read:" + host + ":" + port);
          }
          int hashCode = transport.read4ByteInt();
-         servers2HashCode.put(new InetSocketAddress(host, port), hashCode);
+         InetSocketAddress server = new InetSocketAddress(host, port);
+         List<Integer> hashCodes = servers2HashCodes.get(server);
+         if (hashCodes == null) {
+            hashCodes = new ArrayList<Integer>(1);
+            servers2HashCodes.put(server, hashCodes);
+         }
+         hashCodes.add(hashCode);
          if (log.isTraceEnabled()) {
             log.trace("Hash code is: " + hashCode);
          }
       }
       if (log.isInfoEnabled()) {
-         log.info("New topology: " + servers2HashCode);
+         log.info("New topology: " + servers2HashCodes);
       }
-      transport.getTransportFactory().updateServers(servers2HashCode.keySet());
+      transport.getTransportFactory().updateServers(servers2HashCodes.keySet());
       if (hashFunctionVersion == 0) {
          if (log.isTraceEnabled())
             log.trace("Not using a consistent hash function (hash function version == 0).");
       } else {
-         transport.getTransportFactory().updateHashFunction(servers2HashCode, numKeyOwners, hashFunctionVersion, hashSpace);
+         transport.getTransportFactory().updateHashFunction(servers2HashCodes, numKeyOwners, hashFunctionVersion, hashSpace);
       }
    }
 }
@@ -2,10 +2,19 @@ package org.infinispan.client.hotrod.impl.operations;
 
 import net.jcip.annotations.Immutable;
 import org.infinispan.client.hotrod.Flag;
+import org.infinispan.client.hotrod.impl.consistenthash.ConsistentHash;
 import org.infinispan.client.hotrod.impl.protocol.HotRodConstants;
+import org.infinispan.client.hotrod.impl.transport.Transport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.nio.NioTransportFactory;
 import org.infinispan.manager.CacheContainer;
 
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -36,6 +45,14 @@ public class OperationsFactory implements HotRodConstants {
       this.forceReturnValue = forceReturnValue;
    }
 
+   /**
+    * @return true if the operations can be executed asynchronously without blocking a thread, see {@link
+    *         RetryOnFailureOperation#executeAsync()}
+    */
+   public boolean isMultiplexed() {
+      return transportFactory instanceof NioTransportFactory;
+   }
+
    public GetOperation newGetKeyOperation(byte[] key) {
       return new GetOperation(transportFactory, key, cacheNameBytes, topologyId, flags());
    }
@@ -84,6 +101,59 @@ public class OperationsFactory implements HotRodConstants {
       return new BulkGetOperation(transportFactory, cacheNameBytes, topologyId, flags(), size);
    }
 
+   /**
+    * Creates an operation per server owning some of the entries, so that each server receives all its entries at once.
+    */
+   public List<PutAllOperation> newPutAllOperations(Map<byte[], byte[]> entries, int lifespanSecs, int maxIdleSecs) {
+      Flag[] flags = flags();
+      ConsistentHash hash = transportFactory.getConsistentHash();
+      Map<InetSocketAddress, Map<byte[], byte[]>> entriesByServer = new HashMap<InetSocketAddress, Map<byte[], byte[]>>();
+      for (Map.Entry<byte[], byte[]> entry : entries.entrySet()) {
+         InetSocketAddress server = hash == null ? null : hash.getServer(entry.getKey());
+         Map<byte[], byte[]> serverEntries = entriesByServer.get(server);
+         if (serverEntries == null) {
+            serverEntries = new HashMap<byte[], byte[]>();
+            entriesByServer.put(server, serverEntries);
+         }
+         serverEntries.put(entry.getKey(), entry.getValue());
+      }
+      List<PutAllOperation> operations = new ArrayList<PutAllOperation>(entriesByServer.size());
+      for (Map<byte[], byte[]> serverEntries : entriesByServer.values()) {
+         operations.add(new PutAllOperation(transportFactory, cacheNameBytes, topologyId, flags, serverEntries, lifespanSecs, maxIdleSecs));
+      }
+      return operations;
+   }
+
+   /**
+    * Creates an operation per server owning some of the keys, so that each server receives all its keys at once.
+    */
+   public List<GetAllOperation> newGetAllOperations(Collection<byte[]> keys) {
+      Flag[] flags = flags();
+      ConsistentHash hash = transportFactory.getConsistentHash();
+      Map<InetSocketAddress, List<byte[]>> keysByServer = new HashMap<InetSocketAddress, List<byte[]>>();
+      for (byte[] key : keys) {
+         InetSocketAddress server = hash == null ? null : hash.getServer(key);
+         List<byte[]> serverKeys = keysByServer.get(server);
+         if (serverKeys == null) {
+            serverKeys = new ArrayList<byte[]>();
+            keysByServer.put(server, serverKeys);
+         }
+         serverKeys.add(key);
+      }
+      List<GetAllOperation> operations = new ArrayList<GetAllOperation>(keysByServer.size());
+      for (List<byte[]> serverKeys : keysByServer.values()) {
+         operations.add(new GetAllOperation(transportFactory, cacheNameBytes, topologyId, flags, serverKeys));
+      }
+      return operations;
+   }
+
+   /**
+    * Creates an operation subscribing the given transport, which must be dedicated to it, to the invalidation events.
+    */
+   public AddInvalidationListenerOperation newAddInvalidationListenerOperation(Transport transport) {
+      return new AddInvalidationListenerOperation(null, cacheNameBytes, topologyId, transport);
+   }
+
    private Flag[] flags() {
       Flag[] flags = this.flagsMap.get();
       this.flagsMap.remove();
@@ -3,7 +3,8 @@ package org.infinispan.client.hotrod.impl.operations;
 import net.jcip.annotations.Immutable;
 import org.infinispan.client.hotrod.Flag;
 import org.infinispan.client.hotrod.impl.protocol.HotRodConstants;
-import org.infinispan.client.hotrod.impl.transport.Transport;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
@@ -20,9 +21,9 @@ public class PingOperation extends HotRodOperation {
 
    private static final Log log = LogFactory.getLog(PingOperation.class);
 
-   private final Transport transport;
+   private final TransportOutput transport;
 
-   public PingOperation(Flag[] flags, AtomicInteger topologyId, Transport transport) {
+   public PingOperation(Flag[] flags, AtomicInteger topologyId, TransportOutput transport) {
       super(flags, DEFAULT_CACHE_NAME_BYTES, topologyId);
       this.transport = transport;
    }
@@ -32,16 +33,7 @@ public class PingOperation extends HotRodOperation {
       boolean success;
       try {
          long messageId = writeHeader(transport, HotRodConstants.PING_REQUEST);
-         short respStatus = readHeaderAndValidate(transport, messageId, HotRodConstants.PING_RESPONSE);
-         if (respStatus == HotRodConstants.NO_ERROR_STATUS) {
-            if (log.isTraceEnabled())
-               log.trace("Successfully validated transport: " + transport);
-            success = true;
-         } else {
-            if (log.isTraceEnabled())
-               log.trace("Unknown response status: " + respStatus);
-            success = false;
-         }
+         success = (Boolean) sendRequest(transport, messageId);
       } catch (Exception e) {
          if (log.isTraceEnabled())
             log.trace("Failed to validate transport: " + transport, e);
@@ -49,4 +41,18 @@ public class PingOperation extends HotRodOperation {
       }
       return success;
    }
+
+   @Override
+   public Object decodeResponse(TransportInput transport, long messageId) {
+      short respStatus = readHeaderAndValidate(transport, messageId, HotRodConstants.PING_RESPONSE);
+      if (respStatus == HotRodConstants.NO_ERROR_STATUS) {
+         if (log.isTraceEnabled())
+            log.trace("Successfully validated transport: " + transport);
+         return true;
+      } else {
+         if (log.isTraceEnabled())
+            log.trace("Unknown response status: " + respStatus);
+         return false;
+      }
+   }
 }
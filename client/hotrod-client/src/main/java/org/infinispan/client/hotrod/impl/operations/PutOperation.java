@@ -2,8 +2,9 @@ package org.infinispan.client.hotrod.impl.operations;
 
 import org.infinispan.client.hotrod.Flag;
 import org.infinispan.client.hotrod.exceptions.InvalidResponseException;
-import org.infinispan.client.hotrod.impl.transport.Transport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 import org.jgroups.annotations.Immutable;
 
 import java.util.concurrent.atomic.AtomicInteger;
@@ -23,8 +24,13 @@ public class PutOperation extends AbstractKeyValueOperation {
    }
 
    @Override
-   protected Object executeOperation(Transport transport) {
-      short status = sendPutOperation(transport, PUT_REQUEST, PUT_RESPONSE);
+   protected long writeRequest(TransportOutput transport) {
+      return writePutRequest(transport, PUT_REQUEST);
+   }
+
+   @Override
+   public Object decodeResponse(TransportInput transport, long messageId) {
+      short status = readHeaderAndValidate(transport, messageId, PUT_RESPONSE);
       if (status != NO_ERROR_STATUS) {
          throw new InvalidResponseException("Unexpected response status: " + Integer.toHexString(status));
       }
@@ -1,8 +1,9 @@
 package org.infinispan.client.hotrod.impl.operations;
 
 import org.infinispan.client.hotrod.Flag;
-import org.infinispan.client.hotrod.impl.transport.Transport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -25,7 +26,7 @@ public class ReplaceIfUnmodifiedOperation extends AbstractKeyValueOperation {
    }
 
    @Override
-   protected Object executeOperation(Transport transport) {
+   protected long writeRequest(TransportOutput transport) {
       // 1) write header
       long messageId = writeHeader(transport, REPLACE_IF_UNMODIFIED_REQUEST);
 
@@ -35,6 +36,11 @@ public class ReplaceIfUnmodifiedOperation extends AbstractKeyValueOperation {
       transport.writeVInt(maxIdle);
       transport.writeLong(version);
       transport.writeArray(value);
+      return messageId;
+   }
+
+   @Override
+   public Object decodeResponse(TransportInput transport, long messageId) {
       return returnVersionedOperationResponse(transport, messageId, REPLACE_IF_UNMODIFIED_RESPONSE);
    }
 }
@@ -3,11 +3,17 @@ package org.infinispan.client.hotrod.impl.operations;
 import net.jcip.annotations.Immutable;
 import org.infinispan.client.hotrod.Flag;
 import org.infinispan.client.hotrod.exceptions.TransportException;
-import org.infinispan.client.hotrod.impl.transport.Transport;
+import org.infinispan.client.hotrod.impl.async.CompletableNotifyingFuture;
+import org.infinispan.client.hotrod.impl.transport.MultiplexedTransport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
+import org.infinispan.util.concurrent.FutureListener;
+import org.infinispan.util.concurrent.NotifyingFuture;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -32,7 +38,7 @@ public abstract class RetryOnFailureOperation extends HotRodOperation {
    @Override
    public Object execute() {
       int retryCount = 0;
-      Transport transport = getTransport(retryCount);
+      TransportOutput transport = getTransport(retryCount);
       do {
          try {
             return executeOperation(transport);
@@ -49,6 +55,64 @@ public abstract class RetryOnFailureOperation extends HotRodOperation {
       throw new IllegalStateException("We should not reach here!");
    }
 
+   /**
+    * Executes this operation without blocking, over a multiplexed transport.  The returned future is completed by the
+    * I/O thread of the transport once the response has been received, after retrying with other connections if need
+    * be.  It is always completed, exceptionally if a step of the operation fails, including the first one.
+    * <p/>
+    * Retries are sent by the I/O thread, which never blocks doing so, as multiplexed transports connect without
+    * blocking.
+    *
+    * @see org.infinispan.client.hotrod.impl.operations.OperationsFactory#isMultiplexed()
+    */
+   public NotifyingFuture<Object> executeAsync() {
+      CompletableNotifyingFuture<Object> result = new CompletableNotifyingFuture<Object>();
+      executeAsync(0, result);
+      return result;
+   }
+
+   private void executeAsync(final int retryCount, final CompletableNotifyingFuture<Object> result) {
+      NotifyingFuture<Object> response;
+      TransportOutput transport = null;
+      try {
+         transport = getTransport(retryCount);
+         long messageId = writeRequest(transport);
+         response = ((MultiplexedTransport) transport).invokeAsync(messageId, this);
+      } catch (TransportException e) {
+         retryOrFail(retryCount, e, result);
+         return;
+      } catch (RuntimeException e) {
+         result.completeExceptionally(e);
+         return;
+      } finally {
+         releaseTransport(transport);
+      }
+      response.attachListener(new FutureListener<Object>() {
+         @Override
+         public void futureDone(Future<Object> future) {
+            try {
+               result.complete(future.get());
+            } catch (ExecutionException e) {
+               retryOrFail(retryCount, e.getCause(), result);
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+               result.completeExceptionally(e);
+            } catch (Throwable t) {
+               result.completeExceptionally(t);
+            }
+         }
+      });
+   }
+
+   private void retryOrFail(int retryCount, Throwable failure, CompletableNotifyingFuture<Object> result) {
+      if (failure instanceof TransportException && shouldRetry(retryCount + 1)) {
+         log.trace("Transport exception. Retry " + retryCount + " out of " + transportFactory.getTransportCount() + ":" + failure);
+         executeAsync(retryCount + 1, result);
+      } else {
+         result.completeExceptionally(failure);
+      }
+   }
+
    protected boolean shouldRetry(int retryCount) {
       return retryCount < transportFactory.getTransportCount();
    }
@@ -63,12 +127,22 @@ public abstract class RetryOnFailureOperation extends HotRodOperation {
       }
    }
 
-   protected void releaseTransport(Transport transport) {
+   protected void releaseTransport(TransportOutput transport) {
       if (transport != null)
          transportFactory.releaseTransport(transport);
    }
 
-   protected abstract Transport getTransport(int retryCount);
+   protected abstract TransportOutput getTransport(int retryCount);
+
+   protected Object executeOperation(TransportOutput transport) {
+      long messageId = writeRequest(transport);
+      return sendRequest(transport, messageId);
+   }
 
-   protected abstract Object executeOperation(Transport transport);
+   /**
+    * Writes the request of this operation to the transport.
+    *
+    * @return the message id of the request
+    */
+   protected abstract long writeRequest(TransportOutput transport);
 }
@@ -2,8 +2,9 @@ package org.infinispan.client.hotrod.impl.operations;
 
 import net.jcip.annotations.Immutable;
 import org.infinispan.client.hotrod.Flag;
-import org.infinispan.client.hotrod.impl.transport.Transport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -23,15 +24,18 @@ public class StatsOperation extends RetryOnFailureOperation {
    }
 
    @Override
-   protected Transport getTransport(int retryCount) {
+   protected TransportOutput getTransport(int retryCount) {
       return transportFactory.getTransport();
    }
 
    @Override
-   protected Object executeOperation(Transport transport) {
+   protected long writeRequest(TransportOutput transport) {
+      return writeHeader(transport, STATS_REQUEST);
+   }
+
+   @Override
+   public Object decodeResponse(TransportInput transport, long messageId) {
       Map<String, String> result;
-      // 1) write header
-      long messageId = writeHeader(transport, STATS_REQUEST);
       readHeaderAndValidate(transport, messageId, STATS_RESPONSE);
       int nrOfStats = transport.readVInt();
 
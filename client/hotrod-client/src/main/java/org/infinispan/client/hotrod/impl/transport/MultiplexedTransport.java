@@ -0,0 +1,32 @@
+package org.infinispan.client.hotrod.impl.transport;
+
+import org.infinispan.util.concurrent.NotifyingFuture;
+
+/**
+ * A transport sharing its connection with other requests in flight.  Requests are written to the transport and then
+ * sent as a whole, and their responses are matched to them by message id and decoded by the I/O thread of the
+ * connection, so the responses are never read from the transport itself.
+ *
+ * @since 5.0
+ */
+public interface MultiplexedTransport extends TransportOutput {
+
+   /**
+    * Sends the request written to this transport and waits for its response, for at most the socket timeout.
+    *
+    * @param messageId message id of the request
+    * @param decoder   decoder of the response
+    * @return the decoded response
+    */
+   Object invoke(long messageId, ResponseDecoder decoder);
+
+   /**
+    * Sends the request written to this transport without waiting for its response.
+    *
+    * @param messageId message id of the request
+    * @param decoder   decoder of the response
+    * @return a future completed by the I/O thread with the decoded response, or with a {@link
+    *         org.infinispan.client.hotrod.exceptions.TransportException} if the connection failed
+    */
+   NotifyingFuture<Object> invokeAsync(long messageId, ResponseDecoder decoder);
+}
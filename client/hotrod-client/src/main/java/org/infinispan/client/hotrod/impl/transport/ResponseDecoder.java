@@ -0,0 +1,16 @@
+package org.infinispan.client.hotrod.impl.transport;
+
+/**
+ * Reads the response to a request from a transport.
+ *
+ * @since 5.0
+ */
+public interface ResponseDecoder {
+
+   /**
+    * Reads the response to the request with the given message id, header included.
+    *
+    * @return the result of the operation
+    */
+   Object decodeResponse(TransportInput transport, long messageId);
+}
@@ -1,10 +1,13 @@
 package org.infinispan.client.hotrod.impl.transport;
 
 import org.infinispan.client.hotrod.impl.ConfigurationProperties;
+import org.infinispan.client.hotrod.impl.consistenthash.ConsistentHash;
+import org.infinispan.client.hotrod.impl.transport.tcp.RequestBalancingStrategy;
 
 import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -15,9 +18,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public interface TransportFactory {
 
-   public Transport getTransport();
+   public TransportOutput getTransport();
 
-   public void releaseTransport(Transport transport);
+   public void releaseTransport(TransportOutput transport);
 
    void start(ConfigurationProperties props, Collection<InetSocketAddress> staticConfiguredServers, AtomicInteger topologyId);
 
@@ -25,13 +28,32 @@ public interface TransportFactory {
 
    void destroy();
 
-   void updateHashFunction(LinkedHashMap<InetSocketAddress,Integer> servers2HashCode, int numKeyOwners, short hashFunctionVersion, int hashSpace);
+   void updateHashFunction(LinkedHashMap<InetSocketAddress, List<Integer>> servers2HashCodes, int numKeyOwners, short hashFunctionVersion, int hashSpace);
 
-   Transport getTransport(byte[] key);
+   TransportOutput getTransport(byte[] key);
+
+   /**
+    * Like {@link #getTransport(byte[])}, for a request which only reads the key: if the balancer is a {@link
+    * org.infinispan.client.hotrod.impl.transport.tcp.LoadAwareBalancingStrategy}, it picks any of the owners of the key
+    * rather than its first owner.
+    */
+   TransportOutput getReadTransport(byte[] key);
+
+   /**
+    * @return a snapshot of the servers the transports are currently created for
+    */
+   Collection<InetSocketAddress> getServers();
 
    boolean isTcpNoDelay();
 
    int getTransportCount();
 
    int getSoTimeout();
+
+   /**
+    * @return the consistent hash used to locate the server owning a key, or null if the servers do not distribute keys
+    */
+   ConsistentHash getConsistentHash();
+
+   RequestBalancingStrategy getBalancer();
 }
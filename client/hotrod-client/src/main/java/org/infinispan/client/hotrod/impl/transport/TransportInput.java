@@ -0,0 +1,32 @@
+package org.infinispan.client.hotrod.impl.transport;
+
+/**
+ * The reading side of a {@link Transport}, from which responses are decoded.
+ *
+ * @since 5.0
+ */
+public interface TransportInput {
+
+   TransportFactory getTransportFactory();
+
+   short readByte();
+
+   int readVInt();
+
+   long readVLong();
+
+   /**
+    * reads an vint which is size; then an array having that size.
+    */
+   byte[] readArray();
+
+   String readString();
+
+   byte[] readByteArray(int size);
+
+   long readLong();
+
+   int readUnsignedShort();
+
+   int read4ByteInt();
+}
@@ -0,0 +1,27 @@
+package org.infinispan.client.hotrod.impl.transport;
+
+/**
+ * The writing side of a {@link Transport}, to which requests are written.
+ *
+ * @since 5.0
+ */
+public interface TransportOutput {
+
+   TransportFactory getTransportFactory();
+
+   void writeByte(short toWrite);
+
+   void writeVInt(int vint);
+
+   void writeVLong(long l);
+
+   void writeArray(byte[] toAppend);
+
+   void writeLong(long longValue);
+
+   void writeString(String string);
+
+   void flush();
+
+   void release();
+}
@@ -0,0 +1,57 @@
+package org.infinispan.client.hotrod.impl.transport.nio;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of the buffers requests are encoded into.  Buffers are sized after the expected size of a request, and those
+ * grown beyond that size to fit a larger request are not pooled.
+ *
+ * @since 5.0
+ */
+@ThreadSafe
+public class BufferPool {
+
+   private final int bufferSize;
+   private final int maxPooled;
+   private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+   private final AtomicInteger pooled = new AtomicInteger();
+
+   /**
+    * @param bufferSize size of the pooled buffers
+    * @param maxPooled  maximum number of buffers kept in the pool
+    */
+   public BufferPool(int bufferSize, int maxPooled) {
+      this.bufferSize = bufferSize;
+      this.maxPooled = maxPooled;
+   }
+
+   public ByteBuffer acquire() {
+      ByteBuffer buffer = buffers.poll();
+      if (buffer == null) return ByteBuffer.allocate(bufferSize);
+      pooled.decrementAndGet();
+      return buffer;
+   }
+
+   public void release(ByteBuffer buffer) {
+      if (buffer.capacity() != bufferSize) return;
+      if (pooled.incrementAndGet() > maxPooled) {
+         pooled.decrementAndGet();
+         return;
+      }
+      buffer.clear();
+      buffers.offer(buffer);
+   }
+
+   public int getBufferSize() {
+      return bufferSize;
+   }
+
+   public int getPooledBuffers() {
+      return pooled.get();
+   }
+}
@@ -0,0 +1,121 @@
+package org.infinispan.client.hotrod.impl.transport.nio;
+
+import org.infinispan.client.hotrod.exceptions.TransportException;
+import org.infinispan.client.hotrod.impl.protocol.HotRodConstants;
+import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportInput;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.infinispan.io.UnsignedNumeric.readUnsignedInt;
+import static org.infinispan.io.UnsignedNumeric.readUnsignedLong;
+
+/**
+ * Input over the bytes received by a connection, used by its I/O thread to decode responses.  Reading past the bytes
+ * received so far throws a {@link BufferUnderflowException}, after recording how many bytes the read needed, so that
+ * the connection does not decode the response again before at least that many bytes have been received.
+ *
+ * @since 5.0
+ */
+class ByteBufferInput implements TransportInput {
+
+   private final TransportFactory transportFactory;
+   private ByteBuffer buffer;
+   private int requiredLimit;
+
+   ByteBufferInput(TransportFactory transportFactory) {
+      this.transportFactory = transportFactory;
+   }
+
+   /**
+    * Reads from the given buffer, from its current position.
+    */
+   void wrap(ByteBuffer buffer) {
+      this.buffer = buffer;
+      this.requiredLimit = -1;
+   }
+
+   /**
+    * @return the limit the buffer must reach for the read which underflowed to succeed, or at least one more byte than
+    *         it has if the size of the read was not known in advance
+    */
+   int getRequiredLimit() {
+      return requiredLimit > buffer.limit() ? requiredLimit : buffer.limit() + 1;
+   }
+
+   @Override
+   public TransportFactory getTransportFactory() {
+      return transportFactory;
+   }
+
+   @Override
+   public short readByte() {
+      return (short) (buffer.get() & 0xFF);
+   }
+
+   @Override
+   public int readVInt() {
+      try {
+         return readUnsignedInt(buffer);
+      } catch (IOException e) {
+         throw new TransportException(e);
+      }
+   }
+
+   @Override
+   public long readVLong() {
+      try {
+         return readUnsignedLong(buffer);
+      } catch (IOException e) {
+         throw new TransportException(e);
+      }
+   }
+
+   @Override
+   public byte[] readArray() {
+      return readByteArray(readVInt());
+   }
+
+   @Override
+   public String readString() {
+      return new String(readArray(), HotRodConstants.HOTROD_STRING_CHARSET);
+   }
+
+   /**
+    * Checks that the whole array has been received before allocating it.
+    */
+   @Override
+   public byte[] readByteArray(int size) {
+      require(size);
+      byte[] result = new byte[size];
+      buffer.get(result);
+      return result;
+   }
+
+   @Override
+   public long readLong() {
+      require(8);
+      return buffer.getLong();
+   }
+
+   @Override
+   public int readUnsignedShort() {
+      require(2);
+      return buffer.getShort() & 0xFFFF;
+   }
+
+   @Override
+   public int read4ByteInt() {
+      require(4);
+      return buffer.getInt();
+   }
+
+   private void require(int bytes) {
+      if (buffer.remaining() < bytes) {
+         requiredLimit = buffer.position() + bytes;
+         throw new BufferUnderflowException();
+      }
+   }
+}
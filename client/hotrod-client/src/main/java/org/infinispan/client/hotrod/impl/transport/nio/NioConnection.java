@@ -0,0 +1,411 @@
+package org.infinispan.client.hotrod.impl.transport.nio;
+
+import net.jcip.annotations.ThreadSafe;
+import org.infinispan.client.hotrod.exceptions.HotRodClientException;
+import org.infinispan.client.hotrod.exceptions.InvalidResponseException;
+import org.infinispan.client.hotrod.exceptions.TransportException;
+import org.infinispan.client.hotrod.impl.async.CompletableNotifyingFuture;
+import org.infinispan.client.hotrod.impl.protocol.HotRodConstants;
+import org.infinispan.client.hotrod.impl.transport.ResponseDecoder;
+import org.infinispan.client.hotrod.impl.transport.tcp.LoadAwareBalancingStrategy;
+import org.infinispan.util.concurrent.NotifyingFuture;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.infinispan.io.UnsignedNumeric.readUnsignedLong;
+
+/**
+ * Non blocking connection to a server, shared by all the requests sent to it.  Requests are queued and written by the
+ * I/O thread of the {@link NioEventLoop}, which also decodes the responses and matches them to the pending requests by
+ * message id, so any number of requests can be in flight over the same connection.
+ * <p/>
+ * Responses are decoded from the bytes received so far: when a response has only been partially received, it is
+ * decoded again from its start once at least as many bytes as the failed read needed have arrived, so a large value is
+ * not decoded again every time a few more of its bytes are received.
+ * <p/>
+ * Connecting does not block either: requests sent before the connection is established are written once it is.  A
+ * request which has not been answered within the socket timeout is failed with a {@link TransportException}, and its
+ * response is discarded if it is received later on.  If it still has not been received after twice the socket
+ * timeout, the server is considered unresponsive and the connection is closed.
+ *
+ * @since 5.0
+ */
+@ThreadSafe
+public class NioConnection {
+
+   private static final Log log = LogFactory.getLog(NioConnection.class);
+   private static final int MAX_GATHERED_BUFFERS = 64;
+
+   private final InetSocketAddress serverAddress;
+   private final NioTransportFactory transportFactory;
+   private final NioEventLoop eventLoop;
+   private final BufferPool bufferPool;
+   private final SocketChannel channel;
+
+   private final long timeoutNanos;
+   private final long connectStartTime = System.nanoTime();
+
+   private final ConcurrentMap<Long, PendingResponse> pending = new ConcurrentHashMap<Long, PendingResponse>();
+   // in the order the requests were sent, which is also the order in which they time out
+   private final Queue<PendingResponse> timeouts = new ConcurrentLinkedQueue<PendingResponse>();
+   private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+   private final AtomicBoolean flushScheduled = new AtomicBoolean();
+   private final Runnable flushTask = new Runnable() {
+      @Override
+      public void run() {
+         flushScheduled.set(false);
+         write();
+      }
+   };
+
+   // only accessed by the I/O thread
+   private SelectionKey key;
+   private boolean connected;
+   private ByteBuffer input;
+   private final ByteBufferInput decoderInput;
+   // bytes needed, from the start of the input, before the next response is worth decoding again
+   private int awaitedBytes;
+   private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_BUFFERS];
+
+   private volatile boolean closed;
+
+   NioConnection(InetSocketAddress serverAddress, NioTransportFactory transportFactory, NioEventLoop eventLoop, BufferPool bufferPool) {
+      this.serverAddress = serverAddress;
+      this.transportFactory = transportFactory;
+      this.eventLoop = eventLoop;
+      this.bufferPool = bufferPool;
+      this.input = ByteBuffer.allocate(bufferPool.getBufferSize());
+      this.decoderInput = new ByteBufferInput(transportFactory);
+      this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(transportFactory.getSoTimeout());
+      try {
+         channel = SocketChannel.open();
+         channel.socket().setTcpNoDelay(transportFactory.isTcpNoDelay());
+         channel.configureBlocking(false);
+         channel.connect(serverAddress);
+      } catch (IOException e) {
+         closed = true;
+         throw new TransportException("Could not connect to server: " + serverAddress, e);
+      }
+      eventLoop.execute(new Runnable() {
+         @Override
+         public void run() {
+            register();
+         }
+      });
+      if (log.isTraceEnabled()) {
+         log.trace("Created connection: " + this);
+      }
+   }
+
+   private void register() {
+      try {
+         key = eventLoop.register(channel, this, channel.isConnectionPending() ? SelectionKey.OP_CONNECT : SelectionKey.OP_READ);
+         if (!channel.isConnectionPending()) {
+            connected = true;
+            write();
+         }
+      } catch (ClosedChannelException e) {
+         close(new TransportException("Connection closed before it was registered: " + this, e));
+      }
+   }
+
+   /**
+    * Completes the connection to the server and writes the requests queued meanwhile.  Called by the I/O thread.
+    */
+   void finishConnect() {
+      try {
+         if (!channel.finishConnect()) return;
+      } catch (IOException e) {
+         close(new TransportException("Could not connect to server: " + serverAddress, e));
+         return;
+      }
+      connected = true;
+      key.interestOps(SelectionKey.OP_READ);
+      if (log.isTraceEnabled()) {
+         log.trace("Connected: " + this);
+      }
+      write();
+   }
+
+   /**
+    * Queues a request for sending.  Ownership of the buffer passes to this connection, which returns it to the pool once
+    * written.
+    */
+   NotifyingFuture<Object> send(long messageId, ByteBuffer request, ResponseDecoder decoder) {
+      CompletableNotifyingFuture<Object> future = new CompletableNotifyingFuture<Object>();
+      if (closed) {
+         bufferPool.release(request);
+         future.completeExceptionally(new TransportException("Connection closed: " + this));
+         return future;
+      }
+      LoadAwareBalancingStrategy loadAwareBalancer = transportFactory.getLoadAwareBalancer();
+      if (loadAwareBalancer != null) loadAwareBalancer.requestStarted(serverAddress);
+      // registered before writing, so that the response can never arrive first
+      PendingResponse response = new PendingResponse(messageId, decoder, future, timeoutNanos);
+      pending.put(messageId, response);
+      if (timeoutNanos > 0) timeouts.offer(response);
+      writeQueue.offer(request);
+      if (closed) {
+         // closed concurrently, after failing the requests pending until then
+         failPending(new TransportException("Connection closed: " + this));
+      } else if (flushScheduled.compareAndSet(false, true)) {
+         eventLoop.execute(flushTask);
+      }
+      return future;
+   }
+
+   /**
+    * Writes as many of the queued requests as the socket accepts, waiting for the socket to become writable again if
+    * need be.  Called by the I/O thread.
+    */
+   void write() {
+      if (!connected || closed) return;
+      try {
+         while (true) {
+            int count = 0;
+            for (ByteBuffer b : writeQueue) {
+               gathered[count++] = b;
+               if (count == MAX_GATHERED_BUFFERS) break;
+            }
+            if (count == 0) break;
+            channel.write(gathered, 0, count);
+            boolean complete = true;
+            for (int i = 0; i < count; i++) {
+               if (gathered[i].hasRemaining()) {
+                  complete = false;
+                  break;
+               }
+               bufferPool.release(writeQueue.poll());
+            }
+            for (int i = 0; i < count; i++) gathered[i] = null;
+            if (!complete) break;
+         }
+         if (writeQueue.isEmpty()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+         } else {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+         }
+      } catch (IOException e) {
+         close(new TransportException("Could not write to server: " + serverAddress, e));
+      }
+   }
+
+   /**
+    * Reads what the server sent and completes the requests whose responses have been fully received.  Called by the
+    * I/O thread.
+    */
+   void read() {
+      try {
+         while (true) {
+            if (!input.hasRemaining() || input.capacity() < awaitedBytes) {
+               ByteBuffer larger = ByteBuffer.allocate(Math.max(input.capacity() * 2, awaitedBytes));
+               input.flip();
+               larger.put(input);
+               input = larger;
+            }
+            int read = channel.read(input);
+            if (read < 0) {
+               close(new TransportException("Connection closed by server: " + serverAddress));
+               return;
+            }
+            if (read == 0) break;
+         }
+      } catch (IOException e) {
+         close(new TransportException("Could not read from server: " + serverAddress, e));
+         return;
+      }
+      if (input.position() < awaitedBytes) return;
+      input.flip();
+      try {
+         while (input.hasRemaining() && !closed) {
+            if (!decodeResponse()) break;
+         }
+      } finally {
+         input.compact();
+      }
+   }
+
+   /**
+    * @return false if the next response has not been fully received yet
+    */
+   private boolean decodeResponse() {
+      int start = input.position();
+      long messageId;
+      try {
+         short magic = (short) (input.get() & 0xFF);
+         if (magic != HotRodConstants.RESPONSE_MAGIC) {
+            close(new InvalidResponseException("Invalid magic number " + Integer.toHexString(magic) + " received from " + serverAddress));
+            return false;
+         }
+         messageId = readUnsignedLong(input);
+      } catch (BufferUnderflowException e) {
+         input.position(start);
+         awaitedBytes = 0;
+         return false;
+      } catch (IOException e) {
+         close(new TransportException(e));
+         return false;
+      }
+      input.position(start);
+      PendingResponse response = pending.get(messageId);
+      if (response == null) {
+         // responses to timed out requests are kept pending until the connection is closed, so this is a protocol error
+         close(new InvalidResponseException("Unexpected message id " + messageId + " received from " + serverAddress));
+         return false;
+      }
+      decoderInput.wrap(input);
+      Object result;
+      try {
+         result = response.decoder.decodeResponse(decoderInput, messageId);
+      } catch (BufferUnderflowException e) {
+         awaitedBytes = decoderInput.getRequiredLimit() - start;
+         input.position(start);
+         return false;
+      } catch (InvalidResponseException e) {
+         close(e);
+         return false;
+      } catch (HotRodClientException e) {
+         // an error response sent by the server, which has been fully read
+         awaitedBytes = 0;
+         if (completed(response)) response.future.completeExceptionally(e);
+         return true;
+      } catch (RuntimeException e) {
+         close(new TransportException("Could not decode the response to message " + messageId + " from " + serverAddress, e));
+         return false;
+      }
+      awaitedBytes = 0;
+      if (completed(response)) response.future.complete(result);
+      return true;
+   }
+
+   /**
+    * @return false if the request had already timed out, in which case the response is discarded
+    */
+   private boolean completed(PendingResponse response) {
+      pending.remove(response.messageId);
+      if (response.timedOut) return false;
+      reportCompleted(response);
+      return true;
+   }
+
+   private void reportCompleted(PendingResponse response) {
+      LoadAwareBalancingStrategy loadAwareBalancer = transportFactory.getLoadAwareBalancer();
+      if (loadAwareBalancer != null) loadAwareBalancer.requestCompleted(serverAddress, System.nanoTime() - response.startTime);
+   }
+
+   /**
+    * Closes this connection, failing the requests in flight with the given exception.
+    */
+   void close(HotRodClientException cause) {
+      if (closed && pending.isEmpty()) return;
+      closed = true;
+      if (log.isTraceEnabled()) {
+         log.trace("Closing connection " + this + ": " + cause.getMessage());
+      }
+      try {
+         channel.close();
+      } catch (IOException e) {
+         log.warn("Could not close connection " + this, e);
+      }
+      failPending(cause);
+   }
+
+   private void failPending(HotRodClientException cause) {
+      for (Iterator<Map.Entry<Long, PendingResponse>> it = pending.entrySet().iterator(); it.hasNext();) {
+         PendingResponse response = it.next().getValue();
+         it.remove();
+         if (!response.timedOut) fail(response, cause);
+      }
+      timeouts.clear();
+   }
+
+   private void fail(PendingResponse response, HotRodClientException cause) {
+      LoadAwareBalancingStrategy loadAwareBalancer = transportFactory.getLoadAwareBalancer();
+      if (loadAwareBalancer != null) loadAwareBalancer.requestFailed(serverAddress);
+      response.future.completeExceptionally(cause);
+   }
+
+   /**
+    * Fails the requests which have not been answered within the socket timeout, and closes the connection if the
+    * server has not answered a request for twice that long, or if it could not be connected within the socket timeout.
+    * Called periodically by the I/O thread.
+    */
+   void expireRequests(long now) {
+      if (closed || timeoutNanos <= 0) return;
+      if (!connected && now - connectStartTime > timeoutNanos) {
+         close(new TransportException("Could not connect to server " + serverAddress + " within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms"));
+         return;
+      }
+      PendingResponse response;
+      while ((response = timeouts.peek()) != null && now - response.deadline >= 0) {
+         if (pending.get(response.messageId) != response) {
+            // answered meanwhile
+            timeouts.poll();
+         } else if (!response.timedOut) {
+            // kept pending, to recognize and discard its response if it is received later on
+            response.timedOut = true;
+            response.deadline += timeoutNanos;
+            fail(response, new TransportException("Timed out waiting for the response to message " + response.messageId + " from " + serverAddress));
+            // the doubled deadline is not in the queue order any more
+            timeouts.offer(timeouts.poll());
+         } else {
+            close(new TransportException("No response to message " + response.messageId + " received from " + serverAddress + " within " + TimeUnit.NANOSECONDS.toMillis(2 * timeoutNanos) + " ms"));
+            return;
+         }
+      }
+   }
+
+   public boolean isClosed() {
+      return closed;
+   }
+
+   public InetSocketAddress getServerAddress() {
+      return serverAddress;
+   }
+
+   public int getPendingResponses() {
+      return pending.size();
+   }
+
+   @Override
+   public String toString() {
+      return "NioConnection{" +
+            "serverAddress=" + serverAddress +
+            ", pending=" + pending.size() +
+            ", closed=" + closed +
+            '}';
+   }
+
+   private static final class PendingResponse {
+      final long messageId;
+      final ResponseDecoder decoder;
+      final CompletableNotifyingFuture<Object> future;
+      final long startTime = System.nanoTime();
+      // only accessed by the I/O thread once the request is queued
+      long deadline;
+      boolean timedOut;
+
+      PendingResponse(long messageId, ResponseDecoder decoder, CompletableNotifyingFuture<Object> future, long timeoutNanos) {
+         this.messageId = messageId;
+         this.decoder = decoder;
+         this.future = future;
+         this.deadline = startTime + timeoutNanos;
+      }
+   }
+}
@@ -0,0 +1,131 @@
+package org.infinispan.client.hotrod.impl.transport.nio;
+
+import net.jcip.annotations.ThreadSafe;
+import org.infinispan.client.hotrod.exceptions.TransportException;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The I/O thread shared by all the {@link NioConnection}s of a {@link NioTransportFactory}.  It writes the queued
+ * requests, reads and decodes the responses, runs the tasks submitted through {@link #execute(Runnable)}, and fails the
+ * requests which have not been answered in time.
+ *
+ * @since 5.0
+ */
+@ThreadSafe
+public class NioEventLoop implements Runnable {
+
+   private static final Log log = LogFactory.getLog(NioEventLoop.class);
+
+   private static final long TIMEOUT_CHECK_INTERVAL = 100;
+   private static final long TIMEOUT_CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(TIMEOUT_CHECK_INTERVAL);
+
+   private final Selector selector;
+   private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+   private final Thread thread;
+   private volatile boolean running = true;
+   // only accessed by the I/O thread
+   private long lastTimeoutCheck = System.nanoTime();
+
+   public NioEventLoop(String name) {
+      try {
+         selector = Selector.open();
+      } catch (IOException e) {
+         throw new TransportException("Could not open selector", e);
+      }
+      thread = new Thread(this, name);
+      thread.setDaemon(true);
+   }
+
+   public void start() {
+      thread.start();
+   }
+
+   public void stop() {
+      running = false;
+      selector.wakeup();
+      try {
+         thread.join(1000);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Runs the task in the I/O thread.
+    */
+   public void execute(Runnable task) {
+      tasks.offer(task);
+      if (Thread.currentThread() != thread) selector.wakeup();
+   }
+
+   public boolean inEventLoop() {
+      return Thread.currentThread() == thread;
+   }
+
+   SelectionKey register(SocketChannel channel, NioConnection connection, int ops) throws ClosedChannelException {
+      return channel.register(selector, ops, connection);
+   }
+
+   @Override
+   public void run() {
+      while (running) {
+         try {
+            runTasks();
+            selector.select(TIMEOUT_CHECK_INTERVAL);
+            for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext();) {
+               SelectionKey key = it.next();
+               it.remove();
+               NioConnection connection = (NioConnection) key.attachment();
+               try {
+                  if (key.isConnectable()) connection.finishConnect();
+                  if (key.isValid() && key.isReadable()) connection.read();
+                  if (key.isValid() && key.isWritable()) connection.write();
+               } catch (CancelledKeyException e) {
+                  // the connection has been closed
+               }
+            }
+            expireRequests();
+         } catch (Throwable t) {
+            log.error("Unexpected error in the I/O thread", t);
+         }
+      }
+      runTasks();
+      try {
+         selector.close();
+      } catch (IOException e) {
+         log.warn("Could not close selector", e);
+      }
+   }
+
+   private void expireRequests() {
+      long now = System.nanoTime();
+      if (now - lastTimeoutCheck < TIMEOUT_CHECK_INTERVAL_NANOS) return;
+      lastTimeoutCheck = now;
+      for (SelectionKey key : selector.keys()) {
+         if (key.isValid()) ((NioConnection) key.attachment()).expireRequests(now);
+      }
+   }
+
+   private void runTasks() {
+      Runnable task;
+      while ((task = tasks.poll()) != null) {
+         try {
+            task.run();
+         } catch (Throwable t) {
+            log.error("Task " + task + " failed", t);
+         }
+      }
+   }
+}
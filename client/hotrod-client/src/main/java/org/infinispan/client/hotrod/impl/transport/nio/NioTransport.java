@@ -0,0 +1,151 @@
+package org.infinispan.client.hotrod.impl.transport.nio;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.infinispan.client.hotrod.exceptions.TransportException;
+import org.infinispan.client.hotrod.impl.protocol.HotRodConstants;
+import org.infinispan.client.hotrod.impl.transport.MultiplexedTransport;
+import org.infinispan.client.hotrod.impl.transport.ResponseDecoder;
+import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.util.concurrent.NotifyingFuture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+
+import static org.infinispan.io.UnsignedNumeric.*;
+
+/**
+ * Transport of a single request over a {@link NioConnection}.  The request is encoded into a pooled buffer, which is
+ * handed over to the connection when the request is sent.  Responses are decoded by the I/O thread of the connection,
+ * so this transport is only written to.
+ *
+ * @since 5.0
+ */
+@NotThreadSafe
+public class NioTransport implements MultiplexedTransport {
+
+   private final NioTransportFactory transportFactory;
+   private final NioConnection connection;
+   private final BufferPool bufferPool;
+   private ByteBuffer buffer;
+
+   NioTransport(NioTransportFactory transportFactory, NioConnection connection, BufferPool bufferPool) {
+      this.transportFactory = transportFactory;
+      this.connection = connection;
+      this.bufferPool = bufferPool;
+      this.buffer = bufferPool.acquire();
+   }
+
+   @Override
+   public void writeByte(short toWrite) {
+      ensureCapacity(1).put((byte) toWrite);
+   }
+
+   @Override
+   public void writeVInt(int vint) {
+      try {
+         writeUnsignedInt(ensureCapacity(5), vint);
+      } catch (IOException e) {
+         throw new TransportException(e);
+      }
+   }
+
+   @Override
+   public void writeVLong(long l) {
+      try {
+         writeUnsignedLong(ensureCapacity(10), l);
+      } catch (IOException e) {
+         throw new TransportException(e);
+      }
+   }
+
+   @Override
+   public void writeArray(byte[] toAppend) {
+      writeVInt(toAppend.length);
+      ensureCapacity(toAppend.length).put(toAppend);
+   }
+
+   @Override
+   public void writeLong(long longValue) {
+      ensureCapacity(8).putLong(longValue);
+   }
+
+   @Override
+   public void writeString(String string) {
+      writeArray(string.getBytes(HotRodConstants.HOTROD_STRING_CHARSET));
+   }
+
+   private ByteBuffer ensureCapacity(int bytes) {
+      if (buffer == null) throw new IllegalStateException("Request already sent");
+      if (buffer.remaining() < bytes) {
+         ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+         buffer.flip();
+         larger.put(buffer);
+         bufferPool.release(buffer);
+         buffer = larger;
+      }
+      return buffer;
+   }
+
+   /**
+    * Requests are sent as a whole by {@link #invoke(long, ResponseDecoder)}, so there is nothing to flush.
+    */
+   @Override
+   public void flush() {
+   }
+
+   /**
+    * The connection fails the request if no response is received within the socket timeout.
+    */
+   @Override
+   public Object invoke(long messageId, ResponseDecoder decoder) {
+      NotifyingFuture<Object> response = invokeAsync(messageId, decoder);
+      try {
+         return response.get();
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+         throw new TransportException(e.getCause());
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new TransportException(e);
+      }
+   }
+
+   @Override
+   public NotifyingFuture<Object> invokeAsync(long messageId, ResponseDecoder decoder) {
+      if (buffer == null) throw new IllegalStateException("Request already sent");
+      ByteBuffer request = buffer;
+      buffer = null;
+      request.flip();
+      return connection.send(messageId, request, decoder);
+   }
+
+   /**
+    * Returns the buffer to the pool if the request was never sent.  Once sent, the connection returns it.
+    */
+   void releaseBuffer() {
+      if (buffer != null) {
+         bufferPool.release(buffer);
+         buffer = null;
+      }
+   }
+
+   @Override
+   public TransportFactory getTransportFactory() {
+      return transportFactory;
+   }
+
+   public NioConnection getConnection() {
+      return connection;
+   }
+
+   @Override
+   public void release() {
+      releaseBuffer();
+   }
+
+   @Override
+   public String toString() {
+      return "NioTransport{connection=" + connection + "}";
+   }
+}
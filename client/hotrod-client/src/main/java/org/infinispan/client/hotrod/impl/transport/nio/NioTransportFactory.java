@@ -0,0 +1,271 @@
+package org.infinispan.client.hotrod.impl.transport.nio;
+
+import net.jcip.annotations.ThreadSafe;
+import org.infinispan.client.hotrod.exceptions.TransportException;
+import org.infinispan.client.hotrod.impl.ConfigurationProperties;
+import org.infinispan.client.hotrod.impl.consistenthash.ConsistentHash;
+import org.infinispan.client.hotrod.impl.consistenthash.ConsistentHashFactory;
+import org.infinispan.client.hotrod.impl.operations.PingOperation;
+import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
+import org.infinispan.client.hotrod.impl.transport.tcp.LoadAwareBalancingStrategy;
+import org.infinispan.client.hotrod.impl.transport.tcp.RequestBalancingStrategy;
+import org.infinispan.util.Util;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport factory multiplexing requests over a few non blocking connections per server, instead of holding a
+ * connection for the duration of each request like {@link org.infinispan.client.hotrod.impl.transport.tcp.TcpTransportFactory}
+ * does.  A single I/O thread writes the requests and decodes the responses of all the connections, so the number of
+ * requests in flight is not bounded by the number of connections, and asynchronous operations do not need a thread
+ * each.
+ * <p/>
+ * Enabled by setting {@link ConfigurationProperties#TRANSPORT_FACTORY} to this class.
+ *
+ * @since 5.0
+ */
+@ThreadSafe
+public class NioTransportFactory implements TransportFactory {
+
+   private static final Log log = LogFactory.getLog(NioTransportFactory.class);
+
+   private volatile RequestBalancingStrategy balancer;
+   private volatile Collection<InetSocketAddress> servers;
+   private volatile ConsistentHash consistentHash;
+   private volatile boolean tcpNoDelay;
+   private volatile int soTimeout;
+   private volatile int connectionsPerServer;
+   private volatile BufferPool bufferPool;
+   private volatile NioEventLoop eventLoop;
+   private final ConsistentHashFactory hashFactory = new ConsistentHashFactory();
+   private final ConcurrentMap<InetSocketAddress, NioConnection[]> connections = new ConcurrentHashMap<InetSocketAddress, NioConnection[]>();
+   private final AtomicInteger nextConnection = new AtomicInteger();
+
+   @Override
+   public void start(ConfigurationProperties cfg, Collection<InetSocketAddress> staticConfiguredServers, AtomicInteger topologyId) {
+      hashFactory.init(cfg);
+      servers = new HashSet<InetSocketAddress>(staticConfiguredServers);
+      balancer = (RequestBalancingStrategy) Util.getInstance(cfg.getRequestBalancingStrategy());
+      tcpNoDelay = cfg.getTcpNoDelay();
+      soTimeout = cfg.getSoTimeout();
+      connectionsPerServer = cfg.getNioConnectionsPerServer();
+      bufferPool = new BufferPool(cfg.getKeySizeEstimate() + cfg.getValueSizeEstimate() + 64, cfg.getNioBufferPoolSize());
+      eventLoop = new NioEventLoop("HotRodClient-IO");
+      eventLoop.start();
+      balancer.setServers(servers);
+      if (cfg.getPingOnStartup()) {
+         try {
+            new PingOperation(null, topologyId, getTransport()).execute();
+         } catch (Exception e) {
+            log.trace("Ignoring ping request failure during ping on startup: " + e.getMessage());
+         }
+      }
+   }
+
+   @Override
+   public void destroy() {
+      TransportException cause = new TransportException("Transport factory stopped");
+      for (NioConnection[] serverConnections : connections.values()) {
+         for (NioConnection c : serverConnections) {
+            if (c != null) closeConnection(c, cause);
+         }
+      }
+      connections.clear();
+      eventLoop.stop();
+   }
+
+   @Override
+   public void updateHashFunction(LinkedHashMap<InetSocketAddress, List<Integer>> servers2HashCodes, int numKeyOwners, short hashFunctionVersion, int hashSpace) {
+      ConsistentHash hash = hashFactory.newConsistentHash(hashFunctionVersion);
+      if (hash == null) {
+         log.warn("No hash function configured for version: " + hashFunctionVersion);
+      } else {
+         hash.init(servers2HashCodes, numKeyOwners, hashSpace);
+      }
+      consistentHash = hash;
+   }
+
+   @Override
+   public TransportOutput getTransport() {
+      return newTransport(balancer.nextServer());
+   }
+
+   @Override
+   public TransportOutput getTransport(byte[] key) {
+      InetSocketAddress server;
+      if (consistentHash != null) {
+         server = consistentHash.getServer(key);
+         if (log.isTraceEnabled()) {
+            log.trace("Using consistent hash for determining the server: " + server);
+         }
+      } else {
+         server = balancer.nextServer();
+         if (log.isTraceEnabled()) {
+            log.trace("Using the balancer for determining the server: " + server);
+         }
+      }
+      return newTransport(server);
+   }
+
+   @Override
+   public TransportOutput getReadTransport(byte[] key) {
+      RequestBalancingStrategy balancer = this.balancer;
+      ConsistentHash consistentHash = this.consistentHash;
+      if (consistentHash == null || !(balancer instanceof LoadAwareBalancingStrategy)) {
+         return getTransport(key);
+      }
+      InetSocketAddress server = ((LoadAwareBalancingStrategy) balancer).nextServer(consistentHash.getOwners(key));
+      if (log.isTraceEnabled()) {
+         log.trace("Using the least loaded owner of the key: " + server);
+      }
+      return newTransport(server);
+   }
+
+   private TransportOutput newTransport(InetSocketAddress server) {
+      return new NioTransport(this, getConnection(server), bufferPool);
+   }
+
+   /**
+    * Picks one of the connections to the server, connecting lazily.
+    */
+   private NioConnection getConnection(InetSocketAddress server) {
+      NioConnection[] serverConnections = connections.get(server);
+      if (serverConnections == null) {
+         serverConnections = new NioConnection[connectionsPerServer];
+         NioConnection[] existing = connections.putIfAbsent(server, serverConnections);
+         if (existing != null) serverConnections = existing;
+      }
+      int index = (nextConnection.getAndIncrement() & Integer.MAX_VALUE) % serverConnections.length;
+      NioConnection connection = serverConnections[index];
+      if (connection != null && !connection.isClosed()) return connection;
+      synchronized (serverConnections) {
+         connection = serverConnections[index];
+         if (connection == null || connection.isClosed()) {
+            connection = new NioConnection(server, this, eventLoop, bufferPool);
+            serverConnections[index] = connection;
+         }
+         return connection;
+      }
+   }
+
+   @Override
+   public void releaseTransport(TransportOutput transport) {
+      ((NioTransport) transport).releaseBuffer();
+   }
+
+   /**
+    * Might be called by the I/O thread, while decoding a response, so it must not open connections: connections to new
+    * servers are opened when first used.
+    */
+   @Override
+   public void updateServers(Collection<InetSocketAddress> newServers) {
+      synchronized (this) {
+         Set<InetSocketAddress> addedServers = new HashSet<InetSocketAddress>(newServers);
+         addedServers.removeAll(servers);
+         Set<InetSocketAddress> failedServers = new HashSet<InetSocketAddress>(servers);
+         failedServers.removeAll(newServers);
+         if (log.isTraceEnabled()) {
+            log.trace("Current list: " + servers);
+            log.trace("New list: " + newServers);
+            log.trace("Added servers: " + addedServers);
+            log.trace("Removed servers: " + failedServers);
+         }
+         if (addedServers.isEmpty() && failedServers.isEmpty()) {
+            log.trace("Same list of servers, not changing the connections");
+            return;
+         }
+
+         balancer.setServers(newServers);
+
+         for (InetSocketAddress server : failedServers) {
+            log.info("Server not in cluster anymore(" + server + "), closing its connections.");
+            NioConnection[] serverConnections = connections.remove(server);
+            if (serverConnections == null) continue;
+            for (NioConnection c : serverConnections) {
+               if (c != null) closeConnection(c, new TransportException("Server not in cluster anymore: " + server));
+            }
+         }
+
+         servers = new HashSet<InetSocketAddress>(newServers);
+      }
+   }
+
+   private void closeConnection(final NioConnection connection, final TransportException cause) {
+      if (eventLoop.inEventLoop()) {
+         connection.close(cause);
+      } else {
+         eventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+               connection.close(cause);
+            }
+         });
+      }
+   }
+
+   public Collection<InetSocketAddress> getServers() {
+      return servers;
+   }
+
+   public Collection<NioConnection> getConnections() {
+      Collection<NioConnection> result = new ArrayList<NioConnection>();
+      for (NioConnection[] serverConnections : connections.values()) {
+         for (NioConnection c : serverConnections) {
+            if (c != null) result.add(c);
+         }
+      }
+      return result;
+   }
+
+   @Override
+   public ConsistentHash getConsistentHash() {
+      return consistentHash;
+   }
+
+   public BufferPool getBufferPool() {
+      return bufferPool;
+   }
+
+   @Override
+   public boolean isTcpNoDelay() {
+      return tcpNoDelay;
+   }
+
+   @Override
+   public int getTransportCount() {
+      if (Thread.currentThread().isInterrupted()) {
+         return -1;
+      }
+      return connectionsPerServer * servers.size();
+   }
+
+   @Override
+   public int getSoTimeout() {
+      return soTimeout;
+   }
+
+   @Override
+   public RequestBalancingStrategy getBalancer() {
+      return balancer;
+   }
+
+   /**
+    * @return the balancer the connections report their requests to, or null if it does not track the servers' load
+    */
+   LoadAwareBalancingStrategy getLoadAwareBalancer() {
+      RequestBalancingStrategy balancer = this.balancer;
+      return balancer instanceof LoadAwareBalancingStrategy ? (LoadAwareBalancingStrategy) balancer : null;
+   }
+}
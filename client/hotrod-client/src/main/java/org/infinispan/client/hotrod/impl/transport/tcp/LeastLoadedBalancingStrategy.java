@@ -0,0 +1,179 @@
+package org.infinispan.client.hotrod.impl.transport.tcp;
+
+import net.jcip.annotations.ThreadSafe;
+import org.infinispan.client.hotrod.ClientStatistics;
+import org.infinispan.client.hotrod.impl.ClientStatisticsImpl;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends each request to the server expected to serve it first, i.e. the one with the lowest product of its requests in
+ * flight and of its average response time. The average is exponentially weighted, so that it follows the servers
+ * slowing down or recovering. Servers scoring the same are picked in turn, like {@link RoundRobinBalancingStrategy}
+ * does.
+ * <p/>
+ * A failed request does not count in the average, but adds a penalty to the response time expected from the server,
+ * which decreases linearly until it vanishes.  The server is thus avoided for a while, then sent requests again, and
+ * only penalized again if they fail too: a transient failure does not keep it from being picked for good.
+ * <p/>
+ * Enabled by setting <tt>infinispan.client.hotrod.request_balancing_strategy</tt> to this class.
+ *
+ * @since 5.0
+ */
+@ThreadSafe
+public class LeastLoadedBalancingStrategy implements LoadAwareBalancingStrategy {
+
+   private static final Log log = LogFactory.getLog(LeastLoadedBalancingStrategy.class);
+
+   /**
+    * Weight of the latest response time in the average response time.
+    */
+   private static final double RESPONSE_TIME_WEIGHT = 0.2;
+
+   /**
+    * Response time added to that expected from a server which has just failed a request, decreasing linearly to 0 over
+    * as many nanoseconds.
+    */
+   private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+   private final ConcurrentMap<InetSocketAddress, ServerLoad> loads = new ConcurrentHashMap<InetSocketAddress, ServerLoad>();
+   private final AtomicInteger index = new AtomicInteger(0);
+
+   private volatile List<InetSocketAddress> servers;
+
+   @Override
+   public void setServers(Collection<InetSocketAddress> servers) {
+      List<InetSocketAddress> newServers = Arrays.asList(servers.toArray(new InetSocketAddress[servers.size()]));
+      for (InetSocketAddress server : newServers) {
+         if (!loads.containsKey(server)) loads.putIfAbsent(server, new ServerLoad());
+      }
+      loads.keySet().retainAll(newServers);
+      this.servers = newServers;
+      if (log.isTraceEnabled()) {
+         log.trace("New server list is: " + newServers);
+      }
+   }
+
+   @Override
+   public InetSocketAddress nextServer() {
+      return nextServer(servers);
+   }
+
+   @Override
+   public InetSocketAddress nextServer(List<InetSocketAddress> candidates) {
+      int size = candidates.size();
+      int start = (index.getAndIncrement() & Integer.MAX_VALUE) % size;
+      long now = currentTimeNanos();
+      InetSocketAddress best = null;
+      long bestScore = Long.MAX_VALUE;
+      for (int i = 0; i < size; i++) {
+         InetSocketAddress server = candidates.get((start + i) % size);
+         ServerLoad load = loads.get(server);
+         // scored like a server which has not been sent any request yet
+         long score = load == null ? 1 : load.score(now);
+         if (score < bestScore) {
+            best = server;
+            bestScore = score;
+         }
+      }
+      if (log.isTraceEnabled()) {
+         log.trace("Returning server: " + best + " out of " + candidates);
+      }
+      return best;
+   }
+
+   @Override
+   public void requestStarted(InetSocketAddress server) {
+      ServerLoad load = loads.get(server);
+      if (load != null) load.inFlight.incrementAndGet();
+   }
+
+   @Override
+   public void requestCompleted(InetSocketAddress server, long responseTimeNanos) {
+      ServerLoad load = loads.get(server);
+      if (load != null) {
+         load.inFlight.decrementAndGet();
+         load.requests.incrementAndGet();
+         load.recordResponseTime(responseTimeNanos);
+      }
+   }
+
+   @Override
+   public void requestFailed(InetSocketAddress server) {
+      ServerLoad load = loads.get(server);
+      if (load != null) {
+         load.inFlight.decrementAndGet();
+         load.requests.incrementAndGet();
+         load.failedRequests.incrementAndGet();
+         load.lastFailureTime = currentTimeNanos();
+         load.failed = true;
+      }
+   }
+
+   /**
+    * Time source of the failure penalties, overridable by tests.
+    */
+   protected long currentTimeNanos() {
+      return System.nanoTime();
+   }
+
+   @Override
+   public Map<InetSocketAddress, ClientStatistics> getServerStatistics() {
+      Map<InetSocketAddress, ClientStatistics> result = new HashMap<InetSocketAddress, ClientStatistics>();
+      for (Map.Entry<InetSocketAddress, ServerLoad> entry : loads.entrySet()) {
+         ServerLoad load = entry.getValue();
+         ClientStatisticsImpl stats = new ClientStatisticsImpl();
+         stats.addStats(ClientStatistics.SERVER_REQUESTS, String.valueOf(load.requests.get()));
+         stats.addStats(ClientStatistics.SERVER_FAILED_REQUESTS, String.valueOf(load.failedRequests.get()));
+         stats.addStats(ClientStatistics.SERVER_REQUESTS_IN_FLIGHT, String.valueOf(Math.max(load.inFlight.get(), 0)));
+         stats.addStats(ClientStatistics.SERVER_AVERAGE_RESPONSE_TIME, String.valueOf(TimeUnit.NANOSECONDS.toMicros(load.averageResponseTime.get())));
+         result.put(entry.getKey(), stats);
+      }
+      return result;
+   }
+
+   private static class ServerLoad {
+      final AtomicInteger inFlight = new AtomicInteger();
+      final AtomicLong requests = new AtomicLong();
+      final AtomicLong failedRequests = new AtomicLong();
+      // 0 until the first response
+      final AtomicLong averageResponseTime = new AtomicLong();
+      volatile boolean failed;
+      volatile long lastFailureTime;
+
+      void recordResponseTime(long responseTimeNanos) {
+         long current, updated;
+         do {
+            current = averageResponseTime.get();
+            updated = current == 0 ? responseTimeNanos : current + (long) ((responseTimeNanos - current) * RESPONSE_TIME_WEIGHT);
+         } while (!averageResponseTime.compareAndSet(current, updated));
+      }
+
+      /**
+       * Time this server is expected to take to serve one more request.
+       */
+      long score(long now) {
+         // requests reported across a server list update might make it negative
+         long queued = Math.max(inFlight.get(), 0) + 1;
+         return queued * (Math.max(averageResponseTime.get(), 1) + failurePenalty(now));
+      }
+
+      long failurePenalty(long now) {
+         if (!failed) return 0;
+         long elapsed = now - lastFailureTime;
+         return elapsed >= FAILURE_PENALTY_NANOS ? 0 : FAILURE_PENALTY_NANOS - Math.max(elapsed, 0);
+      }
+   }
+}
@@ -0,0 +1,35 @@
+package org.infinispan.client.hotrod.impl.transport.tcp;
+
+import net.jcip.annotations.ThreadSafe;
+import org.infinispan.client.hotrod.ClientStatistics;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link RequestBalancingStrategy} which is told about the requests sent to each server, so that it can favour the
+ * least loaded and fastest servers. The transport factories report every request to it, and also ask it to pick
+ * between the owners of a key when reading the key from a distributed cache.
+ *
+ * @since 5.0
+ */
+@ThreadSafe
+public interface LoadAwareBalancingStrategy extends RequestBalancingStrategy {
+
+   /**
+    * Picks one of the given servers, e.g. one of the owners of a key.
+    */
+   InetSocketAddress nextServer(List<InetSocketAddress> candidates);
+
+   void requestStarted(InetSocketAddress server);
+
+   void requestCompleted(InetSocketAddress server, long responseTimeNanos);
+
+   void requestFailed(InetSocketAddress server);
+
+   /**
+    * @return the statistics gathered for each server, named as in {@link ClientStatistics}
+    */
+   Map<InetSocketAddress, ClientStatistics> getServerStatistics();
+}
@@ -33,6 +33,8 @@ public class TcpTransport extends AbstractTransport {
    private final Socket socket;
    private final InetSocketAddress serverAddress;
    private final long id = ID_COUNTER.incrementAndGet();
+   // when the transport was last borrowed from the pool, only used by the thread holding it
+   private long requestStartTime;
 
    public TcpTransport(InetSocketAddress serverAddress, TransportFactory transportFactory) {
       super(transportFactory);
@@ -217,4 +219,12 @@ public class TcpTransport extends AbstractTransport {
    public long getId() {
       return id;
    }
+
+   long getRequestStartTime() {
+      return requestStartTime;
+   }
+
+   void setRequestStartTime(long requestStartTime) {
+      this.requestStartTime = requestStartTime;
+   }
 }
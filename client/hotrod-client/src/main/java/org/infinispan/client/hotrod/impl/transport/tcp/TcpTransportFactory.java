@@ -8,6 +8,7 @@ import org.infinispan.client.hotrod.impl.consistenthash.ConsistentHash;
 import org.infinispan.client.hotrod.impl.consistenthash.ConsistentHashFactory;
 import org.infinispan.client.hotrod.impl.transport.Transport;
 import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.client.hotrod.impl.transport.TransportOutput;
 
 import org.infinispan.util.Util;
 import org.infinispan.util.logging.Log;
@@ -17,6 +18,7 @@ import java.net.InetSocketAddress;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -77,12 +79,12 @@ public class TcpTransportFactory implements TransportFactory {
    }
 
    @Override
-   public void updateHashFunction(LinkedHashMap<InetSocketAddress,Integer> servers2HashCode, int numKeyOwners, short hashFunctionVersion, int hashSpace) {
+   public void updateHashFunction(LinkedHashMap<InetSocketAddress, List<Integer>> servers2HashCodes, int numKeyOwners, short hashFunctionVersion, int hashSpace) {
       ConsistentHash hash = hashFactory.newConsistentHash(hashFunctionVersion);
       if (hash == null) {
          log.warn("No hash function configured for version: " + hashFunctionVersion);
       } else {
-         hash.init(servers2HashCode, numKeyOwners, hashSpace);
+         hash.init(servers2HashCodes, numKeyOwners, hashSpace);
       }
       consistentHash = hash;
    }
@@ -110,8 +112,30 @@ public class TcpTransportFactory implements TransportFactory {
    }
 
    @Override
-   public void releaseTransport(Transport transport) {
+   public Transport getReadTransport(byte[] key) {
+      RequestBalancingStrategy balancer = this.balancer;
+      ConsistentHash consistentHash = this.consistentHash;
+      if (consistentHash == null || !(balancer instanceof LoadAwareBalancingStrategy)) {
+         return getTransport(key);
+      }
+      InetSocketAddress server = ((LoadAwareBalancingStrategy) balancer).nextServer(consistentHash.getOwners(key));
+      if (log.isTraceEnabled()) {
+         log.trace("Using the least loaded owner of the key: " + server);
+      }
+      return borrowTransportFromPool(server);
+   }
+
+   @Override
+   public void releaseTransport(TransportOutput transport) {
       TcpTransport tcpTransport = (TcpTransport) transport;
+      if (balancer instanceof LoadAwareBalancingStrategy) {
+         LoadAwareBalancingStrategy loadAwareBalancer = (LoadAwareBalancingStrategy) balancer;
+         if (tcpTransport.isValid()) {
+            loadAwareBalancer.requestCompleted(tcpTransport.getServerAddress(), System.nanoTime() - tcpTransport.getRequestStartTime());
+         } else {
+            loadAwareBalancer.requestFailed(tcpTransport.getServerAddress());
+         }
+      }
       if (!tcpTransport.isValid()) {
          try {
             if (log.isTraceEnabled()) {
@@ -178,7 +202,9 @@ public class TcpTransportFactory implements TransportFactory {
    }
 
    public Collection<InetSocketAddress> getServers() {
-      return servers;
+      synchronized (this) { // the list is updated in place
+         return new HashSet<InetSocketAddress>(servers);
+      }
    }
 
    private void logConnectionInfo(InetSocketAddress server) {
@@ -188,9 +214,18 @@ public class TcpTransportFactory implements TransportFactory {
    }
 
    private Transport borrowTransportFromPool(InetSocketAddress server) {
+      RequestBalancingStrategy balancer = this.balancer;
+      if (balancer instanceof LoadAwareBalancingStrategy) {
+         ((LoadAwareBalancingStrategy) balancer).requestStarted(server);
+      }
       try {
-         return (Transport) connectionPool.borrowObject(server);
+         TcpTransport transport = (TcpTransport) connectionPool.borrowObject(server);
+         transport.setRequestStartTime(System.nanoTime());
+         return transport;
       } catch (Exception e) {
+         if (balancer instanceof LoadAwareBalancingStrategy) {
+            ((LoadAwareBalancingStrategy) balancer).requestFailed(server);
+         }
          String message = "Could not fetch transport";
          log.error(message, e);
          throw new TransportException(message, e);
@@ -199,6 +234,7 @@ public class TcpTransportFactory implements TransportFactory {
       }
    }
 
+   @Override
    public ConsistentHash getConsistentHash() {
       return consistentHash;
    }
@@ -224,6 +260,7 @@ public class TcpTransportFactory implements TransportFactory {
       return soTimeout;
    }
 
+   @Override
    public RequestBalancingStrategy getBalancer() {
       return balancer;
    }
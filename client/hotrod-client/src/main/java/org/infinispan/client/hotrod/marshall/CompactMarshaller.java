@@ -0,0 +1,304 @@
+package org.infinispan.client.hotrod.marshall;
+
+import net.jcip.annotations.ThreadSafe;
+import org.infinispan.CacheException;
+import org.infinispan.io.ByteBuffer;
+import org.infinispan.marshall.AbstractMarshaller;
+import org.infinispan.marshall.Externalizer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compact binary marshaller for the keys and values sent by the Hot Rod client. Each object is written as a one byte
+ * type tag followed by its content, without any class descriptor:
+ * <ul>
+ * <li>null, String, byte[], Boolean, Byte, Short, Character, Integer, Long, Float and Double. Integral numbers are
+ * written with a variable length zig zag encoding, so that small numbers take a single byte.</li>
+ * <li>List, Set and Map, whose elements are marshalled in turn, and which are read back as ArrayList, HashSet and
+ * HashMap.</li>
+ * <li>Instances of the classes handled by the {@link Externalizer}s registered with {@link
+ * #addExternalizer(Externalizer)}, which are identified by the id of their externalizer. Externalizers must be
+ * registered the same way by all the clients sharing the data.</li>
+ * </ul>
+ * Objects are marshalled into a buffer kept per thread, so that marshalling only allocates the returned array. To use
+ * externalizers, either pass an instance to {@link org.infinispan.client.hotrod.RemoteCacheManager}, or configure a
+ * subclass registering them in its constructor.
+ *
+ * @since 5.0
+ */
+@ThreadSafe
+public class CompactMarshaller extends AbstractMarshaller {
+
+   static final byte NULL = 0;
+   static final byte STRING = 1;
+   static final byte BYTE_ARRAY = 2;
+   static final byte BOOLEAN = 3;
+   static final byte BYTE = 4;
+   static final byte SHORT = 5;
+   static final byte CHAR = 6;
+   static final byte INT = 7;
+   static final byte LONG = 8;
+   static final byte FLOAT = 9;
+   static final byte DOUBLE = 10;
+   static final byte LIST = 11;
+   static final byte SET = 12;
+   static final byte MAP = 13;
+   static final byte EXTERNALIZED = 14;
+
+   /**
+    * Buffers grown beyond this size are not kept for reuse, so that marshalling a large object once does not retain
+    * memory for good.
+    */
+   private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+   private final ConcurrentMap<Class<?>, IdentifiedExternalizer> externalizersByClass = new ConcurrentHashMap<Class<?>, IdentifiedExternalizer>();
+   private final ConcurrentMap<Integer, IdentifiedExternalizer> externalizersById = new ConcurrentHashMap<Integer, IdentifiedExternalizer>();
+
+   private final ThreadLocal<CompactObjectOutput> outputs = new ThreadLocal<CompactObjectOutput>() {
+      @Override
+      protected CompactObjectOutput initialValue() {
+         return new CompactObjectOutput(CompactMarshaller.this, DEFAULT_BUF_SIZE);
+      }
+   };
+
+   /**
+    * Registers an externalizer for the classes it returns from {@link Externalizer#getTypeClasses()}. Must be called
+    * before marshalling any instance of these classes.
+    *
+    * @throws CacheException if the externalizer has no id, or if its id or classes are already in use
+    */
+   @SuppressWarnings("unchecked")
+   public void addExternalizer(Externalizer<?> externalizer) {
+      Integer id = externalizer.getId();
+      if (id == null || id < 0) {
+         throw new CacheException("Externalizer " + externalizer + " must have a positive id");
+      }
+      IdentifiedExternalizer identified = new IdentifiedExternalizer(id, (Externalizer<Object>) externalizer);
+      if (externalizersById.putIfAbsent(id, identified) != null) {
+         throw new CacheException("Duplicate externalizer id " + id + " for " + externalizer);
+      }
+      for (Class<?> clazz : externalizer.getTypeClasses()) {
+         if (externalizersByClass.putIfAbsent(clazz, identified) != null) {
+            throw new CacheException("An externalizer is already registered for " + clazz);
+         }
+      }
+   }
+
+   @Override
+   public byte[] objectToByteBuffer(Object obj, int estimatedSize) throws IOException {
+      CompactObjectOutput output = outputs.get();
+      if (output.inUse) {
+         // called by an externalizer, while marshalling another object
+         output = new CompactObjectOutput(this, estimatedSize);
+      }
+      output.inUse = true;
+      try {
+         writeObject(output, obj);
+         byte[] bytes = new byte[output.size()];
+         System.arraycopy(output.getBuffer(), 0, bytes, 0, bytes.length);
+         return bytes;
+      } finally {
+         output.inUse = false;
+         output.reset();
+         if (output.getBuffer().length > MAX_RETAINED_BUFFER_SIZE) outputs.remove();
+      }
+   }
+
+   @Override
+   protected ByteBuffer objectToBuffer(Object o, int estimatedSize) throws IOException {
+      byte[] bytes = objectToByteBuffer(o, estimatedSize);
+      return new ByteBuffer(bytes, 0, bytes.length);
+   }
+
+   @Override
+   public Object objectFromByteBuffer(byte[] buf, int offset, int length) throws IOException, ClassNotFoundException {
+      return readObject(new CompactObjectInput(this, buf, offset, length));
+   }
+
+   @Override
+   public boolean isMarshallable(Object o) {
+      if (o == null || o instanceof String || o instanceof byte[] || o instanceof Boolean || o instanceof Byte
+            || o instanceof Short || o instanceof Character || o instanceof Integer || o instanceof Long
+            || o instanceof Float || o instanceof Double || externalizersByClass.containsKey(o.getClass())) {
+         return true;
+      }
+      if (o instanceof List || o instanceof Set) {
+         for (Object element : (Collection<?>) o) {
+            if (!isMarshallable(element)) return false;
+         }
+         return true;
+      }
+      if (o instanceof Map) {
+         for (Map.Entry<?, ?> entry : ((Map<?, ?>) o).entrySet()) {
+            if (!isMarshallable(entry.getKey()) || !isMarshallable(entry.getValue())) return false;
+         }
+         return true;
+      }
+      return false;
+   }
+
+   void writeObject(CompactObjectOutput out, Object o) throws IOException {
+      if (o == null) {
+         out.write(NULL);
+         return;
+      }
+      Class<?> clazz = o.getClass();
+      if (clazz == String.class) {
+         out.write(STRING);
+         out.writeString((String) o);
+      } else if (clazz == byte[].class) {
+         byte[] bytes = (byte[]) o;
+         out.write(BYTE_ARRAY);
+         out.writeVInt(bytes.length);
+         out.write(bytes);
+      } else if (clazz == Integer.class) {
+         out.write(INT);
+         out.writeVInt(zigZag((Integer) o));
+      } else if (clazz == Long.class) {
+         out.write(LONG);
+         out.writeVLong(zigZag((Long) o));
+      } else if (clazz == Boolean.class) {
+         out.write(BOOLEAN);
+         out.writeBoolean((Boolean) o);
+      } else if (clazz == Double.class) {
+         out.write(DOUBLE);
+         out.writeDouble((Double) o);
+      } else if (clazz == Float.class) {
+         out.write(FLOAT);
+         out.writeFloat((Float) o);
+      } else if (clazz == Short.class) {
+         out.write(SHORT);
+         out.writeVInt(zigZag((Short) o));
+      } else if (clazz == Byte.class) {
+         out.write(BYTE);
+         out.writeByte((Byte) o);
+      } else if (clazz == Character.class) {
+         out.write(CHAR);
+         out.writeVInt((Character) o);
+      } else {
+         IdentifiedExternalizer externalizer = externalizersByClass.get(clazz);
+         if (externalizer != null) {
+            out.write(EXTERNALIZED);
+            out.writeVInt(externalizer.id);
+            externalizer.externalizer.writeObject(out, o);
+         } else if (o instanceof List) {
+            out.write(LIST);
+            writeElements(out, (List<?>) o);
+         } else if (o instanceof Set) {
+            out.write(SET);
+            writeElements(out, (Set<?>) o);
+         } else if (o instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) o;
+            out.write(MAP);
+            out.writeVInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+               writeObject(out, entry.getKey());
+               writeObject(out, entry.getValue());
+            }
+         } else {
+            throw new CacheException("Unsupported type: " + clazz);
+         }
+      }
+   }
+
+   private void writeElements(CompactObjectOutput out, Collection<?> elements) throws IOException {
+      out.writeVInt(elements.size());
+      for (Object element : elements) writeObject(out, element);
+   }
+
+   Object readObject(CompactObjectInput in) throws IOException, ClassNotFoundException {
+      byte type = in.readByte();
+      switch (type) {
+         case NULL:
+            return null;
+         case STRING:
+            return in.readString();
+         case BYTE_ARRAY: {
+            byte[] bytes = new byte[in.readLength(1)];
+            in.readFully(bytes);
+            return bytes;
+         }
+         case BOOLEAN:
+            return in.readBoolean();
+         case BYTE:
+            return in.readByte();
+         case SHORT:
+            return (short) unZigZag(in.readVInt());
+         case CHAR:
+            return (char) in.readVInt();
+         case INT:
+            return unZigZag(in.readVInt());
+         case LONG:
+            return unZigZag(in.readVLong());
+         case FLOAT:
+            return in.readFloat();
+         case DOUBLE:
+            return in.readDouble();
+         case LIST: {
+            int size = in.readLength(1);
+            List<Object> list = new ArrayList<Object>(size);
+            for (int i = 0; i < size; i++) list.add(readObject(in));
+            return list;
+         }
+         case SET: {
+            int size = in.readLength(1);
+            Set<Object> set = new HashSet<Object>(capacity(size));
+            for (int i = 0; i < size; i++) set.add(readObject(in));
+            return set;
+         }
+         case MAP: {
+            int size = in.readLength(2);
+            Map<Object, Object> map = new HashMap<Object, Object>(capacity(size));
+            for (int i = 0; i < size; i++) map.put(readObject(in), readObject(in));
+            return map;
+         }
+         case EXTERNALIZED: {
+            int id = in.readVInt();
+            IdentifiedExternalizer externalizer = externalizersById.get(id);
+            if (externalizer == null) throw new CacheException("No externalizer registered with id " + id);
+            return externalizer.externalizer.readObject(in);
+         }
+         default:
+            throw new CacheException("Unknown type " + type);
+      }
+   }
+
+   private static int capacity(int size) {
+      return Math.max((int) (size / .75f) + 1, 16);
+   }
+
+   private static int zigZag(int i) {
+      return (i << 1) ^ (i >> 31);
+   }
+
+   private static long zigZag(long i) {
+      return (i << 1) ^ (i >> 63);
+   }
+
+   private static int unZigZag(int i) {
+      return (i >>> 1) ^ -(i & 1);
+   }
+
+   private static long unZigZag(long i) {
+      return (i >>> 1) ^ -(i & 1);
+   }
+
+   private static class IdentifiedExternalizer {
+      final int id;
+      final Externalizer<Object> externalizer;
+
+      IdentifiedExternalizer(int id, Externalizer<Object> externalizer) {
+         this.id = id;
+         this.externalizer = externalizer;
+      }
+   }
+}
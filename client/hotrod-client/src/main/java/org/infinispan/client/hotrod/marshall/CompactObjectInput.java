@@ -0,0 +1,207 @@
+package org.infinispan.client.hotrod.marshall;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.StreamCorruptedException;
+
+/**
+ * {@link ObjectInput} reading what a {@link CompactObjectOutput} wrote, straight from the array holding it.
+ *
+ * @since 5.0
+ */
+@NotThreadSafe
+class CompactObjectInput implements ObjectInput {
+
+   private final CompactMarshaller marshaller;
+   private final byte[] buf;
+   private final int limit;
+   private int pos;
+
+   CompactObjectInput(CompactMarshaller marshaller, byte[] buf, int offset, int length) {
+      this.marshaller = marshaller;
+      this.buf = buf;
+      this.pos = offset;
+      this.limit = offset + length;
+   }
+
+   private void require(int n) throws EOFException {
+      if (limit - pos < n) {
+         throw new EOFException("Expected " + n + " more bytes but only " + (limit - pos) + " are left");
+      }
+   }
+
+   @Override
+   public Object readObject() throws ClassNotFoundException, IOException {
+      return marshaller.readObject(this);
+   }
+
+   @Override
+   public int read() {
+      return pos < limit ? buf[pos++] & 0xFF : -1;
+   }
+
+   @Override
+   public int read(byte[] b) {
+      return read(b, 0, b.length);
+   }
+
+   @Override
+   public int read(byte[] b, int off, int len) {
+      if (pos == limit) return -1;
+      int n = Math.min(len, limit - pos);
+      System.arraycopy(buf, pos, b, off, n);
+      pos += n;
+      return n;
+   }
+
+   @Override
+   public long skip(long n) {
+      int skipped = (int) Math.min(n, limit - pos);
+      pos += skipped;
+      return skipped;
+   }
+
+   @Override
+   public int available() {
+      return limit - pos;
+   }
+
+   @Override
+   public void readFully(byte[] b) throws IOException {
+      readFully(b, 0, b.length);
+   }
+
+   @Override
+   public void readFully(byte[] b, int off, int len) throws IOException {
+      require(len);
+      System.arraycopy(buf, pos, b, off, len);
+      pos += len;
+   }
+
+   @Override
+   public int skipBytes(int n) {
+      return (int) skip(n);
+   }
+
+   @Override
+   public boolean readBoolean() throws IOException {
+      return readByte() != 0;
+   }
+
+   @Override
+   public byte readByte() throws IOException {
+      require(1);
+      return buf[pos++];
+   }
+
+   @Override
+   public int readUnsignedByte() throws IOException {
+      return readByte() & 0xFF;
+   }
+
+   @Override
+   public short readShort() throws IOException {
+      require(2);
+      return (short) (((buf[pos++] & 0xFF) << 8) | (buf[pos++] & 0xFF));
+   }
+
+   @Override
+   public int readUnsignedShort() throws IOException {
+      return readShort() & 0xFFFF;
+   }
+
+   @Override
+   public char readChar() throws IOException {
+      return (char) readShort();
+   }
+
+   @Override
+   public int readInt() throws IOException {
+      require(4);
+      return ((buf[pos++] & 0xFF) << 24) | ((buf[pos++] & 0xFF) << 16) | ((buf[pos++] & 0xFF) << 8) | (buf[pos++] & 0xFF);
+   }
+
+   @Override
+   public long readLong() throws IOException {
+      return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+   }
+
+   @Override
+   public float readFloat() throws IOException {
+      return Float.intBitsToFloat(readInt());
+   }
+
+   @Override
+   public double readDouble() throws IOException {
+      return Double.longBitsToDouble(readLong());
+   }
+
+   @Override
+   public String readLine() {
+      throw new UnsupportedOperationException();
+   }
+
+   /**
+    * Reads a string written by {@link CompactObjectOutput#writeUTF(String)}.
+    */
+   @Override
+   public String readUTF() throws IOException {
+      return readString();
+   }
+
+   String readString() throws IOException {
+      int len = readLength(1);
+      char[] chars = new char[len];
+      for (int i = 0; i < len; i++) {
+         int b = readByte() & 0xFF;
+         if (b < 0x80) {
+            chars[i] = (char) b;
+         } else if (b < 0xE0) {
+            chars[i] = (char) (((b & 0x1F) << 6) | (readByte() & 0x3F));
+         } else {
+            chars[i] = (char) (((b & 0x0F) << 12) | ((readByte() & 0x3F) << 6) | (readByte() & 0x3F));
+         }
+      }
+      return new String(chars);
+   }
+
+   /**
+    * Reads the length of an array, string or collection whose elements take at least the given number of bytes each,
+    * and checks that they fit in the bytes left, so that a corrupt length never causes a huge allocation.
+    */
+   int readLength(int minElementSize) throws IOException {
+      int len = readVInt();
+      if (len < 0) throw new StreamCorruptedException("Negative length " + len);
+      if ((long) len * minElementSize > limit - pos) {
+         throw new EOFException("Length " + len + " exceeds the " + (limit - pos) + " bytes left");
+      }
+      return len;
+   }
+
+   int readVInt() throws IOException {
+      byte b = readByte();
+      int i = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+         b = readByte();
+         i |= (b & 0x7F) << shift;
+      }
+      return i;
+   }
+
+   long readVLong() throws IOException {
+      byte b = readByte();
+      long i = b & 0x7F;
+      for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+         b = readByte();
+         i |= (b & 0x7FL) << shift;
+      }
+      return i;
+   }
+
+   @Override
+   public void close() {
+   }
+}
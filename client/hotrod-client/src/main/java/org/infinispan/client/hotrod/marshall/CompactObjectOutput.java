@@ -0,0 +1,197 @@
+package org.infinispan.client.hotrod.marshall;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import java.io.IOException;
+import java.io.ObjectOutput;
+
+/**
+ * {@link ObjectOutput} writing into a growable byte array, which {@link CompactMarshaller} keeps per thread and reuses
+ * between calls. Handed to the externalizers, whose nested objects are written with {@link #writeObject(Object)}.
+ * <p/>
+ * Numbers written by {@link #writeInt(int)}, {@link #writeLong(long)} etc. take a fixed number of bytes, as {@link
+ * java.io.DataOutput} mandates, whereas the variable length encodings of {@link #writeVInt(int)} and {@link
+ * #writeVLong(long)} are used for lengths and for the numbers marshalled on their own.
+ *
+ * @since 5.0
+ */
+@NotThreadSafe
+class CompactObjectOutput implements ObjectOutput {
+
+   private final CompactMarshaller marshaller;
+   private byte[] buf;
+   private int pos;
+   // whether the marshaller is using it, so that a nested call on the same thread uses its own output
+   boolean inUse;
+
+   CompactObjectOutput(CompactMarshaller marshaller, int initialSize) {
+      this.marshaller = marshaller;
+      this.buf = new byte[initialSize];
+   }
+
+   byte[] getBuffer() {
+      return buf;
+   }
+
+   int size() {
+      return pos;
+   }
+
+   void reset() {
+      pos = 0;
+   }
+
+   private void ensureCapacity(int extra) {
+      int required = pos + extra;
+      if (required > buf.length) {
+         byte[] newBuf = new byte[Math.max(buf.length << 1, required)];
+         System.arraycopy(buf, 0, newBuf, 0, pos);
+         buf = newBuf;
+      }
+   }
+
+   @Override
+   public void writeObject(Object obj) throws IOException {
+      marshaller.writeObject(this, obj);
+   }
+
+   @Override
+   public void write(int b) {
+      ensureCapacity(1);
+      buf[pos++] = (byte) b;
+   }
+
+   @Override
+   public void write(byte[] b) {
+      write(b, 0, b.length);
+   }
+
+   @Override
+   public void write(byte[] b, int off, int len) {
+      ensureCapacity(len);
+      System.arraycopy(b, off, buf, pos, len);
+      pos += len;
+   }
+
+   @Override
+   public void writeBoolean(boolean v) {
+      write(v ? 1 : 0);
+   }
+
+   @Override
+   public void writeByte(int v) {
+      write(v);
+   }
+
+   @Override
+   public void writeShort(int v) {
+      ensureCapacity(2);
+      buf[pos++] = (byte) (v >>> 8);
+      buf[pos++] = (byte) v;
+   }
+
+   @Override
+   public void writeChar(int v) {
+      writeShort(v);
+   }
+
+   @Override
+   public void writeInt(int v) {
+      ensureCapacity(4);
+      buf[pos++] = (byte) (v >>> 24);
+      buf[pos++] = (byte) (v >>> 16);
+      buf[pos++] = (byte) (v >>> 8);
+      buf[pos++] = (byte) v;
+   }
+
+   @Override
+   public void writeLong(long v) {
+      writeInt((int) (v >>> 32));
+      writeInt((int) v);
+   }
+
+   @Override
+   public void writeFloat(float v) {
+      writeInt(Float.floatToIntBits(v));
+   }
+
+   @Override
+   public void writeDouble(double v) {
+      writeLong(Double.doubleToLongBits(v));
+   }
+
+   @Override
+   public void writeBytes(String s) {
+      int len = s.length();
+      ensureCapacity(len);
+      for (int i = 0; i < len; i++) buf[pos++] = (byte) s.charAt(i);
+   }
+
+   @Override
+   public void writeChars(String s) {
+      int len = s.length();
+      for (int i = 0; i < len; i++) writeChar(s.charAt(i));
+   }
+
+   /**
+    * Unlike {@link java.io.DataOutput#writeUTF(String)}, writes the string as {@link #writeString(String)} does, which
+    * {@link CompactObjectInput#readUTF()} reads back.
+    */
+   @Override
+   public void writeUTF(String s) {
+      writeString(s);
+   }
+
+   /**
+    * Writes the number of chars of the string, followed by the string encoded in UTF-8, encoding it straight into the
+    * buffer.
+    */
+   void writeString(String s) {
+      int len = s.length();
+      writeVInt(len);
+      ensureCapacity(len * 3);
+      byte[] buf = this.buf;
+      int pos = this.pos;
+      for (int i = 0; i < len; i++) {
+         char c = s.charAt(i);
+         if (c < 0x80) {
+            buf[pos++] = (byte) c;
+         } else if (c < 0x800) {
+            buf[pos++] = (byte) (0xC0 | (c >> 6));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+         } else {
+            // surrogates are encoded one by one, which decodes back to the same chars
+            buf[pos++] = (byte) (0xE0 | (c >> 12));
+            buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buf[pos++] = (byte) (0x80 | (c & 0x3F));
+         }
+      }
+      this.pos = pos;
+   }
+
+   void writeVInt(int i) {
+      ensureCapacity(5);
+      while ((i & ~0x7F) != 0) {
+         buf[pos++] = (byte) ((i & 0x7f) | 0x80);
+         i >>>= 7;
+      }
+      buf[pos++] = (byte) i;
+   }
+
+   void writeVLong(long i) {
+      ensureCapacity(10);
+      while ((i & ~0x7F) != 0) {
+         buf[pos++] = (byte) ((i & 0x7f) | 0x80);
+         i >>>= 7;
+      }
+      buf[pos++] = (byte) i;
+   }
+
+   @Override
+   public void flush() {
+   }
+
+   @Override
+   public void close() {
+   }
+}
@@ -0,0 +1,123 @@
+package org.infinispan.client.hotrod;
+
+import org.infinispan.client.hotrod.impl.transport.TransportFactory;
+import org.infinispan.config.Configuration;
+import org.infinispan.manager.CacheContainer;
+import org.infinispan.server.hotrod.HotRodServer;
+import org.infinispan.test.TestingUtil;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that put all and get all send a single request to each server owning some of the keys.
+ *
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "client.hotrod.BulkOperationsTest")
+public class BulkOperationsTest extends HitsAwareCacheManagersTest {
+
+   private static final int NUM_SERVERS = 3;
+   private static final int NUM_ENTRIES = 300;
+
+   private HotRodServer[] hotRodServers = new HotRodServer[NUM_SERVERS];
+   private RemoteCacheManager remoteCacheManager;
+   private RemoteCache<String, String> remoteCache;
+
+   @AfterMethod
+   @Override
+   protected void clearContent() throws Throwable {
+   }
+
+   @Override
+   protected void createCacheManagers() throws Throwable {
+      Configuration config = getDefaultClusteredConfig(Configuration.CacheMode.DIST_SYNC);
+      config.setNumOwners(1);
+      StringBuilder servers = new StringBuilder();
+      for (int i = 0; i < NUM_SERVERS; i++) {
+         addClusterEnabledCacheManager(config);
+         hotRodServers[i] = TestHelper.startHotRodServer(manager(i));
+         hrServ2CacheManager.put(getAddress(hotRodServers[i]), manager(i));
+         servers.append("localhost:").append(hotRodServers[i].getPort()).append(";");
+      }
+      TestingUtil.blockUntilViewsReceived(10000, manager(0).getCache(), manager(1).getCache(), manager(2).getCache());
+
+      Properties props = new Properties();
+      props.put("infinispan.client.hotrod.server_list", servers.toString());
+      remoteCacheManager = new RemoteCacheManager(props);
+      remoteCache = remoteCacheManager.getCache();
+   }
+
+   @AfterClass
+   @Override
+   protected void destroy() {
+      super.destroy();
+      remoteCacheManager.stop();
+      for (HotRodServer server : hotRodServers) server.stop();
+   }
+
+   public void testHashInfoRetrieved() throws InterruptedException {
+      TransportFactory transportFactory = (TransportFactory) TestingUtil.extractField(remoteCacheManager, "transportFactory");
+      for (int i = 0; i < 10; i++) {
+         remoteCache.put("k", "v");
+         if (transportFactory.getConsistentHash() != null) break;
+         Thread.sleep(1000);
+      }
+      assert transportFactory.getConsistentHash() != null;
+      remoteCache.remove("k");
+   }
+
+   @Test(dependsOnMethods = "testHashInfoRetrieved")
+   public void testPutAllSendsOneRequestPerServer() {
+      addInterceptors();
+      resetStats();
+      Map<String, String> entries = new HashMap<String, String>();
+      for (int i = 0; i < NUM_ENTRIES; i++) entries.put("key" + i, "value" + i);
+
+      remoteCache.putAll(entries);
+
+      for (Map.Entry<InetSocketAddress, CacheContainer> e : hrServ2CacheManager.entrySet()) {
+         int hits = getHitCountInterceptor(e.getValue().getCache()).getHits();
+         assert hits == 1 : "Expected a single put all on " + e.getKey() + " but got " + hits + " hits";
+      }
+      int stored = 0;
+      for (CacheContainer cm : hrServ2CacheManager.values()) {
+         stored += cm.getCache().getAdvancedCache().getDataContainer().size();
+      }
+      assert stored == NUM_ENTRIES : "With a single owner, every entry should be stored on its owner only, but " + stored + " entries are stored";
+   }
+
+   @Test(dependsOnMethods = "testPutAllSendsOneRequestPerServer")
+   public void testGetAll() {
+      Set<String> keys = new HashSet<String>();
+      for (int i = 0; i < NUM_ENTRIES; i++) keys.add("key" + i);
+      keys.add("missing");
+
+      Map<String, String> result = remoteCache.getAll(keys);
+
+      assert result.size() == NUM_ENTRIES : "Got " + result.size() + " entries";
+      assert !result.containsKey("missing");
+      for (int i = 0; i < NUM_ENTRIES; i++) {
+         assert ("value" + i).equals(result.get("key" + i));
+      }
+   }
+
+   @Test(dependsOnMethods = "testGetAll")
+   public void testPutAllWithLifespan() throws InterruptedException {
+      Map<String, String> entries = new HashMap<String, String>();
+      entries.put("mortal1", "v1");
+      entries.put("mortal2", "v2");
+      remoteCache.putAll(entries, 1, TimeUnit.SECONDS);
+      assert remoteCache.getAll(entries.keySet()).size() == 2;
+      Thread.sleep(2000);
+      assert remoteCache.getAll(entries.keySet()).isEmpty();
+   }
+}
@@ -0,0 +1,79 @@
+package org.infinispan.client.hotrod;
+
+import org.infinispan.client.hotrod.impl.consistenthash.ConsistentHashV1;
+import org.testng.annotations.Test;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests that the client locates the owners of a key like the servers do.
+ *
+ * @since 5.0
+ */
+@Test(groups = "unit", testName = "client.hotrod.ConsistentHashV1Test")
+public class ConsistentHashV1Test {
+
+   InetSocketAddress addr1 = new InetSocketAddress("localhost", 1111);
+   InetSocketAddress addr2 = new InetSocketAddress("localhost", 2222);
+   InetSocketAddress addr3 = new InetSocketAddress("localhost", 3333);
+
+   public void testOwnersFollowPrimaryOnTheWheel() {
+      ConsistentHashV1 hash = newHash(2);
+      Random random = new Random(42);
+      for (int i = 0; i < 1000; i++) {
+         byte[] key = new byte[8];
+         random.nextBytes(key);
+         List<InetSocketAddress> owners = hash.getOwners(key);
+         assert owners.size() == 2;
+         assert owners.get(0).equals(hash.getServer(key));
+         assert owners.get(1).equals(next(owners.get(0)));
+      }
+   }
+
+   public void testNoMoreOwnersThanServers() {
+      ConsistentHashV1 hash = newHash(5);
+      List<InetSocketAddress> owners = hash.getOwners("k".getBytes());
+      assert owners.size() == 3;
+      assert owners.contains(addr1) && owners.contains(addr2) && owners.contains(addr3);
+   }
+
+   public void testServerWithSeveralHashIds() {
+      LinkedHashMap<InetSocketAddress, List<Integer>> servers2HashCodes = new LinkedHashMap<InetSocketAddress, List<Integer>>();
+      servers2HashCodes.put(addr1, Arrays.asList(1000, 6000));
+      servers2HashCodes.put(addr2, Arrays.asList(5000, 10239));
+      servers2HashCodes.put(addr3, Arrays.asList(-1));
+      ConsistentHashV1 hash = new ConsistentHashV1();
+      hash.init(servers2HashCodes, 3, 10240);
+      Random random = new Random(42);
+      for (int i = 0; i < 1000; i++) {
+         byte[] key = new byte[8];
+         random.nextBytes(key);
+         List<InetSocketAddress> owners = hash.getOwners(key);
+         assert owners.size() == 2 : "Owners should be the distinct servers owning a range: " + owners;
+         assert new HashSet<InetSocketAddress>(owners).size() == 2;
+         assert owners.get(0).equals(hash.getServer(key));
+         assert !owners.contains(addr3);
+      }
+   }
+
+   private ConsistentHashV1 newHash(int numKeyOwners) {
+      LinkedHashMap<InetSocketAddress, List<Integer>> servers2HashCodes = new LinkedHashMap<InetSocketAddress, List<Integer>>();
+      servers2HashCodes.put(addr1, Arrays.asList(1000));
+      servers2HashCodes.put(addr2, Arrays.asList(5000));
+      servers2HashCodes.put(addr3, Arrays.asList(9000));
+      ConsistentHashV1 hash = new ConsistentHashV1();
+      hash.init(servers2HashCodes, numKeyOwners, 10240);
+      return hash;
+   }
+
+   private InetSocketAddress next(InetSocketAddress server) {
+      if (server.equals(addr1)) return addr2;
+      if (server.equals(addr2)) return addr3;
+      return addr1;
+   }
+}
@@ -0,0 +1,89 @@
+package org.infinispan.client.hotrod;
+
+import org.infinispan.client.hotrod.impl.ConfigurationProperties;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.server.hotrod.HotRodServer;
+import org.infinispan.test.SingleCacheManagerTest;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bytes allocated by the Hot Rod server threads per put and per get of large values, along with the
+ * throughput of those operations. Relies on the thread allocation counters of the HotSpot JVM.
+ *
+ * @since 5.0
+ */
+@Test(groups = "profiling", enabled = false, testName = "client.hotrod.HotRodServerAllocationPerfTest")
+public class HotRodServerAllocationPerfTest extends SingleCacheManagerTest {
+
+   private static final int[] VALUE_SIZES = {100 * 1024, 1024 * 1024};
+   private static final int WARMUP_OPERATIONS = 200;
+   private static final int OPERATIONS = 1000;
+
+   private HotRodServer hotrodServer;
+   private RemoteCacheManager remoteCacheManager;
+   private RemoteCache<String, byte[]> remoteCache;
+
+   @Override
+   protected EmbeddedCacheManager createCacheManager() throws Exception {
+      EmbeddedCacheManager cm = TestCacheManagerFactory.createLocalCacheManager();
+      cache = cm.getCache();
+      hotrodServer = TestHelper.startHotRodServer(cm);
+      Properties props = new Properties();
+      props.put(ConfigurationProperties.SERVER_LIST, "127.0.0.1:" + hotrodServer.getPort());
+      remoteCacheManager = new RemoteCacheManager(props);
+      remoteCache = remoteCacheManager.getCache();
+      return cm;
+   }
+
+   @AfterClass
+   @Override
+   protected void destroyAfterClass() {
+      super.destroyAfterClass();
+      remoteCacheManager.stop();
+      hotrodServer.stop();
+   }
+
+   public void testAllocationPerOperation() {
+      for (int size : VALUE_SIZES) {
+         byte[] value = new byte[size];
+         for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+            remoteCache.put("key" + (i % 10), value);
+            remoteCache.get("key" + (i % 10));
+         }
+
+         long allocated = serverAllocatedBytes();
+         long begin = System.nanoTime();
+         for (int i = 0; i < OPERATIONS; i++) remoteCache.put("key" + (i % 10), value);
+         report("put", size, serverAllocatedBytes() - allocated, System.nanoTime() - begin);
+
+         allocated = serverAllocatedBytes();
+         begin = System.nanoTime();
+         for (int i = 0; i < OPERATIONS; i++) remoteCache.get("key" + (i % 10));
+         report("get", size, serverAllocatedBytes() - allocated, System.nanoTime() - begin);
+      }
+   }
+
+   private void report(String op, int size, long allocated, long duration) {
+      log.info(op + " of " + (size / 1024) + " KB values: " + (allocated / OPERATIONS) + " bytes allocated per operation, "
+                     + (OPERATIONS * 1000000000L / duration) + " operations/s, average latency "
+                     + TimeUnit.NANOSECONDS.toMicros(duration / OPERATIONS) + " us");
+   }
+
+   private long serverAllocatedBytes() {
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      long total = 0;
+      for (Thread t : Thread.getAllStackTraces().keySet()) {
+         if (t.getName().startsWith("HotRodServer")) {
+            long allocated = threads.getThreadAllocatedBytes(t.getId());
+            if (allocated > 0) total += allocated;
+         }
+      }
+      return total;
+   }
+}
@@ -0,0 +1,132 @@
+package org.infinispan.client.hotrod;
+
+import org.infinispan.client.hotrod.impl.transport.tcp.LeastLoadedBalancingStrategy;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+/**
+ * @since 5.0
+ */
+@Test(groups = "unit", testName = "client.hotrod.LeastLoadedBalancingStrategyTest")
+public class LeastLoadedBalancingStrategyTest {
+
+   InetSocketAddress addr1 = new InetSocketAddress("localhost", 1111);
+   InetSocketAddress addr2 = new InetSocketAddress("localhost", 2222);
+   InetSocketAddress addr3 = new InetSocketAddress("localhost", 3333);
+   private LeastLoadedBalancingStrategy strategy;
+
+   @BeforeMethod
+   public void setUp() {
+      strategy = new LeastLoadedBalancingStrategy();
+      strategy.setServers(Arrays.asList(addr1, addr2, addr3));
+   }
+
+   public void testIdleServersPickedInTurn() {
+      Set<InetSocketAddress> picked = new HashSet<InetSocketAddress>();
+      for (int i = 0; i < 3; i++) picked.add(strategy.nextServer());
+      assertEquals(3, picked.size());
+   }
+
+   public void testLeastRequestsInFlight() {
+      strategy.requestStarted(addr1);
+      strategy.requestStarted(addr1);
+      strategy.requestStarted(addr2);
+      for (int i = 0; i < 10; i++) assertEquals(addr3, strategy.nextServer());
+      strategy.requestStarted(addr3);
+      strategy.requestStarted(addr3);
+      for (int i = 0; i < 10; i++) assertEquals(addr2, strategy.nextServer());
+   }
+
+   public void testFastestServer() {
+      respond(addr1, 1000000);
+      respond(addr2, 100000);
+      respond(addr3, 1000000);
+      for (int i = 0; i < 10; i++) assertEquals(addr2, strategy.nextServer());
+      // ten times as fast, but with ten requests in flight
+      for (int i = 0; i < 10; i++) strategy.requestStarted(addr2);
+      assert !addr2.equals(strategy.nextServer());
+   }
+
+   public void testFastestOwner() {
+      respond(addr1, 100000);
+      respond(addr2, 1000000);
+      respond(addr3, 500000);
+      List<InetSocketAddress> owners = Arrays.asList(addr2, addr3);
+      for (int i = 0; i < 10; i++) assertEquals(addr3, strategy.nextServer(owners));
+   }
+
+   public void testFailingServerAvoided() {
+      respond(addr1, 100000);
+      respond(addr2, 100000);
+      respond(addr3, 100000);
+      strategy.requestStarted(addr1);
+      strategy.requestFailed(addr1);
+      for (int i = 0; i < 10; i++) assert !addr1.equals(strategy.nextServer());
+   }
+
+   public void testFailurePenaltyVanishes() {
+      final AtomicLong now = new AtomicLong();
+      strategy = new LeastLoadedBalancingStrategy() {
+         @Override
+         protected long currentTimeNanos() {
+            return now.get();
+         }
+      };
+      strategy.setServers(Arrays.asList(addr1, addr2, addr3));
+      respond(addr1, 100000);
+      respond(addr2, 100000);
+      respond(addr3, 100000);
+      strategy.requestStarted(addr1);
+      strategy.requestFailed(addr1);
+      for (int i = 0; i < 10; i++) assert !addr1.equals(strategy.nextServer());
+      now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+      for (int i = 0; i < 10; i++) assert !addr1.equals(strategy.nextServer());
+      now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+      Set<InetSocketAddress> picked = new HashSet<InetSocketAddress>();
+      for (int i = 0; i < 3; i++) picked.add(strategy.nextServer());
+      assertEquals(3, picked.size());
+   }
+
+   public void testServerStatistics() {
+      respond(addr1, 2000000);
+      strategy.requestStarted(addr1);
+      strategy.requestStarted(addr2);
+      strategy.requestFailed(addr2);
+      Map<InetSocketAddress, ClientStatistics> stats = strategy.getServerStatistics();
+      assertEquals(3, stats.size());
+      ClientStatistics stats1 = stats.get(addr1);
+      assertEquals(1, (int) stats1.getIntStatistic(ClientStatistics.SERVER_REQUESTS));
+      assertEquals(1, (int) stats1.getIntStatistic(ClientStatistics.SERVER_REQUESTS_IN_FLIGHT));
+      assertEquals(2000, (int) stats1.getIntStatistic(ClientStatistics.SERVER_AVERAGE_RESPONSE_TIME));
+      assertEquals(1, (int) stats.get(addr2).getIntStatistic(ClientStatistics.SERVER_FAILED_REQUESTS));
+      assertEquals(0, (int) stats.get(addr2).getIntStatistic(ClientStatistics.SERVER_REQUESTS_IN_FLIGHT));
+   }
+
+   public void testRemoveServer() {
+      strategy.requestStarted(addr1);
+      List<InetSocketAddress> newServers = new ArrayList<InetSocketAddress>(Arrays.asList(addr1, addr2));
+      strategy.setServers(newServers);
+      for (int i = 0; i < 10; i++) assertEquals(addr2, strategy.nextServer());
+      assertEquals(2, strategy.getServerStatistics().size());
+      // reported by a request sent before the server left
+      strategy.requestCompleted(addr3, 100000);
+      assertEquals(2, strategy.getServerStatistics().size());
+   }
+
+   private void respond(InetSocketAddress server, long responseTimeNanos) {
+      strategy.requestStarted(server);
+      strategy.requestCompleted(server, responseTimeNanos);
+   }
+}
@@ -0,0 +1,134 @@
+package org.infinispan.client.hotrod;
+
+import org.infinispan.client.hotrod.impl.ConfigurationProperties;
+import org.infinispan.client.hotrod.impl.nearcache.NearCache;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.server.hotrod.HotRodServer;
+import org.infinispan.test.SingleCacheManagerTest;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.Properties;
+
+/**
+ * Tests that the near cache serves the values read before, and that the values modified by other clients are
+ * invalidated in it.
+ *
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "client.hotrod.NearCacheTest")
+public class NearCacheTest extends SingleCacheManagerTest {
+
+   private static final long TIMEOUT_MILLIS = 10000;
+
+   private HotRodServer hotrodServer;
+   private RemoteCacheManager nearCacheManager;
+   private RemoteCacheManager otherCacheManager;
+   private RemoteCache<String, String> nearCache;
+   private RemoteCache<String, String> otherCache;
+
+   @Override
+   protected EmbeddedCacheManager createCacheManager() throws Exception {
+      EmbeddedCacheManager cm = TestCacheManagerFactory.createLocalCacheManager();
+      cache = cm.getCache();
+      hotrodServer = TestHelper.startHotRodServer(cm);
+      Properties props = new Properties();
+      props.put(ConfigurationProperties.SERVER_LIST, "127.0.0.1:" + hotrodServer.getPort());
+      props.put(ConfigurationProperties.NEAR_CACHE_MAX_ENTRIES, "100");
+      nearCacheManager = new RemoteCacheManager(props);
+      nearCache = nearCacheManager.getCache();
+      otherCacheManager = new RemoteCacheManager("127.0.0.1", hotrodServer.getPort());
+      otherCache = otherCacheManager.getCache();
+      return cm;
+   }
+
+   @AfterClass
+   @Override
+   protected void destroyAfterClass() {
+      super.destroyAfterClass();
+      nearCacheManager.stop();
+      otherCacheManager.stop();
+      hotrodServer.stop();
+   }
+
+   public void testGetServedByNearCache() throws Exception {
+      otherCache.put("k1", "v1");
+      waitUntilCached("k1");
+      int hits = nearCache.clientStatistics().getIntStatistic(ClientStatistics.NEAR_CACHE_HITS);
+      int retrievals = nearCache.stats().getIntStatistic(ServerStatistics.RETRIEVALS);
+      for (int i = 0; i < 10; i++) assert "v1".equals(nearCache.get("k1"));
+      assert nearCache.clientStatistics().getIntStatistic(ClientStatistics.NEAR_CACHE_HITS) == hits + 10;
+      assert nearCache.stats().getIntStatistic(ServerStatistics.RETRIEVALS) == retrievals;
+      assert Double.parseDouble(nearCache.clientStatistics().getStatistic(ClientStatistics.NEAR_CACHE_HIT_RATIO)) > 0;
+   }
+
+   public void testModifiedByOtherClient() throws Exception {
+      otherCache.put("k2", "v1");
+      waitUntilCached("k2");
+      otherCache.put("k2", "v2");
+      waitUntilEquals("k2", "v2");
+      otherCache.remove("k2");
+      waitUntilEquals("k2", null);
+      assert nearCache.clientStatistics().getIntStatistic(ClientStatistics.NEAR_CACHE_INVALIDATIONS) >= 2;
+   }
+
+   public void testModifiedByThisClient() throws Exception {
+      nearCache.put("k3", "v1");
+      waitUntilCached("k3");
+      nearCache.put("k3", "v2");
+      assert "v2".equals(nearCache.get("k3"));
+      nearCache.remove("k3");
+      assert nearCache.get("k3") == null;
+   }
+
+   public void testClear() throws Exception {
+      nearCache.put("k4", "v1");
+      waitUntilCached("k4");
+      nearCache.clear();
+      assert nearCache.get("k4") == null;
+      assert nearCache.clientStatistics().getIntStatistic(ClientStatistics.NEAR_CACHE_SIZE) == 0;
+   }
+
+   public void testInvalidationOnlyPreventsCachingOfItsOwnStripe() {
+      NearCache near = new NearCache(100, "LRU", -1);
+      near.setCoherent(true);
+      byte[] k1 = "k1".getBytes(), k2 = "k2".getBytes(), v = "v".getBytes();
+
+      long k1Read = near.beginRead(k1), k2Read = near.beginRead(k2);
+      near.invalidate(k2);
+      near.putIfNotInvalidated(k1, v, k1Read);
+      near.putIfNotInvalidated(k2, v, k2Read);
+      assert near.get(k1) != null : "Invalidating another key should not prevent caching";
+      assert near.get(k2) == null : "A value read before its invalidation should not be cached";
+
+      long read = near.beginRead(k2);
+      near.clear();
+      near.putIfNotInvalidated(k2, v, read);
+      assert near.get(k2) == null : "A value read before a clear should not be cached";
+   }
+
+   /**
+    * Reads the key until it is served by the near cache, which only caches values once subscribed to the server.
+    */
+   private void waitUntilCached(String key) throws InterruptedException {
+      long giveUpTime = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      while (System.currentTimeMillis() < giveUpTime) {
+         int hits = nearCache.clientStatistics().getIntStatistic(ClientStatistics.NEAR_CACHE_HITS);
+         nearCache.get(key);
+         if (nearCache.clientStatistics().getIntStatistic(ClientStatistics.NEAR_CACHE_HITS) > hits) return;
+         Thread.sleep(100);
+      }
+      assert false : key + " was never cached";
+   }
+
+   private void waitUntilEquals(String key, String expected) throws InterruptedException {
+      long giveUpTime = System.currentTimeMillis() + TIMEOUT_MILLIS;
+      String value = nearCache.get(key);
+      while (expected == null ? value != null : !expected.equals(value)) {
+         assert System.currentTimeMillis() < giveUpTime : "Expected " + expected + " but still got " + value;
+         Thread.sleep(100);
+         value = nearCache.get(key);
+      }
+   }
+}
@@ -0,0 +1,127 @@
+package org.infinispan.client.hotrod;
+
+import org.infinispan.client.hotrod.impl.ConfigurationProperties;
+import org.infinispan.client.hotrod.impl.transport.nio.NioTransportFactory;
+import org.infinispan.client.hotrod.impl.transport.tcp.TcpTransportFactory;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.server.hotrod.HotRodServer;
+import org.infinispan.test.SingleCacheManagerTest;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.infinispan.util.concurrent.NotifyingFuture;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput and latency of the pooled TCP transport with those of the multiplexing NIO transport, with
+ * many threads issuing synchronous requests, and with a single thread keeping many asynchronous requests in flight.
+ *
+ * @since 5.0
+ */
+@Test(groups = "profiling", enabled = false, testName = "client.hotrod.NioTransportPerfTest")
+public class NioTransportPerfTest extends SingleCacheManagerTest {
+
+   private static final int THREADS = 50;
+   private static final int REQUESTS_PER_THREAD = 2000;
+   private static final int ASYNC_REQUESTS = 100000;
+   private static final int ASYNC_WINDOW = 500;
+
+   private HotRodServer hotrodServer;
+
+   @Override
+   protected EmbeddedCacheManager createCacheManager() throws Exception {
+      EmbeddedCacheManager cm = TestCacheManagerFactory.createLocalCacheManager();
+      cache = cm.getCache();
+      hotrodServer = TestHelper.startHotRodServer(cm);
+      return cm;
+   }
+
+   @AfterClass
+   @Override
+   protected void destroyAfterClass() {
+      super.destroyAfterClass();
+      hotrodServer.stop();
+   }
+
+   public void testSyncThroughput() throws Exception {
+      for (String transport : new String[]{TcpTransportFactory.class.getName(), NioTransportFactory.class.getName()}) {
+         RemoteCacheManager rcm = new RemoteCacheManager(properties(transport));
+         try {
+            final RemoteCache<String, String> c = rcm.getCache();
+            final CountDownLatch start = new CountDownLatch(1);
+            final AtomicLong latencyNanos = new AtomicLong();
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < THREADS; t++) {
+               final int thread = t;
+               Thread worker = new Thread() {
+                  @Override
+                  public void run() {
+                     try {
+                        start.await();
+                        for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                           long begin = System.nanoTime();
+                           if (i % 5 == 0) {
+                              c.put("key" + thread + "-" + (i % 100), "value" + i);
+                           } else {
+                              c.get("key" + thread + "-" + (i % 100));
+                           }
+                           latencyNanos.addAndGet(System.nanoTime() - begin);
+                        }
+                     } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                     }
+                  }
+               };
+               worker.start();
+               threads.add(worker);
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread t : threads) t.join();
+            long duration = System.nanoTime() - begin;
+            int requests = THREADS * REQUESTS_PER_THREAD;
+            log.info(transport + ": " + (requests * 1000000000L / duration) + " requests/s, average latency "
+                           + TimeUnit.NANOSECONDS.toMicros(latencyNanos.get() / requests) + " us");
+         } finally {
+            rcm.stop();
+         }
+      }
+   }
+
+   public void testAsyncThroughput() throws Exception {
+      for (String transport : new String[]{TcpTransportFactory.class.getName(), NioTransportFactory.class.getName()}) {
+         RemoteCacheManager rcm = new RemoteCacheManager(properties(transport));
+         try {
+            RemoteCache<String, String> c = rcm.getCache();
+            List<NotifyingFuture<String>> window = new ArrayList<NotifyingFuture<String>>(ASYNC_WINDOW);
+            long begin = System.nanoTime();
+            for (int i = 0; i < ASYNC_REQUESTS; i++) {
+               window.add(c.putAsync("key" + (i % 1000), "value" + i));
+               if (window.size() == ASYNC_WINDOW) {
+                  for (NotifyingFuture<String> f : window) f.get();
+                  window.clear();
+               }
+            }
+            for (NotifyingFuture<String> f : window) f.get();
+            long duration = System.nanoTime() - begin;
+            log.info(transport + ": " + (ASYNC_REQUESTS * 1000000000L / duration) + " async requests/s");
+         } finally {
+            rcm.stop();
+         }
+      }
+   }
+
+   private Properties properties(String transportFactory) {
+      Properties props = new Properties();
+      props.put(ConfigurationProperties.SERVER_LIST, "127.0.0.1:" + hotrodServer.getPort());
+      props.put(ConfigurationProperties.TRANSPORT_FACTORY, transportFactory);
+      props.put("maxActive", String.valueOf(THREADS));
+      return props;
+   }
+}
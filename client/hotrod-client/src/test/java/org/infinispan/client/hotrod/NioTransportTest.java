@@ -0,0 +1,146 @@
+package org.infinispan.client.hotrod;
+
+import org.infinispan.client.hotrod.exceptions.TransportException;
+import org.infinispan.client.hotrod.impl.ConfigurationProperties;
+import org.infinispan.client.hotrod.impl.transport.nio.NioConnection;
+import org.infinispan.client.hotrod.impl.transport.nio.NioTransportFactory;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.server.hotrod.HotRodServer;
+import org.infinispan.test.SingleCacheManagerTest;
+import org.infinispan.test.TestingUtil;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.infinispan.util.concurrent.NotifyingFuture;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests the multiplexing {@link NioTransportFactory}, with all the requests sharing a single connection.
+ *
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "client.hotrod.NioTransportTest")
+public class NioTransportTest extends SingleCacheManagerTest {
+   private HotRodServer hotrodServer;
+   private RemoteCacheManager rcm;
+   private RemoteCache<String, Object> c;
+   private NioTransportFactory transportFactory;
+
+   @Override
+   protected EmbeddedCacheManager createCacheManager() throws Exception {
+      EmbeddedCacheManager cm = TestCacheManagerFactory.createLocalCacheManager();
+      cache = cm.getCache();
+      hotrodServer = TestHelper.startHotRodServer(cm);
+      Properties props = new Properties();
+      props.put(ConfigurationProperties.SERVER_LIST, "127.0.0.1:" + hotrodServer.getPort());
+      props.put(ConfigurationProperties.TRANSPORT_FACTORY, NioTransportFactory.class.getName());
+      props.put(ConfigurationProperties.NIO_CONNECTIONS_PER_SERVER, "1");
+      props.put(ConfigurationProperties.FORCE_RETURN_VALUES, "true");
+      rcm = new RemoteCacheManager(props);
+      c = rcm.getCache(true);
+      transportFactory = (NioTransportFactory) TestingUtil.extractField(rcm, "transportFactory");
+      return cm;
+   }
+
+   @AfterClass
+   @Override
+   protected void destroyAfterClass() {
+      super.destroyAfterClass();
+      rcm.stop();
+      hotrodServer.stop();
+   }
+
+   public void testSyncOperations() {
+      assert c.put("k", "v") == null;
+      assert "v".equals(c.get("k"));
+      assert c.containsKey("k");
+      assert "v".equals(c.replace("k", "v2"));
+      VersionedValue versioned = c.getVersioned("k");
+      assert c.replaceWithVersion("k", "v3", versioned.getVersion());
+      assert !c.removeWithVersion("k", versioned.getVersion());
+      assert c.getBulk().size() == 1;
+      assert c.stats().getStatistic(ServerStatistics.CURRENT_NR_OF_ENTRIES) != null;
+      assert "v3".equals(c.remove("k"));
+      assert c.get("k") == null;
+      c.put("k", "v");
+      c.clear();
+      assert c.get("k") == null;
+   }
+
+   public void testManyRequestsInFlight() throws Exception {
+      int count = 1000;
+      List<NotifyingFuture<Object>> puts = new ArrayList<NotifyingFuture<Object>>(count);
+      for (int i = 0; i < count; i++) puts.add(c.putAsync("key" + i, "value" + i));
+      for (NotifyingFuture<Object> f : puts) assert f.get() == null;
+
+      List<NotifyingFuture<Object>> gets = new ArrayList<NotifyingFuture<Object>>(count);
+      for (int i = 0; i < count; i++) gets.add(c.getAsync("key" + i));
+      for (int i = 0; i < count; i++) {
+         assert ("value" + i).equals(gets.get(i).get()) : "Wrong value for key" + i + ": " + gets.get(i).get();
+      }
+
+      assert transportFactory.getConnections().size() == 1;
+      NioConnection connection = transportFactory.getConnections().iterator().next();
+      assert !connection.isClosed();
+      assert connection.getPendingResponses() == 0;
+      assert cache.size() == count;
+   }
+
+   public void testValueLargerThanBuffers() throws Exception {
+      byte[] value = new byte[transportFactory.getBufferPool().getBufferSize() * 50];
+      for (int i = 0; i < value.length; i++) value[i] = (byte) i;
+      c.put("large", value);
+      assert Arrays.equals(value, (byte[]) c.get("large"));
+      assert Arrays.equals(value, (byte[]) c.getAsync("large").get());
+   }
+
+   public void testVersionedAsyncOperations() throws Exception {
+      c.put("versioned", "v1");
+      VersionedValue versioned = c.getVersioned("versioned");
+      assert !c.replaceWithVersionAsync("versioned", "v2", versioned.getVersion() + 1).get();
+      assert c.replaceWithVersionAsync("versioned", "v2", versioned.getVersion()).get();
+      versioned = c.getVersioned("versioned");
+      assert c.removeWithVersionAsync("versioned", versioned.getVersion()).get();
+      assert c.get("versioned") == null;
+   }
+
+   public void testUnansweredRequestTimesOut() throws Exception {
+      // accepts connections, but never answers
+      ServerSocket silentServer = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+      Properties props = new Properties();
+      props.put(ConfigurationProperties.SERVER_LIST, "127.0.0.1:" + silentServer.getLocalPort());
+      props.put(ConfigurationProperties.TRANSPORT_FACTORY, NioTransportFactory.class.getName());
+      props.put(ConfigurationProperties.NIO_CONNECTIONS_PER_SERVER, "1");
+      props.put(ConfigurationProperties.SO_TIMEOUT, "500");
+      props.put(ConfigurationProperties.PING_ON_STARTUP, "false");
+      RemoteCacheManager silentRcm = new RemoteCacheManager(props);
+      try {
+         NotifyingFuture<Object> put = silentRcm.getCache().putAsync("k", "v");
+         try {
+            put.get(10, TimeUnit.SECONDS);
+            assert false : "The server never answers";
+         } catch (ExecutionException e) {
+            assert e.getCause() instanceof TransportException : e.getCause();
+         }
+         NioTransportFactory silentTransportFactory = (NioTransportFactory) TestingUtil.extractField(silentRcm, "transportFactory");
+         final NioConnection connection = silentTransportFactory.getConnections().iterator().next();
+         eventually(new Condition() {
+            @Override
+            public boolean isSatisfied() throws Exception {
+               return connection.isClosed() && connection.getPendingResponses() == 0;
+            }
+         });
+      } finally {
+         silentRcm.stop();
+         silentServer.close();
+      }
+   }
+}
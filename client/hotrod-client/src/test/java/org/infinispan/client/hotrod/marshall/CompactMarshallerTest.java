@@ -0,0 +1,199 @@
+package org.infinispan.client.hotrod.marshall;
+
+import org.infinispan.CacheException;
+import org.infinispan.marshall.AbstractExternalizer;
+import org.infinispan.util.Util;
+import org.testng.annotations.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "client.hotrod.marshall.CompactMarshallerTest")
+public class CompactMarshallerTest {
+
+   private final CompactMarshaller marshaller = new CompactMarshaller();
+
+   public CompactMarshallerTest() {
+      marshaller.addExternalizer(new PersonExternalizer());
+   }
+
+   public void testPrimitives() throws Exception {
+      assertEquality(true);
+      assertEquality(false);
+      assertEquality((byte) -7);
+      assertEquality((short) -300);
+      assertEquality('x');
+      assertEquality(0);
+      assertEquality(-1);
+      assertEquality(Integer.MAX_VALUE);
+      assertEquality(Integer.MIN_VALUE);
+      assertEquality(Long.MAX_VALUE);
+      assertEquality(Long.MIN_VALUE);
+      assertEquality(123.4f);
+      assertEquality(5.678e9);
+      assert null == marshallUnmarshall(null);
+   }
+
+   public void testSmallNumbersTakeTwoBytes() throws Exception {
+      assert marshaller.objectToByteBuffer(63).length == 2;
+      assert marshaller.objectToByteBuffer(-64).length == 2;
+      assert marshaller.objectToByteBuffer(63L).length == 2;
+   }
+
+   public void testStrings() throws Exception {
+      assertEquality("");
+      assertEquality("Galder");
+      assertEquality("\u00e9t\u00e9 \u20ac \u4e2d\u6587 \ud83d\ude00");
+      assert marshaller.objectToByteBuffer("abc").length == 5;
+   }
+
+   public void testBytes() throws Exception {
+      byte[] x = new byte[]{1, 2, 3, 4};
+      assert Arrays.equals(x, (byte[]) marshallUnmarshall(x));
+      byte[] large = new byte[100000];
+      large[99999] = 9;
+      assert Arrays.equals(large, (byte[]) marshallUnmarshall(large));
+   }
+
+   @Test(expectedExceptions = EOFException.class)
+   public void testCorruptByteArrayLength() throws Exception {
+      // a byte array claiming Integer.MAX_VALUE bytes, followed by only two
+      byte[] corrupt = {CompactMarshaller.BYTE_ARRAY, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 1, 2};
+      marshaller.objectFromByteBuffer(corrupt);
+   }
+
+   @Test(expectedExceptions = IOException.class)
+   public void testNegativeListSize() throws Exception {
+      byte[] corrupt = {CompactMarshaller.LIST, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+      marshaller.objectFromByteBuffer(corrupt);
+   }
+
+   public void testCollections() throws Exception {
+      List<Object> list = new ArrayList<Object>(Arrays.asList("a", 1, 2L, null, 4.5));
+      assertEquality(list);
+      assertEquality(new LinkedList<Object>(list));
+      Set<Object> set = new HashSet<Object>(Arrays.asList("a", "b", 3));
+      assertEquality(set);
+      Map<Object, Object> map = new HashMap<Object, Object>();
+      map.put("k1", list);
+      map.put(2, set);
+      map.put(null, "null key");
+      assertEquality(map);
+   }
+
+   public void testExternalizer() throws Exception {
+      Person person = new Person("Galder", 33);
+      assertEquality(person);
+      List<Person> people = Arrays.asList(person, new Person("Manik", 32));
+      assertEquality(new ArrayList<Person>(people));
+      // tag, id, name and age
+      assert marshaller.objectToByteBuffer(person).length == 1 + 1 + 7 + 1;
+   }
+
+   public void testIsMarshallable() {
+      assert marshaller.isMarshallable("a");
+      assert marshaller.isMarshallable(new Person("a", 1));
+      assert marshaller.isMarshallable(Arrays.asList(1, "a"));
+      assert !marshaller.isMarshallable(new Object());
+      assert !marshaller.isMarshallable(Arrays.asList(1, new Object()));
+   }
+
+   @Test(expectedExceptions = CacheException.class)
+   public void testUnsupportedType() throws Exception {
+      marshaller.objectToByteBuffer(new Object());
+   }
+
+   @Test(expectedExceptions = CacheException.class)
+   public void testDuplicateExternalizerId() {
+      marshaller.addExternalizer(new PersonExternalizer());
+   }
+
+   public void testBufferReusedAfterFailure() throws Exception {
+      try {
+         marshaller.objectToByteBuffer(Arrays.asList("partially written", new Object()));
+         assert false : "should have failed";
+      } catch (CacheException e) {
+         // expected
+      }
+      assertEquality("next");
+   }
+
+   private void assertEquality(Object x) throws Exception {
+      Object y = marshallUnmarshall(x);
+      assert x.equals(y) : "Expected " + x + " but got " + y;
+   }
+
+   private Object marshallUnmarshall(Object o) throws Exception {
+      byte[] bytes = marshaller.objectToByteBuffer(o);
+      // unmarshalled from the middle of an array, as the Hot Rod transport might
+      byte[] padded = new byte[bytes.length + 4];
+      System.arraycopy(bytes, 0, padded, 2, bytes.length);
+      Object result = marshaller.objectFromByteBuffer(padded, 2, bytes.length);
+      assert Util.safeEquals(result, marshaller.objectFromByteBuffer(bytes));
+      return result;
+   }
+
+   static class Person {
+      final String name;
+      final int age;
+
+      Person(String name, int age) {
+         this.name = name;
+         this.age = age;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (!(o instanceof Person)) return false;
+         Person other = (Person) o;
+         return name.equals(other.name) && age == other.age;
+      }
+
+      @Override
+      public int hashCode() {
+         return name.hashCode() * 31 + age;
+      }
+
+      @Override
+      public String toString() {
+         return "Person{name=" + name + ", age=" + age + '}';
+      }
+   }
+
+   static class PersonExternalizer extends AbstractExternalizer<Person> {
+      @Override
+      public void writeObject(ObjectOutput output, Person person) throws IOException {
+         output.writeUTF(person.name);
+         output.writeByte(person.age);
+      }
+
+      @Override
+      public Person readObject(ObjectInput input) throws IOException {
+         return new Person(input.readUTF(), input.readByte());
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public Set<Class<? extends Person>> getTypeClasses() {
+         return Util.<Class<? extends Person>>asSet(Person.class);
+      }
+
+      @Override
+      public Integer getId() {
+         return 100;
+      }
+   }
+}
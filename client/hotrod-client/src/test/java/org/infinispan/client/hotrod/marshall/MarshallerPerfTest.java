@@ -0,0 +1,77 @@
+package org.infinispan.client.hotrod.marshall;
+
+import org.infinispan.marshall.Marshaller;
+import org.infinispan.marshall.jboss.GenericJBossMarshaller;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the size of the payloads produced by the marshallers available to the Hot Rod client, and the time and
+ * bytes allocated per marshalling and unmarshalling. Relies on the thread allocation counters of the HotSpot JVM.
+ *
+ * @since 5.0
+ */
+@Test(groups = "profiling", enabled = false, testName = "client.hotrod.marshall.MarshallerPerfTest")
+public class MarshallerPerfTest {
+
+   private static final Log log = LogFactory.getLog(MarshallerPerfTest.class);
+
+   private static final int WARMUP_OPERATIONS = 100000;
+   private static final int OPERATIONS = 1000000;
+
+   public void testMarshallers() throws Exception {
+      Map<String, Object> payloads = new HashMap<String, Object>();
+      payloads.put("int", 42);
+      payloads.put("short string", "user:12345");
+      payloads.put("byte[100]", new byte[100]);
+      List<Object> list = new ArrayList<Object>();
+      for (int i = 0; i < 20; i++) list.add("element" + i);
+      payloads.put("list of 20 strings", list);
+      Map<String, Long> map = new HashMap<String, Long>();
+      for (int i = 0; i < 20; i++) map.put("key" + i, (long) i);
+      payloads.put("map of 20 entries", map);
+
+      Marshaller[] marshallers = {new GenericJBossMarshaller(), new ApacheAvroMarshaller(), new CompactMarshaller()};
+      for (Map.Entry<String, Object> payload : payloads.entrySet()) {
+         for (Marshaller marshaller : marshallers) {
+            measure(marshaller, payload.getKey(), payload.getValue());
+         }
+      }
+   }
+
+   private void measure(Marshaller marshaller, String payloadName, Object payload) throws Exception {
+      byte[] bytes = marshaller.objectToByteBuffer(payload);
+      for (int i = 0; i < WARMUP_OPERATIONS; i++) {
+         marshaller.objectFromByteBuffer(marshaller.objectToByteBuffer(payload));
+      }
+
+      long allocated = allocatedBytes();
+      long begin = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) marshaller.objectToByteBuffer(payload);
+      long marshallTime = System.nanoTime() - begin;
+      long marshallAllocated = allocatedBytes() - allocated;
+
+      allocated = allocatedBytes();
+      begin = System.nanoTime();
+      for (int i = 0; i < OPERATIONS; i++) marshaller.objectFromByteBuffer(bytes);
+      long unmarshallTime = System.nanoTime() - begin;
+      long unmarshallAllocated = allocatedBytes() - allocated;
+
+      log.info(String.format("%s, %s: %d bytes; marshall %d ns/op, %d bytes allocated/op; unmarshall %d ns/op, %d bytes allocated/op",
+            marshaller.getClass().getSimpleName(), payloadName, bytes.length,
+            marshallTime / OPERATIONS, marshallAllocated / OPERATIONS,
+            unmarshallTime / OPERATIONS, unmarshallAllocated / OPERATIONS));
+   }
+
+   private long allocatedBytes() {
+      com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+   }
+}
@@ -37,6 +37,7 @@ import org.infinispan.commands.remote.SingleRpcCommand;
 import org.infinispan.commands.tx.CommitCommand;
 import org.infinispan.commands.tx.PrepareCommand;
 import org.infinispan.commands.tx.RollbackCommand;
+import org.infinispan.commands.tx.TotalOrderPrepareCommand;
 import org.infinispan.commands.write.ClearCommand;
 import org.infinispan.commands.write.EvictCommand;
 import org.infinispan.commands.write.InvalidateCommand;
@@ -241,6 +242,15 @@ public interface CommandsFactory {
     */
    ClusteredGetCommand buildClusteredGetCommand(Object key, Set<Flag> flags);
 
+   /**
+    * Builds a ClusteredGetCommand, which is a remote lookup command, on behalf of a node that caches the entry
+    * retrieved in L1
+    * @param key key to look up
+    * @param requestor node caching the entry in L1
+    * @return a ClusteredGetCommand
+    */
+   ClusteredGetCommand buildClusteredGetCommand(Object key, Set<Flag> flags, Address requestor);
+
    /**
     * Builds a LockControlCommand to control explicit remote locking
     * @param keys keys to lock
@@ -282,6 +292,20 @@ public interface CommandsFactory {
     */
    RehashControlCommand buildRehashControlCommandTxLogPendingPrepares(Address sender, List<PrepareCommand> state);
 
+   /**
+    * Builds a RehashControlCommand for coordinating a rehash event.  This version of this factory method creates a
+    * control command requesting the next chunk of a state transfer started by a
+    * {@link org.infinispan.commands.control.RehashControlCommand.Type#PULL_STATE_JOIN} or
+    * {@link org.infinispan.commands.control.RehashControlCommand.Type#PULL_STATE_LEAVE} command.  The
+    * {@link org.infinispan.commands.control.RehashControlCommand.Type} of this command is
+    * {@link org.infinispan.commands.control.RehashControlCommand.Type#PULL_STATE_NEXT_CHUNK}.
+    *
+    * @param sender sender's Address
+    * @param transferId identifier of the state transfer, as returned with its previous chunk
+    * @return a RehashControlCommand
+    */
+   RehashControlCommand buildRehashControlCommandNextStateChunk(Address sender, long transferId);
+
 
    /**
     * Builds a RehashControlCommand for coordinating a rehash event. This particular variation of RehashControlCommand
@@ -297,6 +321,16 @@ public interface CommandsFactory {
     */
    String getCacheName();
 
+   /**
+    * Builds a TotalOrderPrepareCommand, carrying a prepare to be ordered or that has been ordered.
+    * @param prepare prepare of the transaction
+    * @param ordered false to request the prepare to be ordered, true once it has been
+    * @param epoch epoch of the snapshot the transaction read, or that the prepare was ordered in
+    * @param sequence sequence of the snapshot the transaction read, or that the prepare was given
+    * @return a TotalOrderPrepareCommand
+    */
+   TotalOrderPrepareCommand buildTotalOrderPrepareCommand(PrepareCommand prepare, boolean ordered, int epoch, long sequence);
+
    /**
     * Builds a {@link org.infinispan.commands.remote.GetInDoubtTransactionsCommand}.
     */
@@ -39,6 +39,7 @@ import org.infinispan.commands.remote.SingleRpcCommand;
 import org.infinispan.commands.tx.CommitCommand;
 import org.infinispan.commands.tx.PrepareCommand;
 import org.infinispan.commands.tx.RollbackCommand;
+import org.infinispan.commands.tx.TotalOrderPrepareCommand;
 import org.infinispan.commands.write.ClearCommand;
 import org.infinispan.commands.write.EvictCommand;
 import org.infinispan.commands.write.InvalidateCommand;
@@ -54,6 +55,7 @@ import org.infinispan.container.entries.InternalCacheValue;
 import org.infinispan.context.Flag;
 import org.infinispan.context.InvocationContextContainer;
 import org.infinispan.distribution.DistributionManager;
+import org.infinispan.distribution.L1Manager;
 import org.infinispan.distribution.ch.ConsistentHash;
 import org.infinispan.factories.KnownComponentNames;
 import org.infinispan.factories.annotations.ComponentName;
@@ -66,6 +68,7 @@ import org.infinispan.remoting.transport.Address;
 import org.infinispan.transaction.xa.DldGlobalTransaction;
 import org.infinispan.transaction.xa.GlobalTransaction;
 import org.infinispan.transaction.RemoteTransaction;
+import org.infinispan.transaction.TotalOrderManager;
 import org.infinispan.transaction.TransactionTable;
 import org.infinispan.transaction.xa.recovery.RecoveryManager;
 import org.infinispan.util.logging.Log;
@@ -79,6 +82,7 @@ import java.util.Set;
 
 import static org.infinispan.commands.control.RehashControlCommand.Type.LEAVE_DRAIN_TX;
 import static org.infinispan.commands.control.RehashControlCommand.Type.LEAVE_DRAIN_TX_PREPARES;
+import static org.infinispan.commands.control.RehashControlCommand.Type.PULL_STATE_NEXT_CHUNK;
 
 /**
  * @author Mircea.Markus@jboss.com
@@ -104,10 +108,12 @@ public class CommandsFactoryImpl implements CommandsFactory {
    EntrySetCommand cachedEntrySetCommand;
    private InterceptorChain interceptorChain;
    private DistributionManager distributionManager;
+   private L1Manager l1Manager;
    private InvocationContextContainer icc;
    private TransactionTable txTable;
    private Configuration configuration;
    private RecoveryManager recoveryManager;
+   private TotalOrderManager totalOrderManager;
 
    private Map<Byte, ModuleCommandInitializer> moduleCommandInitializers;
 
@@ -116,7 +122,7 @@ public class CommandsFactoryImpl implements CommandsFactory {
                                  InterceptorChain interceptorChain, DistributionManager distributionManager,
                                  InvocationContextContainer icc, TransactionTable txTable, Configuration configuration,
                                  @ComponentName(KnownComponentNames.MODULE_COMMAND_INITIALIZERS) Map<Byte, ModuleCommandInitializer> moduleCommandInitializers,
-                                 RecoveryManager recoveryManager) {
+                                 RecoveryManager recoveryManager, L1Manager l1Manager, TotalOrderManager totalOrderManager) {
       this.dataContainer = container;
       this.notifier = notifier;
       this.cache = cache;
@@ -127,6 +133,8 @@ public class CommandsFactoryImpl implements CommandsFactory {
       this.configuration = configuration;
       this.moduleCommandInitializers = moduleCommandInitializers;
       this.recoveryManager = recoveryManager;
+      this.l1Manager = l1Manager;
+      this.totalOrderManager = totalOrderManager;
    }
 
    @Start(priority = 1)
@@ -237,6 +245,10 @@ public class CommandsFactoryImpl implements CommandsFactory {
       return new ClusteredGetCommand(key, cacheName, flags);
    }
 
+   public ClusteredGetCommand buildClusteredGetCommand(Object key, Set<Flag> flags, Address requestor) {
+      return new ClusteredGetCommand(key, cacheName, flags, requestor);
+   }
+
    /**
     * @param isRemote true if the command is deserialized and is executed remote.
     */
@@ -289,6 +301,11 @@ public class CommandsFactoryImpl implements CommandsFactory {
                transaction.setLocksHeldAtOrigin(pc.getAffectedKeys());
             }
             break;
+         case TotalOrderPrepareCommand.COMMAND_ID:
+            TotalOrderPrepareCommand topc = (TotalOrderPrepareCommand) c;
+            topc.init(totalOrderManager);
+            initializeReplicableCommand(topc.getPrepare(), isRemote);
+            break;
          case CommitCommand.COMMAND_ID:
             CommitCommand commitCommand = (CommitCommand) c;
             commitCommand.init(interceptorChain, icc, txTable);
@@ -305,7 +322,7 @@ public class CommandsFactoryImpl implements CommandsFactory {
             break;
          case ClusteredGetCommand.COMMAND_ID:
             ClusteredGetCommand clusteredGetCommand = (ClusteredGetCommand) c;
-            clusteredGetCommand.initialize(icc, this, interceptorChain, distributionManager);
+            clusteredGetCommand.initialize(icc, this, interceptorChain, distributionManager, l1Manager);
             break;
          case LockControlCommand.COMMAND_ID:
             LockControlCommand lcc = (LockControlCommand) c;
@@ -365,6 +382,10 @@ public class CommandsFactoryImpl implements CommandsFactory {
       return new RehashControlCommand(cacheName, LEAVE_DRAIN_TX_PREPARES, sender, null, commands, this);
    }
 
+   public RehashControlCommand buildRehashControlCommandNextStateChunk(Address sender, long transferId) {
+      return new RehashControlCommand(cacheName, PULL_STATE_NEXT_CHUNK, sender, transferId, this);
+   }
+
    public RehashControlCommand buildRehashControlCommand(RehashControlCommand.Type type,
             Address sender, Map<Object, InternalCacheValue> state, ConsistentHash oldCH,
             ConsistentHash newCH, List<Address> leavers) {
@@ -375,6 +396,11 @@ public class CommandsFactoryImpl implements CommandsFactory {
       return cacheName;
    }
 
+   @Override
+   public TotalOrderPrepareCommand buildTotalOrderPrepareCommand(PrepareCommand prepare, boolean ordered, int epoch, long sequence) {
+      return new TotalOrderPrepareCommand(cacheName, prepare, ordered, epoch, sequence);
+   }
+
    @Override
    public GetInDoubtTransactionsCommand buildGetInDoubtTransactionsCommand() {
       return new GetInDoubtTransactionsCommand(cacheName);
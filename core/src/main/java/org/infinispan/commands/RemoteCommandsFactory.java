@@ -14,6 +14,7 @@ import org.infinispan.commands.remote.SingleRpcCommand;
 import org.infinispan.commands.tx.CommitCommand;
 import org.infinispan.commands.tx.PrepareCommand;
 import org.infinispan.commands.tx.RollbackCommand;
+import org.infinispan.commands.tx.TotalOrderPrepareCommand;
 import org.infinispan.commands.write.ClearCommand;
 import org.infinispan.commands.write.InvalidateCommand;
 import org.infinispan.commands.write.InvalidateL1Command;
@@ -102,6 +103,9 @@ public class RemoteCommandsFactory {
          case CommitCommand.COMMAND_ID:
             command = new CommitCommand();
             break;
+         case TotalOrderPrepareCommand.COMMAND_ID:
+            command = new TotalOrderPrepareCommand();
+            break;
          case RollbackCommand.COMMAND_ID:
             command = new RollbackCommand();
             break;
@@ -8,24 +8,22 @@ import org.infinispan.commands.tx.PrepareCommand;
 import org.infinispan.commands.write.WriteCommand;
 import org.infinispan.config.Configuration;
 import org.infinispan.container.DataContainer;
-import org.infinispan.container.entries.InternalCacheEntry;
 import org.infinispan.container.entries.InternalCacheValue;
 import org.infinispan.context.InvocationContext;
 import org.infinispan.distribution.DistributionManager;
+import org.infinispan.distribution.OutboundStateTransfer;
 import org.infinispan.distribution.RemoteTransactionLogDetails;
+import org.infinispan.distribution.StateChunk;
 import org.infinispan.distribution.TransactionLogger;
 import org.infinispan.distribution.ch.ConsistentHash;
 import org.infinispan.distribution.ch.NodeTopologyInfo;
 import org.infinispan.loaders.CacheLoaderException;
-import org.infinispan.loaders.CacheStore;
 import org.infinispan.remoting.transport.Address;
 import org.infinispan.remoting.transport.Transport;
-import org.infinispan.util.ReadOnlyDataContainerBackedKeySet;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -58,7 +56,10 @@ public class RehashControlCommand extends BaseRpcCommand {
       LEAVE_DRAIN_TX_PREPARES,
       JOIN_TX_LOG_REQ,
       JOIN_TX_FINAL_LOG_REQ,
-      JOIN_TX_LOG_CLOSE
+      JOIN_TX_LOG_CLOSE,
+      PULL_STATE_NEXT_CHUNK,
+      PULL_STATE_JOIN_ABORT,
+      PULL_STATE_LEAVE_ABORT
    }
 
    Type type;
@@ -67,6 +68,7 @@ public class RehashControlCommand extends BaseRpcCommand {
    ConsistentHash oldCH;
    List<Address> nodesLeft;
    ConsistentHash newCH;
+   long transferId;
 
    // cache components
    DistributionManager distributionManager;
@@ -105,6 +107,14 @@ public class RehashControlCommand extends BaseRpcCommand {
       this.commandsFactory = commandsFactory;
    }
 
+   public RehashControlCommand(String cacheName, Type type, Address sender, long transferId, CommandsFactory commandsFactory) {
+      super(cacheName);
+      this.type = type;
+      this.sender = sender;
+      this.transferId = transferId;
+      this.commandsFactory = commandsFactory;
+   }
+
    public RehashControlCommand(Transport transport) {
       this.transport = transport;
    }
@@ -140,6 +150,16 @@ public class RehashControlCommand extends BaseRpcCommand {
             return pullStateForJoin();             
          case PULL_STATE_LEAVE:
              return pullStateForLeave();          
+         case PULL_STATE_NEXT_CHUNK:
+            return distributionManager.nextStateChunk(sender, transferId);
+         case PULL_STATE_JOIN_ABORT:
+            distributionManager.abortStateTransfer(sender);
+            // nothing logged since the state was pulled will ever be drained
+            distributionManager.getTransactionLogger().disable();
+            return null;
+         case PULL_STATE_LEAVE_ABORT:
+            distributionManager.abortStateTransfer(sender);
+            return null;
          case LEAVE_DRAIN_TX: // used for a LEAVE ONLY!!
             distributionManager.applyRemoteTxLog(txLogCommands);
             return null;
@@ -174,51 +194,27 @@ public class RehashControlCommand extends BaseRpcCommand {
       tl.unlockAndDisable(sender);
    }
 
-   public Map<Object, InternalCacheValue> pullStateForJoin() throws CacheLoaderException {           
+   public StateChunk pullStateForJoin() throws CacheLoaderException {
       distributionManager.getTransactionLogger().enable();
-      Map<Object, InternalCacheValue> state = new HashMap<Object, InternalCacheValue>();
-      for (InternalCacheEntry ice : dataContainer) {
-         Object k = ice.getKey();
-         if (shouldTransferOwnershipToJoinNode(k)) {            
-             state.put(k, ice.toInternalCacheValue());
+      return distributionManager.startStateTransfer(new OutboundStateTransfer(sender, dataContainer,
+            distributionManager.getCacheStoreForRehashing(), configuration) {
+         @Override
+         protected boolean shouldTransfer(Object key) {
+            return shouldTransferOwnershipToJoinNode(key);
          }
-      }
-
-      CacheStore cacheStore = distributionManager.getCacheStoreForRehashing();
-      if (cacheStore != null) {
-         for (Object k: cacheStore.loadAllKeys(new ReadOnlyDataContainerBackedKeySet(dataContainer))) {
-            if (!state.containsKey(k) && shouldTransferOwnershipToJoinNode(k)) {                
-               InternalCacheValue v = loadValue(cacheStore, k);               
-               if (v != null) state.put(k, v);
-            }
-         }
-      }
-      return state;
+      });
    }
-   
-   public Map<Object, InternalCacheValue> pullStateForLeave() throws CacheLoaderException {
-     
-      Map<Object, InternalCacheValue> state = new HashMap<Object, InternalCacheValue>();
-      for (InternalCacheEntry ice : dataContainer) {
-         Object k = ice.getKey();
-         if (shouldTransferOwnershipFromLeftNodes(k)) {
-            state.put(k, ice.toInternalCacheValue());
-         }
-      }
 
-      CacheStore cacheStore = distributionManager.getCacheStoreForRehashing();
-      if (cacheStore != null) {
-         for (Object k : cacheStore.loadAllKeys(new ReadOnlyDataContainerBackedKeySet(dataContainer))) {
-            if (!state.containsKey(k) && shouldTransferOwnershipFromLeftNodes(k)) {
-               InternalCacheValue v = loadValue(cacheStore, k);               
-               if (v != null)
-                  state.put(k, v);
-            }
+   public StateChunk pullStateForLeave() throws CacheLoaderException {
+      return distributionManager.startStateTransfer(new OutboundStateTransfer(sender, dataContainer,
+            distributionManager.getCacheStoreForRehashing(), configuration) {
+         @Override
+         protected boolean shouldTransfer(Object key) {
+            return shouldTransferOwnershipFromLeftNodes(key);
          }
-      }
-      return state;
+      });
    }
-   
+
    private boolean shouldTransferOwnershipFromLeftNodes(Object k) {      
       Address self = transport.getAddress();      
       int numCopies = configuration.getNumOwners();
@@ -236,16 +232,6 @@ public class RehashControlCommand extends BaseRpcCommand {
    }
       
 
-   private InternalCacheValue loadValue(CacheStore cs, Object k) {
-      try {
-         InternalCacheEntry ice = cs.load(k);
-         return ice == null ? null : ice.toInternalCacheValue();
-      } catch (CacheLoaderException cle) {
-         log.warn("Unable to load " + k + " from cache loader", cle);
-      }
-      return null;
-   }
-
    final boolean shouldTransferOwnershipToJoinNode(Object k) {     
       Address self = transport.getAddress();      
       int numCopies = configuration.getNumOwners(); 
@@ -266,7 +252,7 @@ public class RehashControlCommand extends BaseRpcCommand {
    }
 
    public Object[] getParameters() {
-      return new Object[]{cacheName, (byte) type.ordinal(), sender, state, oldCH, nodesLeft, newCH, txLogCommands, pendingPrepares, nodeTopologyInfo};
+      return new Object[]{cacheName, (byte) type.ordinal(), sender, state, oldCH, nodesLeft, newCH, txLogCommands, pendingPrepares, nodeTopologyInfo, transferId};
    }
 
    public void setNodeTopologyInfo(NodeTopologyInfo nodeTopologyInfo) {
@@ -286,6 +272,7 @@ public class RehashControlCommand extends BaseRpcCommand {
       txLogCommands = (List<WriteCommand>) parameters[i++];
       pendingPrepares = (List<PrepareCommand>) parameters[i++];
       nodeTopologyInfo = (NodeTopologyInfo) parameters[i++];
+      transferId = (Long) parameters[i++];
    }
 
    @Override
@@ -300,6 +287,7 @@ public class RehashControlCommand extends BaseRpcCommand {
             ", txLogCommands=" + (txLogCommands == null ? "N/A" : txLogCommands.size()) +
             ", pendingPrepares=" + (pendingPrepares == null ? "N/A" : pendingPrepares.size()) +
             ", nodeTopologyInfo=" + nodeTopologyInfo +
+            ", transferId=" + transferId +
             '}';
    }
 }
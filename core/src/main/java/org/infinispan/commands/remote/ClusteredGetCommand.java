@@ -33,7 +33,9 @@ import org.infinispan.context.Flag;
 import org.infinispan.context.InvocationContext;
 import org.infinispan.context.InvocationContextContainer;
 import org.infinispan.distribution.DistributionManager;
+import org.infinispan.distribution.L1Manager;
 import org.infinispan.interceptors.InterceptorChain;
+import org.infinispan.remoting.transport.Address;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
@@ -62,7 +64,13 @@ public class ClusteredGetCommand extends BaseRpcCommand implements FlagAffectedC
 
    private Set<Flag> flags;
 
+   /**
+    * Node issuing the get, if it caches the result in L1
+    */
+   private Address requestor;
+
    private DistributionManager distributionManager;
+   private L1Manager l1Manager;
 
    public ClusteredGetCommand() {
    }
@@ -77,9 +85,16 @@ public class ClusteredGetCommand extends BaseRpcCommand implements FlagAffectedC
       this(key, cacheName, Collections.<Flag>emptySet());
    }
 
+   public ClusteredGetCommand(Object key, String cacheName, Set<Flag> flags, Address requestor) {
+      this(key, cacheName, flags);
+      this.requestor = requestor;
+   }
+
    public void initialize(InvocationContextContainer icc, CommandsFactory commandsFactory,
-                          InterceptorChain interceptorChain, DistributionManager distributionManager) {
+                          InterceptorChain interceptorChain, DistributionManager distributionManager,
+                          L1Manager l1Manager) {
       this.distributionManager = distributionManager;
+      this.l1Manager = l1Manager;
       this.icc = icc;
       this.commandsFactory = commandsFactory;
       this.invoker = interceptorChain;
@@ -93,6 +108,8 @@ public class ClusteredGetCommand extends BaseRpcCommand implements FlagAffectedC
     */
    public InternalCacheValue perform(InvocationContext context) throws Throwable {
       if (distributionManager != null && distributionManager.isAffectedByRehash(key)) return null;
+      // track the requestor before reading the entry, so that a write racing with this get invalidates it
+      if (requestor != null && l1Manager != null) l1Manager.addRequestor(key, requestor);
       GetKeyValueCommand command = commandsFactory.buildGetKeyValueCommand(key, flags);
       command.setReturnCacheEntry(true);
       InvocationContext invocationContext = icc.createRemoteInvocationContextForCommand(command);
@@ -117,7 +134,7 @@ public class ClusteredGetCommand extends BaseRpcCommand implements FlagAffectedC
    }
 
    public Object[] getParameters() {
-      return new Object[]{key, cacheName, flags};
+      return new Object[]{key, cacheName, flags, requestor};
    }
 
    public void setParameters(int commandId, Object[] args) {
@@ -126,6 +143,9 @@ public class ClusteredGetCommand extends BaseRpcCommand implements FlagAffectedC
       if (args.length>2) {
          this.flags = (Set<Flag>) args[2];
       }
+      if (args.length>3) {
+         this.requestor = (Address) args[3];
+      }
    }
 
    @Override
@@ -151,6 +171,7 @@ public class ClusteredGetCommand extends BaseRpcCommand implements FlagAffectedC
          .append("ClusteredGetCommand{key=")
          .append(key)
          .append(", flags=").append(flags)
+         .append(", requestor=").append(requestor)
          .append("}")
          .toString();
    }
@@ -0,0 +1,103 @@
+package org.infinispan.commands.tx;
+
+import org.infinispan.commands.remote.BaseRpcCommand;
+import org.infinispan.context.InvocationContext;
+import org.infinispan.transaction.TotalOrderManager;
+
+/**
+ * Carries the prepare of a transaction when total order commit is enabled.  Sent by the node running the transaction
+ * to the coordinator, it asks for the prepare to be certified and ordered, and carries the snapshot the transaction
+ * read.  Broadcast by the coordinator, it carries the position the prepare was given in the total order, and is
+ * queued on every node to be applied in that order.  This is not a {@link org.infinispan.commands.VisitableCommand}
+ * and hence not passed up the {@link org.infinispan.interceptors.base.CommandInterceptor} chain.
+ *
+ * @see TotalOrderManager
+ * @since 5.0
+ */
+public class TotalOrderPrepareCommand extends BaseRpcCommand {
+
+   public static final byte COMMAND_ID = 19;
+
+   private PrepareCommand prepare;
+   private boolean ordered;
+   private int epoch;
+   private long sequence;
+   private TotalOrderManager totalOrderManager;
+
+   public TotalOrderPrepareCommand() {
+   }
+
+   /**
+    * @param ordered  false to request the prepare to be ordered, true once it has been
+    * @param epoch    the epoch of the snapshot the transaction read if not ordered yet, or the epoch it was ordered in
+    * @param sequence the sequence of the snapshot the transaction read if not ordered yet, or its sequence in the epoch
+    */
+   public TotalOrderPrepareCommand(String cacheName, PrepareCommand prepare, boolean ordered, int epoch, long sequence) {
+      super(cacheName);
+      this.prepare = prepare;
+      this.ordered = ordered;
+      this.epoch = epoch;
+      this.sequence = sequence;
+   }
+
+   public void init(TotalOrderManager totalOrderManager) {
+      this.totalOrderManager = totalOrderManager;
+   }
+
+   /**
+    * Orders the prepare on the coordinator, returning the epoch it was ordered in, or queues an ordered prepare to be
+    * applied.
+    */
+   public Object perform(InvocationContext ctx) throws Throwable {
+      if (ordered) {
+         totalOrderManager.deliver(prepare, epoch, sequence);
+         return null;
+      } else {
+         return totalOrderManager.sequence(prepare, new TotalOrderManager.Position(epoch, sequence));
+      }
+   }
+
+   public PrepareCommand getPrepare() {
+      return prepare;
+   }
+
+   public boolean isOrdered() {
+      return ordered;
+   }
+
+   public int getEpoch() {
+      return epoch;
+   }
+
+   public long getSequence() {
+      return sequence;
+   }
+
+   public byte getCommandId() {
+      return COMMAND_ID;
+   }
+
+   public Object[] getParameters() {
+      return new Object[]{cacheName, prepare, ordered, epoch, sequence};
+   }
+
+   public void setParameters(int commandId, Object[] parameters) {
+      if (commandId != COMMAND_ID) throw new IllegalStateException("Invalid method id");
+      cacheName = (String) parameters[0];
+      prepare = (PrepareCommand) parameters[1];
+      ordered = (Boolean) parameters[2];
+      epoch = (Integer) parameters[3];
+      sequence = (Long) parameters[4];
+   }
+
+   @Override
+   public String toString() {
+      return "TotalOrderPrepareCommand{" +
+            "prepare=" + prepare +
+            ", ordered=" + ordered +
+            ", epoch=" + epoch +
+            ", sequence=" + sequence +
+            ", cacheName='" + cacheName + '\'' +
+            '}';
+   }
+}
@@ -24,8 +24,10 @@ package org.infinispan.config;
 import org.infinispan.CacheException;
 import org.infinispan.container.DataContainer;
 import org.infinispan.container.DefaultDataContainer;
+import org.infinispan.container.offheap.OffHeapDataContainer;
 import org.infinispan.distribution.ch.DefaultConsistentHash;
 import org.infinispan.distribution.ch.TopologyAwareConsistentHash;
+import org.infinispan.eviction.DefaultEntrySizeEstimator;
 import org.infinispan.eviction.EvictionStrategy;
 import org.infinispan.eviction.EvictionThreadPolicy;
 import org.infinispan.factories.ComponentRegistry;
@@ -234,6 +236,26 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
        */
       TransactionConfig useEagerLocking(Boolean useEagerLocking);
 
+      /**
+       * Only has effect for REPL_SYNC mode. When enabled, the prepares of transactions are ordered by the cluster
+       * coordinator, certified against the transactions ordered before them and applied in that order on every node
+       * in a single phase, so that conflicting transactions fail with a write skew instead of deadlocking on remote
+       * locks.  A transaction commits once applied on the node running it, the other nodes applying it asynchronously.
+       *
+       * @param totalOrderCommit
+       */
+      TransactionConfig totalOrderCommit(Boolean totalOrderCommit);
+
+      /**
+       * When enabled, writes made within a transaction are kept in the transaction's context without acquiring locks,
+       * and the locks on the modified keys are only acquired, in a deterministic key order, when the transaction
+       * prepares.  With REPEATABLE_READ isolation and writeSkewCheck enabled the prepare also fails with a write skew
+       * if any of the modified entries has been written by another transaction since it was read.
+       *
+       * @param optimisticLocking
+       */
+      TransactionConfig optimisticLocking(Boolean optimisticLocking);
+
       /**
        * Configure Transaction manager lookup directly using an instance of TransactionManagerLookup
        *
@@ -339,6 +361,23 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
        * @param evictionMaxEntries
        */
       EvictionConfig maxEntries(Integer maxEntries);
+
+      /**
+       * Maximum estimated amount of memory, in bytes, that the entries of a cache instance may retain. When set,
+       * entries are evicted following the configured strategy until their estimated size fits within this budget,
+       * in addition to the limit imposed by maxEntries. -1 means no limit.
+       *
+       * @param maxMemory
+       */
+      EvictionConfig maxMemory(Long maxMemory);
+
+      /**
+       * Fully qualified class name of the {@link org.infinispan.eviction.EntrySizeEstimator} used to estimate the
+       * memory retained by each entry when maxMemory is set.
+       *
+       * @param sizeEstimatorClass
+       */
+      EvictionConfig sizeEstimatorClass(String sizeEstimatorClass);
    }
 
    /**
@@ -617,6 +656,21 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
        * @param l1OnRehash
        */
       L1Config onRehash(Boolean onRehash);
+
+      /**
+       * Number of nodes holding a key in L1 above which invalidations are broadcast rather than sent to those nodes
+       * only. 0 disables the tracking of the nodes holding keys in L1, and -1 disables the threshold.
+       *
+       * @param invalidationThreshold
+       */
+      L1Config invalidationThreshold(Integer invalidationThreshold);
+
+      /**
+       * Maximum number of keys for which a node tracks the nodes holding them in L1.
+       *
+       * @param maxTrackedKeys
+       */
+      L1Config maxTrackedKeys(Integer maxTrackedKeys);
    }
 
    /**
@@ -658,6 +712,42 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
        */
       HashConfig rehashRpcTimeout(Long rehashRpcTimeout);
 
+      /**
+       * Maximum number of entries sent in a single chunk of state when rehashing
+       *
+       * @param rehashChunkSize
+       */
+      HashConfig rehashChunkSize(Integer rehashChunkSize);
+
+      /**
+       * Maximum estimated number of bytes sent in a single chunk of state when rehashing, or -1 for no limit
+       *
+       * @param rehashChunkBytes
+       */
+      HashConfig rehashChunkBytes(Long rehashChunkBytes);
+
+      /**
+       * Time, in milliseconds, to wait for the first owner asked for a remote entry before also asking the other
+       * owners, or 0 to ask all owners at once
+       *
+       * @param remoteGetStaggerDelay
+       */
+      HashConfig remoteGetStaggerDelay(Long remoteGetStaggerDelay);
+
+      /**
+       * Number of segments the hash space is divided into by segment based consistent hashes
+       *
+       * @param numSegments
+       */
+      HashConfig numSegments(Integer numSegments);
+
+      /**
+       * Number of positions each node takes on the hash wheel of segment based consistent hashes
+       *
+       * @param numVirtualNodes
+       */
+      HashConfig numVirtualNodes(Integer numVirtualNodes);
+
       /**
        * If false, no rebalancing or rehashing will take place when a new node joins the cluster or
        * a node leaves
@@ -909,6 +999,90 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       return clustering.hash.rehashRpcTimeout;
    }
 
+   /**
+    * Maximum number of entries a node sends in a single chunk of state when rehashing. State is streamed from the data
+    * container and the cache store one chunk at a time, and the receiver requests the next chunk only once it has
+    * applied the previous one, so this bounds the memory used for state transfer on both sides.  Can be changed while
+    * the cache is running, and applies to the transfers started afterwards.
+    *
+    * @param rehashChunkSize
+    */
+   @Deprecated
+   public void setRehashChunkSize(int rehashChunkSize) {
+      this.clustering.hash.setRehashChunkSize(rehashChunkSize);
+   }
+
+   public int getRehashChunkSize() {
+      return clustering.hash.rehashChunkSize;
+   }
+
+   /**
+    * Maximum estimated number of bytes, keys and values included, a node sends in a single chunk of state when
+    * rehashing. Sizes are estimated with the configured eviction size estimator. A chunk always holds at least one
+    * entry. -1 means no limit, in which case chunks are only bounded by rehashChunkSize.
+    *
+    * @param rehashChunkBytes
+    */
+   @Deprecated
+   public void setRehashChunkBytes(long rehashChunkBytes) {
+      this.clustering.hash.setRehashChunkBytes(rehashChunkBytes);
+   }
+
+   public long getRehashChunkBytes() {
+      return clustering.hash.rehashChunkBytes;
+   }
+
+   /**
+    * When reading an entry this node does not own, the get is first sent to a single owner, the closest one per the
+    * topology information of the nodes if configured and the primary owner otherwise, and only sent to the remaining
+    * owners if no value was returned within this many milliseconds, or if the first owner failed or was unsure of the
+    * value because of a rehash.  0, the default, sends the get to all owners at once.
+    *
+    * @param remoteGetStaggerDelay
+    */
+   @Deprecated
+   public void setRemoteGetStaggerDelay(long remoteGetStaggerDelay) {
+      this.clustering.hash.setRemoteGetStaggerDelay(remoteGetStaggerDelay);
+   }
+
+   public long getRemoteGetStaggerDelay() {
+      return clustering.hash.remoteGetStaggerDelay;
+   }
+
+   /**
+    * Number of segments the hash space is divided into when using a
+    * {@link org.infinispan.distribution.ch.SegmentedConsistentHash}.  Keys are mapped to segments, whose owners are
+    * computed once per topology change, so this bounds how evenly keys can be spread: each node owns a whole number of
+    * segments.  Must be the same on all nodes, and should be well above the number of nodes times numVirtualNodes.
+    *
+    * @param numSegments
+    */
+   @Deprecated
+   public void setNumSegments(int numSegments) {
+      this.clustering.hash.setNumSegments(numSegments);
+   }
+
+   public int getNumSegments() {
+      return clustering.hash.numSegments;
+   }
+
+   /**
+    * Number of positions each node takes on the hash wheel when using a
+    * {@link org.infinispan.distribution.ch.SegmentedConsistentHash}.  More positions spread the segments more evenly
+    * across nodes, and spread the state of a leaving or joining node across more of the other nodes.  Must be the same
+    * on all nodes.
+    *
+    * @param numVirtualNodes
+    */
+   @Deprecated
+   public void setNumVirtualNodes(int numVirtualNodes) {
+      this.clustering.hash.setNumVirtualNodes(numVirtualNodes);
+   }
+
+   public int getNumVirtualNodes() {
+      return clustering.hash.numVirtualNodes;
+   }
+
    public boolean isWriteSkewCheck() {
       return locking.writeSkewCheck;
    }
@@ -1221,6 +1395,38 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       this.eviction.setMaxEntries(evictionMaxEntries);
    }
 
+   public long getEvictionMaxMemory() {
+      return eviction.maxMemory;
+   }
+
+   /**
+    * Maximum estimated amount of memory, in bytes, that the entries of a cache instance may retain. When set,
+    * entries are evicted following the configured eviction strategy until their estimated size fits within this
+    * budget, in addition to the limit imposed by maxEntries. -1 means no limit.
+    *
+    * @param evictionMaxMemory
+    */
+   @Deprecated
+   public void setEvictionMaxMemory(long evictionMaxMemory) {
+      this.eviction.setMaxMemory(evictionMaxMemory);
+   }
+
+   public String getEvictionSizeEstimatorClass() {
+      return eviction.sizeEstimatorClass;
+   }
+
+   /**
+    * Fully qualified class name of the {@link org.infinispan.eviction.EntrySizeEstimator} used to estimate the
+    * memory retained by each entry when evictionMaxMemory is set. Defaults to
+    * {@link org.infinispan.eviction.DefaultEntrySizeEstimator}.
+    *
+    * @param sizeEstimatorClass
+    */
+   @Deprecated
+   public void setEvictionSizeEstimatorClass(String sizeEstimatorClass) {
+      this.eviction.setSizeEstimatorClass(sizeEstimatorClass);
+   }
+
    /**
     * Expiration lifespan, in milliseconds
     */
@@ -1320,6 +1526,32 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       this.transaction.setUseEagerLocking(useEagerLocking);
    }
 
+   /**
+    * Only has effect for REPL_SYNC mode. When enabled, the prepares of transactions are ordered by the cluster
+    * coordinator, certified against the transactions ordered before them and applied in that order on every node in a
+    * single phase, so that conflicting transactions fail with a write skew instead of deadlocking on remote locks.  A
+    * transaction commits once applied on the node running it, the other nodes applying it asynchronously.
+    *
+    * @param totalOrderCommit
+    */
+   @Deprecated
+   public void setTotalOrderCommit(boolean totalOrderCommit) {
+      this.transaction.setTotalOrderCommit(totalOrderCommit);
+   }
+
+   /**
+    * When enabled, writes made within a transaction are kept in the transaction's context without acquiring locks, and
+    * the locks on the modified keys are only acquired, in a deterministic key order, when the transaction prepares.
+    * With REPEATABLE_READ isolation and writeSkewCheck enabled the prepare also fails with a write skew if any of the
+    * modified entries has been written by another transaction since it was read.
+    *
+    * @param optimisticLocking
+    */
+   @Deprecated
+   public void setOptimisticLocking(boolean optimisticLocking) {
+      this.transaction.setOptimisticLocking(optimisticLocking);
+   }
+
    /**
     * Only has effect for DIST mode and when useEagerLocking is set to true. When this is enabled, then only one node is
     * locked in the cluster, disregarding numOwners config. On the opposite, if this is false, then on all cache.lock()
@@ -1494,6 +1726,32 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       this.clustering.l1.setOnRehash(l1OnRehash);
    }
 
+   /**
+    * Determines how L1 caches are invalidated when an entry is written. If 0, the node writing the entry broadcasts an
+    * invalidation to the whole cluster. Otherwise the primary owner of each key tracks which nodes fetched it, for as
+    * long as they may hold it in L1, and invalidates these nodes only, unless there are more of them than this
+    * threshold, in which case the invalidation is broadcast. -1 means that invalidations are never broadcast because of
+    * the number of nodes holding a key in L1. Invalidations are still broadcast for a while after the cluster topology
+    * changes or tracking information is dropped, as requestors known to former owners cannot be told apart.
+    *
+    * @param l1InvalidationThreshold
+    */
+   @Deprecated
+   public void setL1InvalidationThreshold(int l1InvalidationThreshold) {
+      this.clustering.l1.setInvalidationThreshold(l1InvalidationThreshold);
+   }
+
+   /**
+    * Maximum number of keys for which a node tracks the nodes holding them in L1, when l1InvalidationThreshold is not
+    * 0. Tracking information for the least recently requested keys is dropped first.
+    *
+    * @param l1MaxTrackedKeys
+    */
+   @Deprecated
+   public void setL1MaxTrackedKeys(int l1MaxTrackedKeys) {
+      this.clustering.l1.setMaxTrackedKeys(l1MaxTrackedKeys);
+   }
+
    /**
     * Fully qualified name of class providing consistent hash algorithm
     *
@@ -1671,6 +1929,14 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       return transaction.eagerLockSingleNode;
    }
 
+   public boolean isTotalOrderCommit() {
+      return transaction.totalOrderCommit;
+   }
+
+   public boolean isOptimisticLocking() {
+      return transaction.optimisticLocking;
+   }
+
    public int getCacheStopTimeout() {
       return transaction.cacheStopTimeout;
    }
@@ -1715,6 +1981,14 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       return clustering.l1.onRehash;
    }
 
+   public int getL1InvalidationThreshold() {
+      return clustering.l1.invalidationThreshold;
+   }
+
+   public int getL1MaxTrackedKeys() {
+      return clustering.l1.maxTrackedKeys;
+   }
+
    public String getConsistentHashClass() {
       if (clustering.hash.consistentHashClass == null) {
          clustering.hash.consistentHashClass = globalConfiguration == null || globalConfiguration.hasTopologyInfo() ? TopologyAwareConsistentHash.class.getName() : DefaultConsistentHash.class.getName();
@@ -1898,6 +2172,21 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       if (clustering.mode.isClustered() && (globalConfiguration != null
               && (globalConfiguration.getTransportClass() == null || globalConfiguration.getTransportClass().length() == 0)))
          throw new ConfigurationException("Cache cannot use a clustered mode (" + clustering.mode + ") mode and not define a transport!");
+
+      if (transaction.totalOrderCommit && clustering.mode != CacheMode.REPL_SYNC)
+         throw new ConfigurationException("Total order commit requires REPL_SYNC mode, not " + clustering.mode);
+
+      if (transaction.totalOrderCommit && transaction.useEagerLocking)
+         throw new ConfigurationException("Total order commit cannot be used together with eager locking");
+
+      if (transaction.optimisticLocking && (transaction.useEagerLocking || transaction.totalOrderCommit))
+         throw new ConfigurationException("Optimistic locking cannot be used together with eager locking or total order commit");
+
+      // the write skew check of pessimistic transactions relies on the container returning the instances it stores
+      if (locking.writeSkewCheck && locking.isolationLevel == IsolationLevel.REPEATABLE_READ && !transaction.optimisticLocking
+               && OffHeapDataContainer.class.getName().equals(dataContainer.dataContainerClass))
+         throw new ConfigurationException("The write skew check cannot be used with " + OffHeapDataContainer.class.getSimpleName()
+               + ", which returns copies of its entries, unless optimistic locking is enabled");
    }
 
    public boolean isOnePhaseCommit() {
@@ -1943,6 +2232,12 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       @ConfigurationDocRef(bean = Configuration.class, targetElement = "setEagerLockSingleNode")
       protected Boolean eagerLockSingleNode = false;
 
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setTotalOrderCommit")
+      protected Boolean totalOrderCommit = false;
+
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setOptimisticLocking")
+      protected Boolean optimisticLocking = false;
+
       @Dynamic
       @ConfigurationDocRef(bean = Configuration.class, targetElement = "setCacheStopTimeout")
       protected Integer cacheStopTimeout = 30000;
@@ -2073,6 +2368,39 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       }
 
 
+      @XmlAttribute
+      public Boolean isTotalOrderCommit() {
+         return totalOrderCommit;
+      }
+
+      public void setTotalOrderCommit(Boolean totalOrderCommit) {
+         testImmutability("totalOrderCommit");
+         this.totalOrderCommit = totalOrderCommit;
+      }
+
+      @Override
+      public TransactionConfig totalOrderCommit(Boolean totalOrderCommit) {
+         setTotalOrderCommit(totalOrderCommit);
+         return this;
+      }
+
+      @XmlAttribute
+      public Boolean isOptimisticLocking() {
+         return optimisticLocking;
+      }
+
+      public void setOptimisticLocking(Boolean optimisticLocking) {
+         testImmutability("optimisticLocking");
+         this.optimisticLocking = optimisticLocking;
+      }
+
+      @Override
+      public TransactionConfig optimisticLocking(Boolean optimisticLocking) {
+         setOptimisticLocking(optimisticLocking);
+         return this;
+      }
+
+
       @XmlAttribute
       public Integer getCacheStopTimeout() {
          return cacheStopTimeout;
@@ -2112,6 +2440,10 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
             return false;
          if (useEagerLocking != null ? !useEagerLocking.equals(that.useEagerLocking) : that.useEagerLocking != null)
             return false;
+         if (totalOrderCommit != null ? !totalOrderCommit.equals(that.totalOrderCommit) : that.totalOrderCommit != null)
+            return false;
+         if (optimisticLocking != null ? !optimisticLocking.equals(that.optimisticLocking) : that.optimisticLocking != null)
+            return false;
          if (cacheStopTimeout != null ? !cacheStopTimeout.equals(that.cacheStopTimeout) : that.cacheStopTimeout != null)
             return false;
 
@@ -2125,6 +2457,8 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
          result = 31 * result + (syncCommitPhase != null ? syncCommitPhase.hashCode() : 0);
          result = 31 * result + (syncRollbackPhase != null ? syncRollbackPhase.hashCode() : 0);
          result = 31 * result + (useEagerLocking != null ? useEagerLocking.hashCode() : 0);
+         result = 31 * result + (totalOrderCommit != null ? totalOrderCommit.hashCode() : 0);
+         result = 31 * result + (optimisticLocking != null ? optimisticLocking.hashCode() : 0);
          result = 31 * result + (cacheStopTimeout != null ? cacheStopTimeout.hashCode() : 0);
          return result;
       }
@@ -2822,6 +3156,12 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       @ConfigurationDocRef(bean = Configuration.class, targetElement = "setEvictionThreadPolicy")
       protected EvictionThreadPolicy threadPolicy = EvictionThreadPolicy.DEFAULT;
 
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setEvictionMaxMemory")
+      protected Long maxMemory = -1L;
+
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setEvictionSizeEstimatorClass")
+      protected String sizeEstimatorClass = DefaultEntrySizeEstimator.class.getName();
+
       public void accept(ConfigurationBeanVisitor v) {
          v.visitEvictionType(this);
       }
@@ -2895,6 +3235,40 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       }
 
 
+      @XmlAttribute
+      public Long getMaxMemory() {
+         return maxMemory;
+      }
+
+      public void setMaxMemory(Long maxMemory) {
+         testImmutability("maxMemory");
+         this.maxMemory = maxMemory;
+      }
+
+      @Override
+      public EvictionConfig maxMemory(Long maxMemory) {
+         setMaxMemory(maxMemory);
+         return this;
+      }
+
+
+      @XmlAttribute
+      public String getSizeEstimatorClass() {
+         return sizeEstimatorClass;
+      }
+
+      public void setSizeEstimatorClass(String sizeEstimatorClass) {
+         testImmutability("sizeEstimatorClass");
+         this.sizeEstimatorClass = sizeEstimatorClass;
+      }
+
+      @Override
+      public EvictionConfig sizeEstimatorClass(String sizeEstimatorClass) {
+         setSizeEstimatorClass(sizeEstimatorClass);
+         return this;
+      }
+
+
       @Override
       public boolean equals(Object o) {
          if (this == o) return true;
@@ -2903,6 +3277,9 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
          EvictionType that = (EvictionType) o;
 
          if (maxEntries != null ? !maxEntries.equals(that.maxEntries) : that.maxEntries != null) return false;
+         if (maxMemory != null ? !maxMemory.equals(that.maxMemory) : that.maxMemory != null) return false;
+         if (sizeEstimatorClass != null ? !sizeEstimatorClass.equals(that.sizeEstimatorClass) : that.sizeEstimatorClass != null)
+            return false;
          if (strategy != that.strategy) return false;
          if (threadPolicy != that.threadPolicy) return false;
          if (wakeUpInterval != null ? !wakeUpInterval.equals(that.wakeUpInterval) : that.wakeUpInterval != null)
@@ -2917,6 +3294,8 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
          result = 31 * result + (strategy != null ? strategy.hashCode() : 0);
          result = 31 * result + (threadPolicy != null ? threadPolicy.hashCode() : 0);
          result = 31 * result + (maxEntries != null ? maxEntries.hashCode() : 0);
+         result = 31 * result + (maxMemory != null ? maxMemory.hashCode() : 0);
+         result = 31 * result + (sizeEstimatorClass != null ? sizeEstimatorClass.hashCode() : 0);
          return result;
       }
    }
@@ -3308,6 +3687,24 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       @ConfigurationDocRef(bean = Configuration.class, targetElement = "setRehashRpcTimeout")
       protected Long rehashRpcTimeout = MINUTES.toMillis(10);
 
+      @Dynamic
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setRehashChunkSize")
+      protected Integer rehashChunkSize = 10000;
+
+      @Dynamic
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setRehashChunkBytes")
+      protected Long rehashChunkBytes = 4L * 1024 * 1024;
+
+      @Dynamic
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setRemoteGetStaggerDelay")
+      protected Long remoteGetStaggerDelay = 0L;
+
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setNumSegments")
+      protected Integer numSegments = 4096;
+
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setNumVirtualNodes")
+      protected Integer numVirtualNodes = 64;
+
       @ConfigurationDocRef(bean = Configuration.class, targetElement = "setRehashEnabled")
       protected Boolean rehashEnabled = true;
 
@@ -3400,6 +3797,91 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       }
 
 
+      @XmlAttribute
+      public Integer getRehashChunkSize() {
+         return rehashChunkSize;
+      }
+
+      public void setRehashChunkSize(Integer rehashChunkSize) {
+         testImmutability("rehashChunkSize");
+         this.rehashChunkSize = rehashChunkSize;
+      }
+
+      @Override
+      public HashConfig rehashChunkSize(Integer rehashChunkSize) {
+         setRehashChunkSize(rehashChunkSize);
+         return this;
+      }
+
+
+      @XmlAttribute
+      public Long getRehashChunkBytes() {
+         return rehashChunkBytes;
+      }
+
+      public void setRehashChunkBytes(Long rehashChunkBytes) {
+         testImmutability("rehashChunkBytes");
+         this.rehashChunkBytes = rehashChunkBytes;
+      }
+
+      @Override
+      public HashConfig rehashChunkBytes(Long rehashChunkBytes) {
+         setRehashChunkBytes(rehashChunkBytes);
+         return this;
+      }
+
+
+      @XmlAttribute
+      public Long getRemoteGetStaggerDelay() {
+         return remoteGetStaggerDelay;
+      }
+
+      public void setRemoteGetStaggerDelay(Long remoteGetStaggerDelay) {
+         testImmutability("remoteGetStaggerDelay");
+         this.remoteGetStaggerDelay = remoteGetStaggerDelay;
+      }
+
+      @Override
+      public HashConfig remoteGetStaggerDelay(Long remoteGetStaggerDelay) {
+         setRemoteGetStaggerDelay(remoteGetStaggerDelay);
+         return this;
+      }
+
+
+      @XmlAttribute
+      public Integer getNumSegments() {
+         return numSegments;
+      }
+
+      public void setNumSegments(Integer numSegments) {
+         testImmutability("numSegments");
+         this.numSegments = numSegments;
+      }
+
+      @Override
+      public HashConfig numSegments(Integer numSegments) {
+         setNumSegments(numSegments);
+         return this;
+      }
+
+
+      @XmlAttribute
+      public Integer getNumVirtualNodes() {
+         return numVirtualNodes;
+      }
+
+      public void setNumVirtualNodes(Integer numVirtualNodes) {
+         testImmutability("numVirtualNodes");
+         this.numVirtualNodes = numVirtualNodes;
+      }
+
+      @Override
+      public HashConfig numVirtualNodes(Integer numVirtualNodes) {
+         setNumVirtualNodes(numVirtualNodes);
+         return this;
+      }
+
+
       @XmlAttribute
       public Boolean isRehashEnabled() {
          return rehashEnabled;
@@ -3431,6 +3913,16 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
          if (rehashRpcTimeout != null ? !rehashRpcTimeout.equals(hashType.rehashRpcTimeout) : hashType.rehashRpcTimeout != null)
             return false;
          if (rehashWait != null ? !rehashWait.equals(hashType.rehashWait) : hashType.rehashWait != null) return false;
+         if (rehashChunkSize != null ? !rehashChunkSize.equals(hashType.rehashChunkSize) : hashType.rehashChunkSize != null)
+            return false;
+         if (rehashChunkBytes != null ? !rehashChunkBytes.equals(hashType.rehashChunkBytes) : hashType.rehashChunkBytes != null)
+            return false;
+         if (remoteGetStaggerDelay != null ? !remoteGetStaggerDelay.equals(hashType.remoteGetStaggerDelay) : hashType.remoteGetStaggerDelay != null)
+            return false;
+         if (numSegments != null ? !numSegments.equals(hashType.numSegments) : hashType.numSegments != null)
+            return false;
+         if (numVirtualNodes != null ? !numVirtualNodes.equals(hashType.numVirtualNodes) : hashType.numVirtualNodes != null)
+            return false;
          if (rehashEnabled != hashType.rehashEnabled) return false;
 
          return true;
@@ -3443,6 +3935,11 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
          result = 31 * result + (numOwners != null ? numOwners.hashCode() : 0);
          result = 31 * result + (rehashWait != null ? rehashWait.hashCode() : 0);
          result = 31 * result + (rehashRpcTimeout != null ? rehashRpcTimeout.hashCode() : 0);
+         result = 31 * result + (rehashChunkSize != null ? rehashChunkSize.hashCode() : 0);
+         result = 31 * result + (rehashChunkBytes != null ? rehashChunkBytes.hashCode() : 0);
+         result = 31 * result + (remoteGetStaggerDelay != null ? remoteGetStaggerDelay.hashCode() : 0);
+         result = 31 * result + (numSegments != null ? numSegments.hashCode() : 0);
+         result = 31 * result + (numVirtualNodes != null ? numVirtualNodes.hashCode() : 0);
          result = 31 * result + (rehashEnabled ? 0 : 1);
          return result;
       }
@@ -3472,6 +3969,12 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
       @ConfigurationDocRef(bean = Configuration.class, targetElement = "setL1OnRehash")
       protected Boolean onRehash = true;
 
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setL1InvalidationThreshold")
+      protected Integer invalidationThreshold = 0;
+
+      @ConfigurationDocRef(bean = Configuration.class, targetElement = "setL1MaxTrackedKeys")
+      protected Integer maxTrackedKeys = 100000;
+
       public void accept(ConfigurationBeanVisitor v) {
          v.visitL1Type(this);
       }
@@ -3530,6 +4033,42 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
          return this;
       }
 
+
+      @XmlAttribute
+      public Integer getInvalidationThreshold() {
+         return invalidationThreshold;
+      }
+
+      public L1Config setInvalidationThreshold(Integer invalidationThreshold) {
+         testImmutability("invalidationThreshold");
+         this.invalidationThreshold = invalidationThreshold;
+         return this;
+      }
+
+      @Override
+      public L1Config invalidationThreshold(Integer invalidationThreshold) {
+         setInvalidationThreshold(invalidationThreshold);
+         return this;
+      }
+
+
+      @XmlAttribute
+      public Integer getMaxTrackedKeys() {
+         return maxTrackedKeys;
+      }
+
+      public L1Config setMaxTrackedKeys(Integer maxTrackedKeys) {
+         testImmutability("maxTrackedKeys");
+         this.maxTrackedKeys = maxTrackedKeys;
+         return this;
+      }
+
+      @Override
+      public L1Config maxTrackedKeys(Integer maxTrackedKeys) {
+         setMaxTrackedKeys(maxTrackedKeys);
+         return this;
+      }
+
       @Override
       public boolean equals(Object o) {
          if (this == o) return true;
@@ -3540,6 +4079,10 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
          if (enabled != null ? !enabled.equals(l1Type.enabled) : l1Type.enabled != null) return false;
          if (lifespan != null ? !lifespan.equals(l1Type.lifespan) : l1Type.lifespan != null) return false;
          if (onRehash != null ? !onRehash.equals(l1Type.onRehash) : l1Type.onRehash != null) return false;
+         if (invalidationThreshold != null ? !invalidationThreshold.equals(l1Type.invalidationThreshold) : l1Type.invalidationThreshold != null)
+            return false;
+         if (maxTrackedKeys != null ? !maxTrackedKeys.equals(l1Type.maxTrackedKeys) : l1Type.maxTrackedKeys != null)
+            return false;
 
          return true;
       }
@@ -3549,6 +4092,8 @@ public class Configuration extends AbstractNamedCacheConfigurationBean {
          int result = enabled != null ? enabled.hashCode() : 0;
          result = 31 * result + (lifespan != null ? lifespan.hashCode() : 0);
          result = 31 * result + (onRehash != null ? onRehash.hashCode() : 0);
+         result = 31 * result + (invalidationThreshold != null ? invalidationThreshold.hashCode() : 0);
+         result = 31 * result + (maxTrackedKeys != null ? maxTrackedKeys.hashCode() : 0);
          return result;
       }
    }
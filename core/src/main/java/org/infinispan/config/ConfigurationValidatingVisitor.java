@@ -61,5 +61,29 @@ public class ConfigurationValidatingVisitor extends AbstractConfigurationBeanVis
    public void visitEvictionType(EvictionType et) {
       if (et.strategy.isEnabled() && et.maxEntries <= 0)
          throw new ConfigurationException("Eviction maxEntries value cannot be less than or equal to zero if eviction is enabled");
+      if (et.strategy.isEnabled() && et.maxMemory != null && et.maxMemory == 0)
+         throw new ConfigurationException("Eviction maxMemory value cannot be zero if eviction is enabled");
+   }
+
+   @Override
+   public void visitHashType(Configuration.HashType ht) {
+      if (ht.rehashChunkSize != null && ht.rehashChunkSize <= 0)
+         throw new ConfigurationException("Hash rehashChunkSize value must be greater than zero");
+      if (ht.rehashChunkBytes != null && ht.rehashChunkBytes == 0)
+         throw new ConfigurationException("Hash rehashChunkBytes value cannot be zero");
+      if (ht.remoteGetStaggerDelay != null && ht.remoteGetStaggerDelay < 0)
+         throw new ConfigurationException("Hash remoteGetStaggerDelay value cannot be negative");
+      if (ht.numSegments != null && ht.numSegments <= 0)
+         throw new ConfigurationException("Hash numSegments value must be greater than zero");
+      if (ht.numVirtualNodes != null && ht.numVirtualNodes <= 0)
+         throw new ConfigurationException("Hash numVirtualNodes value must be greater than zero");
+   }
+
+   @Override
+   public void visitL1Type(Configuration.L1Type l1t) {
+      if (l1t.invalidationThreshold != null && l1t.invalidationThreshold < -1)
+         throw new ConfigurationException("L1 invalidationThreshold value cannot be less than -1");
+      if (l1t.maxTrackedKeys != null && l1t.maxTrackedKeys <= 0)
+         throw new ConfigurationException("L1 maxTrackedKeys value must be greater than zero");
    }
 }
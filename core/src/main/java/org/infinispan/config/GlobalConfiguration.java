@@ -296,6 +296,13 @@ public class GlobalConfiguration extends AbstractConfigurationBean {
     */
    public static final short DEFAULT_MARSHALL_VERSION = Version.getVersionShort();
 
+   /**
+    * Name of the transport property declaring the capacity factor of a node.
+    *
+    * @see #getCapacityFactor()
+    */
+   public static final String CAPACITY_FACTOR = "capacityFactor";
+
    @XmlElement
    ExecutorFactoryType asyncListenerExecutor = new ExecutorFactoryType();
 
@@ -492,6 +499,26 @@ public class GlobalConfiguration extends AbstractConfigurationBean {
       return getSiteId() != null || getRackId() != null || getMachineId() != null;
    }
 
+   /**
+    * How much data this node can hold relatively to the other nodes, as declared by the capacityFactor transport
+    * property, 1 by default.  Distributed caches give a node with a capacity factor of 4 about four times as many keys
+    * as a node with a capacity factor of 1.  Wheel based consistent hashes give a node as many positions on the wheel as
+    * its capacity factor rounded, so the smallest nodes should declare a capacity factor of 1.
+    */
+   public float getCapacityFactor() {
+      String capacityFactor = getTransportProperties() == null ? null : getTransportProperties().getProperty(CAPACITY_FACTOR);
+      if (capacityFactor == null) return 1;
+      float f;
+      try {
+         f = Float.parseFloat(capacityFactor.trim());
+      } catch (NumberFormatException e) {
+         throw new ConfigurationException("Transport property " + CAPACITY_FACTOR + " is not a number: " + capacityFactor);
+      }
+      if (!(f > 0) || Float.isInfinite(f))
+         throw new ConfigurationException("Transport property " + CAPACITY_FACTOR + " must be greater than zero");
+      return f;
+   }
+
    /**
     * Behavior of the JVM shutdown hook registered by the cache
     */
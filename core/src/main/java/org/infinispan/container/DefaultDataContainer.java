@@ -14,14 +14,21 @@ import net.jcip.annotations.ThreadSafe;
 
 import org.infinispan.container.entries.InternalCacheEntry;
 import org.infinispan.container.entries.InternalEntryFactory;
+import org.infinispan.eviction.EntrySizeEstimator;
 import org.infinispan.eviction.EvictionManager;
 import org.infinispan.eviction.EvictionStrategy;
 import org.infinispan.eviction.EvictionThreadPolicy;
 import org.infinispan.factories.annotations.Inject;
+import org.infinispan.jmx.annotations.MBean;
+import org.infinispan.jmx.annotations.ManagedAttribute;
 import org.infinispan.util.Immutables;
 import org.infinispan.util.concurrent.BoundedConcurrentHashMap;
 import org.infinispan.util.concurrent.BoundedConcurrentHashMap.Eviction;
 import org.infinispan.util.concurrent.BoundedConcurrentHashMap.EvictionListener;
+import org.infinispan.util.concurrent.BoundedConcurrentHashMap.Weigher;
+import org.rhq.helpers.pluginAnnotations.agent.DisplayType;
+import org.rhq.helpers.pluginAnnotations.agent.Metric;
+import org.rhq.helpers.pluginAnnotations.agent.Units;
 
 /**
  * DefaultDataContainer is both eviction and non-eviction based data container.
@@ -35,20 +42,34 @@ import org.infinispan.util.concurrent.BoundedConcurrentHashMap.EvictionListener;
  * @since 4.0
  */
 @ThreadSafe
+@MBean(objectName = "DataContainer", description = "Statistics about the entries held in memory by the cache")
 public class DefaultDataContainer implements DataContainer {
 
+   /**
+    * Estimated bytes retained by the internal map entry and the {@link InternalCacheEntry} wrapping each value.
+    */
+   static final int ENTRY_OVERHEAD = 96;
+
    final ConcurrentMap<Object, InternalCacheEntry> entries;
    final InternalEntryFactory entryFactory;
    final DefaultEvictionListener evictionListener;
+   final ExpirationIndex expirationIndex = new ExpirationIndex();
+   private final long maxMemory;
    private EvictionManager evictionManager;
 
    protected DefaultDataContainer(int concurrencyLevel) {
       entries = new ConcurrentHashMap<Object, InternalCacheEntry>(128, 0.75f,concurrencyLevel);
       entryFactory = new InternalEntryFactory();
       evictionListener = null;
+      maxMemory = -1;
    }
 
    protected DefaultDataContainer(int concurrencyLevel, int maxEntries, EvictionStrategy strategy, EvictionThreadPolicy policy) {
+      this(concurrencyLevel, maxEntries, -1, null, strategy, policy);
+   }
+
+   protected DefaultDataContainer(int concurrencyLevel, int maxEntries, long maxMemory, EntrySizeEstimator sizeEstimator,
+            EvictionStrategy strategy, EvictionThreadPolicy policy) {
 
       // translate eviction policy and strategy
       switch (policy) {
@@ -73,7 +94,17 @@ public class DefaultDataContainer implements DataContainer {
          default:
             throw new IllegalArgumentException("No such eviction strategy " + strategy);
       }
-      entries = new BoundedConcurrentHashMap<Object, InternalCacheEntry>(maxEntries, concurrencyLevel, eviction, evictionListener);
+      if (maxMemory > 0) {
+         if (sizeEstimator == null) {
+            throw new IllegalArgumentException("A size estimator is needed to bound the memory used by the container");
+         }
+         this.maxMemory = maxMemory;
+         entries = new BoundedConcurrentHashMap<Object, InternalCacheEntry>(maxEntries, concurrencyLevel, eviction,
+                  evictionListener, new EntryWeigher(sizeEstimator), maxMemory);
+      } else {
+         this.maxMemory = -1;
+         entries = new BoundedConcurrentHashMap<Object, InternalCacheEntry>(maxEntries, concurrencyLevel, eviction, evictionListener);
+      }
       entryFactory = new InternalEntryFactory();
    }
 
@@ -87,6 +118,15 @@ public class DefaultDataContainer implements DataContainer {
       return new DefaultDataContainer(concurrencyLevel, maxEntries, strategy, policy);
    }
 
+   /**
+    * Creates a data container bounded both by number of entries and by the estimated amount of memory retained by
+    * its entries.
+    */
+   public static DataContainer boundedDataContainer(int concurrencyLevel, int maxEntries, long maxMemory,
+            EntrySizeEstimator sizeEstimator, EvictionStrategy strategy, EvictionThreadPolicy policy) {
+      return new DefaultDataContainer(concurrencyLevel, maxEntries, maxMemory, sizeEstimator, strategy, policy);
+   }
+
    public static DataContainer unBoundedDataContainer(int concurrencyLevel) {
       return new DefaultDataContainer(concurrencyLevel);
    }
@@ -124,6 +164,8 @@ public class DefaultDataContainer implements DataContainer {
          e = entryFactory.createNewEntry(k, v, lifespan, maxIdle);
       }
       entries.put(k, e);
+      // only once stored, for a purge of the key not to miss the entry
+      expirationIndex.onPut(e);
    }
 
    public boolean containsKey(Object k) {
@@ -146,6 +188,7 @@ public class DefaultDataContainer implements DataContainer {
 
    public void clear() {
       entries.clear();
+      expirationIndex.clear();
    }
 
    public Set<Object> keySet() {
@@ -160,19 +203,47 @@ public class DefaultDataContainer implements DataContainer {
       return new EntrySet();
    }
 
+   /**
+    * Removes expired entries, only visiting the entries indexed as due to expire by now rather than every entry in
+    * the container.
+    */
    public void purgeExpired() {
-      for (Iterator<InternalCacheEntry> purgeCandidates = entries.values().iterator(); purgeCandidates.hasNext();) {
-         InternalCacheEntry e = purgeCandidates.next();
-         if (e.isExpired()) {
-            purgeCandidates.remove();
-         }
-      }
+      expirationIndex.purge(entries, System.currentTimeMillis());
    }
 
    public Iterator<InternalCacheEntry> iterator() {
       return new EntryIterator(entries.values().iterator());
    }
 
+   @ManagedAttribute(description = "Estimated number of bytes retained by the entries in the cache, or -1 if the cache is not memory bounded")
+   @Metric(displayName = "Estimated memory used by cache entries", units = Units.BYTES, displayType = DisplayType.SUMMARY)
+   public long getWeightedSize() {
+      if (maxMemory > 0) {
+         return ((BoundedConcurrentHashMap<Object, InternalCacheEntry>) entries).weightedSize();
+      }
+      return -1;
+   }
+
+   @ManagedAttribute(description = "Maximum estimated number of bytes the entries in the cache may retain, or -1 if the cache is not memory bounded")
+   @Metric(displayName = "Maximum memory for cache entries", units = Units.BYTES, displayType = DisplayType.SUMMARY)
+   public long getMaxMemory() {
+      return maxMemory;
+   }
+
+   private static class EntryWeigher implements Weigher<Object, InternalCacheEntry> {
+      private final EntrySizeEstimator sizeEstimator;
+
+      EntryWeigher(EntrySizeEstimator sizeEstimator) {
+         this.sizeEstimator = sizeEstimator;
+      }
+
+      @Override
+      public int weightOf(Object key, InternalCacheEntry entry) {
+         long size = ENTRY_OVERHEAD + sizeEstimator.estimateSize(key) + sizeEstimator.estimateSize(entry.getValue());
+         return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+      }
+   }
+
    private class DefaultEvictionListener implements EvictionListener<Object, InternalCacheEntry> {
       @Override
       public void onEntryEviction(Map<Object, InternalCacheEntry> evicted) {
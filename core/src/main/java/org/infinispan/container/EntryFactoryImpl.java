@@ -65,7 +65,8 @@ public class EntryFactoryImpl implements EntryFactory {
    @Start
    public void init() {
       useRepeatableRead = configuration.getIsolationLevel() == IsolationLevel.REPEATABLE_READ;
-      writeSkewCheck = configuration.isWriteSkewCheck();
+      // optimistic transactions check for write skews once they hold the locks, from the time of the last write
+      writeSkewCheck = configuration.isWriteSkewCheck() && !configuration.isOptimisticLocking();
    }
 
    private MVCCEntry createWrappedEntry(Object key, Object value, boolean isForInsert, boolean forRemoval, long lifespan) {
@@ -174,7 +175,7 @@ public class EntryFactoryImpl implements EntryFactory {
                ctx.putLookedUpEntry(key, mvccEntry);
                mvccEntry.copyForUpdate(container, writeSkewCheck);
                notifier.notifyCacheEntryCreated(key, false, ctx);
-            } else {
+            } else if (!alreadyLocked) {
                releaseLock(key);
             }
          }
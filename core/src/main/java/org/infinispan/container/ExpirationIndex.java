@@ -0,0 +1,158 @@
+package org.infinispan.container;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.util.concurrent.BoundedConcurrentHashMap;
+import org.infinispan.util.concurrent.ConcurrentHashSet;
+
+/**
+ * Index of the keys of expirable entries, bucketed by the tick of {@link #TICK} milliseconds in which they are due to
+ * expire, so that expired entries can be purged without scanning the whole data container.
+ * <p />
+ * The index is maintained lazily: the earliest tick each key is indexed under is remembered, a key is only indexed
+ * again when its entry is stored with an expiry time before that tick, and keys are not unindexed when their entries
+ * are removed or touched. When a bucket falls due, entries that have expired are removed, entries whose expiry time has
+ * moved on are indexed again under their new tick, and keys of entries that no longer exist or no longer expire are
+ * dropped. Reads therefore never update the index, at the cost of keys of removed entries staying indexed until their
+ * original expiry time.
+ * <p />
+ * A purge forgets the tick of a key before looking its entry up, and a put stores the entry before checking the tick
+ * of its key, so that an entry stored while its key is being purged is always either seen by the purge or indexed
+ * again by the put.
+ *
+ * @since 5.0
+ */
+@ThreadSafe
+class ExpirationIndex {
+
+   /**
+    * Width of a bucket, in milliseconds.
+    */
+   static final long TICK = 1000;
+
+   private final ConcurrentSkipListMap<Long, Set<Object>> buckets = new ConcurrentSkipListMap<Long, Set<Object>>();
+
+   // the earliest tick each key is indexed under
+   private final ConcurrentMap<Object, Long> ticks = new ConcurrentHashMap<Object, Long>();
+
+   static long tickOf(long time) {
+      return time / TICK;
+   }
+
+   /**
+    * Indexes an entry that has just been stored in the data container.
+    */
+   void onPut(InternalCacheEntry entry) {
+      if (entry.canExpire()) {
+         index(entry.getKey(), tickOf(entry.getExpiryTime()));
+      }
+   }
+
+   /**
+    * Removes the entries of all buckets due at {@code now} that have expired from {@code entries}.
+    *
+    * @return the number of entries removed
+    */
+   int purge(ConcurrentMap<Object, InternalCacheEntry> entries, long now) {
+      long currentTick = tickOf(now);
+      List<Map.Entry<Long, Set<Object>>> due = new ArrayList<Map.Entry<Long, Set<Object>>>();
+      for (Map.Entry<Long, Set<Object>> bucket = buckets.firstEntry(); bucket != null && bucket.getKey() <= currentTick;
+           bucket = buckets.firstEntry()) {
+         if (buckets.remove(bucket.getKey(), bucket.getValue())) {
+            due.add(bucket);
+         }
+      }
+
+      int purged = 0;
+      for (Map.Entry<Long, Set<Object>> bucket : due) {
+         for (Object key : bucket.getValue()) {
+            // indexed again under another tick since, or already purged from an earlier bucket
+            if (!ticks.remove(key, bucket.getKey())) {
+               continue;
+            }
+            InternalCacheEntry entry = peek(entries, key);
+            if (entry == null || !entry.canExpire()) {
+               continue;
+            }
+            if (entry.isExpired()) {
+               if (entries.remove(key, entry)) {
+                  purged++;
+               }
+            } else {
+               index(key, tickOf(entry.getExpiryTime()));
+            }
+         }
+      }
+      return purged;
+   }
+
+   void clear() {
+      buckets.clear();
+      ticks.clear();
+   }
+
+   /**
+    * @return the number of keys indexed, including the ones of entries already removed
+    */
+   int size() {
+      int size = 0;
+      for (Set<Object> keys : buckets.values()) {
+         size += keys.size();
+      }
+      return size;
+   }
+
+   /**
+    * Looks an entry up without counting it as an access for the eviction strategy.
+    */
+   @SuppressWarnings("unchecked")
+   private static InternalCacheEntry peek(ConcurrentMap<Object, InternalCacheEntry> entries, Object key) {
+      if (entries instanceof BoundedConcurrentHashMap) {
+         return ((BoundedConcurrentHashMap<Object, InternalCacheEntry>) entries).peek(key);
+      }
+      return entries.get(key);
+   }
+
+   private void index(Object key, long tick) {
+      Long newTick = tick;
+      while (true) {
+         Long indexedTick = ticks.get(key);
+         // already indexed under an earlier tick, from where it will be moved along when due
+         if (indexedTick != null && indexedTick <= tick) {
+            return;
+         }
+         if (indexedTick == null ? ticks.putIfAbsent(key, newTick) == null : ticks.replace(key, indexedTick, newTick)) {
+            break;
+         }
+      }
+      add(key, tick);
+   }
+
+   private void add(Object key, long tick) {
+      Long bucketTick = tick;
+      while (true) {
+         Set<Object> keys = buckets.get(bucketTick);
+         if (keys == null) {
+            Set<Object> newKeys = new ConcurrentHashSet<Object>();
+            keys = buckets.putIfAbsent(bucketTick, newKeys);
+            if (keys == null) {
+               keys = newKeys;
+            }
+         }
+         keys.add(key);
+         // a purge may have taken the bucket away before the key was added
+         if (buckets.get(bucketTick) == keys) {
+            return;
+         }
+      }
+   }
+}
@@ -24,4 +24,16 @@ public interface MVCCEntry extends CacheEntry {
     * @param placeholder if true, the entry is marked as a lock placeholder.  If false, the entry is un-marked as a placeholder.
     */
    void setLockPlaceholder(boolean placeholder);
+
+   /**
+    * Marks an entry as modified without its lock having been acquired yet, as done by optimistic transactions until
+    * they prepare.  Such an entry does not need to be unlocked.
+    * @param deferred if true, the lock of the entry is marked as deferred.  If false, the entry is un-marked.
+    */
+   void setLockDeferred(boolean deferred);
+
+   /**
+    * @return true if the entry has been modified but its lock has not been acquired yet
+    */
+   boolean isLockDeferred();
 }
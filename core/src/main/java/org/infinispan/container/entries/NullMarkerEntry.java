@@ -49,4 +49,12 @@ public class NullMarkerEntry extends NullMarkerEntryForRemoval {
    public final void copyForUpdate(DataContainer d, boolean b) {
       // no op
    }
+
+   /**
+    * A no-op.
+    */
+   @Override
+   public final void setLockDeferred(boolean deferred) {
+      // no op
+   }
 }
\ No newline at end of file
@@ -29,6 +29,7 @@ import org.infinispan.util.logging.LogFactory;
 
 import static org.infinispan.container.entries.ReadCommittedEntry.Flags.*;
 import static org.infinispan.container.entries.ReadCommittedEntry.Flags.LOCK_PLACEHOLDER;
+import static org.infinispan.container.entries.ReadCommittedEntry.Flags.LOCK_DEFERRED;
 
 /**
  * A wrapper around a cached entry that encapsulates read committed semantics when writes are initiated, committed or
@@ -65,7 +66,8 @@ public class ReadCommittedEntry implements MVCCEntry {
       CREATED(1 << 1),
       REMOVED(1 << 2),
       VALID(1 << 3),
-      LOCK_PLACEHOLDER(1 << 4);      
+      LOCK_PLACEHOLDER(1 << 4),
+      LOCK_DEFERRED(1 << 5);
 
       final byte mask;
 
@@ -154,6 +156,19 @@ public class ReadCommittedEntry implements MVCCEntry {
          unsetFlag(LOCK_PLACEHOLDER);
    }
 
+   @Override
+   public void setLockDeferred(boolean deferred) {
+      if (deferred)
+         setFlag(LOCK_DEFERRED);
+      else
+         unsetFlag(LOCK_DEFERRED);
+   }
+
+   @Override
+   public boolean isLockDeferred() {
+      return isFlagSet(LOCK_DEFERRED);
+   }
+
    @SuppressWarnings("unchecked")
    public final void commit(DataContainer container) {
       // only do stuff if there are changes.
@@ -21,8 +21,8 @@
  */
 package org.infinispan.container.entries;
 
-import org.infinispan.CacheException;
 import org.infinispan.container.DataContainer;
+import org.infinispan.transaction.WriteSkewException;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
@@ -35,6 +35,9 @@ import org.infinispan.util.logging.LogFactory;
 public class RepeatableReadEntry extends ReadCommittedEntry {
    private static final Log log = LogFactory.getLog(RepeatableReadEntry.class);
 
+   // when the value was read, as per System.nanoTime(), to tell whether the entry has been written since
+   private final long readTime = System.nanoTime();
+
    public RepeatableReadEntry(Object key, Object value, long lifespan) {
       super(key, value, lifespan);
    }
@@ -54,12 +57,34 @@ public class RepeatableReadEntry extends ReadCommittedEntry {
          // Note that this identity-check is intentional.  We don't *want* to call actualValue.equals() since that defeats the purpose.
          // the implicit "versioning" we have in R_R creates a new wrapper "value" instance for every update.
          if (actualValue != null && actualValue != value) {
-            String errormsg = new StringBuilder().append("Detected write skew on key [").append(getKey()).append("].  Another process has changed the entry since we last read it!").toString();
+            String errormsg = writeSkewMessage();
             if (log.isWarnEnabled()) log.warn(errormsg + ".  Unable to copy entry for update.");
-            throw new CacheException(errormsg);
+            throw new WriteSkewException(errormsg);
          }
       }
       // make a backup copy
       oldValue = value;
    }
+
+   /**
+    * Checks that no other transaction has written the entry since this entry was read from the data container.  Used
+    * when the entry has been modified without holding its lock, once the lock has been acquired.
+    * <p/>
+    * Only writes count.  An entry evicted, passivated or purged once expired since it was read has not been changed.
+    *
+    * @param lastWriteTime the time, as per {@link System#nanoTime()}, the entry was last written at, or null if it has
+    *                      not been written since before the transaction started
+    * @throws WriteSkewException if the entry has been written since it was read
+    */
+   public void performWriteSkewCheck(Long lastWriteTime) {
+      if (lastWriteTime != null && lastWriteTime - readTime >= 0) {
+         String errormsg = writeSkewMessage();
+         if (log.isDebugEnabled()) log.debug(errormsg);
+         throw new WriteSkewException(errormsg);
+      }
+   }
+
+   private String writeSkewMessage() {
+      return new StringBuilder().append("Detected write skew on key [").append(getKey()).append("].  Another process has changed the entry since we last read it!").toString();
+   }
 }
\ No newline at end of file
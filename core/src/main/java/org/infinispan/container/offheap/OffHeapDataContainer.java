@@ -0,0 +1,436 @@
+package org.infinispan.container.offheap;
+
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.infinispan.CacheException;
+import org.infinispan.config.Configuration;
+import org.infinispan.container.DataContainer;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.container.entries.InternalEntryFactory;
+import org.infinispan.container.offheap.OffHeapSegment.Snapshot;
+import org.infinispan.eviction.EvictionManager;
+import org.infinispan.factories.annotations.Inject;
+import org.infinispan.jmx.annotations.MBean;
+import org.infinispan.jmx.annotations.ManagedAttribute;
+import org.infinispan.marshall.StreamingMarshaller;
+import org.infinispan.util.Immutables;
+import org.rhq.helpers.pluginAnnotations.agent.DisplayType;
+import org.rhq.helpers.pluginAnnotations.agent.Metric;
+import org.rhq.helpers.pluginAnnotations.agent.Units;
+
+/**
+ * A {@link DataContainer} which stores keys and values marshalled in direct memory, outside of the Java heap, so that
+ * large caches do not add to the heap size and garbage collection pauses of the JVM. Entries are spread over segments
+ * each guarded by a read-write lock, and within a segment stored in slabs of {@link #setSlabSize(int) slabSize} bytes
+ * which are compacted as entries are removed or overwritten.
+ * <p />
+ * Select it with {@link Configuration#setDataContainerClass(Class)}. The container honours the concurrency level,
+ * and, when eviction is enabled, the maximum number of entries and the
+ * {@link Configuration#getEvictionMaxMemory() maximum memory}, the latter bounding the off-heap bytes taken by the
+ * entries. Whatever the configured eviction strategy, entries are evicted in an order approximating LRU, and are
+ * passivated as with the default container.
+ * <p />
+ * Keys and values are marshalled with the cache's marshaller on every write and unmarshalled on every read, so entries
+ * returned by this container are copies: changes to them, including calls to
+ * {@link InternalCacheEntry#touch()}, do not affect the stored entries. As the write skew check of pessimistic
+ * transactions compares instances, it cannot be used with this container; that of optimistic transactions can. Iterators
+ * are weakly consistent and do not support removal.
+ * <p />
+ * Direct memory is freed as soon as a slab is released, and all of it when the container is cleared or stopped, rather
+ * than when the garbage collector gets to the buffers.
+ *
+ * @see OffHeapSegment
+ * @since 5.0
+ */
+@ThreadSafe
+@MBean(objectName = "DataContainer", description = "Statistics about the entries held off-heap by the cache")
+public class OffHeapDataContainer implements DataContainer {
+
+   /**
+    * Default number of bytes allocated at once to store entries.
+    */
+   public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+   private static final int MAX_SEGMENTS = 1 << 16;
+   private static final int ITERATION_BATCH_SIZE = 64;
+
+   private int slabSize = DEFAULT_SLAB_SIZE;
+   private StreamingMarshaller marshaller;
+   private EvictionManager evictionManager;
+   private OffHeapSegment[] segments;
+   private int segmentShift;
+   private int segmentMask;
+   private long maxMemory = -1;
+
+   /**
+    * Sets the number of bytes allocated at once to store entries. Entries larger than a slab are stored in a slab of
+    * their own.
+    */
+   public void setSlabSize(int slabSize) {
+      if (slabSize < OffHeapSegment.HEADER_SIZE) {
+         throw new IllegalArgumentException("Slab size must be at least " + OffHeapSegment.HEADER_SIZE + " bytes");
+      }
+      this.slabSize = slabSize;
+   }
+
+   public int getSlabSize() {
+      return slabSize;
+   }
+
+   @Inject
+   public void initialize(Configuration configuration, StreamingMarshaller marshaller, EvictionManager evictionManager) {
+      this.marshaller = marshaller;
+      this.evictionManager = evictionManager;
+
+      int concurrencyLevel = Math.min(Math.max(configuration.getConcurrencyLevel(), 1), MAX_SEGMENTS);
+      int sshift = 0;
+      int ssize = 1;
+      while (ssize < concurrencyLevel) {
+         ++sshift;
+         ssize <<= 1;
+      }
+      segmentShift = 32 - sshift;
+      segmentMask = ssize - 1;
+
+      int maxEntries = -1;
+      long maxMemory = -1;
+      if (configuration.getEvictionStrategy().isEnabled()) {
+         if (configuration.getEvictionMaxEntries() > 0) {
+            maxEntries = (configuration.getEvictionMaxEntries() + ssize - 1) / ssize;
+         }
+         if (configuration.getEvictionMaxMemory() > 0) {
+            this.maxMemory = configuration.getEvictionMaxMemory();
+            maxMemory = (this.maxMemory + ssize - 1) / ssize;
+         }
+      }
+      segments = new OffHeapSegment[ssize];
+      for (int i = 0; i < ssize; i++) {
+         segments[i] = new OffHeapSegment(marshaller, slabSize, maxEntries, maxMemory);
+      }
+   }
+
+   public InternalCacheEntry get(Object k) {
+      byte[] keyBytes = marshall(k);
+      int hash = hash(k.hashCode());
+      OffHeapSegment segment = segmentFor(hash);
+      long now = System.currentTimeMillis();
+      Snapshot snapshot = segment.get(k, keyBytes, hash, true, now);
+      if (snapshot == null) {
+         return null;
+      }
+      if (snapshot.isExpired(now)) {
+         segment.removeIfExpired(k, keyBytes, hash, now);
+         return null;
+      }
+      return toEntry(k, snapshot);
+   }
+
+   public InternalCacheEntry peek(Object k) {
+      int hash = hash(k.hashCode());
+      Snapshot snapshot = segmentFor(hash).get(k, marshall(k), hash, false, System.currentTimeMillis());
+      return snapshot == null ? null : toEntry(k, snapshot);
+   }
+
+   public void put(Object k, Object v, long lifespan, long maxIdle) {
+      byte[] keyBytes = marshall(k);
+      byte[] valueBytes = marshall(v);
+      int hash = hash(k.hashCode());
+      List<Snapshot> evicted = segmentFor(hash).put(k, keyBytes, hash, valueBytes, lifespan, maxIdle,
+               System.currentTimeMillis());
+      if (evicted != null && !evicted.isEmpty() && evictionManager != null) {
+         Map<Object, InternalCacheEntry> entries = new HashMap<Object, InternalCacheEntry>(evicted.size() * 2);
+         for (Snapshot snapshot : evicted) {
+            InternalCacheEntry entry = toEntry(null, snapshot);
+            entries.put(entry.getKey(), entry);
+         }
+         evictionManager.onEntryEviction(entries);
+      }
+   }
+
+   public boolean containsKey(Object k) {
+      byte[] keyBytes = marshall(k);
+      int hash = hash(k.hashCode());
+      OffHeapSegment segment = segmentFor(hash);
+      long now = System.currentTimeMillis();
+      Snapshot snapshot = segment.get(k, keyBytes, hash, false, now);
+      if (snapshot != null && snapshot.isExpired(now)) {
+         segment.removeIfExpired(k, keyBytes, hash, now);
+         snapshot = null;
+      }
+      return snapshot != null;
+   }
+
+   public InternalCacheEntry remove(Object k) {
+      int hash = hash(k.hashCode());
+      Snapshot snapshot = segmentFor(hash).remove(k, marshall(k), hash);
+      return snapshot == null || snapshot.isExpired(System.currentTimeMillis()) ? null : toEntry(k, snapshot);
+   }
+
+   public int size() {
+      long size = 0;
+      for (OffHeapSegment segment : segments) {
+         size += segment.count;
+      }
+      return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
+   }
+
+   public void clear() {
+      for (OffHeapSegment segment : segments) {
+         segment.clear();
+      }
+   }
+
+   public Set<Object> keySet() {
+      return new KeySet();
+   }
+
+   public Collection<Object> values() {
+      return new Values();
+   }
+
+   public Set<InternalCacheEntry> entrySet() {
+      return new EntrySet();
+   }
+
+   public void purgeExpired() {
+      long now = System.currentTimeMillis();
+      for (OffHeapSegment segment : segments) {
+         segment.purgeExpired(now);
+      }
+   }
+
+   public Iterator<InternalCacheEntry> iterator() {
+      return new EntryIterator();
+   }
+
+   @ManagedAttribute(description = "Number of bytes of direct memory allocated to store the entries in the cache")
+   @Metric(displayName = "Off-heap memory allocated", units = Units.BYTES, displayType = DisplayType.SUMMARY)
+   public long getAllocatedBytes() {
+      long allocated = 0;
+      for (OffHeapSegment segment : segments) {
+         allocated += segment.allocatedBytes;
+      }
+      return allocated;
+   }
+
+   @ManagedAttribute(description = "Number of bytes of direct memory taken by the entries in the cache")
+   @Metric(displayName = "Off-heap memory used", units = Units.BYTES, displayType = DisplayType.SUMMARY)
+   public long getWeightedSize() {
+      long live = 0;
+      for (OffHeapSegment segment : segments) {
+         live += segment.liveBytes;
+      }
+      return live;
+   }
+
+   @ManagedAttribute(description = "Maximum number of bytes of direct memory the entries in the cache may take, or -1 if the cache is not memory bounded")
+   @Metric(displayName = "Maximum memory for cache entries", units = Units.BYTES, displayType = DisplayType.SUMMARY)
+   public long getMaxMemory() {
+      return maxMemory;
+   }
+
+   private OffHeapSegment segmentFor(int hash) {
+      return segments[(hash >>> segmentShift) & segmentMask];
+   }
+
+   private static int hash(int h) {
+      // Spread bits to regularize both segment and index locations,
+      // using variant of single-word Wang/Jenkins hash.
+      h += h << 15 ^ 0xffffcd7d;
+      h ^= h >>> 10;
+      h += h << 3;
+      h ^= h >>> 6;
+      h += (h << 2) + (h << 14);
+      return h ^ h >>> 16;
+   }
+
+   private byte[] marshall(Object o) {
+      try {
+         return marshaller.objectToByteBuffer(o);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new CacheException("Interrupted while marshalling " + o, e);
+      } catch (Exception e) {
+         throw new CacheException("Unable to marshall " + o, e);
+      }
+   }
+
+   private Object unmarshall(byte[] bytes) {
+      try {
+         return marshaller.objectFromByteBuffer(bytes);
+      } catch (Exception e) {
+         throw new CacheException("Unable to unmarshall off-heap entry", e);
+      }
+   }
+
+   /**
+    * @param key the key of the entry, or null to unmarshall it from the snapshot
+    */
+   private InternalCacheEntry toEntry(Object key, Snapshot snapshot) {
+      if (key == null) {
+         key = unmarshall(snapshot.key);
+      }
+      return InternalEntryFactory.create(key, unmarshall(snapshot.value), snapshot.created, snapshot.lifespan,
+               snapshot.lastUsed, snapshot.maxIdle);
+   }
+
+   /**
+    * Iterates over the segments a batch of buckets at a time, unmarshalling entries outside of the segment locks.
+    */
+   private class EntryIterator implements Iterator<InternalCacheEntry> {
+      private final List<Snapshot> batch = new ArrayList<Snapshot>(ITERATION_BATCH_SIZE);
+      private int segmentIndex = -1;
+      private int bucket;
+      private int logicalCapacity;
+      private int position;
+
+      public boolean hasNext() {
+         while (position == batch.size()) {
+            batch.clear();
+            position = 0;
+            if (segmentIndex < 0 || bucket == logicalCapacity) {
+               if (++segmentIndex == segments.length) {
+                  segmentIndex--;
+                  return false;
+               }
+               bucket = 0;
+               logicalCapacity = segments[segmentIndex].getIndexCapacity();
+            }
+            bucket = segments[segmentIndex].snapshotBuckets(bucket, logicalCapacity, ITERATION_BATCH_SIZE,
+                     System.currentTimeMillis(), batch);
+         }
+         return true;
+      }
+
+      public InternalCacheEntry next() {
+         if (!hasNext()) {
+            throw new NoSuchElementException();
+         }
+         return toEntry(null, batch.get(position++));
+      }
+
+      public void remove() {
+         throw new UnsupportedOperationException();
+      }
+   }
+
+   /**
+    * Minimal implementation needed for unmodifiable Set
+    *
+    */
+   private class EntrySet extends AbstractSet<InternalCacheEntry> {
+
+      @Override
+      public boolean contains(Object o) {
+         if (!(o instanceof Map.Entry)) {
+            return false;
+         }
+
+         @SuppressWarnings("rawtypes")
+         Map.Entry e = (Map.Entry) o;
+         InternalCacheEntry ice = peek(e.getKey());
+         if (ice == null) {
+            return false;
+         }
+         return ice.getValue().equals(e.getValue());
+      }
+
+      @Override
+      public Iterator<InternalCacheEntry> iterator() {
+         final Iterator<InternalCacheEntry> it = new EntryIterator();
+         return new Iterator<InternalCacheEntry>() {
+            public boolean hasNext() {
+               return it.hasNext();
+            }
+
+            public InternalCacheEntry next() {
+               return Immutables.immutableInternalCacheEntry(it.next());
+            }
+
+            public void remove() {
+               throw new UnsupportedOperationException();
+            }
+         };
+      }
+
+      @Override
+      public int size() {
+         return OffHeapDataContainer.this.size();
+      }
+   }
+
+   /**
+    * Minimal implementation needed for unmodifiable Set
+    *
+    */
+   private class KeySet extends AbstractSet<Object> {
+
+      @Override
+      public boolean contains(Object o) {
+         return peek(o) != null;
+      }
+
+      @Override
+      public Iterator<Object> iterator() {
+         final Iterator<InternalCacheEntry> it = new EntryIterator();
+         return new Iterator<Object>() {
+            public boolean hasNext() {
+               return it.hasNext();
+            }
+
+            public Object next() {
+               return it.next().getKey();
+            }
+
+            public void remove() {
+               throw new UnsupportedOperationException();
+            }
+         };
+      }
+
+      @Override
+      public int size() {
+         return OffHeapDataContainer.this.size();
+      }
+   }
+
+   /**
+    * Minimal implementation needed for unmodifiable Collection
+    *
+    */
+   private class Values extends AbstractCollection<Object> {
+      @Override
+      public Iterator<Object> iterator() {
+         final Iterator<InternalCacheEntry> it = new EntryIterator();
+         return new Iterator<Object>() {
+            public boolean hasNext() {
+               return it.hasNext();
+            }
+
+            public Object next() {
+               return it.next().getValue();
+            }
+
+            public void remove() {
+               throw new UnsupportedOperationException();
+            }
+         };
+      }
+
+      @Override
+      public int size() {
+         return OffHeapDataContainer.this.size();
+      }
+   }
+}
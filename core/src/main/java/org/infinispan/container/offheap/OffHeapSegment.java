@@ -0,0 +1,721 @@
+package org.infinispan.container.offheap;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.infinispan.CacheException;
+import org.infinispan.marshall.StreamingMarshaller;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+/**
+ * A segment of an {@link OffHeapDataContainer}. Records are stored in direct {@link ByteBuffer} slabs which are
+ * filled with a bump pointer, and are chained together through an off-heap hash index holding the address of the
+ * first record of each bucket.
+ * <p/>
+ * Each record has the following layout, followed by the marshalled key and value, padded to a multiple of 8 bytes:
+ * <pre>
+ *  0: address of the next record in the bucket (long)
+ *  8: spread hash code of the key (int)
+ * 12: key length (int)
+ * 16: value length (int)
+ * 20: flags (byte)
+ * 24: created, lifespan, last used and max idle (4 longs)
+ * </pre>
+ * Removing or overwriting a record only marks it dead. Once less than half of a slab holds live records, its live
+ * records are copied to the slab currently being filled and the slab is released. Eviction approximates the configured
+ * strategy with a CLOCK sweep over the slabs, giving a second chance to records read since the hand last passed them.
+ * <p/>
+ * Lookups run under the read lock, and mutations under the write lock.
+ *
+ * @since 5.0
+ */
+final class OffHeapSegment extends ReentrantReadWriteLock {
+
+   private static final long serialVersionUID = -4387260471934613937L;
+
+   static final int NEXT = 0;
+   static final int HASH = 8;
+   static final int KEY_LENGTH = 12;
+   static final int VALUE_LENGTH = 16;
+   static final int FLAGS = 20;
+   static final int CREATED = 24;
+   static final int LIFESPAN = 32;
+   static final int LAST_USED = 40;
+   static final int MAX_IDLE = 48;
+   static final int HEADER_SIZE = 56;
+
+   static final byte ACCESSED = 1;
+   static final byte DEAD = 2;
+
+   private static final int INITIAL_INDEX_CAPACITY = 16;
+   private static final float LOAD_FACTOR = 0.75f;
+
+   private static final Log log = LogFactory.getLog(OffHeapSegment.class);
+
+   // DirectByteBuffer.cleaner() and Cleaner.clean(), to free direct memory without waiting for the garbage collector
+   private static final Method CLEANER;
+   private static final Method CLEAN;
+
+   static {
+      Method cleaner = null;
+      Method clean = null;
+      try {
+         ByteBuffer buffer = ByteBuffer.allocateDirect(1);
+         cleaner = buffer.getClass().getMethod("cleaner");
+         cleaner.setAccessible(true);
+         clean = cleaner.getReturnType().getMethod("clean");
+         clean.setAccessible(true);
+         clean.invoke(cleaner.invoke(buffer));
+      } catch (Throwable t) {
+         log.debug("Unable to free direct memory explicitly, it will be freed once garbage collected: %s", t);
+         cleaner = null;
+         clean = null;
+      }
+      CLEANER = cleaner;
+      CLEAN = clean;
+   }
+
+   private final transient StreamingMarshaller marshaller;
+   private final int slabSize;
+   private final int maxEntries;
+   private final long maxMemory;
+
+   private transient Slab[] slabs = new Slab[4];
+   private int slabCount;
+   private int[] freeSlabIds = new int[4];
+   private int freeSlabCount;
+   private transient Slab current;
+   private transient ByteBuffer spare;
+   private transient ByteBuffer index;
+   private int indexCapacity;
+   private boolean compactionNeeded;
+
+   private int clockSlab;
+   private int clockOffset;
+
+   volatile int count;
+   volatile long liveBytes;
+   volatile long allocatedBytes;
+
+   /**
+    * @param maxEntries maximum number of records held by this segment, or -1 if unbounded
+    * @param maxMemory maximum number of bytes taken by the live records of this segment, or -1 if unbounded
+    */
+   OffHeapSegment(StreamingMarshaller marshaller, int slabSize, int maxEntries, long maxMemory) {
+      this.marshaller = marshaller;
+      this.slabSize = slabSize;
+      this.maxEntries = maxEntries;
+      this.maxMemory = maxMemory;
+      resetIndex();
+   }
+
+   static boolean isExpired(long created, long lifespan, long lastUsed, long maxIdle, long now) {
+      return (lifespan > -1 && created > -1 && now > created + lifespan)
+               || (maxIdle > -1 && lastUsed > -1 && now > lastUsed + maxIdle);
+   }
+
+   static int recordSize(int keyLength, int valueLength) {
+      long size = HEADER_SIZE + (long) keyLength + valueLength;
+      size = (size + 7) & ~7L;
+      if (size > Integer.MAX_VALUE) {
+         throw new CacheException("Entry of " + size + " bytes is too large to be stored off-heap");
+      }
+      return (int) size;
+   }
+
+   /**
+    * Looks a record up, optionally recording an access to it.
+    *
+    * @return a copy of the record's value and metadata, or null if no record matches the key
+    */
+   Snapshot get(Object key, byte[] keyBytes, int hash, boolean touch, long now) {
+      readLock().lock();
+      try {
+         long address = find(key, keyBytes, hash);
+         if (address == 0) {
+            return null;
+         }
+         Slab slab = slabAt(address);
+         int offset = offsetOf(address);
+         ByteBuffer buffer = slab.buffer;
+         Snapshot snapshot = readMetadata(buffer, offset);
+         if (touch && !snapshot.isExpired(now)) {
+            buffer.putLong(offset + LAST_USED, now);
+            buffer.put(offset + FLAGS, (byte) (buffer.get(offset + FLAGS) | ACCESSED));
+            snapshot.lastUsed = now;
+         }
+         snapshot.value = copy(buffer, offset + HEADER_SIZE + buffer.getInt(offset + KEY_LENGTH),
+                  buffer.getInt(offset + VALUE_LENGTH));
+         return snapshot;
+      } finally {
+         readLock().unlock();
+      }
+   }
+
+   /**
+    * Stores a record, replacing any record with the same key.
+    *
+    * @return copies of the records evicted to make room for the new one, or null if none was evicted
+    */
+   List<Snapshot> put(Object key, byte[] keyBytes, int hash, byte[] valueBytes, long lifespan, long maxIdle, long now) {
+      int size = recordSize(keyBytes.length, valueBytes.length);
+      writeLock().lock();
+      try {
+         long old = find(key, keyBytes, hash);
+         long address = allocate(size);
+         Slab slab = slabAt(address);
+         int offset = offsetOf(address);
+         ByteBuffer buffer = slab.buffer;
+         buffer.putInt(offset + HASH, hash);
+         buffer.putInt(offset + KEY_LENGTH, keyBytes.length);
+         buffer.putInt(offset + VALUE_LENGTH, valueBytes.length);
+         buffer.put(offset + FLAGS, ACCESSED);
+         buffer.putLong(offset + CREATED, now);
+         buffer.putLong(offset + LIFESPAN, lifespan);
+         buffer.putLong(offset + LAST_USED, now);
+         buffer.putLong(offset + MAX_IDLE, maxIdle);
+         ByteBuffer data = buffer.duplicate();
+         data.position(offset + HEADER_SIZE);
+         data.put(keyBytes);
+         data.put(valueBytes);
+         slab.live += size;
+         liveBytes += size;
+
+         if (old != 0) {
+            buffer.putLong(offset + NEXT, nextOf(old));
+            relink(old, address, hash);
+            markDead(old);
+         } else {
+            int bucket = hash & (indexCapacity - 1);
+            buffer.putLong(offset + NEXT, index.getLong(bucket << 3));
+            index.putLong(bucket << 3, address);
+            count++;
+            if (count > indexCapacity * LOAD_FACTOR) {
+               resizeIndex();
+            }
+         }
+
+         List<Snapshot> evicted = evictIfNeeded();
+         compactIfNeeded();
+         return evicted;
+      } finally {
+         writeLock().unlock();
+      }
+   }
+
+   /**
+    * Removes a record.
+    *
+    * @return a copy of the removed record, or null if no record matches the key
+    */
+   Snapshot remove(Object key, byte[] keyBytes, int hash) {
+      writeLock().lock();
+      try {
+         long address = find(key, keyBytes, hash);
+         if (address == 0) {
+            return null;
+         }
+         Snapshot snapshot = readRecord(address);
+         kill(address);
+         compactIfNeeded();
+         return snapshot;
+      } finally {
+         writeLock().unlock();
+      }
+   }
+
+   /**
+    * Removes a record only if it has expired by the time the write lock is acquired.
+    */
+   void removeIfExpired(Object key, byte[] keyBytes, int hash, long now) {
+      writeLock().lock();
+      try {
+         long address = find(key, keyBytes, hash);
+         if (address != 0 && isExpired(address, now)) {
+            kill(address);
+            compactIfNeeded();
+         }
+      } finally {
+         writeLock().unlock();
+      }
+   }
+
+   void purgeExpired(long now) {
+      writeLock().lock();
+      try {
+         for (int id = 0; id < slabCount; id++) {
+            Slab slab = slabs[id];
+            // records appended to the current slab while scanning it are not expired
+            for (int offset = 0; slab != null && offset < slab.fill;) {
+               ByteBuffer buffer = slab.buffer;
+               int size = recordSize(buffer, offset);
+               long address = addressOf(id, offset);
+               offset += size;
+               if (!isDead(buffer, offset - size) && isExpired(address, now)) {
+                  kill(address);
+                  // the slab is released once its last record dies
+                  slab = slabs[id];
+               }
+            }
+         }
+         compactIfNeeded();
+      } finally {
+         writeLock().unlock();
+      }
+   }
+
+   /**
+    * Removes all records and frees the direct memory of the segment.
+    */
+   void clear() {
+      writeLock().lock();
+      try {
+         for (int id = 0; id < slabCount; id++) {
+            if (slabs[id] != null) {
+               free(slabs[id].buffer);
+            }
+         }
+         if (spare != null) {
+            free(spare);
+         }
+         free(index);
+         slabs = new Slab[4];
+         slabCount = 0;
+         freeSlabCount = 0;
+         current = null;
+         spare = null;
+         compactionNeeded = false;
+         clockSlab = 0;
+         clockOffset = 0;
+         count = 0;
+         liveBytes = 0;
+         allocatedBytes = 0;
+         resetIndex();
+      } finally {
+         writeLock().unlock();
+      }
+   }
+
+   int getIndexCapacity() {
+      readLock().lock();
+      try {
+         return indexCapacity;
+      } finally {
+         readLock().unlock();
+      }
+   }
+
+   /**
+    * Copies the live records hashing to the logical buckets starting at {@code fromBucket}, where logical buckets are
+    * the buckets of an index of {@code logicalCapacity} buckets. Iterating over logical buckets rather than the buckets
+    * of the index keeps iteration free of duplicates when the index is resized in between batches.
+    *
+    * @return the first logical bucket not copied, or {@code logicalCapacity} if all buckets have been copied
+    */
+   int snapshotBuckets(int fromBucket, int logicalCapacity, int batchSize, long now, List<Snapshot> batch) {
+      readLock().lock();
+      try {
+         int bucket = fromBucket;
+         while (bucket < logicalCapacity && batch.size() < batchSize) {
+            if (indexCapacity >= logicalCapacity) {
+               for (int physical = bucket; physical < indexCapacity; physical += logicalCapacity) {
+                  snapshotChain(physical, -1, 0, now, batch);
+               }
+            } else {
+               snapshotChain(bucket & (indexCapacity - 1), logicalCapacity - 1, bucket, now, batch);
+            }
+            bucket++;
+         }
+         return bucket;
+      } finally {
+         readLock().unlock();
+      }
+   }
+
+   private void snapshotChain(int bucket, int logicalMask, int logicalBucket, long now, List<Snapshot> batch) {
+      for (long address = index.getLong(bucket << 3); address != 0; address = nextOf(address)) {
+         ByteBuffer buffer = slabAt(address).buffer;
+         int offset = offsetOf(address);
+         if (logicalMask >= 0 && (buffer.getInt(offset + HASH) & logicalMask) != logicalBucket) {
+            continue;
+         }
+         Snapshot snapshot = readRecord(address);
+         if (!snapshot.isExpired(now)) {
+            batch.add(snapshot);
+         }
+      }
+   }
+
+   private long find(Object key, byte[] keyBytes, int hash) {
+      for (long address = index.getLong((hash & (indexCapacity - 1)) << 3); address != 0; address = nextOf(address)) {
+         ByteBuffer buffer = slabAt(address).buffer;
+         int offset = offsetOf(address);
+         if (buffer.getInt(offset + HASH) == hash && keyMatches(buffer, offset, key, keyBytes)) {
+            return address;
+         }
+      }
+      return 0;
+   }
+
+   private boolean keyMatches(ByteBuffer buffer, int offset, Object key, byte[] keyBytes) {
+      int keyLength = buffer.getInt(offset + KEY_LENGTH);
+      if (keyLength == keyBytes.length) {
+         int start = offset + HEADER_SIZE;
+         int i = 0;
+         while (i < keyLength && buffer.get(start + i) == keyBytes[i]) {
+            i++;
+         }
+         if (i == keyLength) {
+            return true;
+         }
+      }
+      // equal keys do not necessarily marshall to the same bytes
+      try {
+         return key.equals(marshaller.objectFromByteBuffer(copy(buffer, offset + HEADER_SIZE, keyLength)));
+      } catch (Exception e) {
+         throw new CacheException("Unable to unmarshall key", e);
+      }
+   }
+
+   private boolean isExpired(long address, long now) {
+      ByteBuffer buffer = slabAt(address).buffer;
+      int offset = offsetOf(address);
+      return isExpired(buffer.getLong(offset + CREATED), buffer.getLong(offset + LIFESPAN),
+               buffer.getLong(offset + LAST_USED), buffer.getLong(offset + MAX_IDLE), now);
+   }
+
+   private Snapshot readMetadata(ByteBuffer buffer, int offset) {
+      Snapshot snapshot = new Snapshot();
+      snapshot.created = buffer.getLong(offset + CREATED);
+      snapshot.lifespan = buffer.getLong(offset + LIFESPAN);
+      snapshot.lastUsed = buffer.getLong(offset + LAST_USED);
+      snapshot.maxIdle = buffer.getLong(offset + MAX_IDLE);
+      return snapshot;
+   }
+
+   private Snapshot readRecord(long address) {
+      ByteBuffer buffer = slabAt(address).buffer;
+      int offset = offsetOf(address);
+      Snapshot snapshot = readMetadata(buffer, offset);
+      int keyLength = buffer.getInt(offset + KEY_LENGTH);
+      snapshot.key = copy(buffer, offset + HEADER_SIZE, keyLength);
+      snapshot.value = copy(buffer, offset + HEADER_SIZE + keyLength, buffer.getInt(offset + VALUE_LENGTH));
+      return snapshot;
+   }
+
+   private static byte[] copy(ByteBuffer buffer, int offset, int length) {
+      byte[] bytes = new byte[length];
+      ByteBuffer source = buffer.duplicate();
+      source.position(offset);
+      source.get(bytes);
+      return bytes;
+   }
+
+   // ----- record chaining
+
+   private long nextOf(long address) {
+      return slabAt(address).buffer.getLong(offsetOf(address) + NEXT);
+   }
+
+   /**
+    * Replaces {@code old} with {@code replacement} in the bucket chain holding {@code old}. The caller is responsible
+    * for linking {@code replacement} to the successor of {@code old}.
+    */
+   private void relink(long old, long replacement, int hash) {
+      int slot = (hash & (indexCapacity - 1)) << 3;
+      long address = index.getLong(slot);
+      if (address == old) {
+         index.putLong(slot, replacement);
+         return;
+      }
+      while (address != 0) {
+         long next = nextOf(address);
+         if (next == old) {
+            slabAt(address).buffer.putLong(offsetOf(address) + NEXT, replacement);
+            return;
+         }
+         address = next;
+      }
+      throw new IllegalStateException("Record " + Long.toHexString(old) + " is not linked");
+   }
+
+   private void kill(long address) {
+      relink(address, nextOf(address), slabAt(address).buffer.getInt(offsetOf(address) + HASH));
+      markDead(address);
+      count--;
+   }
+
+   private void markDead(long address) {
+      Slab slab = slabAt(address);
+      int offset = offsetOf(address);
+      ByteBuffer buffer = slab.buffer;
+      int size = recordSize(buffer, offset);
+      buffer.put(offset + FLAGS, (byte) (buffer.get(offset + FLAGS) | DEAD));
+      slab.live -= size;
+      liveBytes -= size;
+      if (slab != current) {
+         if (slab.live == 0) {
+            releaseSlab(slab);
+         } else if (isSparse(slab)) {
+            compactionNeeded = true;
+         }
+      }
+   }
+
+   private void resetIndex() {
+      indexCapacity = INITIAL_INDEX_CAPACITY;
+      index = ByteBuffer.allocateDirect(indexCapacity << 3);
+   }
+
+   private void resizeIndex() {
+      int newCapacity = indexCapacity << 1;
+      ByteBuffer newIndex = ByteBuffer.allocateDirect(newCapacity << 3);
+      for (int bucket = 0; bucket < indexCapacity; bucket++) {
+         long address = index.getLong(bucket << 3);
+         while (address != 0) {
+            ByteBuffer buffer = slabAt(address).buffer;
+            int offset = offsetOf(address);
+            long next = buffer.getLong(offset + NEXT);
+            int slot = (buffer.getInt(offset + HASH) & (newCapacity - 1)) << 3;
+            buffer.putLong(offset + NEXT, newIndex.getLong(slot));
+            newIndex.putLong(slot, address);
+            address = next;
+         }
+      }
+      free(index);
+      index = newIndex;
+      indexCapacity = newCapacity;
+   }
+
+   /**
+    * Frees the memory of a direct buffer right away, when the JVM allows it, rather than once the buffer is garbage
+    * collected. Must be called holding the write lock, as the buffer may not be accessed anymore.
+    */
+   private static void free(ByteBuffer buffer) {
+      if (CLEANER == null) {
+         return;
+      }
+      try {
+         Object cleaner = CLEANER.invoke(buffer);
+         if (cleaner != null) {
+            CLEAN.invoke(cleaner);
+         }
+      } catch (Exception e) {
+         log.debug("Unable to free direct memory explicitly: %s", e);
+      }
+   }
+
+   // ----- slab management
+
+   private static long addressOf(int slabId, int offset) {
+      return ((long) (slabId + 1) << 32) | offset;
+   }
+
+   private static int offsetOf(long address) {
+      return (int) address;
+   }
+
+   private Slab slabAt(long address) {
+      return slabs[(int) (address >>> 32) - 1];
+   }
+
+   private static int recordSize(ByteBuffer buffer, int offset) {
+      return recordSize(buffer.getInt(offset + KEY_LENGTH), buffer.getInt(offset + VALUE_LENGTH));
+   }
+
+   private static boolean isDead(ByteBuffer buffer, int offset) {
+      return (buffer.get(offset + FLAGS) & DEAD) != 0;
+   }
+
+   private static boolean isSparse(Slab slab) {
+      return slab.live * 2 < slab.fill;
+   }
+
+   private long allocate(int size) {
+      if (size > slabSize) {
+         // records larger than a slab get a slab of their own, released as soon as the record dies
+         Slab slab = newSlab(size);
+         slab.fill = size;
+         return addressOf(slab.id, 0);
+      }
+      if (current == null || current.fill + size > current.buffer.capacity()) {
+         Slab retired = current;
+         current = newSlab(slabSize);
+         if (retired != null) {
+            if (retired.live == 0) {
+               releaseSlab(retired);
+            } else if (isSparse(retired)) {
+               compactionNeeded = true;
+            }
+         }
+      }
+      int offset = current.fill;
+      current.fill += size;
+      return addressOf(current.id, offset);
+   }
+
+   private Slab newSlab(int capacity) {
+      int id;
+      if (freeSlabCount > 0) {
+         id = freeSlabIds[--freeSlabCount];
+      } else {
+         id = slabCount++;
+         if (id == slabs.length) {
+            Slab[] grown = new Slab[slabs.length << 1];
+            System.arraycopy(slabs, 0, grown, 0, slabs.length);
+            slabs = grown;
+         }
+      }
+      ByteBuffer buffer;
+      if (capacity == slabSize && spare != null) {
+         buffer = spare;
+         spare = null;
+      } else {
+         buffer = ByteBuffer.allocateDirect(capacity);
+         allocatedBytes += capacity;
+      }
+      Slab slab = new Slab(id, buffer);
+      slabs[id] = slab;
+      return slab;
+   }
+
+   private void releaseSlab(Slab slab) {
+      slabs[slab.id] = null;
+      if (freeSlabCount == freeSlabIds.length) {
+         int[] grown = new int[freeSlabIds.length << 1];
+         System.arraycopy(freeSlabIds, 0, grown, 0, freeSlabIds.length);
+         freeSlabIds = grown;
+      }
+      freeSlabIds[freeSlabCount++] = slab.id;
+      if (clockSlab == slab.id) {
+         // the id may be reused for a new slab, so the hand must not stay in the middle of it
+         clockSlab++;
+         clockOffset = 0;
+      }
+      // keep one standard slab around so that a segment oscillating around a slab boundary does not reallocate
+      if (spare == null && slab.buffer.capacity() == slabSize) {
+         spare = slab.buffer;
+         spare.clear();
+      } else {
+         allocatedBytes -= slab.buffer.capacity();
+         free(slab.buffer);
+      }
+   }
+
+   private void compactIfNeeded() {
+      if (!compactionNeeded) {
+         return;
+      }
+      compactionNeeded = false;
+      for (int id = 0; id < slabCount; id++) {
+         Slab slab = slabs[id];
+         if (slab != null && slab != current && isSparse(slab)) {
+            compact(slab);
+         }
+      }
+   }
+
+   /**
+    * Moves the live records of a slab to the current slab and releases it.
+    */
+   private void compact(Slab slab) {
+      ByteBuffer buffer = slab.buffer;
+      for (int offset = 0; offset < slab.fill;) {
+         int size = recordSize(buffer, offset);
+         if (!isDead(buffer, offset)) {
+            long address = allocate(size);
+            Slab target = slabAt(address);
+            ByteBuffer source = buffer.duplicate();
+            source.limit(offset + size).position(offset);
+            ByteBuffer destination = target.buffer.duplicate();
+            destination.position(offsetOf(address));
+            destination.put(source);
+            target.live += size;
+            relink(addressOf(slab.id, offset), address, buffer.getInt(offset + HASH));
+         }
+         offset += size;
+      }
+      releaseSlab(slab);
+   }
+
+   // ----- eviction
+
+   private boolean isOverflow() {
+      return (maxEntries > -1 && count > maxEntries) || (maxMemory > -1 && liveBytes > maxMemory);
+   }
+
+   /**
+    * Sweeps the clock hand over the records in slab order, evicting records not read since the hand last passed them
+    * until the segment is within its bounds. Gives up after two full sweeps, which can only happen if a single record
+    * exceeds the memory bound.
+    */
+   private List<Snapshot> evictIfNeeded() {
+      if (!isOverflow()) {
+         return null;
+      }
+      List<Snapshot> evicted = new ArrayList<Snapshot>(4);
+      int wraps = 0;
+      while (isOverflow() && count > 0) {
+         if (clockSlab >= slabCount) {
+            if (++wraps > 2) {
+               break;
+            }
+            clockSlab = 0;
+            clockOffset = 0;
+         }
+         Slab slab = slabs[clockSlab];
+         if (slab == null || clockOffset >= slab.fill) {
+            clockSlab++;
+            clockOffset = 0;
+            continue;
+         }
+         ByteBuffer buffer = slab.buffer;
+         int offset = clockOffset;
+         clockOffset += recordSize(buffer, offset);
+         byte flags = buffer.get(offset + FLAGS);
+         if ((flags & DEAD) != 0) {
+            continue;
+         }
+         if ((flags & ACCESSED) != 0) {
+            buffer.put(offset + FLAGS, (byte) (flags & ~ACCESSED));
+            continue;
+         }
+         long address = addressOf(slab.id, offset);
+         evicted.add(readRecord(address));
+         kill(address);
+      }
+      return evicted;
+   }
+
+   private static final class Slab {
+      final int id;
+      final ByteBuffer buffer;
+      int fill;
+      int live;
+
+      Slab(int id, ByteBuffer buffer) {
+         this.id = id;
+         this.buffer = buffer;
+      }
+   }
+
+   /**
+    * A heap copy of a record. The key is only copied when the caller does not hold it already.
+    */
+   static final class Snapshot {
+      byte[] key;
+      byte[] value;
+      long created;
+      long lifespan;
+      long lastUsed;
+      long maxIdle;
+
+      boolean isExpired(long now) {
+         return OffHeapSegment.isExpired(created, lifespan, lastUsed, maxIdle, now);
+      }
+   }
+}
@@ -0,0 +1,4 @@
+/**
+ * A data container storing marshalled entries in direct memory, outside of the Java heap.
+ */
+package org.infinispan.container.offheap;
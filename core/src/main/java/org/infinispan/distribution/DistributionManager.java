@@ -10,6 +10,7 @@ import org.infinispan.distribution.ch.NodeTopologyInfo;
 import org.infinispan.distribution.ch.TopologyInfo;
 import org.infinispan.factories.scopes.Scope;
 import org.infinispan.factories.scopes.Scopes;
+import org.infinispan.loaders.CacheLoaderException;
 import org.infinispan.loaders.CacheStore;
 import org.infinispan.remoting.transport.Address;
 
@@ -184,6 +185,43 @@ public interface DistributionManager {
 
    void applyState(ConsistentHash newConsistentHash, Map<Object,InternalCacheValue> state, RemoteTransactionLogger transactionLogger, boolean forLeave);
 
+   /**
+    * Applies a chunk of state received from a state provider.  Once the last chunk of a transfer is applied, and unless
+    * the transfer is for a leave, the transaction log of the state provider is drained.
+    *
+    * @param newConsistentHash consistent hash the state is applied against
+    * @param chunk chunk of state to apply
+    * @param transactionLogger transaction log of the state provider
+    * @param forLeave true if the state is transferred because a node left the cluster
+    */
+   void applyStateChunk(ConsistentHash newConsistentHash, StateChunk chunk, RemoteTransactionLogger transactionLogger, boolean forLeave);
+
+   /**
+    * Registers a transfer of state to another node, replacing any unfinished transfer to the same node, and produces
+    * its first chunk.
+    *
+    * @param transfer state to send
+    * @return the first chunk of state
+    */
+   StateChunk startStateTransfer(OutboundStateTransfer transfer) throws CacheLoaderException;
+
+   /**
+    * Produces the next chunk of a state transfer started with {@link #startStateTransfer(OutboundStateTransfer)}.
+    *
+    * @param receiver node receiving the state
+    * @param transferId identifier of the transfer
+    * @return the next chunk of state
+    * @throws org.infinispan.CacheException if the transfer is not in progress anymore
+    */
+   StateChunk nextStateChunk(Address receiver, long transferId) throws CacheLoaderException;
+
+   /**
+    * Drops the unfinished state transfer to a node, if any, once the node has given up on it.
+    *
+    * @param receiver node that was receiving the state
+    */
+   void abortStateTransfer(Address receiver);
+
    void setRehashInProgress(boolean value);
 
    TopologyInfo getTopologyInfo();
@@ -14,9 +14,11 @@ import org.infinispan.container.entries.InternalCacheEntry;
 import org.infinispan.container.entries.InternalCacheValue;
 import org.infinispan.context.InvocationContext;
 import org.infinispan.context.InvocationContextContainer;
+import org.infinispan.distribution.ch.AbstractWheelConsistentHash;
 import org.infinispan.distribution.ch.ConsistentHash;
 import org.infinispan.distribution.ch.ConsistentHashHelper;
 import org.infinispan.distribution.ch.NodeTopologyInfo;
+import org.infinispan.distribution.ch.SegmentedConsistentHash;
 import org.infinispan.distribution.ch.TopologyInfo;
 import org.infinispan.distribution.ch.UnionConsistentHash;
 import org.infinispan.factories.annotations.Inject;
@@ -26,6 +28,7 @@ import org.infinispan.interceptors.InterceptorChain;
 import org.infinispan.jmx.annotations.MBean;
 import org.infinispan.jmx.annotations.ManagedAttribute;
 import org.infinispan.jmx.annotations.ManagedOperation;
+import org.infinispan.loaders.CacheLoaderException;
 import org.infinispan.loaders.CacheLoaderManager;
 import org.infinispan.loaders.CacheStore;
 import org.infinispan.notifications.Listener;
@@ -46,9 +49,12 @@ import org.infinispan.util.concurrent.ReclosableLatch;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 import org.rhq.helpers.pluginAnnotations.agent.DataType;
+import org.rhq.helpers.pluginAnnotations.agent.DisplayType;
+import org.rhq.helpers.pluginAnnotations.agent.MeasurementType;
 import org.rhq.helpers.pluginAnnotations.agent.Metric;
 import org.rhq.helpers.pluginAnnotations.agent.Operation;
 import org.rhq.helpers.pluginAnnotations.agent.Parameter;
+import org.rhq.helpers.pluginAnnotations.agent.Units;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -60,6 +66,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -94,6 +101,8 @@ public class DistributionManagerImpl implements DistributionManager {
 
    private final ExecutorService rehashExecutor;
 
+   private final ExecutorService remoteGetExecutor;
+
    private TransactionLogger transactionLogger;
 
    TopologyInfo topologyInfo = new TopologyInfo();
@@ -133,6 +142,20 @@ public class DistributionManagerImpl implements DistributionManager {
    private final Condition acksArrived = leaveAcksLock.newCondition();
    private final Set<Address> leaveRehashAcks = new CopyOnWriteArraySet<Address>(); // this needs to be threadsafe!
 
+   /**
+    * Unfinished transfers of state to other nodes, by receiver.  Each is advanced one chunk at a time, when its
+    * receiver asks for the next chunk.
+    */
+   private final ConcurrentMap<Address, OutboundStateTransfer> outboundStateTransfers = new ConcurrentHashMap<Address, OutboundStateTransfer>();
+   private final AtomicLong stateChunksSent = new AtomicLong(0);
+   private final AtomicLong stateEntriesSent = new AtomicLong(0);
+   private final AtomicLong stateBytesSent = new AtomicLong(0);
+   private final AtomicLong stateChunksReceived = new AtomicLong(0);
+   private final AtomicLong stateEntriesReceived = new AtomicLong(0);
+   private final AtomicLong staggeredRemoteGets = new AtomicLong(0);
+   private final AtomicLong firstOwnerHits = new AtomicLong(0);
+   private final AtomicLong staggeredFanOuts = new AtomicLong(0);
+
    final CountDownLatch finalJoinPhaseLatch = new CountDownLatch(1);
    volatile boolean enteredFinalJoinPhase = false;
    InboundInvocationHandler inboundInvocationHandler;
@@ -153,6 +176,14 @@ public class DistributionManagerImpl implements DistributionManager {
          }
       };
       rehashExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, rehashQueue, tf);
+      remoteGetExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            t.setName("StaggeredRemoteGet-" + rpcManager.getTransport().getAddress());
+            return t;
+         }
+      });
    }
 
    @Inject
@@ -179,9 +210,10 @@ public class DistributionManagerImpl implements DistributionManager {
       listener = new ViewChangeListener();
       notifier.addListener(listener);
       GlobalConfiguration gc = configuration.getGlobalConfiguration();
-      if (gc.hasTopologyInfo()) {
+      if (gc.hasTopologyInfo() || gc.getCapacityFactor() != 1) {
          Address address = rpcManager.getTransport().getAddress();
-         NodeTopologyInfo nti = new NodeTopologyInfo(gc.getMachineId(), gc.getRackId(), gc.getSiteId(), address);
+         NodeTopologyInfo nti = new NodeTopologyInfo(gc.getMachineId(), gc.getRackId(), gc.getSiteId(), address,
+                                                     gc.getCapacityFactor());
          topologyInfo.addNodeTopologyInfo(address, nti);
       }
       join();
@@ -232,6 +264,8 @@ public class DistributionManagerImpl implements DistributionManager {
    public void stop() {
       notifier.removeListener(listener);
       rehashExecutor.shutdownNow();
+      remoteGetExecutor.shutdownNow();
+      outboundStateTransfers.clear();
       setJoinComplete(false);
    }
 
@@ -247,6 +281,8 @@ public class DistributionManagerImpl implements DistributionManager {
          Address leaver = MembershipArithmetic.getMemberLeft(oldMembers, newMembers);
          log.info("This is a LEAVE event!  Node %s has just left", leaver);
 
+         OutboundStateTransfer abandoned = outboundStateTransfers.remove(leaver);
+         if (abandoned != null) log.info("Abandoning %s as its receiver has left", abandoned);
 
          try {
             if (!(consistentHash instanceof UnionConsistentHash)) {
@@ -261,7 +297,7 @@ public class DistributionManagerImpl implements DistributionManager {
          }
 
          List<Address> stateProviders = holdersOfLeaversState(leaver);
-         List<Address> receiversOfLeaverState = receiversOfLeaverState(stateProviders);
+         List<Address> receiversOfLeaverState = receiversOfLeaverState(leaver, stateProviders);
          boolean willReceiveLeaverState = receiversOfLeaverState.contains(self);
          boolean willProvideState = stateProviders.contains(self);
          if (willReceiveLeaverState || willProvideState) {
@@ -318,7 +354,17 @@ public class DistributionManagerImpl implements DistributionManager {
       }
    }
 
+   /**
+    * Tells whether the state of a node is spread across many nodes rather than held by its neighbours on the wheel.
+    */
+   private boolean isStateSpread(ConsistentHash ch) {
+      return ch instanceof SegmentedConsistentHash
+            || (ch instanceof AbstractWheelConsistentHash && ((AbstractWheelConsistentHash) ch).isWeighted());
+   }
+
    List<Address> holdersOfLeaversState(Address leaver) {
+      if (isStateSpread(oldConsistentHash))
+         return oldConsistentHash.getStateProvidersOnLeave(leaver, getReplCount());
       List<Address> result = new ArrayList<Address>();
       for (Address addr : oldConsistentHash.getCaches()) {
          List<Address> backups = oldConsistentHash.getBackupsForNode(addr, getReplCount());
@@ -338,7 +384,11 @@ public class DistributionManagerImpl implements DistributionManager {
       return result;
    }
 
-   List<Address> receiversOfLeaverState(List<Address> stateProviders) {
+   List<Address> receiversOfLeaverState(Address leaver, List<Address> stateProviders) {
+      if (oldConsistentHash instanceof SegmentedConsistentHash)
+         return ((SegmentedConsistentHash) oldConsistentHash).getStateReceiversOnLeave(leaver, getReplCount());
+      if (isStateSpread(oldConsistentHash))
+         return ((AbstractWheelConsistentHash) oldConsistentHash).getStateReceiversOnLeave(leaver, getReplCount());
       List<Address> result = new ArrayList<Address>();
       for (Address addr : stateProviders) {
          List<Address> addressList = consistentHash.getBackupsForNode(addr, getReplCount());
@@ -404,12 +454,129 @@ public class DistributionManagerImpl implements DistributionManager {
    }
 
    public InternalCacheEntry retrieveFromRemoteSource(Object key, InvocationContext ctx) throws Exception {
-      ClusteredGetCommand get = cf.buildClusteredGetCommand(key, ctx.getFlags());
+      // when caching the entry in L1, let the owners know who may hold it
+      Address requestor = configuration.isL1CacheEnabled() ? rpcManager.getAddress() : null;
+      ClusteredGetCommand get = cf.buildClusteredGetCommand(key, ctx.getFlags(), requestor);
+      List<Address> owners = locate(key);
+
+      long staggerDelay = configuration.getRemoteGetStaggerDelay();
+      if (staggerDelay > 0) {
+         List<Address> targets = new ArrayList<Address>(owners);
+         targets.remove(self);
+         if (targets.size() > 1) return retrieveFromRemoteSourceStaggered(key, get, targets, staggerDelay);
+      }
 
-      ResponseFilter filter = new ClusteredGetResponseValidityFilter(locate(key));
-      Map<Address, Response> responses = rpcManager.invokeRemotely(locate(key), get, ResponseMode.SYNCHRONOUS,
+      ResponseFilter filter = new ClusteredGetResponseValidityFilter(owners);
+      Map<Address, Response> responses = rpcManager.invokeRemotely(owners, get, ResponseMode.SYNCHRONOUS,
                                                                    configuration.getSyncReplTimeout(), false, filter);
+      return getValidResponse(key, responses);
+   }
+
+   /**
+    * Asks the closest owner first, and the remaining owners as well if it did not return a value in time or could not
+    * tell.  The request to the first owner is left pending when the remaining owners are asked, and the first valid
+    * response from any owner is returned.  A reply from the first owner that it does not hold the key is trusted unless
+    * a rehash is in progress, as the owners then hold the same keys.
+    */
+   private InternalCacheEntry retrieveFromRemoteSourceStaggered(Object key, ClusteredGetCommand get, List<Address> targets,
+                                                                long staggerDelay) throws Exception {
+      staggeredRemoteGets.incrementAndGet();
+      long timeout = configuration.getSyncReplTimeout();
+      long deadline = System.currentTimeMillis() + timeout;
+      Address first = selectFirstOwner(targets);
+      CompletionService<Map<Address, Response>> gets = new ExecutorCompletionService<Map<Address, Response>>(remoteGetExecutor);
+      Future<Map<Address, Response>> firstGet = gets.submit(remoteGet(Collections.singleton(first), get, timeout));
+      Future<Map<Address, Response>> fanOut = null;
+      int pending = 1;
+      Exception failure = null;
+      boolean answered = false;
+      try {
+         Future<Map<Address, Response>> done = gets.poll(staggerDelay, TimeUnit.MILLISECONDS);
+         if (done != null) {
+            pending--;
+            try {
+               Map<Address, Response> responses = done.get();
+               InternalCacheEntry ice = getValidResponse(key, responses);
+               if (ice != null || (responses.isEmpty() && isJoinComplete() && !isRehashInProgress())) {
+                  firstOwnerHits.incrementAndGet();
+                  return ice;
+               }
+               if (trace) log.trace("%s could not tell the value of %s, asking the other owners", first, key);
+            } catch (ExecutionException e) {
+               failure = asException(e);
+               if (trace) log.trace("%s failed to return the value of %s, asking the other owners", first, key);
+            }
+         } else {
+            if (trace) log.trace("%s did not return the value of %s within %s millis, asking the other owners", first, key, staggerDelay);
+         }
 
+         staggeredFanOuts.incrementAndGet();
+         List<Address> others = new ArrayList<Address>(targets);
+         others.remove(first);
+         fanOut = gets.submit(remoteGet(others, get, timeout));
+         pending++;
+
+         while (pending > 0) {
+            done = gets.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            if (done == null) break;
+            pending--;
+            try {
+               InternalCacheEntry ice = getValidResponse(key, done.get());
+               answered = true;
+               if (ice != null) {
+                  if (done == firstGet) firstOwnerHits.incrementAndGet();
+                  return ice;
+               }
+            } catch (ExecutionException e) {
+               failure = asException(e);
+            }
+         }
+      } finally {
+         // no need to wait for the owners that have not replied yet
+         firstGet.cancel(true);
+         if (fanOut != null) fanOut.cancel(true);
+      }
+      if (answered) return null;
+      if (failure != null) throw failure;
+      throw new org.infinispan.util.concurrent.TimeoutException("Timed out after " + timeout + " millis waiting for the value of " + key + " from " + targets);
+   }
+
+   private Callable<Map<Address, Response>> remoteGet(final Collection<Address> owners, final ClusteredGetCommand get,
+                                                      final long timeout) {
+      return new Callable<Map<Address, Response>>() {
+         public Map<Address, Response> call() throws Exception {
+            ResponseFilter filter = new ClusteredGetResponseValidityFilter(owners);
+            return rpcManager.invokeRemotely(owners, get, ResponseMode.SYNCHRONOUS, timeout, false, filter);
+         }
+      };
+   }
+
+   private static Exception asException(ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) return (Exception) cause;
+      throw new CacheException(cause);
+   }
+
+   /**
+    * @return the owner on the same machine as this node, or else on the same rack, or else on the same site, if the
+    *         nodes were configured with topology information, and the first of the given owners otherwise
+    */
+   private Address selectFirstOwner(List<Address> owners) {
+      if (topologyInfo.containsInfoForNode(self)) {
+         Address sameRack = null, sameSite = null;
+         for (Address a : owners) {
+            if (!topologyInfo.containsInfoForNode(a)) continue;
+            if (topologyInfo.isSameMachine(self, a)) return a;
+            if (sameRack == null && topologyInfo.isSameRack(self, a)) sameRack = a;
+            if (sameSite == null && topologyInfo.isSameSite(self, a)) sameSite = a;
+         }
+         if (sameRack != null) return sameRack;
+         if (sameSite != null) return sameSite;
+      }
+      return owners.get(0);
+   }
+
+   private InternalCacheEntry getValidResponse(Object key, Map<Address, Response> responses) {
       if (!responses.isEmpty()) {
          for (Response r : responses.values()) {
             if (r instanceof SuccessfulResponse) {
@@ -528,6 +695,24 @@ public class DistributionManagerImpl implements DistributionManager {
    }
 
    public void applyState(ConsistentHash consistentHash, Map<Object, InternalCacheValue> state, RemoteTransactionLogger tlog, boolean forLeave) {
+      applyStateWithRetry(consistentHash, state);
+
+      if (!forLeave) drainLocalTransactionLog(tlog);
+
+      if (trace) log.trace("%s has completed applying state", self);
+   }
+
+   public void applyStateChunk(ConsistentHash consistentHash, StateChunk chunk, RemoteTransactionLogger tlog, boolean forLeave) {
+      stateChunksReceived.incrementAndGet();
+      stateEntriesReceived.addAndGet(chunk.getState().size());
+      if (chunk.isLast()) {
+         applyState(consistentHash, chunk.getState(), tlog, forLeave);
+      } else {
+         applyStateWithRetry(consistentHash, chunk.getState());
+      }
+   }
+
+   private void applyStateWithRetry(ConsistentHash consistentHash, Map<Object, InternalCacheValue> state) {
       if (trace) log.trace("Applying the following keys: %s", state.keySet());
 
       int retryCount = 3; // in case we have issues applying state.
@@ -538,10 +723,36 @@ public class DistributionManagerImpl implements DistributionManager {
       }
       // one last go
       if (!pendingApplications.isEmpty()) applyStateMap(consistentHash, pendingApplications, false);
+   }
 
-      if (!forLeave) drainLocalTransactionLog(tlog);
+   public StateChunk startStateTransfer(OutboundStateTransfer transfer) throws CacheLoaderException {
+      OutboundStateTransfer previous = outboundStateTransfers.put(transfer.getReceiver(), transfer);
+      if (previous != null) log.info("Replacing unfinished %s with %s", previous, transfer);
+      return nextStateChunk(transfer.getReceiver(), transfer.getId());
+   }
 
-      if (trace) log.trace("%s has completed applying state", self);
+   public void abortStateTransfer(Address receiver) {
+      OutboundStateTransfer aborted = outboundStateTransfers.remove(receiver);
+      if (aborted != null) log.info("Aborting %s as its receiver has given up on it", aborted);
+   }
+
+   public StateChunk nextStateChunk(Address receiver, long transferId) throws CacheLoaderException {
+      OutboundStateTransfer transfer = outboundStateTransfers.get(receiver);
+      if (transfer == null || transfer.getId() != transferId)
+         throw new CacheException("State transfer " + transferId + " to " + receiver + " is not in progress");
+
+      StateChunk chunk = null;
+      long bytesBefore = transfer.getBytesSent();
+      try {
+         chunk = transfer.nextChunk();
+      } finally {
+         if (chunk == null || chunk.isLast()) outboundStateTransfers.remove(receiver, transfer);
+      }
+      stateChunksSent.incrementAndGet();
+      stateEntriesSent.addAndGet(chunk.getState().size());
+      stateBytesSent.addAndGet(transfer.getBytesSent() - bytesBefore);
+      if (trace) log.trace("Sending %s of %s", chunk, transfer);
+      return chunk;
    }
 
    public void setRehashInProgress(boolean value) {
@@ -596,6 +807,61 @@ public class DistributionManagerImpl implements DistributionManager {
       return nodeLeaving || rehashInProgress;
    }
 
+   @ManagedAttribute(description = "Number of transfers of state to other nodes currently in progress")
+   @Metric(displayName = "Outbound state transfers in progress", displayType = DisplayType.SUMMARY)
+   public int getOutboundStateTransfers() {
+      return outboundStateTransfers.size();
+   }
+
+   @ManagedAttribute(description = "Number of chunks of state sent to other nodes when rehashing")
+   @Metric(displayName = "Number of state chunks sent", measurementType = MeasurementType.TRENDSUP)
+   public long getStateChunksSent() {
+      return stateChunksSent.get();
+   }
+
+   @ManagedAttribute(description = "Number of entries sent to other nodes when rehashing")
+   @Metric(displayName = "Number of state entries sent", measurementType = MeasurementType.TRENDSUP)
+   public long getStateEntriesSent() {
+      return stateEntriesSent.get();
+   }
+
+   @ManagedAttribute(description = "Estimated number of bytes sent to other nodes when rehashing")
+   @Metric(displayName = "Estimated state bytes sent", units = Units.BYTES, measurementType = MeasurementType.TRENDSUP)
+   public long getStateBytesSent() {
+      return stateBytesSent.get();
+   }
+
+   @ManagedAttribute(description = "Number of chunks of state received from other nodes and applied when rehashing")
+   @Metric(displayName = "Number of state chunks received", measurementType = MeasurementType.TRENDSUP)
+   public long getStateChunksReceived() {
+      return stateChunksReceived.get();
+   }
+
+   @ManagedAttribute(description = "Number of entries received from other nodes when rehashing")
+   @Metric(displayName = "Number of state entries received", measurementType = MeasurementType.TRENDSUP)
+   public long getStateEntriesReceived() {
+      return stateEntriesReceived.get();
+   }
+
+   @ManagedAttribute(description = "Number of remote gets first sent to a single owner")
+   @Metric(displayName = "Number of staggered remote gets", measurementType = MeasurementType.TRENDSUP)
+   public long getStaggeredRemoteGets() {
+      return staggeredRemoteGets.get();
+   }
+
+   @ManagedAttribute(description = "Percentage of staggered remote gets answered by the first owner asked")
+   @Metric(displayName = "First owner hit ratio", units = Units.PERCENTAGE, displayType = DisplayType.SUMMARY)
+   public double getFirstOwnerHitRatio() {
+      long gets = staggeredRemoteGets.get();
+      return gets == 0 ? 0 : (double) firstOwnerHits.get() / (double) gets;
+   }
+
+   @ManagedAttribute(description = "Number of staggered remote gets sent to the remaining owners, as the first owner asked did not answer in time or could not tell")
+   @Metric(displayName = "Number of staggered remote get fan-outs", measurementType = MeasurementType.TRENDSUP)
+   public long getStaggeredFanOuts() {
+      return staggeredFanOuts.get();
+   }
+
    public void markLeaverAsHandled(Address leaver) {
       chSwitchLock.writeLock().lock();
       try {
@@ -68,17 +68,21 @@ public class JoinTask extends RehashTask {
          chOld = retrieveOldConsistentHash();
 
          // 2.  new CH instance
-         if (chOld.getCaches().contains(self))
-            chNew = chOld;
-         else
-            chNew = createConsistentHash(configuration, chOld.getCaches(), distributionManager.getTopologyInfo(), self);
+         chNew = createNewConsistentHash(chOld);
 
          distributionManager.setConsistentHash(chNew);
          try {
-            if (configuration.isRehashEnabled()) {
-               // Broadcast new temp CH
-               broadcastNewCh();
+            // Broadcast new temp CH
+            broadcastNewCh();
+
+            // the capacity factors of the other nodes are only known once they have replied
+            if (distributionManager.getTopologyInfo().hasCapacityFactors()) {
+               chOld = createConsistentHash(configuration, chOld.getCaches(), distributionManager.getTopologyInfo());
+               chNew = createNewConsistentHash(chOld);
+               distributionManager.setConsistentHash(chNew);
+            }
 
+            if (configuration.isRehashEnabled()) {
                // txLogger being enabled will cause ClusteredGetCommands to return uncertain responses.
    
                // pull state from everyone.
@@ -100,7 +104,6 @@ public class JoinTask extends RehashTask {
                for (Future<Void> f: stateRetrievalProcesses) f.get();
 
             } else {
-               broadcastNewCh();
                if (trace) log.trace("Rehash not enabled, so not pulling state.");
             }                                 
          } finally {
@@ -120,6 +123,13 @@ public class JoinTask extends RehashTask {
       }
    }
 
+   private ConsistentHash createNewConsistentHash(ConsistentHash chOld) {
+      if (chOld.getCaches().contains(self))
+         return chOld;
+      else
+         return createConsistentHash(configuration, chOld.getCaches(), distributionManager.getTopologyInfo(), self);
+   }
+
    private void broadcastNewCh() {
       RehashControlCommand rehashControlCommand = cf.buildRehashControlCommand(JOIN_REHASH_START, self);
       rehashControlCommand.setNodeTopologyInfo(distributionManager.getTopologyInfo().getNodeTopologyInfo(rpcManager.getAddress()));
@@ -0,0 +1,45 @@
+package org.infinispan.distribution;
+
+import org.infinispan.factories.scopes.Scope;
+import org.infinispan.factories.scopes.Scopes;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.util.concurrent.NotifyingNotifiableFuture;
+
+import java.util.Collection;
+
+/**
+ * Tracks the nodes that fetched the keys this node is the primary owner of, and so may hold them in L1, so that
+ * writes only invalidate the L1 caches of these nodes rather than the L1 caches of the whole cluster.
+ *
+ * @see org.infinispan.config.Configuration#getL1InvalidationThreshold()
+ * @since 5.0
+ */
+@Scope(Scopes.NAMED_CACHE)
+public interface L1Manager {
+
+   /**
+    * @return true if requestors are tracked, in which case L1 caches are invalidated by {@link
+    *         #flushCache(java.util.Collection, Object)} on the primary owners of written keys, rather than by broadcasts
+    *         from the nodes writing them
+    */
+   boolean isTrackingRequestors();
+
+   /**
+    * Records that a node fetched a key, and may hold it in L1 until its L1 lifespan elapses.  Ignored unless requestors
+    * are tracked and this node is the primary owner of the key.
+    *
+    * @param key       key fetched
+    * @param requestor node that fetched it
+    */
+   void addRequestor(Object key, Address requestor);
+
+   /**
+    * Invalidates the L1 caches of the nodes that may hold the given keys, for the keys this node is the primary owner
+    * of, and stops tracking them.
+    *
+    * @param keys   keys written
+    * @param retval value returned by the future
+    * @return a future completed once the invalidations have been sent, or null if there was no L1 cache to invalidate
+    */
+   NotifyingNotifiableFuture<Object> flushCache(Collection<Object> keys, Object retval);
+}
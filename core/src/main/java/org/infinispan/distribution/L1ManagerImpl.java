@@ -0,0 +1,264 @@
+package org.infinispan.distribution;
+
+import org.infinispan.commands.CommandsFactory;
+import org.infinispan.commands.write.InvalidateCommand;
+import org.infinispan.config.Configuration;
+import org.infinispan.factories.annotations.Inject;
+import org.infinispan.factories.annotations.Start;
+import org.infinispan.factories.annotations.Stop;
+import org.infinispan.jmx.annotations.MBean;
+import org.infinispan.jmx.annotations.ManagedAttribute;
+import org.infinispan.jmx.annotations.ManagedOperation;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachemanagerlistener.CacheManagerNotifier;
+import org.infinispan.notifications.cachemanagerlistener.annotation.ViewChanged;
+import org.infinispan.notifications.cachemanagerlistener.event.ViewChangedEvent;
+import org.infinispan.remoting.rpc.RpcManager;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.util.concurrent.AggregatingNotifyingFutureImpl;
+import org.infinispan.util.concurrent.BoundedConcurrentHashMap;
+import org.infinispan.util.concurrent.NotifyingNotifiableFuture;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+import org.rhq.helpers.pluginAnnotations.agent.DisplayType;
+import org.rhq.helpers.pluginAnnotations.agent.MeasurementType;
+import org.rhq.helpers.pluginAnnotations.agent.Metric;
+import org.rhq.helpers.pluginAnnotations.agent.Operation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default L1 manager implementation.  Requestors are tracked per key in a bounded map, for as long as they may hold
+ * the key in L1.  When tracking information is dropped before it expires, or when the cluster topology changes,
+ * invalidations are broadcast until the L1 entries that may have gone untracked have expired.
+ *
+ * @since 5.0
+ */
+@MBean(objectName = "L1Manager", description = "Component tracking the nodes holding entries in L1 and invalidating them when the entries are written")
+public class L1ManagerImpl implements L1Manager {
+   private static final Log log = LogFactory.getLog(L1ManagerImpl.class);
+   private static final boolean trace = log.isTraceEnabled();
+
+   private Configuration configuration;
+   private RpcManager rpcManager;
+   private CommandsFactory commandsFactory;
+   private DistributionManager distributionManager;
+   private CacheManagerNotifier notifier;
+
+   private boolean trackingRequestors;
+   private int threshold;
+   /**
+    * How long a requestor may hold a key in L1 after fetching it: the L1 lifespan, plus the time the response may take
+    * to reach it.
+    */
+   private long requestorLifespan;
+   private BoundedConcurrentHashMap<Object, Requestors> requestors;
+   private volatile long broadcastUntil;
+   private final TopologyListener listener = new TopologyListener();
+
+   private final AtomicLong unicastInvalidations = new AtomicLong(0);
+   private final AtomicLong broadcastInvalidations = new AtomicLong(0);
+   private final AtomicLong skippedInvalidations = new AtomicLong(0);
+
+   @Inject
+   public void init(Configuration configuration, RpcManager rpcManager, CommandsFactory commandsFactory,
+                    DistributionManager distributionManager, CacheManagerNotifier notifier) {
+      this.configuration = configuration;
+      this.rpcManager = rpcManager;
+      this.commandsFactory = commandsFactory;
+      this.distributionManager = distributionManager;
+      this.notifier = notifier;
+   }
+
+   @Start
+   public void start() {
+      trackingRequestors = configuration.getCacheMode().isDistributed() && configuration.isL1CacheEnabled()
+            && configuration.getL1InvalidationThreshold() != 0;
+      if (!trackingRequestors) return;
+
+      threshold = configuration.getL1InvalidationThreshold();
+      requestorLifespan = configuration.getL1Lifespan() + configuration.getSyncReplTimeout();
+      requestors = new BoundedConcurrentHashMap<Object, Requestors>(configuration.getL1MaxTrackedKeys(),
+            configuration.getConcurrencyLevel(), BoundedConcurrentHashMap.Eviction.LRU,
+            new BoundedConcurrentHashMap.EvictionListener<Object, Requestors>() {
+               @Override
+               public void onEntryEviction(Map<Object, Requestors> evicted) {
+                  long now = System.currentTimeMillis();
+                  for (Requestors r : evicted.values()) {
+                     if (r.hasLiveRequestors(now)) {
+                        if (trace) log.trace("Dropped tracking information of live L1 entries, broadcasting invalidations for a while");
+                        extendBroadcastWindow();
+                        return;
+                     }
+                  }
+               }
+            });
+      // we cannot know who fetched keys from the former owners of the keys we now own
+      extendBroadcastWindow();
+      notifier.addListener(listener);
+   }
+
+   @Stop
+   public void stop() {
+      if (trackingRequestors) {
+         notifier.removeListener(listener);
+         requestors.clear();
+      }
+   }
+
+   public boolean isTrackingRequestors() {
+      return trackingRequestors;
+   }
+
+   public void addRequestor(Object key, Address requestor) {
+      if (!trackingRequestors || requestor == null || !isPrimaryOwner(key)) return;
+      long expiry = System.currentTimeMillis() + requestorLifespan;
+      while (true) {
+         Requestors r = requestors.get(key);
+         if (r == null) {
+            r = new Requestors();
+            Requestors existing = requestors.putIfAbsent(key, r);
+            if (existing != null) r = existing;
+         }
+         if (r.add(requestor, expiry)) return;
+         // the key has just been flushed, so track its requestors afresh
+         requestors.remove(key, r);
+      }
+   }
+
+   public NotifyingNotifiableFuture<Object> flushCache(Collection<Object> keys, Object retval) {
+      if (!trackingRequestors) return null;
+
+      long now = System.currentTimeMillis();
+      List<Object> ownedKeys = new ArrayList<Object>(keys.size());
+      Set<Address> targets = new HashSet<Address>();
+      for (Object key : keys) {
+         if (!isPrimaryOwner(key)) continue;
+         ownedKeys.add(key);
+         Requestors r = requestors.remove(key);
+         if (r != null) r.retire(now, targets);
+      }
+      if (ownedKeys.isEmpty()) return null;
+      targets.remove(rpcManager.getAddress());
+
+      boolean broadcast = isBroadcastRequired(now) || (threshold > 0 && targets.size() > threshold);
+      if (!broadcast && targets.isEmpty()) {
+         if (trace) log.trace("No node holds %s in L1, not invalidating", ownedKeys);
+         skippedInvalidations.incrementAndGet();
+         return null;
+      }
+
+      InvalidateCommand ic = commandsFactory.buildInvalidateFromL1Command(false, ownedKeys);
+      NotifyingNotifiableFuture<Object> future = new AggregatingNotifyingFutureImpl(retval, 2);
+      if (broadcast) {
+         if (trace) log.trace("Broadcasting L1 invalidation of %s", ownedKeys);
+         broadcastInvalidations.incrementAndGet();
+         rpcManager.broadcastRpcCommandInFuture(ic, future);
+      } else {
+         if (trace) log.trace("Invalidating %s in the L1 caches of %s", ownedKeys, targets);
+         unicastInvalidations.addAndGet(targets.size());
+         rpcManager.invokeRemotelyInFuture(targets, ic, future);
+      }
+      return future;
+   }
+
+   private boolean isPrimaryOwner(Object key) {
+      List<Address> owners = distributionManager.locate(key);
+      return !owners.isEmpty() && owners.get(0).equals(rpcManager.getAddress());
+   }
+
+   private boolean isBroadcastRequired(long now) {
+      if (distributionManager.isRehashInProgress() || !distributionManager.isJoinComplete()) {
+         extendBroadcastWindow();
+         return true;
+      }
+      return now < broadcastUntil;
+   }
+
+   private void extendBroadcastWindow() {
+      broadcastUntil = System.currentTimeMillis() + requestorLifespan;
+   }
+
+   @ManagedAttribute(description = "Number of keys for which the nodes holding them in L1 are tracked")
+   @Metric(displayName = "Number of tracked L1 keys", displayType = DisplayType.SUMMARY)
+   public int getTrackedKeys() {
+      return trackingRequestors ? requestors.size() : 0;
+   }
+
+   @ManagedAttribute(description = "Number of L1 invalidation messages sent to the nodes known to hold the written keys")
+   @Metric(displayName = "Number of unicast L1 invalidations", measurementType = MeasurementType.TRENDSUP)
+   public long getUnicastInvalidations() {
+      return unicastInvalidations.get();
+   }
+
+   @ManagedAttribute(description = "Number of L1 invalidations broadcast to the whole cluster")
+   @Metric(displayName = "Number of broadcast L1 invalidations", measurementType = MeasurementType.TRENDSUP)
+   public long getBroadcastInvalidations() {
+      return broadcastInvalidations.get();
+   }
+
+   @ManagedAttribute(description = "Number of writes that required no L1 invalidation as no node held the written keys in L1")
+   @Metric(displayName = "Number of skipped L1 invalidations", measurementType = MeasurementType.TRENDSUP)
+   public long getSkippedInvalidations() {
+      return skippedInvalidations.get();
+   }
+
+   @ManagedOperation(description = "Resets statistics gathered by this component")
+   @Operation(displayName = "Reset statistics")
+   public void resetStatistics() {
+      unicastInvalidations.set(0);
+      broadcastInvalidations.set(0);
+      skippedInvalidations.set(0);
+   }
+
+   /**
+    * The nodes that fetched a key, with the time until which each may hold it in L1.  Once retired, because the key was
+    * written, no more requestors can be added.
+    */
+   private static final class Requestors {
+      private final Map<Address, Long> expiries = new HashMap<Address, Long>(4);
+      private boolean retired;
+
+      synchronized boolean add(Address requestor, long expiry) {
+         if (retired) return false;
+         long now = System.currentTimeMillis();
+         for (Iterator<Long> it = expiries.values().iterator(); it.hasNext();) {
+            if (it.next() < now) it.remove();
+         }
+         expiries.put(requestor, expiry);
+         return true;
+      }
+
+      synchronized void retire(long now, Collection<Address> liveRequestors) {
+         retired = true;
+         for (Map.Entry<Address, Long> e : expiries.entrySet()) {
+            if (e.getValue() >= now) liveRequestors.add(e.getKey());
+         }
+      }
+
+      synchronized boolean hasLiveRequestors(long now) {
+         for (Long expiry : expiries.values()) {
+            if (expiry >= now) return true;
+         }
+         return false;
+      }
+   }
+
+   @Listener
+   public class TopologyListener {
+
+      @ViewChanged
+      public void handleViewChange(ViewChangedEvent e) {
+         if (trace) log.trace("View changed, broadcasting L1 invalidations for a while");
+         extendBroadcastWindow();
+      }
+   }
+}
@@ -0,0 +1,148 @@
+package org.infinispan.distribution;
+
+import org.infinispan.config.Configuration;
+import org.infinispan.container.DataContainer;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.container.entries.InternalCacheValue;
+import org.infinispan.eviction.EntrySizeEstimator;
+import org.infinispan.loaders.CacheLoaderException;
+import org.infinispan.loaders.CacheStore;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.util.ReadOnlyDataContainerBackedKeySet;
+import org.infinispan.util.Util;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state a node sends to another one when rehashing, produced in bounded {@link StateChunk}s.  Entries are streamed
+ * from the data container first, and then from the cache store used for rehashing, if any, so that no more than one
+ * chunk of state is ever materialized at a time.
+ * <p />
+ * Only the keys of the entries held by the cache store and not by the data container are loaded up front, as the cache
+ * store SPI offers no way to iterate over stored keys.  An entry evicted from the data container after it was sent may
+ * be sent a second time from the cache store, which is harmless as the latter is at least as recent as the former.
+ *
+ * @since 5.0
+ */
+public abstract class OutboundStateTransfer {
+   private static final Log log = LogFactory.getLog(OutboundStateTransfer.class);
+   private static final AtomicLong idGenerator = new AtomicLong();
+
+   private final long id = idGenerator.incrementAndGet();
+   private final Address receiver;
+   private final DataContainer dataContainer;
+   private final CacheStore cacheStore;
+   private final int maxEntries;
+   private final long maxBytes;
+   private final EntrySizeEstimator sizeEstimator;
+
+   private Iterator<InternalCacheEntry> containerEntries;
+   private Iterator<Object> storedKeys;
+   private long bytesSent;
+   private boolean finished;
+
+   /**
+    * @param receiver      node the state is sent to
+    * @param dataContainer data container to stream entries from
+    * @param cacheStore    cache store to stream entries from once the data container is exhausted, may be null
+    * @param configuration configuration of the cache, providing the chunk bounds and the size estimator
+    */
+   protected OutboundStateTransfer(Address receiver, DataContainer dataContainer, CacheStore cacheStore,
+                                   Configuration configuration) {
+      this.receiver = receiver;
+      this.dataContainer = dataContainer;
+      this.cacheStore = cacheStore;
+      this.maxEntries = configuration.getRehashChunkSize();
+      this.maxBytes = configuration.getRehashChunkBytes();
+      this.sizeEstimator = (EntrySizeEstimator) Util.getInstance(configuration.getEvictionSizeEstimatorClass());
+      this.containerEntries = dataContainer.iterator();
+   }
+
+   /**
+    * @return true if the entry mapped to the given key has to be sent to the receiver of this transfer
+    */
+   protected abstract boolean shouldTransfer(Object key);
+
+   public long getId() {
+      return id;
+   }
+
+   public Address getReceiver() {
+      return receiver;
+   }
+
+   /**
+    * @return estimated number of bytes sent so far
+    */
+   public synchronized long getBytesSent() {
+      return bytesSent;
+   }
+
+   /**
+    * Produces the next chunk of state, holding at most maxEntries entries and, unless it holds a single entry, at most
+    * maxBytes estimated bytes.
+    *
+    * @return the next chunk, flagged as the last one once all the state has been produced
+    */
+   public synchronized StateChunk nextChunk() throws CacheLoaderException {
+      Map<Object, InternalCacheValue> state = new HashMap<Object, InternalCacheValue>();
+      long bytes = 0;
+      while (!finished && state.size() < maxEntries && (maxBytes < 0 || bytes < maxBytes)) {
+         Object key;
+         InternalCacheValue value;
+         if (containerEntries != null) {
+            if (!containerEntries.hasNext()) {
+               containerEntries = null;
+               if (cacheStore != null) {
+                  storedKeys = cacheStore.loadAllKeys(new ReadOnlyDataContainerBackedKeySet(dataContainer)).iterator();
+               } else {
+                  finished = true;
+               }
+               continue;
+            }
+            InternalCacheEntry ice = containerEntries.next();
+            key = ice.getKey();
+            if (!shouldTransfer(key)) continue;
+            value = ice.toInternalCacheValue();
+         } else {
+            if (!storedKeys.hasNext()) {
+               storedKeys = null;
+               finished = true;
+               continue;
+            }
+            key = storedKeys.next();
+            if (!shouldTransfer(key)) continue;
+            value = loadValue(key);
+            if (value == null) continue;
+         }
+         state.put(key, value);
+         bytes += sizeEstimator.estimateSize(key) + sizeEstimator.estimateSize(value.getValue());
+      }
+      bytesSent += bytes;
+      return new StateChunk(id, state, finished);
+   }
+
+   private InternalCacheValue loadValue(Object k) {
+      try {
+         InternalCacheEntry ice = cacheStore.load(k);
+         return ice == null ? null : ice.toInternalCacheValue();
+      } catch (CacheLoaderException cle) {
+         log.warn("Unable to load " + k + " from cache loader", cle);
+      }
+      return null;
+   }
+
+   @Override
+   public String toString() {
+      return "OutboundStateTransfer{" +
+            "id=" + id +
+            ", receiver=" + receiver +
+            ", finished=" + finished +
+            '}';
+   }
+}
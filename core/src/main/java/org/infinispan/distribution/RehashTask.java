@@ -1,11 +1,12 @@
 package org.infinispan.distribution;
 
+import org.infinispan.CacheException;
 import org.infinispan.commands.CommandsFactory;
 import org.infinispan.commands.ReplicableCommand;
+import org.infinispan.commands.control.RehashControlCommand;
 import org.infinispan.commands.write.InvalidateCommand;
 import org.infinispan.config.Configuration;
 import org.infinispan.container.DataContainer;
-import org.infinispan.container.entries.InternalCacheValue;
 import org.infinispan.distribution.ch.ConsistentHash;
 import org.infinispan.remoting.responses.Response;
 import org.infinispan.remoting.responses.SuccessfulResponse;
@@ -29,6 +30,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.infinispan.commands.control.RehashControlCommand.Type.PULL_STATE_JOIN_ABORT;
+import static org.infinispan.commands.control.RehashControlCommand.Type.PULL_STATE_LEAVE_ABORT;
 import static org.infinispan.remoting.rpc.ResponseMode.SYNCHRONOUS;
 
 /**
@@ -123,6 +126,11 @@ public abstract class RehashTask implements Callable<Void> {
    }
 
    protected abstract class StateGrabber implements Callable<Void> {
+      /**
+       * Number of times the state of a provider is pulled before giving up.
+       */
+      private static final int MAX_PULL_ATTEMPTS = 3;
+
       private final Address stateProvider;
       private final ReplicableCommand command;
       private final ConsistentHash newConsistentHash;
@@ -135,23 +143,63 @@ public abstract class RehashTask implements Callable<Void> {
 
       @Override
       public Void call() throws Exception {
-         // This call will cause the sender to start logging transactions - BEFORE generating state.
-         Map<Address, Response> resps = rpcManager.invokeRemotely(Collections.singleton(stateProvider), command, SYNCHRONOUS, configuration.getRehashRpcTimeout(), true);
-         for (Response r : resps.values()) {
-            if (r instanceof SuccessfulResponse) {
-               Map<Object, InternalCacheValue> state = getStateFromResponse((SuccessfulResponse) r);
-               distributionManager.applyState(newConsistentHash, state, new RemoteTransactionLoggerImpl(cf, stateProvider, rpcManager), isForLeave());
+         RemoteTransactionLogger transactionLogger = new RemoteTransactionLoggerImpl(cf, stateProvider, rpcManager);
+         boolean pulled = false;
+         try {
+            for (int attempt = 1; ; attempt++) {
+               try {
+                  pullState(transactionLogger);
+                  pulled = true;
+                  return null;
+               } catch (Exception e) {
+                  if (attempt == MAX_PULL_ATTEMPTS || Thread.currentThread().isInterrupted())
+                     throw new CacheException("Unable to pull state from " + stateProvider + " after " + attempt + " attempts", e);
+                  // pulling again from the start overwrites the state applied so far, and replaces the transfer
+                  log.warn("Unable to pull state from %s, retrying: %s", stateProvider, e);
+               }
             }
+         } finally {
+            if (!pulled) abortStatePull();
          }
+      }
 
-         return null;
+      private void pullState(RemoteTransactionLogger transactionLogger) {
+         // This call will cause the sender to start logging transactions - BEFORE generating state.
+         StateChunk chunk = pullStateChunk(command);
+         // Chunks are pulled one at a time, once the previous one has been applied, so the state provider never
+         // produces state faster than it can be applied here.
+         while (true) {
+            distributionManager.applyStateChunk(newConsistentHash, chunk, transactionLogger, isForLeave());
+            if (chunk.isLast()) break;
+            chunk = pullStateChunk(cf.buildRehashControlCommandNextStateChunk(self, chunk.getTransferId()));
+         }
+      }
+
+      /**
+       * Lets the state provider drop the transfer and, for a join, stop logging transactions, as nothing it logs will be
+       * drained anymore.
+       */
+      private void abortStatePull() {
+         RehashControlCommand.Type type = isForLeave() ? PULL_STATE_LEAVE_ABORT : PULL_STATE_JOIN_ABORT;
+         try {
+            rpcManager.invokeRemotely(Collections.singleton(stateProvider), cf.buildRehashControlCommand(type, self),
+                                      SYNCHRONOUS, configuration.getRehashRpcTimeout(), true);
+         } catch (Exception e) {
+            log.warn("Unable to abort the state transfer from %s: %s", stateProvider, e);
+         }
       }
 
       protected abstract boolean isForLeave();
 
-      @SuppressWarnings("unchecked")
-      private Map<Object, InternalCacheValue> getStateFromResponse(SuccessfulResponse r) {
-         return (Map<Object, InternalCacheValue>) r.getResponseValue();
+      private StateChunk pullStateChunk(ReplicableCommand command) {
+         Map<Address, Response> resps = rpcManager.invokeRemotely(Collections.singleton(stateProvider), command, SYNCHRONOUS, configuration.getRehashRpcTimeout(), true);
+         for (Response r : resps.values()) {
+            if (r instanceof SuccessfulResponse) {
+               StateChunk chunk = (StateChunk) ((SuccessfulResponse) r).getResponseValue();
+               if (chunk != null) return chunk;
+            }
+         }
+         throw new CacheException("Unable to pull state from " + stateProvider + ", responses were " + resps);
       }
    }
 }
@@ -0,0 +1,87 @@
+package org.infinispan.distribution;
+
+import org.infinispan.container.entries.InternalCacheValue;
+import org.infinispan.marshall.AbstractExternalizer;
+import org.infinispan.marshall.Ids;
+import org.infinispan.util.Util;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded portion of the state a node sends to another one when rehashing.  Chunks are produced by an {@link
+ * OutboundStateTransfer} and pulled one at a time by the receiver of the state.
+ *
+ * @see org.infinispan.config.Configuration#getRehashChunkSize()
+ * @see org.infinispan.config.Configuration#getRehashChunkBytes()
+ * @since 5.0
+ */
+public class StateChunk {
+   final long transferId;
+   final Map<Object, InternalCacheValue> state;
+   final boolean last;
+
+   public StateChunk(long transferId, Map<Object, InternalCacheValue> state, boolean last) {
+      this.transferId = transferId;
+      this.state = state;
+      this.last = last;
+   }
+
+   /**
+    * @return identifier of the transfer this chunk belongs to, to be passed along when requesting the next chunk
+    */
+   public long getTransferId() {
+      return transferId;
+   }
+
+   public Map<Object, InternalCacheValue> getState() {
+      return state;
+   }
+
+   /**
+    * @return true if this is the last chunk of the transfer, in which case there is no need to request another one
+    */
+   public boolean isLast() {
+      return last;
+   }
+
+   @Override
+   public String toString() {
+      return "StateChunk{" +
+            "transferId=" + transferId +
+            ", state=" + (state == null ? "0" : state.size()) +
+            ", last=" + last +
+            '}';
+   }
+
+   public static class Externalizer extends AbstractExternalizer<StateChunk> {
+
+      @Override
+      public Integer getId() {
+         return Ids.STATE_CHUNK;
+      }
+
+      @Override
+      public void writeObject(ObjectOutput output, StateChunk object) throws IOException {
+         output.writeLong(object.getTransferId());
+         output.writeBoolean(object.isLast());
+         output.writeObject(object.getState());
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public StateChunk readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+         long transferId = input.readLong();
+         boolean last = input.readBoolean();
+         return new StateChunk(transferId, (Map<Object, InternalCacheValue>) input.readObject(), last);
+      }
+
+      @Override
+      public Set<Class<? extends StateChunk>> getTypeClasses() {
+         return Util.<Class<? extends StateChunk>>asSet(StateChunk.class);
+      }
+   }
+}
@@ -44,6 +44,13 @@ public interface TransactionLogger extends RemoteTransactionLogger {
     */
    void enable();
 
+   /**
+    * Disables transaction logging and discards what has been logged, whether or not it has been locked with {@link
+    * #drainAndLock(org.infinispan.remoting.transport.Address)}.  Used when the state transfer logging was enabled for
+    * has failed, so that nothing is left to drain.
+    */
+   void disable();
+
    /**
     * If logging is enabled, will log the command and return true.  Otherwise, will just return false.
     *
@@ -60,6 +60,14 @@ public class TransactionLoggerImpl implements TransactionLogger {
       enabled = true;
    }
 
+   public void disable() {
+      enabled = false;
+      commandQueue.clear();
+      uncommittedPrepares.clear();
+      writeLockOwner = null;
+      modsLatch.open();
+   }
+
    public List<WriteCommand> drain() {
       List<WriteCommand> list = new LinkedList<WriteCommand>();
       commandQueue.drainTo(list);
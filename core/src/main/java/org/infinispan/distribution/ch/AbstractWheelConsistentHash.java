@@ -10,7 +10,9 @@ import org.infinispan.util.logging.LogFactory;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -20,6 +22,12 @@ import java.util.TreeMap;
 
 /**
  * Abstract class for the wheel-based CH implementations.
+ * <p />
+ * Each node takes a single position on the wheel, unless the topology information gives it a capacity factor of 1.5
+ * or more, in which case it takes as many positions as its capacity factor rounded, and therefore about as many times
+ * as much of the wheel.  The positions of nodes with a capacity factor of 1 do not depend on the capacity factors of
+ * the others, so a weighted wheel is only weighted by the additional positions of larger nodes.  The topology
+ * information therefore has to be set before the caches.
  *
  * @author Mircea.Markus@jboss.com
  * @since 4.2
@@ -63,10 +71,87 @@ public abstract class AbstractWheelConsistentHash extends AbstractConsistentHash
             addressToHashIds.put(a, positionIndex);
       }
 
+      // additional positions are placed once all nodes have taken their first, so that they never displace one
+      for (Address a : newCaches) {
+         int numPositions = getNumPositions(a);
+         int addressHash = hashFunction.hash(a);
+         for (int i = 1; i < numPositions; i++) {
+            int positionIndex = Math.abs(hashFunction.hash(addressHash + i) % HASH_SPACE);
+            while (positions.containsKey(positionIndex)) positionIndex = (positionIndex + 1) % HASH_SPACE;
+            positions.put(positionIndex, a);
+         }
+      }
+
       // reorder addresses as per the positions.
       caches.addAll(positions.values());
    }
 
+   /**
+    * Returns the number of positions a node takes on the wheel, as per its capacity factor.
+    */
+   protected int getNumPositions(Address a) {
+      if (topologyInfo == null) return 1;
+      return Math.max(1, Math.round(topologyInfo.getCapacityFactor(a)));
+   }
+
+   /**
+    * Tells whether some nodes take more than one position on the wheel, in which case the owners of a key are the
+    * distinct nodes met walking the wheel, and the nodes exchanging state when a node joins or leaves are found by
+    * comparing the owners of each arc of the wheel with and without it.
+    */
+   public boolean isWeighted() {
+      return positions.size() > caches.size();
+   }
+
+   /**
+    * Locates the keys whose normalized hash is the given one, which are all the keys of the arc of the wheel ending at
+    * the first position at or after it.
+    */
+   protected abstract List<Address> locateHash(int normalizedHash, int replCount);
+
+   /**
+    * Returns the nodes holding a copy of the keys of a node on a weighted wheel, which are the other owners of each arc
+    * of the wheel it owns.
+    */
+   protected List<Address> getHolders(Address node, int replCount) {
+      Set<Address> holders = new LinkedHashSet<Address>();
+      for (int position : positions.keySet()) {
+         List<Address> owners = locateHash(position, replCount);
+         if (owners.contains(node)) holders.addAll(owners);
+      }
+      holders.remove(node);
+      return new ArrayList<Address>(holders);
+   }
+
+   /**
+    * Compares the owners of each arc of the wheel the node owns with the owners of the same keys on the wheel without
+    * the node, and returns either all of the latter, or only those which do not own the keys on this wheel.
+    */
+   protected List<Address> getOwnersWithout(Address node, int replCount, boolean onlyNewOwners) {
+      Set<Address> remaining = new HashSet<Address>(caches);
+      remaining.remove(node);
+      if (remaining.isEmpty()) return new ArrayList<Address>();
+      AbstractWheelConsistentHash without = (AbstractWheelConsistentHash) ConsistentHashHelper.createConsistentHash(this, remaining, topologyInfo);
+      Set<Address> result = new LinkedHashSet<Address>();
+      for (int position : positions.keySet()) {
+         List<Address> owners = locateHash(position, replCount);
+         if (!owners.contains(node)) continue;
+         for (Address a : without.locateHash(position, replCount)) {
+            if (!onlyNewOwners || !owners.contains(a)) result.add(a);
+         }
+      }
+      return new ArrayList<Address>(result);
+   }
+
+   /**
+    * Returns the nodes taking over keys of a leaver, which are the new owners of each arc of the wheel it owned.  Only
+    * needed on weighted wheels, as the state of a leaver is otherwise taken over by the nodes following it.  This
+    * consistent hash must still include the leaver.
+    */
+   public List<Address> getStateReceiversOnLeave(Address leaver, int replCount) {
+      return getOwnersWithout(leaver, replCount, true);
+   }
+
    @Override
    public List<Address> getBackupsForNode(Address node, int replCount) {
       return locate(node, replCount);
@@ -35,8 +35,8 @@ public class ConsistentHashHelper {
          ConsistentHash newCH = constructConsistentHashInstance(c);
          Set<Address> caches = new HashSet<Address>(ch.getCaches());
          caches.remove(toRemove);
-         newCH.setCaches(caches);
          newCH.setTopologyInfo(topologyInfo);
+         newCH.setCaches(caches);
          return newCH;
       }
    }
@@ -46,6 +46,12 @@ public class ConsistentHashHelper {
       if (ch instanceof AbstractWheelConsistentHash) {
          Hash h = (Hash) Util.getInstance(c.getHashFunctionClass());
          ((AbstractWheelConsistentHash) ch).setHashFunction(h);
+      } else if (ch instanceof SegmentedConsistentHash) {
+         SegmentedConsistentHash sch = (SegmentedConsistentHash) ch;
+         sch.setHashFunction((Hash) Util.getInstance(c.getHashFunctionClass()));
+         sch.setNumSegments(c.getNumSegments());
+         sch.setNumVirtualNodes(c.getNumVirtualNodes());
+         sch.setNumOwners(c.getNumOwners());
       }
       return ch;
    }
@@ -85,8 +91,9 @@ public class ConsistentHashHelper {
     */
    public static ConsistentHash createConsistentHash(Configuration c, Collection<Address> addresses, TopologyInfo topologyInfo) {
       ConsistentHash ch = constructConsistentHashInstance(c);
-      ch.setCaches(toSet(addresses));
+      // topology information comes first, as capacity factors decide where nodes are placed
       ch.setTopologyInfo(topologyInfo);
+      ch.setCaches(toSet(addresses));
       return ch;
    }
 
@@ -136,8 +143,16 @@ public class ConsistentHashHelper {
          hf = ((AbstractWheelConsistentHash) template).hashFunction;
       }
       ConsistentHash ch = constructConsistentHashInstance(template.getClass(), hf);
-      if (addresses != null && !addresses.isEmpty())  ch.setCaches(toSet(addresses));
+      if (template instanceof SegmentedConsistentHash) {
+         SegmentedConsistentHash sTemplate = (SegmentedConsistentHash) template;
+         SegmentedConsistentHash sch = (SegmentedConsistentHash) ch;
+         sch.setHashFunction(sTemplate.getHashFunction());
+         sch.setNumSegments(sTemplate.getNumSegments());
+         sch.setNumVirtualNodes(sTemplate.getNumVirtualNodes());
+         sch.setNumOwners(sTemplate.getNumOwners());
+      }
       ch.setTopologyInfo(topologyInfo);
+      if (addresses != null && !addresses.isEmpty())  ch.setCaches(toSet(addresses));
       return ch;
    }
 
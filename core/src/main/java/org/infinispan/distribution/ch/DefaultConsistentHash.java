@@ -28,7 +28,11 @@ public class DefaultConsistentHash extends AbstractWheelConsistentHash {
    }
 
    public List<Address> locate(Object key, int replCount) {
-      int hash = getNormalizedHash(key);
+      return locateHash(getNormalizedHash(key), replCount);
+   }
+
+   @Override
+   protected List<Address> locateHash(int hash, int replCount) {
       int numCopiesToFind = getNumCopiesToFind(replCount);
 
       List<Address> owners = new ArrayList<Address>(numCopiesToFind);
@@ -37,10 +41,13 @@ public class DefaultConsistentHash extends AbstractWheelConsistentHash {
 
       int numOwnersFound = 0;
 
+      // nodes taking several positions are only counted once
       for (Address a : candidates.values()) {
          if (numOwnersFound < numCopiesToFind) {
-            owners.add(a);
-            numOwnersFound++;
+            if (!owners.contains(a)) {
+               owners.add(a);
+               numOwnersFound++;
+            }
          } else {
             break;
          }
@@ -49,8 +56,10 @@ public class DefaultConsistentHash extends AbstractWheelConsistentHash {
       if (numOwnersFound < numCopiesToFind) {
          for (Address a : positions.values()) {
             if (numOwnersFound < numCopiesToFind) {
-               owners.add(a);
-               numOwnersFound++;
+               if (!owners.contains(a)) {
+                  owners.add(a);
+                  numOwnersFound++;
+               }
             } else {
                break;
             }
@@ -62,6 +71,7 @@ public class DefaultConsistentHash extends AbstractWheelConsistentHash {
 
    @Override
    public boolean isKeyLocalToAddress(Address target, Object key, int replCount) {
+      if (isWeighted()) return locate(key, replCount).contains(target);
       int hash = getNormalizedHash(key);
       int numCopiesToFind = getNumCopiesToFind(replCount);
 
@@ -170,6 +180,7 @@ public class DefaultConsistentHash extends AbstractWheelConsistentHash {
    }
 
    public List<Address> getStateProvidersOnJoin(Address self, int replCount) {
+      if (isWeighted()) return getOwnersWithout(self, replCount, false);
       List<Address> l = new LinkedList<Address>();
       List<Address> cachesList = new LinkedList<Address>(this.caches);
       int selfIdx = cachesList.indexOf(self);
@@ -193,6 +204,7 @@ public class DefaultConsistentHash extends AbstractWheelConsistentHash {
 
    public List<Address> getStateProvidersOnLeave(Address leaver, int replCount) {
       if (trace) log.trace("List of addresses is: %s. leaver is: %s", caches, leaver);
+      if (isWeighted()) return getHolders(leaver, replCount);
       Set<Address> holders = new HashSet<Address>();
       for (Address address : caches) {
          if (isAdjacent(leaver, address)) {
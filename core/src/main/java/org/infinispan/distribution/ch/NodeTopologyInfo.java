@@ -11,7 +11,8 @@ import java.io.ObjectOutput;
 import java.util.Set;
 
 /**
- * Holds topology information about a a node.
+ * Holds topology information about a a node, along with its capacity factor, which is how much data it can hold
+ * relatively to other nodes.
  *
  * @author Mircea.Markus@jboss.com
  * @since 4.2
@@ -22,12 +23,18 @@ public class NodeTopologyInfo {
    private final String rackId;
    private final String siteId;
    private final Address address;
+   private final float capacityFactor;
 
    public NodeTopologyInfo(String machineId, String rackId, String siteId, Address address) {
+      this(machineId, rackId, siteId, address, 1);
+   }
+
+   public NodeTopologyInfo(String machineId, String rackId, String siteId, Address address, float capacityFactor) {
       this.machineId = machineId;
       this.rackId = rackId;
       this.siteId = siteId;
       this.address = address;
+      this.capacityFactor = capacityFactor;
    }
 
    public String getMachineId() {
@@ -42,6 +49,10 @@ public class NodeTopologyInfo {
       return siteId;
    }
 
+   public float getCapacityFactor() {
+      return capacityFactor;
+   }
+
    public boolean sameSite(NodeTopologyInfo info2) {
       return equalObjects(siteId, info2.siteId);
    }
@@ -73,6 +84,7 @@ public class NodeTopologyInfo {
       if (machineId != null ? !machineId.equals(that.machineId) : that.machineId != null) return false;
       if (rackId != null ? !rackId.equals(that.rackId) : that.rackId != null) return false;
       if (siteId != null ? !siteId.equals(that.siteId) : that.siteId != null) return false;
+      if (Float.compare(capacityFactor, that.capacityFactor) != 0) return false;
 
       return true;
    }
@@ -83,6 +95,7 @@ public class NodeTopologyInfo {
       result = 31 * result + (rackId != null ? rackId.hashCode() : 0);
       result = 31 * result + (siteId != null ? siteId.hashCode() : 0);
       result = 31 * result + (address != null ? address.hashCode() : 0);
+      result = 31 * result + Float.floatToIntBits(capacityFactor);
       return result;
    }
 
@@ -93,6 +106,7 @@ public class NodeTopologyInfo {
             ", rackId='" + rackId + '\'' +
             ", siteId='" + siteId + '\'' +
             ", address=" + address +
+            ", capacityFactor=" + capacityFactor +
             '}';
    }
 
@@ -103,6 +117,7 @@ public class NodeTopologyInfo {
          output.writeObject(nti.rackId);
          output.writeObject(nti.machineId);
          output.writeObject(nti.address);
+         output.writeFloat(nti.capacityFactor);
       }
 
       @Override
@@ -111,7 +126,8 @@ public class NodeTopologyInfo {
          String rackId = (String) input.readObject();
          String machineId = (String) input.readObject();
          Address address = (Address) input.readObject();
-         return new NodeTopologyInfo(machineId, rackId, siteId, address);
+         float capacityFactor = input.readFloat();
+         return new NodeTopologyInfo(machineId, rackId, siteId, address, capacityFactor);
       }
 
       @Override
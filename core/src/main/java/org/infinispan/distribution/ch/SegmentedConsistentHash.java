@@ -0,0 +1,527 @@
+package org.infinispan.distribution.ch;
+
+import org.infinispan.marshall.AbstractExternalizer;
+import org.infinispan.marshall.Ids;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.util.Util;
+import org.infinispan.util.hash.Hash;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A consistent hash that divides the hash space into a fixed number of segments, and computes the owners of every
+ * segment once, whenever the members change, so that locating a key only takes hashing it and indexing the owner table
+ * with its segment.
+ * <p />
+ * Each member takes a number of positions, or virtual nodes, on a hash wheel, and the owners of a segment are the
+ * distinct members met walking the wheel clockwise from the start of the segment.  Many positions per member spread
+ * the segments, and therefore the keys, much more evenly than the single position of {@link DefaultConsistentHash}
+ * does, and spread the state of a joining or leaving member across many members instead of its neighbours only.
+ * <p />
+ * The owner table holds one more owner than the configured number of owners, which is the member that takes over a
+ * segment when one of its owners leaves, and is what state transfer is computed from.  Lookups for more owners than
+ * the table holds walk the wheel.
+ * <p />
+ * Hot Rod clients route a key to the server with the lowest hash id not below the key's normalized hash, so a member
+ * gives out one hash id per run of consecutive segments it is the primary owner of, the highest normalized hash of the
+ * run, for clients to route every key to its primary owner.  See {@link #getHashIds(Address)}.
+ * <p />
+ * Topology information is only used for capacity factors: each member takes the configured number of virtual nodes
+ * times its capacity factor, and therefore about as many times as many segments as a member with a factor of 1.
+ * <p />
+ * The number of segments, virtual nodes and owners, the hash function and the topology information must be set before
+ * the members.
+ *
+ * @since 5.0
+ */
+public class SegmentedConsistentHash extends AbstractConsistentHash {
+
+   public static final int DEFAULT_NUM_SEGMENTS = 4096;
+   public static final int DEFAULT_NUM_VIRTUAL_NODES = 64;
+   public static final int DEFAULT_NUM_OWNERS = 2;
+
+   private static final Address[] NO_OWNERS = new Address[0];
+
+   private Hash hashFunction;
+   private int numSegments = DEFAULT_NUM_SEGMENTS;
+   private int numVirtualNodes = DEFAULT_NUM_VIRTUAL_NODES;
+   private int numOwners = DEFAULT_NUM_OWNERS;
+
+   // sorted by hash code, so that all nodes index the members alike
+   private List<Address> members = Collections.emptyList();
+   // number of virtual nodes of each member, as per its capacity factor
+   private int[] memberVirtualNodes = new int[0];
+   // positions of all virtual nodes in ascending order, and the index of the member each belongs to
+   private int[] wheelPositions = new int[0];
+   private int[] wheelMembers = new int[0];
+   // consecutive segments with the same owners share the same array
+   private Address[][] segmentOwners = new Address[0][];
+   private Map<Address, List<Integer>> hashIds = Collections.emptyMap();
+
+   public SegmentedConsistentHash() {
+   }
+
+   public SegmentedConsistentHash(Hash hash) {
+      setHashFunction(hash);
+   }
+
+   public void setHashFunction(Hash hashFunction) {
+      this.hashFunction = hashFunction;
+   }
+
+   public Hash getHashFunction() {
+      return hashFunction;
+   }
+
+   public void setNumSegments(int numSegments) {
+      if (numSegments <= 0) throw new IllegalArgumentException("numSegments must be greater than zero");
+      this.numSegments = numSegments;
+   }
+
+   public int getNumSegments() {
+      return numSegments;
+   }
+
+   public void setNumVirtualNodes(int numVirtualNodes) {
+      if (numVirtualNodes <= 0) throw new IllegalArgumentException("numVirtualNodes must be greater than zero");
+      this.numVirtualNodes = numVirtualNodes;
+   }
+
+   public int getNumVirtualNodes() {
+      return numVirtualNodes;
+   }
+
+   /**
+    * Sets the number of owners the owner table is sized for, which should be the configured number of owners.
+    */
+   public void setNumOwners(int numOwners) {
+      if (numOwners <= 0) throw new IllegalArgumentException("numOwners must be greater than zero");
+      this.numOwners = numOwners;
+   }
+
+   public int getNumOwners() {
+      return numOwners;
+   }
+
+   @Override
+   public void setCaches(Set<Address> newCaches) {
+      List<Address> sorted = new ArrayList<Address>(newCaches);
+      Collections.sort(sorted, new Comparator<Address>() {
+         @Override
+         public int compare(Address o1, Address o2) {
+            int h1 = o1.hashCode(), h2 = o2.hashCode();
+            if (h1 != h2) return h1 < h2 ? -1 : 1;
+            return o1.toString().compareTo(o2.toString());
+         }
+      });
+      members = Collections.unmodifiableList(sorted);
+      caches = Collections.unmodifiableSet(new LinkedHashSet<Address>(sorted));
+      computeWheel();
+      computeOwners();
+   }
+
+   private void computeWheel() {
+      int numMembers = members.size();
+      memberVirtualNodes = new int[numMembers];
+      int total = 0;
+      for (int m = 0; m < numMembers; m++) {
+         memberVirtualNodes[m] = getNumVirtualNodes(members.get(m));
+         total += memberVirtualNodes[m];
+      }
+      // each position is packed along with its member index, so that sorting a primitive array orders the wheel, ties
+      // being broken by member index
+      long[] packed = new long[total];
+      int p = 0;
+      for (int m = 0; m < numMembers; m++) {
+         int addressHash = hashFunction.hash(members.get(m));
+         for (int v = 0; v < memberVirtualNodes[m]; v++)
+            packed[p++] = ((long) normalize(hashFunction.hash(addressHash + v)) << 32) | m;
+      }
+      Arrays.sort(packed);
+
+      wheelPositions = new int[packed.length];
+      wheelMembers = new int[packed.length];
+      for (int i = 0; i < packed.length; i++) {
+         wheelPositions[i] = (int) (packed[i] >>> 32);
+         wheelMembers[i] = (int) packed[i];
+      }
+   }
+
+   /**
+    * Returns the number of virtual nodes a member takes, which is the configured number scaled by its capacity factor.
+    * The first virtual nodes of a member do not depend on its capacity factor, so changing it only adds or removes
+    * some.
+    */
+   private int getNumVirtualNodes(Address member) {
+      if (topologyInfo == null) return numVirtualNodes;
+      return Math.max(1, Math.round(numVirtualNodes * topologyInfo.getCapacityFactor(member)));
+   }
+
+   private void computeOwners() {
+      segmentOwners = new Address[numSegments][];
+      int tableOwners = Math.min(numOwners + 1, members.size());
+      if (tableOwners == 0) {
+         Arrays.fill(segmentOwners, NO_OWNERS);
+         hashIds = Collections.emptyMap();
+         return;
+      }
+
+      int[] visited = new int[members.size()];
+      int point = 0;
+      Address[] previous = null;
+      for (int s = 0; s < numSegments; s++) {
+         int start = segmentStart(s);
+         while (point < wheelPositions.length && wheelPositions[point] < start) point++;
+         Address[] owners = walkWheel(point, tableOwners, visited, s + 1);
+         if (previous != null && Arrays.equals(owners, previous)) owners = previous;
+         segmentOwners[s] = owners;
+         previous = owners;
+      }
+      computeHashIds();
+   }
+
+   private void computeHashIds() {
+      Map<Address, List<Integer>> ids = new HashMap<Address, List<Integer>>(members.size() * 2);
+      for (Address a : members) ids.put(a, new ArrayList<Integer>());
+      for (int s = 0; s < numSegments; s++) {
+         Address primary = segmentOwners[s][0];
+         if (s == numSegments - 1 || !segmentOwners[s + 1][0].equals(primary)) ids.get(primary).add(segmentEnd(s));
+      }
+      for (Map.Entry<Address, List<Integer>> e : ids.entrySet()) e.setValue(Collections.unmodifiableList(e.getValue()));
+      hashIds = ids;
+   }
+
+   /**
+    * Collects the first count distinct members met walking the wheel from the given point, count being no more than the
+    * number of members.  Members are marked visited by writing the stamp in their slot, which saves clearing the array
+    * between walks.
+    */
+   private Address[] walkWheel(int point, int count, int[] visited, int stamp) {
+      Address[] owners = new Address[count];
+      int found = 0;
+      int i = point == wheelMembers.length ? 0 : point;
+      while (found < count) {
+         int member = wheelMembers[i];
+         if (visited[member] != stamp) {
+            visited[member] = stamp;
+            owners[found++] = members.get(member);
+         }
+         if (++i == wheelMembers.length) i = 0;
+      }
+      return owners;
+   }
+
+   /**
+    * Returns the owners of a segment, which are at least count, or all members if fewer, and may be more.
+    */
+   private Address[] getOwners(int segment, int count) {
+      Address[] owners = segmentOwners[segment];
+      if (owners.length >= count || owners.length == members.size()) return owners;
+      int start = segmentStart(segment);
+      int point = 0;
+      while (point < wheelPositions.length && wheelPositions[point] < start) point++;
+      return walkWheel(point, Math.min(count, members.size()), new int[members.size()], 1);
+   }
+
+   /**
+    * The lowest normalized hash mapped to the given segment.
+    */
+   private int segmentStart(int segment) {
+      return (int) ((((long) segment << 31) + numSegments - 1) / numSegments);
+   }
+
+   /**
+    * The highest normalized hash mapped to the given segment.
+    */
+   private int segmentEnd(int segment) {
+      return (int) (((((long) segment + 1) << 31) + numSegments - 1) / numSegments - 1);
+   }
+
+   private static int normalize(int hash) {
+      if (hash == Integer.MIN_VALUE) hash += 1;
+      return Math.abs(hash);
+   }
+
+   public int getNormalizedHash(Object key) {
+      return normalize(hashFunction.hash(key));
+   }
+
+   /**
+    * Returns the segment a key is mapped to, between 0 inclusive and the number of segments exclusive.
+    */
+   public int getSegment(Object key) {
+      return (int) (((long) getNormalizedHash(key) * numSegments) >>> 31);
+   }
+
+   @Override
+   public List<Address> locate(Object key, int replCount) {
+      Address[] owners = getOwners(getSegment(key), replCount);
+      int numCopies = Math.min(replCount, owners.length);
+      // callers are free to modify the list returned
+      List<Address> l = new ArrayList<Address>(numCopies);
+      for (int i = 0; i < numCopies; i++) l.add(owners[i]);
+      return l;
+   }
+
+   @Override
+   public boolean isKeyLocalToAddress(Address a, Object key, int replCount) {
+      Address[] owners = getOwners(getSegment(key), replCount);
+      int numCopies = Math.min(replCount, owners.length);
+      for (int i = 0; i < numCopies; i++) {
+         if (owners[i].equals(a)) return true;
+      }
+      return false;
+   }
+
+   @Override
+   public Map<Object, List<Address>> locateAll(Collection<Object> keys, int replCount) {
+      Map<Object, List<Address>> locations = new HashMap<Object, List<Address>>(keys.size() * 2);
+      for (Object k : keys) locations.put(k, locate(k, replCount));
+      return locations;
+   }
+
+   /**
+    * Returns the lowest of the {@link #getHashIds(Address) hash ids} of a member, or -1 if it is not the primary owner
+    * of any segment.
+    */
+   @Override
+   public int getHashId(Address a) {
+      List<Integer> ids = hashIds.get(a);
+      return ids == null || ids.isEmpty() ? -1 : ids.get(0);
+   }
+
+   /**
+    * Returns the highest normalized hash of each run of consecutive segments the member is the primary owner of, in
+    * ascending order.  A client routing a key to the member with the lowest hash id not below the key's normalized
+    * hash, as Hot Rod clients do, routes it to its primary owner.
+    */
+   public List<Integer> getHashIds(Address a) {
+      List<Integer> ids = hashIds.get(a);
+      return ids == null ? Collections.<Integer>emptyList() : ids;
+   }
+
+   @Override
+   public int getHashSpace() {
+      return Integer.MAX_VALUE;
+   }
+
+   /**
+    * Returns the node followed by the other owners of the segments it is the primary owner of.
+    */
+   @Override
+   public List<Address> getBackupsForNode(Address node, int replCount) {
+      Set<Address> backups = new LinkedHashSet<Address>();
+      backups.add(node);
+      Address[] previous = null;
+      for (int s = 0; s < numSegments; s++) {
+         Address[] owners = getOwners(s, replCount);
+         if (owners == previous) continue;
+         previous = owners;
+         if (owners.length > 0 && owners[0].equals(node)) {
+            for (int i = 1; i < replCount && i < owners.length; i++) backups.add(owners[i]);
+         }
+      }
+      return new ArrayList<Address>(backups);
+   }
+
+   /**
+    * Returns the nodes left holding a copy of the segments the leaver owned, which are the other owners of these
+    * segments.
+    */
+   @Override
+   public List<Address> getStateProvidersOnLeave(Address leaver, int replCount) {
+      Set<Address> providers = new LinkedHashSet<Address>();
+      Address[] previous = null;
+      for (int s = 0; s < numSegments; s++) {
+         Address[] owners = getOwners(s, replCount);
+         if (owners == previous) continue;
+         previous = owners;
+         int numCopies = Math.min(replCount, owners.length);
+         if (indexOf(owners, numCopies, leaver) >= 0) {
+            for (int i = 0; i < numCopies; i++) {
+               if (!owners[i].equals(leaver)) providers.add(owners[i]);
+            }
+         }
+      }
+      return new ArrayList<Address>(providers);
+   }
+
+   /**
+    * Returns the nodes taking over the segments the leaver owned, which are the next owners of these segments on the
+    * wheel.  This consistent hash must still include the leaver.
+    */
+   public List<Address> getStateReceiversOnLeave(Address leaver, int replCount) {
+      Set<Address> receivers = new LinkedHashSet<Address>();
+      Address[] previous = null;
+      for (int s = 0; s < numSegments; s++) {
+         Address[] owners = getOwners(s, replCount + 1);
+         if (owners == previous) continue;
+         previous = owners;
+         if (owners.length > replCount && indexOf(owners, replCount, leaver) >= 0) receivers.add(owners[replCount]);
+      }
+      return new ArrayList<Address>(receivers);
+   }
+
+   /**
+    * Returns the nodes holding a copy of the segments the joiner takes over, which are the other owners of these
+    * segments, and the owner the joiner pushes out of each.  This consistent hash must already include the joiner.
+    */
+   @Override
+   public List<Address> getStateProvidersOnJoin(Address joiner, int replCount) {
+      Set<Address> providers = new LinkedHashSet<Address>();
+      Address[] previous = null;
+      for (int s = 0; s < numSegments; s++) {
+         Address[] owners = getOwners(s, replCount + 1);
+         if (owners == previous) continue;
+         previous = owners;
+         if (indexOf(owners, Math.min(replCount, owners.length), joiner) >= 0) {
+            for (int i = 0; i <= replCount && i < owners.length; i++) {
+               if (!owners[i].equals(joiner)) providers.add(owners[i]);
+            }
+         }
+      }
+      return new ArrayList<Address>(providers);
+   }
+
+   private static int indexOf(Address[] owners, int length, Address a) {
+      for (int i = 0; i < length; i++) {
+         if (owners[i].equals(a)) return i;
+      }
+      return -1;
+   }
+
+   /**
+    * Returns the number of segments each member owns a copy of, in member order.
+    */
+   public Map<Address, Integer> getOwnedSegmentCounts(int replCount) {
+      int[] counts = new int[members.size()];
+      Map<Address, Integer> memberIndexes = new HashMap<Address, Integer>(members.size() * 2);
+      for (int m = 0; m < members.size(); m++) memberIndexes.put(members.get(m), m);
+      for (int s = 0; s < numSegments; s++) {
+         Address[] owners = getOwners(s, replCount);
+         for (int i = 0; i < replCount && i < owners.length; i++) counts[memberIndexes.get(owners[i])]++;
+      }
+      Map<Address, Integer> result = new LinkedHashMap<Address, Integer>(members.size() * 2);
+      for (int m = 0; m < members.size(); m++) result.put(members.get(m), counts[m]);
+      return result;
+   }
+
+   /**
+    * Returns how much more than its fair share of segments the most loaded member owns, as a ratio of the highest
+    * number of segments owned by a member to the average.  1 means all members own as many segments.
+    */
+   public double getOwnershipSkew(int replCount) {
+      Map<Address, Integer> counts = getOwnedSegmentCounts(replCount);
+      if (counts.isEmpty()) return 1;
+      int max = 0;
+      long total = 0;
+      for (int count : counts.values()) {
+         max = Math.max(max, count);
+         total += count;
+      }
+      return max * (double) counts.size() / total;
+   }
+
+   @Override
+   public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      SegmentedConsistentHash that = (SegmentedConsistentHash) o;
+
+      if (numSegments != that.numSegments) return false;
+      if (numVirtualNodes != that.numVirtualNodes) return false;
+      if (numOwners != that.numOwners) return false;
+      if (!members.equals(that.members)) return false;
+      if (!Arrays.equals(memberVirtualNodes, that.memberVirtualNodes)) return false;
+
+      return true;
+   }
+
+   @Override
+   public int hashCode() {
+      int result = members.hashCode();
+      result = 31 * result + numSegments;
+      result = 31 * result + numVirtualNodes;
+      result = 31 * result + numOwners;
+      result = 31 * result + Arrays.hashCode(memberVirtualNodes);
+      return result;
+   }
+
+   @Override
+   public String toString() {
+      return "SegmentedConsistentHash{" +
+            "members=" + members +
+            ", numSegments=" + numSegments +
+            ", numVirtualNodes=" + numVirtualNodes +
+            ", numOwners=" + numOwners +
+            '}';
+   }
+
+   public static class Externalizer extends AbstractExternalizer<SegmentedConsistentHash> {
+      @Override
+      public void writeObject(ObjectOutput output, SegmentedConsistentHash ch) throws IOException {
+         output.writeObject(ch.hashFunction.getClass().getName());
+         output.writeInt(ch.numSegments);
+         output.writeInt(ch.numVirtualNodes);
+         output.writeInt(ch.numOwners);
+         output.writeObject(new ArrayList<Address>(ch.members));
+         // the capacity factors of the members are needed to place their virtual nodes
+         List<NodeTopologyInfo> infos = new ArrayList<NodeTopologyInfo>();
+         if (ch.topologyInfo != null) {
+            for (Address a : ch.members) {
+               NodeTopologyInfo nti = ch.topologyInfo.getNodeTopologyInfo(a);
+               if (nti != null) infos.add(nti);
+            }
+         }
+         output.writeInt(infos.size());
+         for (NodeTopologyInfo nti : infos) output.writeObject(nti);
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public SegmentedConsistentHash readObject(ObjectInput input) throws IOException, ClassNotFoundException {
+         SegmentedConsistentHash ch = new SegmentedConsistentHash();
+         ch.setHashFunction((Hash) Util.getInstance((String) input.readObject()));
+         ch.setNumSegments(input.readInt());
+         ch.setNumVirtualNodes(input.readInt());
+         ch.setNumOwners(input.readInt());
+         List<Address> members = (List<Address>) input.readObject();
+         int ntiCount = input.readInt();
+         if (ntiCount > 0) {
+            TopologyInfo topologyInfo = new TopologyInfo();
+            for (int i = 0; i < ntiCount; i++) {
+               NodeTopologyInfo nti = (NodeTopologyInfo) input.readObject();
+               topologyInfo.addNodeTopologyInfo(nti.getAddress(), nti);
+            }
+            ch.setTopologyInfo(topologyInfo);
+         }
+         // the owner table is recomputed rather than sent, as it is derived from the members and their capacity alone
+         ch.setCaches(new LinkedHashSet<Address>(members));
+         return ch;
+      }
+
+      @Override
+      public Integer getId() {
+         return Ids.SEGMENTED_CONSISTENT_HASH;
+      }
+
+      @Override
+      public Set<Class<? extends SegmentedConsistentHash>> getTypeClasses() {
+         return Util.<Class<? extends SegmentedConsistentHash>>asSet(SegmentedConsistentHash.class);
+      }
+   }
+}
@@ -12,9 +12,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.SortedMap;
 
 import static java.lang.Math.min;
 
@@ -47,25 +47,29 @@ public class TopologyAwareConsistentHash extends AbstractWheelConsistentHash {
 
    @Override
    public List<Address> locate(Object key, int replCount) {
-      Address owner = getOwner(key);
-      int ownerCount = min(replCount, caches.size());
-      return getOwners(owner, ownerCount);
+      return locateHash(getNormalizedHash(key), replCount);
+   }
+
+   @Override
+   protected List<Address> locateHash(int hash, int replCount) {
+      return getOwners(hash, replCount);
    }
 
    @Override
    public List<Address> getStateProvidersOnLeave(Address leaver, int replCount) {
+      if (isWeighted()) return getHolders(leaver, replCount);
       Set<Address> result = new HashSet<Address>();
 
       //1. first get all the node that replicated on leaver
       for (Address address : caches) {
          if (address.equals(leaver)) continue;
-         if (getOwners(address, replCount).contains(leaver)) {
+         if (getOwners(getNormalizedHash(address), replCount).contains(leaver)) {
             result.add(address);
          }
       }
 
       //2. then get first leaver's backup
-      List<Address> addressList = getOwners(leaver, replCount);
+      List<Address> addressList = getOwners(getNormalizedHash(leaver), replCount);
       if (addressList.size() > 1) {
          result.add(addressList.get(1));
       }
@@ -74,21 +78,30 @@ public class TopologyAwareConsistentHash extends AbstractWheelConsistentHash {
 
 
    /**
-    * In this situation are the same nodes providing state on join as the nodes that provide state on leave.
+    * In this situation are the same nodes providing state on join as the nodes that provide state on leave, unless the
+    * joiner takes several positions on the wheel.
     */
    @Override
    public List<Address> getStateProvidersOnJoin(Address joiner, int replCount) {
+      if (isWeighted()) return getOwnersWithout(joiner, replCount, false);
       return getStateProvidersOnLeave(joiner, replCount);
    }
 
-   private List<Address> getOwners(Address address, int numOwners) {
-      int ownerHash = getNormalizedHash(address);
-      Collection<Address> beforeOnWheel = positions.headMap(ownerHash).values();
-      Collection<Address> afterOnWheel = positions.tailMap(ownerHash).values();
-      ArrayList<Address> processSequence = new ArrayList<Address>(afterOnWheel);
-      processSequence.addAll(beforeOnWheel);
+   /**
+    * Walks the wheel clockwise from the given hash, as {@link DefaultConsistentHash} does, so that the owners of a
+    * position taken by a node with several positions are the nodes following that position, not its first one.
+    */
+   private List<Address> getOwners(int hash, int replCount) {
+      int numOwners = min(replCount, caches.size());
+      Collection<Address> beforeOnWheel = positions.headMap(hash).values();
+      Collection<Address> afterOnWheel = positions.tailMap(hash).values();
+      // nodes taking several positions are only considered at the first one met
+      Set<Address> distinct = new LinkedHashSet<Address>(afterOnWheel);
+      distinct.addAll(beforeOnWheel);
+      ArrayList<Address> processSequence = new ArrayList<Address>(distinct);
       List<Address> result = new ArrayList<Address>();
-      result.add(processSequence.remove(0));
+      Address address = processSequence.remove(0);
+      result.add(address);
       int level = 0;
       while (result.size() < numOwners) {
          Iterator<Address> addrIt = processSequence.iterator();
@@ -131,16 +144,6 @@ public class TopologyAwareConsistentHash extends AbstractWheelConsistentHash {
       return result;
    }
 
-   private Address getOwner(Object key) {
-      int hash = getNormalizedHash(key);
-      SortedMap<Integer, Address> map = positions.tailMap(hash);
-      if (map.size() == 0) {
-         return positions.get(positions.firstKey());
-      }
-      Integer ownerHash = map.firstKey();
-      return positions.get(ownerHash);
-   }
-
    public static class Externalizer extends AbstractWheelConsistentHash.Externalizer<TopologyAwareConsistentHash> {
       @Override
       protected TopologyAwareConsistentHash instance() {
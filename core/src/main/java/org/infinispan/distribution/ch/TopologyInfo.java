@@ -57,6 +57,24 @@ public class TopologyInfo {
       address2TopologyInfo.remove(leaver);
    }
 
+   /**
+    * Returns the capacity factor of a node, which is 1 unless the node declared another.
+    */
+   public float getCapacityFactor(Address address) {
+      NodeTopologyInfo info = address2TopologyInfo.get(address);
+      return info == null ? 1 : info.getCapacityFactor();
+   }
+
+   /**
+    * Tells whether any node declared a capacity factor other than 1.
+    */
+   public boolean hasCapacityFactors() {
+      for (NodeTopologyInfo info : address2TopologyInfo.values()) {
+         if (info.getCapacityFactor() != 1) return true;
+      }
+      return false;
+   }
+
    public Collection<NodeTopologyInfo> getAllTopologyInfo() {
       return Collections.unmodifiableCollection(address2TopologyInfo.values());
    }
@@ -0,0 +1,66 @@
+package org.infinispan.eviction;
+
+import org.infinispan.marshall.MarshalledValue;
+import org.infinispan.util.ByteArrayKey;
+
+/**
+ * Default {@link EntrySizeEstimator} that accounts for the shallow and array sizes of the types most commonly stored
+ * in caches, namely <tt>byte[]</tt>, {@link String}, {@link MarshalledValue} and {@link ByteArrayKey}, assuming a
+ * 64-bit JVM with compressed object pointers. Any other type is accounted for with a fixed size of
+ * {@link #DEFAULT_OBJECT_SIZE} bytes.
+ * <p />
+ * Subclasses can override {@link #estimateSize(Object)} to handle further types, delegating to this class for the
+ * rest.
+ *
+ * @since 5.0
+ */
+public class DefaultEntrySizeEstimator implements EntrySizeEstimator {
+
+   /**
+    * Size assumed for objects whose type is not known to this estimator.
+    */
+   public static final int DEFAULT_OBJECT_SIZE = 64;
+
+   static final int OBJECT_HEADER = 12;
+   static final int ARRAY_HEADER = 16;
+   static final int REFERENCE = 4;
+
+   @Override
+   public long estimateSize(Object object) {
+      if (object == null) {
+         return 0;
+      } else if (object instanceof byte[]) {
+         return byteArraySize(((byte[]) object).length);
+      } else if (object instanceof String) {
+         // String instance holding a reference to a char[], an offset, a count and a cached hash code
+         return align(OBJECT_HEADER + REFERENCE + 12) + align(ARRAY_HEADER + 2L * ((String) object).length());
+      } else if (object instanceof ByteArrayKey) {
+         return align(OBJECT_HEADER + REFERENCE) + byteArraySize(((ByteArrayKey) object).getData().length);
+      } else if (object instanceof MarshalledValue) {
+         MarshalledValue mv = (MarshalledValue) object;
+         long size = align(OBJECT_HEADER + 3 * REFERENCE + 5);
+         byte[] raw = mv.peekRaw();
+         if (raw != null) size += byteArraySize(raw.length);
+         Object instance = mv.peekInstance();
+         if (instance != null) size += estimateSize(instance);
+         return size;
+      } else if (object instanceof Number || object instanceof Boolean || object instanceof Character) {
+         return 16 + (object instanceof Long || object instanceof Double ? 8 : 0);
+      }
+      return DEFAULT_OBJECT_SIZE;
+   }
+
+   /**
+    * Returns the size of a <tt>byte[]</tt> of the given length, including the array header and padding.
+    */
+   public static long byteArraySize(int length) {
+      return align(ARRAY_HEADER + length);
+   }
+
+   /**
+    * Rounds the given size up to the 8 byte boundary objects are aligned to.
+    */
+   public static long align(long size) {
+      return (size + 7) & ~7L;
+   }
+}
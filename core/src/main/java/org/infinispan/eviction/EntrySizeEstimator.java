@@ -0,0 +1,25 @@
+package org.infinispan.eviction;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Estimates the number of bytes retained in memory by keys and values stored in a data container. Used to bound
+ * the memory footprint of a cache when {@link org.infinispan.config.Configuration#getEvictionMaxMemory()} is set.
+ * <p />
+ * Implementations must be thread safe and cheap to invoke, since estimations are computed while holding data
+ * container locks. They must also have a public no-arg constructor so that they can be configured by class name.
+ *
+ * @see DefaultEntrySizeEstimator
+ * @since 5.0
+ */
+@ThreadSafe
+public interface EntrySizeEstimator {
+
+   /**
+    * Estimates the memory retained by a key or a value.
+    *
+    * @param object key or value to estimate, may be null
+    * @return estimated size in bytes, never negative
+    */
+   long estimateSize(Object object);
+}
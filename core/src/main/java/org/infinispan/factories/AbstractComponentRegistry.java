@@ -169,6 +169,7 @@ public abstract class AbstractComponentRegistry implements Lifecycle, Cloneable
       s.add(MarshallerFactory.class);
       s.add(ResponseGeneratorFactory.class);
       s.add(DistributionManagerFactory.class);
+      s.add(L1ManagerFactory.class);
       s.add(RecoveryManagerFactory.class);
       s.add(TransactionTableFactory.class);
       return s;
@@ -25,6 +25,7 @@ import org.infinispan.config.ConfigurationException;
 import org.infinispan.config.parsing.XmlConfigHelper;
 import org.infinispan.container.DataContainer;
 import org.infinispan.container.DefaultDataContainer;
+import org.infinispan.eviction.EntrySizeEstimator;
 import org.infinispan.eviction.EvictionStrategy;
 import org.infinispan.eviction.EvictionThreadPolicy;
 import org.infinispan.factories.annotations.DefaultFactoryFor;
@@ -62,6 +63,11 @@ public class DataContainerFactory extends AbstractNamedCacheComponentFactory imp
                    return (T) DefaultDataContainer.unBoundedDataContainer(level);
                }
                EvictionThreadPolicy policy = configuration.getEvictionThreadPolicy();
+               long maxMemory = configuration.getEvictionMaxMemory();
+               if (maxMemory > 0) {
+                  EntrySizeEstimator estimator = (EntrySizeEstimator) Util.getInstance(configuration.getEvictionSizeEstimatorClass());
+                  return (T) DefaultDataContainer.boundedDataContainer(level, maxEntries, maxMemory, estimator, st, policy);
+               }
                return (T) DefaultDataContainer.boundedDataContainer(level, maxEntries, st, policy);
             default:
                throw new ConfigurationException("Unknown eviction strategy "
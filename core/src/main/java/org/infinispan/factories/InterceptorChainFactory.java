@@ -86,6 +86,10 @@ public class InterceptorChainFactory extends AbstractNamedCacheComponentFactory
       if (configuration.isExposeJmxStatistics())
          interceptorChain.appendInterceptor(createInterceptor(CacheMgmtInterceptor.class));
 
+      // transactions committed in total order need to record their snapshot before the tx interceptor enlists them
+      if (configuration.isTotalOrderCommit())
+         interceptorChain.appendInterceptor(createInterceptor(TotalOrderInterceptor.class));
+
       // load the tx interceptor
       if (configuration.getCacheMode().isDistributed())
          interceptorChain.appendInterceptor(createInterceptor(DistTxInterceptor.class));
@@ -47,15 +47,20 @@ import org.infinispan.jmx.annotations.ManagedAttribute;
 import org.infinispan.jmx.annotations.ManagedOperation;
 import org.infinispan.loaders.CacheLoaderManager;
 import org.infinispan.loaders.CacheStore;
+import org.infinispan.loaders.decorators.AbstractDelegatingStore;
+import org.infinispan.loaders.decorators.AsyncStore;
+import org.infinispan.loaders.decorators.ChainingCacheStore;
 import org.infinispan.loaders.modifications.Clear;
 import org.infinispan.loaders.modifications.Modification;
 import org.infinispan.loaders.modifications.Remove;
 import org.infinispan.loaders.modifications.Store;
 import org.infinispan.transaction.xa.GlobalTransaction;
 import org.infinispan.util.logging.LogFactory;
+import org.rhq.helpers.pluginAnnotations.agent.DisplayType;
 import org.rhq.helpers.pluginAnnotations.agent.MeasurementType;
 import org.rhq.helpers.pluginAnnotations.agent.Metric;
 import org.rhq.helpers.pluginAnnotations.agent.Operation;
+import org.rhq.helpers.pluginAnnotations.agent.Units;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -82,6 +87,7 @@ public class CacheStoreInterceptor extends JmxStatsCommandInterceptor {
    private Map<GlobalTransaction, Set<Object>> preparingTxs;
    final AtomicLong cacheStores = new AtomicLong(0);
    CacheStore store;
+   private List<AsyncStore> asyncStores;
    private CacheLoaderManager loaderManager;
 
    public CacheStoreInterceptor() {
@@ -97,6 +103,8 @@ public class CacheStoreInterceptor extends JmxStatsCommandInterceptor {
    @Start(priority = 15)
    protected void start() {
       store = loaderManager.getCacheStore();
+      asyncStores = new ArrayList<AsyncStore>();
+      collectAsyncStores(store, asyncStores);
       this.setStatisticsEnabled(configuration.isExposeJmxStatistics());
       loaderConfig = configuration.getCacheLoaderManagerConfig();
       txStores = new ConcurrentHashMap<GlobalTransaction, Integer>(64, 0.75f, configuration.getConcurrencyLevel());
@@ -340,6 +348,7 @@ public class CacheStoreInterceptor extends JmxStatsCommandInterceptor {
    @Operation(displayName = "Reset statistics")
    public void resetStatistics() {
       cacheStores.set(0);
+      for (AsyncStore s : asyncStores) s.resetStatistics();
    }
 
    @ManagedAttribute(description = "number of cache loader stores")
@@ -348,6 +357,55 @@ public class CacheStoreInterceptor extends JmxStatsCommandInterceptor {
       return cacheStores.get();
    }
 
+   @ManagedAttribute(description = "number of modifications waiting to be applied by asynchronous cache stores")
+   @Metric(displayName = "Asynchronous store queue depth", displayType = DisplayType.SUMMARY)
+   public int getAsyncStoreQueueDepth() {
+      int depth = 0;
+      for (AsyncStore s : asyncStores) depth += s.getModificationQueueDepth();
+      return depth;
+   }
+
+   @ManagedAttribute(description = "number of batches of modifications applied by asynchronous cache stores")
+   @Metric(displayName = "Asynchronous store batches", measurementType = MeasurementType.TRENDSUP)
+   public long getAsyncStoreBatches() {
+      long batches = 0;
+      for (AsyncStore s : asyncStores) batches += s.getBatches();
+      return batches;
+   }
+
+   @ManagedAttribute(description = "average number of modifications in a batch applied by asynchronous cache stores")
+   @Metric(displayName = "Asynchronous store average batch size", displayType = DisplayType.SUMMARY)
+   public double getAsyncStoreAverageBatchSize() {
+      double total = 0;
+      long batches = 0;
+      for (AsyncStore s : asyncStores) {
+         total += s.getAverageBatchSize() * s.getBatches();
+         batches += s.getBatches();
+      }
+      return batches == 0 ? 0 : total / batches;
+   }
+
+   @ManagedAttribute(description = "average time taken to apply a batch of modifications by asynchronous cache stores (in milliseconds)")
+   @Metric(displayName = "Asynchronous store average batch time", units = Units.MILLISECONDS, displayType = DisplayType.SUMMARY)
+   public long getAsyncStoreAverageBatchTime() {
+      long total = 0;
+      long batches = 0;
+      for (AsyncStore s : asyncStores) {
+         total += s.getAverageBatchTime() * s.getBatches();
+         batches += s.getBatches();
+      }
+      return batches == 0 ? 0 : total / batches;
+   }
+
+   private static void collectAsyncStores(CacheStore s, List<AsyncStore> result) {
+      if (s instanceof ChainingCacheStore) {
+         for (CacheStore chained : ((ChainingCacheStore) s).getStores().keySet()) collectAsyncStores(chained, result);
+      } else if (s instanceof AbstractDelegatingStore) {
+         if (s instanceof AsyncStore) result.add((AsyncStore) s);
+         collectAsyncStores(((AbstractDelegatingStore) s).getDelegate(), result);
+      }
+   }
+
    InternalCacheEntry getStoredEntry(Object key, InvocationContext ctx) {
       CacheEntry entry = ctx.lookupEntry(key);
       if (entry instanceof InternalCacheEntry) {
@@ -23,6 +23,7 @@ import org.infinispan.context.impl.LocalTxInvocationContext;
 import org.infinispan.context.impl.TxInvocationContext;
 import org.infinispan.distribution.DataLocality;
 import org.infinispan.distribution.DistributionManager;
+import org.infinispan.distribution.L1Manager;
 import org.infinispan.factories.annotations.Inject;
 import org.infinispan.factories.annotations.Start;
 import org.infinispan.interceptors.base.BaseRpcInterceptor;
@@ -53,7 +54,8 @@ public class DistributionInterceptor extends BaseRpcInterceptor {
    DistributionManager dm;
    CommandsFactory cf;
    DataContainer dataContainer;
-   boolean isL1CacheEnabled, needReliableReturnValues;
+   L1Manager l1Manager;
+   boolean isL1CacheEnabled, isTrackingL1Requestors, needReliableReturnValues;
    EntryFactory entryFactory;
 
 
@@ -68,16 +70,18 @@ public class DistributionInterceptor extends BaseRpcInterceptor {
    };
 
    @Inject
-   public void injectDependencies(DistributionManager distributionManager, CommandsFactory cf, DataContainer dataContainer, EntryFactory entryFactory) {
+   public void injectDependencies(DistributionManager distributionManager, CommandsFactory cf, DataContainer dataContainer, EntryFactory entryFactory, L1Manager l1Manager) {
       this.dm = distributionManager;
       this.cf = cf;
       this.dataContainer = dataContainer;
       this.entryFactory = entryFactory;
+      this.l1Manager = l1Manager;
    }
 
    @Start
    public void start() {
       isL1CacheEnabled = configuration.isL1CacheEnabled();
+      isTrackingL1Requestors = isL1CacheEnabled && l1Manager != null && l1Manager.isTrackingRequestors();
       needReliableReturnValues = !configuration.isUnsafeUnreliableReturnValues();
    }
 
@@ -251,6 +255,12 @@ public class DistributionInterceptor extends BaseRpcInterceptor {
    // ---- TX boundary commands 
    @Override
    public Object visitCommitCommand(TxInvocationContext ctx, CommitCommand command) throws Throwable {
+      if (isTrackingL1Requestors && !ctx.isOriginLocal()) {
+         Set<Object> affectedKeys = ctx.getAffectedKeys();
+         Object retVal = invokeNextInterceptor(ctx, command);
+         flushL1CacheOnOwner(affectedKeys, configuration.isSyncCommitPhase());
+         return retVal;
+      }
       if (shouldInvokeRemoteTxCommand(ctx)) {
          Collection<Address> preparedOn = ((LocalTxInvocationContext) ctx).getRemoteLocksAcquired();
 
@@ -293,7 +303,9 @@ public class DistributionInterceptor extends BaseRpcInterceptor {
             }
          }
       }
-      return invokeNextInterceptor(ctx, command);
+      Object retVal = invokeNextInterceptor(ctx, command);
+      if (isTrackingL1Requestors && ctx.isOriginLocal()) removeUntrackedL1Entries(ctx.getAffectedKeys());
+      return retVal;
    }
 
 
@@ -313,6 +325,12 @@ public class DistributionInterceptor extends BaseRpcInterceptor {
          ((LocalTxInvocationContext) ctx).remoteLocksAcquired(recipients);
          if (f != null) f.get();
       }
+      if (isTrackingL1Requestors && command.isOnePhaseCommit()) {
+         if (ctx.isOriginLocal())
+            removeUntrackedL1Entries(ctx.getAffectedKeys());
+         else
+            flushL1CacheOnOwner(ctx.getAffectedKeys(), sync);
+      }
       return retVal;
    }
 
@@ -338,7 +356,10 @@ public class DistributionInterceptor extends BaseRpcInterceptor {
    }
 
    private NotifyingNotifiableFuture<Object> flushL1Cache(int numCallRecipients, Collection<Object> keys, Object retval) {
-      if (isL1CacheEnabled && rpcManager.getTransport().getMembers().size() > numCallRecipients) {
+      if (isTrackingL1Requestors) {
+         // the primary owners of the keys invalidate the nodes that fetched them
+         return l1Manager.flushCache(keys, retval);
+      } else if (isL1CacheEnabled && rpcManager.getTransport().getMembers().size() > numCallRecipients) {
          if (trace) log.trace("Invalidating L1 caches");
          InvalidateCommand ic = cf.buildInvalidateFromL1Command(false, keys);
          NotifyingNotifiableFuture<Object> future = new AggregatingNotifyingFutureImpl(retval, 2);
@@ -351,6 +372,35 @@ public class DistributionInterceptor extends BaseRpcInterceptor {
       return null;
    }
 
+   /**
+    * Invalidates the L1 caches holding the written keys this node is the primary owner of, when applying a write
+    * issued by another node.
+    */
+   private void flushL1CacheOnOwner(Collection<Object> keys, boolean sync) {
+      if (keys == null || keys.isEmpty()) return;
+      NotifyingNotifiableFuture<Object> future = l1Manager.flushCache(keys, null);
+      if (future != null && sync) {
+         try {
+            future.get();
+         } catch (Exception e) {
+            if (log.isInfoEnabled()) log.info("Failed invalidating remote cache: ", e);
+         }
+      }
+   }
+
+   /**
+    * Owners only track the nodes that fetched a key, so they cannot invalidate the L1 entries created by writes.  The
+    * writer drops these itself instead.
+    */
+   private void removeUntrackedL1Entries(Collection<Object> keys) {
+      if (keys == null) return;
+      for (Object k : keys) {
+         DataLocality locality = dm.getLocality(k);
+         // while rehashing, owners broadcast invalidations anyway
+         if (!locality.isLocal() && !locality.isUncertain()) dataContainer.remove(k);
+      }
+   }
+
    /**
     * If we are within one transaction we won't do any replication as replication would only be performed at commit
     * time. If the operation didn't originate locally we won't do any replication either.
@@ -370,6 +420,12 @@ public class DistributionInterceptor extends BaseRpcInterceptor {
 
       if (command.isSuccessful()) {
          if (!ctx.isInTxScope()) {
+            if (isTrackingL1Requestors && !skipL1Invalidation) {
+               if (ctx.isOriginLocal())
+                  removeUntrackedL1Entries(recipientGenerator.getKeys());
+               else
+                  flushL1CacheOnOwner(recipientGenerator.getKeys(), sync);
+            }
             if (ctx.isOriginLocal()) {
                List<Address> rec = recipientGenerator.generateRecipients();
                if (trace) log.trace("Invoking command %s on hosts %s", command, rec);
@@ -41,6 +41,7 @@ import org.infinispan.container.EntryFactory;
 import org.infinispan.container.entries.CacheEntry;
 import org.infinispan.container.entries.InternalCacheEntry;
 import org.infinispan.container.entries.MVCCEntry;
+import org.infinispan.container.entries.RepeatableReadEntry;
 import org.infinispan.context.Flag;
 import org.infinispan.context.InvocationContext;
 import org.infinispan.context.impl.LocalTxInvocationContext;
@@ -48,8 +49,12 @@ import org.infinispan.context.impl.TxInvocationContext;
 import org.infinispan.factories.annotations.Inject;
 import org.infinispan.factories.annotations.Start;
 import org.infinispan.interceptors.base.CommandInterceptor;
+import org.infinispan.marshall.MarshalledValue;
 import org.infinispan.remoting.transport.Address;
 import org.infinispan.remoting.transport.Transport;
+import org.infinispan.transaction.LocalTransaction;
+import org.infinispan.transaction.TransactionTable;
+import org.infinispan.transaction.WriteSkewException;
 import org.infinispan.transaction.xa.GlobalTransaction;
 import org.infinispan.util.ReversibleOrderedSet;
 import org.infinispan.util.concurrent.IsolationLevel;
@@ -58,11 +63,16 @@ import org.infinispan.util.concurrent.locks.LockManager;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Interceptor to implement <a href="http://wiki.jboss.org/wiki/JBossCacheMVCC">MVCC</a> functionality.
@@ -73,23 +83,42 @@ import java.util.Set;
  * @since 4.0
  */
 public class LockingInterceptor extends CommandInterceptor {
+
+   /**
+    * The least number of writes recorded between two prunings of the write times no transaction needs any more.
+    */
+   static final int MIN_WRITES_BETWEEN_PRUNING = 1024;
+
    LockManager lockManager;
    DataContainer dataContainer;
    EntryFactory entryFactory;
    boolean useReadCommitted;
+   boolean optimisticLocking;
+   boolean writeSkewCheck;
    Transport transport;
+   TransactionTable txTable;
+
+   // when each key was last written, for the write skew check of optimistic transactions
+   private final ConcurrentMap<Object, Long> writeTimes = new ConcurrentHashMap<Object, Long>();
+   private final AtomicInteger writesSincePruning = new AtomicInteger();
+   private final AtomicBoolean pruning = new AtomicBoolean();
+   private volatile int writesBetweenPruning = MIN_WRITES_BETWEEN_PRUNING;
 
    @Inject
-   public void setDependencies(LockManager lockManager, DataContainer dataContainer, EntryFactory entryFactory, Transport transport) {
+   public void setDependencies(LockManager lockManager, DataContainer dataContainer, EntryFactory entryFactory, Transport transport,
+                               TransactionTable txTable) {
       this.lockManager = lockManager;
       this.dataContainer = dataContainer;
       this.entryFactory = entryFactory;
       this.transport = transport;
+      this.txTable = txTable;
    }
 
    @Start
    private void determineIsolationLevel() {
       useReadCommitted = configuration.getIsolationLevel() == IsolationLevel.READ_COMMITTED;
+      optimisticLocking = configuration.isOptimisticLocking();
+      writeSkewCheck = optimisticLocking && !useReadCommitted && configuration.isWriteSkewCheck();
    }
 
    @Override
@@ -131,10 +160,14 @@ public class LockingInterceptor extends CommandInterceptor {
    public Object visitPrepareCommand(TxInvocationContext ctx, PrepareCommand command) throws Throwable {
       try {
          abortIfRemoteTransactionInvalid(ctx, command);
+         if (isLockingDeferred(ctx)) lockDeferredEntries(ctx);
          return invokeNextInterceptor(ctx, command);
       } catch (TimeoutException te) {
          cleanupLocks(ctx, false);
          throw te;
+      } catch (WriteSkewException wse) {
+         cleanupLocks(ctx, false);
+         throw wse;
       } finally {
          if (command.isOnePhaseCommit())
             cleanupLocks(ctx, true);
@@ -213,7 +246,13 @@ public class LockingInterceptor extends CommandInterceptor {
    }
 
    private void lockKeysForLockCommand(TxInvocationContext ctx, LockControlCommand c) throws InterruptedException {
-      for (Object key : c.getKeys()) {
+      for (Object key : lockManager.orderForLocking(c.getKeys())) {
+         CacheEntry existing = ctx.lookupEntry(key);
+         if (isLockDeferred(existing)) {
+            // modified optimistically, lock it now rather than when preparing
+            lockDeferredEntry(ctx, key, (MVCCEntry) existing);
+            continue;
+         }
          MVCCEntry e = entryFactory.wrapEntryForWriting(ctx, key, true, false, false, false, false);
          if (e != null && e.isCreated()) {
             // mark as temporary entry just for the sake of a lock command
@@ -228,8 +267,18 @@ public class LockingInterceptor extends CommandInterceptor {
    public Object visitClearCommand(InvocationContext ctx, ClearCommand command) throws Throwable {
       try {
          // get a snapshot of all keys in the data container
-         for (InternalCacheEntry entry : dataContainer.entrySet())
-            entryFactory.wrapEntryForWriting(ctx, entry, false, false, false, false, false);
+         Map<Object, InternalCacheEntry> entries = new HashMap<Object, InternalCacheEntry>();
+         for (InternalCacheEntry entry : dataContainer.entrySet()) entries.put(entry.getKey(), entry);
+         boolean deferLocking = isLockingDeferred(ctx);
+         for (Object key : lockManager.orderForLocking(entries.keySet())) {
+            InternalCacheEntry entry = entries.get(key);
+            if (deferLocking) {
+               boolean locked = ctx.hasLockedKey(key);
+               deferLock(entryFactory.wrapEntryForWriting(ctx, entry, false, false, true, false, false), locked);
+            } else {
+               entryFactory.wrapEntryForWriting(ctx, entry, false, false, false, false, false);
+            }
+         }
          return invokeNextInterceptor(ctx, command);
       } catch (Throwable te) {
          return cleanLocksAndRethrow(ctx, te);
@@ -242,15 +291,24 @@ public class LockingInterceptor extends CommandInterceptor {
    public Object visitEvictCommand(InvocationContext ctx, EvictCommand command) throws Throwable {
       // ensure keys are properly locked for evict commands
       ctx.setFlags(Flag.ZERO_LOCK_ACQUISITION_TIMEOUT);
-      return visitRemoveCommand(ctx, command);
+      try {
+         wrapEntryForWriting(ctx, command.getKey(), false, true, true, false);
+         return invokeNextInterceptor(ctx, command);
+      } catch (Throwable te) {
+         return cleanLocksAndRethrow(ctx, te);
+      }
+      finally {
+         // an evicted entry has not been changed, it must not fail the transactions that read it
+         doAfterCall(ctx, false);
+      }
    }
 
    @Override
    public Object visitInvalidateCommand(InvocationContext ctx, InvalidateCommand command) throws Throwable {
       try {
          if (command.getKeys() != null) {
-            for (Object key : command.getKeys())
-               entryFactory.wrapEntryForWriting(ctx, key, false, true, false, false, false);
+            for (Object key : lockManager.orderForLocking(Arrays.asList(command.getKeys())))
+               wrapEntryForWriting(ctx, key, false, true, false, false);
          }
          return invokeNextInterceptor(ctx, command);
       } catch (Throwable te) {
@@ -267,7 +325,7 @@ public class LockingInterceptor extends CommandInterceptor {
       try {
          if (keys != null && keys.length>=1) {
             ArrayList<Object> keysCopy = new ArrayList<Object>(Arrays.asList(keys));
-            for (Object key : command.getKeys()) {
+            for (Object key : lockManager.orderForLocking(keysCopy)) {
                ctx.setFlags(Flag.ZERO_LOCK_ACQUISITION_TIMEOUT);
                try {
                   entryFactory.wrapEntryForWriting(ctx, key, false, true, false, false, false);
@@ -293,7 +351,7 @@ public class LockingInterceptor extends CommandInterceptor {
    @Override
    public Object visitPutKeyValueCommand(InvocationContext ctx, PutKeyValueCommand command) throws Throwable {
       try {
-         entryFactory.wrapEntryForWriting(ctx, command.getKey(), true, false, false, false, !command.isPutIfAbsent());
+         wrapEntryForWriting(ctx, command.getKey(), true, false, false, !command.isPutIfAbsent());
          return invokeNextInterceptor(ctx, command);
       } catch (Throwable te) {
          return cleanLocksAndRethrow(ctx, te);
@@ -306,8 +364,8 @@ public class LockingInterceptor extends CommandInterceptor {
    @Override
    public Object visitPutMapCommand(InvocationContext ctx, PutMapCommand command) throws Throwable {
       try {
-         for (Object key : command.getMap().keySet()) {
-            entryFactory.wrapEntryForWriting(ctx, key, true, false, false, false, true);
+         for (Object key : lockManager.orderForLocking(command.getMap().keySet())) {
+            wrapEntryForWriting(ctx, key, true, false, false, true);
          }
          return invokeNextInterceptor(ctx, command);
       } catch (Throwable te) {
@@ -321,7 +379,7 @@ public class LockingInterceptor extends CommandInterceptor {
    @Override
    public Object visitRemoveCommand(InvocationContext ctx, RemoveCommand command) throws Throwable {
       try {
-         entryFactory.wrapEntryForWriting(ctx, command.getKey(), false, true, false, true, false);
+         wrapEntryForWriting(ctx, command.getKey(), false, true, true, false);
          return invokeNextInterceptor(ctx, command);
       } catch (Throwable te) {
          return cleanLocksAndRethrow(ctx, te);
@@ -334,7 +392,7 @@ public class LockingInterceptor extends CommandInterceptor {
    @Override
    public Object visitReplaceCommand(InvocationContext ctx, ReplaceCommand command) throws Throwable {
       try {
-         entryFactory.wrapEntryForWriting(ctx, command.getKey(), false, true, false, false, false);
+         wrapEntryForWriting(ctx, command.getKey(), false, true, false, false);
          return invokeNextInterceptor(ctx, command);
       } catch (Throwable te) {
          return cleanLocksAndRethrow(ctx, te);
@@ -344,11 +402,104 @@ public class LockingInterceptor extends CommandInterceptor {
       }
    }
 
-   @SuppressWarnings("unchecked")
+   /**
+    * Wraps an entry for writing, acquiring its lock unless the command is part of a local optimistic transaction.  In
+    * that case the entry is only marked as needing its lock, which is acquired when the transaction prepares.
+    */
+   private MVCCEntry wrapEntryForWriting(InvocationContext ctx, Object key, boolean createIfAbsent, boolean forceLockIfAbsent, boolean forRemoval, boolean undeleteIfNeeded) throws InterruptedException {
+      if (!isLockingDeferred(ctx))
+         return entryFactory.wrapEntryForWriting(ctx, key, createIfAbsent, forceLockIfAbsent, false, forRemoval, undeleteIfNeeded);
+      boolean locked = ctx.hasLockedKey(key);
+      return deferLock(entryFactory.wrapEntryForWriting(ctx, key, createIfAbsent, false, true, forRemoval, undeleteIfNeeded), locked);
+   }
+
+   private MVCCEntry deferLock(MVCCEntry entry, boolean locked) {
+      if (entry != null && entry.isChanged() && !locked) entry.setLockDeferred(true);
+      return entry;
+   }
+
+   private boolean isLockingDeferred(InvocationContext ctx) {
+      return optimisticLocking && ctx.isInTxScope() && ctx.isOriginLocal();
+   }
+
+   private static boolean isLockDeferred(CacheEntry entry) {
+      return entry instanceof MVCCEntry && ((MVCCEntry) entry).isLockDeferred();
+   }
+
+   /**
+    * Acquires the locks of the entries modified by a local optimistic transaction, in a deterministic key order so that
+    * transactions preparing concurrently cannot deadlock on each other's locks.
+    */
+   private void lockDeferredEntries(TxInvocationContext ctx) throws InterruptedException {
+      Map<Object, CacheEntry> lookedUpEntries = ctx.getLookedUpEntries();
+      List<Object> keys = new ArrayList<Object>();
+      for (Map.Entry<Object, CacheEntry> e : lookedUpEntries.entrySet()) {
+         if (isLockDeferred(e.getValue())) keys.add(e.getKey());
+      }
+      if (keys.isEmpty()) return;
+      if (trace) log.trace("Acquiring deferred locks on %s", keys);
+      for (Object key : lockManager.orderForLocking(keys)) lockDeferredEntry(ctx, key, (MVCCEntry) lookedUpEntries.get(key));
+   }
+
+   /**
+    * Acquires the lock of an entry modified before its lock was, and with repeatable read checks that the entry has not
+    * been changed by another transaction in the meantime.
+    */
+   private void lockDeferredEntry(InvocationContext ctx, Object key, MVCCEntry entry) throws InterruptedException {
+      if (!lockManager.lockAndRecord(key, ctx)) {
+         Object owner = lockManager.getOwner(key);
+         if (key instanceof MarshalledValue) key = ((MarshalledValue) key).get();
+         throw new TimeoutException("Unable to acquire lock on key [" + key + "] for requestor [" +
+               ctx.getLockOwner() + "]! Lock held by [" + owner + "]");
+      }
+      entry.setLockDeferred(false);
+      // the writes committed before the lock was acquired have all been recorded
+      if (writeSkewCheck && entry instanceof RepeatableReadEntry)
+         ((RepeatableReadEntry) entry).performWriteSkewCheck(writeTimes.get(key));
+   }
+
+   /**
+    * Records that a key has been written.  Must be called after the write has been committed, but before the lock of
+    * the key is released.
+    */
+   private void written(Object key) {
+      writeTimes.put(key, System.nanoTime());
+      if (writesSincePruning.incrementAndGet() >= writesBetweenPruning) pruneWriteTimes();
+   }
+
+   /**
+    * Forgets the writes made before the oldest local transaction started, as they cannot be write skews for any
+    * transaction still to prepare.  Writes are forgotten in batches so that the cost is shared by all of them.
+    */
+   private void pruneWriteTimes() {
+      if (!pruning.compareAndSet(false, true)) return;
+      try {
+         writesSincePruning.set(0);
+         // transactions starting from now on have not read anything yet
+         long oldest = System.nanoTime();
+         for (LocalTransaction localTx : txTable.getLocalTransactions()) {
+            if (localTx.getStartTime() - oldest < 0) oldest = localTx.getStartTime();
+         }
+         for (Map.Entry<Object, Long> e : writeTimes.entrySet()) {
+            // a conditional removal, not to forget a write made concurrently
+            if (e.getValue() - oldest < 0) writeTimes.remove(e.getKey(), e.getValue());
+         }
+         if (trace) log.trace("Write times of %s keys still needed for write skew checks", writeTimes.size());
+         writesBetweenPruning = Math.max(MIN_WRITES_BETWEEN_PRUNING, writeTimes.size());
+      } finally {
+         pruning.set(false);
+      }
+   }
+
    private void doAfterCall(InvocationContext ctx) {
+      doAfterCall(ctx, true);
+   }
+
+   @SuppressWarnings("unchecked")
+   private void doAfterCall(InvocationContext ctx, boolean trackWrites) {
       // for non-transactional stuff.
       if (!ctx.isInTxScope()) {
-         cleanupLocks(ctx, true);
+         cleanupLocks(ctx, true, trackWrites);
       } else {
          if (trace) log.trace("Transactional.  Not cleaning up locks till the transaction ends.");
          if (useReadCommitted) {
@@ -359,7 +510,7 @@ public class LockingInterceptor extends CommandInterceptor {
                // should never resize.
                List<Object> keysToRemove = new ArrayList<Object>(lookedUpEntries.size());
                for (Map.Entry<Object, CacheEntry> e : lookedUpEntries.entrySet()) {
-                  if (!lockManager.possiblyLocked(e.getValue()) && !possiblyLockedInContext(ctx, e.getKey())) keysToRemove.add(e.getKey());
+                  if (!lockManager.possiblyLocked(e.getValue()) && !isLockDeferred(e.getValue()) && !possiblyLockedInContext(ctx, e.getKey())) keysToRemove.add(e.getKey());
                }
 
                if (!keysToRemove.isEmpty()) {
@@ -380,6 +531,11 @@ public class LockingInterceptor extends CommandInterceptor {
    }
 
    private void cleanupLocks(InvocationContext ctx, boolean commit) {
+      cleanupLocks(ctx, commit, true);
+   }
+
+   private void cleanupLocks(InvocationContext ctx, boolean commit, boolean trackWrites) {
+      boolean recordWrites = trackWrites && writeSkewCheck;
       if (commit) {
          Object owner = ctx.getLockOwner();
          ReversibleOrderedSet<Map.Entry<Object, CacheEntry>> entries = ctx.getLookedUpEntries().entrySet();
@@ -393,6 +549,8 @@ public class LockingInterceptor extends CommandInterceptor {
             // could be null with read-committed
             if (entry != null && entry.isChanged()) {
                commitEntry(entry);
+               // recorded before the lock is released, for the transactions checking for write skews once they hold it
+               if (recordWrites) written(key);
             } else {
                if (trace) log.trace("Entry for key %s is null, not calling commitUpdate", key);
             }
@@ -49,7 +49,7 @@ public class ReplicationInterceptor extends BaseRpcInterceptor {
    @Override
    public Object visitCommitCommand(TxInvocationContext ctx, CommitCommand command) throws Throwable {
       if (!ctx.isInTxScope()) throw new IllegalStateException("This should not be possible!");
-      if (shouldInvokeRemoteTxCommand(ctx)) {
+      if (shouldReplicateTxCommand(ctx)) {
          rpcManager.broadcastRpcCommand(command, configuration.isSyncCommitPhase(), true);
       }
       return invokeNextInterceptor(ctx, command);
@@ -58,7 +58,7 @@ public class ReplicationInterceptor extends BaseRpcInterceptor {
    @Override
    public Object visitPrepareCommand(TxInvocationContext ctx, PrepareCommand command) throws Throwable {
       Object retVal = invokeNextInterceptor(ctx, command);
-      if (shouldInvokeRemoteTxCommand(ctx)) {
+      if (shouldReplicateTxCommand(ctx)) {
          boolean async = configuration.getCacheMode() == Configuration.CacheMode.REPL_ASYNC;
          rpcManager.broadcastRpcCommand(command, !async, false);
       }
@@ -67,7 +67,7 @@ public class ReplicationInterceptor extends BaseRpcInterceptor {
 
    @Override
    public Object visitRollbackCommand(TxInvocationContext ctx, RollbackCommand command) throws Throwable {
-      if (shouldInvokeRemoteTxCommand(ctx) && !configuration.isOnePhaseCommit()) {
+      if (shouldReplicateTxCommand(ctx) && !configuration.isOnePhaseCommit()) {
          rpcManager.broadcastRpcCommand(command, configuration.isSyncRollbackPhase(), true);
       }
       return invokeNextInterceptor(ctx, command);
@@ -118,6 +118,14 @@ public class ReplicationInterceptor extends BaseRpcInterceptor {
       return returnValue;
    }
 
+   /**
+    * With total order commit, prepares reach the other nodes through the
+    * {@link org.infinispan.transaction.TotalOrderManager} and are committed in one phase.
+    */
+   private boolean shouldReplicateTxCommand(TxInvocationContext ctx) {
+      return !configuration.isTotalOrderCommit() && shouldInvokeRemoteTxCommand(ctx);
+   }
+
    /**
     * Makes sure the context Flags are bundled in the command, so that they are re-read remotely
     */
@@ -0,0 +1,72 @@
+package org.infinispan.interceptors;
+
+import org.infinispan.commands.VisitableCommand;
+import org.infinispan.commands.tx.PrepareCommand;
+import org.infinispan.context.Flag;
+import org.infinispan.context.InvocationContext;
+import org.infinispan.context.impl.LocalTxInvocationContext;
+import org.infinispan.context.impl.TxInvocationContext;
+import org.infinispan.factories.annotations.Inject;
+import org.infinispan.interceptors.base.CommandInterceptor;
+import org.infinispan.transaction.LocalTransaction;
+import org.infinispan.transaction.TotalOrderManager;
+import org.infinispan.transaction.UnknownOutcomeException;
+
+/**
+ * Commits transactions in the order the {@link TotalOrderManager} agrees on with the other nodes, when total order
+ * commit is enabled.  It records the snapshot each local transaction starts reading from, and holds the prepare of a
+ * local transaction until it has been certified and the transactions ordered before it have been applied.  Remote
+ * prepares are applied one at a time in that order, and so without acquiring locks.
+ *
+ * @since 5.0
+ */
+public class TotalOrderInterceptor extends CommandInterceptor {
+
+   private TotalOrderManager totalOrderManager;
+
+   @Inject
+   public void init(TotalOrderManager totalOrderManager) {
+      this.totalOrderManager = totalOrderManager;
+   }
+
+   @Override
+   protected Object handleDefault(InvocationContext ctx, VisitableCommand command) throws Throwable {
+      if (!(ctx instanceof LocalTxInvocationContext)) return invokeNextInterceptor(ctx, command);
+
+      // read before the command, the transaction is only enlisted by the TxInterceptor
+      TotalOrderManager.Position snapshot = totalOrderManager.getLastDelivered();
+      Object result = invokeNextInterceptor(ctx, command);
+      LocalTransaction localTransaction = (LocalTransaction) ((LocalTxInvocationContext) ctx).getCacheTrasaction();
+      if (localTransaction != null && localTransaction.getTotalOrderSnapshot() == null)
+         localTransaction.setTotalOrderSnapshot(snapshot);
+      return result;
+   }
+
+   @Override
+   public Object visitPrepareCommand(TxInvocationContext ctx, PrepareCommand command) throws Throwable {
+      if (!ctx.isOriginLocal()) {
+         ctx.setFlags(Flag.SKIP_LOCKING);
+         return invokeNextInterceptor(ctx, command);
+      }
+      if (!command.hasModifications()) return invokeNextInterceptor(ctx, command);
+
+      LocalTransaction localTransaction = (LocalTransaction) ((LocalTxInvocationContext) ctx).getCacheTrasaction();
+      TotalOrderManager.Turn turn = totalOrderManager.order(command, localTransaction.getTotalOrderSnapshot());
+      try {
+         turn.await();
+      } catch (InterruptedException e) {
+         // the transaction is still applied by the delivery thread
+         turn.abandon();
+         Thread.currentThread().interrupt();
+         throw new UnknownOutcomeException("Interrupted while waiting to apply " + ctx.getGlobalTransaction(), e);
+      }
+      try {
+         return invokeNextInterceptor(ctx, command);
+      } catch (Throwable t) {
+         // the other nodes apply the transaction regardless
+         throw new UnknownOutcomeException("Failed to apply " + ctx.getGlobalTransaction() + " once ordered", t);
+      } finally {
+         turn.done();
+      }
+   }
+}
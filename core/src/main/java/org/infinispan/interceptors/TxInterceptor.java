@@ -14,6 +14,7 @@ import org.infinispan.commands.write.RemoveCommand;
 import org.infinispan.commands.write.ReplaceCommand;
 import org.infinispan.commands.write.WriteCommand;
 import org.infinispan.config.Configuration;
+import org.infinispan.container.EntryFactory;
 import org.infinispan.context.Flag;
 import org.infinispan.context.InvocationContext;
 import org.infinispan.context.InvocationContextContainer;
@@ -29,6 +30,8 @@ import org.infinispan.transaction.TransactionCoordinator;
 import org.infinispan.transaction.TransactionLog;
 import org.infinispan.transaction.TransactionTable;
 import org.infinispan.transaction.xa.recovery.RecoveryManager;
+import org.infinispan.util.concurrent.TimeoutException;
+import org.infinispan.util.concurrent.locks.LockManager;
 import org.rhq.helpers.pluginAnnotations.agent.DataType;
 import org.rhq.helpers.pluginAnnotations.agent.DisplayType;
 import org.rhq.helpers.pluginAnnotations.agent.MeasurementType;
@@ -40,6 +43,10 @@ import javax.transaction.RollbackException;
 import javax.transaction.Status;
 import javax.transaction.SystemException;
 import javax.transaction.Transaction;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -65,30 +72,39 @@ public class TxInterceptor extends CommandInterceptor {
    private InvocationContextContainer icc;
    private RecoveryManager recoveryManager;
    protected TransactionCoordinator txCoordinator;
+   private EntryFactory entryFactory;
+   private LockManager lockManager;
 
 
    @Inject
    public void init(TransactionTable txTable, TransactionLog transactionLog, Configuration c, InvocationContextContainer icc,
-                   RecoveryManager rm, TransactionCoordinator txCoordinator) {
+                   RecoveryManager rm, TransactionCoordinator txCoordinator, EntryFactory entryFactory, LockManager lockManager) {
       this.configuration = c;
       this.transactionLog = transactionLog;
       this.txTable = txTable;
       this.icc = icc;
       this.recoveryManager = rm;
       this.txCoordinator = txCoordinator;
+      this.entryFactory = entryFactory;
+      this.lockManager = lockManager;
       setStatisticsEnabled(configuration.isExposeJmxStatistics());
    }
 
    @Override
    public Object visitPrepareCommand(TxInvocationContext ctx, PrepareCommand command) throws Throwable {
       if (!ctx.isOriginLocal()) {
-         // replay modifications
-         for (VisitableCommand modification : command.getModifications()) {
-            VisitableCommand toReplay = getCommandToReplay(modification);
-            if (toReplay != null) {
-               invokeNextInterceptor(ctx, toReplay);
+         List<VisitableCommand> toReplay = new ArrayList<VisitableCommand>(command.getModifications().length);
+         Set<Object> affectedKeys = new HashSet<Object>();
+         for (WriteCommand modification : command.getModifications()) {
+            VisitableCommand replayed = getCommandToReplay(modification);
+            if (replayed != null) {
+               toReplay.add(replayed);
+               if (replayed instanceof WriteCommand) affectedKeys.addAll(((WriteCommand) replayed).getAffectedKeys());
             }
          }
+         lockAffectedKeys(ctx, affectedKeys);
+         // replay modifications
+         for (VisitableCommand replayed : toReplay) invokeNextInterceptor(ctx, replayed);
       }
       //if it is remote and 2PC then first log the tx only after replying mods
       if (!command.isOnePhaseCommit()) {
@@ -109,6 +125,21 @@ public class TxInterceptor extends CommandInterceptor {
       return result;
    }
 
+   /**
+    * Locks the keys modified by a remote transaction in lock order before its modifications are replayed, as the
+    * modifications may lock them in any order and concurrent prepares modifying the same keys could deadlock.
+    */
+   private void lockAffectedKeys(TxInvocationContext ctx, Set<Object> keys) throws InterruptedException {
+      if (keys.size() < 2 || ctx.hasFlag(Flag.SKIP_LOCKING)) return;
+      try {
+         for (Object key : lockManager.orderForLocking(keys))
+            entryFactory.wrapEntryForWriting(ctx, key, false, true, false, false, false);
+      } catch (TimeoutException te) {
+         lockManager.releaseLocks(ctx);
+         throw te;
+      }
+   }
+
    @Override
    public Object visitCommitCommand(TxInvocationContext ctx, CommitCommand command) throws Throwable {
       if (this.statisticsEnabled) commits.incrementAndGet();
@@ -1,6 +1,7 @@
 package org.infinispan.loaders;
 
 import org.infinispan.Cache;
+import org.infinispan.container.entries.InternalCacheEntry;
 import org.infinispan.loaders.modifications.Modification;
 import org.infinispan.loaders.modifications.Remove;
 import org.infinispan.loaders.modifications.Store;
@@ -12,6 +13,7 @@ import org.infinispan.util.logging.LogFactory;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -132,6 +134,12 @@ public abstract class AbstractCacheStore extends AbstractCacheLoader implements
       if (list != null && !list.isEmpty()) applyModifications(list);
    }
 
+   public void storeAll(Collection<InternalCacheEntry> entries) throws CacheLoaderException {
+      if (entries != null && !entries.isEmpty()) {
+         for (InternalCacheEntry entry : entries) store(entry);
+      }
+   }
+
    public void removeAll(Set<Object> keys) throws CacheLoaderException {
       if (keys != null && !keys.isEmpty()) {
          for (Object key : keys) remove(key);
@@ -6,6 +6,7 @@ import org.infinispan.transaction.xa.GlobalTransaction;
 
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -25,6 +26,15 @@ public interface CacheStore extends CacheLoader {
     */
    void store(InternalCacheEntry entry) throws CacheLoaderException;
 
+   /**
+    * Bulk store operation.  Stores backed by a remote resource are encouraged to override the default implementation
+    * in {@link AbstractCacheStore}, which stores the entries one at a time, to write them in a single round trip.
+    *
+    * @param entries entries to store
+    * @throws CacheLoaderException in the event of problems writing to the store
+    */
+   void storeAll(Collection<InternalCacheEntry> entries) throws CacheLoaderException;
+
    /**
     * Writes contents of the stream to the store.  Implementations should expect that the stream contains data in an
     * implementation-specific format, typically generated using {@link #toStream(java.io.ObjectOutput)}.  While not a
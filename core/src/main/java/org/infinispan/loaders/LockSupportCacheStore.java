@@ -9,6 +9,7 @@ import org.infinispan.util.logging.LogFactory;
 
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -72,6 +73,29 @@ public abstract class LockSupportCacheStore extends AbstractCacheStore {
       locks.acquireLock(key, false);
    }
 
+   /**
+    * Acquires write locks on all the given keys.  The underlying lock stripes are taken in a fixed order, so concurrent
+    * callers locking overlapping sets of keys do not deadlock.
+    */
+   protected final void lockAllForWriting(Collection<String> keys) throws CacheLoaderException {
+      locks.acquireLocksInStripeOrder(keys, true);
+   }
+
+   /**
+    * Acquires read locks on all the given keys, in the same order as {@link #lockAllForWriting(java.util.Collection)}.
+    */
+   protected final void lockAllForReading(Collection<String> keys) throws CacheLoaderException {
+      locks.acquireLocksInStripeOrder(keys, false);
+   }
+
+   /**
+    * Releases the locks acquired through {@link #lockAllForWriting(java.util.Collection)} (exclusive) or {@link
+    * #lockAllForReading(java.util.Collection)}.
+    */
+   protected final void unlockAll(Collection<String> keys, boolean exclusive) {
+      locks.releaseLocksInStripeOrder(keys, exclusive);
+   }
+
    /**
     * Same as {@link #lockForWriting(String)}, but with 0 timeout.
     */
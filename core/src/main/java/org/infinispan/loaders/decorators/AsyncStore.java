@@ -18,6 +18,8 @@ import org.infinispan.util.concurrent.locks.containers.ReentrantPerEntryLockCont
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +34,8 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -54,6 +58,12 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * <p/>
  * Write operations affecting same key are now coalesced so that only the final state is actually stored.
  * <p/>
+ * Coalesced modifications are applied to the underlying store in batches of up to {@link
+ * AsyncStoreConfig#getMaxBatchSize()} entries, through {@link CacheStore#storeAll(java.util.Collection)} and {@link
+ * CacheStore#removeAll(java.util.Set)}, optionally waiting up to {@link AsyncStoreConfig#getMaxBatchDelay()}
+ * milliseconds for a batch to fill up.  Once {@link AsyncStoreConfig#getModificationQueueSize()} modifications are
+ * waiting to be applied, writes block until the underlying store catches up.
+ * <p/>
  *
  * @author Manik Surtani
  * @author Galder Zamarreño
@@ -82,18 +92,31 @@ public class AsyncStore extends AbstractDelegatingStore {
    private final Lock clearAllReadLock = clearAllLock.readLock();
    private final Lock clearAllWriteLock = clearAllLock.writeLock();
    private final Lock stateMapLock = new ReentrantLock();
+   /**
+    * Signalled when a full batch of modifications is waiting, or the store is stopping.
+    */
+   private final Condition batchReady = stateMapLock.newCondition();
+   /**
+    * Signalled when modifications are taken from the state map to be applied.
+    */
+   private final Condition stateNotFull = stateMapLock.newCondition();
    
    ExecutorService executor;
    private int concurrencyLevel;
    @GuardedBy("stateMapLock")
    protected ConcurrentMap<Object, Modification> state;
    private ReleaseAllLockContainer lockContainer;
-   private final LinkedBlockingQueue<Modification> changesDeque = new LinkedBlockingQueue<Modification>();
+   private final LinkedBlockingQueue<Modification> changesDeque;
    public volatile boolean lastAsyncProcessorShutsDownExecutor = false;
 
+   private final AtomicLong batches = new AtomicLong(0);
+   private final AtomicLong batchedModifications = new AtomicLong(0);
+   private final AtomicLong batchTimeNanos = new AtomicLong(0);
+
    public AsyncStore(CacheStore delegate, AsyncStoreConfig asyncStoreConfig) {
       super(delegate);
       this.asyncStoreConfig = asyncStoreConfig;
+      this.changesDeque = new LinkedBlockingQueue<Modification>(asyncStoreConfig.getModificationQueueSize());
    }
 
    @Override
@@ -109,12 +132,30 @@ public class AsyncStore extends AbstractDelegatingStore {
       enqueue(new Store(ed));
    }
 
+   @Override
+   public void storeAll(Collection<InternalCacheEntry> entries) throws CacheLoaderException {
+      if (entries != null && !entries.isEmpty()) {
+         List<Modification> mods = new ArrayList<Modification>(entries.size());
+         for (InternalCacheEntry entry : entries) mods.add(new Store(entry));
+         enqueueModificationsList(mods);
+      }
+   }
+
    @Override
    public boolean remove(Object key) {
       enqueue(new Remove(key));
       return true;
    }
 
+   @Override
+   public void removeAll(Set<Object> keys) throws CacheLoaderException {
+      if (keys != null && !keys.isEmpty()) {
+         List<Modification> mods = new ArrayList<Modification>(keys.size());
+         for (Object key : keys) mods.add(new Remove(key));
+         enqueueModificationsList(mods);
+      }
+   }
+
    @Override
    public void clear() {
       Clear clear = new Clear();
@@ -185,6 +226,13 @@ public class AsyncStore extends AbstractDelegatingStore {
    @Override
    public void stop() throws CacheLoaderException {
       stopped.set(true);
+      stateMapLock.lock();
+      try {
+         // don't hold back the last batches any longer
+         batchReady.signalAll();
+      } finally {
+         stateMapLock.unlock();
+      }
       try {
          changesDeque.put(QUIT_SIGNAL);
          executor.awaitTermination(asyncStoreConfig.getShutdownTimeout(), TimeUnit.SECONDS);
@@ -196,20 +244,90 @@ public class AsyncStore extends AbstractDelegatingStore {
    }
 
    protected void applyModificationsSync(ConcurrentMap<Object, Modification> mods) throws CacheLoaderException {
+      int maxBatchSize = asyncStoreConfig.getMaxBatchSize();
+      List<InternalCacheEntry> toStore = new ArrayList<InternalCacheEntry>(Math.min(mods.size(), maxBatchSize));
+      Set<Object> toRemove = new HashSet<Object>();
       Set<Map.Entry<Object, Modification>> entries = mods.entrySet();
       for (Map.Entry<Object, Modification> entry : entries) {
          Modification mod = entry.getValue();
          switch (mod.getType()) {
             case STORE:
-               super.store(((Store) mod).getStoredEntry());
+               toStore.add(((Store) mod).getStoredEntry());
+               if (toStore.size() >= maxBatchSize) {
+                  storeBatch(toStore);
+                  toStore = new ArrayList<InternalCacheEntry>(maxBatchSize);
+               }
                break;
             case REMOVE:
-               super.remove(entry.getKey());
+               toRemove.add(entry.getKey());
+               if (toRemove.size() >= maxBatchSize) {
+                  removeBatch(toRemove);
+                  toRemove = new HashSet<Object>();
+               }
                break;
             default:
                throw new IllegalArgumentException("Unexpected modification type " + mod.getType());
          }
       }
+      if (!toStore.isEmpty()) storeBatch(toStore);
+      if (!toRemove.isEmpty()) removeBatch(toRemove);
+   }
+
+   private void storeBatch(List<InternalCacheEntry> entries) throws CacheLoaderException {
+      if (trace) log.trace("Storing batch of %s entries", entries.size());
+      long start = System.nanoTime();
+      super.storeAll(entries);
+      recordBatch(entries.size(), start);
+   }
+
+   private void removeBatch(Set<Object> keys) throws CacheLoaderException {
+      if (trace) log.trace("Removing batch of %s keys", keys.size());
+      long start = System.nanoTime();
+      super.removeAll(keys);
+      recordBatch(keys.size(), start);
+   }
+
+   private void recordBatch(int size, long start) {
+      batchTimeNanos.addAndGet(System.nanoTime() - start);
+      batchedModifications.addAndGet(size);
+      batches.incrementAndGet();
+   }
+
+   /**
+    * @return the number of modifications waiting to be applied to the underlying store
+    */
+   public int getModificationQueueDepth() {
+      ConcurrentMap<Object, Modification> s = state;
+      return changesDeque.size() + (s == null ? 0 : s.size());
+   }
+
+   /**
+    * @return the number of batches of modifications applied to the underlying store
+    */
+   public long getBatches() {
+      return batches.get();
+   }
+
+   /**
+    * @return the average number of modifications applied to the underlying store in a batch
+    */
+   public double getAverageBatchSize() {
+      long b = batches.get();
+      return b == 0 ? 0 : (double) batchedModifications.get() / b;
+   }
+
+   /**
+    * @return the average time taken by the underlying store to apply a batch of modifications, in milliseconds
+    */
+   public long getAverageBatchTime() {
+      long b = batches.get();
+      return b == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(batchTimeNanos.get() / b);
+   }
+
+   public void resetStatistics() {
+      batches.set(0);
+      batchedModifications.set(0);
+      batchTimeNanos.set(0);
    }
    
    protected boolean applyClear() {
@@ -234,7 +352,11 @@ public class AsyncStore extends AbstractDelegatingStore {
       try {
          checkNotStopped();
          if (trace) log.trace("Enqueuing modification %s", mod);
-         changesDeque.add(mod);
+         // blocks once the queue is full, until the coordinator catches up
+         changesDeque.put(mod);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new CacheException("Interrupted while waiting to enqueue asynchronous task", e);
       } catch (Exception e) {
          throw new CacheException("Unable to enqueue asynchronous task", e);
       }
@@ -264,6 +386,7 @@ public class AsyncStore extends AbstractDelegatingStore {
       boolean runAgainAfterWaiting = false;
 
       public void run() {
+         awaitBatch();
          clearAllReadLock.lock();
          try {
             innerRun();
@@ -283,6 +406,26 @@ public class AsyncStore extends AbstractDelegatingStore {
          }
       }
       
+      /**
+       * Holds back the modifications for up to the configured delay, unless a full batch is waiting, so that more of
+       * them are coalesced and applied in one batch.
+       */
+      private void awaitBatch() {
+         long delay = asyncStoreConfig.getMaxBatchDelay();
+         if (delay <= 0) return;
+         stateMapLock.lock();
+         try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(delay);
+            while (nanos > 0 && state.size() < asyncStoreConfig.getMaxBatchSize() && !stopped.get()) {
+               nanos = batchReady.awaitNanos(nanos);
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         } finally {
+            stateMapLock.unlock();
+         }
+      }
+
       private void innerRun() {
          final ConcurrentMap<Object, Modification> swap;
          if (trace) log.trace("Checking for modifications");
@@ -291,6 +434,7 @@ public class AsyncStore extends AbstractDelegatingStore {
             try {
                swap = state;
                state = newStateMap();
+               stateNotFull.signalAll();
 
                // This needs to be done within the stateMapLock section, because if a key is in use,
                // we need to put it back in the state
@@ -425,16 +569,12 @@ public class AsyncStore extends AbstractDelegatingStore {
          switch (mod.getType()) {
             case STORE:
                Store store = (Store) mod;
-               stateMapLock.lock();
-               state.put(store.getStoredEntry().getKey(), store);
-               stateMapLock.unlock();
+               putState(store.getStoredEntry().getKey(), store);
                asyncProcessorNeeded = true;
                break;
             case REMOVE:
                Remove remove = (Remove) mod;
-               stateMapLock.lock();
-               state.put(remove.getKey(), remove);
-               stateMapLock.unlock();
+               putState(remove.getKey(), remove);
                asyncProcessorNeeded = true;
                break;
             case CLEAR:
@@ -457,6 +597,34 @@ public class AsyncStore extends AbstractDelegatingStore {
          }
       }
 
+      /**
+       * Adds a modification to the state map, waiting for the processors to take modifications away first if it holds
+       * as many as the modification queue size and none for the key, which would otherwise be coalesced.
+       */
+      private void putState(Object key, Modification mod) {
+         int maxSize = asyncStoreConfig.getModificationQueueSize();
+         stateMapLock.lock();
+         try {
+            while (state.size() >= maxSize && !state.containsKey(key)) {
+               batchReady.signalAll();
+               ensureMoreWorkIsHandled();
+               try {
+                  stateNotFull.await(10, TimeUnit.MILLISECONDS);
+               } catch (InterruptedException e) {
+                  // go over the limit rather than lose the modification
+                  Thread.currentThread().interrupt();
+                  break;
+               }
+            }
+            state.put(key, mod);
+            if (state.size() >= asyncStoreConfig.getMaxBatchSize()) {
+               batchReady.signalAll();
+            }
+         } finally {
+            stateMapLock.unlock();
+         }
+      }
+
       private void applyModificationsList(ModificationsList mod) {
          for (Modification m : mod.getList()) {
             handle(m, true);
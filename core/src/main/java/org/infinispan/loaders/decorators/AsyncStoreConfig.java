@@ -41,6 +41,17 @@ public class AsyncStoreConfig extends AbstractNamedCacheConfigurationBean {
    @ConfigurationDocRef(bean=AsyncStoreConfig.class,targetElement="setShutdownTimeout")
    protected Long shutdownTimeout = 7200L;
 
+   @ConfigurationDocRef(bean=AsyncStoreConfig.class,targetElement="setModificationQueueSize")
+   protected Integer modificationQueueSize = 1024;
+
+   @Dynamic
+   @ConfigurationDocRef(bean=AsyncStoreConfig.class,targetElement="setMaxBatchSize")
+   protected Integer maxBatchSize = 100;
+
+   @Dynamic
+   @ConfigurationDocRef(bean=AsyncStoreConfig.class,targetElement="setMaxBatchDelay")
+   protected Long maxBatchDelay = 0L;
+
    @XmlAttribute
    public Boolean isEnabled() {
       return enabled;
@@ -152,6 +163,92 @@ public class AsyncStoreConfig extends AbstractNamedCacheConfigurationBean {
       return this;
    }
 
+   @XmlAttribute
+   public Integer getModificationQueueSize() {
+      return modificationQueueSize;
+   }
+
+   /**
+    * Number of modifications, to distinct keys, that can be waiting to be applied to the cache store.  Once the queue
+    * is full, writes block until modifications have been applied, rather than letting the queue grow without bounds
+    * when the cache store cannot keep up.
+    * 
+    * @param modificationQueueSize
+    */
+   public void setModificationQueueSize(Integer modificationQueueSize) {
+      testImmutability("modificationQueueSize");
+      this.modificationQueueSize = modificationQueueSize;
+   }
+
+   /**
+    * Number of modifications, to distinct keys, that can be waiting to be applied to the cache store.  Once the queue
+    * is full, writes block until modifications have been applied, rather than letting the queue grow without bounds
+    * when the cache store cannot keep up.
+    * 
+    * @param modificationQueueSize
+    */
+   public AsyncStoreConfig modificationQueueSize(Integer modificationQueueSize) {
+      testImmutability("modificationQueueSize");
+      this.modificationQueueSize = modificationQueueSize;
+      return this;
+   }
+
+   @XmlAttribute
+   public Integer getMaxBatchSize() {
+      return maxBatchSize;
+   }
+
+   /**
+    * Maximum number of entries stored, or removed, in a single call to the cache store.
+    * 
+    * @param maxBatchSize
+    */
+   public void setMaxBatchSize(Integer maxBatchSize) {
+      testImmutability("maxBatchSize");
+      this.maxBatchSize = maxBatchSize;
+   }
+
+   /**
+    * Maximum number of entries stored, or removed, in a single call to the cache store.
+    * 
+    * @param maxBatchSize
+    */
+   public AsyncStoreConfig maxBatchSize(Integer maxBatchSize) {
+      testImmutability("maxBatchSize");
+      this.maxBatchSize = maxBatchSize;
+      return this;
+   }
+
+   @XmlAttribute
+   public Long getMaxBatchDelay() {
+      return maxBatchDelay;
+   }
+
+   /**
+    * Maximum time, in milliseconds, modifications are held back for so that more of them can be coalesced and applied
+    * in a single batch, unless a full batch is waiting.  By default, this is set to <tt>0</tt> and modifications are
+    * applied as soon as possible.
+    * 
+    * @param maxBatchDelay
+    */
+   public void setMaxBatchDelay(Long maxBatchDelay) {
+      testImmutability("maxBatchDelay");
+      this.maxBatchDelay = maxBatchDelay;
+   }
+
+   /**
+    * Maximum time, in milliseconds, modifications are held back for so that more of them can be coalesced and applied
+    * in a single batch, unless a full batch is waiting.  By default, this is set to <tt>0</tt> and modifications are
+    * applied as soon as possible.
+    * 
+    * @param maxBatchDelay
+    */
+   public AsyncStoreConfig maxBatchDelay(Long maxBatchDelay) {
+      testImmutability("maxBatchDelay");
+      this.maxBatchDelay = maxBatchDelay;
+      return this;
+   }
+
    @Override
    public AsyncStoreConfig clone() {
       try {
@@ -13,6 +13,7 @@ import org.infinispan.loaders.modifications.Modification;
 
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -75,6 +76,10 @@ public class ChainingCacheStore implements CacheStore {
       return r;
    }
 
+   public void storeAll(Collection<InternalCacheEntry> entries) throws CacheLoaderException {
+      for (CacheStore s : stores.keySet()) s.storeAll(entries);
+   }
+
    public void removeAll(Set<Object> keys) throws CacheLoaderException {
       for (CacheStore s : stores.keySet()) s.removeAll(keys);
    }
@@ -0,0 +1,886 @@
+package org.infinispan.loaders.file;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.infinispan.Cache;
+import org.infinispan.config.ConfigurationException;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.container.entries.InternalCacheValue;
+import org.infinispan.loaders.AbstractCacheStore;
+import org.infinispan.loaders.CacheLoaderConfig;
+import org.infinispan.loaders.CacheLoaderException;
+import org.infinispan.loaders.CacheLoaderMetadata;
+import org.infinispan.marshall.StreamingMarshaller;
+import org.infinispan.util.Util;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+/**
+ * A log-structured filesystem-based {@link org.infinispan.loaders.CacheStore}. Unlike {@link FileCacheStore}, which
+ * rewrites a whole bucket file on every modification, this store appends every store and remove as a record to the
+ * current segment file, in <tt>/{location}/cache name/segment_id.log</tt>, and keeps an in-memory index of the segment
+ * and offset of the latest record of each key. Loads read a single record with a positional read.
+ * <p/>
+ * Once the ratio of overwritten, removed or expired records in a segment exceeds the configured compaction threshold,
+ * a background thread copies its live records to the current segment and deletes it.
+ * <p/>
+ * The index is written to a snapshot file when the store is stopped, and read back when it is started. If the store
+ * was not stopped cleanly, the index is rebuilt by replaying the segments instead. To make replay independent of the
+ * order records are copied in by compaction, each record carries a sequence number, and removals are recorded with
+ * tombstones that are only dropped once no older segment may hold a record they shadow.
+ *
+ * @see LogFileCacheStoreConfig
+ * @since 5.0
+ */
+@CacheLoaderMetadata(configurationClass = LogFileCacheStoreConfig.class)
+public class LogFileCacheStore extends AbstractCacheStore {
+
+   private static final Log log = LogFactory.getLog(LogFileCacheStore.class);
+   private static final boolean trace = log.isTraceEnabled();
+
+   static final String SEGMENT_SUFFIX = ".log";
+   static final String INDEX_SNAPSHOT = "index.snapshot";
+   private static final int SNAPSHOT_VERSION = 1;
+
+   static final byte PUT = 0;
+   static final byte REMOVE = 1;
+
+   /**
+    * Record length (int), CRC32 of the rest of the record (int), type (byte), key length (int), sequence number (long)
+    * and, for puts, the expiry time of the entry or, for tombstones, the id of the segment holding the record they
+    * removed (long).
+    */
+   static final int HEADER_SIZE = 29;
+   private static final int CRC_START = 8;
+
+   private static final byte[] EMPTY = new byte[0];
+
+   private LogFileCacheStoreConfig config;
+   private File root;
+   private ConcurrentMap<Object, Location> index;
+
+   /**
+    * Guards appends, index updates and the creation of segments.
+    */
+   private final ReentrantLock appendLock = new ReentrantLock();
+
+   /**
+    * Held for reading while reading a segment, and for writing while closing one.
+    */
+   private final ReentrantReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+
+   private final TreeMap<Integer, LogSegment> segments = new TreeMap<Integer, LogSegment>();
+   private LogSegment active;
+   private int nextSegmentId;
+   private long nextSequence;
+   private ExecutorService compactor;
+
+   @Override
+   public void init(CacheLoaderConfig config, Cache<?, ?> cache, StreamingMarshaller m) throws CacheLoaderException {
+      super.init(config, cache, m);
+      this.config = (LogFileCacheStoreConfig) config;
+   }
+
+   public Class<? extends CacheLoaderConfig> getConfigurationClass() {
+      return LogFileCacheStoreConfig.class;
+   }
+
+   /**
+    * @return root directory where all files for this {@link org.infinispan.loaders.CacheStore CacheStore} are written.
+    */
+   public File getRoot() {
+      return root;
+   }
+
+   @Override
+   public void start() throws CacheLoaderException {
+      super.start();
+      String location = config.getLocation();
+      if (location == null || location.trim().length() == 0)
+         location = "Infinispan-LogFileCacheStore"; // use relative path!
+      location += File.separator + cache.getName();
+      root = new File(location);
+      if (!root.exists() && !root.mkdirs()) {
+         log.warn("Problems creating the directory: " + root);
+      }
+      if (!root.exists()) {
+         throw new ConfigurationException("Directory " + root.getAbsolutePath() + " does not exist and cannot be created!");
+      }
+
+      index = new ConcurrentHashMap<Object, Location>(64, 0.75f, getConcurrencyLevel());
+      appendLock.lock();
+      try {
+         openSegments();
+         if (!readIndexSnapshot()) {
+            replaySegments();
+         }
+         if (active == null) {
+            active = newSegment();
+         }
+      } catch (IOException e) {
+         throw new CacheLoaderException("Unable to open segments in " + root, e);
+      } finally {
+         appendLock.unlock();
+      }
+
+      final String threadName = (cache == null ? "" : cache.getName() + '-') + getClass().getSimpleName() + "-compactor";
+      compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+         public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      for (LogSegment segment : snapshotSegments()) {
+         scheduleCompactionIfNeeded(segment);
+      }
+   }
+
+   @Override
+   public void stop() throws CacheLoaderException {
+      super.stop();
+      if (compactor != null) {
+         // not interrupted, since an interrupt closes the file channel the compactor is blocked on
+         compactor.shutdown();
+         try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+         }
+      }
+      appendLock.lock();
+      segmentsLock.writeLock().lock();
+      try {
+         writeIndexSnapshot();
+         closeSegments();
+      } finally {
+         segmentsLock.writeLock().unlock();
+         appendLock.unlock();
+      }
+   }
+
+   public InternalCacheEntry load(Object key) throws CacheLoaderException {
+      while (true) {
+         Location location = index.get(key);
+         if (location == null || location.isExpired(System.currentTimeMillis())) {
+            return null;
+         }
+         InternalCacheEntry entry = read(key, location);
+         if (entry != null) {
+            return entry;
+         }
+         // the record was moved by a compaction, look it up again
+      }
+   }
+
+   @Override
+   public boolean containsKey(Object key) throws CacheLoaderException {
+      Location location = index.get(key);
+      return location != null && !location.isExpired(System.currentTimeMillis());
+   }
+
+   public Set<InternalCacheEntry> loadAll() throws CacheLoaderException {
+      return load(Integer.MAX_VALUE);
+   }
+
+   public Set<InternalCacheEntry> load(int numEntries) throws CacheLoaderException {
+      if (numEntries < 0) {
+         numEntries = Integer.MAX_VALUE;
+      }
+      Set<InternalCacheEntry> result = new HashSet<InternalCacheEntry>();
+      for (Object key : index.keySet()) {
+         if (result.size() >= numEntries) {
+            break;
+         }
+         InternalCacheEntry entry = load(key);
+         if (entry != null) {
+            result.add(entry);
+         }
+      }
+      return result;
+   }
+
+   public Set<Object> loadAllKeys(Set<Object> keysToExclude) throws CacheLoaderException {
+      long now = System.currentTimeMillis();
+      Set<Object> result = new HashSet<Object>();
+      for (Map.Entry<Object, Location> e : index.entrySet()) {
+         if (!e.getValue().isExpired(now) && (keysToExclude == null || !keysToExclude.contains(e.getKey()))) {
+            result.add(e.getKey());
+         }
+      }
+      return result;
+   }
+
+   public void store(InternalCacheEntry entry) throws CacheLoaderException {
+      if (trace) log.trace("store(%s)", entry);
+      if (entry == null) return;
+      if (entry.isExpired()) {
+         remove(entry.getKey());
+         return;
+      }
+      byte[] key = marshall(entry.getKey());
+      byte[] value = marshall(entry.toInternalCacheValue());
+      Location previous;
+      appendLock.lock();
+      try {
+         Location location = append(PUT, key, value, nextSequence++, entry.getExpiryTime());
+         previous = index.put(entry.getKey(), location);
+         if (previous != null) {
+            previous.segment.dead += previous.length;
+         }
+      } finally {
+         appendLock.unlock();
+      }
+      if (previous != null) {
+         scheduleCompactionIfNeeded(previous.segment);
+      }
+   }
+
+   public boolean remove(Object key) throws CacheLoaderException {
+      if (trace) log.trace("remove(%s)", key);
+      if (!index.containsKey(key)) {
+         return false;
+      }
+      byte[] keyBytes = marshall(key);
+      Location previous;
+      appendLock.lock();
+      try {
+         previous = index.remove(key);
+         if (previous == null) {
+            return false;
+         }
+         previous.segment.dead += previous.length;
+         // older records of the key can only be in the segment of the latest one or in older segments
+         append(REMOVE, keyBytes, EMPTY, nextSequence++, previous.segment.id);
+      } finally {
+         appendLock.unlock();
+      }
+      scheduleCompactionIfNeeded(previous.segment);
+      return !previous.isExpired(System.currentTimeMillis());
+   }
+
+   public void clear() throws CacheLoaderException {
+      appendLock.lock();
+      segmentsLock.writeLock().lock();
+      try {
+         index.clear();
+         for (LogSegment segment : segments.values()) {
+            segment.close();
+            if (!segment.file.delete()) {
+               log.warn("Had problems removing file %s", segment.file);
+            }
+         }
+         segments.clear();
+         active = newSegment();
+      } catch (IOException e) {
+         throw new CacheLoaderException("Unable to clear segments in " + root, e);
+      } finally {
+         segmentsLock.writeLock().unlock();
+         appendLock.unlock();
+      }
+   }
+
+   /**
+    * Expired entries are only dropped from the index: their records are the latest of their keys, so they are
+    * skipped if the segments are replayed, and are turned into tombstones if needed when their segment is compacted.
+    */
+   protected void purgeInternal() throws CacheLoaderException {
+      if (trace) log.trace("purgeInternal()");
+      long now = System.currentTimeMillis();
+      Set<LogSegment> affected = new HashSet<LogSegment>();
+      for (Map.Entry<Object, Location> e : index.entrySet()) {
+         Location location = e.getValue();
+         if (location.isExpired(now)) {
+            appendLock.lock();
+            try {
+               if (index.remove(e.getKey(), location)) {
+                  location.segment.dead += location.length;
+                  affected.add(location.segment);
+               }
+            } finally {
+               appendLock.unlock();
+            }
+         }
+      }
+      for (LogSegment segment : affected) {
+         scheduleCompactionIfNeeded(segment);
+      }
+   }
+
+   public void toStream(ObjectOutput outputStream) throws CacheLoaderException {
+      try {
+         for (Object key : index.keySet()) {
+            InternalCacheEntry entry = load(key);
+            if (entry != null) {
+               marshaller.objectToObjectStream(entry, outputStream);
+            }
+         }
+         marshaller.objectToObjectStream(null, outputStream);
+      } catch (IOException e) {
+         throw new CacheLoaderException("I/O exception while generating stream", e);
+      }
+   }
+
+   public void fromStream(ObjectInput inputStream) throws CacheLoaderException {
+      try {
+         while (true) {
+            InternalCacheEntry entry = (InternalCacheEntry) marshaller.objectFromObjectStream(inputStream);
+            if (entry == null) {
+               break;
+            }
+            store(entry);
+         }
+      } catch (InterruptedException e) {
+         if (log.isDebugEnabled()) log.debug("Interrupted while reading from stream");
+         Thread.currentThread().interrupt();
+      } catch (IOException e) {
+         throw new CacheLoaderException("I/O error", e);
+      } catch (ClassNotFoundException e) {
+         throw new CacheLoaderException("Unexpected exception", e);
+      }
+   }
+
+   /**
+    * Compacts every segment, other than the one being appended to, whose ratio of dead records exceeds the compaction
+    * threshold. Compactions are otherwise run in the background as records die.
+    */
+   public void compact() throws CacheLoaderException {
+      for (LogSegment segment : snapshotSegments()) {
+         if (isCompactable(segment)) {
+            compact(segment);
+         }
+      }
+   }
+
+   // ----- reads
+
+   /**
+    * @return the entry, or null if the segment of the location has been closed in the meantime
+    */
+   private InternalCacheEntry read(Object key, Location location) throws CacheLoaderException {
+      ByteBuffer record = ByteBuffer.allocate(location.length);
+      segmentsLock.readLock().lock();
+      try {
+         if (location.segment.isClosed()) {
+            return null;
+         }
+         location.segment.read(record, location.offset);
+      } catch (IOException e) {
+         throw new CacheLoaderException("Unable to read entry " + key + " from " + location.segment.file, e);
+      } finally {
+         segmentsLock.readLock().unlock();
+      }
+      int keyLength = record.getInt(9);
+      int valueOffset = HEADER_SIZE + keyLength;
+      InternalCacheValue value = (InternalCacheValue) unmarshall(record.array(), valueOffset, location.length - valueOffset);
+      return value.toInternalCacheEntry(key);
+   }
+
+   // ----- writes, called with the append lock held
+
+   private Location append(byte type, byte[] key, byte[] value, long sequence, long expiryOrOrigin) throws CacheLoaderException {
+      int length = HEADER_SIZE + key.length + value.length;
+      ByteBuffer record = ByteBuffer.allocate(length);
+      record.putInt(length);
+      record.putInt(0);
+      record.put(type);
+      record.putInt(key.length);
+      record.putLong(sequence);
+      record.putLong(expiryOrOrigin);
+      record.put(key);
+      record.put(value);
+      record.putInt(4, checksum(record.array(), length));
+      record.flip();
+      if (type == PUT) {
+         return appendRecord(record, sequence, expiryOrOrigin);
+      }
+      return appendTombstone(record, sequence, expiryOrOrigin);
+   }
+
+   private Location appendTombstone(ByteBuffer record, long sequence, long origin) throws CacheLoaderException {
+      Location location = appendRecord(record, sequence, -1);
+      location.segment.addTombstone(origin, location.length);
+      return location;
+   }
+
+   private Location appendRecord(ByteBuffer record, long sequence, long expiryTime) throws CacheLoaderException {
+      int length = record.remaining();
+      try {
+         if (active.size > 0 && active.size + length > config.getMaxSegmentSize()) {
+            LogSegment full = active;
+            active = newSegment();
+            scheduleCompactionIfNeeded(full);
+         }
+         long offset = active.append(record);
+         return new Location(active, offset, length, sequence, expiryTime);
+      } catch (IOException e) {
+         throw new CacheLoaderException("Unable to append to " + active.file, e);
+      }
+   }
+
+   private LogSegment newSegment() throws IOException {
+      LogSegment segment = new LogSegment(nextSegmentId, new File(root, nextSegmentId + SEGMENT_SUFFIX));
+      nextSegmentId++;
+      segments.put(segment.id, segment);
+      return segment;
+   }
+
+   // ----- compaction
+
+   private boolean isCompactable(LogSegment segment) {
+      return segment != active && !segment.isClosed() && segment.deadRatio() >= config.getCompactionThreshold();
+   }
+
+   private void scheduleCompactionIfNeeded(final LogSegment segment) {
+      if (isCompactable(segment) && compactor != null && segment.compactionScheduled.compareAndSet(false, true)) {
+         compactor.execute(new Runnable() {
+            public void run() {
+               try {
+                  compact(segment);
+               } catch (Exception e) {
+                  log.warn("Problems compacting segment " + segment.file, e);
+               } finally {
+                  segment.compactionScheduled.set(false);
+               }
+            }
+         });
+      }
+   }
+
+   private void compact(LogSegment segment) throws CacheLoaderException {
+      if (trace) log.trace("Compacting %s", segment);
+      long offset = 0;
+      long size = segment.size;
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (offset < size) {
+         if (segment.isClosed() || compactor.isShutdown()) {
+            return;
+         }
+         ByteBuffer record;
+         try {
+            header.clear();
+            segment.read(header, offset);
+            record = ByteBuffer.allocate(header.getInt(0));
+            segment.read(record, offset);
+         } catch (IOException e) {
+            if (segment.isClosed()) {
+               // cleared or stopped in the meantime
+               return;
+            }
+            throw new CacheLoaderException("Unable to read record at " + offset + " in " + segment.file, e);
+         }
+         compactRecord(segment, offset, record);
+         offset += record.limit();
+      }
+
+      appendLock.lock();
+      segmentsLock.writeLock().lock();
+      try {
+         if (segment.isClosed()) {
+            return;
+         }
+         segments.remove(segment.id);
+         segment.close();
+         if (!segment.file.delete()) {
+            log.warn("Had problems removing file %s", segment.file);
+         }
+         retireTombstones();
+      } catch (IOException e) {
+         throw new CacheLoaderException("Unable to close " + segment.file, e);
+      } finally {
+         segmentsLock.writeLock().unlock();
+         appendLock.unlock();
+      }
+      if (trace) log.trace("Compacted %s", segment);
+   }
+
+   private void compactRecord(LogSegment segment, long offset, ByteBuffer record) throws CacheLoaderException {
+      byte type = record.get(8);
+      int keyLength = record.getInt(9);
+      long sequence = record.getLong(13);
+      long expiryOrOrigin = record.getLong(21);
+      Object key = unmarshall(record.array(), HEADER_SIZE, keyLength);
+      appendLock.lock();
+      try {
+         if (segment.isClosed()) {
+            return;
+         }
+         Location current = index.get(key);
+         if (type == PUT) {
+            if (current != null && current.segment == segment && current.offset == offset) {
+               // live record, moved as is
+               record.rewind();
+               index.put(key, appendRecord(record, sequence, expiryOrOrigin));
+            } else if (current == null && expiryOrOrigin > -1 && expiryOrOrigin < System.currentTimeMillis()
+                  && hasOtherSegmentUpTo(segment.id, segment)) {
+               // the record may be the latest of a key purged on expiry, which left no tombstone for the records of
+               // the key older segments may hold
+               byte[] keyBytes = new byte[keyLength];
+               System.arraycopy(record.array(), HEADER_SIZE, keyBytes, 0, keyLength);
+               append(REMOVE, keyBytes, EMPTY, sequence, segment.id);
+            }
+         } else if (current == null && hasOtherSegmentUpTo(expiryOrOrigin, segment)) {
+            // tombstone still shadowing records in older segments, unless the key was stored again since
+            record.rewind();
+            appendTombstone(record, sequence, expiryOrOrigin);
+         }
+      } finally {
+         appendLock.unlock();
+      }
+   }
+
+   /**
+    * @return true if a segment other than {@code compacted} with an id lower than or equal to {@code segmentId} exists
+    */
+   private boolean hasOtherSegmentUpTo(long segmentId, LogSegment compacted) {
+      for (Integer id : segments.keySet()) {
+         if (id > segmentId) {
+            return false;
+         }
+         if (id != compacted.id) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private void retireTombstones() {
+      if (segments.isEmpty()) {
+         return;
+      }
+      long oldest = segments.firstKey();
+      for (LogSegment segment : segments.values()) {
+         if (segment.retireTombstones(oldest)) {
+            scheduleCompactionIfNeeded(segment);
+         }
+      }
+   }
+
+   // ----- startup and shutdown
+
+   private void openSegments() throws IOException {
+      File[] files = root.listFiles(new FilenameFilter() {
+         public boolean accept(File dir, String name) {
+            return name.endsWith(SEGMENT_SUFFIX);
+         }
+      });
+      segments.clear();
+      active = null;
+      nextSegmentId = 0;
+      nextSequence = 0;
+      if (files == null) {
+         return;
+      }
+      for (File file : files) {
+         String name = file.getName();
+         int id;
+         try {
+            id = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+         } catch (NumberFormatException e) {
+            log.warn("Ignoring unexpected file %s", file);
+            continue;
+         }
+         segments.put(id, new LogSegment(id, file));
+         nextSegmentId = Math.max(nextSegmentId, id + 1);
+      }
+      if (!segments.isEmpty()) {
+         active = segments.lastEntry().getValue();
+      }
+   }
+
+   private void closeSegments() {
+      for (LogSegment segment : segments.values()) {
+         try {
+            segment.sync();
+            segment.close();
+         } catch (IOException e) {
+            log.warn("Problems closing file %s", segment.file, e);
+         }
+      }
+      segments.clear();
+      active = null;
+   }
+
+   private List<LogSegment> snapshotSegments() {
+      appendLock.lock();
+      try {
+         return new ArrayList<LogSegment>(segments.values());
+      } finally {
+         appendLock.unlock();
+      }
+   }
+
+   /**
+    * Rebuilds the index from the records of all segments. A put is applied if its sequence number is greater than the
+    * one of the record indexed for the key and of any tombstone seen for it, since compaction may copy records after
+    * later ones.
+    */
+   private void replaySegments() throws IOException, CacheLoaderException {
+      if (segments.isEmpty()) {
+         return;
+      }
+      log.info("Rebuilding index of %s from %s segments", root, segments.size());
+      Map<Object, Long> tombstones = new HashMap<Object, Long>();
+      for (LogSegment segment : segments.values()) {
+         long offset = 0;
+         ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+         while (offset < segment.size) {
+            ByteBuffer record = readValidRecord(segment, offset, header);
+            if (record == null) {
+               log.warn("Truncating %s at %s, found an incomplete or corrupt record", segment.file, offset);
+               segment.truncate(offset);
+               break;
+            }
+            byte type = record.get(8);
+            int keyLength = record.getInt(9);
+            long sequence = record.getLong(13);
+            long expiryOrOrigin = record.getLong(21);
+            int length = record.limit();
+            Object key = unmarshall(record.array(), HEADER_SIZE, keyLength);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            Location current = index.get(key);
+            if (type == PUT) {
+               Long removed = tombstones.get(key);
+               if ((current == null || current.sequence < sequence) && (removed == null || removed < sequence)) {
+                  index.put(key, new Location(segment, offset, length, sequence, expiryOrOrigin));
+                  if (current != null) current.segment.dead += current.length;
+               } else {
+                  segment.dead += length;
+               }
+            } else {
+               if (current != null && current.sequence < sequence) {
+                  index.remove(key);
+                  current.segment.dead += current.length;
+               }
+               Long removed = tombstones.get(key);
+               if (removed == null || removed < sequence) {
+                  tombstones.put(key, sequence);
+               }
+               segment.addTombstone(expiryOrOrigin, length);
+            }
+            offset += length;
+         }
+      }
+      long now = System.currentTimeMillis();
+      for (Map.Entry<Object, Location> e : index.entrySet()) {
+         Location location = e.getValue();
+         if (location.isExpired(now)) {
+            index.remove(e.getKey());
+            location.segment.dead += location.length;
+         }
+      }
+      retireTombstones();
+   }
+
+   /**
+    * @return the record at the offset, or null if it is truncated or its checksum does not match
+    */
+   private ByteBuffer readValidRecord(LogSegment segment, long offset, ByteBuffer header) throws IOException {
+      if (segment.size - offset < HEADER_SIZE) {
+         return null;
+      }
+      header.clear();
+      segment.read(header, offset);
+      int length = header.getInt(0);
+      if (length < HEADER_SIZE || length > segment.size - offset) {
+         return null;
+      }
+      ByteBuffer record = ByteBuffer.allocate(length);
+      segment.read(record, offset);
+      if (record.getInt(4) != checksum(record.array(), length)) {
+         return null;
+      }
+      return record;
+   }
+
+   private static int checksum(byte[] record, int length) {
+      CRC32 crc = new CRC32();
+      crc.update(record, CRC_START, length - CRC_START);
+      return (int) crc.getValue();
+   }
+
+   private void writeIndexSnapshot() {
+      if (index == null || segments.isEmpty()) {
+         return;
+      }
+      File snapshot = new File(root, INDEX_SNAPSHOT);
+      DataOutputStream out = null;
+      try {
+         out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshot)));
+         out.writeInt(SNAPSHOT_VERSION);
+         out.writeLong(nextSequence);
+         out.writeInt(nextSegmentId);
+         out.writeInt(segments.size());
+         for (LogSegment segment : segments.values()) {
+            out.writeInt(segment.id);
+            out.writeLong(segment.size);
+            out.writeLong(segment.dead);
+            out.writeInt(segment.tombstones.size());
+            for (Map.Entry<Long, Long> tombstone : segment.tombstones.entrySet()) {
+               out.writeLong(tombstone.getKey());
+               out.writeLong(tombstone.getValue());
+            }
+         }
+         for (Map.Entry<Object, Location> e : index.entrySet()) {
+            Location location = e.getValue();
+            byte[] key = marshall(e.getKey());
+            out.writeBoolean(true);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeInt(location.segment.id);
+            out.writeLong(location.offset);
+            out.writeInt(location.length);
+            out.writeLong(location.sequence);
+            out.writeLong(location.expiryTime);
+         }
+         out.writeBoolean(false);
+      } catch (Exception e) {
+         log.warn("Unable to write index snapshot, the index will be rebuilt from the segments on startup", e);
+         Util.close(out);
+         out = null;
+         snapshot.delete();
+      } finally {
+         Util.close(out);
+      }
+   }
+
+   /**
+    * Reads the index snapshot written on the last clean shutdown, if any, and deletes it so that the segments are
+    * replayed if the store is not stopped cleanly this time.
+    *
+    * @return true if the index was read from the snapshot
+    */
+   private boolean readIndexSnapshot() {
+      File snapshot = new File(root, INDEX_SNAPSHOT);
+      if (!snapshot.exists()) {
+         return false;
+      }
+      DataInputStream in = null;
+      boolean loaded = false;
+      try {
+         in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)));
+         loaded = readIndexSnapshot(in);
+      } catch (Exception e) {
+         log.warn("Unable to read index snapshot, rebuilding the index from the segments", e);
+      } finally {
+         Util.close(in);
+         if (!snapshot.delete()) {
+            log.warn("Had problems removing file %s", snapshot);
+         }
+      }
+      if (!loaded) {
+         // discard anything read from an unusable snapshot
+         index.clear();
+         for (LogSegment segment : segments.values()) {
+            segment.dead = 0;
+            segment.tombstones.clear();
+         }
+         nextSequence = 0;
+      }
+      return loaded;
+   }
+
+   private boolean readIndexSnapshot(DataInputStream in) throws IOException, CacheLoaderException {
+      if (in.readInt() != SNAPSHOT_VERSION) {
+         return false;
+      }
+      nextSequence = in.readLong();
+      nextSegmentId = Math.max(nextSegmentId, in.readInt());
+      int segmentCount = in.readInt();
+      if (segmentCount != segments.size()) {
+         return false;
+      }
+      for (int i = 0; i < segmentCount; i++) {
+         LogSegment segment = segments.get(in.readInt());
+         if (segment == null || segment.size != in.readLong()) {
+            return false;
+         }
+         segment.dead = in.readLong();
+         for (int j = in.readInt(); j > 0; j--) {
+            segment.tombstones.put(in.readLong(), in.readLong());
+         }
+      }
+      while (in.readBoolean()) {
+         byte[] key = new byte[in.readInt()];
+         in.readFully(key);
+         LogSegment segment = segments.get(in.readInt());
+         if (segment == null) {
+            return false;
+         }
+         index.put(unmarshall(key, 0, key.length),
+                   new Location(segment, in.readLong(), in.readInt(), in.readLong(), in.readLong()));
+      }
+      return true;
+   }
+
+   // ----- marshalling
+
+   private byte[] marshall(Object o) throws CacheLoaderException {
+      try {
+         return marshaller.objectToByteBuffer(o);
+      } catch (IOException e) {
+         throw new CacheLoaderException("Unable to marshall " + o, e);
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new CacheLoaderException("Interrupted while marshalling " + o, e);
+      }
+   }
+
+   private Object unmarshall(byte[] bytes, int offset, int length) throws CacheLoaderException {
+      try {
+         return marshaller.objectFromByteBuffer(bytes, offset, length);
+      } catch (Exception e) {
+         throw new CacheLoaderException("Unable to unmarshall record", e);
+      }
+   }
+
+   /**
+    * Location of the latest record of a key.
+    */
+   static final class Location {
+      final LogSegment segment;
+      final long offset;
+      final int length;
+      final long sequence;
+      final long expiryTime;
+
+      Location(LogSegment segment, long offset, int length, long sequence, long expiryTime) {
+         this.segment = segment;
+         this.offset = offset;
+         this.length = length;
+         this.sequence = sequence;
+         this.expiryTime = expiryTime;
+      }
+
+      boolean isExpired(long now) {
+         return expiryTime > -1 && now > expiryTime;
+      }
+   }
+}
@@ -0,0 +1,64 @@
+package org.infinispan.loaders.file;
+
+import org.infinispan.loaders.AbstractCacheStoreConfig;
+
+/**
+ * Configures {@link org.infinispan.loaders.file.LogFileCacheStore}.
+ * <p/>
+ *    <ul>
+ *       <li><tt>location</tt> - a location on disk where the store writes its segment files.  This defaults to
+ * <tt>Infinispan-LogFileCacheStore</tt> in the current working directory.</li>
+ *       <li><tt>purgeSynchronously</tt> - whether {@link org.infinispan.loaders.CacheStore#purgeExpired()} calls happen
+ * synchronously or not.  By default, this is set to <tt>false</tt>.</li>
+ *       <li><tt>maxSegmentSize</tt> - the size in bytes beyond which the segment file being appended to is closed and
+ * a new one is started.  Smaller segments are compacted sooner and faster, but lead to more open files.  By default,
+ * this is set to <tt>67108864</tt> (64MB).</li>
+ *       <li><tt>compactionThreshold</tt> - the ratio of bytes taken by removed, overwritten or expired entries in a
+ * segment beyond which the live entries of the segment are copied to the current segment and the segment file is
+ * deleted.  By default, this is set to <tt>0.5</tt>.</li>
+ *    </ul>
+ *
+ * @since 5.0
+ */
+public class LogFileCacheStoreConfig extends AbstractCacheStoreConfig {
+
+   private static final long serialVersionUID = -2953640478741473427L;
+
+   String location = "Infinispan-LogFileCacheStore";
+   private int maxSegmentSize = 64 * 1024 * 1024;
+   private double compactionThreshold = 0.5;
+
+   public LogFileCacheStoreConfig() {
+      setCacheLoaderClassName(LogFileCacheStore.class.getName());
+   }
+
+   public String getLocation() {
+      return location;
+   }
+
+   public void setLocation(String location) {
+      testImmutability("location");
+      this.location = location;
+   }
+
+   public int getMaxSegmentSize() {
+      return maxSegmentSize;
+   }
+
+   public void setMaxSegmentSize(int maxSegmentSize) {
+      testImmutability("maxSegmentSize");
+      this.maxSegmentSize = maxSegmentSize;
+   }
+
+   public double getCompactionThreshold() {
+      return compactionThreshold;
+   }
+
+   public void setCompactionThreshold(double compactionThreshold) {
+      testImmutability("compactionThreshold");
+      if (compactionThreshold <= 0 || compactionThreshold > 1) {
+         throw new IllegalArgumentException("Compaction threshold must be greater than 0 and at most 1, was " + compactionThreshold);
+      }
+      this.compactionThreshold = compactionThreshold;
+   }
+}
@@ -0,0 +1,144 @@
+package org.infinispan.loaders.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An append-only segment file of a {@link LogFileCacheStore}. Records are appended by a single writer at a time, under
+ * the store's append lock, and read concurrently with positional reads on the segment's {@link FileChannel}.
+ *
+ * @since 5.0
+ */
+final class LogSegment {
+
+   final int id;
+   final File file;
+   private RandomAccessFile raf;
+   private volatile FileChannel channel;
+
+   /**
+    * Number of bytes appended to the segment.
+    */
+   volatile long size;
+
+   /**
+    * Number of bytes taken by records that have been overwritten, removed or have expired.
+    */
+   volatile long dead;
+
+   /**
+    * Number of bytes taken by tombstones still counted as live, by the id of the segment holding the record they
+    * removed. Guarded by the append lock of the store.
+    */
+   final TreeMap<Long, Long> tombstones = new TreeMap<Long, Long>();
+
+   final AtomicBoolean compactionScheduled = new AtomicBoolean();
+   private volatile boolean closed;
+
+   LogSegment(int id, File file) throws IOException {
+      this.id = id;
+      this.file = file;
+      this.raf = new RandomAccessFile(file, "rw");
+      this.channel = raf.getChannel();
+      this.size = channel.size();
+   }
+
+   /**
+    * @return the offset the record was written at
+    */
+   long append(ByteBuffer record) throws IOException {
+      long offset = size;
+      long position = offset;
+      while (record.hasRemaining()) {
+         position += channel().write(record, position);
+      }
+      size = position;
+      return offset;
+   }
+
+   void read(ByteBuffer buffer, long position) throws IOException {
+      while (buffer.hasRemaining()) {
+         int read = channel().read(buffer, position);
+         if (read < 0) {
+            throw new IOException("Unexpected end of segment " + file + " at " + position);
+         }
+         position += read;
+      }
+      buffer.flip();
+   }
+
+   void truncate(long newSize) throws IOException {
+      channel().truncate(newSize);
+      size = newSize;
+   }
+
+   void sync() throws IOException {
+      channel().force(false);
+   }
+
+   void addTombstone(long origin, int length) {
+      Long bytes = tombstones.get(origin);
+      tombstones.put(origin, bytes == null ? length : bytes + length);
+   }
+
+   /**
+    * Counts as dead the tombstones that no longer shadow any record, i.e. the ones removing records from segments
+    * older than {@code oldest}, or all of them if this is the oldest segment.
+    *
+    * @return true if any tombstone was retired
+    */
+   boolean retireTombstones(long oldest) {
+      Map<Long, Long> retired = oldest == id ? tombstones : tombstones.headMap(oldest);
+      if (retired.isEmpty()) {
+         return false;
+      }
+      for (Iterator<Long> it = retired.values().iterator(); it.hasNext();) {
+         dead += it.next();
+         it.remove();
+      }
+      return true;
+   }
+
+   double deadRatio() {
+      long s = size;
+      return s == 0 ? 0 : (double) dead / s;
+   }
+
+   /**
+    * Returns the channel of the segment, reopening it if it was closed by the interruption of a thread blocked on it.
+    */
+   private FileChannel channel() throws IOException {
+      FileChannel c = channel;
+      if (!c.isOpen() && !closed) {
+         synchronized (this) {
+            c = channel;
+            if (!c.isOpen() && !closed) {
+               raf = new RandomAccessFile(file, "rw");
+               c = channel = raf.getChannel();
+            }
+         }
+      }
+      return c;
+   }
+
+   boolean isClosed() {
+      return closed;
+   }
+
+   synchronized void close() throws IOException {
+      closed = true;
+      raf.close();
+   }
+
+   @Override
+   public String toString() {
+      return "LogSegment{id=" + id + ", size=" + size + ", dead=" + dead + "}";
+   }
+}
@@ -88,4 +88,7 @@ public interface Ids {
    int XID = 66;
    int XID_DEADLOCK_DETECTING_GLOBAL_TRANSACTION = 67;
    int XID_GLOBAL_TRANSACTION = 68;
+
+   int STATE_CHUNK = 69;
+   int SEGMENTED_CONSISTENT_HASH = 70;
 }
@@ -153,6 +153,24 @@ public class MarshalledValue {
       return raw;
    }
 
+   /**
+    * Returns the serialized form of the wrapped object without forcing serialization.
+    *
+    * @return the raw bytes, or null if the instance has not been serialized yet
+    */
+   public byte[] peekRaw() {
+      return raw;
+   }
+
+   /**
+    * Returns the wrapped object without forcing deserialization.
+    *
+    * @return the instance, or null if it has not been deserialized yet or has been compacted away
+    */
+   public Object peekInstance() {
+      return instance;
+   }
+
    /**
     * Returns the 'cached' instance. Impl note: this method is synchronized so that it synchronizez with the code that
     * nullifies the instance.
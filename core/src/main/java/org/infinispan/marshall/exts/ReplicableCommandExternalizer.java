@@ -37,6 +37,7 @@ import org.infinispan.commands.remote.SingleRpcCommand;
 import org.infinispan.commands.tx.CommitCommand;
 import org.infinispan.commands.tx.PrepareCommand;
 import org.infinispan.commands.tx.RollbackCommand;
+import org.infinispan.commands.tx.TotalOrderPrepareCommand;
 import org.infinispan.commands.write.ClearCommand;
 import org.infinispan.commands.write.EvictCommand;
 import org.infinispan.commands.write.InvalidateCommand;
@@ -116,7 +117,7 @@ public class ReplicableCommandExternalizer extends AbstractExternalizer<Replicab
             StateTransferControlCommand.class, GetKeyValueCommand.class,
             ClusteredGetCommand.class, MultipleRpcCommand.class,
             SingleRpcCommand.class, CommitCommand.class,
-            PrepareCommand.class, RollbackCommand.class,
+            PrepareCommand.class, RollbackCommand.class, TotalOrderPrepareCommand.class,
             ClearCommand.class, EvictCommand.class,
             InvalidateCommand.class, InvalidateL1Command.class,
             PutKeyValueCommand.class, PutMapCommand.class,
@@ -42,8 +42,10 @@ import org.infinispan.container.entries.TransientCacheValue;
 import org.infinispan.container.entries.TransientMortalCacheEntry;
 import org.infinispan.container.entries.TransientMortalCacheValue;
 import org.infinispan.distribution.RemoteTransactionLogDetails;
+import org.infinispan.distribution.StateChunk;
 import org.infinispan.distribution.ch.DefaultConsistentHash;
 import org.infinispan.distribution.ch.NodeTopologyInfo;
+import org.infinispan.distribution.ch.SegmentedConsistentHash;
 import org.infinispan.distribution.ch.TopologyAwareConsistentHash;
 import org.infinispan.distribution.ch.UnionConsistentHash;
 import org.infinispan.io.UnsignedNumeric;
@@ -165,9 +167,11 @@ class ExternalizerTable implements ObjectTable {
       internalExternalizers.add(new UnionConsistentHash.Externalizer());
       internalExternalizers.add(new NodeTopologyInfo.Externalizer());
       internalExternalizers.add(new TopologyAwareConsistentHash.Externalizer());
+      internalExternalizers.add(new SegmentedConsistentHash.Externalizer());
       internalExternalizers.add(new ByteArrayKey.Externalizer());
 
       internalExternalizers.add(new RemoteTransactionLogDetails.Externalizer());
+      internalExternalizers.add(new StateChunk.Externalizer());
       internalExternalizers.add(new SerializableXid.XidExternalizer());
    }
 
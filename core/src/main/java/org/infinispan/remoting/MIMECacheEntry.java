@@ -31,6 +31,13 @@ public class MIMECacheEntry implements Serializable {
      */
     public long lastModified;
 
+
+    /**
+     * The entity tag of the payload, calculated once when the entry is stored rather than on every request. Null for
+     * entries stored without it, whose tag is then calculated from the payload.
+     */
+    public String etag;
+
     public MIMECacheEntry() {}
 
     public MIMECacheEntry(String contentType, byte[] data) {
@@ -34,8 +34,14 @@ public abstract class LocalTransaction extends AbstractCacheTransaction {
    /** mark as volatile as this might be set from the tx thread code on view change*/
    private volatile boolean isMarkedForRollback;
 
+   private volatile TotalOrderManager.Position totalOrderSnapshot;
+
+   private volatile boolean outcomeUnknown;
+
    private final Transaction transaction;
 
+   private final long startTime = System.nanoTime();
+
    public LocalTransaction(Transaction transaction, GlobalTransaction tx) {
       super.tx = tx;
       this.transaction = transaction;
@@ -66,6 +72,14 @@ public abstract class LocalTransaction extends AbstractCacheTransaction {
 	   return remoteLockedNodes;
    }
 
+   /**
+    * @return the time, as per {@link System#nanoTime()}, this transaction was started at on this cache, which is before
+    *         any entry it has read
+    */
+   public long getStartTime() {
+      return startTime;
+   }
+
    public void markForRollback() {
       isMarkedForRollback = true;
    }
@@ -78,6 +92,29 @@ public abstract class LocalTransaction extends AbstractCacheTransaction {
       return transaction;
    }
 
+   /**
+    * @return the last transaction applied in total order when this transaction started, or null if it was not recorded
+    */
+   public TotalOrderManager.Position getTotalOrderSnapshot() {
+      return totalOrderSnapshot;
+   }
+
+   public void setTotalOrderSnapshot(TotalOrderManager.Position totalOrderSnapshot) {
+      this.totalOrderSnapshot = totalOrderSnapshot;
+   }
+
+   /**
+    * Marks a transaction committed in total order that failed once its prepare may have been ordered, so that its
+    * commit reports a heuristic hazard.
+    */
+   public void markOutcomeUnknown() {
+      outcomeUnknown = true;
+   }
+
+   public boolean isOutcomeUnknown() {
+      return outcomeUnknown;
+   }
+
    public BidirectionalMap<Object, CacheEntry> getLookedUpEntries() {
       return (BidirectionalMap<Object, CacheEntry>)
             (lookedUpEntries == null ? InfinispanCollections.emptyBidirectionalMap() : lookedUpEntries);
@@ -0,0 +1,432 @@
+package org.infinispan.transaction;
+
+import org.infinispan.CacheException;
+import org.infinispan.commands.CommandsFactory;
+import org.infinispan.commands.tx.PrepareCommand;
+import org.infinispan.commands.tx.TotalOrderPrepareCommand;
+import org.infinispan.commands.write.ClearCommand;
+import org.infinispan.config.Configuration;
+import org.infinispan.factories.annotations.Inject;
+import org.infinispan.factories.annotations.Start;
+import org.infinispan.factories.annotations.Stop;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachemanagerlistener.CacheManagerNotifier;
+import org.infinispan.notifications.cachemanagerlistener.annotation.ViewChanged;
+import org.infinispan.notifications.cachemanagerlistener.event.ViewChangedEvent;
+import org.infinispan.remoting.responses.Response;
+import org.infinispan.remoting.responses.SuccessfulResponse;
+import org.infinispan.remoting.rpc.ResponseMode;
+import org.infinispan.remoting.rpc.RpcManager;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.remoting.transport.Transport;
+import org.infinispan.remoting.transport.jgroups.SuspectException;
+import org.infinispan.transaction.xa.GlobalTransaction;
+import org.infinispan.util.concurrent.TimeoutException;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Orders the prepares of transactions when {@link Configuration#isTotalOrderCommit()} is enabled.
+ * <p/>
+ * The cluster coordinator acts as the sequencer.  The node running a transaction sends its prepare to the coordinator,
+ * which certifies it against the transactions it ordered since the snapshot the transaction read.  The prepare either
+ * fails with a {@link WriteSkewException}, or is given the next sequence number and broadcast to every node.  Each node
+ * applies the ordered prepares one at a time and in one phase, without acquiring locks, and hands the prepares of its
+ * own transactions over to the threads running them.  As all nodes apply the same transactions in the same order, they
+ * never wait for each other's locks.
+ * <p/>
+ * Each coordinator numbers the transactions it orders from 0, in an epoch named after the view id it took over in.
+ * Once a node has seen the coordinator change, the transactions it starts read from the start of the new epoch, while
+ * transactions that read a snapshot of a previous epoch fail certification.  When the coordinator leaves, transactions
+ * it ordered but that were not applied yet are failed, which can leave inconsistent the nodes that received them and
+ * those that did not.
+ * <p/>
+ * A transaction commits once it has been applied on the node running it: the other nodes apply it asynchronously, in
+ * the same order, so a transaction started on another node right after the commit may not see it yet.  A transaction
+ * failing once its prepare may have been ordered, for instance because the coordinator did not reply in time, may have
+ * been applied on some nodes, so it fails with an {@link UnknownOutcomeException}, which its commit reports as a
+ * heuristic hazard.
+ * <p/>
+ * As transactions are applied when prepared, the cache must be the last resource of the transactions to be prepared.
+ * Writes outside of transactions are not ordered.
+ *
+ * @since 5.0
+ */
+public class TotalOrderManager {
+
+   private static final Log log = LogFactory.getLog(TotalOrderManager.class);
+   private static final boolean trace = log.isTraceEnabled();
+
+   /**
+    * The number of keys the sequencer remembers the last writer of.  Older writes are all assumed to be as recent as
+    * the most recent one forgotten, which can only fail more transactions than necessary.
+    */
+   static final int MAX_TRACKED_KEYS = 100000;
+
+   private Configuration configuration;
+   private RpcManager rpcManager;
+   private CacheManagerNotifier notifier;
+   private CommandsFactory commandsFactory;
+   private ViewChangeListener listener;
+
+   // the sequencer state, only used on the coordinator
+   private final Object sequencerLock = new Object();
+   private int sequencerEpoch = -1;
+   // the view id the current coordinator took over in, or -1 if it was the coordinator from the start
+   private int coordinatorViewId = -1;
+   private long nextSequence;
+   private long forgottenSequence = -1;
+   private final Map<Object, Long> lastWriters = new LinkedHashMap<Object, Long>() {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Object, Long> eldest) {
+         if (size() <= MAX_TRACKED_KEYS) return false;
+         forgottenSequence = eldest.getValue();
+         return true;
+      }
+   };
+
+   // the delivery state, on every node
+   private final BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<Delivery>();
+   private final ConcurrentMap<GlobalTransaction, Turn> turns = new ConcurrentHashMap<GlobalTransaction, Turn>();
+   private volatile Position lastDelivered = Position.NONE;
+   private volatile int minEpoch = -1;
+   private volatile boolean running;
+   private Thread deliveryThread;
+
+   @Inject
+   public void init(Configuration configuration, RpcManager rpcManager, CacheManagerNotifier notifier,
+                    CommandsFactory commandsFactory) {
+      this.configuration = configuration;
+      this.rpcManager = rpcManager;
+      this.notifier = notifier;
+      this.commandsFactory = commandsFactory;
+   }
+
+   @Start
+   public void start() {
+      if (!configuration.isTotalOrderCommit()) return;
+      listener = new ViewChangeListener();
+      notifier.addListener(listener);
+      running = true;
+      deliveryThread = new Thread(new Runnable() {
+         public void run() {
+            deliverAll();
+         }
+      }, "TotalOrderDelivery-" + rpcManager.getTransport().getAddress());
+      deliveryThread.setDaemon(true);
+      deliveryThread.start();
+   }
+
+   @Stop
+   public void stop() {
+      if (!running) return;
+      running = false;
+      notifier.removeListener(listener);
+      deliveryThread.interrupt();
+      for (Turn turn : turns.values())
+         turn.fail(new UnknownOutcomeException("Cache stopped before the transaction was applied"));
+      turns.clear();
+      deliveries.clear();
+   }
+
+   /**
+    * @return the position of the last transaction applied on this node, which is the snapshot transactions starting
+    *         now read from
+    */
+   public Position getLastDelivered() {
+      return lastDelivered;
+   }
+
+   /**
+    * Has the prepare of a local transaction ordered by the coordinator.  The caller must wait for its {@link
+    * Turn#await() turn}, apply the prepare and then mark it {@link Turn#done() done}.
+    *
+    * @param prepare  prepare of the local transaction
+    * @param snapshot the snapshot the transaction read from, or null if it read nothing
+    * @throws WriteSkewException      if a transaction ordered since the snapshot wrote one of the keys the transaction
+    *                                 writes
+    * @throws UnknownOutcomeException if the coordinator did not reply, so that the prepare may have been ordered
+    */
+   public Turn order(PrepareCommand prepare, Position snapshot) {
+      if (snapshot == null) snapshot = lastDelivered;
+      GlobalTransaction gtx = prepare.getGlobalTransaction();
+      Turn turn = new Turn();
+      // register first, the ordered prepare may be delivered before the coordinator replies
+      turns.put(gtx, turn);
+      try {
+         Transport transport = rpcManager.getTransport();
+         int epoch;
+         if (transport.isCoordinator()) {
+            epoch = sequence(prepare, snapshot);
+         } else {
+            Address coordinator = transport.getCoordinator();
+            TotalOrderPrepareCommand command = commandsFactory.buildTotalOrderPrepareCommand(prepare, false,
+                                                                                             snapshot.getEpoch(), snapshot.getSequence());
+            Map<Address, Response> responses;
+            try {
+               responses = rpcManager.invokeRemotely(Collections.singleton(coordinator), command,
+                                                     ResponseMode.SYNCHRONOUS, configuration.getSyncReplTimeout(), false);
+            } catch (TimeoutException e) {
+               throw new UnknownOutcomeException("No reply from " + coordinator + " to " + command, e);
+            } catch (SuspectException e) {
+               throw new UnknownOutcomeException("Coordinator " + coordinator + " left before replying to " + command, e);
+            }
+            Response response = responses.get(coordinator);
+            if (!(response instanceof SuccessfulResponse))
+               throw new CacheException("Unexpected response " + response + " from " + coordinator + " to " + command);
+            epoch = (Integer) ((SuccessfulResponse) response).getResponseValue();
+         }
+         if (!turn.ordered(epoch, minEpoch)) turns.remove(gtx);
+         return turn;
+      } catch (RuntimeException e) {
+         // if the prepare was ordered after all, it is applied like a remote one
+         turns.remove(gtx);
+         turn.abandon();
+         throw e;
+      }
+   }
+
+   /**
+    * Certifies and orders a prepare on the coordinator, and broadcasts it to the other nodes.
+    *
+    * @return the epoch the prepare was ordered in
+    * @throws WriteSkewException if a transaction ordered since the snapshot wrote one of the keys the transaction writes
+    */
+   public int sequence(PrepareCommand prepare, Position snapshot) {
+      synchronized (sequencerLock) {
+         Transport transport = rpcManager.getTransport();
+         if (!transport.isCoordinator())
+            throw new CacheException("Cannot order " + prepare.getGlobalTransaction() + ", " + transport.getAddress() +
+                                           " is not the coordinator");
+         if (sequencerEpoch < 0) {
+            // after a coordinator change, the epoch must be the one the other nodes start reading from
+            sequencerEpoch = coordinatorViewId >= 0 ? coordinatorViewId : transport.getViewId();
+            nextSequence = 0;
+            forgottenSequence = -1;
+            lastWriters.clear();
+            if (log.isDebugEnabled()) log.debug("Ordering transactions in epoch %s", sequencerEpoch);
+         }
+         certify(prepare, snapshot);
+
+         long sequence = nextSequence++;
+         if (prepare.containsModificationType(ClearCommand.class)) {
+            lastWriters.clear();
+            forgottenSequence = sequence;
+         } else {
+            for (Object key : prepare.getAffectedKeys()) {
+               // re-insert the key so that the eldest entry is always the least recently written
+               lastWriters.remove(key);
+               lastWriters.put(key, sequence);
+            }
+         }
+         if (trace) log.trace("Ordered %s as %s in epoch %s", prepare.getGlobalTransaction(), sequence, sequencerEpoch);
+
+         // broadcast and deliver while holding the lock, so that all nodes receive the prepares in sequence
+         TotalOrderPrepareCommand command = commandsFactory.buildTotalOrderPrepareCommand(prepare, true, sequencerEpoch, sequence);
+         rpcManager.invokeRemotely(null, command, ResponseMode.ASYNCHRONOUS_WITH_SYNC_MARSHALLING,
+                                   configuration.getSyncReplTimeout(), false);
+         deliver(prepare, sequencerEpoch, sequence);
+         return sequencerEpoch;
+      }
+   }
+
+   private void certify(PrepareCommand prepare, Position snapshot) {
+      GlobalTransaction gtx = prepare.getGlobalTransaction();
+      if (snapshot.getEpoch() >= 0 && snapshot.getEpoch() != sequencerEpoch)
+         throw new WriteSkewException("Transaction " + gtx + " read a snapshot of epoch " + snapshot.getEpoch() +
+                                            ", transactions are now ordered in epoch " + sequencerEpoch);
+      long seen = snapshot.getEpoch() < 0 ? -1 : snapshot.getSequence();
+      if (prepare.containsModificationType(ClearCommand.class)) {
+         if (nextSequence - 1 > seen)
+            throw new WriteSkewException("Transaction " + gtx + " clears the cache, but transactions were committed since " + seen);
+         return;
+      }
+      for (Object key : prepare.getAffectedKeys()) {
+         Long written = lastWriters.get(key);
+         if ((written == null ? forgottenSequence : written) > seen)
+            throw new WriteSkewException("Transaction " + gtx + " writes " + key + ", which was written since " + seen);
+      }
+   }
+
+   /**
+    * Queues an ordered prepare, to be applied once the prepares ordered before it have been.
+    */
+   public void deliver(PrepareCommand prepare, int epoch, long sequence) {
+      if (trace) log.trace("Received %s, ordered as %s in epoch %s", prepare.getGlobalTransaction(), sequence, epoch);
+      deliveries.add(new Delivery(prepare, epoch, sequence));
+   }
+
+   private void deliverAll() {
+      while (running) {
+         Delivery delivery;
+         try {
+            delivery = deliveries.take();
+            if (delivery.prepare == null) {
+               // the prepares the old coordinator ordered and that were not received yet are lost
+               minEpoch = delivery.epoch;
+               failTurnsBefore(delivery.epoch);
+               // transactions starting now read from the start of the new epoch, unless some were already received
+               if (lastDelivered.getEpoch() < delivery.epoch) lastDelivered = new Position(delivery.epoch, -1);
+            } else if (delivery.epoch < minEpoch) {
+               log.warn("Discarding %s, ordered by a coordinator that left", delivery.prepare.getGlobalTransaction());
+            } else {
+               Turn turn = turns.remove(delivery.prepare.getGlobalTransaction());
+               if (turn == null || !turn.run()) apply(delivery.prepare);
+               lastDelivered = new Position(delivery.epoch, delivery.sequence);
+            }
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+         }
+      }
+   }
+
+   private void apply(PrepareCommand prepare) {
+      try {
+         prepare.perform(null);
+      } catch (Throwable t) {
+         log.error("Failed to apply ordered transaction " + prepare.getGlobalTransaction(), t);
+      }
+   }
+
+   private void failTurnsBefore(int epoch) {
+      for (Map.Entry<GlobalTransaction, Turn> e : turns.entrySet()) {
+         if (e.getValue().failIfOrderedBefore(epoch)) {
+            turns.remove(e.getKey());
+            if (log.isDebugEnabled()) log.debug("%s was ordered by a coordinator that left", e.getKey());
+         }
+      }
+   }
+
+   /**
+    * A position in the total order.
+    */
+   public static final class Position {
+      static final Position NONE = new Position(-1, -1);
+
+      private final int epoch;
+      private final long sequence;
+
+      public Position(int epoch, long sequence) {
+         this.epoch = epoch;
+         this.sequence = sequence;
+      }
+
+      public int getEpoch() {
+         return epoch;
+      }
+
+      public long getSequence() {
+         return sequence;
+      }
+
+      @Override
+      public String toString() {
+         return epoch + ":" + sequence;
+      }
+   }
+
+   /**
+    * The turn of a local transaction to apply its prepare.
+    */
+   public static final class Turn {
+      private boolean ordered, started, completed, abandoned;
+      private int epoch = -1;
+      private CacheException failure;
+
+      /**
+       * Waits until all the transactions ordered before this one have been applied.
+       */
+      public synchronized void await() throws InterruptedException {
+         while (!started && failure == null) wait();
+         if (failure != null) throw failure;
+      }
+
+      /**
+       * Signals that the transaction has been applied, letting the next one proceed.
+       */
+      public synchronized void done() {
+         completed = true;
+         notifyAll();
+      }
+
+      synchronized boolean ordered(int epoch, int minEpoch) {
+         if (epoch < minEpoch) {
+            failure = new UnknownOutcomeException("Transaction ordered by a coordinator that left");
+            return false;
+         }
+         this.ordered = true;
+         this.epoch = epoch;
+         return true;
+      }
+
+      /**
+       * Gives up on applying the transaction locally, which then gets applied like a remote one if it was ordered.
+       */
+      public synchronized void abandon() {
+         abandoned = true;
+         notifyAll();
+      }
+
+      synchronized void fail(CacheException e) {
+         failure = e;
+         notifyAll();
+      }
+
+      synchronized boolean failIfOrderedBefore(int epoch) {
+         if (!ordered || this.epoch >= epoch) return false;
+         fail(new UnknownOutcomeException("Transaction ordered by a coordinator that left"));
+         return true;
+      }
+
+      /**
+       * Lets the transaction proceed and waits for it to be applied.
+       *
+       * @return false if the transaction was abandoned, and its prepare must be applied like a remote one
+       */
+      synchronized boolean run() throws InterruptedException {
+         if (abandoned || failure != null) return false;
+         started = true;
+         notifyAll();
+         while (!completed && !abandoned) wait();
+         return completed;
+      }
+   }
+
+   private static final class Delivery {
+      final PrepareCommand prepare;
+      final int epoch;
+      final long sequence;
+
+      Delivery(PrepareCommand prepare, int epoch, long sequence) {
+         this.prepare = prepare;
+         this.epoch = epoch;
+         this.sequence = sequence;
+      }
+   }
+
+   @Listener
+   public class ViewChangeListener {
+      @ViewChanged
+      public void handleViewChange(ViewChangedEvent e) {
+         List<Address> oldMembers = e.getOldMembers();
+         if (oldMembers == null || oldMembers.isEmpty() || oldMembers.get(0).equals(e.getNewMembers().get(0))) return;
+         if (log.isDebugEnabled()) log.debug("Coordinator changed in view %s, starting a new epoch", e.getViewId());
+         // queue the change while holding the lock, so that it is delivered before the first prepare of the new epoch
+         synchronized (sequencerLock) {
+            sequencerEpoch = -1;
+            coordinatorViewId = e.getViewId();
+            deliveries.add(new Delivery(null, e.getViewId(), -1));
+         }
+      }
+   }
+}
@@ -55,7 +55,9 @@ public class TransactionCoordinator {
          return XA_OK;
       }
 
-      PrepareCommand prepareCommand = commandsFactory.buildPrepareCommand(localTransaction.getGlobalTransaction(), localTransaction.getModifications(), configuration.isOnePhaseCommit());
+      // in total order, the prepare is certified and applied in one phase, the commit only cleans up
+      boolean totalOrder = configuration.isTotalOrderCommit();
+      PrepareCommand prepareCommand = commandsFactory.buildPrepareCommand(localTransaction.getGlobalTransaction(), localTransaction.getModifications(), totalOrder);
       if (trace) log.trace("Sending prepare command through the chain: " + prepareCommand);
 
       LocalTxInvocationContext ctx = icc.createTxInvocationContext();
@@ -71,6 +73,16 @@ public class TransactionCoordinator {
             txTable.localTransactionPrepared(localTransaction);
             return XA_OK;
          }
+      } catch (WriteSkewException e) {
+         if (trace) log.trace("Transaction %s failed certification: %s", localTransaction, e.getMessage());
+         throw new XAException(XAException.XA_RBROLLBACK);
+      } catch (UnknownOutcomeException e) {
+         // the transaction may have been applied on some nodes, so it cannot be rolled back: a prepare cannot report a
+         // heuristic outcome, its commit does
+         log.error("Outcome of transaction " + localTransaction.getGlobalTransaction() + " unknown", e);
+         localTransaction.markOutcomeUnknown();
+         txTable.localTransactionPrepared(localTransaction);
+         return XA_OK;
       } catch (Throwable e) {
          log.error("Error while processing PrepareCommand", e);
          throw new XAException(XAException.XAER_RMERR);
@@ -89,13 +101,22 @@ public class TransactionCoordinator {
       try {
          LocalTxInvocationContext ctx = icc.createTxInvocationContext();
          ctx.setLocalTransaction(localTransaction);
-         if (configuration.isOnePhaseCommit() || isOnePhase) {
+         if (configuration.isTotalOrderCommit() && !isOnePhase) {
+            if (localTransaction.isOutcomeUnknown()) throw new XAException(XAException.XA_HEURHAZ);
+            if (trace) log.trace("Transaction already applied when prepared in total order");
+         } else if (configuration.isOnePhaseCommit() || isOnePhase) {
             validateNotMarkedForRollback(localTransaction);
 
             if (trace) log.trace("Doing an 1PC prepare call on the interceptor chain");
             PrepareCommand command = commandsFactory.buildPrepareCommand(localTransaction.getGlobalTransaction(), localTransaction.getModifications(), true);
             try {
                invoker.invoke(ctx, command);
+            } catch (WriteSkewException e) {
+               if (trace) log.trace("Transaction %s failed certification: %s", localTransaction, e.getMessage());
+               throw new XAException(XAException.XA_RBROLLBACK);
+            } catch (UnknownOutcomeException e) {
+               log.error("Outcome of transaction " + localTransaction.getGlobalTransaction() + " unknown", e);
+               throw new XAException(XAException.XA_HEURHAZ);
             } catch (Throwable e) {
                log.error("Error while processing 1PC PrepareCommand", e);
                throw new XAException(XAException.XAER_RMERR);
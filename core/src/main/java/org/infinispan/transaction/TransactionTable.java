@@ -48,6 +48,7 @@ import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
 import javax.transaction.Transaction;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -323,6 +324,10 @@ public class TransactionTable {
       return localTransactions.size();
    }
 
+   public Collection<LocalTransaction> getLocalTransactions() {
+      return localTransactions.values();
+   }
+
    public LocalTransaction getLocalTransaction(Transaction tx) {
       return localTransactions.get(tx);
    }
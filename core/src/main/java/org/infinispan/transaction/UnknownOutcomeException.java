@@ -0,0 +1,22 @@
+package org.infinispan.transaction;
+
+import org.infinispan.CacheException;
+
+/**
+ * Thrown when a transaction committed in total order fails once its prepare may have been ordered, so that it may
+ * have been applied on some or all of the nodes.  It can then be neither rolled back nor reported committed.
+ *
+ * @since 5.0
+ */
+public class UnknownOutcomeException extends CacheException {
+
+   private static final long serialVersionUID = -2461290536405361853L;
+
+   public UnknownOutcomeException(String msg) {
+      super(msg);
+   }
+
+   public UnknownOutcomeException(String msg, Throwable cause) {
+      super(msg, cause);
+   }
+}
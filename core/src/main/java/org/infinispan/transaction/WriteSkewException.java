@@ -0,0 +1,18 @@
+package org.infinispan.transaction;
+
+import org.infinispan.CacheException;
+
+/**
+ * Thrown when a transaction writes a key that another transaction wrote after the transaction read its snapshot, so
+ * that committing it would lose the other transaction's update.
+ *
+ * @since 5.0
+ */
+public class WriteSkewException extends CacheException {
+
+   private static final long serialVersionUID = 5380712186362618543L;
+
+   public WriteSkewException(String msg) {
+      super(msg);
+   }
+}
@@ -13,6 +13,9 @@ import java.util.Set;
 /**
  * Wrapper class for byte[] keys.
  *
+ * The array is wrapped as is, without a defensive copy, so it must not be
+ * modified once wrapped.
+ *
  * The class can be marshalled either via its externalizer or via the JVM
  * serialization.  The reason for supporting both methods is to enable
  * third-party libraries to be able to marshall/unmarshall them using standard
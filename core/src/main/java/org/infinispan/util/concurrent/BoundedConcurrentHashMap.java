@@ -46,13 +46,12 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 
 
@@ -237,6 +236,23 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
       final HashEntry<K, V> next;
       volatile Recency state;
 
+      /**
+       * Weight of this entry as computed by the segment's {@link Weigher}. Only read and written while holding
+       * the segment lock; always 0 for maps that are not weight bounded.
+       */
+      int weight;
+
+      /*
+       * Links threading this entry through the doubly linked lists kept by the eviction policy: the
+       * access ordered list of LRU or the stack of LIRS, and the resident HIR queue of LIRS. Lists
+       * are circular around a sentinel entry and a null link means the entry is not in the list.
+       * Only read and written while holding the segment lock.
+       */
+      HashEntry<K, V> stackPrev;
+      HashEntry<K, V> stackNext;
+      HashEntry<K, V> queuePrev;
+      HashEntry<K, V> queueNext;
+
       HashEntry(K key, int hash, HashEntry<K, V> next, V value) {
          this.key = key;
          this.hash = hash;
@@ -245,6 +261,11 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          this.state = Recency.HIR_RESIDENT;
       }
 
+      HashEntry(K key, int hash, HashEntry<K, V> next, V value, int weight) {
+         this(key, hash, next, value);
+         this.weight = weight;
+      }
+
       @Override
       public int hashCode() {
          int result = 17;
@@ -282,6 +303,86 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          return state;
       }
 
+      boolean inStack() {
+         return stackPrev != null;
+      }
+
+      boolean inQueue() {
+         return queuePrev != null;
+      }
+
+      /**
+       * Links this entry into a stack list right after the given entry.
+       */
+      void linkToStackAfter(HashEntry<K, V> e) {
+         stackPrev = e;
+         stackNext = e.stackNext;
+         stackNext.stackPrev = this;
+         e.stackNext = this;
+      }
+
+      void unlinkFromStack() {
+         stackPrev.stackNext = stackNext;
+         stackNext.stackPrev = stackPrev;
+         stackPrev = null;
+         stackNext = null;
+      }
+
+      /**
+       * Links this entry into a queue list right before the given entry.
+       */
+      void linkToQueueBefore(HashEntry<K, V> e) {
+         queueNext = e;
+         queuePrev = e.queuePrev;
+         queuePrev.queueNext = this;
+         e.queuePrev = this;
+      }
+
+      void unlinkFromQueue() {
+         queuePrev.queueNext = queueNext;
+         queueNext.queuePrev = queuePrev;
+         queuePrev = null;
+         queueNext = null;
+      }
+
+      /**
+       * Unlinks all the entries of the stack list this sentinel entry belongs to, in linear time.
+       */
+      void clearStack() {
+         HashEntry<K, V> e = stackNext;
+         while (e != this) {
+            HashEntry<K, V> next = e.stackNext;
+            e.stackPrev = null;
+            e.stackNext = null;
+            e = next;
+         }
+         stackPrev = stackNext = this;
+      }
+
+      /**
+       * Unlinks all the entries of the queue list this sentinel entry belongs to, in linear time.
+       */
+      void clearQueue() {
+         HashEntry<K, V> e = queueNext;
+         while (e != this) {
+            HashEntry<K, V> next = e.queueNext;
+            e.queuePrev = null;
+            e.queueNext = null;
+            e = next;
+         }
+         queuePrev = queueNext = this;
+      }
+
+      /**
+       * Creates a sentinel entry for the lists threaded through entries.
+       */
+      static <K, V> HashEntry<K, V> newSentinel() {
+         HashEntry<K, V> sentinel = new HashEntry<K, V>(null, 0, null, null);
+         sentinel.stackPrev = sentinel.stackNext = sentinel;
+         sentinel.queuePrev = sentinel.queueNext = sentinel;
+         return sentinel;
+      }
+
       @SuppressWarnings("unchecked")
       static <K, V> HashEntry<K, V>[] newArray(int i) {
          return new HashEntry[i];
@@ -319,6 +420,26 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
       void onEntryEviction(Map<K, V> evicted);
    }
 
+   /**
+    * Computes the weight of a map entry, typically an estimation of the number of bytes retained by it. A map
+    * created with a weigher evicts entries, following its eviction algorithm, until the sum of the weights of all
+    * its entries fits within the configured maximum weight.
+    * <p>
+    * Implementations must be thread safe and should be cheap, since they are invoked while holding a segment lock.
+    */
+   public interface Weigher<K, V> {
+      /**
+       * Returns the weight of the given entry. Must not be negative.
+       *
+       * @param key
+       *            key of the entry
+       * @param value
+       *            value of the entry
+       * @return the weight of the entry
+       */
+      int weightOf(K key, V value);
+   }
+
    static class NullEvictionListener<K, V> implements EvictionListener<K, V> {
       @Override
       public void onEntryEviction(Map<K, V> evicted) {
@@ -373,6 +494,17 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
        */
       void onEntryRemove(HashEntry<K, V> e);
 
+      /**
+       * Invoked to notify EvictionPolicy implementation that an entry in Segment has been replaced
+       * by a copy of it, which takes over its position in the eviction order.
+       *
+       * @param oldEntry
+       *            replaced entry in Segment
+       * @param newEntry
+       *            copy of the replaced entry now in Segment
+       */
+      void onEntryReplace(HashEntry<K, V> oldEntry, HashEntry<K, V> newEntry);
+
       /**
        * Invoked to notify EvictionPolicy implementation that all Segment entries have been
        * cleared.
@@ -424,6 +556,11 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          // Do nothing.
       }
 
+      @Override
+      public void onEntryReplace(HashEntry<K, V> oldEntry, HashEntry<K, V> newEntry) {
+         // Do nothing.
+      }
+
       @Override
       public boolean thresholdExpired() {
          return false;
@@ -435,10 +572,93 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
       }
    }
 
+   /**
+    * Lossy, bounded buffer recording accesses to a segment's entries. Entries are offered by
+    * reader threads without holding the segment lock and drained by the eviction policy while
+    * holding it. Recording an access never blocks: when the buffer is full the access is
+    * dropped, which only affects the precision of the eviction order.
+    */
+   static final class AccessBuffer<K, V> {
+      private final AtomicReferenceArray<HashEntry<K, V>> buffer;
+      private final int mask;
+      private final AtomicLong writeCounter = new AtomicLong();
+
+      /**
+       * Only written while holding the segment lock.
+       */
+      private volatile long readCounter;
+
+      AccessBuffer(int minCapacity) {
+         int capacity = 1;
+         while (capacity < minCapacity) {
+            capacity <<= 1;
+         }
+         buffer = new AtomicReferenceArray<HashEntry<K, V>>(capacity);
+         mask = capacity - 1;
+      }
+
+      /**
+       * Records an access. Invoked without holding a lock on Segment.
+       *
+       * @return true if the access was recorded, false if the buffer was full
+       */
+      boolean offer(HashEntry<K, V> e) {
+         for (;;) {
+            long write = writeCounter.get();
+            if (write - readCounter > mask) {
+               return false;
+            }
+            if (writeCounter.compareAndSet(write, write + 1)) {
+               buffer.lazySet((int) write & mask, e);
+               return true;
+            }
+         }
+      }
+
+      /**
+       * Number of recorded but not yet drained accesses.
+       */
+      int size() {
+         return (int) (writeCounter.get() - readCounter);
+      }
+
+      /**
+       * Removes and returns the oldest recorded access, or null if there are none or if its
+       * writer has not published it yet. Call only while holding the segment lock.
+       */
+      HashEntry<K, V> poll() {
+         long read = readCounter;
+         if (read == writeCounter.get()) {
+            return null;
+         }
+         int index = (int) read & mask;
+         HashEntry<K, V> e = buffer.get(index);
+         if (e != null) {
+            buffer.lazySet(index, null);
+            readCounter = read + 1;
+         }
+         return e;
+      }
+
+      /**
+       * Discards all published accesses. Call only while holding the segment lock.
+       */
+      void clear() {
+         while (poll() != null) {
+            continue;
+         }
+      }
+   }
+
    static final class LRU<K, V> implements EvictionPolicy<K, V> {
-      private final ConcurrentLinkedQueue<HashEntry<K, V>> accessQueue;
+      private final AccessBuffer<K, V> accessQueue;
       private final Segment<K,V> segment;
-      private final LinkedList<HashEntry<K, V>> lruQueue;
+      /**
+       * Sentinel of the access ordered list threaded through the entries of the segment; its next
+       * entry is the most recently used and its previous entry the least recently used.
+       */
+      private final HashEntry<K, V> head;
+      private int size;
       private final int maxBatchQueueSize;
       private final int trimDownSize;
       private final float batchThresholdFactor;
@@ -448,8 +668,8 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          this.trimDownSize = (int) (capacity * lf);
          this.maxBatchQueueSize = maxBatchSize > MAX_BATCH_SIZE ? MAX_BATCH_SIZE : maxBatchSize;
          this.batchThresholdFactor = batchThresholdFactor;
-         this.accessQueue = new ConcurrentLinkedQueue<HashEntry<K, V>>();
-         this.lruQueue = new LinkedList<HashEntry<K, V>>();
+         this.accessQueue = new AccessBuffer<K, V>(maxBatchQueueSize * 2);
+         this.head = HashEntry.newSentinel();
       }
 
       @Override
@@ -458,30 +678,39 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          if (isOverflow()) {
             evicted = new HashSet<HashEntry<K, V>>();
          }
-         try {
-            for (HashEntry<K, V> e : accessQueue) {
-               if (lruQueue.remove(e)) {
-                  lruQueue.addFirst(e);
-               }
+         HashEntry<K, V> e;
+         while ((e = accessQueue.poll()) != null) {
+            // accesses to entries removed in the meantime are simply ignored
+            if (e.inStack()) {
+               e.unlinkFromStack();
+               e.linkToStackAfter(head);
             }
-            while (isOverflow()) {
-               HashEntry<K, V> first = lruQueue.getLast();
-               segment.remove(first.key, first.hash, null);
-               evicted.add(first);
+         }
+         while (isOverflow()) {
+            HashEntry<K, V> last = head.stackPrev;
+            segment.remove(last.key, last.hash, null);
+            if (last.inStack()) {
+               // not mapped in the segment anymore, make sure we do not spin on it
+               unlink(last);
             }
-         } finally {
-            accessQueue.clear();
+            evicted.add(last);
          }
          return evicted;
       }
 
       private boolean isOverflow() {
-         return lruQueue.size() > trimDownSize;
+         return size > trimDownSize || (segment.isOverweight() && size > 0);
+      }
+
+      private void unlink(HashEntry<K, V> e) {
+         e.unlinkFromStack();
+         size--;
       }
 
       @Override
       public Set<HashEntry<K, V>> onEntryMiss(HashEntry<K, V> e) {
-         lruQueue.addFirst(e);
+         e.linkToStackAfter(head);
+         size++;
          return Collections.emptySet();
       }
 
@@ -490,7 +719,9 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
        */
       @Override
       public boolean onEntryHit(HashEntry<K, V> e) {
-         accessQueue.add(e);
+         if (!accessQueue.offer(e)) {
+            return true;
+         }
          return accessQueue.size() >= maxBatchQueueSize * batchThresholdFactor;
       }
 
@@ -504,16 +735,23 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
 
       @Override
       public void onEntryRemove(HashEntry<K, V> e) {
-         lruQueue.remove(e);
-         // we could have multiple instances of e in accessQueue; remove them all
-         while (accessQueue.remove(e)) {
-            continue;
+         if (e.inStack()) {
+            unlink(e);
+         }
+      }
+
+      @Override
+      public void onEntryReplace(HashEntry<K, V> oldEntry, HashEntry<K, V> newEntry) {
+         if (oldEntry.inStack()) {
+            newEntry.linkToStackAfter(oldEntry.stackPrev);
+            oldEntry.unlinkFromStack();
          }
       }
 
       @Override
       public void clear() {
-         lruQueue.clear();
+         head.clearStack();
+         size = 0;
          accessQueue.clear();
       }
 
@@ -526,9 +764,18 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
    static final class LIRS<K, V> implements EvictionPolicy<K, V> {
       private final static int MIN_HIR_SIZE = 2;
       private final Segment<K,V> segment;
-      private final ConcurrentLinkedQueue<HashEntry<K, V>> accessQueue;
-      private final LinkedHashMap<K, HashEntry<K, V>> stack;
-      private final LinkedList<HashEntry<K, V>> queue;
+      private final AccessBuffer<K, V> accessQueue;
+      /**
+       * Sentinel of the LIRS stack threaded through the entries of the segment; its next entry is
+       * the top of the stack and its previous entry the bottom.
+       */
+      private final HashEntry<K, V> stack;
+      /**
+       * Sentinel of the queue of resident HIR entries; its next entry is the head of the queue and
+       * its previous entry the tail.
+       */
+      private final HashEntry<K, V> queue;
+      private int queueSize;
       private final int maxBatchQueueSize;
       private final int lirSizeLimit;
       private final int hirSizeLimit;
@@ -548,66 +795,94 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          }
          this.maxBatchQueueSize = maxBatchSize > MAX_BATCH_SIZE ? MAX_BATCH_SIZE : maxBatchSize;
          this.batchThresholdFactor = batchThresholdFactor;
-         this.accessQueue = new ConcurrentLinkedQueue<HashEntry<K, V>>();
-         this.stack = new LinkedHashMap<K, HashEntry<K, V>>();
-         this.queue = new LinkedList<HashEntry<K, V>>();
+         this.accessQueue = new AccessBuffer<K, V>(maxBatchQueueSize * 2);
+         this.stack = HashEntry.newSentinel();
+         this.queue = HashEntry.newSentinel();
       }
 
       @Override
       public Set<HashEntry<K, V>> execute() {
          Set<HashEntry<K, V>> evicted = new HashSet<HashEntry<K, V>>();
-         try {
-            for (HashEntry<K, V> e : accessQueue) {
-               if (present(e)) {
-                  if (e.recency() == Recency.LIR_RESIDENT) {
-                     handleLIRHit(e, evicted);
-                  } else if (e.recency() == Recency.HIR_RESIDENT) {
-                     handleHIRHit(e, evicted);
-                  }
+         HashEntry<K, V> e;
+         while ((e = accessQueue.poll()) != null) {
+            if (present(e)) {
+               if (e.recency() == Recency.LIR_RESIDENT) {
+                  handleLIRHit(e, evicted);
+               } else if (e.recency() == Recency.HIR_RESIDENT) {
+                  handleHIRHit(e, evicted);
                }
             }
-            removeFromSegment(evicted);
-         } finally {
-            accessQueue.clear();
          }
+         removeFromSegment(evicted);
+         trimToWeight(evicted);
          return evicted;
       }
 
+      /**
+       * Evicts resident HIR entries first and then the bottommost LIR entries until the segment no
+       * longer exceeds its maximum weight.
+       */
+      private void trimToWeight(Set<HashEntry<K, V>> evicted) {
+         while (segment.isOverweight()) {
+            HashEntry<K, V> victim;
+            if (queueSize > 0) {
+               victim = queue.queueNext;
+            } else if (stack.stackPrev != stack) {
+               victim = stack.stackPrev;
+            } else {
+               break;
+            }
+            segment.remove(victim.key, victim.hash, null);
+            // make sure we always progress, even if the victim was no longer mapped in the segment
+            onEntryRemove(victim);
+            evicted.add(victim);
+         }
+      }
+
       private void handleHIRHit(HashEntry<K, V> e, Set<HashEntry<K, V>> evicted) {
-         boolean inStack = stack.containsKey(e.key);
+         boolean inStack = e.inStack();
          if (inStack) {
-            stack.remove(e.key);
+            e.unlinkFromStack();
          }
 
          // first put on top of the stack
-         stack.put(e.key, e);
+         e.linkToStackAfter(stack);
 
+         removeFromQueue(e);
          if (inStack) {
-            queue.remove(e);
             e.transitionToLIRResident();
             switchBottomostLIRtoHIRAndPrune(evicted);
          } else {
-            queue.remove(e);
-            queue.addLast(e);
+            addToQueue(e);
          }
       }
 
       private void handleLIRHit(HashEntry<K, V> e, Set<HashEntry<K, V>> evicted) {
-         stack.remove(e.key);
-         stack.put(e.key, e);
-         for (Iterator<HashEntry<K, V>> i = stack.values().iterator(); i.hasNext();) {
-            HashEntry<K, V> next = i.next();
-            if (next.recency() == Recency.LIR_RESIDENT) {
-               break;
-            } else {
-               i.remove();
-               evicted.add(next);
-            }
+         e.unlinkFromStack();
+         e.linkToStackAfter(stack);
+         HashEntry<K, V> next = stack.stackPrev;
+         while (next != stack && next.recency() != Recency.LIR_RESIDENT) {
+            HashEntry<K, V> up = next.stackPrev;
+            next.unlinkFromStack();
+            evicted.add(next);
+            next = up;
          }
       }
 
       private boolean present(HashEntry<K, V> e) {
-         return stack.containsKey(e.key) || queue.contains(e);
+         return e.inStack() || e.inQueue();
+      }
+
+      private void addToQueue(HashEntry<K, V> e) {
+         e.linkToQueueBefore(queue);
+         queueSize++;
+      }
+
+      private void removeFromQueue(HashEntry<K, V> e) {
+         if (e.inQueue()) {
+            e.unlinkFromQueue();
+            queueSize--;
+         }
       }
 
       @Override
@@ -617,23 +892,27 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          if (currentLIRSize + 1 < lirSizeLimit) {
             currentLIRSize++;
             e.transitionToLIRResident();
-            stack.put(e.key, e);
+            e.linkToStackAfter(stack);
          } else {
-            if (queue.size() < hirSizeLimit) {
-               queue.addLast(e);
+            if (queueSize < hirSizeLimit) {
+               addToQueue(e);
             } else {
-               boolean inStack = stack.containsKey(e.key);
-               HashEntry<K, V> first = queue.removeFirst();
+               boolean inStack = e.inStack();
+               HashEntry<K, V> first = queue.queueNext;
+               removeFromQueue(first);
                first.transitionHIRResidentToHIRNonResident();
 
-               stack.put(e.key, e);
+               if (inStack) {
+                  e.unlinkFromStack();
+               }
+               e.linkToStackAfter(stack);
 
                evicted = new HashSet<HashEntry<K, V>>();
                if (inStack) {
                   e.transitionToLIRResident();
                   switchBottomostLIRtoHIRAndPrune(evicted);
                } else {
-                  queue.addLast(e);
+                  addToQueue(e);
                   evicted.add(first);
                }
                // evict from segment
@@ -651,21 +930,23 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
 
       private void switchBottomostLIRtoHIRAndPrune(Set<HashEntry<K, V>> evicted) {
          boolean seenFirstLIR = false;
-         for (Iterator<HashEntry<K, V>> i = stack.values().iterator(); i.hasNext();) {
-            HashEntry<K, V> next = i.next();
+         HashEntry<K, V> next = stack.stackPrev;
+         while (next != stack) {
+            HashEntry<K, V> up = next.stackPrev;
             if (next.recency() == Recency.LIR_RESIDENT) {
                if (!seenFirstLIR) {
                   seenFirstLIR = true;
-                  i.remove();
+                  next.unlinkFromStack();
                   next.transitionLIRResidentToHIRResident();
-                  queue.addLast(next);
+                  addToQueue(next);
                } else {
                   break;
                }
             } else {
-               i.remove();
+               next.unlinkFromStack();
                evicted.add(next);
             }
+            next = up;
          }
       }
 
@@ -674,7 +955,9 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
        */
       @Override
       public boolean onEntryHit(HashEntry<K, V> e) {
-         accessQueue.add(e);
+         if (!accessQueue.offer(e)) {
+            return true;
+         }
          return accessQueue.size() >= maxBatchQueueSize * batchThresholdFactor;
       }
 
@@ -688,20 +971,34 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
 
       @Override
       public void onEntryRemove(HashEntry<K, V> e) {
-         HashEntry<K, V> removed = stack.remove(e.key);
-         if (removed != null && removed.recency() == Recency.LIR_RESIDENT) {
-            currentLIRSize--;
+         if (e.inStack()) {
+            e.unlinkFromStack();
+            if (e.recency() == Recency.LIR_RESIDENT) {
+               currentLIRSize--;
+            }
          }
-         queue.remove(e);
-         // we could have multiple instances of e in accessQueue; remove them all
-         while (accessQueue.remove(e)) {
-            continue;
+         removeFromQueue(e);
+      }
+
+      @Override
+      public void onEntryReplace(HashEntry<K, V> oldEntry, HashEntry<K, V> newEntry) {
+         newEntry.state = oldEntry.state;
+         if (oldEntry.inStack()) {
+            newEntry.linkToStackAfter(oldEntry.stackPrev);
+            oldEntry.unlinkFromStack();
+         }
+         if (oldEntry.inQueue()) {
+            newEntry.linkToQueueBefore(oldEntry.queueNext);
+            oldEntry.unlinkFromQueue();
          }
       }
 
       @Override
       public void clear() {
-         stack.clear();
+         stack.clearStack();
+         queue.clearQueue();
+         queueSize = 0;
+         currentLIRSize = 0;
          accessQueue.clear();
       }
 
@@ -795,8 +1092,30 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
 
       transient final EvictionListener<K, V> evictionListener;
 
+      /**
+       * Computes entry weights, or null if this segment is only bounded by its number of entries.
+       */
+      transient final Weigher<? super K, ? super V> weigher;
+
+      /**
+       * The maximum sum of entry weights allowed in this segment.
+       */
+      final long maxWeight;
+
+      /**
+       * The sum of the weights of all entries in this segment. Only written while holding the lock.
+       */
+      transient volatile long weightedSize;
+
       Segment(int cap, float lf, Eviction es, EvictionListener<K, V> listener) {
+         this(cap, lf, es, listener, null, Long.MAX_VALUE);
+      }
+
+      Segment(int cap, float lf, Eviction es, EvictionListener<K, V> listener,
+               Weigher<? super K, ? super V> weigher, long maxWeight) {
          loadFactor = lf;
+         this.weigher = weigher;
+         this.maxWeight = maxWeight;
          eviction = es.make(this, cap, lf);
          evictionListener = listener;
          setTable(HashEntry.<K, V> newArray(cap));
@@ -811,6 +1130,54 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          return evictionListener;
       }
 
+      /**
+       * Returns true if the entries of this segment weigh more than allowed. Call only while holding lock.
+       */
+      boolean isOverweight() {
+         return weigher != null && weightedSize > maxWeight;
+      }
+
+      /**
+       * Computes the weight of an entry. Call only while holding lock.
+       */
+      int weigh(K key, V value) {
+         if (weigher == null) {
+            return 0;
+         }
+         int weight = weigher.weightOf(key, value);
+         if (weight < 0) {
+            throw new IllegalStateException("Weigher returned negative weight " + weight + " for key " + key);
+         }
+         return weight;
+      }
+
+      /**
+       * Sets the value of an existing entry, adjusting the weight of this segment. Call only while holding lock.
+       */
+      void updateValue(HashEntry<K, V> e, V newValue) {
+         if (weigher != null) {
+            int weight = weigh(e.key, newValue);
+            weightedSize += weight - e.weight;
+            e.weight = weight;
+         }
+         e.value = newValue;
+      }
+
+      private Set<HashEntry<K, V>> evictIfOverweight(Set<HashEntry<K, V>> evicted) {
+         if (!isOverweight()) {
+            return evicted;
+         }
+         Set<HashEntry<K, V>> newlyEvicted = eviction.execute();
+         if (newlyEvicted.isEmpty()) {
+            return evicted;
+         } else if (evicted == null || evicted.isEmpty()) {
+            return newlyEvicted;
+         } else {
+            evicted.addAll(newlyEvicted);
+            return evicted;
+         }
+      }
+
       /**
        * Sets table to new HashEntry array.
        * Call only while holding lock or in constructor.
@@ -876,6 +1243,20 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          return null;
       }
 
+      V peek(Object key, int hash) {
+         if (count != 0) { // read-volatile
+            HashEntry<K, V> e = getFirst(hash);
+            while (e != null) {
+               if (e.hash == hash && key.equals(e.key)) {
+                  V v = e.value;
+                  return v != null ? v : readValueUnderLock(e); // recheck
+               }
+               e = e.next;
+            }
+         }
+         return null;
+      }
+
       boolean containsKey(Object key, int hash) {
          if (count != 0) { // read-volatile
             HashEntry<K,V> e = getFirst(hash);
@@ -920,10 +1301,11 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
             boolean replaced = false;
             if (e != null && oldValue.equals(e.value)) {
                replaced = true;
-               e.value = newValue;
+               updateValue(e, newValue);
                if (eviction.onEntryHit(e)) {
                   evicted = attemptEviction(true);
                }
+               evicted = evictIfOverweight(evicted);
             }
             return replaced;
          } finally {
@@ -944,10 +1326,11 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
             V oldValue = null;
             if (e != null) {
                oldValue = e.value;
-               e.value = newValue;
+               updateValue(e, newValue);
                if (eviction.onEntryHit(e)) {
                   evicted = attemptEviction(true);
                }
+               evicted = evictIfOverweight(evicted);
             }
             return oldValue;
          } finally {
@@ -976,8 +1359,9 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
             if (e != null) {
                oldValue = e.value;
                if (!onlyIfAbsent) {
-                  e.value = value;
+                  updateValue(e, value);
                   eviction.onEntryHit(e);
+                  evicted = evictIfOverweight(evicted);
                }
             } else {
                oldValue = null;
@@ -991,7 +1375,9 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
                      first = tab[index];
                   }
                   // add a new entry
-                  tab[index] = new HashEntry<K, V>(key, hash, first, value);
+                  int weight = weigh(key, value);
+                  tab[index] = new HashEntry<K, V>(key, hash, first, value, weight);
+                  weightedSize += weight;
                   // notify a miss
                   Set<HashEntry<K, V>> newlyEvicted = eviction.onEntryMiss(tab[index]);
                   if (!newlyEvicted.isEmpty()) {
@@ -1001,6 +1387,7 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
                         evicted = newlyEvicted;
                      }
                   }
+                  evicted = evictIfOverweight(evicted);
                } else {
                   tab[index] = new HashEntry<K, V>(key, hash, first, value);
                }
@@ -1068,7 +1455,7 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
                      int k = p.hash & sizeMask;
                      HashEntry<K,V> n = newTable[k];
                      newTable[k] = new HashEntry<K,V>(p.key, p.hash,
-                           n, p.value);
+                           n, p.value, p.weight);
                   }
                }
             }
@@ -1103,14 +1490,13 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
 
                   // e was removed
                   eviction.onEntryRemove(e);
+                  weightedSize -= e.weight;
 
                   HashEntry<K, V> newFirst = e.next;
                   for (HashEntry<K, V> p = first; p != e; p = p.next) {
-                     // allow p to be GC-ed
-                     eviction.onEntryRemove(p);
-                     newFirst = new HashEntry<K, V>(p.key, p.hash, newFirst, p.value);
-                     // and notify eviction algorithm about new hash entries
-                     eviction.onEntryMiss(newFirst);
+                     newFirst = new HashEntry<K, V>(p.key, p.hash, newFirst, p.value, p.weight);
+                     // the copy takes the place of p in the eviction order, allowing p to be GC-ed
+                     eviction.onEntryReplace(p, newFirst);
                   }
 
                   tab[index] = newFirst;
@@ -1133,6 +1519,7 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
                }
                ++modCount;
                eviction.clear();
+               weightedSize = 0;
                count = 0; // write-volatile
             } finally {
                unlock();
@@ -1205,10 +1592,49 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
     */
    public BoundedConcurrentHashMap(int capacity, int concurrencyLevel,
          Eviction evictionStrategy, EvictionListener<K, V> evictionListener) {
+      this(capacity, concurrencyLevel, evictionStrategy, evictionListener, null, Long.MAX_VALUE);
+   }
+
+   /**
+    * Creates a new, empty map with the specified maximum capacity, concurrency level, eviction
+    * strategy and an additional bound on the total weight of its entries. Entries are evicted
+    * following the given eviction strategy whenever either the number of elements or the sum of
+    * the weights of the entries of a segment exceeds its share of the configured bounds.
+    *
+    * @param capacity
+    *            is the upper bound capacity for the number of elements in this map
+    *
+    * @param concurrencyLevel
+    *            the estimated number of concurrently updating threads. The implementation performs
+    *            internal sizing to try to accommodate this many threads.
+    *
+    * @param evictionStrategy
+    *            the algorithm used to evict elements from this map
+    *
+    * @param evictionListener
+    *            the evicton listener callback to be notified about evicted elements
+    *
+    * @param weigher
+    *            computes the weight of each entry, or null if the map is only bounded by capacity
+    *
+    * @param maxWeight
+    *            the upper bound for the sum of the weights of all entries in this map
+    *
+    * @throws IllegalArgumentException
+    *             if the initial capacity is negative or the load factor or concurrencyLevel are
+    *             nonpositive, or if a weigher is given along with a nonpositive maxWeight or
+    *             without an eviction strategy.
+    */
+   public BoundedConcurrentHashMap(int capacity, int concurrencyLevel, Eviction evictionStrategy,
+         EvictionListener<K, V> evictionListener, Weigher<? super K, ? super V> weigher, long maxWeight) {
       if (capacity < 0 || concurrencyLevel <= 0) {
          throw new IllegalArgumentException();
       }
 
+      if (weigher != null && (maxWeight <= 0 || evictionStrategy == Eviction.NONE)) {
+         throw new IllegalArgumentException("A weight bounded map requires a positive maxWeight and an eviction strategy");
+      }
+
       concurrencyLevel = Math.min(capacity / 2, concurrencyLevel); // concurrencyLevel cannot be > capacity/2
       concurrencyLevel = Math.max(concurrencyLevel, 1); // concurrencyLevel cannot be less than 1
 
@@ -1248,8 +1674,17 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
          cap <<= 1;
       }
 
+      long segmentMaxWeight = Long.MAX_VALUE;
+      if (weigher != null) {
+         segmentMaxWeight = maxWeight / ssize;
+         if (segmentMaxWeight * ssize < maxWeight) {
+            ++segmentMaxWeight;
+         }
+      }
+
       for (int i = 0; i < this.segments.length; ++i) {
-         this.segments[i] = new Segment<K, V>(cap, DEFAULT_LOAD_FACTOR, evictionStrategy, evictionListener);
+         this.segments[i] = new Segment<K, V>(cap, DEFAULT_LOAD_FACTOR, evictionStrategy, evictionListener,
+                  weigher, segmentMaxWeight);
       }
    }
 
@@ -1412,6 +1847,21 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
       }
    }
 
+   /**
+    * Returns the sum of the weights of all the entries in this map, as computed by the
+    * {@link Weigher} this map was created with. Always 0 for maps that are not weight bounded.
+    * The returned value is an estimate if the map is being concurrently modified.
+    *
+    * @return the weighted size of this map
+    */
+   public long weightedSize() {
+      long sum = 0;
+      for (Segment<K, V> segment : segments) {
+         sum += segment.weightedSize;
+      }
+      return sum;
+   }
+
    /**
     * Returns the value to which the specified key is mapped,
     * or {@code null} if this map contains no mapping for the key.
@@ -1429,6 +1879,17 @@ public class BoundedConcurrentHashMap<K, V> extends AbstractMap<K, V>
       return segmentFor(hash).get(key, hash);
    }
 
+   /**
+    * Returns the value to which the specified key is mapped, like {@link #get(Object)}, but without counting as an
+    * access to the entry for the eviction strategy.
+    *
+    * @throws NullPointerException if the specified key is null
+    */
+   public V peek(Object key) {
+      int hash = hash(key.hashCode());
+      return segmentFor(hash).peek(key, hash);
+   }
+
    /**
     * Tests if the specified object is a key in this table.
     *
@@ -24,6 +24,9 @@ package org.infinispan.util.concurrent.locks;
 import org.infinispan.container.entries.CacheEntry;
 import org.infinispan.context.InvocationContext;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * An interface to deal with all aspects of acquiring and releasing locks for cache entries.
  *
@@ -110,6 +113,17 @@ public interface LockManager {
     */
    void releaseLocks(InvocationContext ctx);
 
+   /**
+    * Sorts keys in the order their locks should be acquired in when several keys are locked at once, so that
+    * invocations locking overlapping sets of keys always acquire the locks they share in the same order and cannot
+    * deadlock on each other.  Keys are ordered by the lock they map to (the lock stripe, with lock striping), so that
+    * keys sharing a lock are adjacent, and otherwise by hash code, natural order and class name.
+    *
+    * @param keys keys to lock
+    * @return a new list with the keys in lock order
+    */
+   List<Object> orderForLocking(Collection<?> keys);
+
    /**
     * Retrieves the number of locks currently held.
     * @return an integer
@@ -23,6 +23,7 @@ package org.infinispan.util.concurrent.locks;
 
 import org.infinispan.config.Configuration;
 import org.infinispan.container.entries.CacheEntry;
+import org.infinispan.container.entries.MVCCEntry;
 import org.infinispan.context.Flag;
 import org.infinispan.context.InvocationContext;
 import org.infinispan.context.InvocationContextContainer;
@@ -44,7 +45,11 @@ import org.rhq.helpers.pluginAnnotations.agent.Metric;
 
 import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import java.util.concurrent.locks.Lock;
@@ -156,6 +161,8 @@ public class LockManagerImpl implements LockManager {
    }
 
    public final boolean possiblyLocked(CacheEntry entry) {
+      // entries modified by an optimistic transaction before it prepares have not been locked
+      if (entry instanceof MVCCEntry && ((MVCCEntry) entry).isLockDeferred()) return false;
       return entry == null || entry.isChanged() || entry.isNull() || entry.isLockPlaceholder();
    }
 
@@ -191,6 +198,40 @@ public class LockManagerImpl implements LockManager {
       return configuration.getConcurrencyLevel();
    }
 
+   public List<Object> orderForLocking(Collection<?> keys) {
+      int size = keys.size();
+      if (size < 2) return new ArrayList<Object>(keys);
+      // compute the lock of every key only once, rather than on each comparison
+      KeyLock[] keyLocks = new KeyLock[size];
+      int i = 0;
+      for (Object key : keys) keyLocks[i++] = new KeyLock(key, lockContainer.getLockId(key));
+      Arrays.sort(keyLocks);
+      List<Object> ordered = new ArrayList<Object>(size);
+      for (KeyLock keyLock : keyLocks) ordered.add(keyLock.key);
+      return ordered;
+   }
+
+   private static final class KeyLock implements Comparable<KeyLock> {
+      final Object key;
+      final int lockId;
+      final int hashCode;
+
+      KeyLock(Object key, int lockId) {
+         this.key = key;
+         this.lockId = lockId;
+         this.hashCode = key.hashCode();
+      }
+
+      @SuppressWarnings("unchecked")
+      public int compareTo(KeyLock other) {
+         if (lockId != other.lockId) return lockId < other.lockId ? -1 : 1;
+         if (hashCode != other.hashCode) return hashCode < other.hashCode ? -1 : 1;
+         Object k1 = key, k2 = other.key;
+         if (k1 instanceof Comparable && k1.getClass() == k2.getClass()) return ((Comparable<Object>) k1).compareTo(k2);
+         return k1.getClass().getName().compareTo(k2.getClass().getName());
+      }
+   }
+
    @ManagedAttribute(description = "The number of exclusive locks that are held.")
    @Metric(displayName = "Number of locks held")
    public int getNumberOfLocksHeld() {
@@ -25,6 +25,7 @@ import net.jcip.annotations.ThreadSafe;
 import org.infinispan.util.logging.Log;
 import org.infinispan.util.logging.LogFactory;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
@@ -168,6 +169,46 @@ public class StripedLock {
       for (Object k : keys) acquireLock(k, exclusive);
    }
 
+   /**
+    * Acquires the locks of all the keys passed in, taking each lock stripe once and in ascending stripe order, so that
+    * threads locking overlapping sets of keys concurrently cannot deadlock each other.  Locks acquired this way must be
+    * released with {@link #releaseLocksInStripeOrder(java.util.Collection, boolean)}.
+    *
+    * @param keys      keys to lock
+    * @param exclusive whether locks are exclusive.
+    */
+   public void acquireLocksInStripeOrder(Collection<?> keys, boolean exclusive) {
+      boolean[] stripes = stripesOf(keys);
+      for (int i = 0; i < stripes.length; i++) {
+         if (stripes[i]) {
+            if (exclusive) sharedLocks[i].writeLock().lock();
+            else sharedLocks[i].readLock().lock();
+         }
+      }
+      if (log.isTraceEnabled()) log.trace((exclusive ? "WL" : "RL") + " acquired for " + keys.size() + " keys");
+   }
+
+   /**
+    * Releases the locks acquired by {@link #acquireLocksInStripeOrder(java.util.Collection, boolean)} for the same
+    * keys.
+    */
+   public void releaseLocksInStripeOrder(Collection<?> keys, boolean exclusive) {
+      boolean[] stripes = stripesOf(keys);
+      for (int i = stripes.length - 1; i >= 0; i--) {
+         if (stripes[i]) {
+            if (exclusive) sharedLocks[i].writeLock().unlock();
+            else sharedLocks[i].readLock().unlock();
+         }
+      }
+      if (log.isTraceEnabled()) log.trace((exclusive ? "WL" : "RL") + " released for " + keys.size() + " keys");
+   }
+
+   private boolean[] stripesOf(Collection<?> keys) {
+      boolean[] stripes = new boolean[sharedLocks.length];
+      for (Object k : keys) stripes[hashToIndex(k)] = true;
+      return stripes;
+   }
+
    /**
     * Returns the total number of locks held by this class.
     */
@@ -33,6 +33,10 @@ public abstract class AbstractPerEntryLockContainer implements LockContainer {
       return lock;
    }
 
+   public final int getLockId(Object key) {
+      return key.hashCode();
+   }
+
    public int getNumLocksHeld() {
       return locks.size();
    }
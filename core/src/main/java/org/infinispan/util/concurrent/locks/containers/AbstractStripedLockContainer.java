@@ -62,6 +62,10 @@ public abstract class AbstractStripedLockContainer implements LockContainer {
       return (hash(object) >>> lockSegmentShift) & lockSegmentMask;
    }
 
+   public final int getLockId(Object key) {
+      return hashToIndex(key);
+   }
+
    /**
     * Returns a hash code for non-null Object x. Uses the same hash code spreader as most other java.util hash tables,
     * except that this uses the string representation of the object passed in.
@@ -31,6 +31,12 @@ public interface LockContainer {
     */
    Lock getLock(Object key);
 
+   /**
+    * @param key object
+    * @return an identifier of the lock for a specific object, the same for all objects sharing that lock
+    */
+   int getLockId(Object key);
+
    /**
     * @return number of locks held
     */
@@ -0,0 +1,99 @@
+package org.infinispan.container;
+
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.container.entries.InternalEntryFactory;
+import org.infinispan.test.AbstractInfinispanTest;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Test(groups = "unit", testName = "container.ExpirationIndexTest")
+public class ExpirationIndexTest extends AbstractInfinispanTest {
+   DefaultDataContainer dc;
+
+   @BeforeMethod
+   public void setUp() {
+      dc = new DefaultDataContainer(16);
+   }
+
+   public void testImmortalEntriesNotIndexed() {
+      for (int i = 0; i < 100; i++) dc.put(i, "v", -1, -1);
+      assert dc.expirationIndex.size() == 0;
+      dc.purgeExpired();
+      assert dc.size() == 100;
+   }
+
+   public void testPurgeRemovesOnlyExpiredEntries() throws InterruptedException {
+      for (int i = 0; i < 10; i++) dc.put("mortal" + i, "v", 0, -1);
+      for (int i = 0; i < 10; i++) dc.put("transient" + i, "v", -1, 0);
+      for (int i = 0; i < 10; i++) dc.put("long" + i, "v", 6000000, 6000000);
+      dc.put("immortal", "v", -1, -1);
+      Thread.sleep(10);
+      dc.purgeExpired();
+      assert dc.size() == 11 : "Expected 11 entries, found " + dc.size();
+      assert dc.containsKey("immortal");
+      for (int i = 0; i < 10; i++) assert dc.containsKey("long" + i);
+      assert dc.expirationIndex.size() == 10 : "Only the entries not yet due should remain indexed";
+   }
+
+   public void testRepeatedPutsIndexedOnce() {
+      for (int i = 0; i < 100; i++) dc.put("k", "v" + i, 6000000, -1);
+      assert dc.expirationIndex.size() == 1;
+      // a shorter lifespan must be indexed again, otherwise the entry would outlive its expiry
+      dc.put("k", "v", 1000, -1);
+      assert dc.expirationIndex.size() == 2;
+   }
+
+   public void testTouchedEntriesAreReindexed() throws InterruptedException {
+      dc.put("k", "v", -1, 1500);
+      long start = System.currentTimeMillis();
+      // keep the entry alive past the tick it was first indexed under
+      while (System.currentTimeMillis() - start < 2 * ExpirationIndex.TICK + 100) {
+         assert dc.get("k") != null;
+         Thread.sleep(100);
+         dc.purgeExpired();
+      }
+      assert dc.containsKey("k");
+      assert dc.expirationIndex.size() == 1;
+   }
+
+   public void testRemovedAndReplacedKeysDropped() throws InterruptedException {
+      dc.put("removed", "v", 0, -1);
+      dc.remove("removed");
+      dc.put("replaced", "v", 0, -1);
+      dc.put("replaced", "v", -1, -1);
+      Thread.sleep(10);
+      dc.purgeExpired();
+      assert dc.size() == 1;
+      assert dc.expirationIndex.size() == 0;
+   }
+
+   public void testEntryStoredWhilePurgedIsIndexed() throws InterruptedException {
+      final ExpirationIndex index = new ExpirationIndex();
+      ConcurrentMap<Object, InternalCacheEntry> entries = new ConcurrentHashMap<Object, InternalCacheEntry>() {
+         boolean stored;
+
+         @Override
+         public InternalCacheEntry get(Object key) {
+            InternalCacheEntry e = super.get(key);
+            if (!stored) {
+               // the entry is stored again, with a later expiry time, while the purge looks at its key
+               stored = true;
+               InternalCacheEntry renewed = InternalEntryFactory.create(key, "v2", 6000000);
+               put(key, renewed);
+               index.onPut(renewed);
+            }
+            return e;
+         }
+      };
+      InternalCacheEntry expiring = InternalEntryFactory.create("k", "v", 0);
+      entries.put("k", expiring);
+      index.onPut(expiring);
+      Thread.sleep(10);
+      assert index.purge(entries, System.currentTimeMillis()) == 0;
+      assert "v2".equals(entries.get("k").getValue());
+      assert index.size() == 1 : "The renewed entry must still be indexed";
+   }
+}
@@ -17,7 +17,7 @@ import java.util.Set;
 
 @Test(groups = "unit", testName = "container.SimpleDataContainerTest")
 public class SimpleDataContainerTest extends AbstractInfinispanTest {
-   DataContainer dc;
+   protected DataContainer dc;
 
    @BeforeMethod
    public void setUp() {
@@ -0,0 +1,159 @@
+package org.infinispan.container.offheap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.infinispan.config.Configuration;
+import org.infinispan.config.ConfigurationException;
+import org.infinispan.container.DataContainer;
+import org.infinispan.container.SimpleDataContainerTest;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.eviction.EvictionManager;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.marshall.TestObjectStreamMarshaller;
+import org.infinispan.util.concurrent.IsolationLevel;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "container.offheap.OffHeapDataContainerTest")
+public class OffHeapDataContainerTest extends SimpleDataContainerTest {
+
+   @Override
+   protected DataContainer createContainer() {
+      OffHeapDataContainer container = new OffHeapDataContainer();
+      container.initialize(new Configuration(), new TestObjectStreamMarshaller(), null);
+      return container;
+   }
+
+   /**
+    * Entries returned by the off-heap container are copies, so the last used stamp is checked on the entries
+    * returned by successive reads rather than on a single instance.
+    */
+   @Override
+   public void testUpdatingLastUsed() throws Exception {
+      long idle = 600000;
+      dc.put("k", "v", -1, -1);
+      InternalCacheEntry ice = dc.get("k");
+      assert ice.getClass().equals(immortaltype());
+      assert ice.getExpiryTime() == -1;
+      dc.put("k", "v", -1, idle);
+      long oldTime = System.currentTimeMillis();
+      Thread.sleep(100); // for time calc granularity
+      ice = dc.get("k");
+      assert ice.getClass().equals(transienttype());
+      assert ice.getExpiryTime() > -1;
+      assert ice.getLastUsed() > oldTime;
+      assert ice.getMaxIdle() == idle;
+      assert ice.getLifespan() == -1;
+
+      oldTime = System.currentTimeMillis();
+      Thread.sleep(100); // for time calc granularity
+      assert dc.peek("k").getLastUsed() < oldTime : "peek should not update the last used stamp";
+      ice = dc.get("k");
+      assert ice.getLastUsed() > oldTime;
+      assert dc.peek("k").getLastUsed() == ice.getLastUsed();
+   }
+
+   public void testOverwriteAndRemove() {
+      for (int i = 0; i < 1000; i++) {
+         dc.put(i % 10, "value" + i, -1, -1);
+      }
+      assert dc.size() == 10;
+      for (int i = 0; i < 10; i++) {
+         assert dc.get(i).getValue().equals("value" + (990 + i));
+      }
+      assert dc.remove(3).getValue().equals("value993");
+      assert dc.remove(3) == null;
+      assert !dc.containsKey(3);
+      assert dc.size() == 9;
+      dc.clear();
+      assert dc.size() == 0;
+      assert dc.get(5) == null;
+   }
+
+   public void testEntriesLargerThanSlab() {
+      OffHeapDataContainer container = new OffHeapDataContainer();
+      container.setSlabSize(1024);
+      container.initialize(new Configuration(), new TestObjectStreamMarshaller(), null);
+      String large = new String(new char[4096]).replace('\0', 'x');
+      for (int i = 0; i < 50; i++) {
+         container.put(i, i % 2 == 0 ? large : "small", -1, -1);
+      }
+      for (int i = 0; i < 50; i++) {
+         assert container.get(i).getValue().equals(i % 2 == 0 ? large : "small");
+      }
+      long allocated = container.getAllocatedBytes();
+      for (int i = 0; i < 50; i += 2) {
+         container.remove(i);
+      }
+      assert container.size() == 25;
+      assert container.getAllocatedBytes() < allocated : "Slabs of removed large entries should be released";
+   }
+
+   public void testEvictionPassivatesEntries() {
+      Configuration cfg = new Configuration();
+      cfg.setConcurrencyLevel(1);
+      cfg.setEvictionStrategy(EvictionStrategy.LRU);
+      cfg.setEvictionMaxEntries(16);
+      final Map<Object, InternalCacheEntry> evicted = new HashMap<Object, InternalCacheEntry>();
+      OffHeapDataContainer container = new OffHeapDataContainer();
+      container.initialize(cfg, new TestObjectStreamMarshaller(), new EvictionManager() {
+         public void processEviction() {
+         }
+
+         public boolean isEnabled() {
+            return true;
+         }
+
+         public void onEntryEviction(Map<Object, InternalCacheEntry> entries) {
+            evicted.putAll(entries);
+         }
+      });
+
+      for (int i = 0; i < 16; i++) {
+         container.put(i, "value" + i, -1, -1);
+      }
+      // let the hand clear the accessed bits, then read the first key so that it survives the next sweep
+      container.put(16, "value16", -1, -1);
+      container.get(1);
+      for (int i = 17; i < 20; i++) {
+         container.put(i, "value" + i, -1, -1);
+      }
+
+      assert container.size() == 16 : "Expected 16 entries, found " + container.size();
+      assert evicted.size() == 4 : "Expected 4 evictions, found " + evicted.keySet();
+      assert container.containsKey(1) : "Recently read entry was evicted";
+      for (Map.Entry<Object, InternalCacheEntry> e : evicted.entrySet()) {
+         assert !container.containsKey(e.getKey());
+         assert e.getValue().getValue().equals("value" + e.getKey());
+      }
+   }
+
+   public void testClearFreesMemory() {
+      OffHeapDataContainer container = new OffHeapDataContainer();
+      container.setSlabSize(1024);
+      container.initialize(new Configuration(), new TestObjectStreamMarshaller(), null);
+      for (int i = 0; i < 100; i++) {
+         container.put(i, "value" + i, -1, -1);
+      }
+      assert container.getAllocatedBytes() > 0;
+      container.clear();
+      assert container.getAllocatedBytes() == 0;
+      // the container remains usable once cleared
+      container.put("k", "v", -1, -1);
+      assert container.get("k").getValue().equals("v");
+   }
+
+   public void testPessimisticWriteSkewCheckRejected() {
+      Configuration cfg = new Configuration();
+      cfg.setDataContainerClass(OffHeapDataContainer.class);
+      cfg.setIsolationLevel(IsolationLevel.REPEATABLE_READ);
+      cfg.setWriteSkewCheck(true);
+      try {
+         cfg.assertValid();
+         assert false : "Entries returned by the off-heap container are copies, which always fail an identity check";
+      } catch (ConfigurationException expected) {
+      }
+      cfg.setOptimisticLocking(true);
+      cfg.assertValid();
+   }
+}
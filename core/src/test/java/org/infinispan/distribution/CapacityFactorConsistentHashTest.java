@@ -0,0 +1,177 @@
+package org.infinispan.distribution;
+
+import org.infinispan.distribution.ch.AbstractWheelConsistentHash;
+import org.infinispan.distribution.ch.ConsistentHash;
+import org.infinispan.distribution.ch.DefaultConsistentHash;
+import org.infinispan.distribution.ch.NodeTopologyInfo;
+import org.infinispan.distribution.ch.SegmentedConsistentHash;
+import org.infinispan.distribution.ch.TopologyAwareConsistentHash;
+import org.infinispan.distribution.ch.TopologyInfo;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.test.AbstractInfinispanTest;
+import org.infinispan.util.hash.MurmurHash3;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Tests that consistent hashes give nodes a share of the keys as per their capacity factors, and find the nodes
+ * exchanging state when such a node joins or leaves.
+ *
+ * @since 5.0
+ */
+@Test(groups = "unit", testName = "distribution.CapacityFactorConsistentHashTest")
+public class CapacityFactorConsistentHashTest extends AbstractInfinispanTest {
+
+   private static final int NUM_NODES = 12;
+   private static final int NUM_KEYS = 20000;
+
+   private List<Address> addresses() {
+      List<Address> addresses = new ArrayList<Address>(NUM_NODES);
+      for (int i = 0; i < NUM_NODES; i++) addresses.add(new TestAddress(i * 1000 + 7));
+      return addresses;
+   }
+
+   /**
+    * The first two nodes have a capacity factor of 4, the others of 1.
+    */
+   private TopologyInfo topologyInfo(List<Address> addresses) {
+      TopologyInfo ti = new TopologyInfo();
+      for (int i = 0; i < addresses.size(); i++) {
+         Address a = addresses.get(i);
+         ti.addNodeTopologyInfo(a, new NodeTopologyInfo("m" + i, "r" + (i % 3), "s" + (i % 2), a, i < 2 ? 4 : 1));
+      }
+      return ti;
+   }
+
+   /**
+    * Same capacity factors, but all nodes in the same site and rack, so that topology awareness does not change the
+    * owners.
+    */
+   private TopologyInfo machineTopologyInfo(List<Address> addresses) {
+      TopologyInfo ti = new TopologyInfo();
+      for (int i = 0; i < addresses.size(); i++) {
+         Address a = addresses.get(i);
+         ti.addNodeTopologyInfo(a, new NodeTopologyInfo("m" + i, "r", "s", a, i < 2 ? 4 : 1));
+      }
+      return ti;
+   }
+
+   private ConsistentHash createConsistentHash(ConsistentHash ch, List<Address> addresses, TopologyInfo ti) {
+      ch.setTopologyInfo(ti);
+      ch.setCaches(new LinkedHashSet<Address>(addresses));
+      return ch;
+   }
+
+   public void testSegmentedOwnershipFollowsCapacity() {
+      List<Address> addresses = addresses();
+      ConsistentHash ch = createConsistentHash(new SegmentedConsistentHash(new MurmurHash3()), addresses,
+                                               topologyInfo(addresses));
+      int large = 0, small = 0;
+      for (int i = 0; i < NUM_KEYS; i++) {
+         int index = addresses.indexOf(ch.locate(i, 1).get(0));
+         if (index < 2) large++; else small++;
+      }
+      double ratio = (large / 2.0) / (small / (NUM_NODES - 2.0));
+      assert ratio > 3 && ratio < 5 : "Nodes with a capacity factor of 4 own " + ratio + " times as many keys";
+   }
+
+   public void testSegmentedAllOwnersFollowCapacity() {
+      List<Address> addresses = addresses();
+      ConsistentHash ch = createConsistentHash(new SegmentedConsistentHash(new MurmurHash3()), addresses,
+                                               topologyInfo(addresses));
+      assertAllOwnersFollowCapacity(ch, addresses);
+   }
+
+   public void testWheelAllOwnersFollowCapacity() {
+      List<Address> addresses = addresses();
+      TopologyInfo ti = machineTopologyInfo(addresses);
+      ConsistentHash ch = createConsistentHash(new DefaultConsistentHash(new MurmurHash3()), addresses, ti);
+      ConsistentHash topologyAware = createConsistentHash(new TopologyAwareConsistentHash(new MurmurHash3()),
+                                                          addresses, ti);
+      assertAllOwnersFollowCapacity(ch, addresses);
+      assertAllOwnersFollowCapacity(topologyAware, addresses);
+      // every position of a node has the owners following it, not the ones following its first position
+      for (int i = 0; i < NUM_KEYS; i++)
+         assert ch.locate(i, 2).equals(topologyAware.locate(i, 2)) : "Owners of " + i + " differ";
+   }
+
+   /**
+    * Counts every owner of each key, not only the first one, so that backups are checked to follow capacity too.
+    */
+   private void assertAllOwnersFollowCapacity(ConsistentHash ch, List<Address> addresses) {
+      int large = 0, small = 0;
+      for (int i = 0; i < NUM_KEYS; i++) {
+         for (Address owner : ch.locate(i, 2)) {
+            if (addresses.indexOf(owner) < 2) large++; else small++;
+         }
+      }
+      double ratio = (large / 2.0) / (small / (NUM_NODES - 2.0));
+      assert ratio > 3 && ratio < 5 : "Nodes with a capacity factor of 4 own " + ratio + " times as many copies";
+   }
+
+   public void testWheelPositionsFollowCapacity() {
+      List<Address> addresses = addresses();
+      TopologyInfo ti = topologyInfo(addresses);
+      AbstractWheelConsistentHash ch = (AbstractWheelConsistentHash) createConsistentHash(
+            new DefaultConsistentHash(new MurmurHash3()), addresses, ti);
+      assert ch.isWeighted();
+
+      // without capacity factors, the topology information does not change the wheel
+      ConsistentHash plain = createConsistentHash(new DefaultConsistentHash(new MurmurHash3()), addresses, null);
+      ConsistentHash unweighted = createConsistentHash(new DefaultConsistentHash(new MurmurHash3()), addresses,
+                                                       new TopologyInfo());
+      assert !((AbstractWheelConsistentHash) unweighted).isWeighted();
+      assert plain.equals(unweighted);
+   }
+
+   public void testDefaultStateTransfer() {
+      testStateTransfer(new DefaultConsistentHash(new MurmurHash3()), new DefaultConsistentHash(new MurmurHash3()));
+   }
+
+   public void testTopologyAwareStateTransfer() {
+      testStateTransfer(new TopologyAwareConsistentHash(new MurmurHash3()),
+                        new TopologyAwareConsistentHash(new MurmurHash3()));
+   }
+
+   public void testSegmentedStateTransfer() {
+      testStateTransfer(new SegmentedConsistentHash(new MurmurHash3()), new SegmentedConsistentHash(new MurmurHash3()));
+   }
+
+   /**
+    * Checks, for a large node and a small one, that the state providers on join hold the keys the node takes over, and
+    * that the state providers and receivers on leave cover the owners of the keys it leaves behind.
+    */
+   private void testStateTransfer(ConsistentHash with, ConsistentHash without) {
+      List<Address> addresses = addresses();
+      TopologyInfo ti = topologyInfo(addresses);
+      createConsistentHash(with, addresses, ti);
+      for (int node : new int[]{0, 5}) {
+         Address a = addresses.get(node);
+         List<Address> others = new ArrayList<Address>(addresses);
+         others.remove(a);
+         ConsistentHash chWithout = createConsistentHash(without, others, ti);
+
+         List<Address> joinProviders = with.getStateProvidersOnJoin(a, 2);
+         List<Address> leaveProviders = with.getStateProvidersOnLeave(a, 2);
+         List<Address> leaveReceivers = with instanceof SegmentedConsistentHash
+               ? ((SegmentedConsistentHash) with).getStateReceiversOnLeave(a, 2)
+               : ((AbstractWheelConsistentHash) with).getStateReceiversOnLeave(a, 2);
+         assert !joinProviders.contains(a) && !leaveProviders.contains(a) && !leaveReceivers.contains(a);
+
+         for (int i = 0; i < NUM_KEYS; i++) {
+            List<Address> owners = with.locate(i, 2);
+            assert owners.size() == 2 && !owners.get(0).equals(owners.get(1)) : "Owners of " + i + " are " + owners;
+            if (!owners.contains(a)) continue;
+            List<Address> ownersWithout = chWithout.locate(i, 2);
+            assert joinProviders.containsAll(ownersWithout) : "Old owners " + ownersWithout + " not in " + joinProviders;
+            for (Address owner : owners)
+               assert owner.equals(a) || leaveProviders.contains(owner) : owner + " not in " + leaveProviders;
+            ownersWithout.removeAll(owners);
+            assert leaveReceivers.containsAll(ownersWithout) : "New owners " + ownersWithout + " not in " + leaveReceivers;
+         }
+      }
+   }
+}
@@ -0,0 +1,174 @@
+package org.infinispan.distribution;
+
+import org.infinispan.Cache;
+import org.infinispan.config.Configuration;
+import org.infinispan.container.DataContainer;
+import org.infinispan.context.Flag;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.test.MultipleCacheManagersTest;
+import org.infinispan.test.TestingUtil;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests that the primary owners of written keys only invalidate the L1 caches of the nodes that fetched them, and counts
+ * the invalidation messages sent per write.
+ *
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "distribution.L1InvalidationTrackingTest")
+public class L1InvalidationTrackingTest extends MultipleCacheManagersTest {
+
+   private static final int NUM_NODES = 6;
+   private static final int THRESHOLD = 2;
+   private static final long L1_LIFESPAN = 5000;
+   private static final long SYNC_REPL_TIMEOUT = 5000;
+
+   private List<Cache<Object, String>> caches;
+
+   @Override
+   protected void createCacheManagers() throws Throwable {
+      Configuration c = getDefaultClusteredConfig(Configuration.CacheMode.DIST_SYNC);
+      c.setNumOwners(2);
+      c.setL1CacheEnabled(true);
+      c.setL1Lifespan(L1_LIFESPAN);
+      c.setL1InvalidationThreshold(THRESHOLD);
+      c.setSyncReplTimeout(SYNC_REPL_TIMEOUT);
+      caches = createClusteredCaches(NUM_NODES, "dist", c);
+      BaseDistFunctionalTest.RehashWaiter.waitForInitRehashToComplete(caches.toArray(new Cache[NUM_NODES]));
+      // invalidations are broadcast until the L1 entries possibly fetched before the last view change have expired
+      Thread.sleep(L1_LIFESPAN + SYNC_REPL_TIMEOUT);
+   }
+
+   @BeforeMethod
+   public void resetStatistics() {
+      for (Cache<Object, String> c : caches) l1Manager(c).resetStatistics();
+   }
+
+   public void testOnlyRequestorsAreInvalidated() {
+      String key = "k1";
+      Cache<Object, String> primary = primaryOwner(key);
+      List<Cache<Object, String>> nonOwners = nonOwners(key);
+      primary.put(key, "v1");
+
+      Cache<Object, String> reader1 = nonOwners.get(0), reader2 = nonOwners.get(1);
+      assert "v1".equals(reader1.get(key));
+      assert "v1".equals(reader2.get(key));
+      assert isInL1(reader1, key) && isInL1(reader2, key);
+
+      primary.put(key, "v2");
+
+      assert !isInL1(reader1, key);
+      assert !isInL1(reader2, key);
+      assert "v2".equals(reader1.get(key));
+      assert "v2".equals(reader2.get(key));
+      assert unicastInvalidations() == 2 : "Expected an invalidation per reader, got " + unicastInvalidations();
+      assert broadcastInvalidations() == 0;
+   }
+
+   public void testWriteWithoutRequestorsSendsNoInvalidation() {
+      String key = "k2";
+      Cache<Object, String> primary = primaryOwner(key);
+      primary.put(key, "v1");
+      primary.put(key, "v2");
+      assert unicastInvalidations() == 0;
+      assert broadcastInvalidations() == 0;
+      assert l1Manager(primary).getSkippedInvalidations() == 2;
+   }
+
+   public void testBroadcastAboveThreshold() {
+      String key = "k3";
+      Cache<Object, String> primary = primaryOwner(key);
+      List<Cache<Object, String>> nonOwners = nonOwners(key);
+      assert nonOwners.size() > THRESHOLD;
+      primary.put(key, "v1");
+      for (Cache<Object, String> c : nonOwners) assert "v1".equals(c.get(key));
+
+      primary.put(key, "v2");
+
+      for (Cache<Object, String> c : nonOwners) assert !isInL1(c, key);
+      assert unicastInvalidations() == 0;
+      assert broadcastInvalidations() == 1;
+   }
+
+   public void testWriterDropsItsOwnL1Entry() {
+      String key = "k4";
+      Cache<Object, String> writer = nonOwners(key).get(0);
+      primaryOwner(key).put(key, "v1");
+      assert "v1".equals(writer.get(key));
+      assert isInL1(writer, key);
+
+      writer.getAdvancedCache().withFlags(Flag.SKIP_REMOTE_LOOKUP).put(key, "v2");
+
+      assert !isInL1(writer, key);
+      assert "v2".equals(writer.get(key));
+      for (Cache<Object, String> c : caches) assert "v2".equals(c.get(key));
+   }
+
+   public void testMessagesPerWrite() {
+      int numKeys = 50;
+      for (int i = 0; i < numKeys; i++) {
+         String key = "mpw" + i;
+         primaryOwner(key).put(key, "v1");
+         // a single node caches each key in L1
+         assert "v1".equals(nonOwners(key).get(0).get(key));
+      }
+      resetStatistics();
+      for (int i = 0; i < numKeys; i++) {
+         String key = "mpw" + i;
+         primaryOwner(key).put(key, "v2");
+      }
+      long messages = unicastInvalidations() + broadcastInvalidations() * (NUM_NODES - 1);
+      log.info("L1 invalidation messages per write: " + ((double) messages / numKeys) + ", against "
+                     + (NUM_NODES - 1) + " when broadcasting");
+      assert messages == numKeys : "Expected one invalidation message per write, got " + messages + " for " + numKeys + " writes";
+      for (int i = 0; i < numKeys; i++) {
+         String key = "mpw" + i;
+         for (Cache<Object, String> c : caches) assert "v2".equals(c.get(key));
+      }
+   }
+
+   private Cache<Object, String> primaryOwner(Object key) {
+      Address primary = dm(caches.get(0)).locate(key).get(0);
+      for (Cache<Object, String> c : caches) {
+         if (c.getCacheManager().getAddress().equals(primary)) return c;
+      }
+      throw new IllegalStateException("No cache for " + primary);
+   }
+
+   private List<Cache<Object, String>> nonOwners(Object key) {
+      List<Address> owners = dm(caches.get(0)).locate(key);
+      List<Cache<Object, String>> nonOwners = new ArrayList<Cache<Object, String>>();
+      for (Cache<Object, String> c : caches) {
+         if (!owners.contains(c.getCacheManager().getAddress())) nonOwners.add(c);
+      }
+      return nonOwners;
+   }
+
+   private boolean isInL1(Cache<Object, String> c, Object key) {
+      return TestingUtil.extractComponent(c, DataContainer.class).containsKey(key);
+   }
+
+   private long unicastInvalidations() {
+      long total = 0;
+      for (Cache<Object, String> c : caches) total += l1Manager(c).getUnicastInvalidations();
+      return total;
+   }
+
+   private long broadcastInvalidations() {
+      long total = 0;
+      for (Cache<Object, String> c : caches) total += l1Manager(c).getBroadcastInvalidations();
+      return total;
+   }
+
+   private static DistributionManager dm(Cache<?, ?> c) {
+      return TestingUtil.extractComponent(c, DistributionManager.class);
+   }
+
+   private static L1ManagerImpl l1Manager(Cache<?, ?> c) {
+      return (L1ManagerImpl) TestingUtil.extractComponent(c, L1Manager.class);
+   }
+}
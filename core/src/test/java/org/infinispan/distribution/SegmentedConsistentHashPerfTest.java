@@ -0,0 +1,107 @@
+package org.infinispan.distribution;
+
+import org.infinispan.distribution.ch.ConsistentHash;
+import org.infinispan.distribution.ch.DefaultConsistentHash;
+import org.infinispan.distribution.ch.ExperimentalDefaultConsistentHash;
+import org.infinispan.distribution.ch.SegmentedConsistentHash;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.remoting.transport.jgroups.JGroupsAddress;
+import org.infinispan.util.hash.MurmurHash3;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the segment based consistent hash with the wheel based ones, for the cluster sizes we run: the skew of the
+ * number of keys owned by each node, as the ratio of the most keys owned by a node to the average, and the time taken
+ * by locate and isKeyLocalToAddress.
+ *
+ * @since 5.0
+ */
+@Test(groups = "profiling", enabled = false, testName = "distribution.SegmentedConsistentHashPerfTest")
+public class SegmentedConsistentHashPerfTest {
+
+   private static final Log log = LogFactory.getLog(SegmentedConsistentHashPerfTest.class);
+
+   private static final int[] NUM_NODES = {12, 24, 48};
+   private static final int NUM_OWNERS = 2;
+   private static final int NUM_KEYS = 100000;
+   private static final int LOOKUPS = 5000000;
+
+   public void testConsistentHashes() {
+      Random r = new Random(0);
+      List<Object> keys = new ArrayList<Object>(NUM_KEYS);
+      for (int i = 0; i < NUM_KEYS; i++) keys.add("key" + r.nextLong());
+
+      for (int numNodes : NUM_NODES) {
+         List<Address> addresses = new ArrayList<Address>(numNodes);
+         for (int i = 0; i < numNodes; i++)
+            addresses.add(new JGroupsAddress(new org.jgroups.util.UUID(r.nextLong(), r.nextLong())));
+
+         DefaultConsistentHash dch = new DefaultConsistentHash(new MurmurHash3());
+         dch.setCaches(new LinkedHashSet<Address>(addresses));
+         ExperimentalDefaultConsistentHash edch = new ExperimentalDefaultConsistentHash();
+         edch.setCaches(addresses);
+         SegmentedConsistentHash sch = new SegmentedConsistentHash(new MurmurHash3());
+         sch.setNumOwners(NUM_OWNERS);
+         sch.setCaches(new LinkedHashSet<Address>(addresses));
+
+         log.info("%d nodes, segment skew of %s: %.3f primary, %.3f with backups", numNodes, sch,
+                  sch.getOwnershipSkew(1), sch.getOwnershipSkew(NUM_OWNERS));
+         for (ConsistentHash ch : new ConsistentHash[]{dch, edch, sch}) {
+            String name = ch.getClass().getSimpleName();
+            log.info("%d nodes, %s: key skew %.3f primary, %.3f with backups", numNodes, name,
+                     keySkew(ch, keys, 1), keySkew(ch, keys, NUM_OWNERS));
+            // The first round warms up
+            for (int round = 0; round < 2; round++) {
+               long locate = timeLocate(ch, keys);
+               long isLocal = timeIsKeyLocal(ch, keys, addresses.get(0));
+               if (round > 0)
+                  log.info("%d nodes, %s: locate %d ns, isKeyLocalToAddress %d ns", numNodes, name,
+                           locate / LOOKUPS, isLocal / LOOKUPS);
+            }
+         }
+      }
+   }
+
+   private double keySkew(ConsistentHash ch, List<Object> keys, int replCount) {
+      Map<Address, Integer> counts = new HashMap<Address, Integer>();
+      for (Object key : keys) {
+         for (Address a : ch.locate(key, replCount)) {
+            Integer count = counts.get(a);
+            counts.put(a, count == null ? 1 : count + 1);
+         }
+      }
+      int max = 0;
+      for (int count : counts.values()) max = Math.max(max, count);
+      // nodes owning no key at all count towards the average
+      return max * (double) ch.getCaches().size() / (keys.size() * replCount);
+   }
+
+   private long timeLocate(ConsistentHash ch, List<Object> keys) {
+      int found = 0;
+      long begin = System.nanoTime();
+      for (int i = 0; i < LOOKUPS; i++) found += ch.locate(keys.get(i % NUM_KEYS), NUM_OWNERS).size();
+      long elapsed = System.nanoTime() - begin;
+      assert found == LOOKUPS * NUM_OWNERS;
+      return elapsed;
+   }
+
+   private long timeIsKeyLocal(ConsistentHash ch, List<Object> keys, Address address) {
+      int local = 0;
+      long begin = System.nanoTime();
+      for (int i = 0; i < LOOKUPS; i++) {
+         if (ch.isKeyLocalToAddress(address, keys.get(i % NUM_KEYS), NUM_OWNERS)) local++;
+      }
+      long elapsed = System.nanoTime() - begin;
+      assert local > 0;
+      return elapsed;
+   }
+}
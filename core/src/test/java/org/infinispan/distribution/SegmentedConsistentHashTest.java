@@ -0,0 +1,160 @@
+package org.infinispan.distribution;
+
+import org.infinispan.config.Configuration;
+import org.infinispan.distribution.ch.ConsistentHash;
+import org.infinispan.distribution.ch.ConsistentHashHelper;
+import org.infinispan.distribution.ch.SegmentedConsistentHash;
+import org.infinispan.distribution.ch.TopologyInfo;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.test.AbstractInfinispanTest;
+import org.infinispan.util.hash.MurmurHash3;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * @since 5.0
+ */
+@Test(groups = "unit", testName = "distribution.SegmentedConsistentHashTest")
+public class SegmentedConsistentHashTest extends AbstractInfinispanTest {
+
+   private static final int NUM_KEYS = 20000;
+
+   private List<Address> addresses(int numNodes) {
+      List<Address> addresses = new ArrayList<Address>(numNodes);
+      for (int i = 0; i < numNodes; i++) addresses.add(new TestAddress(i * 1000 + 7));
+      return addresses;
+   }
+
+   private SegmentedConsistentHash createConsistentHash(List<Address> addresses) {
+      SegmentedConsistentHash ch = new SegmentedConsistentHash(new MurmurHash3());
+      ch.setCaches(new LinkedHashSet<Address>(addresses));
+      return ch;
+   }
+
+   public void testLocate() {
+      SegmentedConsistentHash ch = createConsistentHash(addresses(10));
+      for (int i = 0; i < NUM_KEYS; i++) {
+         Object key = "key" + i;
+         List<Address> owners = ch.locate(key, 2);
+         assert owners.size() == 2;
+         assert !owners.get(0).equals(owners.get(1));
+         assert owners.equals(ch.locate(key, 2));
+         for (Address a : ch.getCaches()) assert ch.isKeyLocalToAddress(a, key, 2) == owners.contains(a);
+
+         // more owners than the owner table holds
+         List<Address> moreOwners = ch.locate(key, 5);
+         assert moreOwners.size() == 5;
+         assert new HashSet<Address>(moreOwners).size() == 5;
+         assert moreOwners.subList(0, 2).equals(owners);
+      }
+      assert ch.locate("key", 20).size() == 10;
+   }
+
+   public void testClientRoutingFindsPrimaryOwner() {
+      SegmentedConsistentHash ch = createConsistentHash(addresses(10));
+      // the positions a Hot Rod client builds from the hash ids it is given
+      SortedMap<Integer, Address> positions = new TreeMap<Integer, Address>();
+      for (Address a : ch.getCaches()) {
+         assert !ch.getHashIds(a).isEmpty();
+         assert ch.getHashId(a) == ch.getHashIds(a).get(0);
+         for (int hashId : ch.getHashIds(a)) assert positions.put(hashId, a) == null : "Hash id " + hashId + " given twice";
+      }
+      assert positions.lastKey() == ch.getHashSpace();
+
+      MurmurHash3 hash = new MurmurHash3();
+      Random random = new Random(7);
+      for (int i = 0; i < NUM_KEYS; i++) {
+         byte[] key = new byte[16];
+         random.nextBytes(key);
+         int keyHash = hash.hash(key);
+         if (keyHash == Integer.MIN_VALUE) keyHash += 1;
+         SortedMap<Integer, Address> candidates = positions.tailMap(Math.abs(keyHash) % ch.getHashSpace());
+         Address routedTo = candidates.isEmpty() ? positions.get(positions.firstKey()) : candidates.get(candidates.firstKey());
+         assert routedTo.equals(ch.locate(key, 2).get(0)) : "Key " + i + " routed to " + routedTo + " rather than its primary owner";
+      }
+   }
+
+   public void testMemberOrderDoesNotMatter() {
+      List<Address> addresses = addresses(12);
+      SegmentedConsistentHash ch = createConsistentHash(addresses);
+      Collections.reverse(addresses);
+      SegmentedConsistentHash reversed = createConsistentHash(addresses);
+      assert ch.equals(reversed);
+      for (int i = 0; i < NUM_KEYS; i++) assert ch.locate(i, 2).equals(reversed.locate(i, 2));
+   }
+
+   public void testStateProvidersOnJoin() {
+      List<Address> addresses = addresses(12);
+      Address joiner = addresses.get(5);
+      SegmentedConsistentHash newCH = createConsistentHash(addresses);
+      addresses.remove(joiner);
+      SegmentedConsistentHash oldCH = createConsistentHash(addresses);
+
+      List<Address> providers = newCH.getStateProvidersOnJoin(joiner, 2);
+      assert !providers.contains(joiner);
+      for (int i = 0; i < NUM_KEYS; i++) {
+         if (newCH.isKeyLocalToAddress(joiner, i, 2)) {
+            List<Address> oldOwners = oldCH.locate(i, 2);
+            assert providers.containsAll(oldOwners) : "Old owners " + oldOwners + " of " + i + " not in " + providers;
+         }
+      }
+   }
+
+   public void testStateProvidersAndReceiversOnLeave() {
+      List<Address> addresses = addresses(12);
+      Address leaver = addresses.get(5);
+      SegmentedConsistentHash oldCH = createConsistentHash(addresses);
+      addresses.remove(leaver);
+      SegmentedConsistentHash newCH = createConsistentHash(addresses);
+
+      List<Address> providers = oldCH.getStateProvidersOnLeave(leaver, 2);
+      List<Address> receivers = oldCH.getStateReceiversOnLeave(leaver, 2);
+      assert !providers.contains(leaver);
+      assert !receivers.contains(leaver);
+      for (int i = 0; i < NUM_KEYS; i++) {
+         List<Address> oldOwners = oldCH.locate(i, 2);
+         if (oldOwners.contains(leaver)) {
+            List<Address> newOwners = newCH.locate(i, 2);
+            for (Address a : oldOwners) assert a.equals(leaver) || providers.contains(a);
+            newOwners.removeAll(oldOwners);
+            assert receivers.containsAll(newOwners) : "New owners " + newOwners + " of " + i + " not in " + receivers;
+         }
+      }
+   }
+
+   public void testOwnedSegmentCounts() {
+      SegmentedConsistentHash ch = createConsistentHash(addresses(24));
+      Map<Address, Integer> counts = ch.getOwnedSegmentCounts(2);
+      assert counts.size() == 24;
+      int total = 0;
+      for (int count : counts.values()) total += count;
+      assert total == 2 * ch.getNumSegments();
+      assert ch.getOwnershipSkew(2) >= 1;
+   }
+
+   public void testCreatedFromConfiguration() {
+      Configuration c = new Configuration();
+      c.setConsistentHashClass(SegmentedConsistentHash.class.getName());
+      c.setNumSegments(256);
+      c.setNumVirtualNodes(8);
+      c.setNumOwners(3);
+      ConsistentHash ch = ConsistentHashHelper.createConsistentHash(c, addresses(5), new TopologyInfo());
+      assert ch instanceof SegmentedConsistentHash;
+      SegmentedConsistentHash sch = (SegmentedConsistentHash) ch;
+      assert sch.getNumSegments() == 256;
+      assert sch.getNumVirtualNodes() == 8;
+      assert sch.getNumOwners() == 3;
+
+      ConsistentHash copy = ConsistentHashHelper.createConsistentHash(ch, ch.getCaches(), new TopologyInfo());
+      assert copy.equals(ch);
+   }
+}
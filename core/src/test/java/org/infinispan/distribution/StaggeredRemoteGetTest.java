@@ -0,0 +1,153 @@
+package org.infinispan.distribution;
+
+import org.infinispan.Cache;
+import org.infinispan.commands.read.GetKeyValueCommand;
+import org.infinispan.config.Configuration;
+import org.infinispan.container.DataContainer;
+import org.infinispan.context.InvocationContext;
+import org.infinispan.interceptors.base.CommandInterceptor;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.test.MultipleCacheManagersTest;
+import org.infinispan.test.TestingUtil;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests that remote gets are first sent to the primary owner only, and to the other owners once the stagger delay has
+ * elapsed, while the request to the primary owner is still pending.
+ *
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "distribution.StaggeredRemoteGetTest")
+public class StaggeredRemoteGetTest extends MultipleCacheManagersTest {
+
+   private static final long STAGGER_DELAY = 500;
+
+   @Override
+   protected void createCacheManagers() throws Throwable {
+      Configuration c = getDefaultClusteredConfig(Configuration.CacheMode.DIST_SYNC);
+      c.setL1CacheEnabled(false);
+      c.setRemoteGetStaggerDelay(STAGGER_DELAY);
+      createCluster(c, 3);
+      for (int i = 0; i < 3; i++) cache(i).getAdvancedCache().addInterceptor(new RemoteGetInterceptor(), 0);
+      BaseDistFunctionalTest.RehashWaiter.waitForInitRehashToComplete(cache(0), cache(1), cache(2));
+   }
+
+   public void testPrimaryOwnerAnswers() {
+      MagicKey k = new MagicKey(cache(0));
+      List<Address> owners = dm(cache(0)).locate(k);
+      Cache<Object, Object> primary = cacheFor(owners.get(0)), backup = cacheFor(owners.get(1)), nonOwner = nonOwner(owners);
+      primary.put(k, "value");
+      resetCounts();
+      DistributionManagerImpl dm = dm(nonOwner);
+      long gets = dm.getStaggeredRemoteGets(), fanOuts = dm.getStaggeredFanOuts();
+
+      assert "value".equals(nonOwner.get(k));
+
+      assert interceptor(primary).remoteGets.get() == 1;
+      assert interceptor(backup).remoteGets.get() == 0 : "The backup owner should not have been asked";
+      assert dm.getStaggeredRemoteGets() == gets + 1;
+      assert dm.getStaggeredFanOuts() == fanOuts;
+      assert dm.getFirstOwnerHitRatio() > 0;
+   }
+
+   public void testFanOutWhenPrimaryOwnerIsSlow() {
+      MagicKey k = new MagicKey(cache(1));
+      List<Address> owners = dm(cache(1)).locate(k);
+      Cache<Object, Object> primary = cacheFor(owners.get(0)), backup = cacheFor(owners.get(1)), nonOwner = nonOwner(owners);
+      primary.put(k, "value");
+      resetCounts();
+      DistributionManagerImpl dm = dm(nonOwner);
+      long gets = dm.getStaggeredRemoteGets(), fanOuts = dm.getStaggeredFanOuts();
+      interceptor(primary).delay = STAGGER_DELAY * 4;
+      try {
+         assert "value".equals(nonOwner.get(k));
+      } finally {
+         interceptor(primary).delay = 0;
+      }
+
+      assert interceptor(backup).remoteGets.get() == 1;
+      assert dm.getStaggeredRemoteGets() == gets + 1;
+      assert dm.getStaggeredFanOuts() == fanOuts + 1;
+   }
+
+   public void testSlowPrimaryOwnerAnswersAfterFanOut() {
+      MagicKey k = new MagicKey(cache(0));
+      List<Address> owners = dm(cache(0)).locate(k);
+      Cache<Object, Object> primary = cacheFor(owners.get(0)), backup = cacheFor(owners.get(1)), nonOwner = nonOwner(owners);
+      primary.put(k, "value");
+      // the backup owner replies first, without the value
+      TestingUtil.extractComponent(backup, DataContainer.class).remove(k);
+      resetCounts();
+      long fanOuts = dm(nonOwner).getStaggeredFanOuts();
+      interceptor(primary).delay = STAGGER_DELAY * 2;
+      try {
+         assert "value".equals(nonOwner.get(k));
+      } finally {
+         interceptor(primary).delay = 0;
+      }
+
+      assert interceptor(primary).remoteGets.get() == 1 : "The primary owner should only have been asked once";
+      assert interceptor(backup).remoteGets.get() == 1;
+      assert dm(nonOwner).getStaggeredFanOuts() == fanOuts + 1;
+   }
+
+   public void testMissingKeyIsNotFannedOut() {
+      MagicKey k = new MagicKey(cache(2));
+      List<Address> owners = dm(cache(2)).locate(k);
+      Cache<Object, Object> backup = cacheFor(owners.get(1)), nonOwner = nonOwner(owners);
+      resetCounts();
+      long fanOuts = dm(nonOwner).getStaggeredFanOuts();
+
+      assert nonOwner.get(k) == null;
+
+      assert interceptor(backup).remoteGets.get() == 0;
+      assert dm(nonOwner).getStaggeredFanOuts() == fanOuts;
+   }
+
+   private void resetCounts() {
+      for (int i = 0; i < 3; i++) interceptor(cache(i)).remoteGets.set(0);
+   }
+
+   private Cache<Object, Object> cacheFor(Address a) {
+      for (Cache<Object, Object> c : this.<Object, Object>caches())
+         if (c.getAdvancedCache().getRpcManager().getAddress().equals(a)) return c;
+      throw new IllegalStateException("No cache for " + a);
+   }
+
+   private Cache<Object, Object> nonOwner(List<Address> owners) {
+      for (Cache<Object, Object> c : this.<Object, Object>caches())
+         if (!owners.contains(c.getAdvancedCache().getRpcManager().getAddress())) return c;
+      throw new IllegalStateException("No non owner");
+   }
+
+   private static DistributionManagerImpl dm(Cache<?, ?> c) {
+      return (DistributionManagerImpl) c.getAdvancedCache().getDistributionManager();
+   }
+
+   private static RemoteGetInterceptor interceptor(Cache<?, ?> c) {
+      for (CommandInterceptor i : c.getAdvancedCache().getInterceptorChain()) {
+         if (i instanceof RemoteGetInterceptor) return (RemoteGetInterceptor) i;
+      }
+      throw new IllegalStateException("No RemoteGetInterceptor in " + c);
+   }
+
+   /**
+    * Counts, and optionally delays, the gets issued by other nodes
+    */
+   public static class RemoteGetInterceptor extends CommandInterceptor {
+      final AtomicInteger remoteGets = new AtomicInteger();
+      volatile long delay;
+
+      @Override
+      public Object visitGetKeyValueCommand(InvocationContext ctx, GetKeyValueCommand command) throws Throwable {
+         if (!ctx.isOriginLocal()) {
+            remoteGets.incrementAndGet();
+            if (delay > 0) Thread.sleep(delay);
+         }
+         return super.visitGetKeyValueCommand(ctx, command);
+      }
+   }
+}
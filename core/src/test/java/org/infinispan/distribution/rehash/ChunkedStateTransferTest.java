@@ -0,0 +1,162 @@
+package org.infinispan.distribution.rehash;
+
+import org.infinispan.Cache;
+import org.infinispan.CacheException;
+import org.infinispan.commands.CommandsFactory;
+import org.infinispan.commands.CommandsFactoryImpl;
+import org.infinispan.container.DataContainer;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.infinispan.distribution.BaseDistFunctionalTest;
+import org.infinispan.distribution.DistributionManagerImpl;
+import org.infinispan.distribution.ch.ConsistentHash;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.test.TestingUtil;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Tests that state is pulled in chunks bounded by the configured rehash chunk size when a node joins, and pulled again
+ * when a state provider fails part-way through.
+ *
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "distribution.rehash.ChunkedStateTransferTest")
+public class ChunkedStateTransferTest extends BaseDistFunctionalTest {
+
+   private static final int NUM_KEYS = 100;
+   private static final int CHUNK_SIZE = 7;
+
+   public ChunkedStateTransferTest() {
+      INIT_CLUSTER_SIZE = 2;
+      numOwners = 1;
+      l1CacheEnabled = false;
+      performRehashing = true;
+      cleanup = CleanupPhase.AFTER_METHOD;
+   }
+
+   public void testJoinPullsStateInChunks() {
+      for (Cache<Object, String> c : caches) c.getConfiguration().setRehashChunkSize(CHUNK_SIZE);
+      for (int i = 0; i < NUM_KEYS; i++) c1.put("k" + i, "v" + i);
+
+      Cache<Object, String> joiner = join();
+
+      DistributionManagerImpl joinerDm = (DistributionManagerImpl) getDistributionManager(joiner);
+      int owned = assertJoinerHoldsItsKeys(joiner, NUM_KEYS);
+      assert owned > CHUNK_SIZE : "Too few keys moved to the joiner to exercise chunking: " + owned;
+
+      long entriesSent = 0, chunksSent = 0;
+      for (Cache<Object, String> c : caches) {
+         DistributionManagerImpl dm = (DistributionManagerImpl) getDistributionManager(c);
+         assert dm.getOutboundStateTransfers() == 0;
+         entriesSent += dm.getStateEntriesSent();
+         chunksSent += dm.getStateChunksSent();
+      }
+      assert joinerDm.getStateEntriesReceived() == owned;
+      assert entriesSent == owned;
+      assert joinerDm.getStateChunksReceived() == chunksSent;
+      assert chunksSent >= (owned + CHUNK_SIZE - 1) / CHUNK_SIZE : "Expected chunks of at most " + CHUNK_SIZE + " entries, got " + chunksSent + " chunks for " + owned + " entries";
+   }
+
+   public void testJoinPullsStateAgainWhenProviderFailsPartWay() {
+      int numKeys = 3 * NUM_KEYS;
+      for (Cache<Object, String> c : caches) c.getConfiguration().setRehashChunkSize(CHUNK_SIZE);
+      for (int i = 0; i < numKeys; i++) c1.put("k" + i, "v" + i);
+
+      // each provider fails once, half way through the entries it holds
+      AtomicInteger failures = new AtomicInteger();
+      for (Cache<Object, String> c : caches) {
+         CommandsFactory cf = TestingUtil.extractComponent(c, CommandsFactory.class);
+         DataContainer container = TestingUtil.extractComponent(c, DataContainer.class);
+         TestingUtil.replaceField(failingPartWay(container, container.size() / 2, failures), "dataContainer", cf,
+                                  CommandsFactoryImpl.class);
+      }
+
+      Cache<Object, String> joiner = join();
+
+      assert failures.get() > 0 : "No state provider failed";
+      assertJoinerHoldsItsKeys(joiner, numKeys);
+      for (Cache<Object, String> c : caches) {
+         DistributionManagerImpl dm = (DistributionManagerImpl) getDistributionManager(c);
+         assert dm.getOutboundStateTransfers() == 0;
+         assert !dm.getTransactionLogger().isEnabled() : "Transaction log of " + addressOf(c) + " left enabled";
+      }
+   }
+
+   private Cache<Object, String> join() {
+      EmbeddedCacheManager joinerManager = addClusterEnabledCacheManager();
+      joinerManager.defineConfiguration(cacheName, configuration);
+      Cache<Object, String> joiner = joinerManager.getCache(cacheName);
+      waitForJoinTasksToComplete(SECONDS.toMillis(60), joiner);
+      return joiner;
+   }
+
+   /**
+    * @return the number of keys the joiner owns
+    */
+   private int assertJoinerHoldsItsKeys(Cache<Object, String> joiner, int numKeys) {
+      ConsistentHash ch = getDistributionManager(joiner).getConsistentHash();
+      DataContainer joinerContainer = TestingUtil.extractComponent(joiner, DataContainer.class);
+      Address joinerAddress = addressOf(joiner);
+      int owned = 0;
+      for (int i = 0; i < numKeys; i++) {
+         String key = "k" + i;
+         if (ch.isKeyLocalToAddress(joinerAddress, key, numOwners)) {
+            owned++;
+            assert joinerContainer.containsKey(key) : "Joiner is missing " + key;
+            assert joinerContainer.get(key).getValue().equals("v" + i);
+         }
+      }
+      return owned;
+   }
+
+   /**
+    * @return a data container whose first iterator fails after {@code failAfter} entries
+    */
+   private static DataContainer failingPartWay(final DataContainer container, final int failAfter, final AtomicInteger failures) {
+      return (DataContainer) Proxy.newProxyInstance(DataContainer.class.getClassLoader(), new Class[]{DataContainer.class},
+                                                    new InvocationHandler() {
+         private boolean failed;
+
+         @SuppressWarnings("unchecked")
+         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result;
+            try {
+               result = method.invoke(container, args);
+            } catch (InvocationTargetException e) {
+               throw e.getCause();
+            }
+            if (!method.getName().equals("iterator") || failed) return result;
+            failed = true;
+            final Iterator<InternalCacheEntry> entries = (Iterator<InternalCacheEntry>) result;
+            return new Iterator<InternalCacheEntry>() {
+               int returned;
+
+               public boolean hasNext() {
+                  return entries.hasNext();
+               }
+
+               public InternalCacheEntry next() {
+                  if (returned++ == failAfter) {
+                     failures.incrementAndGet();
+                     throw new CacheException("Failing part-way through the state");
+                  }
+                  return entries.next();
+               }
+
+               public void remove() {
+                  entries.remove();
+               }
+            };
+         }
+      });
+   }
+}
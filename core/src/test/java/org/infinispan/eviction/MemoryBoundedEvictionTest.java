@@ -0,0 +1,72 @@
+package org.infinispan.eviction;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+
+import org.infinispan.container.DefaultDataContainer;
+import org.infinispan.test.AbstractInfinispanTest;
+import org.testng.annotations.Test;
+
+@Test(groups = "unit", testName = "eviction.MemoryBoundedEvictionTest")
+public class MemoryBoundedEvictionTest extends AbstractInfinispanTest {
+
+   private static final long MAX_MEMORY = 64 * 1024;
+
+   private DefaultDataContainer createContainer(EvictionStrategy strategy) {
+      DefaultDataContainer dc = (DefaultDataContainer) DefaultDataContainer.boundedDataContainer(4, 1024, MAX_MEMORY,
+               new DefaultEntrySizeEstimator(), strategy, EvictionThreadPolicy.DEFAULT);
+      EvictionManager evictionManager = createNiceMock(EvictionManager.class);
+      replay(evictionManager);
+      dc.initialize(evictionManager);
+      return dc;
+   }
+
+   public void testLRUBoundedByMemory() {
+      doTestBoundedByMemory(EvictionStrategy.LRU);
+   }
+
+   public void testLIRSBoundedByMemory() {
+      doTestBoundedByMemory(EvictionStrategy.LIRS);
+   }
+
+   public void testWeightedSizeTracksUpdatesAndRemovals() {
+      DefaultDataContainer dc = createContainer(EvictionStrategy.LRU);
+      assert dc.getMaxMemory() == MAX_MEMORY;
+      assert dc.getWeightedSize() == 0;
+
+      dc.put("k", new byte[100], -1, -1);
+      long small = dc.getWeightedSize();
+      assert small > 100 : "Weighted size too small: " + small;
+
+      dc.put("k", new byte[1000], -1, -1);
+      long big = dc.getWeightedSize();
+      assert big - small == DefaultEntrySizeEstimator.byteArraySize(1000) - DefaultEntrySizeEstimator.byteArraySize(100)
+            : "Unexpected weight delta " + (big - small);
+
+      dc.remove("k");
+      assert dc.getWeightedSize() == 0 : "Weighted size should be zero after removal: " + dc.getWeightedSize();
+
+      dc.put("k", "v", -1, -1);
+      dc.clear();
+      assert dc.getWeightedSize() == 0;
+   }
+
+   public void testUnboundedContainerDoesNotTrackWeight() {
+      DefaultDataContainer dc = (DefaultDataContainer) DefaultDataContainer.boundedDataContainer(4, 1024,
+               EvictionStrategy.LRU, EvictionThreadPolicy.DEFAULT);
+      dc.put("k", new byte[100], -1, -1);
+      assert dc.getWeightedSize() == -1;
+      assert dc.getMaxMemory() == -1;
+   }
+
+   private void doTestBoundedByMemory(EvictionStrategy strategy) {
+      DefaultDataContainer dc = createContainer(strategy);
+      // mix of small and large values, with far fewer entries than maxEntries
+      for (int i = 0; i < 200; i++) {
+         dc.put("key" + i, new byte[i % 10 == 0 ? 8 * 1024 : 200], -1, -1);
+         assert dc.getWeightedSize() <= MAX_MEMORY : "Weighted size " + dc.getWeightedSize() + " exceeds " + MAX_MEMORY;
+      }
+      assert dc.size() < 200 : "Entries should have been evicted, size is " + dc.size();
+      assert dc.size() > 0;
+   }
+}
@@ -22,6 +22,8 @@ import org.testng.annotations.Test;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -342,6 +344,95 @@ public class AsyncTest extends AbstractInfinispanTest {
       }
    }
 
+   @Test(timeOut=10000)
+   public void testModificationsAppliedInBatches(Method m) throws Exception {
+      final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+      DummyInMemoryCacheStore underlying = new DummyInMemoryCacheStore() {
+         @Override
+         public void storeAll(Collection<InternalCacheEntry> entries) throws CacheLoaderException {
+            batchSizes.add(entries.size());
+            super.storeAll(entries);
+         }
+      };
+      store.stop();
+      store = new AsyncStore(underlying, asyncConfig.clone().maxBatchSize(10).maxBatchDelay(500L));
+      dummyCfg = new DummyInMemoryCacheStore.Cfg();
+      dummyCfg.setStore(m.getName());
+      store.init(dummyCfg, null, null);
+      store.start();
+      try {
+         final int number = 100;
+         for (int i = 0; i < number; i++) store.store(InternalEntryFactory.create(k(m, i), v(m, i)));
+         for (int i = 0; i < number; i++) {
+            while (!underlying.containsKey(k(m, i))) TestingUtil.sleepThread(20);
+         }
+         int stored = 0;
+         for (int size : batchSizes) {
+            assert size <= 10 : "Batch of " + size + " entries exceeds the maximum batch size";
+            stored += size;
+         }
+         assert stored == number;
+         assert batchSizes.size() < number : "Modifications were not batched";
+         while (store.getBatches() < batchSizes.size()) TestingUtil.sleepThread(20);
+         assert store.getBatches() == batchSizes.size();
+         assert store.getAverageBatchSize() > 1;
+      } finally {
+         store.delegate.clear();
+         store.stop();
+         store = null;
+      }
+   }
+
+   @Test(timeOut=10000)
+   public void testWritesBlockedWhenModificationQueueFull(Method m) throws Exception {
+      final CountDownLatch release = new CountDownLatch(1);
+      DummyInMemoryCacheStore underlying = new DummyInMemoryCacheStore() {
+         @Override
+         public void storeAll(Collection<InternalCacheEntry> entries) throws CacheLoaderException {
+            try {
+               release.await();
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            super.storeAll(entries);
+         }
+      };
+      store.stop();
+      store = new AsyncStore(underlying, asyncConfig.clone().modificationQueueSize(5).threadPoolSize(1));
+      dummyCfg = new DummyInMemoryCacheStore.Cfg();
+      dummyCfg.setStore(m.getName());
+      store.init(dummyCfg, null, null);
+      store.start();
+      try {
+         final int number = 100;
+         final AtomicInteger enqueued = new AtomicInteger();
+         Thread writer = new Thread("AsyncTest-writer") {
+            @Override
+            public void run() {
+               for (int i = 0; i < number; i++) {
+                  store.store(InternalEntryFactory.create("k" + i, "v" + i));
+                  enqueued.incrementAndGet();
+               }
+            }
+         };
+         writer.start();
+         Thread.sleep(500);
+         assert enqueued.get() < number : "Writes should have been blocked by the full modification queue";
+         assert store.getModificationQueueDepth() <= 10 : "Queue depth was " + store.getModificationQueueDepth();
+         release.countDown();
+         writer.join(5000);
+         assert enqueued.get() == number;
+         for (int i = 0; i < number; i++) {
+            while (!underlying.containsKey("k" + i)) TestingUtil.sleepThread(20);
+         }
+      } finally {
+         release.countDown();
+         store.delegate.clear();
+         store.stop();
+         store = null;
+      }
+   }
+
    private void doTestPut(int number, String key, String value) throws Exception {
       for (int i = 0; i < number; i++) {
          InternalCacheEntry cacheEntry = InternalEntryFactory.create(key + i, value + i);
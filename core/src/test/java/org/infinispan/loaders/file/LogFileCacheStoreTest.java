@@ -0,0 +1,143 @@
+package org.infinispan.loaders.file;
+
+import org.infinispan.container.entries.InternalEntryFactory;
+import org.infinispan.loaders.BaseCacheStoreTest;
+import org.infinispan.loaders.CacheLoaderException;
+import org.infinispan.loaders.CacheStore;
+import org.infinispan.test.TestingUtil;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Optional;
+import org.testng.annotations.Parameters;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.RandomAccessFile;
+
+@Test(groups = "unit", testName = "loaders.file.LogFileCacheStoreTest")
+public class LogFileCacheStoreTest extends BaseCacheStoreTest {
+
+   private LogFileCacheStore lfcs;
+   private String tmpDirectory;
+
+   @BeforeClass
+   @Parameters({"basedir"})
+   protected void setUpTempDir(@Optional(value = "/tmp") String basedir) {
+      tmpDirectory = TestingUtil.tmpDirectory(basedir, this);
+   }
+
+   @AfterClass
+   protected void clearTempDir() {
+      TestingUtil.recursiveFileRemove(tmpDirectory);
+      new File(tmpDirectory).mkdirs();
+   }
+
+   protected CacheStore createCacheStore() throws CacheLoaderException {
+      clearTempDir();
+      lfcs = new LogFileCacheStore();
+      LogFileCacheStoreConfig cfg = new LogFileCacheStoreConfig();
+      cfg.setLocation(tmpDirectory);
+      cfg.setMaxSegmentSize(4096);
+      cfg.setPurgeSynchronously(true); // for more accurate unit testing
+      lfcs.init(cfg, getCache(), getMarshaller());
+      lfcs.start();
+      return lfcs;
+   }
+
+   public void testCompactionDeletesDeadSegments() throws CacheLoaderException {
+      for (int i = 0; i < 100; i++) {
+         for (int k = 0; k < 10; k++) {
+            cs.store(InternalEntryFactory.create("k" + k, "v" + i));
+         }
+      }
+      int before = countSegments();
+      lfcs.compact();
+      int after = countSegments();
+      assert after < before : "Expected fewer than " + before + " segments, found " + after;
+      for (int k = 0; k < 10; k++) {
+         assert cs.load("k" + k).getValue().equals("v99");
+      }
+   }
+
+   public void testReplayWithoutIndexSnapshot() throws CacheLoaderException {
+      cs.store(InternalEntryFactory.create("k1", "v1"));
+      cs.store(InternalEntryFactory.create("k2", "v2"));
+      cs.store(InternalEntryFactory.create("k1", "v1-2"));
+      cs.remove("k2");
+      cs.stop();
+      assert new File(lfcs.getRoot(), LogFileCacheStore.INDEX_SNAPSHOT).delete();
+      cs.start();
+      assert cs.load("k1").getValue().equals("v1-2");
+      assert cs.load("k2") == null;
+      assert cs.loadAllKeys(null).size() == 1;
+   }
+
+   public void testTruncatedRecordDiscardedOnReplay() throws Exception {
+      cs.store(InternalEntryFactory.create("k1", "v1"));
+      cs.stop();
+      assert new File(lfcs.getRoot(), LogFileCacheStore.INDEX_SNAPSHOT).delete();
+      File segment = lastSegment();
+      RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+      try {
+         long length = raf.length();
+         raf.seek(length);
+         raf.writeInt(1000);
+         raf.writeInt(42);
+      } finally {
+         raf.close();
+      }
+      cs.start();
+      assert cs.load("k1").getValue().equals("v1");
+      cs.store(InternalEntryFactory.create("k2", "v2"));
+      assert cs.load("k2").getValue().equals("v2");
+   }
+
+   public void testRemovedEntriesNotResurrectedByReplay() throws CacheLoaderException {
+      cs.store(InternalEntryFactory.create("removed", "v"));
+      cs.store(InternalEntryFactory.create("expired", "v"));
+      for (int i = 0; i < 200; i++) {
+         cs.store(InternalEntryFactory.create("filler" + (i % 5), "v" + i));
+      }
+      cs.remove("removed");
+      cs.store(InternalEntryFactory.create("expired", "v", 1));
+      TestingUtil.sleepThread(100);
+      cs.purgeExpired();
+      for (int i = 0; i < 200; i++) {
+         cs.store(InternalEntryFactory.create("filler" + (i % 5), "v" + i));
+      }
+      lfcs.compact();
+      cs.stop();
+      assert new File(lfcs.getRoot(), LogFileCacheStore.INDEX_SNAPSHOT).delete();
+      cs.start();
+      assert cs.load("removed") == null;
+      assert cs.load("expired") == null;
+      assert cs.loadAllKeys(null).size() == 5;
+   }
+
+   private File[] segmentFiles() {
+      return lfcs.getRoot().listFiles(new FilenameFilter() {
+         public boolean accept(File dir, String name) {
+            return name.endsWith(LogFileCacheStore.SEGMENT_SUFFIX);
+         }
+      });
+   }
+
+   private int countSegments() {
+      return segmentFiles().length;
+   }
+
+   private File lastSegment() {
+      File last = null;
+      int lastId = -1;
+      for (File file : segmentFiles()) {
+         String name = file.getName();
+         int id = Integer.parseInt(name.substring(0, name.length() - LogFileCacheStore.SEGMENT_SUFFIX.length()));
+         if (id > lastId) {
+            lastId = id;
+            last = file;
+         }
+      }
+      return last;
+   }
+}
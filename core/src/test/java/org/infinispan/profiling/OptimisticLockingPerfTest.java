@@ -0,0 +1,127 @@
+package org.infinispan.profiling;
+
+import org.infinispan.Cache;
+import org.infinispan.config.Configuration;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.test.AbstractInfinispanTest;
+import org.infinispan.test.TestingUtil;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.infinispan.util.concurrent.IsolationLevel;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+import org.testng.annotations.Test;
+
+import javax.transaction.TransactionManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the throughput of transactions reading and writing a few keys out of a small pool, with some work done
+ * between the writes, when locks are acquired on each write and held until the transaction completes, and with
+ * optimistic locking, where they are only acquired in key order when the transaction prepares.  Reports the committed
+ * and failed transactions per second, and the average duration of a committed transaction.
+ *
+ * @since 5.0
+ */
+@Test(groups = "profiling", enabled = false, testName = "profiling.OptimisticLockingPerfTest")
+public class OptimisticLockingPerfTest extends AbstractInfinispanTest {
+
+   private static final Log log = LogFactory.getLog(OptimisticLockingPerfTest.class);
+
+   private static final int NUM_THREADS = 16;
+   private static final int[] KEY_POOL_SIZES = {50, 5000};
+   private static final int TX_SIZE = 4;
+   private static final long WORK_BETWEEN_WRITES = TimeUnit.MILLISECONDS.toNanos(1);
+   private static final long DURATION = TimeUnit.SECONDS.toMillis(30);
+
+   public void testContention() throws Exception {
+      for (int keyPoolSize : KEY_POOL_SIZES) {
+         // The first round warms up
+         for (int round = 0; round < 2; round++) {
+            for (boolean optimistic : new boolean[]{false, true}) {
+               String report = measure(optimistic, keyPoolSize);
+               if (round > 0) log.info(report);
+            }
+         }
+      }
+   }
+
+   private String measure(boolean optimistic, final int keyPoolSize) throws Exception {
+      EmbeddedCacheManager cm = TestCacheManagerFactory.createCacheManager(getConfiguration(optimistic), true);
+      try {
+         final Cache<String, String> cache = cm.getCache();
+         final TransactionManager tm = TestingUtil.getTransactionManager(cache);
+         final AtomicLong committed = new AtomicLong();
+         final AtomicLong failed = new AtomicLong();
+         final AtomicLong txTime = new AtomicLong();
+         final CountDownLatch start = new CountDownLatch(1);
+         List<Thread> threads = new ArrayList<Thread>(NUM_THREADS);
+         for (int t = 0; t < NUM_THREADS; t++) {
+            final Random random = new Random(t);
+            Thread thread = new Thread() {
+               @Override
+               public void run() {
+                  try {
+                     start.await();
+                  } catch (InterruptedException e) {
+                     return;
+                  }
+                  long end = System.currentTimeMillis() + DURATION;
+                  while (System.currentTimeMillis() < end) {
+                     long begin = System.nanoTime();
+                     try {
+                        tm.begin();
+                        for (int k = 0; k < TX_SIZE; k++) {
+                           String key = "key" + random.nextInt(keyPoolSize);
+                           cache.get(key);
+                           cache.put(key, getName());
+                           work();
+                        }
+                        tm.commit();
+                        committed.incrementAndGet();
+                        txTime.addAndGet(System.nanoTime() - begin);
+                     } catch (Throwable e) {
+                        failed.incrementAndGet();
+                        try {
+                           if (tm.getTransaction() != null) tm.rollback();
+                        } catch (Exception ignored) {
+                        }
+                     }
+                  }
+               }
+            };
+            threads.add(thread);
+            thread.start();
+         }
+         start.countDown();
+         for (Thread thread : threads) thread.join();
+
+         long seconds = TimeUnit.MILLISECONDS.toSeconds(DURATION);
+         return String.format("%s, %d keys: %d committed/s, %d failed/s, %d us per committed transaction",
+                              optimistic ? "Optimistic" : "Pessimistic", keyPoolSize, committed.get() / seconds,
+                              failed.get() / seconds,
+                              committed.get() == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(txTime.get() / committed.get()));
+      } finally {
+         TestingUtil.killCacheManagers(cm);
+      }
+   }
+
+   private static void work() {
+      long end = System.nanoTime() + WORK_BETWEEN_WRITES;
+      while (System.nanoTime() < end) {
+         Thread.yield();
+      }
+   }
+
+   private Configuration getConfiguration(boolean optimistic) {
+      Configuration configuration = new Configuration();
+      configuration.setIsolationLevel(IsolationLevel.REPEATABLE_READ);
+      configuration.setOptimisticLocking(optimistic);
+      configuration.setLockAcquisitionTimeout(1000);
+      return configuration;
+   }
+}
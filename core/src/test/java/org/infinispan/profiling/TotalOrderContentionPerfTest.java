@@ -0,0 +1,129 @@
+package org.infinispan.profiling;
+
+import org.infinispan.Cache;
+import org.infinispan.config.Configuration;
+import org.infinispan.manager.CacheContainer;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.test.AbstractInfinispanTest;
+import org.infinispan.test.TestingUtil;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.infinispan.transaction.lookup.DummyTransactionManagerLookup;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+import org.testng.annotations.Test;
+
+import javax.transaction.TransactionManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares, on a replicated cluster, the throughput of transactions writing a few keys out of a small pool with two
+ * phase commit, where conflicting transactions wait for each other's locks on all nodes and time out when deadlocked,
+ * and with total order commit, where they are certified and applied in one phase and the losers fail right away.
+ * Reports the committed and failed transactions per second, and the average duration of a committed transaction.
+ *
+ * @since 5.0
+ */
+@Test(groups = "profiling", enabled = false, testName = "profiling.TotalOrderContentionPerfTest")
+public class TotalOrderContentionPerfTest extends AbstractInfinispanTest {
+
+   private static final Log log = LogFactory.getLog(TotalOrderContentionPerfTest.class);
+
+   private static final int NUM_NODES = 3;
+   private static final int THREADS_PER_NODE = 4;
+   private static final int[] KEY_POOL_SIZES = {20, 1000};
+   private static final int TX_SIZE = 4;
+   private static final long DURATION = TimeUnit.SECONDS.toMillis(30);
+
+   public void testContention() throws Exception {
+      for (int keyPoolSize : KEY_POOL_SIZES) {
+         // The first round warms up
+         for (int round = 0; round < 2; round++) {
+            for (boolean totalOrder : new boolean[]{false, true}) {
+               String report = measure(totalOrder, keyPoolSize);
+               if (round > 0) log.info(report);
+            }
+         }
+      }
+   }
+
+   private String measure(boolean totalOrder, final int keyPoolSize) throws Exception {
+      List<EmbeddedCacheManager> managers = new ArrayList<EmbeddedCacheManager>(NUM_NODES);
+      try {
+         List<Cache<String, String>> caches = new ArrayList<Cache<String, String>>(NUM_NODES);
+         for (int i = 0; i < NUM_NODES; i++) {
+            EmbeddedCacheManager cm = TestCacheManagerFactory.createClusteredCacheManager();
+            managers.add(cm);
+            cm.defineConfiguration("test", getConfiguration(totalOrder));
+            caches.add(cm.<String, String>getCache("test"));
+         }
+         TestingUtil.blockUntilViewsReceived(10000, managers.toArray(new CacheContainer[managers.size()]));
+
+         final AtomicLong committed = new AtomicLong();
+         final AtomicLong failed = new AtomicLong();
+         final AtomicLong txTime = new AtomicLong();
+         final CountDownLatch start = new CountDownLatch(1);
+         List<Thread> threads = new ArrayList<Thread>();
+         for (final Cache<String, String> cache : caches) {
+            for (int t = 0; t < THREADS_PER_NODE; t++) {
+               final TransactionManager tm = TestingUtil.getTransactionManager(cache);
+               final Random random = new Random(threads.size());
+               Thread thread = new Thread() {
+                  @Override
+                  public void run() {
+                     try {
+                        start.await();
+                     } catch (InterruptedException e) {
+                        return;
+                     }
+                     long end = System.currentTimeMillis() + DURATION;
+                     while (System.currentTimeMillis() < end) {
+                        long begin = System.nanoTime();
+                        try {
+                           tm.begin();
+                           for (int k = 0; k < TX_SIZE; k++)
+                              cache.put("key" + random.nextInt(keyPoolSize), getName());
+                           tm.commit();
+                           committed.incrementAndGet();
+                           txTime.addAndGet(System.nanoTime() - begin);
+                        } catch (Throwable e) {
+                           failed.incrementAndGet();
+                           try {
+                              if (tm.getTransaction() != null) tm.rollback();
+                           } catch (Exception ignored) {
+                           }
+                        }
+                     }
+                  }
+               };
+               threads.add(thread);
+               thread.start();
+            }
+         }
+         start.countDown();
+         for (Thread thread : threads) thread.join();
+
+         long seconds = TimeUnit.MILLISECONDS.toSeconds(DURATION);
+         return String.format("%s, %d keys: %d committed/s, %d failed/s, %d us per committed transaction",
+                              totalOrder ? "Total order" : "Two phase", keyPoolSize, committed.get() / seconds,
+                              failed.get() / seconds,
+                              committed.get() == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(txTime.get() / committed.get()));
+      } finally {
+         TestingUtil.killCacheManagers(managers);
+      }
+   }
+
+   private Configuration getConfiguration(boolean totalOrder) {
+      Configuration configuration = new Configuration();
+      configuration.setCacheMode(Configuration.CacheMode.REPL_SYNC);
+      configuration.setTransactionManagerLookupClass(DummyTransactionManagerLookup.class.getName());
+      configuration.setTotalOrderCommit(totalOrder);
+      configuration.setLockAcquisitionTimeout(1000);
+      configuration.setSyncReplTimeout(5000);
+      return configuration;
+   }
+}
@@ -30,6 +30,8 @@ public class MapStressTest {
     final int MAP_CAPACITY = 512;
     final float MAP_LOAD_FACTOR = 0.75f;
     final int CONCURRENCY = 32;
+    final int LARGE_MAP_CAPACITY = 1 << 20;
+    final int LARGE_MAP_CONCURRENCY = 4;
     
     final int RUN_TIME_MILLIS = 5 * 1000; // 10 sec
     final int NUM_KEYS = 50000;
@@ -64,6 +66,18 @@ public class MapStressTest {
         doTest(new BoundedConcurrentHashMap<Integer, Integer>(MAP_CAPACITY, CONCURRENCY, Eviction.LIRS));
     }
 
+    /**
+     * Few large segments, so that the cost of maintaining the eviction order of each segment
+     * while holding its lock dominates.
+     */
+    public void testBufferedConcurrentHashMapLRULargeSegments() throws Exception {
+        doTest(new BoundedConcurrentHashMap<Integer, Integer>(LARGE_MAP_CAPACITY, LARGE_MAP_CONCURRENCY, Eviction.LRU));
+    }
+
+    public void testBufferedConcurrentHashMapLIRSLargeSegments() throws Exception {
+        doTest(new BoundedConcurrentHashMap<Integer, Integer>(LARGE_MAP_CAPACITY, LARGE_MAP_CONCURRENCY, Eviction.LIRS));
+    }
+
     public void testHashMap() throws Exception {
         doTest(Collections.synchronizedMap(new HashMap<Integer, Integer>(MAP_CAPACITY, MAP_LOAD_FACTOR)));
     }
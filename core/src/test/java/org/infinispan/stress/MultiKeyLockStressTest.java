@@ -0,0 +1,118 @@
+package org.infinispan.stress;
+
+import org.infinispan.Cache;
+import org.infinispan.config.Configuration;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.test.AbstractInfinispanTest;
+import org.infinispan.test.TestingUtil;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.infinispan.util.logging.Log;
+import org.infinispan.util.logging.LogFactory;
+import org.testng.annotations.Test;
+
+import javax.transaction.TransactionManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Has many threads write overlapping sets of keys in transactions, either with a single putAll, whose keys are locked
+ * in lock order, or with a put per key in random order, which is how the keys of multi-key commands used to be locked.
+ * Verifies that the ordered writes never time out on a lock, and reports the throughput of both.
+ *
+ * @since 5.0
+ */
+@Test(groups = "stress", testName = "stress.MultiKeyLockStressTest", enabled = false,
+      description = "Since this test is slow to run, it should be disabled by default and run by hand as necessary.")
+public class MultiKeyLockStressTest extends AbstractInfinispanTest {
+
+   private static final Log log = LogFactory.getLog(MultiKeyLockStressTest.class);
+
+   private static final int NUM_THREADS = 20;
+   private static final int KEY_POOL_SIZE = 100;
+   private static final int KEYS_PER_TX = 10;
+   private static final long DURATION = TimeUnit.SECONDS.toMillis(30);
+
+   public void testLockStriping() throws Exception {
+      doTest(true);
+   }
+
+   public void testLockPerEntry() throws Exception {
+      doTest(false);
+   }
+
+   private void doTest(boolean useLockStriping) throws Exception {
+      long[] unordered = measure(useLockStriping, false);
+      long[] ordered = measure(useLockStriping, true);
+      String locks = useLockStriping ? "lock striping" : "lock per entry";
+      log.info(String.format("Unordered, %s: %d committed/s, %d timed out/s", locks, unordered[0], unordered[1]));
+      log.info(String.format("Ordered, %s: %d committed/s, %d timed out/s", locks, ordered[0], ordered[1]));
+      assert ordered[1] == 0 : "Transactions locking their keys in order should never time out";
+   }
+
+   private long[] measure(boolean useLockStriping, final boolean ordered) throws Exception {
+      Configuration c = new Configuration();
+      c.setUseLockStriping(useLockStriping);
+      c.setLockAcquisitionTimeout(2000);
+      EmbeddedCacheManager cm = TestCacheManagerFactory.createCacheManager(c, true);
+      try {
+         final Cache<String, String> cache = cm.getCache();
+         final TransactionManager tm = TestingUtil.getTransactionManager(cache);
+         final AtomicLong committed = new AtomicLong();
+         final AtomicLong timedOut = new AtomicLong();
+         final CountDownLatch start = new CountDownLatch(1);
+         List<Thread> threads = new ArrayList<Thread>(NUM_THREADS);
+         for (int t = 0; t < NUM_THREADS; t++) {
+            final Random random = new Random(t);
+            Thread thread = new Thread() {
+               @Override
+               public void run() {
+                  try {
+                     start.await();
+                  } catch (InterruptedException e) {
+                     return;
+                  }
+                  long end = System.currentTimeMillis() + DURATION;
+                  while (System.currentTimeMillis() < end) {
+                     Map<String, String> values = new HashMap<String, String>();
+                     while (values.size() < KEYS_PER_TX) values.put("key" + random.nextInt(KEY_POOL_SIZE), getName());
+                     try {
+                        tm.begin();
+                        if (ordered) {
+                           cache.putAll(values);
+                        } else {
+                           List<String> keys = new ArrayList<String>(values.keySet());
+                           Collections.shuffle(keys, random);
+                           for (String key : keys) cache.put(key, values.get(key));
+                        }
+                        tm.commit();
+                        committed.incrementAndGet();
+                     } catch (Throwable e) {
+                        timedOut.incrementAndGet();
+                        try {
+                           if (tm.getTransaction() != null) tm.rollback();
+                        } catch (Exception ignored) {
+                        }
+                     }
+                  }
+               }
+            };
+            threads.add(thread);
+            thread.start();
+         }
+         start.countDown();
+         for (Thread thread : threads) thread.join();
+
+         long seconds = TimeUnit.MILLISECONDS.toSeconds(DURATION);
+         return new long[]{committed.get() / seconds, timedOut.get() / seconds};
+      } finally {
+         TestingUtil.killCacheManagers(cm);
+      }
+   }
+}
@@ -0,0 +1,205 @@
+package org.infinispan.tx;
+
+import org.infinispan.api.mvcc.LockAssert;
+import org.infinispan.config.Configuration;
+import org.infinispan.config.ConfigurationException;
+import org.infinispan.container.DataContainer;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.test.SingleCacheManagerTest;
+import org.infinispan.test.TestingUtil;
+import org.infinispan.test.fwk.TestCacheManagerFactory;
+import org.infinispan.util.concurrent.IsolationLevel;
+import org.infinispan.util.concurrent.locks.LockManager;
+import org.testng.annotations.Test;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that writes of optimistic transactions only acquire locks when the transaction prepares, and that a
+ * transaction writing an entry changed or removed since it read it fails with a write skew, but not one writing an
+ * entry evicted or expired since.
+ *
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "tx.OptimisticLockingTest")
+public class OptimisticLockingTest extends SingleCacheManagerTest {
+
+   private TransactionManager tm;
+   private LockManager lockManager;
+
+   protected EmbeddedCacheManager createCacheManager() {
+      Configuration c = getDefaultStandaloneConfig(true);
+      c.setIsolationLevel(IsolationLevel.REPEATABLE_READ);
+      c.setUseLockStriping(false);
+      c.setLockAcquisitionTimeout(500);
+      c.setOptimisticLocking(true);
+      c.setWriteSkewCheck(true);
+      EmbeddedCacheManager cm = TestCacheManagerFactory.createCacheManager(c, true);
+      cache = cm.getCache();
+      tm = TestingUtil.getTransactionManager(cache);
+      lockManager = TestingUtil.extractLockManager(cache);
+      return cm;
+   }
+
+   public void testWritesDoNotLock() throws Exception {
+      tm.begin();
+      cache.put("k", "v");
+      cache.remove("k2");
+      assert !lockManager.isLocked("k");
+      assert !lockManager.isLocked("k2");
+      tm.commit();
+      assert "v".equals(cache.get("k"));
+      LockAssert.assertNoLocks(cache);
+   }
+
+   public void testConcurrentWriteDoesNotBlock() throws Exception {
+      tm.begin();
+      cache.put("k", "v1");
+      Transaction tx1 = tm.suspend();
+
+      tm.begin();
+      cache.put("k", "v2");
+      tm.commit();
+
+      tm.resume(tx1);
+      try {
+         tm.commit();
+         assert false : "The entry has been created since the transaction started";
+      } catch (RollbackException expected) {
+      }
+      assert "v2".equals(cache.get("k"));
+      LockAssert.assertNoLocks(cache);
+   }
+
+   public void testWriteSkew() throws Exception {
+      cache.put("k", "v");
+
+      tm.begin();
+      assert "v".equals(cache.get("k"));
+      cache.put("k", "v1");
+      Transaction tx1 = tm.suspend();
+
+      tm.begin();
+      cache.put("k", "v2");
+      tm.commit();
+
+      tm.resume(tx1);
+      try {
+         tm.commit();
+         assert false : "The entry has been changed since the transaction read it";
+      } catch (RollbackException expected) {
+      }
+      assert "v2".equals(cache.get("k"));
+      LockAssert.assertNoLocks(cache);
+   }
+
+   public void testRemovalIsWriteSkew() throws Exception {
+      cache.put("k", "v");
+
+      tm.begin();
+      assert "v".equals(cache.get("k"));
+      cache.put("k", "v1");
+      Transaction tx1 = tm.suspend();
+
+      cache.remove("k");
+
+      tm.resume(tx1);
+      try {
+         tm.commit();
+         assert false : "The entry has been removed since the transaction read it";
+      } catch (RollbackException expected) {
+      }
+      assert cache.get("k") == null;
+      LockAssert.assertNoLocks(cache);
+   }
+
+   public void testEvictionIsNotWriteSkew() throws Exception {
+      cache.put("k", "v");
+
+      tm.begin();
+      assert "v".equals(cache.get("k"));
+      cache.put("k", "v1");
+      Transaction tx1 = tm.suspend();
+
+      cache.evict("k");
+
+      tm.resume(tx1);
+      tm.commit();
+      assert "v1".equals(cache.get("k"));
+      LockAssert.assertNoLocks(cache);
+   }
+
+   public void testUpdateIsWriteSkewOnceEvicted() throws Exception {
+      cache.put("k", "v");
+
+      tm.begin();
+      assert "v".equals(cache.get("k"));
+      cache.put("k", "v1");
+      Transaction tx1 = tm.suspend();
+
+      tm.begin();
+      cache.put("k", "v2");
+      tm.commit();
+      cache.evict("k");
+
+      tm.resume(tx1);
+      try {
+         tm.commit();
+         assert false : "The entry has been changed since the transaction read it";
+      } catch (RollbackException expected) {
+      }
+      assert cache.get("k") == null;
+      LockAssert.assertNoLocks(cache);
+   }
+
+   public void testExpiryIsNotWriteSkew() throws Exception {
+      cache.put("k", "v", 100, TimeUnit.MILLISECONDS);
+
+      tm.begin();
+      assert "v".equals(cache.get("k"));
+      cache.put("k", "v1");
+      Transaction tx1 = tm.suspend();
+
+      TestingUtil.sleepThread(200);
+      TestingUtil.extractComponent(cache, DataContainer.class).purgeExpired();
+
+      tm.resume(tx1);
+      tm.commit();
+      assert "v1".equals(cache.get("k"));
+      LockAssert.assertNoLocks(cache);
+   }
+
+   public void testRollbackDoesNotReleaseOtherLocks() throws Exception {
+      tm.begin();
+      cache.put("k", "v1");
+      Transaction tx1 = tm.suspend();
+
+      tm.begin();
+      cache.getAdvancedCache().lock("k");
+      Transaction tx2 = tm.suspend();
+
+      tm.resume(tx1);
+      tm.rollback();
+      assert lockManager.isLocked("k");
+
+      tm.resume(tx2);
+      cache.put("k", "v2");
+      tm.commit();
+      assert "v2".equals(cache.get("k"));
+      LockAssert.assertNoLocks(cache);
+   }
+
+   public void testIncompatibleWithEagerLocking() {
+      Configuration c = getDefaultStandaloneConfig(true);
+      c.setOptimisticLocking(true);
+      c.setUseEagerLocking(true);
+      try {
+         c.assertValid();
+         assert false : "Optimistic locking cannot be used with eager locking";
+      } catch (ConfigurationException expected) {
+      }
+   }
+}
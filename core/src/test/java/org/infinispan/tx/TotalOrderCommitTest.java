@@ -0,0 +1,147 @@
+package org.infinispan.tx;
+
+import org.infinispan.Cache;
+import org.infinispan.config.Configuration;
+import org.infinispan.config.ConfigurationException;
+import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.test.MultipleCacheManagersTest;
+import org.infinispan.test.TestingUtil;
+import org.infinispan.test.fwk.CleanupAfterMethod;
+import org.infinispan.transaction.TotalOrderManager;
+import org.testng.annotations.Test;
+
+import javax.transaction.RollbackException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+
+/**
+ * Tests that transactions committed in total order are applied on all nodes, also once the coordinator ordering them
+ * has left, and that a transaction writing a key written since it started fails instead of waiting for remote locks.
+ *
+ * @since 5.0
+ */
+@Test(groups = "functional", testName = "tx.TotalOrderCommitTest")
+@CleanupAfterMethod
+public class TotalOrderCommitTest extends MultipleCacheManagersTest {
+
+   @Override
+   protected void createCacheManagers() throws Throwable {
+      Configuration c = getDefaultClusteredConfig(Configuration.CacheMode.REPL_SYNC, true);
+      c.setTotalOrderCommit(true);
+      createClusteredCaches(3, c);
+   }
+
+   public void testCommitFromEveryNode() throws Exception {
+      for (int i = 0; i < 3; i++) {
+         TransactionManager tm = tm(i);
+         tm.begin();
+         cache(i).put("k" + i, "v" + i);
+         cache(i).put("k", "v" + i);
+         tm.commit();
+         assertEventuallyEverywhere("k" + i, "v" + i);
+         assertEventuallyEverywhere("k", "v" + i);
+      }
+   }
+
+   public void testConflictingTransactionFails() throws Exception {
+      tm(0).begin();
+      cache(0).put("k", "v0");
+      tm(0).commit();
+      assertEventuallyEverywhere("k", "v0");
+
+      TransactionManager tm1 = tm(1);
+      tm1.begin();
+      assert "v0".equals(cache(1).get("k"));
+      cache(1).put("k", "v1");
+      Transaction tx1 = tm1.suspend();
+
+      // commits although the first transaction holds a local lock on the key
+      tm(2).begin();
+      cache(2).put("k", "v2");
+      tm(2).commit();
+      assertEventuallyEverywhere("k", "v2");
+
+      tm1.resume(tx1);
+      try {
+         tm1.commit();
+         assert false : "The transaction should have failed certification";
+      } catch (RollbackException expected) {
+      }
+      assertEventuallyEverywhere("k", "v2");
+   }
+
+   public void testNonConflictingTransactionsCommit() throws Exception {
+      TransactionManager tm1 = tm(1);
+      tm1.begin();
+      cache(1).put("a", "v1");
+      Transaction tx1 = tm1.suspend();
+
+      tm(2).begin();
+      cache(2).put("b", "v2");
+      tm(2).commit();
+
+      tm1.resume(tx1);
+      tm1.commit();
+      assertEventuallyEverywhere("a", "v1");
+      assertEventuallyEverywhere("b", "v2");
+   }
+
+   public void testCommitAfterCoordinatorLeaves() throws Exception {
+      tm(1).begin();
+      cache(1).put("k", "v1");
+      tm(1).commit();
+      assertEventuallyEverywhere("k", "v1");
+      final int oldEpoch = totalOrderManager(1).getLastDelivered().getEpoch();
+
+      EmbeddedCacheManager coordinator = manager(0);
+      cacheManagers.remove(coordinator);
+      TestingUtil.killCacheManagers(coordinator);
+      TestingUtil.blockUntilViewsReceived(10000, cache(0), cache(1));
+      for (int i = 0; i < 2; i++) {
+         final TotalOrderManager totalOrderManager = totalOrderManager(i);
+         eventually(new Condition() {
+            public boolean isSatisfied() throws Exception {
+               return totalOrderManager.getLastDelivered().getEpoch() > oldEpoch;
+            }
+         });
+      }
+
+      // ordered by the new coordinator itself, then sent to it by the other node
+      tm(0).begin();
+      assert "v1".equals(cache(0).get("k"));
+      cache(0).put("k", "v2");
+      tm(0).commit();
+      assertEventuallyEverywhere("k", "v2");
+
+      tm(1).begin();
+      assert "v2".equals(cache(1).get("k"));
+      cache(1).put("k", "v3");
+      tm(1).commit();
+      assertEventuallyEverywhere("k", "v3");
+   }
+
+   public void testRequiresReplSync() {
+      Configuration c = getDefaultClusteredConfig(Configuration.CacheMode.DIST_SYNC, true);
+      c.setTotalOrderCommit(true);
+      try {
+         c.assertValid();
+         assert false : "Total order commit is only supported with REPL_SYNC";
+      } catch (ConfigurationException expected) {
+      }
+   }
+
+   private TotalOrderManager totalOrderManager(int i) {
+      return TestingUtil.extractComponent(cache(i), TotalOrderManager.class);
+   }
+
+   private void assertEventuallyEverywhere(final Object key, final Object value) {
+      for (int i = 0; i < cacheManagers.size(); i++) {
+         final Cache<Object, Object> cache = cache(i);
+         eventually(new Condition() {
+            public boolean isSatisfied() throws Exception {
+               return value.equals(cache.get(key));
+            }
+         });
+      }
+   }
+}
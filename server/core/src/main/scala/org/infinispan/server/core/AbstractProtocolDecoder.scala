@@ -2,22 +2,29 @@ package org.infinispan.server.core
 
 import org.infinispan.Cache
 import Operation._
-import java.util.concurrent.atomic.AtomicInteger
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicInteger}
+import java.util.concurrent.{ConcurrentLinkedQueue, TimeUnit}
 import org.infinispan.stats.Stats
 import org.infinispan.server.core.VersionGenerator._
 import transport._
 import transport.ChannelBuffers._
 import org.infinispan.util.Util
 import java.io.StreamCorruptedException
+import collection.mutable.ListBuffer
 
 /**
  * Common abstract decoder for Memcached and Hot Rod protocols.
  *
+ * Requests are fully read by the worker thread, and then either executed inline, or handed over to the business
+ * threads of the {@link RequestExecutor}. Requests to local caches without cache stores are executed inline, unless
+ * requests read earlier from the same channel are still waiting for a business thread, so that requests pipelined in
+ * a channel are always executed, and responded to, in the order they were sent. Responses to the requests read in
+ * one go, or executed in one go by a business thread, are written to the channel at once.
+ *
  * @author Galder Zamarreño
  * @since 4.1
  */
-abstract class AbstractProtocolDecoder[K, V <: CacheValue] extends Decoder {
+abstract class AbstractProtocolDecoder[K, V <: CacheValue](requestExecutor: RequestExecutor) extends Decoder {
    import AbstractProtocolDecoder._
 
    type SuitableParameters <: RequestParameters
@@ -25,6 +32,11 @@ abstract class AbstractProtocolDecoder[K, V <: CacheValue] extends Decoder {
 
    private val versionCounter = new AtomicInteger
    private val isTrace = isTraceEnabled
+   // Requests from this decoder's channel waiting for a business thread, in the order they were read
+   private val queuedRequests = new ConcurrentLinkedQueue[QueuedRequest]
+   private val isDraining = new AtomicBoolean
+   // Responses to the requests executed inline, only ever accessed by the channel's worker thread
+   private val inlineResponses = new ListBuffer[AnyRef]
 
    override def decode(ctx: ChannelHandlerContext, buffer: ChannelBuffer): AnyRef = {
       var optionalHeader: Option[SuitableHeader] = None
@@ -32,23 +44,32 @@ abstract class AbstractProtocolDecoder[K, V <: CacheValue] extends Decoder {
          optionalHeader = readHeader(buffer)
          if (optionalHeader == None) return null // Something went wrong reading the header, so get more bytes
          val header = optionalHeader.get
-         val ret = header.op match {
+         val (cache, request) = header.op match {
             case PutRequest | PutIfAbsentRequest | ReplaceRequest | ReplaceIfUnmodifiedRequest | RemoveRequest => {
                val (k, params) = readKeyAndParams(header, buffer)
                val cache = getCache(header)
-               header.op match {
-                  case PutRequest => put(header, k, params, cache)
-                  case PutIfAbsentRequest => putIfAbsent(header, k, params, cache)
-                  case ReplaceRequest => replace(header, k, params, cache)
-                  case ReplaceIfUnmodifiedRequest => replaceIfUmodified(header, k, params, cache)
-                  case RemoveRequest => remove(header, k, params, cache)
-               }
+               (cache, header.op match {
+                  case PutRequest => () => put(header, k, params, cache)
+                  case PutIfAbsentRequest => () => putIfAbsent(header, k, params, cache)
+                  case ReplaceRequest => () => replace(header, k, params, cache)
+                  case ReplaceIfUnmodifiedRequest => () => replaceIfUmodified(header, k, params, cache)
+                  case RemoveRequest => () => remove(header, k, params, cache)
+               })
+            }
+            case GetRequest | GetWithVersionRequest => {
+               val cache = getCache(header)
+               (cache, readGetRequest(header, buffer, cache))
+            }
+            case StatsRequest => {
+               val cache = getCache(header)
+               (cache, () => createStatsResponse(header, cache.getAdvancedCache.getStats))
+            }
+            case _ => {
+               val cache = getCache(header)
+               (cache, readCustomRequest(header, buffer, cache, ctx))
             }
-            case GetRequest | GetWithVersionRequest => get(header, buffer, getCache(header))
-            case StatsRequest => createStatsResponse(header, getCache(header).getAdvancedCache.getStats)
-            case _ => handleCustomRequest(header, buffer, getCache(header), ctx)
          }
-         writeResponse(ctx.getChannel, ret)
+         dispatch(ctx.getChannel, header, cache, request)
          null
       } catch {
          case e: Exception => {
@@ -75,18 +96,105 @@ abstract class AbstractProtocolDecoder[K, V <: CacheValue] extends Decoder {
 
    def decodeLast(ctx: ChannelHandlerContext, buffer: ChannelBuffer): AnyRef = null // no-op
 
-   private def writeResponse(ch: Channel, response: AnyRef) {
-      if (response != null) {
-         if (isTrace) trace("Write response %s", response)
+   override def flush(ctx: ChannelHandlerContext) {
+      if (!inlineResponses.isEmpty) writeResponses(ctx.getChannel, inlineResponses)
+   }
+
+   private def dispatch(ch: Channel, header: SuitableHeader, cache: Cache[K, V], request: () => AnyRef) {
+      val decodedAt = System.nanoTime
+      if (requestExecutor.isInline || (isLocalInMemory(cache) && queuedRequests.isEmpty && !isDraining.get)) {
+         inlineResponses += execute(header, request, decodedAt)
+         if (inlineResponses.size >= MaxResponsesPerWrite) writeResponses(ch, inlineResponses)
+      } else {
+         enqueue(ch, new QueuedRequest(header, request, decodedAt))
+      }
+   }
+
+   private def enqueue(ch: Channel, request: QueuedRequest) {
+      // Responses to the requests executed inline so far must be written before the ones to the queued requests
+      if (!inlineResponses.isEmpty) writeResponses(ch, inlineResponses)
+      queuedRequests.offer(request)
+      if (isDraining.compareAndSet(false, true))
+         requestExecutor.execute(new Drainer(ch))
+   }
+
+   private def isLocalInMemory(cache: Cache[K, V]): Boolean = {
+      val cfg = cache.getConfiguration
+      !cfg.getCacheMode.isClustered && cfg.getCacheLoaderManagerConfig.getFirstCacheLoaderConfig == null
+   }
+
+   private def execute(header: SuitableHeader, request: () => AnyRef, decodedAt: Long): AnyRef = {
+      try {
+         request()
+      } catch {
+         case e: Exception => {
+            // The request has been fully read, so an error executing it does not prevent reading the next ones
+            val (serverException, _) = createServerException(e, Some(header), null)
+            error("Exception reported", serverException)
+            createErrorResponse(serverException)
+         }
+      } finally {
+         if (header != null) requestExecutor.recordLatency(header.op, System.nanoTime - decodedAt)
+      }
+   }
+
+   private class QueuedRequest(val header: SuitableHeader, val request: () => AnyRef, val decodedAt: Long)
+
+   /**
+    * Executes the queued requests of the channel one after the other, until none is left, writing the responses of
+    * the requests executed in one go at once.
+    */
+   private class Drainer(ch: Channel) extends Runnable {
+      override def run {
+         val responses = new ListBuffer[AnyRef]
+         do {
+            var request = queuedRequests.poll
+            while (request != null) {
+               responses += execute(request.header, request.request, request.decodedAt)
+               if (responses.size >= MaxResponsesPerWrite) writeResponses(ch, responses)
+               request = queuedRequests.poll
+            }
+            writeResponses(ch, responses)
+            isDraining.set(false)
+            // A request might have been queued after the last poll but before draining was over
+         } while (!queuedRequests.isEmpty && isDraining.compareAndSet(false, true))
+      }
+   }
+
+   /**
+    * Writes the given responses to the channel at once, and clears them.
+    */
+   private def writeResponses(ch: Channel, responses: ListBuffer[AnyRef]) {
+      val messages = new ListBuffer[Any]
+      val callbacks = new ListBuffer[() => Unit]
+      var close = false
+      def add(response: Any) {
          response match {
-            // We only expect Lists of ChannelBuffer instances, so don't worry about type erasure 
-            case l: List[ChannelBuffer] => l.foreach(ch.write(_))
-            case a: Array[Byte] => ch.write(wrappedBuffer(a))
-            case sb: StringBuilder => ch.write(wrappedBuffer(sb.toString.getBytes))
-            case s: String => ch.write(wrappedBuffer(s.getBytes))
-            case _ => ch.write(response)
+            // Lists hold ChannelBuffer instances, possibly followed by CloseChannel
+            case l: List[_] => for (element <- l if !close) add(element)
+            case n: NotifyingResponse => {
+               add(n.response)
+               callbacks += n.written
+            }
+            case a: Array[Byte] => messages += wrappedBuffer(a)
+            case sb: StringBuilder => messages += wrappedBuffer(sb.toString.getBytes)
+            case s: String => messages += wrappedBuffer(s.getBytes)
+            case CloseChannel => close = true
+            case _ => messages += response
          }
       }
+      for (response <- responses if response != null && !close) {
+         if (isTrace) trace("Write response %s", response)
+         add(response)
+      }
+      responses.clear
+      if (!messages.isEmpty) {
+         val future = if (messages.size == 1) ch.write(messages.head) else ch.write(messages.toList)
+         if (close) future.closeChannelOnComplete
+      } else if (close) {
+         ch.close
+      }
+      for (callback <- callbacks) callback()
    }
 
    private def put(h: SuitableHeader, k: K, params: Option[SuitableParameters], c: Cache[K, V]): AnyRef = {
@@ -151,9 +259,12 @@ abstract class AbstractProtocolDecoder[K, V <: CacheValue] extends Decoder {
          createNotExistResponse(header, params)
    }
 
-   protected def get(header: SuitableHeader, buffer: ChannelBuffer, cache: Cache[K, V]): AnyRef = {
+   /**
+    * Reads a get request and returns the function executing it.
+    */
+   protected def readGetRequest(header: SuitableHeader, buffer: ChannelBuffer, cache: Cache[K, V]): () => AnyRef = {
       val (k, endOfOp) = readKey(header, buffer)
-      createGetResponse(header, k, cache.get(k))
+      () => createGetResponse(header, k, cache.get(k))
    }
 
    override def exceptionCaught(ctx: ChannelHandlerContext, e: ExceptionEvent) {
@@ -161,11 +272,12 @@ abstract class AbstractProtocolDecoder[K, V <: CacheValue] extends Decoder {
       val ch = ctx.getChannel
       val errorResponse = createErrorResponse(e.getCause)
       if (errorResponse != null) {
-         errorResponse match {
-            case a: Array[Byte] => ch.write(wrappedBuffer(a))
-            case sb: StringBuilder => ch.write(wrappedBuffer(sb.toString.getBytes))
-            case null => // ignore
-            case _ => ch.write(errorResponse)
+         if (queuedRequests.isEmpty && !isDraining.get) {
+            inlineResponses += errorResponse
+            writeResponses(ch, inlineResponses)
+         } else {
+            // Respond once the requests read before the failing one have been responded to
+            enqueue(ch, new QueuedRequest(null.asInstanceOf[SuitableHeader], () => errorResponse, 0))
          }
       }
    }
@@ -200,8 +312,12 @@ abstract class AbstractProtocolDecoder[K, V <: CacheValue] extends Decoder {
 
    protected def createStatsResponse(h: SuitableHeader, stats: Stats): AnyRef
 
-   protected def handleCustomRequest(h: SuitableHeader, b: ChannelBuffer, cache: Cache[K, V],
-                                     ctx: ChannelHandlerContext): AnyRef
+   /**
+    * Reads a protocol specific request and returns the function executing it. The request must be fully read before
+    * returning, since the function might be executed by a different thread, once more requests have been read.
+    */
+   protected def readCustomRequest(h: SuitableHeader, b: ChannelBuffer, cache: Cache[K, V],
+                                   ctx: ChannelHandlerContext): () => AnyRef
 
    protected def createServerException(e: Exception, h: Option[SuitableHeader], b: ChannelBuffer): (Exception, Boolean)
 
@@ -222,7 +338,18 @@ abstract class AbstractProtocolDecoder[K, V <: CacheValue] extends Decoder {
     * Otherwise it's just considered number of seconds from
     * now and it's returned in milliseconds unit.
     */
-   protected def toMillis(lifespan: Int): Long = {
+   protected def toMillis(lifespan: Int): Long = AbstractProtocolDecoder.toMillis(lifespan)
+
+}
+
+object AbstractProtocolDecoder extends Logging {
+   private val SecondsInAMonth = 60 * 60 * 24 * 30
+   private val DefaultTimeUnit = TimeUnit.MILLISECONDS 
+
+   // Bounds the size of the buffers written at once
+   private val MaxResponsesPerWrite = 64
+
+   def toMillis(lifespan: Int): Long = {
       if (lifespan > SecondsInAMonth) {
          val unixTimeExpiry = TimeUnit.SECONDS.toMillis(lifespan) - System.currentTimeMillis
          if (unixTimeExpiry < 0) 0 else unixTimeExpiry
@@ -230,13 +357,18 @@ abstract class AbstractProtocolDecoder[K, V <: CacheValue] extends Decoder {
          TimeUnit.SECONDS.toMillis(lifespan)
       }
    }
-
 }
 
-object AbstractProtocolDecoder extends Logging {
-   private val SecondsInAMonth = 60 * 60 * 24 * 30
-   private val DefaultTimeUnit = TimeUnit.MILLISECONDS 
-}
+/**
+ * Response closing the channel once the responses before it have been written.
+ */
+case object CloseChannel
+
+/**
+ * Response calling back once it has been written to the channel, so that any message written to the channel from then
+ * on follows it.
+ */
+class NotifyingResponse(val response: AnyRef, val written: () => Unit)
 
 class RequestHeader(val op: Enumeration#Value) {
    override def toString = {
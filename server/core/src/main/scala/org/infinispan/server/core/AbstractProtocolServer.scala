@@ -21,6 +21,7 @@ abstract class AbstractProtocolServer(threadNamePrefix: String) extends Protocol
    protected var masterThreads: Int = _
    protected var workerThreads: Int = _
    protected var transport: Transport = _
+   protected var requestExecutor: RequestExecutor = _
    protected var cacheManager: EmbeddedCacheManager = _
 
    def start(properties: Properties, cacheManager: EmbeddedCacheManager, defaultPort: Int) {
@@ -40,6 +41,14 @@ abstract class AbstractProtocolServer(threadNamePrefix: String) extends Protocol
          if (workerThreads < 0)
             throw new IllegalArgumentException("Worker threads can't be lower than 0: " + masterThreads)
 
+         val businessThreads = typedProps.getIntProperty(PROP_KEY_BUSINESS_THREADS, BUSINESS_THREADS_DEFAULT, true)
+         if (businessThreads < 0)
+            throw new IllegalArgumentException("Business threads can't be lower than 0: " + businessThreads)
+
+         val businessQueueSize = typedProps.getIntProperty(PROP_KEY_BUSINESS_QUEUE_SIZE, BUSINESS_QUEUE_SIZE_DEFAULT, true)
+         if (businessQueueSize <= 0)
+            throw new IllegalArgumentException("Business queue size must be greater than 0: " + businessQueueSize)
+
          this.cacheManager = cacheManager
          val idleTimeout = typedProps.getIntProperty(PROP_KEY_IDLE_TIMEOUT, IDLE_TIMEOUT_DEFAULT, true)
          if (idleTimeout < -1)
@@ -59,14 +68,16 @@ abstract class AbstractProtocolServer(threadNamePrefix: String) extends Protocol
 
          if (isDebugEnabled) {
             debug("Starting server with basic settings: host=%s, port=%d, masterThreads=%s, workerThreads=%d, " +
-                  "idleTimeout=%d, tcpNoDelay=%b, sendBufSize=%d, recvBufSize=%d", host, port,
-                  masterThreads, workerThreads, idleTimeout, tcpNoDelay, sendBufSize, recvBufSize)
+                  "businessThreads=%d, businessQueueSize=%d, idleTimeout=%d, tcpNoDelay=%b, sendBufSize=%d, recvBufSize=%d",
+                  host, port, masterThreads, workerThreads, businessThreads, businessQueueSize, idleTimeout, tcpNoDelay,
+                  sendBufSize, recvBufSize)
          }
 
          // Register rank calculator before starting any cache so that we can capture all view changes
          cacheManager.addListener(getRankCalculatorListener)
          // Start default cache
          startDefaultCache
+         requestExecutor = new RequestExecutor(threadNamePrefix, businessThreads, businessQueueSize)
          startTransport(idleTimeout, tcpNoDelay, sendBufSize, recvBufSize, typedProps)
       }
    }
@@ -95,12 +106,17 @@ abstract class AbstractProtocolServer(threadNamePrefix: String) extends Protocol
       if (transport != null)
          transport.stop
 
+      if (requestExecutor != null)
+         requestExecutor.stop
+
       if (isDebug)
          debug("Server stopped")
    }
 
    def getCacheManager = cacheManager
 
+   def getRequestExecutor = requestExecutor
+
    def getHost = host
 
    def getPort = port
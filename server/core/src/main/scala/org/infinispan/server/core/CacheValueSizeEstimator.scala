@@ -0,0 +1,22 @@
+package org.infinispan.server.core
+
+import org.infinispan.eviction.DefaultEntrySizeEstimator
+
+/**
+ * Size estimator aware of the values stored by the protocol servers, which
+ * allows caches holding Hot Rod or Memcached data to be bounded by memory by
+ * configuring this class as eviction's size estimator.
+ *
+ * @since 5.0
+ */
+class CacheValueSizeEstimator extends DefaultEntrySizeEstimator {
+
+   override def estimateSize(obj: AnyRef): Long = {
+      obj match {
+         // object header, data reference, version and, for memcached values, flags
+         case v: CacheValue => 32 + DefaultEntrySizeEstimator.byteArraySize(v.data.length)
+         case _ => super.estimateSize(obj)
+      }
+   }
+
+}
@@ -0,0 +1,72 @@
+package org.infinispan.server.core
+
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.TimeUnit
+
+/**
+ * A lock free histogram of request latencies. Each bucket counts the requests whose latency, in microseconds, was
+ * lower or equal than a power of two, with the last bucket counting the requests that took longer than a second.
+ *
+ * @since 5.0
+ */
+class LatencyHistogram {
+   import LatencyHistogram._
+
+   private val buckets = new AtomicLongArray(NumBuckets)
+
+   def record(nanos: Long) {
+      val micros = TimeUnit.NANOSECONDS.toMicros(nanos)
+      buckets.incrementAndGet(bucketOf(micros))
+   }
+
+   def count: Long = (0 until NumBuckets).foldLeft(0L)((total, i) => total + buckets.get(i))
+
+   /**
+    * Returns the upper bound, in microseconds, of the bucket containing the given percentile of the recorded
+    * latencies, or -1 if no latency has been recorded yet.
+    */
+   def percentile(p: Double): Long = {
+      val snapshot = Array.tabulate(NumBuckets)(buckets.get(_))
+      val total = snapshot.sum
+      if (total == 0) return -1
+      val threshold = math.ceil(total * p / 100).toLong
+      var seen = 0L
+      for (i <- 0 until NumBuckets) {
+         seen += snapshot(i)
+         if (seen >= threshold) return upperBound(i)
+      }
+      upperBound(NumBuckets - 1)
+   }
+
+   /**
+    * Renders the non empty buckets as a list of <upper bound in microseconds>=<count> pairs, with the bucket of the
+    * requests slower than a second rendered as >1000000.
+    */
+   override def toString = {
+      val sb = new StringBuilder
+      for (i <- 0 until NumBuckets) {
+         val n = buckets.get(i)
+         if (n > 0) {
+            if (sb.length > 0) sb.append(',')
+            if (i == NumBuckets - 1) sb.append('>').append(MaxMicros) else sb.append(upperBound(i))
+            sb.append('=').append(n)
+         }
+      }
+      sb.toString
+   }
+}
+
+object LatencyHistogram {
+   private val MaxMicros = 1000000L
+   // Buckets for 1, 2, 4 ... 524288 microseconds, one for up to a second, and one for anything slower
+   private val NumBuckets = 22
+
+   private def bucketOf(micros: Long): Int = {
+      if (micros > MaxMicros) NumBuckets - 1
+      else if (micros <= 1) 0
+      else math.min(64 - java.lang.Long.numberOfLeadingZeros(micros - 1), NumBuckets - 2)
+   }
+
+   private def upperBound(bucket: Int): Long =
+      if (bucket >= NumBuckets - 2) MaxMicros else 1L << bucket
+}
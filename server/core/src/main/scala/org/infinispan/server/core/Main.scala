@@ -34,6 +34,8 @@ object Main extends Logging {
    val PROP_KEY_TOPOLOGY_LOCK_TIMEOUT = "infinispan.server.topology.lock_timeout"
    val PROP_KEY_TOPOLOGY_REPL_TIMEOUT = "infinispan.server.topology.repl_timeout"
    val PROP_KEY_TOPOLOGY_STATE_TRANSFER = "infinispan.server.topology.state_transfer"
+   val PROP_KEY_BUSINESS_THREADS = "infinispan.server.business_threads"
+   val PROP_KEY_BUSINESS_QUEUE_SIZE = "infinispan.server.business_queue_size"
    val HOST_DEFAULT = "127.0.0.1"
    val MASTER_THREADS_DEFAULT = 0
    val WORKER_THREADS_DEFAULT = 0
@@ -44,6 +46,8 @@ object Main extends Logging {
    val TOPO_LOCK_TIMEOUT_DEFAULT = 10000L
    val TOPO_REPL_TIMEOUT_DEFAULT = 10000L
    val TOPO_STATE_TRANSFER_DEFAULT = true
+   val BUSINESS_THREADS_DEFAULT = 0
+   val BUSINESS_QUEUE_SIZE_DEFAULT = 1024
 
    /**
     * Server properties.  This object holds all of the required
@@ -123,7 +127,7 @@ object Main extends Logging {
    }
 
    private def processCommandLine(args: Array[String]) {
-      val sopts = "-:hD:Vp:l:m:t:c:r:i:n:s:e:o:x:k:u:a:"
+      val sopts = "-:hD:Vp:l:m:t:c:r:i:n:s:e:o:x:k:u:a:b:q:"
       val lopts = Array(
          new LongOpt("help", LongOpt.NO_ARGUMENT, null, 'h'),
          new LongOpt("version", LongOpt.NO_ARGUMENT, null, 'V'),
@@ -140,7 +144,9 @@ object Main extends Logging {
          new LongOpt("proxy_host", LongOpt.REQUIRED_ARGUMENT, null, 'o'),
          new LongOpt("topo_lock_timeout", LongOpt.REQUIRED_ARGUMENT, null, 'k'),
          new LongOpt("topo_repl_timeout", LongOpt.REQUIRED_ARGUMENT, null, 'u'),
-         new LongOpt("topo_state_transfer", LongOpt.REQUIRED_ARGUMENT, null, 'a')
+         new LongOpt("topo_state_transfer", LongOpt.REQUIRED_ARGUMENT, null, 'a'),
+         new LongOpt("business_threads", LongOpt.REQUIRED_ARGUMENT, null, 'b'),
+         new LongOpt("business_queue_size", LongOpt.REQUIRED_ARGUMENT, null, 'q')
          )
       val getopt = new Getopt("startServer", args, sopts, lopts)
       var code: Int = 0
@@ -168,6 +174,8 @@ object Main extends Logging {
             case 'k' => props.setProperty(PROP_KEY_TOPOLOGY_LOCK_TIMEOUT, getopt.getOptarg)
             case 'u' => props.setProperty(PROP_KEY_TOPOLOGY_REPL_TIMEOUT, getopt.getOptarg)
             case 'a' => props.setProperty(PROP_KEY_TOPOLOGY_STATE_TRANSFER, getopt.getOptarg)
+            case 'b' => props.setProperty(PROP_KEY_BUSINESS_THREADS, getopt.getOptarg)
+            case 'q' => props.setProperty(PROP_KEY_BUSINESS_QUEUE_SIZE, getopt.getOptarg)
             case 'D' => {
                val arg = getopt.getOptarg
                var name = ""
@@ -246,6 +254,14 @@ object Main extends Logging {
       println("    -a, --topo_state_trasfer=          Enabling topology information state transfer means that when a server starts it retrieves this information from a different node.")
       println("          [true|false]                 Otherwise, if set to false, the topology information is lazily loaded if not available locally.")
       println
+      println("    -b, --business_threads=<num>       Number of threads executing the decoded requests (default: 0).")
+      println("                                       Passing 0 executes the requests in the worker threads that decoded them.")
+      println("                                       Requests to local caches without cache stores are always executed in the worker threads")
+      println("                                       unless earlier requests from the same connection are still queued.")
+      println
+      println("    -q, --business_queue_size=<num>    Maximum number of decoded requests waiting for a business thread (default: 1024).")
+      println("                                       Once the queue is full, worker threads execute the requests they decode themselves.")
+      println
       println("    -D<name>[=<value>]                 Set a system property")
       println
       System.exit(0)
@@ -0,0 +1,73 @@
+package org.infinispan.server.core
+
+import java.util.concurrent._
+import java.util.concurrent.atomic.AtomicInteger
+import scala.collection.JavaConversions._
+
+/**
+ * Executes the requests decoded by the worker threads. With no business threads configured, requests are executed
+ * inline, by the worker thread that decoded them. Otherwise, requests are handed to a bounded pool of business
+ * threads so that slow operations, such as remote calls or cache store accesses, do not stall the worker threads,
+ * which are shared by many connections. When the queue of the pool is full, the worker thread executes the requests
+ * itself, which stops it from reading more requests until it catches up.
+ *
+ * It also keeps a latency histogram per operation, measured from the moment the request was decoded until its
+ * response was ready to be written.
+ *
+ * @since 5.0
+ */
+class RequestExecutor(threadNamePrefix: String, businessThreads: Int, queueSize: Int) extends Logging {
+
+   private val executor: ThreadPoolExecutor = {
+      if (businessThreads == 0) {
+         if (isDebugEnabled) debug("Requests will be executed by the worker threads")
+         null
+      } else {
+         if (isDebugEnabled) debug("Configured %d business threads with a queue of %d requests", businessThreads, queueSize)
+         val threadFactory = new ThreadFactory {
+            private val threadCounter = new AtomicInteger
+            override def newThread(r: Runnable): Thread = {
+               val t = new Thread(r, threadNamePrefix + "ServerBusiness-" + threadCounter.incrementAndGet)
+               t.setDaemon(true)
+               t
+            }
+         }
+         new ThreadPoolExecutor(businessThreads, businessThreads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue[Runnable](queueSize), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy)
+      }
+   }
+
+   private val latencies = new ConcurrentHashMap[String, LatencyHistogram]
+
+   def isInline: Boolean = executor == null
+
+   def execute(task: Runnable) {
+      executor.execute(task)
+   }
+
+   /**
+    * Returns the number of tasks waiting for a business thread.
+    */
+   def getQueueDepth: Int = if (executor == null) 0 else executor.getQueue.size
+
+   def recordLatency(op: Enumeration#Value, nanos: Long) {
+      val name = op.toString
+      var histogram = latencies.get(name)
+      if (histogram == null) {
+         histogram = new LatencyHistogram
+         val existing = latencies.putIfAbsent(name, histogram)
+         if (existing != null) histogram = existing
+      }
+      histogram.record(nanos)
+   }
+
+   /**
+    * Returns the latency histograms of the operations executed so far, keyed by operation name.
+    */
+   def getLatencies: Map[String, LatencyHistogram] =
+      Map.empty[String, LatencyHistogram] ++ (for (e <- latencies.entrySet) yield (e.getKey, e.getValue))
+
+   def stop {
+      if (executor != null) executor.shutdown
+   }
+}
@@ -51,11 +51,21 @@ abstract class ChannelBuffer {
     */
    def readBytes(length: Int): ChannelBuffer
 
+   /**
+    * Returns a buffer sharing the given number of bytes read from the current buffer, without copying them.
+    */
+   def readSlice(length: Int): ChannelBuffer
+
    /**
     * Returns the reader index.
     */
    def readerIndex: Int
 
+   /**
+    * Gets the Byte at the given absolute index, without modifying the reader index.
+    */
+   def getByte(index: Int): Byte
+
    /**
     * Read bytes from the buffer into the destination byte array. The amount of bytes to read are defined
     * by the array's length.
@@ -18,4 +18,11 @@ object ChannelBuffers {
       ChannelBuffersAdapter.dynamicBuffer
    }
 
+   /**
+    * Creates a buffer made of the readable bytes of the given buffers, without copying them.
+    */
+   def compositeBuffer(buffers: ChannelBuffer*): ChannelBuffer = {
+      ChannelBuffersAdapter.compositeBuffer(buffers : _*)
+   }
+
 }
\ No newline at end of file
@@ -20,4 +20,9 @@ abstract class ChannelFuture {
    def await(timeoutMillis: Long): Boolean
    def awaitUninterruptibly(timeout: Long, unit: TimeUnit): Boolean
    def awaitUninterruptibly(timeoutMillis: Long): Boolean
+
+   /**
+    * Closes the channel once the operation is done, whether it succeeded or not.
+    */
+   def closeChannelOnComplete
 }
\ No newline at end of file
@@ -22,4 +22,15 @@ abstract class Decoder {
     * Decodes the received data so far into a frame when the channel is disconnected.
     */
    def decodeLast(ctx: ChannelHandlerContext, buffer: ChannelBuffer): AnyRef
+
+   /**
+    * Invoked once all the data read from the channel in one go has been decoded, so that the responses to the
+    * requests it contained can be written together.
+    */
+   def flush(ctx: ChannelHandlerContext) {}
+
+   /**
+    * Invoked once the channel has been closed, so that any state kept for it can be released.
+    */
+   def channelClosed(ctx: ChannelHandlerContext) {}
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package org.infinispan.server.core.transport.netty
 
 import org.jboss.netty.channel.{Channel => NettyChannel}
+import org.jboss.netty.buffer.{ChannelBuffers => NettyChannelBuffers, ChannelBuffer => NettyChannelBuffer}
 import org.infinispan.server.core.transport.{ChannelBuffer, ChannelFuture, Channel}
 
 /**
@@ -16,6 +17,9 @@ class ChannelAdapter(ch: NettyChannel) extends Channel {
    override def write(message: Any): ChannelFuture = {
       val toWrite = message match {
          case buffer: ChannelBuffer => buffer.getUnderlyingChannelBuffer
+         // A batch made of buffers only is written as a single composite buffer, other batches are left to the encoder
+         case batch: Seq[_] if batch.forall(_.isInstanceOf[ChannelBuffer]) => NettyChannelBuffers.wrappedBuffer(
+            batch.map(_.asInstanceOf[ChannelBuffer].getUnderlyingChannelBuffer.asInstanceOf[NettyChannelBuffer]): _*)
          case _ => message
       }
       new ChannelFutureAdapter(ch.write(toWrite))
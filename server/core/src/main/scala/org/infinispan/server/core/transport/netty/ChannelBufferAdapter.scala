@@ -19,14 +19,19 @@ class ChannelBufferAdapter(buffer: NettyChannelBuffer) extends ChannelBuffer {
    override def readUnsignedLong: Long = VLong.read(this)
    override def readUnsignedShort: Int = buffer.readUnsignedShort
    override def readBytes(length: Int): ChannelBuffer = new ChannelBufferAdapter(buffer.readBytes(length))
-   override def readerIndex: Int = readerIndex
+   override def readSlice(length: Int): ChannelBuffer = new ChannelBufferAdapter(buffer.readSlice(length))
+   override def readerIndex: Int = buffer.readerIndex
+   override def getByte(index: Int): Byte = buffer.getByte(index)
    override def readBytes(dst: Array[Byte]) = buffer.readBytes(dst) 
    override def readRangedBytes: Array[Byte] = {
       val length = readUnsignedInt
       if (length > 0) {
+         // Slice before allocating, so that the array is only allocated once all its bytes have been received, rather
+         // than each time a partially received request is read again
+         val slice = buffer.readSlice(length)
          val array = new Array[Byte](length)
-         readBytes(array)
-         array;
+         slice.getBytes(slice.readerIndex, array)
+         array
       } else {
          Array[Byte]()
       }
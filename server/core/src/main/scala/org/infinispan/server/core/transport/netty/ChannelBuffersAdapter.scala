@@ -1,7 +1,7 @@
 package org.infinispan.server.core.transport.netty
 
 import org.infinispan.server.core.transport.{ChannelBuffer}
-import org.jboss.netty.buffer.{ChannelBuffers => NettyChannelBuffers}
+import org.jboss.netty.buffer.{ChannelBuffers => NettyChannelBuffers, ChannelBuffer => NettyChannelBuffer}
 
 /**
  * A channel buffers factory adapter for Netty buffers.
@@ -19,4 +19,9 @@ object ChannelBuffersAdapter {
       new ChannelBufferAdapter(NettyChannelBuffers.dynamicBuffer());
    }
 
+   def compositeBuffer(buffers: ChannelBuffer*): ChannelBuffer = {
+      new ChannelBufferAdapter(NettyChannelBuffers.wrappedBuffer(
+         buffers.map(_.getUnderlyingChannelBuffer.asInstanceOf[NettyChannelBuffer]) : _*))
+   }
+
 }
\ No newline at end of file
@@ -1,6 +1,6 @@
 package org.infinispan.server.core.transport.netty
 
-import org.jboss.netty.channel.{ChannelFuture => NettyChannelFuture}
+import org.jboss.netty.channel.{ChannelFutureListener, ChannelFuture => NettyChannelFuture}
 import org.infinispan.server.core.transport.{Channel, ChannelFuture}
 import java.util.concurrent.TimeUnit
 
@@ -39,5 +39,7 @@ class ChannelFutureAdapter(val future: NettyChannelFuture) extends ChannelFuture
    override def awaitUninterruptibly(timeout: Long, unit: TimeUnit): Boolean = future.awaitUninterruptibly(timeout, unit)
    
    override def awaitUninterruptibly(timeoutMillis: Long): Boolean = future.awaitUninterruptibly(timeoutMillis)
+
+   override def closeChannelOnComplete = future.addListener(ChannelFutureListener.CLOSE)
    
 }
\ No newline at end of file
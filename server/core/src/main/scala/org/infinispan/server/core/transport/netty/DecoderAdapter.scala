@@ -3,7 +3,7 @@ package org.infinispan.server.core.transport.netty
 import org.jboss.netty.handler.codec.replay.ReplayingDecoder
 import org.jboss.netty.buffer.{ChannelBuffer => NettyChannelBuffer}
 import org.infinispan.server.core.transport._
-import org.jboss.netty.channel.{ChannelStateEvent, ExceptionEvent => NettyExceptionEvent, ChannelHandlerContext => NettyChannelHandlerContext, Channel => NettyChannel}
+import org.jboss.netty.channel.{MessageEvent, ChannelStateEvent, ExceptionEvent => NettyExceptionEvent, ChannelHandlerContext => NettyChannelHandlerContext, Channel => NettyChannel}
 
 /**
  * A protocol decoder for Netty.
@@ -18,6 +18,15 @@ class DecoderAdapter(decoder: Decoder, transport: NettyTransport) extends Replay
       decoder.decode(new ChannelHandlerContextAdapter(nCtx), new ChannelBufferAdapter(nBuffer))
    }
 
+   override def messageReceived(ctx: NettyChannelHandlerContext, e: MessageEvent) {
+      try {
+         super.messageReceived(ctx, e)
+      } finally {
+         // All the requests read have been decoded, so write their responses
+         decoder.flush(new ChannelHandlerContextAdapter(ctx))
+      }
+   }
+
    override def exceptionCaught(ctx: NettyChannelHandlerContext, e: NettyExceptionEvent) {
       decoder.exceptionCaught(new ChannelHandlerContextAdapter(ctx), new ExceptionEventAdapter(e));
    }
@@ -32,4 +41,12 @@ class DecoderAdapter(decoder: Decoder, transport: NettyTransport) extends Replay
       super.channelOpen(ctx, e)
    }
 
+   override def channelClosed(ctx: NettyChannelHandlerContext, e: ChannelStateEvent) {
+      try {
+         super.channelClosed(ctx, e)
+      } finally {
+         decoder.channelClosed(new ChannelHandlerContextAdapter(ctx))
+      }
+   }
+
 }
\ No newline at end of file
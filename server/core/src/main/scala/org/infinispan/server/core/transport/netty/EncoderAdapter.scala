@@ -3,6 +3,7 @@ package org.infinispan.server.core.transport.netty
 import org.jboss.netty.handler.codec.oneone.OneToOneEncoder
 import org.jboss.netty.channel.{ChannelHandlerContext => NettyChannelHandlerContext}
 import org.jboss.netty.channel.{Channel => NettyChannel}
+import org.jboss.netty.buffer.{ChannelBuffers => NettyChannelBuffers, ChannelBuffer => NettyChannelBuffer}
 import org.infinispan.server.core.transport.{ChannelBuffer, Encoder}
 
 /**
@@ -14,13 +15,22 @@ import org.infinispan.server.core.transport.{ChannelBuffer, Encoder}
 class EncoderAdapter(encoder: Encoder) extends OneToOneEncoder {
 
    protected override def encode(nCtx: NettyChannelHandlerContext, ch: NettyChannel, msg: AnyRef): AnyRef = {
-      var ret = encoder.encode(new ChannelHandlerContextAdapter(nCtx), new ChannelAdapter(ch), msg);
-      ret = ret match {
-         // In this case, Netty mandates that its own ChannelBuffer is sent down, so take it from the Channel wrapper. 
+      msg match {
+         // Responses written together are encoded into a single composite buffer, so that they're sent at once
+         case batch: Seq[_] => NettyChannelBuffers.wrappedBuffer(
+            batch.map(m => encode(nCtx, ch, m.asInstanceOf[AnyRef]).asInstanceOf[NettyChannelBuffer]): _*)
+         // Buffers in a batch have already been encoded
          case cb: ChannelBuffer => cb.getUnderlyingChannelBuffer
-         case _ => ret
+         case _ => {
+            var ret = encoder.encode(new ChannelHandlerContextAdapter(nCtx), new ChannelAdapter(ch), msg);
+            ret = ret match {
+               // In this case, Netty mandates that its own ChannelBuffer is sent down, so take it from the Channel wrapper.
+               case cb: ChannelBuffer => cb.getUnderlyingChannelBuffer
+               case _ => ret
+            }
+            ret
+         }
       }
-      ret
    }
    
 }
\ No newline at end of file
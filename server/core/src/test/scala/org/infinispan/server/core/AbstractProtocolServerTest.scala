@@ -55,6 +55,18 @@ class AbstractProtocolServerTest {
       expectIllegalArgument(p, createServer)
    }
 
+   def testValidateNegativeBusinessThreads {
+      val p = new Properties
+      p.setProperty(PROP_KEY_BUSINESS_THREADS, "-1")
+      expectIllegalArgument(p, createServer)
+   }
+
+   def testValidateZeroBusinessQueueSize {
+      val p = new Properties
+      p.setProperty(PROP_KEY_BUSINESS_QUEUE_SIZE, "0")
+      expectIllegalArgument(p, createServer)
+   }
+
    def testHostPropertySubstitution(m: Method) {
       var host = "1.2.3.4";
       var p = new Properties
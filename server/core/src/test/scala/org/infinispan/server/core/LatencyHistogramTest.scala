@@ -0,0 +1,41 @@
+package org.infinispan.server.core
+
+import org.testng.annotations.Test
+import org.testng.Assert._
+import java.util.concurrent.TimeUnit.{MICROSECONDS, SECONDS}
+
+/**
+ * Latency histogram test.
+ *
+ * @since 5.0
+ */
+@Test(groups = Array("functional"), testName = "server.core.LatencyHistogramTest")
+class LatencyHistogramTest {
+
+   def testEmpty {
+      val h = new LatencyHistogram
+      assertEquals(h.count, 0)
+      assertEquals(h.percentile(50), -1)
+      assertEquals(h.toString, "")
+   }
+
+   def testBuckets {
+      val h = new LatencyHistogram
+      h.record(MICROSECONDS.toNanos(1))
+      h.record(MICROSECONDS.toNanos(3))
+      h.record(MICROSECONDS.toNanos(4))
+      h.record(MICROSECONDS.toNanos(1000))
+      h.record(SECONDS.toNanos(2))
+      assertEquals(h.count, 5)
+      assertEquals(h.toString, "1=1,4=2,1024=1,>1000000=1")
+   }
+
+   def testPercentiles {
+      val h = new LatencyHistogram
+      for (i <- 0 until 99) h.record(MICROSECONDS.toNanos(100))
+      h.record(MICROSECONDS.toNanos(5000))
+      assertEquals(h.percentile(50), 128)
+      assertEquals(h.percentile(99), 128)
+      assertEquals(h.percentile(100), 8192)
+   }
+}
@@ -2,6 +2,7 @@ package org.infinispan.server.hotrod
 
 import org.infinispan.server.core.RequestParameters
 import org.infinispan.server.core.CacheValue
+import org.infinispan.server.core.RequestExecutor
 import org.infinispan.server.core.transport.{ChannelBuffer}
 import org.infinispan.Cache
 import org.infinispan.stats.Stats
@@ -56,14 +57,14 @@ abstract class AbstractVersionedDecoder {
    def createGetResponse(header: HotRodHeader, v: CacheValue, op: Enumeration#Value): AnyRef
 
    /**
-    * Handle a protocol specific message.
+    * Read a protocol specific message, and return the function handling it.
     */
-   def handleCustomRequest(header: HotRodHeader, buffer: ChannelBuffer, cache: Cache[ByteArrayKey, CacheValue]): AnyRef
+   def readCustomRequest(header: HotRodHeader, buffer: ChannelBuffer, cache: Cache[ByteArrayKey, CacheValue]): () => AnyRef
 
    /**
-    * Create a response for the stats command.
+    * Create a response for the stats command, including the request execution statistics of the server.
     */
-   def createStatsResponse(header: HotRodHeader, stats: Stats): AnyRef
+   def createStatsResponse(header: HotRodHeader, stats: Stats, requestExecutor: RequestExecutor): AnyRef
 
    /**
     * Create an error response based on the Throwable instance received.
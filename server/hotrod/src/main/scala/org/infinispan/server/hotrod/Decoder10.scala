@@ -13,6 +13,9 @@ import org.infinispan.util.concurrent.TimeoutException
 import java.io.IOException
 import org.infinispan.context.Flag.SKIP_REMOTE_LOOKUP
 import org.infinispan.util.ByteArrayKey
+import org.infinispan.server.core.VersionGenerator._
+import org.infinispan.server.core.AbstractProtocolDecoder.toMillis
+import java.util.concurrent.TimeUnit.MILLISECONDS
 
 /**
  * HotRod protocol decoder specific for specification version 1.0.
@@ -41,6 +44,9 @@ object Decoder10 extends AbstractVersionedDecoder with Logging {
          case 0x15 => StatsRequest
          case 0x17 => PingRequest
          case 0x19 => BulkGetRequest
+         case 0x1B => PutAllRequest
+         case 0x1D => GetAllRequest
+         case 0x1F => AddInvalidationListenerRequest
          case _ => throw new HotRodUnknownOperationException("Unknown operation: " + streamOp, messageId)
       }
       if (isTraceEnabled) trace("Operation code: %d has been matched to %s", streamOp, op)
@@ -117,48 +123,83 @@ object Decoder10 extends AbstractVersionedDecoder with Logging {
             h.topologyId, None, 0)
    }
 
-   override def handleCustomRequest(h: HotRodHeader, buffer: ChannelBuffer, cache: Cache[ByteArrayKey, CacheValue]): AnyRef = {
+   override def readCustomRequest(h: HotRodHeader, buffer: ChannelBuffer, cache: Cache[ByteArrayKey, CacheValue]): () => AnyRef = {
       h.op match {
          case RemoveIfUnmodifiedRequest => {
             val k = readKey(buffer)
             val params = readParameters(h, buffer)
-            val prev = cache.get(k)
-            if (prev != null) {
-               if (prev.version == params.get.streamVersion) {
-                  val removed = cache.remove(k, prev);
-                  if (removed)
-                     createResponse(h, RemoveIfUnmodifiedResponse, Success, prev)
-                  else
+            () => {
+               val prev = cache.get(k)
+               if (prev != null) {
+                  if (prev.version == params.get.streamVersion) {
+                     val removed = cache.remove(k, prev);
+                     if (removed)
+                        createResponse(h, RemoveIfUnmodifiedResponse, Success, prev)
+                     else
+                        createResponse(h, RemoveIfUnmodifiedResponse, OperationNotExecuted, prev)
+                  } else {
                      createResponse(h, RemoveIfUnmodifiedResponse, OperationNotExecuted, prev)
+                  }
                } else {
-                  createResponse(h, RemoveIfUnmodifiedResponse, OperationNotExecuted, prev)
+                  createResponse(h, RemoveIfUnmodifiedResponse, KeyDoesNotExist, prev)
                }
-            } else {
-               createResponse(h, RemoveIfUnmodifiedResponse, KeyDoesNotExist, prev)
             }
          }
          case ContainsKeyRequest => {
             val k = readKey(buffer)
-            if (cache.containsKey(k))
-               new Response(h.messageId, h.cacheName, h.clientIntel, ContainsKeyResponse, Success, h.topologyId)
-            else
-               new Response(h.messageId, h.cacheName, h.clientIntel, ContainsKeyResponse, KeyDoesNotExist, h.topologyId)
+            () => {
+               if (cache.containsKey(k))
+                  new Response(h.messageId, h.cacheName, h.clientIntel, ContainsKeyResponse, Success, h.topologyId)
+               else
+                  new Response(h.messageId, h.cacheName, h.clientIntel, ContainsKeyResponse, KeyDoesNotExist, h.topologyId)
+            }
          }
-         case ClearRequest => {
+         case ClearRequest => () => {
             // Get an optimised cache in case we can make the operation more efficient
             getOptimizedCache(h, cache).clear
             new Response(h.messageId, h.cacheName, h.clientIntel, ClearResponse, Success, h.topologyId)
          }
-         case PingRequest => new Response(h.messageId, h.cacheName, h.clientIntel, PingResponse, Success, h.topologyId)
+         case PingRequest => () => new Response(h.messageId, h.cacheName, h.clientIntel, PingResponse, Success, h.topologyId)
          case BulkGetRequest => {
             val count = buffer.readUnsignedInt
             if (isTraceEnabled) trace("About to create bulk response, count = " + count)
-            new BulkGetResponse(h.messageId, h.cacheName, h.clientIntel, BulkGetResponse, Success, h.topologyId, count)
+            () => new BulkGetResponse(h.messageId, h.cacheName, h.clientIntel, BulkGetResponse, Success, h.topologyId, count)
+         }
+         case PutAllRequest => {
+            val lifespan = readLifespanOrMaxIdle(buffer)
+            val maxIdle = readLifespanOrMaxIdle(buffer)
+            val count = buffer.readUnsignedInt
+            if (isTraceEnabled) trace("About to put all %d entries", count)
+            val isClustered = cache.getAdvancedCache.getRpcManager != null
+            val entries = new java.util.HashMap[ByteArrayKey, CacheValue](count * 4 / 3 + 1)
+            for (i <- 0 until count) {
+               val k = readKey(buffer)
+               entries.put(k, new CacheValue(buffer.readRangedBytes, newVersion(isClustered)))
+            }
+            () => {
+               // A single put all per request, so that all its entries are replicated or stored at once
+               getOptimizedCache(h, cache).putAll(entries, toMillis(lifespan), MILLISECONDS, toMillis(maxIdle), MILLISECONDS)
+               new Response(h.messageId, h.cacheName, h.clientIntel, PutAllResponse, Success, h.topologyId)
+            }
+         }
+         case GetAllRequest => {
+            val count = buffer.readUnsignedInt
+            if (isTraceEnabled) trace("About to get all %d keys", count)
+            val keys = new Array[ByteArrayKey](count)
+            for (i <- 0 until count) keys(i) = readKey(buffer)
+            () => {
+               val values = new Array[Option[Array[Byte]]](count)
+               for (i <- 0 until count) {
+                  val v = cache.get(keys(i))
+                  values(i) = if (v == null) None else Some(v.data)
+               }
+               new GetAllResponse(h.messageId, h.cacheName, h.clientIntel, GetAllResponse, Success, h.topologyId, values)
+            }
          }
       }
    }
 
-   override def createStatsResponse(h: HotRodHeader, cacheStats: Stats): AnyRef = {
+   override def createStatsResponse(h: HotRodHeader, cacheStats: Stats, requestExecutor: RequestExecutor): AnyRef = {
       val stats = mutable.Map.empty[String, String]
       stats += ("timeSinceStart" -> cacheStats.getTimeSinceStart.toString)
       stats += ("currentNumberOfEntries" -> cacheStats.getCurrentNumberOfEntries.toString)
@@ -169,6 +210,9 @@ object Decoder10 extends AbstractVersionedDecoder with Logging {
       stats += ("misses" -> cacheStats.getMisses.toString)
       stats += ("removeHits" -> cacheStats.getRemoveHits.toString)
       stats += ("removeMisses" -> cacheStats.getRemoveMisses.toString)
+      stats += ("requestQueueDepth" -> requestExecutor.getQueueDepth.toString)
+      for ((op, histogram) <- requestExecutor.getLatencies)
+         stats += (("latency." + op) -> histogram.toString)
       new StatsResponse(h.messageId, h.cacheName, h.clientIntel, immutable.Map[String, String]() ++ stats, h.topologyId)
    }
 
@@ -206,6 +250,9 @@ object Decoder10 extends AbstractVersionedDecoder with Logging {
          case StatsRequest => StatsResponse
          case PingRequest => PingResponse
          case BulkGetRequest => BulkGetResponse
+         case PutAllRequest => PutAllResponse
+         case GetAllRequest => GetAllResponse
+         case AddInvalidationListenerRequest => AddInvalidationListenerResponse
       }
    }
 
@@ -226,7 +273,11 @@ object OperationResponse extends Enumeration {
    val StatsResponse = Value(0x16)
    val PingResponse = Value(0x18)
    val BulkGetResponse = Value(0x1A)
+   val PutAllResponse = Value(0x1C)
+   val GetAllResponse = Value(0x1E)
+   val AddInvalidationListenerResponse = Value(0x20)
    val ErrorResponse = Value(0x50)
+   val InvalidationEvent = Value(0x60)
 }
 
 object ProtocolFlag extends Enumeration {
@@ -7,6 +7,7 @@ import OperationStatus._
 import org.infinispan.manager.EmbeddedCacheManager
 import org.infinispan.server.hotrod.ProtocolFlag._
 import org.infinispan.server.hotrod.OperationResponse._
+import org.infinispan.server.hotrod.HotRodOperation._
 import java.nio.channels.ClosedChannelException
 import org.infinispan.{CacheException, Cache}
 import org.infinispan.util.ByteArrayKey
@@ -19,7 +20,9 @@ import java.io.{IOException, StreamCorruptedException}
  * @author Galder Zamarreño
  * @since 4.1
  */
-class HotRodDecoder(cacheManager: EmbeddedCacheManager) extends AbstractProtocolDecoder[ByteArrayKey, CacheValue] {
+class HotRodDecoder(cacheManager: EmbeddedCacheManager, requestExecutor: RequestExecutor,
+                    invalidationNotifier: InvalidationNotifier)
+      extends AbstractProtocolDecoder[ByteArrayKey, CacheValue](requestExecutor) {
    import HotRodDecoder._
    import HotRodServer._
    
@@ -109,15 +112,29 @@ class HotRodDecoder(cacheManager: EmbeddedCacheManager) extends AbstractProtocol
    override def createMultiGetResponse(h: HotRodHeader, pairs: Map[ByteArrayKey, CacheValue]): AnyRef =
       null // Unsupported
 
-   override def handleCustomRequest(h: HotRodHeader, b: ChannelBuffer, cache: Cache[ByteArrayKey, CacheValue],
-                                    ctx: ChannelHandlerContext): AnyRef = {
-      val result = h.decoder.handleCustomRequest(h, b, cache)
-      if (isTrace) trace("About to return: " + result)
-      result
+   override def readCustomRequest(h: HotRodHeader, b: ChannelBuffer, cache: Cache[ByteArrayKey, CacheValue],
+                                  ctx: ChannelHandlerContext): () => AnyRef = {
+      val request = h.op match {
+         case AddInvalidationListenerRequest => {
+            val ch = ctx.getChannel
+            // Events are only written to the channel once the response has been, so that they follow it
+            () => {
+               val start = invalidationNotifier.subscribe(h.cacheName, cache, ch)
+               new NotifyingResponse(new Response(h.messageId, h.cacheName, h.clientIntel,
+                  AddInvalidationListenerResponse, Success, h.topologyId), start)
+            }
+         }
+         case _ => h.decoder.readCustomRequest(h, b, cache)
+      }
+      if (isTrace) () => {
+         val result = request()
+         trace("About to return: " + result)
+         result
+      } else request
    }
 
    override def createStatsResponse(h: HotRodHeader, stats: Stats): AnyRef =
-      h.decoder.createStatsResponse(h, stats)
+      h.decoder.createStatsResponse(h, stats, requestExecutor)
 
    override def createErrorResponse(t: Throwable): AnyRef = {
       t match {
@@ -127,6 +144,10 @@ class HotRodDecoder(cacheManager: EmbeddedCacheManager) extends AbstractProtocol
       }
    }
 
+   override def channelClosed(ctx: ChannelHandlerContext) {
+      invalidationNotifier.unsubscribe(ctx.getChannel)
+   }
+
    override protected def getOptimizedCache(h: HotRodHeader, c: Cache[ByteArrayKey, CacheValue]): Cache[ByteArrayKey, CacheValue] = {
       h.decoder.getOptimizedCache(h, c)
    }
@@ -12,6 +12,7 @@ import scala.collection.JavaConversions._
 import collection.mutable
 import collection.immutable
 import org.infinispan.remoting.transport.Address
+import org.infinispan.distribution.ch.{SegmentedConsistentHash, ConsistentHash}
 
 /**
  * Hot Rod specific encoder.
@@ -31,27 +32,27 @@ class HotRodEncoder(cacheManager: EmbeddedCacheManager) extends Encoder {
       val isTrace = isTraceEnabled
 
       if (isTrace) trace("Encode msg %s", msg)
-      val buffer: ChannelBuffer = msg match { 
-         case r: Response => writeHeader(r, isTrace, getTopologyResponse(r))
+      val writer = msg match {
+         case r: Response => new ResponseWriter(writeHeader(r, isTrace, getTopologyResponse(r)))
       }
       msg match {
          case r: ResponseWithPrevious => {
             if (r.previous == None)
-               buffer.writeUnsignedInt(0)
+               writer.buffer.writeUnsignedInt(0)
             else
-               buffer.writeRangedBytes(r.previous.get)
+               writer.writeRangedBytes(r.previous.get)
          }
          case s: StatsResponse => {
-            buffer.writeUnsignedInt(s.stats.size)
+            writer.buffer.writeUnsignedInt(s.stats.size)
             for ((key, value) <- s.stats) {
-               buffer.writeString(key)
-               buffer.writeString(value)
+               writer.buffer.writeString(key)
+               writer.buffer.writeString(value)
             }
          }
          case g: GetWithVersionResponse => {
             if (g.status == Success) {
-               buffer.writeLong(g.version)
-               buffer.writeRangedBytes(g.data.get)
+               writer.buffer.writeLong(g.version)
+               writer.writeRangedBytes(g.data.get)
             }
          }
          case g: BulkGetResponse => {
@@ -64,18 +65,32 @@ class HotRodEncoder(cacheManager: EmbeddedCacheManager) extends Encoder {
                   iterator = iterator.take(g.count)
                }
                for (entry <- iterator) {
-                  buffer.writeByte(1) // Not done
-                  buffer.writeRangedBytes(entry.getKey.getData)
-                  buffer.writeRangedBytes(entry.getValue.data)
+                  writer.buffer.writeByte(1) // Not done
+                  writer.writeRangedBytes(entry.getKey.getData)
+                  writer.writeRangedBytes(entry.getValue.data)
                }
-               buffer.writeByte(0) // Done
+               writer.buffer.writeByte(0) // Done
             }
          }
-         case g: GetResponse => if (g.status == Success) buffer.writeRangedBytes(g.data.get)
-         case e: ErrorResponse => buffer.writeString(e.msg)
-         case _ => if (buffer == null) throw new IllegalArgumentException("Response received is unknown: " + msg);         
+         case g: GetAllResponse => {
+            if (g.status == Success) {
+               writer.buffer.writeUnsignedInt(g.values.length)
+               for (v <- g.values) {
+                  if (v == None) {
+                     writer.buffer.writeByte(0) // Not found
+                  } else {
+                     writer.buffer.writeByte(1) // Found
+                     writer.writeRangedBytes(v.get)
+                  }
+               }
+            }
+         }
+         case g: GetResponse => if (g.status == Success) writer.writeRangedBytes(g.data.get)
+         case e: ErrorResponse => writer.buffer.writeString(e.msg)
+         case i: InvalidationEvent => writer.writeRangedBytes(i.key)
+         case _ => if (writer == null) throw new IllegalArgumentException("Response received is unknown: " + msg);
       }
-      buffer
+      writer.toBuffer
    }
 
    val DEFAULT_HASH_FUNCTION_VERSION: Byte = 2
@@ -155,18 +170,24 @@ class HotRodEncoder(cacheManager: EmbeddedCacheManager) extends Encoder {
    private def writeHashTopologyHeader(h: HashDistAwareResponse, buffer: ChannelBuffer, r: Response, isTrace: Boolean) {
       if (isTrace) trace("Write hash distribution change response header %s", h)
       try {
-         val computedHashIds = checkForRehashing(r, h)
+         val (consistentHash, computedHashIds) = checkForRehashing(r, h)
+         val allHashIds = h.view.members.map(address =>
+            getAllHashIds(consistentHash, address.clusterAddress, computedHashIds(address.clusterAddress)))
          buffer.writeByte(1) // Topology changed
          buffer.writeUnsignedInt(h.view.topologyId)
          buffer.writeUnsignedShort(h.numOwners) // Num key owners
          buffer.writeByte(h.hashFunction) // Hash function
          buffer.writeUnsignedInt(h.hashSpace) // Hash space
-         buffer.writeUnsignedInt(h.view.members.size)
+         buffer.writeUnsignedInt(allHashIds.map(_.size).sum)
          var hashIdUpdateRequired = false
          val updateMembers = new ListBuffer[TopologyAddress]
-         h.view.members.foreach{address =>
-            buffer.writeString(address.host)
-            buffer.writeUnsignedShort(address.port)
+         h.view.members.zip(allHashIds).foreach{case (address, hashIds) =>
+            // A server is written once per hash id, each one routing keys to it
+            hashIds.foreach{hashId =>
+               buffer.writeString(address.host)
+               buffer.writeUnsignedShort(address.port)
+               buffer.writeInt(hashId) // Address' hash id
+            }
             val cachedHashId = address.hashIds.get(r.cacheName)
             val hashId = computedHashIds(address.clusterAddress)
             val newAddress =
@@ -179,7 +200,6 @@ class HotRodEncoder(cacheManager: EmbeddedCacheManager) extends Encoder {
                   address
                }
             updateMembers += newAddress
-            buffer.writeInt(hashId) // Address' hash id
          }
          // At least a hash id had to be updated in the view. Take the view copy and distribute it around the cluster
          if (hashIdUpdateRequired) {
@@ -198,7 +218,7 @@ class HotRodEncoder(cacheManager: EmbeddedCacheManager) extends Encoder {
 
    }
 
-   private def checkForRehashing(r: Response, h: HashDistAwareResponse): Map[Address, Int] = {
+   private def checkForRehashing(r: Response, h: HashDistAwareResponse): (ConsistentHash, Map[Address, Int]) = {
       // If we reached here, we know for sure that this is a cache configured with distribution
       val consistentHash = getCacheInstance(r.cacheName, cacheManager).getAdvancedCache.getDistributionManager.getConsistentHash
       val hashIds = mutable.Map.empty[Address, Int]
@@ -208,11 +228,57 @@ class HotRodEncoder(cacheManager: EmbeddedCacheManager) extends Encoder {
       }
       // If we reached here, no unsupported exception was thrown,
       // so no rehashing going on.
-      immutable.Map[Address, Int]() ++ hashIds
+      (consistentHash, immutable.Map[Address, Int]() ++ hashIds)
+   }
+
+   /**
+    * Servers owning several ranges of the hash space have a hash id per range, so that clients route all keys to their
+    * primary owner. Others have a single hash id.
+    */
+   private def getAllHashIds(consistentHash: ConsistentHash, address: Address, hashId: Int): Seq[Int] = {
+      consistentHash match {
+         case s: SegmentedConsistentHash => {
+            val hashIds = s.getHashIds(address)
+            if (hashIds.isEmpty) Seq(hashId) else hashIds.map(_.intValue)
+         }
+         case _ => Seq(hashId)
+      }
    }
 
 }
 
 object HotRodEncoder extends Logging {
    private val Magic = 0xA1
+   // Byte arrays at least this big are written by reference rather than copied into the response buffer
+   private val ZeroCopyThreshold = 512
+
+   /**
+    * Accumulates an encoded response. Large byte arrays, typically stored values, are not copied: the response is
+    * made of the buffers written so far and of buffers wrapping those arrays. Stored byte arrays are never modified,
+    * so they can safely be written after the encoder returns.
+    */
+   private class ResponseWriter(private var current: ChannelBuffer) {
+      private val buffers = new ListBuffer[ChannelBuffer]
+
+      def buffer: ChannelBuffer = current
+
+      def writeRangedBytes(src: Array[Byte]) {
+         if (src.length < ZeroCopyThreshold) {
+            current.writeRangedBytes(src)
+         } else {
+            current.writeUnsignedInt(src.length)
+            buffers += current
+            buffers += wrappedBuffer(src)
+            current = dynamicBuffer
+         }
+      }
+
+      def toBuffer: ChannelBuffer = {
+         if (buffers.isEmpty) current
+         else {
+            buffers += current
+            compositeBuffer(buffers : _*)
+         }
+      }
+   }
 }
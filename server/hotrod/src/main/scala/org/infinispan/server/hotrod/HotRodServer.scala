@@ -32,12 +32,13 @@ class HotRodServer extends AbstractProtocolServer("HotRod") with Logging {
    private var topologyCache: Cache[String, TopologyView] = _
    private val rand = new Random
    private val maxWaitTime = SECONDS.toMillis(30) // TODO: Make this configurable?
+   private val invalidationNotifier = new InvalidationNotifier
 
    def getAddress: TopologyAddress = address
 
    override def getEncoder: Encoder = new HotRodEncoder(getCacheManager)
 
-   override def getDecoder: Decoder = new HotRodDecoder(getCacheManager)
+   override def getDecoder: Decoder = new HotRodDecoder(getCacheManager, getRequestExecutor, invalidationNotifier)
 
    override def start(p: Properties, cacheManager: EmbeddedCacheManager) {
       val properties = if (p == null) new Properties else p
@@ -115,6 +116,7 @@ class HotRodServer extends AbstractProtocolServer("HotRod") with Logging {
    }
 
    override def stop {
+      invalidationNotifier.stop
       super.stop
       if (isClustered && topologyCache != null)
          removeSelfFromTopologyView
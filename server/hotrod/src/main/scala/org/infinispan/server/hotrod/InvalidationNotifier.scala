@@ -0,0 +1,100 @@
+package org.infinispan.server.hotrod
+
+import org.infinispan.Cache
+import org.infinispan.notifications.Listener
+import org.infinispan.notifications.cachelistener.annotation.{CacheEntryRemoved, CacheEntryModified}
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvent
+import org.infinispan.server.core.{CacheValue, Logging}
+import org.infinispan.server.core.transport.Channel
+import org.infinispan.util.ByteArrayKey
+import java.util.concurrent.ConcurrentHashMap
+import scala.collection.mutable.ListBuffer
+import scala.collection.JavaConversions._
+
+/**
+ * Pushes the keys modified or removed in a cache to the clients that subscribed to the invalidation events of that
+ * cache, so that they can keep their near caches coherent. A single listener is registered per cache, when the first
+ * client subscribes to it, and it writes an event to each of the subscribed channels once the response to their
+ * subscription has been written.
+ *
+ * @since 5.0
+ */
+class InvalidationNotifier extends Logging {
+
+   private val listeners = new ConcurrentHashMap[String, InvalidationListener]
+
+   /**
+    * Subscribes the channel to the invalidation events of the cache. Events are held back until the returned function
+    * is called, once the response to the subscription has been written to the channel.
+    */
+   def subscribe(cacheName: String, cache: Cache[ByteArrayKey, CacheValue], ch: Channel): () => Unit = {
+      var listener = listeners.get(cacheName)
+      if (listener == null) {
+         listeners.synchronized {
+            listener = listeners.get(cacheName)
+            if (listener == null) {
+               listener = new InvalidationListener(cacheName, cache)
+               cache.addListener(listener)
+               listeners.put(cacheName, listener)
+            }
+         }
+      }
+      listener.subscribe(ch)
+   }
+
+   def unsubscribe(ch: Channel) {
+      for (listener <- listeners.values) listener.unsubscribe(ch)
+   }
+
+   def stop {
+      listeners.synchronized {
+         for (listener <- listeners.values) listener.cache.removeListener(listener)
+         listeners.clear
+      }
+   }
+
+   @Listener
+   private class InvalidationListener(cacheName: String, val cache: Cache[ByteArrayKey, CacheValue]) {
+      private val subscriptions = new ConcurrentHashMap[AnyRef, Subscription]
+
+      def subscribe(ch: Channel): () => Unit = {
+         val subscription = new Subscription(ch)
+         subscriptions.put(ch.getUnderlyingChannel, subscription)
+         if (isDebugEnabled) debug("Channel %s subscribed to invalidation events of cache '%s'", ch.getUnderlyingChannel, cacheName)
+         () => subscription.start
+      }
+
+      def unsubscribe(ch: Channel) {
+         if (subscriptions.remove(ch.getUnderlyingChannel) != null && isDebugEnabled)
+            debug("Channel %s unsubscribed from invalidation events of cache '%s'", ch.getUnderlyingChannel, cacheName)
+      }
+
+      @CacheEntryModified
+      @CacheEntryRemoved
+      def keyChanged(e: CacheEntryEvent[ByteArrayKey, CacheValue]) {
+         if (!e.isPre && !subscriptions.isEmpty) {
+            val event = new InvalidationEvent(cacheName, e.getKey.getData)
+            if (isTraceEnabled) trace("Push %s to %d subscribed channels", event, subscriptions.size)
+            for (subscription <- subscriptions.values) subscription.push(event)
+         }
+      }
+   }
+
+   private class Subscription(ch: Channel) {
+      // Events pushed before the response to the subscription was written, null once it has been
+      private var heldBack = new ListBuffer[InvalidationEvent]
+
+      def push(event: InvalidationEvent) {
+         synchronized {
+            if (heldBack != null) heldBack += event else ch.write(event)
+         }
+      }
+
+      def start {
+         synchronized {
+            for (event <- heldBack) ch.write(event)
+            heldBack = null
+         }
+      }
+   }
+}
@@ -65,6 +65,20 @@ class BulkGetResponse(override val messageId: Long, override val cacheName: Stri
    }
 }
 
+class GetAllResponse(override val messageId: Long, override val cacheName: String, override val clientIntel: Short,
+                     override val operation: OperationResponse, override val status: OperationStatus,
+                     override val topologyId: Int, val values: Array[Option[Array[Byte]]])
+      extends Response(messageId, cacheName, clientIntel, operation, status, topologyId) {
+   override def toString = {
+      new StringBuilder().append("GetAllResponse").append("{")
+         .append("messageId=").append(messageId)
+         .append(", operation=").append(operation)
+         .append(", status=").append(status)
+         .append(", count=").append(values.length)
+         .append("}").toString
+   }
+}
+
 class GetWithVersionResponse(override val messageId: Long, override val cacheName: String,
                              override val clientIntel: Short, override val operation: OperationResponse,
                              override val status: OperationStatus,
@@ -108,6 +122,20 @@ class StatsResponse(override val messageId: Long, override val cacheName: String
    }
 }
 
+/**
+ * Event pushed to the clients subscribed to the invalidation events of a cache, once a key has been modified or
+ * removed. It is not sent in response to any particular request, so its message id is 0.
+ */
+class InvalidationEvent(override val cacheName: String, val key: Array[Byte])
+      extends Response(0, cacheName, 1, InvalidationEvent, Success, 0) {
+   override def toString = {
+      new StringBuilder().append("InvalidationEvent").append("{")
+         .append("cacheName=").append(cacheName)
+         .append(", key=").append(Util.printArray(key, true))
+         .append("}").toString
+   }
+}
+
 abstract class AbstractTopologyResponse(val view: TopologyView)
 
 case class TopologyAwareResponse(override val view: TopologyView)
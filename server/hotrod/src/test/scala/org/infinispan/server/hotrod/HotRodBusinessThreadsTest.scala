@@ -0,0 +1,46 @@
+package org.infinispan.server.hotrod
+
+import org.testng.annotations.Test
+import java.lang.reflect.Method
+import test.HotRodTestingUtil._
+import org.testng.Assert._
+import test.UniquePortThreadLocal
+import org.infinispan.manager.EmbeddedCacheManager
+import org.infinispan.config.Configuration
+import org.infinispan.loaders.dummy.DummyInMemoryCacheStore
+import org.infinispan.test.fwk.TestCacheManagerFactory
+import org.infinispan.server.core.Main._
+import java.util.Properties
+
+/**
+ * Tests that requests to a cache with a cache store are executed by the business threads, and that their latencies
+ * show up in the stats.
+ *
+ * @since 5.0
+ */
+@Test(groups = Array("functional"), testName = "server.hotrod.HotRodBusinessThreadsTest")
+class HotRodBusinessThreadsTest extends HotRodSingleNodeTest {
+
+   override def createTestCacheManager: EmbeddedCacheManager = {
+      val cfg = new Configuration
+      cfg.getCacheLoaderManagerConfig.addCacheLoaderConfig(new DummyInMemoryCacheStore.Cfg(getClass.getSimpleName))
+      TestCacheManagerFactory.createCacheManager(cfg)
+   }
+
+   override protected def createStartHotRodServer(cacheManager: EmbeddedCacheManager) = {
+      val props = new Properties
+      props.setProperty(PROP_KEY_BUSINESS_THREADS, "4")
+      startHotRodServer(cacheManager, UniquePortThreadLocal.get.intValue, props)
+   }
+
+   def testRequestsExecutedByBusinessThreads(m: Method) {
+      assertFalse(server.getRequestExecutor.isInline)
+      client.assertPut(m)
+      assertSuccess(client.assertGet(m), v(m))
+      val s = client.stats
+      assertEquals(s.get("requestQueueDepth").get, "0")
+      assertTrue(s.get("latency.PutRequest").isDefined)
+      assertTrue(s.get("latency.GetRequest").isDefined)
+   }
+
+}
@@ -29,6 +29,7 @@ class HotRodStatsTest extends HotRodSingleNodeTest {
       assertEquals(s.get("misses").get, "0")
       assertEquals(s.get("removeHits").get, "0")
       assertEquals(s.get("removeMisses").get, "0")
+      assertEquals(s.get("requestQueueDepth").get, "0")
 
       client.assertPut(m)
       s = client.stats
@@ -40,6 +41,8 @@ class HotRodStatsTest extends HotRodSingleNodeTest {
       assertEquals(s.get("hits").get, "1")
       assertEquals(s.get("misses").get, "0")
       assertEquals(s.get("retrievals").get, "1")
+      assertTrue(s.get("latency.PutRequest").isDefined)
+      assertTrue(s.get("latency.GetRequest").isDefined)
    }
 
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+package org.infinispan.server.memcached
+
+import java.nio.ByteBuffer
+import org.infinispan.server.core.transport.ChannelBuffer
+import org.infinispan.server.core.transport.ChannelBuffers._
+
+/**
+ * Memcached binary protocol constants and utilities.
+ *
+ * Requests and responses start with a 24 byte header, made of the magic byte, the operation code, the key length,
+ * the extras length, the data type, a status in responses, the total length of the extras, key and value that follow
+ * the header, an opaque value that is sent back as is, and the version, or cas, of the entry.
+ *
+ * @since 5.0
+ */
+object BinaryProtocolUtil {
+   final val MagicRequest: Byte = 0x80.toByte
+   final val MagicResponse: Byte = 0x81.toByte
+   final val HeaderLength = 24
+
+   final val GetOpCode: Byte = 0x00
+   final val SetOpCode: Byte = 0x01
+   final val AddOpCode: Byte = 0x02
+   final val ReplaceOpCode: Byte = 0x03
+   final val DeleteOpCode: Byte = 0x04
+   final val IncrementOpCode: Byte = 0x05
+   final val DecrementOpCode: Byte = 0x06
+   final val QuitOpCode: Byte = 0x07
+   final val FlushOpCode: Byte = 0x08
+   final val GetQOpCode: Byte = 0x09
+   final val NoOpOpCode: Byte = 0x0A
+   final val VersionOpCode: Byte = 0x0B
+   final val GetKOpCode: Byte = 0x0C
+   final val GetKQOpCode: Byte = 0x0D
+   final val AppendOpCode: Byte = 0x0E
+   final val PrependOpCode: Byte = 0x0F
+   final val StatOpCode: Byte = 0x10
+   final val SetQOpCode: Byte = 0x11
+   final val AddQOpCode: Byte = 0x12
+   final val ReplaceQOpCode: Byte = 0x13
+   final val DeleteQOpCode: Byte = 0x14
+   final val IncrementQOpCode: Byte = 0x15
+   final val DecrementQOpCode: Byte = 0x16
+   final val QuitQOpCode: Byte = 0x17
+   final val FlushQOpCode: Byte = 0x18
+   final val AppendQOpCode: Byte = 0x19
+   final val PrependQOpCode: Byte = 0x1A
+
+   final val NoError: Short = 0x0000
+   final val KeyNotFound: Short = 0x0001
+   final val KeyExists: Short = 0x0002
+   final val InvalidArguments: Short = 0x0004
+   final val ItemNotStored: Short = 0x0005
+   final val NonNumericValue: Short = 0x0006
+   final val UnknownCommand: Short = 0x0081
+   final val ServerError: Short = 0x0084
+
+   /**
+    * Expiration of increment and decrement requests meaning that the counter must not be created if missing.
+    */
+   final val NoInitialValue = 0xFFFFFFFF
+
+   final val MaxKeyLength = 250
+
+   /**
+    * Quiet operations only get a response when they fail, or in the case of GETQ and GETKQ, when the key is found.
+    */
+   def isQuiet(opCode: Byte): Boolean =
+      opCode == GetQOpCode || opCode == GetKQOpCode || (opCode >= SetQOpCode && opCode <= PrependQOpCode)
+
+   /**
+    * Builds a response with no extras, key or value.
+    */
+   def buildResponse(opCode: Byte, status: Short, opaque: Int, cas: Long): ChannelBuffer =
+      buildResponse(opCode, status, opaque, cas, false, 0, null, null)
+
+   /**
+    * Builds a response carrying the given value, such as an error message or a counter.
+    */
+   def buildResponse(opCode: Byte, status: Short, opaque: Int, cas: Long, value: Array[Byte]): ChannelBuffer =
+      buildResponse(opCode, status, opaque, cas, false, 0, null, value)
+
+   /**
+    * Builds a response, writing its header, extras and key into a single array, followed by the value, which is
+    * written to the channel without being copied. The only extras sent back to clients are the flags of retrieved
+    * values.
+    */
+   def buildResponse(opCode: Byte, status: Short, opaque: Int, cas: Long, withFlags: Boolean, flags: Long,
+                     key: Array[Byte], value: Array[Byte]): ChannelBuffer = {
+      val extrasLength = if (withFlags) 4 else 0
+      val keyLength = if (key == null) 0 else key.length
+      val valueLength = if (value == null) 0 else value.length
+      val header = ByteBuffer.allocate(HeaderLength + extrasLength + keyLength)
+      header.put(MagicResponse).put(opCode).putShort(keyLength.toShort).put(extrasLength.toByte).put(0.toByte)
+         .putShort(status).putInt(extrasLength + keyLength + valueLength).putInt(opaque).putLong(cas)
+      if (withFlags) header.putInt(flags.toInt)
+      if (keyLength > 0) header.put(key)
+      if (valueLength > 0) wrappedBuffer(header.array, value) else wrappedBuffer(header.array)
+   }
+
+   /**
+    * Converts a counter into its 8 byte, big endian, representation.
+    */
+   def counterBytes(counter: Long): Array[Byte] = ByteBuffer.allocate(8).putLong(counter).array
+}
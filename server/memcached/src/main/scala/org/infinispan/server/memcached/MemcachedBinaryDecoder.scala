@@ -0,0 +1,343 @@
+package org.infinispan.server.memcached
+
+import org.infinispan.server.core.Operation._
+import org.infinispan.server.memcached.MemcachedOperation._
+import org.infinispan.server.memcached.BinaryProtocolUtil._
+import org.infinispan.server.memcached.TextProtocolUtil._
+import org.infinispan.context.Flag
+import java.util.concurrent.{TimeUnit, ScheduledExecutorService}
+import java.io.IOException
+import java.nio.channels.ClosedChannelException
+import org.infinispan.stats.Stats
+import org.infinispan.server.core._
+import org.infinispan.{AdvancedCache, Version, CacheException, Cache}
+import org.infinispan.util.Util
+import collection.mutable.ListBuffer
+import transport.{ChannelHandlerContext, ChannelBuffer}
+
+/**
+ * A Memcached binary protocol decoder, which shares the storage and retrieval operations with the text protocol
+ * decoder, and stores the same {@link MemcachedValue}s, so that clients of either protocol see each other's data.
+ *
+ * Each request is only read once fully received, and its numbers are read as such rather than parsed from strings.
+ * Quiet requests only get a response when they fail, so a multi-get is sent as a series of GETKQ requests followed by a
+ * NOOP, whose response tells the client that the responses to all the hits have been received. Since the responses to
+ * the requests read in one go are written at once, the hits and the NOOP response usually go out in a single write.
+ *
+ * @since 5.0
+ */
+class MemcachedBinaryDecoder(cache: Cache[String, MemcachedValue], scheduler: ScheduledExecutorService,
+                             requestExecutor: RequestExecutor)
+      extends AbstractProtocolDecoder[String, MemcachedValue](requestExecutor) {
+   import MemcachedBinaryDecoder._
+
+   type SuitableParameters = MemcachedParameters
+   type SuitableHeader = MemcachedBinaryHeader
+
+   private lazy val isStatsEnabled = cache.getConfiguration.isExposeJmxStatistics
+   private final val counters = new MemcachedCounters
+   // Set once a request not starting with the magic byte has been received, since the stream cannot be read any more
+   @volatile private var isCorrupted = false
+
+   override def readHeader(b: ChannelBuffer): Option[MemcachedBinaryHeader] = {
+      if (isCorrupted) {
+         b.readByte // Discard whatever is received until the channel gets closed
+         return None
+      }
+      val magic = b.readByte
+      if (magic != MagicRequest) {
+         isCorrupted = true
+         throw new MemcachedBinaryException(InvalidArguments, 0, 0, "Unexpected magic byte: " + magic, null)
+      }
+      val opCode = b.readByte
+      val keyLength = b.readUnsignedShort
+      val extrasLength = b.readUnsignedByte
+      b.readByte // Data type, reserved
+      b.readUnsignedShort // Virtual bucket id, unused
+      val bodyLength = b.readInt
+      val opaque = b.readInt
+      val cas = b.readLong
+      if (bodyLength < 0) {
+         isCorrupted = true
+         throw new MemcachedBinaryException(InvalidArguments, opCode, opaque, "Invalid body length: " + bodyLength, null)
+      }
+      // Slicing fails before anything gets allocated when the body has not been fully received yet, and consumes the
+      // whole request otherwise, so that any invalid content found afterwards does not affect the next requests
+      val body = b.readSlice(bodyLength)
+      val valueLength = bodyLength - extrasLength - keyLength
+      val quiet = isQuiet(opCode)
+      val op = opCode match {
+         case GetOpCode | GetQOpCode | GetKOpCode | GetKQOpCode => GetRequest
+         case SetOpCode | SetQOpCode => if (cas == 0) PutRequest else ReplaceIfUnmodifiedRequest
+         case AddOpCode | AddQOpCode => PutIfAbsentRequest
+         case ReplaceOpCode | ReplaceQOpCode => if (cas == 0) ReplaceRequest else ReplaceIfUnmodifiedRequest
+         case DeleteOpCode | DeleteQOpCode => if (cas == 0) RemoveRequest else RemoveIfUnmodifiedRequest
+         case IncrementOpCode | IncrementQOpCode => IncrementRequest
+         case DecrementOpCode | DecrementQOpCode => DecrementRequest
+         case AppendOpCode | AppendQOpCode => AppendRequest
+         case PrependOpCode | PrependQOpCode => PrependRequest
+         case FlushOpCode | FlushQOpCode => FlushAllRequest
+         case QuitOpCode | QuitQOpCode => QuitRequest
+         case NoOpOpCode => NoOpRequest
+         case VersionOpCode => VersionRequest
+         case StatOpCode => StatsRequest
+         case _ => throw new MemcachedBinaryException(UnknownCommand, opCode, opaque, "Unknown operation: " + opCode, null)
+      }
+      if (isTraceEnabled) trace("Operation: %s, opcode: %s, quiet: %s", op, opCode, quiet)
+
+      def checkLengths(validExtras: Boolean, requiresKey: Boolean, allowsKey: Boolean, allowsValue: Boolean) {
+         if (!validExtras || valueLength < 0 || (requiresKey && keyLength == 0) || (!allowsKey && keyLength > 0)
+               || (!allowsValue && valueLength > 0))
+            throw new MemcachedBinaryException(InvalidArguments, opCode, opaque, "Invalid extras (" + extrasLength
+               + "), key (" + keyLength + ") or value (" + valueLength + ") length", null)
+         if (keyLength > MaxKeyLength)
+            throw new MemcachedBinaryException(InvalidArguments, opCode, opaque, "Key length over the "
+               + MaxKeyLength + " character limit", null)
+      }
+
+      var flags = 0L
+      var expiration = 0
+      var delta = 0L
+      var initial = 0L
+      op match {
+         case PutRequest | PutIfAbsentRequest | ReplaceRequest | ReplaceIfUnmodifiedRequest => {
+            checkLengths(extrasLength == 8, true, true, true)
+            flags = body.readInt & 0xFFFFFFFFL
+            expiration = body.readInt
+         }
+         case IncrementRequest | DecrementRequest => {
+            checkLengths(extrasLength == 20, true, true, false)
+            delta = body.readLong
+            initial = body.readLong
+            expiration = body.readInt
+         }
+         case FlushAllRequest => {
+            checkLengths(extrasLength == 0 || extrasLength == 4, false, false, false)
+            if (extrasLength == 4) expiration = body.readInt
+         }
+         case GetRequest | RemoveRequest | RemoveIfUnmodifiedRequest =>
+            checkLengths(extrasLength == 0, true, true, false)
+         case AppendRequest | PrependRequest => checkLengths(extrasLength == 0, true, true, true)
+         case StatsRequest => checkLengths(extrasLength == 0, false, true, false)
+         case _ => checkLengths(extrasLength == 0, false, false, false)
+      }
+      val key = if (keyLength > 0) {
+         val keyBytes = new Array[Byte](keyLength)
+         body.readBytes(keyBytes)
+         new String(keyBytes, "UTF-8")
+      } else ""
+      val value = new Array[Byte](valueLength)
+      if (valueLength > 0) body.readBytes(value)
+      Some(new MemcachedBinaryHeader(op, opCode, opaque, cas, quiet, key, flags, expiration, delta, initial, value))
+   }
+
+   override def readKey(h: MemcachedBinaryHeader, b: ChannelBuffer): (String, Boolean) = (h.key, false)
+
+   override def readParameters(h: MemcachedBinaryHeader, b: ChannelBuffer): Option[MemcachedParameters] =
+      Some(new MemcachedParameters(h.value, h.lifespan, -1, h.cas, h.quiet, h.flags, 0, 0))
+
+   override def createValue(h: MemcachedBinaryHeader, p: MemcachedParameters, nextVersion: Long): MemcachedValue = {
+      // Sent back as the cas of successful storage responses
+      h.nextVersion = nextVersion
+      new MemcachedValue(p.data, nextVersion, p.flags)
+   }
+
+   override def getCache(h: MemcachedBinaryHeader): Cache[String, MemcachedValue] = cache
+
+   override def readCustomRequest(h: MemcachedBinaryHeader, b: ChannelBuffer, cache: Cache[String, MemcachedValue],
+                                  ctx: ChannelHandlerContext): () => AnyRef = {
+      h.op match {
+         case AppendRequest | PrependRequest => () => append(h, cache)
+         case IncrementRequest | DecrementRequest => () => incrementOrDecrement(h, cache)
+         case RemoveIfUnmodifiedRequest => () => removeIfUnmodified(h, cache)
+         case FlushAllRequest => () => flushAll(h)
+         case NoOpRequest => () => buildResponse(h.opCode, NoError, h.opaque, 0)
+         case VersionRequest => () => buildResponse(h.opCode, NoError, h.opaque, 0, Version.VERSION.getBytes)
+         case QuitRequest => () => {
+            if (h.quiet) CloseChannel
+            else List(buildResponse(h.opCode, NoError, h.opaque, 0), CloseChannel)
+         }
+      }
+   }
+
+   private def append(h: MemcachedBinaryHeader, cache: Cache[String, MemcachedValue]): AnyRef = {
+      val prev = cache.get(h.key)
+      if (prev != null) {
+         val concatenated = h.op match {
+            case AppendRequest => Array.concat(prev.data, h.value)
+            case PrependRequest => Array.concat(h.value, prev.data)
+         }
+         val next = new MemcachedValue(concatenated, generateVersion(cache), prev.flags)
+         // If there's a concurrent modification on this key, treat it as we couldn't replace it
+         if (cache.replace(h.key, prev, next))
+            if (!h.quiet) buildResponse(h.opCode, NoError, h.opaque, next.version) else null
+         else
+            buildResponse(h.opCode, ItemNotStored, h.opaque, 0)
+      } else {
+         buildResponse(h.opCode, ItemNotStored, h.opaque, 0)
+      }
+   }
+
+   private def incrementOrDecrement(h: MemcachedBinaryHeader, cache: Cache[String, MemcachedValue]): AnyRef = {
+      val isIncrement = h.op == IncrementRequest
+      val prev = cache.get(h.key)
+      if (prev != null) {
+         val prevCounter =
+            try {
+               parseUnsignedLong(prev.data)
+            } catch {
+               case n: NumberFormatException =>
+                  return buildResponse(h.opCode, NonNumericValue, h.opaque, 0, "Non-numeric value".getBytes)
+            }
+         val newCounter =
+            if (isIncrement) incrementCounter(prevCounter, h.delta)
+            else decrementCounter(prevCounter, h.delta)
+         val next = new MemcachedValue(unsignedLongBytes(newCounter), generateVersion(cache), prev.flags)
+         if (cache.replace(h.key, prev, next)) {
+            if (isStatsEnabled) if (isIncrement) counters.incrHits.incrementAndGet else counters.decrHits.incrementAndGet
+            if (!h.quiet) buildResponse(h.opCode, NoError, h.opaque, next.version, counterBytes(newCounter))
+            else null
+         } else {
+            // If there's a concurrent modification on this key, the spec does not say what to do, so treat it as exceptional
+            throw new CacheException("Value modified since we retrieved from the cache, old value was " + new String(prev.data))
+         }
+      } else {
+         if (isStatsEnabled) if (isIncrement) counters.incrMisses.incrementAndGet else counters.decrMisses.incrementAndGet
+         if (h.expiration == NoInitialValue) {
+            buildResponse(h.opCode, KeyNotFound, h.opaque, 0)
+         } else {
+            val next = new MemcachedValue(unsignedLongBytes(h.initial), generateVersion(cache), 0)
+            val existing = cache.putIfAbsent(h.key, next, toMillis(h.lifespan), TimeUnit.MILLISECONDS)
+            if (existing != null)
+               throw new CacheException("Value created since we found it missing from the cache: " + existing)
+            if (!h.quiet) buildResponse(h.opCode, NoError, h.opaque, next.version, counterBytes(h.initial))
+            else null
+         }
+      }
+   }
+
+   private def removeIfUnmodified(h: MemcachedBinaryHeader, cache: Cache[String, MemcachedValue]): AnyRef = {
+      val prev = cache.get(h.key)
+      if (prev == null) {
+         buildResponse(h.opCode, KeyNotFound, h.opaque, 0)
+      } else if (prev.version == h.cas && cache.remove(h.key, prev)) {
+         if (!h.quiet) buildResponse(h.opCode, NoError, h.opaque, 0) else null
+      } else {
+         buildResponse(h.opCode, KeyExists, h.opaque, 0)
+      }
+   }
+
+   private def flushAll(h: MemcachedBinaryHeader): AnyRef = {
+      val flushFunction = (cache: AdvancedCache[String, MemcachedValue]) => cache.withFlags(Flag.CACHE_MODE_LOCAL, Flag.SKIP_CACHE_STORE).clear
+      if (h.expiration == 0)
+         flushFunction(cache.getAdvancedCache)
+      else
+         scheduler.schedule(new DelayedFlushAll(cache, flushFunction), toMillis(h.expiration), TimeUnit.MILLISECONDS)
+      if (!h.quiet) buildResponse(h.opCode, NoError, h.opaque, 0) else null
+   }
+
+   override def createSuccessResponse(h: MemcachedBinaryHeader, params: Option[MemcachedParameters], prev: MemcachedValue): AnyRef = {
+      if (isStatsEnabled && h.op == ReplaceIfUnmodifiedRequest) counters.replaceIfUnmodifiedHits.incrementAndGet
+      if (!h.quiet) {
+         h.op match {
+            case RemoveRequest => buildResponse(h.opCode, NoError, h.opaque, 0)
+            case _ => buildResponse(h.opCode, NoError, h.opaque, h.nextVersion)
+         }
+      } else null
+   }
+
+   override def createNotExecutedResponse(h: MemcachedBinaryHeader, params: Option[MemcachedParameters], prev: MemcachedValue): AnyRef = {
+      if (isStatsEnabled && h.op == ReplaceIfUnmodifiedRequest) counters.replaceIfUnmodifiedBadval.incrementAndGet
+      h.op match {
+         case ReplaceRequest => buildResponse(h.opCode, KeyNotFound, h.opaque, 0)
+         case _ => buildResponse(h.opCode, KeyExists, h.opaque, 0)
+      }
+   }
+
+   override def createNotExistResponse(h: MemcachedBinaryHeader, params: Option[MemcachedParameters]): AnyRef = {
+      if (isStatsEnabled && h.op == ReplaceIfUnmodifiedRequest) counters.replaceIfUnmodifiedMisses.incrementAndGet
+      buildResponse(h.opCode, KeyNotFound, h.opaque, 0)
+   }
+
+   override def createGetResponse(h: MemcachedBinaryHeader, k: String, v: MemcachedValue): AnyRef = {
+      if (v != null) {
+         val withKey = h.opCode == GetKOpCode || h.opCode == GetKQOpCode
+         buildResponse(h.opCode, NoError, h.opaque, v.version, true, v.flags, if (withKey) k.getBytes("UTF-8") else null, v.data)
+      } else if (!h.quiet) {
+         buildResponse(h.opCode, KeyNotFound, h.opaque, 0)
+      } else null
+   }
+
+   override def createMultiGetResponse(h: MemcachedBinaryHeader, pairs: Map[String, MemcachedValue]): AnyRef = {
+      val elements = new ListBuffer[ChannelBuffer]
+      for ((k, v) <- pairs)
+         elements += buildResponse(h.opCode, NoError, h.opaque, v.version, true, v.flags, k.getBytes("UTF-8"), v.data)
+      elements.toList
+   }
+
+   override def createStatsResponse(h: MemcachedBinaryHeader, stats: Stats): AnyRef = {
+      // Stat groups are not supported, only the general statistics are
+      if (!h.key.isEmpty) {
+         buildResponse(h.opCode, KeyNotFound, h.opaque, 0)
+      } else {
+         val elements = new ListBuffer[ChannelBuffer]
+         for ((stat, value) <- counters.statistics(stats, cache.getVersion))
+            elements += buildResponse(h.opCode, NoError, h.opaque, 0, false, 0, stat.getBytes, value.toString.getBytes)
+         // An empty statistic ends the list
+         elements += buildResponse(h.opCode, NoError, h.opaque, 0)
+         elements.toList
+      }
+   }
+
+   override def createErrorResponse(t: Throwable): AnyRef = {
+      val response = t match {
+         case m: MemcachedBinaryException => {
+            m.getCause match {
+               case c: ClosedChannelException => null // no-op, only log
+               case _ => buildResponse(m.opCode, m.status, m.opaque, 0, String.valueOf(m.getMessage).getBytes)
+            }
+         }
+         case c: ClosedChannelException => null // no-op, only log
+         case _ => buildResponse(0.toByte, ServerError, 0, 0, String.valueOf(t.getMessage).getBytes)
+      }
+      if (isCorrupted && response != null) List(response, CloseChannel) else response
+   }
+
+   override protected def createServerException(e: Exception, h: Option[MemcachedBinaryHeader], b: ChannelBuffer): (MemcachedBinaryException, Boolean) = {
+      val (opCode, opaque) = if (h == None) (0.toByte, 0) else (h.get.opCode, h.get.opaque)
+      e match {
+         case m: MemcachedBinaryException => (m, true)
+         case i: IOException => (new MemcachedBinaryException(InvalidArguments, opCode, opaque, i.getMessage, i), true)
+         case n: NumberFormatException => (new MemcachedBinaryException(InvalidArguments, opCode, opaque, n.getMessage, n), true)
+         case _ => (new MemcachedBinaryException(ServerError, opCode, opaque, String.valueOf(e), e), false)
+      }
+   }
+}
+
+object MemcachedBinaryDecoder extends Logging
+
+class MemcachedBinaryException(val status: Short, val opCode: Byte, val opaque: Int, message: String, cause: Throwable)
+      extends MemcachedException(message, cause)
+
+class MemcachedBinaryHeader(override val op: Enumeration#Value, val opCode: Byte, val opaque: Int, val cas: Long,
+                            val quiet: Boolean, val key: String, val flags: Long, val expiration: Int,
+                            val delta: Long, val initial: Long, val value: Array[Byte]) extends RequestHeader(op) {
+   // Version of the value created by the request, if any
+   var nextVersion: Long = 0
+
+   def lifespan: Int = if (expiration <= 0) -1 else expiration
+
+   override def toString = {
+      new StringBuilder().append("MemcachedBinaryHeader").append("{")
+         .append("op=").append(op)
+         .append(", opCode=").append(opCode)
+         .append(", opaque=").append(opaque)
+         .append(", cas=").append(cas)
+         .append(", quiet=").append(quiet)
+         .append(", key=").append(key)
+         .append(", flags=").append(flags)
+         .append(", expiration=").append(expiration)
+         .append(", value=").append(Util.printArray(value, true))
+         .append("}").toString
+   }
+}
@@ -2,311 +2,349 @@ package org.infinispan.server.memcached
 
 import org.infinispan.server.core.Operation._
 import org.infinispan.server.memcached.MemcachedOperation._
+import org.infinispan.server.memcached.TextProtocolUtil._
 import org.infinispan.context.Flag
 import java.util.concurrent.{TimeUnit, ScheduledExecutorService}
 import java.io.{IOException, EOFException, StreamCorruptedException}
 import java.nio.channels.ClosedChannelException
+import java.util.Arrays
 import java.util.concurrent.atomic.AtomicLong
 import org.infinispan.stats.Stats
 import org.infinispan.server.core._
 import org.infinispan.{AdvancedCache, Version, CacheException, Cache}
 import org.infinispan.server.core.transport.ChannelBuffers._
 import org.infinispan.util.Util
-import collection.mutable.{HashMap, ListBuffer}
-import scala.collection.immutable
+import collection.mutable.{ArrayBuffer, ListBuffer}
 import transport.{ChannelHandlerContext, ChannelBuffer}
 
 /**
  * A Memcached protocol specific decoder
  *
+ * Each command line is read as bytes into a buffer that the channel keeps from one request to the next, and is split
+ * into tokens in place. Commands are matched and numbers parsed straight from those bytes, so that keys are the only
+ * strings created, and responses are written as bytes too.
+ *
  * @author Galder Zamarreño
  * @since 4.1
  */
-class MemcachedDecoder(cache: Cache[String, MemcachedValue], scheduler: ScheduledExecutorService)
-      extends AbstractProtocolDecoder[String, MemcachedValue] with TextProtocolUtil {
+class MemcachedDecoder(cache: Cache[String, MemcachedValue], scheduler: ScheduledExecutorService,
+                       requestExecutor: RequestExecutor)
+      extends AbstractProtocolDecoder[String, MemcachedValue](requestExecutor) with TextProtocolUtil {
    import RequestResolver._
 
    type SuitableParameters = MemcachedParameters
    type SuitableHeader = MemcachedHeader
 
    private lazy val isStatsEnabled = cache.getConfiguration.isExposeJmxStatistics
-   private final val incrMisses = new AtomicLong(0)
-   private final val incrHits = new AtomicLong(0)
-   private final val decrMisses = new AtomicLong(0)
-   private final val decrHits = new AtomicLong(0)
-   private final val replaceIfUnmodifiedMisses = new AtomicLong(0)
-   private final val replaceIfUnmodifiedHits = new AtomicLong(0)
-   private final val replaceIfUnmodifiedBadval = new AtomicLong(0)
+   private final val counters = new MemcachedCounters
+
+   // The command line being decoded, without its spaces or terminator, and where each of its tokens starts and ends.
+   // Only the channel's worker thread decodes, and requests keep nothing pointing to them, so they can be reused.
+   private var line = new Array[Byte](256)
+   private var lineLength = 0
+   private var tokenStarts = new Array[Int](8)
+   private var tokenEnds = new Array[Int](8)
+   private var tokenCount = 0
 
    override def readHeader(buffer: ChannelBuffer): Option[MemcachedHeader] = {
-      val (streamOp, endOfOp) = readElement(buffer)
-      val op = toRequest(streamOp)
-      if (op == None) {
-         if (!endOfOp)
-            readLine(buffer) // Read rest of line to clear the operation
-         throw new UnknownOperationException("Unknown operation: " + streamOp);
+      readCommandLine(buffer)
+      val command = if (tokenCount == 0) null else toCommand(line, tokenStarts(0), tokenLength(0))
+      if (command == null)
+         throw new UnknownOperationException("Unknown operation: " + (if (tokenCount == 0) "" else token(0)))
+      if (isTraceEnabled) trace("Operation: %s", command.op)
+      if (command.op == StatsRequest && tokenCount > 1)
+         throw new StreamCorruptedException("Stats command does not accept arguments: " + commandLine(1))
+      if (command.op == VerbosityRequest)
+         throw new StreamCorruptedException("Memcached 'verbosity' command is unsupported")
+      if (tokenCount == 1) command.endOfOpHeader else command.header
+   }
+
+   /**
+    * Reads a whole command line, so that nothing of it is left behind whatever is wrong with it, splitting it into
+    * the tokens separated by spaces.
+    */
+   private def readCommandLine(buffer: ChannelBuffer) {
+      lineLength = 0
+      tokenCount = 0
+      var tokenStart = -1
+      var next = buffer.readByte
+      while (next != LF) {
+         if (next == SP || next == CR) {
+            if (tokenStart >= 0) {
+               addToken(tokenStart)
+               tokenStart = -1
+            }
+         } else {
+            if (tokenStart < 0) tokenStart = lineLength
+            if (lineLength == line.length) line = Arrays.copyOf(line, lineLength * 2)
+            line(lineLength) = next
+            lineLength += 1
+         }
+         next = buffer.readByte
       }
-      if (op.get == StatsRequest && !endOfOp) {
-         val line = readLine(buffer).trim
-         if (!line.isEmpty)
-            throw new StreamCorruptedException("Stats command does not accept arguments: " + line)
+      if (tokenStart >= 0) addToken(tokenStart)
+   }
+
+   private def addToken(start: Int) {
+      if (tokenCount == tokenStarts.length) {
+         tokenStarts = Arrays.copyOf(tokenStarts, tokenCount * 2)
+         tokenEnds = Arrays.copyOf(tokenEnds, tokenCount * 2)
       }
-      if (op.get == VerbosityRequest) {
-         if (!endOfOp)
-            readLine(buffer) // Read rest of line to clear the operation
-         throw new StreamCorruptedException("Memcached 'verbosity' command is unsupported")
+      tokenStarts(tokenCount) = start
+      tokenEnds(tokenCount) = lineLength
+      tokenCount += 1
+   }
+
+   private def tokenLength(index: Int): Int = tokenEnds(index) - tokenStarts(index)
+
+   private def token(index: Int): String = new String(line, tokenStarts(index), tokenLength(index), "UTF-8")
+
+   private def tokenEquals(index: Int, bytes: Array[Byte]): Boolean = {
+      if (tokenLength(index) != bytes.length) return false
+      val start = tokenStarts(index)
+      var i = 0
+      while (i < bytes.length) {
+         if (line(start + i) != bytes(i)) return false
+         i += 1
       }
+      true
+   }
 
-      Some(new MemcachedHeader(op.get, endOfOp))
+   /**
+    * Rebuilds the command line from the given token onwards, for logging and error messages.
+    */
+   private def commandLine(from: Int): String = {
+      val sb = new StringBuilder
+      for (i <- from until tokenCount) {
+         if (i > from) sb.append(' ')
+         sb.append(token(i))
+      }
+      sb.toString
    }
 
    override def readKey(h: MemcachedHeader, b: ChannelBuffer): (String, Boolean) = {
-      val (k, endOfOp) = readElement(b)
-      checkKeyLength(h, k, endOfOp, b)
-      (k, endOfOp)
+      if (tokenCount < 2) throw new EOFException("No key passed")
+      (readKey(1), tokenCount == 2)
    }
 
-   private def readKeys(b: ChannelBuffer): Array[String] = readLine(b).trim.split(" +")
-
-   override protected def get(h: MemcachedHeader, buffer: ChannelBuffer, cache: Cache[String, MemcachedValue]): AnyRef = {
-      val keys = readKeys(buffer)
-      if (keys.length > 1) {
-         val map = new HashMap[String, MemcachedValue]()
-         for (k <- keys) {
-            val v = cache.get(checkKeyLength(h, k, true, buffer))
-            if (v != null)
-               map += (k -> v)
+   private def readKey(index: Int): String = {
+      if (tokenLength(index) > 250)
+         throw new StreamCorruptedException("Key length over the 250 character limit")
+      token(index)
+   }
+
+   override protected def readGetRequest(h: MemcachedHeader, buffer: ChannelBuffer, cache: Cache[String, MemcachedValue]): () => AnyRef = {
+      if (tokenCount < 2) throw new EOFException("No key passed")
+      if (tokenCount > 2) {
+         // All the keys are checked before any of them is retrieved
+         val keys = new Array[String](tokenCount - 1)
+         var i = 0
+         while (i < keys.length) {
+            keys(i) = readKey(i + 1)
+            i += 1
          }
-         createMultiGetResponse(h, new immutable.HashMap ++ map)
+         () => multiGet(h, keys, cache)
       } else {
-         createGetResponse(h, keys.head, cache.get(checkKeyLength(h, keys.head, true, buffer)))
+         val k = readKey(1)
+         () => createGetResponse(h, k, cache.get(k))
       }
    }
 
-   private def checkKeyLength(h: MemcachedHeader, k: String, endOfOp: Boolean, b: ChannelBuffer): String = {
-      if (k.length > 250) {
-         if (!endOfOp) readLine(b) // Clear the rest of line
-         throw new StreamCorruptedException("Key length over the 250 character limit")
-      } else k
+   /**
+    * Retrieves the given keys, and writes the values found in the order they were requested, as a single buffer.
+    */
+   private def multiGet(h: MemcachedHeader, keys: Array[String], cache: Cache[String, MemcachedValue]): AnyRef = {
+      val elements = new ArrayBuffer[Array[Byte]](keys.length * 3 + 1)
+      for (k <- keys) {
+         val v = cache.get(k)
+         if (v != null) {
+            elements += buildGetResponseHeader(k, v, h.op)
+            elements += v.data
+            elements += CRLFBytes
+         }
+      }
+      elements += END
+      wrappedBuffer(elements: _*)
    }
 
    override def readParameters(h: MemcachedHeader, b: ChannelBuffer): Option[MemcachedParameters] = {
-      if (!h.endOfOp) {
-         val line = readLine(b)
-         if (!line.isEmpty) {
-            if (isTraceEnabled) trace("Operation parameters: %s", line)
-            val args = line.trim.split(" +")
-            try {
-               var index = 0
-               h.op match {
-                  case RemoveRequest => readRemoveParameters(index, args)
-                  case IncrementRequest | DecrementRequest => readIncrDecrParameters(index, args)
-                  case FlushAllRequest => readFlushAllParameters(index, args)
-                  case _ => readStorageParameters(index, args, h, b)
-               }
-            } catch {
-               case _: ArrayIndexOutOfBoundsException => throw new IOException("Missing content in command line " + line)
-            }
-         } else {
-            None // For example when delete <key> is sent without any further parameters, or flush_all without delay
-         }
-      } else {
-         None // For example when flush_all is followed by no parameters
+      if (isTraceEnabled) trace("Operation parameters: %s", commandLine(1))
+      h.op match {
+         case RemoveRequest => readRemoveParameters
+         case IncrementRequest | DecrementRequest => readIncrDecrParameters
+         case FlushAllRequest => readFlushAllParameters
+         case _ => readStorageParameters(h, b)
       }
    }
 
-   private def readRemoveParameters(index: Int, args: Array[String]): Option[MemcachedParameters] = {
-      val delayedDeleteTime = parseDelayedDeleteTime(index, args)
-      val noReply = if (delayedDeleteTime == -1) parseNoReply(index, args) else false
-      Some(new MemcachedParameters(null, -1, -1, -1, noReply, 0, "", 0))
+   private def readRemoveParameters: Option[MemcachedParameters] = {
+      // Delayed deletes are not supported, so the time is ignored
+      val noReplyIndex = if (tokenCount > 2 && isNumber(2)) 3 else 2
+      Some(new MemcachedParameters(null, -1, -1, -1, parseNoReply(noReplyIndex), 0, 0, 0))
    }
 
-   private def readIncrDecrParameters(initIndex: Int, args: Array[String]): Option[MemcachedParameters] = {
-      var index = initIndex
-      val delta = args(index)
-      index += 1
-      Some(new MemcachedParameters(null, -1, -1, -1, parseNoReply(index, args), 0, delta, 0))
+   private def readIncrDecrParameters: Option[MemcachedParameters] = {
+      if (tokenCount < 3) throw new IOException("Missing content in command line " + commandLine(0))
+      if (line(tokenStarts(2)) == '-')
+         throw new StreamCorruptedException("Increment or decrement delta cannot be negative: " + token(2))
+      val delta = parseUnsignedLong(line, tokenStarts(2), tokenLength(2))
+      Some(new MemcachedParameters(null, -1, -1, -1, parseNoReply(3), 0, delta, 0))
    }
 
-   private def readFlushAllParameters(initIndex: Int, args: Array[String]): Option[MemcachedParameters] = {
-      var index = initIndex
-      var noReplyFound = false
-      val flushDelay =
-         try {
-            friendlyMaxIntCheck(args(index), "Flush delay")
-         } catch {
-            case n: NumberFormatException => {
-               if (n.getMessage.contains("noreply")) {
-                  noReplyFound = true
-                  0
-               } else throw n
-            }
-         }
-      index += 1
-      val noReply = if (!noReplyFound) parseNoReply(index, args) else true
-      Some(new MemcachedParameters(null, -1, -1, -1, noReply, 0, "", flushDelay))
+   private def readFlushAllParameters: Option[MemcachedParameters] = {
+      if (tokenCount == 1) {
+         None // No delay nor noreply
+      } else {
+         val hasDelay = !tokenEquals(1, NOREPLY)
+         val flushDelay = if (hasDelay) parseNumber(1, Int.MaxValue, "Flush delay").toInt else 0
+         val noReply = parseNoReply(if (hasDelay) 2 else 1)
+         Some(new MemcachedParameters(null, -1, -1, -1, noReply, 0, 0, flushDelay))
+      }
    }
 
-   private def readStorageParameters(initIndex: Int, args: Array[String], h: MemcachedHeader,
-                                     b: ChannelBuffer): Option[MemcachedParameters] = {
-      var index = initIndex
-      val flags = getFlags(args(index))
+   private def readStorageParameters(h: MemcachedHeader, b: ChannelBuffer): Option[MemcachedParameters] = {
+      val isCas = h.op == ReplaceIfUnmodifiedRequest
+      val noReplyIndex = if (isCas) 6 else 5
+      if (tokenCount < noReplyIndex) throw new IOException("Missing content in command line " + commandLine(0))
+      val flags = parseNumber(2, 4294967295L, "Flags")
       if (flags < 0) throw new StreamCorruptedException("Flags cannot be negative: " + flags)
-      index += 1
       val lifespan = {
-         val streamLifespan = getLifespan(args(index))
+         val streamLifespan = parseNumber(3, Int.MaxValue, "Lifespan").toInt
          if (streamLifespan <= 0) -1 else streamLifespan
       }
-      index += 1
-      val length = getLength(args(index))
+      val length = parseNumber(4, Int.MaxValue, "The number of bytes").toInt
       if (length < 0) throw new StreamCorruptedException("Negative bytes length provided: " + length)
-      val streamVersion = h.op match {
-         case ReplaceIfUnmodifiedRequest => {
-            index += 1
-            getVersion(args(index))
-         }
-         case _ => -1
-      }
-      index += 1
-      val noReply = parseNoReply(index, args)
+      val streamVersion = if (isCas) parseNumber(5, Long.MaxValue, "Cas") else -1
+      val noReply = parseNoReply(noReplyIndex)
+      Some(new MemcachedParameters(readData(b, length), lifespan, -1, streamVersion, noReply, flags, 0, 0))
+   }
+
+   private def readData(b: ChannelBuffer, length: Int): Array[Byte] = {
+      // The value, and the rest of its line if any was received, are read before the value gets copied
+      val value = b.readSlice(length)
+      if (b.readableBytes > 0) while (b.readByte != LF) {}
       val data = new Array[Byte](length)
-      b.readBytes(data, 0, data.length)
-      readLine(b) // read the rest of line to clear CRLF after value Byte[]
-      Some(new MemcachedParameters(data, lifespan, -1, streamVersion, noReply, flags, "", 0))
+      value.readBytes(data, 0, length)
+      data
    }
 
    override def createValue(h: SuitableHeader, p: MemcachedParameters, nextVersion: Long): MemcachedValue = {
       new MemcachedValue(p.data, nextVersion, p.flags)
    }
 
-   private def getFlags(flags: String): Long = {
-      if (flags == null) throw new EOFException("No flags passed")
-      try {
-         numericLimitCheck(flags, 4294967295L, "Flags")
-      } catch {
-         case n: NumberFormatException => numericLimitCheck(flags, 4294967295L, "Flags", n)
+   /**
+    * Parses the given token as a decimal number, whose absolute value must not exceed the given limit.
+    */
+   private def parseNumber(index: Int, limit: Long, name: String): Long = {
+      val negative = line(tokenStarts(index)) == '-'
+      val start = if (negative) tokenStarts(index) + 1 else tokenStarts(index)
+      val number = parseUnsignedLong(line, start, tokenEnds(index) - start)
+      if (number < 0 || number > limit)
+         throw new NumberFormatException(name + " sent (" + token(index) + ") exceeds the limit (" + limit + ")")
+      if (negative) -number else number
+   }
+
+   private def isNumber(index: Int): Boolean = {
+      var i = tokenStarts(index)
+      if (line(i) == '-') i += 1
+      if (i == tokenEnds(index)) return false
+      while (i < tokenEnds(index)) {
+         if (line(i) < '0' || line(i) > '9') return false
+         i += 1
       }
+      true
    }
 
-   private def getLifespan(lifespan: String): Int = {
-      if (lifespan == null) throw new EOFException("No expiry passed")
-      friendlyMaxIntCheck(lifespan, "Lifespan")
-   }
-
-   private def getLength(length: String): Int = {
-      if (length == null) throw new EOFException("No bytes passed")
-      friendlyMaxIntCheck(length, "The number of bytes")
-   }
-
-   private def getVersion(version: String): Long = {
-      if (version == null) throw new EOFException("No cas passed")
-      version.toLong
-   }
-
-   private def parseNoReply(expectedIndex: Int, args: Array[String]): Boolean = {
-      if (args.length > expectedIndex) {
-         if ("noreply" == args(expectedIndex))
+   private def parseNoReply(expectedIndex: Int): Boolean = {
+      if (tokenCount > expectedIndex) {
+         if (tokenEquals(expectedIndex, NOREPLY))
             true
          else
             throw new StreamCorruptedException("Unable to parse noreply optional argument")
       }
-      else false      
-   }
-
-   private def parseDelayedDeleteTime(expectedIndex: Int, args: Array[String]): Int = {
-      if (args.length > expectedIndex) {
-         try {
-            args(expectedIndex).toInt
-         }
-         catch {
-            case e: NumberFormatException => return -1 // Either unformatted number, or noreply found
-         }
-      }
-      else 0
+      else false
    }
 
    override def getCache(h: MemcachedHeader): Cache[String, MemcachedValue] = cache
 
-   override def handleCustomRequest(h: MemcachedHeader, b: ChannelBuffer, cache: Cache[String, MemcachedValue],
-                                    ctx: ChannelHandlerContext): AnyRef = {
+   override def readCustomRequest(h: MemcachedHeader, b: ChannelBuffer, cache: Cache[String, MemcachedValue],
+                                  ctx: ChannelHandlerContext): () => AnyRef = {
       h.op match {
          case AppendRequest | PrependRequest => {
             val (k, params) = readKeyAndParams(h, b)
-            val prev = cache.get(k)
-            if (prev != null) {
-               val concatenated = h.op match {
-                  case AppendRequest => concat(prev.data, params.get.data);
-                  case PrependRequest => concat(params.get.data, prev.data);
-               }
-               val next = createValue(concatenated, generateVersion(cache), params.get.flags)
-               val replaced = cache.replace(k, prev, next);
-               if (replaced)
-                  if (!params.get.noReply) STORED else null
-               else // If there's a concurrent modification on this key, treat it as we couldn't replace it
-                  if (!params.get.noReply) NOT_STORED else null
-            } else {
-               if (!params.get.noReply) NOT_STORED else null
-            }
+            () => append(h, k, params, cache)
          }
          case IncrementRequest | DecrementRequest => {
             val (k, params) = readKeyAndParams(h, b)
-            val prev = cache.get(k)
-            if (prev != null) {
-               val prevCounter = BigInt(new String(prev.data))
-               val delta = validateDelta(params.get.delta)
-               val newCounter =
-                  h.op match {
-                     case IncrementRequest => {
-                        val candidateCounter = prevCounter + delta
-                        if (candidateCounter > MAX_UNSIGNED_LONG) 0 else candidateCounter
-                     }
-                     case DecrementRequest => {
-                        val candidateCounter = prevCounter - delta
-                        if (candidateCounter < 0) 0 else candidateCounter
-                     }
-                  }
-               val next = createValue(newCounter.toString.getBytes, generateVersion(cache), params.get.flags)
-               val replaced = cache.replace(k, prev, next)
-               if (replaced) {
-                  if (isStatsEnabled) if (h.op == IncrementRequest) incrHits.incrementAndGet() else decrHits.incrementAndGet
-                  if (!params.get.noReply) new String(next.data) + CRLF else null
-               } else {
-                  // If there's a concurrent modification on this key, the spec does not say what to do, so treat it as exceptional
-                  throw new CacheException("Value modified since we retrieved from the cache, old value was " + prevCounter)
-               }
-            } else {
-               if (isStatsEnabled) if (h.op == IncrementRequest) incrMisses.incrementAndGet() else decrMisses.incrementAndGet
-               if (!params.get.noReply) NOT_FOUND else null
-            }
+            () => incrementOrDecrement(h, k, params, cache)
          }
          case FlushAllRequest => {
             val params = readParameters(h, b)
-            val flushFunction = (cache: AdvancedCache[String, MemcachedValue]) => cache.withFlags(Flag.CACHE_MODE_LOCAL, Flag.SKIP_CACHE_STORE).clear
-            val flushDelay = if (params == None) 0 else params.get.flushDelay
-            if (flushDelay == 0)
-               flushFunction(cache.getAdvancedCache)
-            else
-               scheduler.schedule(new DelayedFlushAll(cache, flushFunction), toMillis(flushDelay), TimeUnit.MILLISECONDS)
-            if (params == None || !params.get.noReply) OK else null
+            () => flushAll(params)
+         }
+         case VersionRequest => () => new StringBuilder().append("VERSION ").append(Version.VERSION).append(CRLF)
+         case QuitRequest => () => CloseChannel
+      }
+   }
+
+   private def append(h: MemcachedHeader, k: String, params: Option[MemcachedParameters], cache: Cache[String, MemcachedValue]): AnyRef = {
+      val prev = cache.get(k)
+      if (prev != null) {
+         val concatenated = h.op match {
+            case AppendRequest => concat(prev.data, params.get.data);
+            case PrependRequest => concat(params.get.data, prev.data);
+         }
+         val next = createValue(concatenated, generateVersion(cache), params.get.flags)
+         val replaced = cache.replace(k, prev, next);
+         if (replaced)
+            if (!params.get.noReply) STORED else null
+         else // If there's a concurrent modification on this key, treat it as we couldn't replace it
+            if (!params.get.noReply) NOT_STORED else null
+      } else {
+         if (!params.get.noReply) NOT_STORED else null
+      }
+   }
+
+   private def incrementOrDecrement(h: MemcachedHeader, k: String, params: Option[MemcachedParameters], cache: Cache[String, MemcachedValue]): AnyRef = {
+      val prev = cache.get(k)
+      if (prev != null) {
+         val prevCounter = parseUnsignedLong(prev.data)
+         val newCounter =
+            h.op match {
+               case IncrementRequest => incrementCounter(prevCounter, params.get.delta)
+               case DecrementRequest => decrementCounter(prevCounter, params.get.delta)
+            }
+         // The counter is both stored and sent back, neither of which modifies it
+         val counter = unsignedLongBytes(newCounter)
+         val next = createValue(counter, generateVersion(cache), params.get.flags)
+         val replaced = cache.replace(k, prev, next)
+         if (replaced) {
+            if (isStatsEnabled) if (h.op == IncrementRequest) counters.incrHits.incrementAndGet() else counters.decrHits.incrementAndGet
+            if (!params.get.noReply) wrappedBuffer(counter, CRLFBytes) else null
+         } else {
+            // If there's a concurrent modification on this key, the spec does not say what to do, so treat it as exceptional
+            throw new CacheException("Value modified since we retrieved from the cache, old value was " + new String(prev.data))
          }
-         case VersionRequest => new StringBuilder().append("VERSION ").append(Version.VERSION).append(CRLF)
-         case QuitRequest => ctx.getChannel.close
+      } else {
+         if (isStatsEnabled) if (h.op == IncrementRequest) counters.incrMisses.incrementAndGet() else counters.decrMisses.incrementAndGet
+         if (!params.get.noReply) NOT_FOUND else null
       }
    }
 
-   private def validateDelta(delta: String): BigInt = {
-      val bigIntDelta = BigInt(delta)
-      if (bigIntDelta > MAX_UNSIGNED_LONG)
-         throw new StreamCorruptedException("Increment or decrement delta sent (" + delta + ") exceeds unsigned limit (" + MAX_UNSIGNED_LONG + ")")
-      else if (bigIntDelta < MIN_UNSIGNED)
-         throw new StreamCorruptedException("Increment or decrement delta cannot be negative: " + delta)
-      bigIntDelta
+   private def flushAll(params: Option[MemcachedParameters]): AnyRef = {
+      val flushFunction = (cache: AdvancedCache[String, MemcachedValue]) => cache.withFlags(Flag.CACHE_MODE_LOCAL, Flag.SKIP_CACHE_STORE).clear
+      val flushDelay = if (params == None) 0 else params.get.flushDelay
+      if (flushDelay == 0)
+         flushFunction(cache.getAdvancedCache)
+      else
+         scheduler.schedule(new DelayedFlushAll(cache, flushFunction), toMillis(flushDelay), TimeUnit.MILLISECONDS)
+      if (params == None || !params.get.noReply) OK else null
    }
 
    override def createSuccessResponse(h: MemcachedHeader, params: Option[MemcachedParameters], prev: MemcachedValue): AnyRef = {
       if (isStatsEnabled) {
          h.op match {
-            case ReplaceIfUnmodifiedRequest => replaceIfUnmodifiedHits.incrementAndGet
+            case ReplaceIfUnmodifiedRequest => counters.replaceIfUnmodifiedHits.incrementAndGet
             case _ => // No-op
          }
       }
@@ -321,7 +359,7 @@ class MemcachedDecoder(cache: Cache[String, MemcachedValue], scheduler: Schedule
    override def createNotExecutedResponse(h: MemcachedHeader, params: Option[MemcachedParameters], prev: MemcachedValue): AnyRef = {
       if (isStatsEnabled) {
          h.op match {
-            case ReplaceIfUnmodifiedRequest => replaceIfUnmodifiedBadval.incrementAndGet
+            case ReplaceIfUnmodifiedRequest => counters.replaceIfUnmodifiedBadval.incrementAndGet
             case _ => // No-op
          }
       }
@@ -336,7 +374,7 @@ class MemcachedDecoder(cache: Cache[String, MemcachedValue], scheduler: Schedule
    override def createNotExistResponse(h: SuitableHeader, params: Option[MemcachedParameters]): AnyRef = {
       if (isStatsEnabled) {
          h.op match {
-            case ReplaceIfUnmodifiedRequest => replaceIfUnmodifiedMisses.incrementAndGet
+            case ReplaceIfUnmodifiedRequest => counters.replaceIfUnmodifiedMisses.incrementAndGet
             case _ => // No-op
          }
       }
@@ -348,21 +386,20 @@ class MemcachedDecoder(cache: Cache[String, MemcachedValue], scheduler: Schedule
 
    override def createGetResponse(h: MemcachedHeader, k: String, v: MemcachedValue): AnyRef = {
       if (v != null)
-         List(buildGetResponse(h.op, k, v), wrappedBuffer(END))
+         wrappedBuffer(buildGetResponseHeader(k, v, h.op), v.data, CRLF_END)
       else
          END
    }
 
    override def createMultiGetResponse(h: MemcachedHeader, pairs: Map[String, MemcachedValue]): AnyRef = {
-      val elements = new ListBuffer[ChannelBuffer]
-      h.op match {
-         case GetRequest | GetWithVersionRequest => {
-            for ((k, v) <- pairs)
-               elements += buildGetResponse(h.op, k, v)
-            elements += wrappedBuffer(END)
-         }
+      val elements = new ArrayBuffer[Array[Byte]](pairs.size * 3 + 1)
+      for ((k, v) <- pairs) {
+         elements += buildGetResponseHeader(k, v, h.op)
+         elements += v.data
+         elements += CRLFBytes
       }
-      elements.toList
+      elements += END
+      wrappedBuffer(elements: _*)
    }
 
    override def createErrorResponse(t: Throwable): AnyRef = {
@@ -392,46 +429,11 @@ class MemcachedDecoder(cache: Cache[String, MemcachedValue], scheduler: Schedule
 
    def createStatsResponse(header: MemcachedHeader, stats: Stats): AnyRef = {
       val sb = new StringBuilder
-      List[ChannelBuffer] (
-         buildStat("pid", 0, sb),
-         buildStat("uptime", stats.getTimeSinceStart, sb),
-         buildStat("uptime", stats.getTimeSinceStart, sb),
-         buildStat("time", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis), sb),
-         buildStat("version", cache.getVersion, sb),
-         buildStat("pointer_size", 0, sb), // Unsupported
-         buildStat("rusage_user", 0, sb), // Unsupported
-         buildStat("rusage_system", 0, sb), // Unsupported
-         buildStat("curr_items", stats.getCurrentNumberOfEntries, sb),
-         buildStat("total_items", stats.getTotalNumberOfEntries, sb),
-         buildStat("bytes", 0, sb), // Unsupported
-         buildStat("curr_connections", 0, sb), // TODO: Through netty?
-         buildStat("total_connections", 0, sb), // TODO: Through netty?
-         buildStat("connection_structures", 0, sb), // Unsupported
-         buildStat("cmd_get", stats.getRetrievals, sb),
-         buildStat("cmd_set", stats.getStores, sb),
-         buildStat("get_hits", stats.getHits, sb),
-         buildStat("get_misses", stats.getMisses, sb),
-         buildStat("delete_misses", stats.getRemoveMisses, sb),
-         buildStat("delete_hits", stats.getRemoveHits, sb),
-         buildStat("incr_misses", incrMisses, sb),
-         buildStat("incr_hits", incrHits, sb),
-         buildStat("decr_misses", decrMisses, sb),
-         buildStat("decr_hits", decrHits, sb),
-         buildStat("cas_misses", replaceIfUnmodifiedMisses, sb),
-         buildStat("cas_hits", replaceIfUnmodifiedHits, sb),
-         buildStat("cas_badval", replaceIfUnmodifiedBadval, sb),
-         buildStat("auth_cmds", 0, sb), // Unsupported
-         buildStat("auth_errors", 0, sb), // Unsupported
-         //TODO: Evictions are measure by evict calls, but not by nodes are that are expired after the entry's lifespan has expired.
-         buildStat("evictions", stats.getEvictions, sb),
-         buildStat("bytes_read", 0, sb), // TODO: Through netty?
-         buildStat("bytes_written", 0, sb), // TODO: Through netty?
-         buildStat("limit_maxbytes", 0, sb), // Unsupported
-         buildStat("threads", 0, sb), // TODO: Through netty?
-         buildStat("conn_yields", 0, sb), // Unsupported
-         buildStat("reclaimed", 0, sb), // Unsupported
-         wrappedBuffer(END)
-      )
+      val elements = new ListBuffer[ChannelBuffer]
+      for ((stat, value) <- counters.statistics(stats, cache.getVersion))
+         elements += buildStat(stat, value, sb)
+      elements += wrappedBuffer(END)
+      elements.toList
    }
 
    private def buildStat(stat: String, value: Any, sb: StringBuilder): ChannelBuffer = {
@@ -445,47 +447,79 @@ class MemcachedDecoder(cache: Cache[String, MemcachedValue], scheduler: Schedule
       new MemcachedValue(data, nextVersion, flags)
    }   
 
-   private def buildGetResponse(op: Enumeration#Value, k: String, v: MemcachedValue): ChannelBuffer = {
-      val header = buildGetResponseHeader(k, v, op)
-      wrappedBuffer(header.getBytes, v.data, CRLFBytes)
-   }
-
-   private def buildGetResponseHeader(k: String, v: MemcachedValue, op: Enumeration#Value): String = {
-      val sb = new StringBuilder
-      sb.append("VALUE ").append(k).append(" ").append(v.flags).append(" ").append(v.data.length)
-      if (op == GetWithVersionRequest)
-         sb.append(" ").append(v.version)
-      sb.append(CRLF)
-      sb.toString
-   }
-
-   private def friendlyMaxIntCheck(number: String, message: String): Int = {
-      try {
-         number.toInt
-      } catch {
-         case n: NumberFormatException => numericLimitCheck(number, Int.MaxValue, message, n)
+   /**
+    * Writes the line preceding a retrieved value straight into an array of its exact size.
+    */
+   private def buildGetResponseHeader(k: String, v: MemcachedValue, op: Enumeration#Value): Array[Byte] = {
+      val key = if (isAscii(k)) null else k.getBytes("UTF-8")
+      val keyLength = if (key == null) k.length else key.length
+      val withVersion = op == GetWithVersionRequest
+      val headerLength = VALUE.length + keyLength + 1 + decimalLength(v.flags) + 1 + decimalLength(v.data.length) +
+         (if (withVersion) 1 + decimalLength(v.version) else 0) + CRLFBytes.length
+      val header = new Array[Byte](headerLength)
+      System.arraycopy(VALUE, 0, header, 0, VALUE.length)
+      var pos = VALUE.length
+      if (key == null) {
+         var i = 0
+         while (i < keyLength) {
+            header(pos + i) = k.charAt(i).toByte
+            i += 1
+         }
+      } else {
+         System.arraycopy(key, 0, header, pos, keyLength)
+      }
+      pos += keyLength
+      header(pos) = SP.toByte
+      pos = writeDecimal(v.flags, header, pos + 1)
+      header(pos) = SP.toByte
+      pos = writeDecimal(v.data.length, header, pos + 1)
+      if (withVersion) {
+         header(pos) = SP.toByte
+         pos = writeDecimal(v.version, header, pos + 1)
       }
+      header(pos) = CR.toByte
+      header(pos + 1) = LF.toByte
+      header
    }
 
-   private def numericLimitCheck(number: String, maxValue: Long, message: String, n: NumberFormatException): Int = {
-      if (number.toLong > maxValue)
-         throw new NumberFormatException(message + " sent (" + number
-            + ") exceeds the limit (" + maxValue + ")")
-      else throw n
+   private def isAscii(s: String): Boolean = {
+      var i = 0
+      while (i < s.length) {
+         if (s.charAt(i) >= 0x80) return false
+         i += 1
+      }
+      true
    }
 
-   private def numericLimitCheck(number: String, maxValue: Long, message: String): Long =  {
-      val numeric = number.toLong
-      if (number.toLong > maxValue)
-         throw new NumberFormatException(message + " sent (" + number
-            + ") exceeds the limit (" + maxValue + ")")
-      numeric
+   private def decimalLength(n: Long): Int = {
+      var length = 1
+      var rest = n / 10
+      while (rest > 0) {
+         length += 1
+         rest /= 10
+      }
+      length
+   }
+
+   /**
+    * Writes a non negative number in decimal at the given position, returning the position that follows it.
+    */
+   private def writeDecimal(n: Long, bytes: Array[Byte], pos: Int): Int = {
+      val end = pos + decimalLength(n)
+      var i = end
+      var rest = n
+      do {
+         i -= 1
+         bytes(i) = ('0' + rest % 10).toByte
+         rest /= 10
+      } while (rest > 0)
+      end
    }
 }
 
 class MemcachedParameters(override val data: Array[Byte], override val lifespan: Int,
                           override val maxIdle: Int, override val streamVersion: Long,
-                          val noReply: Boolean, val flags: Long, val delta: String,
+                          val noReply: Boolean, val flags: Long, val delta: Long,
                           val flushDelay: Int) extends RequestParameters(data, lifespan, maxIdle, streamVersion) {
    override def toString = {
       new StringBuilder().append("MemcachedParameters").append("{")
@@ -501,35 +535,115 @@ class MemcachedParameters(override val data: Array[Byte], override val lifespan:
    }   
 }
 
+/**
+ * Counters of the Memcached operations not tracked by the cache statistics, along with the statistics reported by the
+ * stats command, which are common to the text and binary protocols.
+ *
+ * @since 5.0
+ */
+private[memcached] class MemcachedCounters {
+   final val incrMisses = new AtomicLong(0)
+   final val incrHits = new AtomicLong(0)
+   final val decrMisses = new AtomicLong(0)
+   final val decrHits = new AtomicLong(0)
+   final val replaceIfUnmodifiedMisses = new AtomicLong(0)
+   final val replaceIfUnmodifiedHits = new AtomicLong(0)
+   final val replaceIfUnmodifiedBadval = new AtomicLong(0)
+
+   def statistics(stats: Stats, version: String): List[(String, Any)] = List(
+      ("pid", 0),
+      ("uptime", stats.getTimeSinceStart),
+      ("uptime", stats.getTimeSinceStart),
+      ("time", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis)),
+      ("version", version),
+      ("pointer_size", 0), // Unsupported
+      ("rusage_user", 0), // Unsupported
+      ("rusage_system", 0), // Unsupported
+      ("curr_items", stats.getCurrentNumberOfEntries),
+      ("total_items", stats.getTotalNumberOfEntries),
+      ("bytes", 0), // Unsupported
+      ("curr_connections", 0), // TODO: Through netty?
+      ("total_connections", 0), // TODO: Through netty?
+      ("connection_structures", 0), // Unsupported
+      ("cmd_get", stats.getRetrievals),
+      ("cmd_set", stats.getStores),
+      ("get_hits", stats.getHits),
+      ("get_misses", stats.getMisses),
+      ("delete_misses", stats.getRemoveMisses),
+      ("delete_hits", stats.getRemoveHits),
+      ("incr_misses", incrMisses),
+      ("incr_hits", incrHits),
+      ("decr_misses", decrMisses),
+      ("decr_hits", decrHits),
+      ("cas_misses", replaceIfUnmodifiedMisses),
+      ("cas_hits", replaceIfUnmodifiedHits),
+      ("cas_badval", replaceIfUnmodifiedBadval),
+      ("auth_cmds", 0), // Unsupported
+      ("auth_errors", 0), // Unsupported
+      //TODO: Evictions are measure by evict calls, but not by nodes are that are expired after the entry's lifespan has expired.
+      ("evictions", stats.getEvictions),
+      ("bytes_read", 0), // TODO: Through netty?
+      ("bytes_written", 0), // TODO: Through netty?
+      ("limit_maxbytes", 0), // Unsupported
+      ("threads", 0), // TODO: Through netty?
+      ("conn_yields", 0), // Unsupported
+      ("reclaimed", 0) // Unsupported
+   )
+}
+
 private class DelayedFlushAll(cache: Cache[String, MemcachedValue],
                               flushFunction: AdvancedCache[String, MemcachedValue] => Unit) extends Runnable {
    override def run() = flushFunction(cache.getAdvancedCache)
 }
 
 private object RequestResolver extends Logging {
-   private val operations = Map[String, Enumeration#Value](
-      "set" -> PutRequest,
-      "add" -> PutIfAbsentRequest,
-      "replace" -> ReplaceRequest,
-      "cas" -> ReplaceIfUnmodifiedRequest,
-      "append" -> AppendRequest,
-      "prepend" -> PrependRequest,
-      "get" -> GetRequest,
-      "gets" -> GetWithVersionRequest,
-      "delete" -> RemoveRequest,
-      "incr" -> IncrementRequest,
-      "decr" -> DecrementRequest,
-      "flush_all" -> FlushAllRequest,
-      "version" -> VersionRequest,
-      "stats" -> StatsRequest,
-      "verbosity" -> VerbosityRequest,
-      "quit" -> QuitRequest
+   // The most frequent commands come first
+   private val commands = Array(
+      new TextCommand("get", GetRequest),
+      new TextCommand("set", PutRequest),
+      new TextCommand("gets", GetWithVersionRequest),
+      new TextCommand("delete", RemoveRequest),
+      new TextCommand("incr", IncrementRequest),
+      new TextCommand("decr", DecrementRequest),
+      new TextCommand("add", PutIfAbsentRequest),
+      new TextCommand("replace", ReplaceRequest),
+      new TextCommand("cas", ReplaceIfUnmodifiedRequest),
+      new TextCommand("append", AppendRequest),
+      new TextCommand("prepend", PrependRequest),
+      new TextCommand("flush_all", FlushAllRequest),
+      new TextCommand("version", VersionRequest),
+      new TextCommand("stats", StatsRequest),
+      new TextCommand("verbosity", VerbosityRequest),
+      new TextCommand("quit", QuitRequest)
    )
 
-   def toRequest(commandName: String): Option[Enumeration#Value] = {
-      if (isTraceEnabled) trace("Operation: %s", commandName)
-      val op = operations.get(commandName)
-      op
+   /**
+    * Returns the command whose name is made of the given bytes, or null if there's none.
+    */
+   def toCommand(bytes: Array[Byte], offset: Int, length: Int): TextCommand = {
+      var i = 0
+      while (i < commands.length) {
+         if (commands(i).matches(bytes, offset, length)) return commands(i)
+         i += 1
+      }
+      null
+   }
+}
+
+private class TextCommand(name: String, val op: Enumeration#Value) {
+   private val nameBytes = name.getBytes
+   // Headers are immutable, so every request of the command shares them
+   val header = Some(new MemcachedHeader(op, false))
+   val endOfOpHeader = Some(new MemcachedHeader(op, true))
+
+   def matches(bytes: Array[Byte], offset: Int, length: Int): Boolean = {
+      if (length != nameBytes.length) return false
+      var i = 0
+      while (i < length) {
+         if (bytes(offset + i) != nameBytes(i)) return false
+         i += 1
+      }
+      true
    }
 }
 
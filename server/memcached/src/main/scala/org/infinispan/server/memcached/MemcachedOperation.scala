@@ -12,4 +12,6 @@ object MemcachedOperation extends Enumeration(10) {
    val IncrementRequest, DecrementRequest = Value
    val FlushAllRequest, VersionRequest = Value
    val VerbosityRequest, QuitRequest = Value
+   // Only available in the binary protocol
+   val NoOpRequest, RemoveIfUnmodifiedRequest = Value
 }
\ No newline at end of file
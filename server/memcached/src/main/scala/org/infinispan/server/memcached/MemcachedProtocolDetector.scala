@@ -0,0 +1,48 @@
+package org.infinispan.server.memcached
+
+import java.util.concurrent.ScheduledExecutorService
+import org.infinispan.Cache
+import org.infinispan.server.core.RequestExecutor
+import org.infinispan.server.core.transport.{ExceptionEvent, ChannelBuffer, ChannelHandlerContext, Decoder}
+import BinaryProtocolUtil._
+
+/**
+ * Decoder detecting whether a channel speaks the Memcached text or binary protocol, based on the first byte received,
+ * which is always the magic byte in the binary protocol and never in the text protocol, and handing everything
+ * received from then on to the decoder of that protocol.
+ *
+ * @since 5.0
+ */
+class MemcachedProtocolDetector(cache: Cache[String, MemcachedValue], scheduler: ScheduledExecutorService,
+                                requestExecutor: RequestExecutor) extends Decoder {
+
+   @volatile private var decoder: Decoder = _
+
+   override def decode(ctx: ChannelHandlerContext, buffer: ChannelBuffer): AnyRef = {
+      if (decoder == null) {
+         // Decoding is only attempted with at least one byte received
+         val isBinary = buffer.getByte(buffer.readerIndex) == MagicRequest
+         decoder =
+            if (isBinary) new MemcachedBinaryDecoder(cache, scheduler, requestExecutor)
+            else new MemcachedDecoder(cache, scheduler, requestExecutor)
+      }
+      decoder.decode(ctx, buffer)
+   }
+
+   override def exceptionCaught(ctx: ChannelHandlerContext, e: ExceptionEvent) {
+      // Errors before anything was received are reported as the text protocol does
+      if (decoder == null) decoder = new MemcachedDecoder(cache, scheduler, requestExecutor)
+      decoder.exceptionCaught(ctx, e)
+   }
+
+   override def decodeLast(ctx: ChannelHandlerContext, buffer: ChannelBuffer): AnyRef =
+      if (decoder == null) null else decoder.decodeLast(ctx, buffer)
+
+   override def flush(ctx: ChannelHandlerContext) {
+      if (decoder != null) decoder.flush(ctx)
+   }
+
+   override def channelClosed(ctx: ChannelHandlerContext) {
+      if (decoder != null) decoder.channelClosed(ctx)
+   }
+}
@@ -8,7 +8,8 @@ import java.util.Properties
 
 /**
  * Memcached server defining its decoder/encoder settings. In fact, Memcached does not use an encoder since there's
- * no really common headers between protocol operations.
+ * no really common headers between protocol operations. Both the text and binary protocols are served on the same
+ * port, the protocol of each connection being detected on the first byte received.
  *
  * @author Galder Zamarreño
  * @since 4.1
@@ -24,7 +25,8 @@ class MemcachedServer extends AbstractProtocolServer("Memcached") {
 
    override def getEncoder: Encoder = null
 
-   override def getDecoder: Decoder = new MemcachedDecoder(getCacheManager.getCache[String, MemcachedValue], scheduler)
+   override def getDecoder: Decoder =
+      new MemcachedProtocolDetector(getCacheManager.getCache[String, MemcachedValue], scheduler, getRequestExecutor)
 
    override def stop {
       super.stop
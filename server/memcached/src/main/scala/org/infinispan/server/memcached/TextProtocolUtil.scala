@@ -1,6 +1,6 @@
 package org.infinispan.server.memcached
 
-import org.infinispan.server.core.transport.ChannelBuffer
+import java.util.Arrays
 
 /**
  * Memcached text protocol utilities.
@@ -14,6 +14,8 @@ trait TextProtocolUtil {
    val CRLF = "\r\n"
    val CRLFBytes = "\r\n".getBytes
    val END = "END\r\n".getBytes
+   val CRLF_END = "\r\nEND\r\n".getBytes
+   val VALUE = "VALUE ".getBytes
    val DELETED = "DELETED\r\n".getBytes
    val NOT_FOUND = "NOT_FOUND\r\n".getBytes
    val EXISTS = "EXISTS\r\n".getBytes
@@ -21,74 +23,92 @@ trait TextProtocolUtil {
    val NOT_STORED = "NOT_STORED\r\n".getBytes
    val OK = "OK\r\n".getBytes
    val ERROR = "ERROR\r\n".getBytes
+   val NOREPLY = "noreply".getBytes
    val CLIENT_ERROR_BAD_FORMAT = "CLIENT_ERROR bad command line format: "
    val SERVER_ERROR = "SERVER_ERROR "
 
    val CR = 13
    val LF = 10
+   val SP = 32
 
-   val MAX_UNSIGNED_LONG = BigInt("18446744073709551615")
-   val MIN_UNSIGNED = BigInt("0")
+   def concat(a: Array[Byte], b: Array[Byte]): Array[Byte] = {
+       val data = new Array[Byte](a.length + b.length)
+       Array.copy(a, 0, data, 0, a.length)
+       Array.copy(b, 0, data, a.length, b.length)
+       return data
+   }
+
+}
+
+/**
+ * Counters are unsigned 64 bit numbers stored as decimal text, so that both the text and binary protocols can use
+ * them. They are handled as longs whose sign bit is the most significant bit of the counter.
+ *
+ * @since 5.0
+ */
+object TextProtocolUtil {
+   val MAX_UNSIGNED_LONG = "18446744073709551615"
 
    /**
-    * In the particular case of Memcached, the end of operation/command
-    * is signaled by "\r\n" characters. So, if end of operation is
-    * found, this method would return the element and true. On the
-    * contrary, if space was found instead of end of operation
-    * character, then it'd return the element and false.
+    * Parses the unsigned decimal number made of the given bytes.
+    *
+    * @throws NumberFormatException if there's anything but digits, or if the number does not fit in 64 bits
     */
-   def readElement(buffer: ChannelBuffer): (String, Boolean) = readElement(buffer, new StringBuilder())
-
-   private def readElement(buffer: ChannelBuffer, sb: StringBuilder): (String, Boolean) = {
-      var next = buffer.readByte 
-      if (next == 32) { // Space
-         (sb.toString.trim, false)
-      }
-      else if (next == 13) { // CR
-         next = buffer.readByte
-         if (next == 10) { // LF
-            (sb.toString.trim, true)
-         } else {
-            sb.append(next.asInstanceOf[Char])
-            readElement(buffer, sb)
-         }
-      }
-      else {
-         sb.append(next.asInstanceOf[Char])
-         readElement(buffer, sb)
+   def parseUnsignedLong(bytes: Array[Byte], offset: Int, length: Int): Long = {
+      if (length == 0) throw new NumberFormatException("Empty number")
+      var n = 0L
+      var i = offset
+      while (i < offset + length) {
+         val digit = bytes(i) - '0'
+         if (digit < 0 || digit > 9)
+            throw new NumberFormatException("For input string: \"" + new String(bytes, offset, length) + "\"")
+         // 18446744073709551615 is 1844674407370955161 times 10, plus 5
+         if (n > 1844674407370955161L || (n == 1844674407370955161L && digit > 5))
+            throw new NumberFormatException("Number sent (" + new String(bytes, offset, length)
+               + ") exceeds unsigned limit (" + MAX_UNSIGNED_LONG + ")")
+         n = n * 10 + digit
+         i += 1
       }
+      n
    }
 
-   def readLine(buffer: ChannelBuffer): String = {
-      if (buffer.readableBytes > 0)
-         readLine(buffer, new StringBuilder())         
-      else
-         ""
-   }
+   def parseUnsignedLong(bytes: Array[Byte]): Long = parseUnsignedLong(bytes, 0, bytes.length)
 
-   private def readLine(buffer: ChannelBuffer, sb: StringBuilder): String = {
-      var next = buffer.readByte
-      if (next == 13) { // CR
-         next = buffer.readByte
-         if (next == 10) { // LF
-            sb.toString.trim
-         } else {
-            sb.append(next.asInstanceOf[Char])
-            readLine(buffer, sb)
-         }
-      } else if (next == 10) { //LF
-         sb.toString.trim
-      } else {
-         sb.append(next.asInstanceOf[Char])
-         readLine(buffer, sb)
+   /**
+    * Converts an unsigned number into its decimal representation.
+    */
+   def unsignedLongBytes(l: Long): Array[Byte] = {
+      val digits = new Array[Byte](20)
+      var pos = digits.length
+      var n = l
+      if (n < 0) {
+         // Too big to be divided as a signed number, so halve it first
+         val quotient = (n >>> 1) / 5
+         pos -= 1
+         digits(pos) = ('0' + (n - quotient * 10)).toByte
+         n = quotient
       }
+      do {
+         pos -= 1
+         digits(pos) = ('0' + n % 10).toByte
+         n /= 10
+      } while (n > 0)
+      Arrays.copyOfRange(digits, pos, digits.length)
    }
 
-   def concat(a: Array[Byte], b: Array[Byte]): Array[Byte] = {
-       val data = new Array[Byte](a.length + b.length)
-       Array.copy(a, 0, data, 0, a.length)
-       Array.copy(b, 0, data, a.length, b.length)
-       return data
+   /**
+    * Increments an unsigned counter, which wraps around to 0 when going over the unsigned 64 bit limit.
+    */
+   def incrementCounter(counter: Long, delta: Long): Long = {
+      val incremented = counter + delta
+      if (unsignedLessThan(incremented, counter)) 0 else incremented
    }
 
-}
\ No newline at end of file
+   /**
+    * Decrements an unsigned counter, which never goes below 0.
+    */
+   def decrementCounter(counter: Long, delta: Long): Long =
+      if (unsignedLessThan(counter, delta)) 0 else counter - delta
+
+   private def unsignedLessThan(a: Long, b: Long): Boolean = (a ^ Long.MinValue) < (b ^ Long.MinValue)
+}
@@ -0,0 +1,215 @@
+package org.infinispan.server.memcached
+
+import java.lang.reflect.Method
+import java.util.concurrent.TimeUnit
+import org.testng.Assert._
+import org.testng.annotations.Test
+import net.spy.memcached.{CASResponse, MemcachedClient}
+import org.infinispan.Version
+import java.net.Socket
+import java.nio.ByteBuffer
+import java.io.{ByteArrayOutputStream, DataInputStream}
+import BinaryProtocolUtil._
+
+/**
+ * Tests the Memcached binary protocol support of the Infinispan Memcached server.
+ *
+ * @since 5.0
+ */
+@Test(groups = Array("functional"), testName = "server.memcached.MemcachedBinaryFunctionalTest")
+class MemcachedBinaryFunctionalTest extends MemcachedSingleNodeTest {
+
+   override protected def createTestMemcachedClient: MemcachedClient = createMemcachedBinaryClient(60000, server.getPort)
+
+   def testSetBasic(m: Method) {
+      val f = client.set(k(m), 0, v(m))
+      assertTrue(f.get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertEquals(client.get(k(m)), v(m))
+   }
+
+   def testGetNotFound(m: Method) {
+      assertNull(client.get(k(m)))
+   }
+
+   def testGetMultipleKeys(m: Method) {
+      val f1 = client.set(k(m, "k1-"), 0, v(m, "v1-"))
+      val f2 = client.set(k(m, "k2-"), 0, v(m, "v2-"))
+      assertTrue(f1.get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertTrue(f2.get(timeout, TimeUnit.SECONDS).booleanValue)
+      val ret = client.getBulk(k(m, "k1-"), k(m, "k2-"), k(m, "k3-"))
+      assertEquals(ret.size, 2)
+      assertEquals(ret.get(k(m, "k1-")), v(m, "v1-"))
+      assertEquals(ret.get(k(m, "k2-")), v(m, "v2-"))
+   }
+
+   def testAddAndReplace(m: Method) {
+      assertFalse(client.replace(k(m), 0, v(m)).get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertTrue(client.add(k(m), 0, v(m)).get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertFalse(client.add(k(m), 0, v(m, "v1-")).get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertTrue(client.replace(k(m), 0, v(m, "v1-")).get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertEquals(client.get(k(m)), v(m, "v1-"))
+   }
+
+   def testAppendAndPrepend(m: Method) {
+      assertFalse(client.append(0, k(m), v(m)).get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertTrue(client.set(k(m), 0, "b").get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertTrue(client.append(0, k(m), "c").get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertTrue(client.prepend(0, k(m), "a").get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertEquals(client.get(k(m)), "abc")
+   }
+
+   def testCas(m: Method) {
+      assertTrue(client.set(k(m), 0, v(m)).get(timeout, TimeUnit.SECONDS).booleanValue)
+      val value = client.gets(k(m))
+      assertEquals(value.getValue, v(m))
+      assertEquals(client.cas(k(m), value.getCas, v(m, "v1-")), CASResponse.OK)
+      assertEquals(client.cas(k(m), value.getCas, v(m, "v2-")), CASResponse.EXISTS)
+      assertEquals(client.cas(k(m, "k1-"), value.getCas, v(m, "v2-")), CASResponse.NOT_FOUND)
+      assertEquals(client.get(k(m)), v(m, "v1-"))
+   }
+
+   def testDelete(m: Method) {
+      assertTrue(client.set(k(m), 0, v(m)).get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertTrue(client.delete(k(m)).get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertNull(client.get(k(m)))
+      assertFalse(client.delete(k(m)).get(timeout, TimeUnit.SECONDS).booleanValue)
+   }
+
+   def testIncrementAndDecrement(m: Method) {
+      assertEquals(client.incr(k(m), 1), -1)
+      assertEquals(client.incr(k(m), 1, 10), 10)
+      assertEquals(client.incr(k(m), 5), 15)
+      assertEquals(client.decr(k(m), 20), 0)
+      // Counters are stored as the text protocol does, so both protocols can use them
+      assertEquals(client.get(k(m)), "0")
+   }
+
+   def testFlushAll(m: Method) {
+      assertTrue(client.set(k(m), 0, v(m)).get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertTrue(client.flush.get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertNull(client.get(k(m)))
+   }
+
+   def testVersion {
+      val versions = client.getVersions
+      assertEquals(versions.size, 1)
+      assertEquals(versions.values.iterator.next, Version.VERSION)
+   }
+
+   def testStats {
+      val stats = client.getStats.values.iterator.next
+      assertEquals(stats.get("version"), Version.VERSION)
+      assertEquals(stats.get("pid"), "0")
+   }
+
+   def testTextClientSeesBinaryData(m: Method) {
+      assertTrue(client.set(k(m), 0, v(m)).get(timeout, TimeUnit.SECONDS).booleanValue)
+      val textClient = createMemcachedClient(60000, server.getPort)
+      try {
+         assertEquals(textClient.get(k(m)), v(m))
+      } finally {
+         textClient.shutdown
+      }
+   }
+
+   def testPipelinedQuietGets(m: Method) {
+      assertTrue(client.set(k(m, "k1-"), 0, v(m, "v1-")).get(timeout, TimeUnit.SECONDS).booleanValue)
+      assertTrue(client.set(k(m, "k3-"), 0, v(m, "v3-")).get(timeout, TimeUnit.SECONDS).booleanValue)
+      val responses = sendBinary(4,
+         request(GetKQOpCode, 1, k(m, "k1-"), null, null),
+         request(GetKQOpCode, 2, k(m, "k2-"), null, null),
+         request(GetQOpCode, 3, k(m, "k3-"), null, null),
+         request(NoOpOpCode, 4, null, null, null))
+      // The miss gets no response, so the NOOP response comes right after the hits
+      assertEquals(responses.map(_.opaque), List(1, 3, 4))
+      assertEquals(new String(responses(0).key), k(m, "k1-"))
+      assertEquals(new String(responses(0).value), v(m, "v1-"))
+      assertNull(responses(1).key)
+      assertEquals(new String(responses(1).value), v(m, "v3-"))
+      assertEquals(responses(2).opCode, NoOpOpCode)
+   }
+
+   def testQuietSetOnlyAnswersFailures(m: Method) {
+      val extras = ByteBuffer.allocate(8).putInt(0).putInt(0).array
+      val responses = sendBinary(3,
+         request(SetQOpCode, 1, k(m), extras, v(m).getBytes),
+         request(AddQOpCode, 2, k(m), extras, v(m).getBytes),
+         request(NoOpOpCode, 3, null, null, null))
+      assertEquals(responses.map(_.opaque), List(2, 3))
+      assertEquals(responses(0).status, KeyExists)
+      assertEquals(client.get(k(m)), v(m))
+   }
+
+   def testUnknownCommand(m: Method) {
+      val responses = sendBinary(2,
+         request(0x7F.toByte, 1, k(m), null, v(m).getBytes),
+         request(NoOpOpCode, 2, null, null, null))
+      assertEquals(responses(0).status, UnknownCommand)
+      assertEquals(responses(0).opaque, 1)
+      // The whole unknown request was skipped, so the next one is read fine
+      assertEquals(responses(1).status, NoError)
+      assertEquals(responses(1).opaque, 2)
+   }
+
+   def testInvalidArguments(m: Method) {
+      // A set must come with flags and expiration
+      val responses = sendBinary(2,
+         request(SetOpCode, 1, k(m), null, v(m).getBytes),
+         request(NoOpOpCode, 2, null, null, null))
+      assertEquals(responses(0).status, InvalidArguments)
+      assertEquals(responses(1).status, NoError)
+   }
+
+   private def request(opCode: Byte, opaque: Int, key: String, extras: Array[Byte], value: Array[Byte]): Array[Byte] = {
+      val keyBytes = if (key == null) new Array[Byte](0) else key.getBytes
+      val extrasBytes = if (extras == null) new Array[Byte](0) else extras
+      val valueBytes = if (value == null) new Array[Byte](0) else value
+      val bodyLength = extrasBytes.length + keyBytes.length + valueBytes.length
+      ByteBuffer.allocate(HeaderLength + bodyLength)
+         .put(MagicRequest).put(opCode).putShort(keyBytes.length.toShort).put(extrasBytes.length.toByte)
+         .put(0.toByte).putShort(0.toShort).putInt(bodyLength).putInt(opaque).putLong(0)
+         .put(extrasBytes).put(keyBytes).put(valueBytes).array
+   }
+
+   private def sendBinary(expectedResponses: Int, requests: Array[Byte]*): List[BinaryResponse] = {
+      val socket = new Socket(server.getHost, server.getPort)
+      try {
+         // All the requests are written at once, as pipelining clients do
+         val out = new ByteArrayOutputStream
+         for (r <- requests) out.write(r)
+         socket.getOutputStream.write(out.toByteArray)
+         val in = new DataInputStream(socket.getInputStream)
+         var responses = List[BinaryResponse]()
+         var done = false
+         while (!done) {
+            val response = readResponse(in)
+            responses = responses ::: List(response)
+            done = response.opCode == NoOpOpCode || responses.size == expectedResponses
+         }
+         responses
+      } finally {
+         socket.close
+      }
+   }
+
+   private def readResponse(in: DataInputStream): BinaryResponse = {
+      assertEquals(in.readByte, MagicResponse)
+      val opCode = in.readByte
+      val keyLength = in.readUnsignedShort
+      val extrasLength = in.readUnsignedByte
+      in.readByte // data type
+      val status = in.readShort
+      val bodyLength = in.readInt
+      val opaque = in.readInt
+      in.readLong // cas
+      in.skipBytes(extrasLength)
+      val key = if (keyLength > 0) new Array[Byte](keyLength) else null
+      if (key != null) in.readFully(key)
+      val value = new Array[Byte](bodyLength - extrasLength - keyLength)
+      in.readFully(value)
+      new BinaryResponse(opCode, status, opaque, key, value)
+   }
+
+   private class BinaryResponse(val opCode: Byte, val status: Short, val opaque: Int, val key: Array[Byte],
+                                val value: Array[Byte])
+}
@@ -0,0 +1,97 @@
+package org.infinispan.server.memcached
+
+import org.testng.annotations.Test
+import java.lang.management.ManagementFactory
+import java.util.concurrent.TimeUnit
+import org.infinispan.test.SingleCacheManagerTest
+import org.infinispan.test.fwk.TestCacheManagerFactory
+import org.infinispan.manager.EmbeddedCacheManager
+import org.infinispan.server.core.RequestExecutor
+import org.infinispan.server.core.transport.{ChannelFuture, Channel, ChannelHandlerContext}
+import org.infinispan.server.core.transport.netty.ChannelBufferAdapter
+import org.jboss.netty.buffer.{ChannelBuffer => NettyChannelBuffer, ChannelBuffers => NettyChannelBuffers}
+
+/**
+ * Microbenchmark of the Memcached text protocol decoder, which feeds it sets, gets and multi-gets from memory, with
+ * requests executed inline and responses discarded, and reports the operations per second and the bytes allocated
+ * per operation, so that neither the network nor clients get in the way.
+ *
+ * @since 5.0
+ */
+@Test(groups = Array("profiling"), enabled = false, testName = "server.memcached.MemcachedDecoderPerfTest")
+class MemcachedDecoderPerfTest extends SingleCacheManagerTest {
+   private val Operations = 500000
+   private val RequestsPerRead = 100
+   private val KeysPerMultiGet = 10
+   private val Value = "x" * 100
+
+   override def createCacheManager: EmbeddedCacheManager = TestCacheManagerFactory.createLocalCacheManager
+
+   def testDecoder {
+      val decoder = new MemcachedDecoder(cacheManager.getCache[String, MemcachedValue](), null,
+         new RequestExecutor("MemcachedDecoderPerfTest", 0, 0))
+      // Keys are all within the ones set, so that every get is a hit
+      val sets = requests(i => "set k" + i + " 0 0 " + Value.length + "\r\n" + Value + "\r\n")
+      val gets = requests(i => "get k" + i + "\r\n")
+      val multiGets = requests(i =>
+         "get" + (0 until KeysPerMultiGet).map(j => " k" + ((i + j) % RequestsPerRead)).mkString + "\r\n")
+      // The first round warms up
+      for (round <- 0 until 3; (name, batch) <- List(("set", sets), ("get", gets), ("multi-get", multiGets))) {
+         val report = measure(decoder, batch)
+         if (round > 0) log.info(name + ": " + report)
+      }
+   }
+
+   private def requests(request: Int => String): NettyChannelBuffer =
+      NettyChannelBuffers.wrappedBuffer((0 until RequestsPerRead).map(request).mkString.getBytes)
+
+   private def measure(decoder: MemcachedDecoder, requests: NettyChannelBuffer): String = {
+      val buffer = new ChannelBufferAdapter(requests)
+      val ctx = new DiscardingContext
+      val threads = ManagementFactory.getThreadMXBean.asInstanceOf[com.sun.management.ThreadMXBean]
+      val threadId = Thread.currentThread.getId
+      val reads = Operations / RequestsPerRead
+      val allocated = threads.getThreadAllocatedBytes(threadId)
+      val begin = System.nanoTime
+      var read = 0
+      while (read < reads) {
+         // Each read is decoded as the transport does, request by request, responses being written at the end
+         requests.readerIndex(0)
+         while (buffer.readableBytes > 0) decoder.decode(ctx, buffer)
+         decoder.flush(ctx)
+         read += 1
+      }
+      val elapsed = System.nanoTime - begin
+      "%d ops/s, %d bytes allocated per op".format(TimeUnit.SECONDS.toNanos(1) * Operations / elapsed,
+         (threads.getThreadAllocatedBytes(threadId) - allocated) / Operations)
+   }
+
+   /**
+    * Context whose channel discards everything written to it.
+    */
+   private class DiscardingContext extends ChannelHandlerContext {
+      private val channel: Channel = new Channel {
+         override def write(message: Any): ChannelFuture = future
+         override def disconnect: ChannelFuture = future
+         override def getUnderlyingChannel: AnyRef = null
+         override def close: ChannelFuture = future
+      }
+
+      private val future: ChannelFuture = new ChannelFuture {
+         override def getChannel: Channel = channel
+         override def isDone: Boolean = true
+         override def isCancelled: Boolean = false
+         override def setSuccess: Boolean = false
+         override def setFailure(cause: Throwable): Boolean = false
+         override def await: ChannelFuture = this
+         override def awaitUninterruptibly: ChannelFuture = this
+         override def await(timeout: Long, unit: TimeUnit): Boolean = true
+         override def await(timeoutMillis: Long): Boolean = true
+         override def awaitUninterruptibly(timeout: Long, unit: TimeUnit): Boolean = true
+         override def awaitUninterruptibly(timeoutMillis: Long): Boolean = true
+         override def closeChannelOnComplete {}
+      }
+
+      override def getChannel: Channel = channel
+   }
+}
@@ -0,0 +1,74 @@
+package org.infinispan.server.memcached
+
+import org.testng.annotations.Test
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import net.spy.memcached.MemcachedClient
+
+/**
+ * Compares the throughput of the Memcached text and binary protocols, running the same sets, gets and multi-gets
+ * from a number of threads sharing a client of each protocol.
+ *
+ * @since 5.0
+ */
+@Test(groups = Array("profiling"), enabled = false, testName = "server.memcached.MemcachedProtocolPerfTest")
+class MemcachedProtocolPerfTest extends MemcachedSingleNodeTest {
+   private val Threads = 8
+   private val OperationsPerThread = 50000
+   private val KeysPerMultiGet = 10
+   private val Value = "x" * 100
+
+   def testThroughput {
+      val textClient = createMemcachedClient(60000, server.getPort)
+      val binaryClient = createMemcachedBinaryClient(60000, server.getPort)
+      try {
+         // Warm up both paths before measuring
+         for (client <- List(textClient, binaryClient)) measure(client, "warmup")
+         for (client <- List(textClient, binaryClient, textClient, binaryClient))
+            log.info(measure(client, if (client eq textClient) "text" else "binary"))
+      } finally {
+         textClient.shutdown
+         binaryClient.shutdown
+      }
+   }
+
+   private def measure(client: MemcachedClient, protocol: String): String = {
+      val sets = new AtomicLong
+      val gets = new AtomicLong
+      val multiGets = new AtomicLong
+      val threads = for (t <- 0 until Threads) yield new Thread {
+         override def run {
+            var setTime = 0L
+            var getTime = 0L
+            var multiGetTime = 0L
+            for (i <- 0 until OperationsPerThread) {
+               val key = protocol + "-" + t + "-" + (i % 1000)
+               var begin = System.nanoTime
+               client.set(key, 0, Value).get(timeout, TimeUnit.SECONDS)
+               setTime += System.nanoTime - begin
+               begin = System.nanoTime
+               client.get(key)
+               getTime += System.nanoTime - begin
+               if (i % KeysPerMultiGet == 0) {
+                  val keys = for (j <- 0 until KeysPerMultiGet) yield protocol + "-" + t + "-" + ((i + j) % 1000)
+                  begin = System.nanoTime
+                  client.getBulk(keys: _*)
+                  multiGetTime += System.nanoTime - begin
+               }
+            }
+            sets.addAndGet(setTime)
+            gets.addAndGet(getTime)
+            multiGets.addAndGet(multiGetTime)
+         }
+      }
+      val begin = System.nanoTime
+      threads.foreach(_.start)
+      threads.foreach(_.join)
+      val elapsed = System.nanoTime - begin
+      val operations = Threads * OperationsPerThread
+      "%s protocol: %d ops/s, set %d us, get %d us, %d keys multi-get %d us".format(protocol,
+         TimeUnit.SECONDS.toNanos(1) * (operations * 2 + operations / KeysPerMultiGet) / elapsed,
+         TimeUnit.NANOSECONDS.toMicros(sets.get / operations), TimeUnit.NANOSECONDS.toMicros(gets.get / operations),
+         KeysPerMultiGet, TimeUnit.NANOSECONDS.toMicros(multiGets.get * KeysPerMultiGet / operations))
+   }
+}
@@ -25,12 +25,14 @@ abstract class MemcachedSingleNodeTest extends SingleCacheManagerTest with Memca
    override def createCacheManager: EmbeddedCacheManager = {
       cacheManager = createTestCacheManager
       memcachedServer = startMemcachedTextServer(cacheManager)
-      memcachedClient = createMemcachedClient(60000, server.getPort)
+      memcachedClient = createTestMemcachedClient
       return cacheManager
    }
 
    protected def createTestCacheManager: EmbeddedCacheManager = TestCacheManagerFactory.createLocalCacheManager
 
+   protected def createTestMemcachedClient: MemcachedClient = createMemcachedClient(60000, server.getPort)
+
    @AfterClass(alwaysRun = true)
    override def destroyAfterClass {
       super.destroyAfterClass
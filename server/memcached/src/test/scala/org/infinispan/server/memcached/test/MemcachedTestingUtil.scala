@@ -1,11 +1,11 @@
 package org.infinispan.server.memcached.test
 
 import java.lang.reflect.Method
-import net.spy.memcached.{DefaultConnectionFactory, MemcachedClient}
+import net.spy.memcached.{BinaryConnectionFactory, DefaultConnectionFactory, MemcachedClient}
 import java.net.InetSocketAddress
 import java.util.concurrent.atomic.AtomicInteger
 import org.infinispan.server.core.transport.Decoder
-import org.infinispan.server.memcached.{MemcachedDecoder, MemcachedValue, MemcachedServer}
+import org.infinispan.server.memcached.{MemcachedProtocolDetector, MemcachedValue, MemcachedServer}
 import org.infinispan.manager.EmbeddedCacheManager
 import java.util.{Properties, Arrays}
 import org.infinispan.server.core.Main._
@@ -34,6 +34,13 @@ trait MemcachedTestingUtil {
       return new MemcachedClient(d, Arrays.asList(new InetSocketAddress(host, port)))
    }
 
+   def createMemcachedBinaryClient(timeout: Long, port: Int): MemcachedClient = {
+      val d = new BinaryConnectionFactory {
+         override def getOperationTimeout: Long = timeout
+      }
+      new MemcachedClient(d, Arrays.asList(new InetSocketAddress(host, port)))
+   }
+
    def startMemcachedTextServer(cacheManager: EmbeddedCacheManager): MemcachedServer =
       startMemcachedTextServer(cacheManager, UniquePortThreadLocal.get.intValue)
 
@@ -57,7 +64,7 @@ trait MemcachedTestingUtil {
    def startMemcachedTextServer(cacheManager: EmbeddedCacheManager, port: Int, cacheName: String): MemcachedServer = {
       val server = new MemcachedServer {
          override def getDecoder: Decoder =
-            new MemcachedDecoder(getCacheManager.getCache[String, MemcachedValue](cacheName), scheduler)
+            new MemcachedProtocolDetector(getCacheManager.getCache[String, MemcachedValue](cacheName), scheduler, getRequestExecutor)
 
          override def startDefaultCache = getCacheManager.getCache(cacheName)
       }
@@ -0,0 +1,108 @@
+package org.infinispan.rest
+
+import java.io.{IOException, OutputStream, InputStream}
+import java.util.{Arrays, UUID}
+import org.infinispan.Cache
+import collection.mutable.ArrayBuffer
+import ChunkedEntry.ChunkKey
+
+/**
+ * Entry standing for a value too large to be held in memory whole, whose content is stored in chunk entries, in the
+ * way the grid file system stores files. Chunks are stored in an internal cache of their own, which cannot be reached
+ * through REST, and keyed by the key of the value, the id of the upload that stored them and their number, so that
+ * the chunks of a value being replaced never get mixed with the ones of the value replacing it. The entry itself is
+ * only stored once all its chunks are.
+ *
+ * @see ManagerInstance#getChunkCache
+ * @since 5.0
+ */
+class ChunkedEntry(val contentType: String, val length: Long, val chunkCount: Int, val uploadId: Long,
+                   val lastModified: Long, val etag: String) extends java.io.Serializable {
+
+   def chunkKey(key: String, chunk: Int): ChunkKey = ChunkKey(key, uploadId, chunk)
+
+   /**
+    * Checks that none of the chunks has expired, which is done before sending anything, since the response can no
+    * longer be turned into a 404 once its status has been sent.
+    */
+   def hasAllChunks(chunks: Cache[ChunkKey, Array[Byte]], key: String): Boolean =
+      (0 until chunkCount).forall(i => chunks.containsKey(chunkKey(key, i)))
+
+   /**
+    * Writes the value to the given stream, retrieving its chunks one at a time.
+    */
+   def writeTo(out: OutputStream, chunks: Cache[ChunkKey, Array[Byte]], key: String) {
+      for (i <- 0 until chunkCount) {
+         chunks.get(chunkKey(key, i)) match {
+            case chunk: Array[Byte] => out.write(chunk)
+            case _ => throw new IOException("Chunk " + i + " of " + key + " is missing, so the value was replaced or removed while being read")
+         }
+      }
+   }
+
+   def removeChunks(chunks: Cache[ChunkKey, Array[Byte]], key: String) {
+      for (i <- 0 until chunkCount) chunks.remove(chunkKey(key, i))
+   }
+
+   override def toString = {
+      new StringBuilder().append("ChunkedEntry").append("{")
+         .append("contentType=").append(contentType)
+         .append(", length=").append(length)
+         .append(", chunkCount=").append(chunkCount)
+         .append(", uploadId=").append(uploadId)
+         .append("}").toString
+   }
+}
+
+object ChunkedEntry {
+   /**
+    * Values up to this size are stored in a single entry, whereas larger ones are stored in chunks of this size.
+    */
+   val ChunkSize = 256 * 1024
+
+   case class ChunkKey(key: String, uploadId: Long, chunk: Int) extends java.io.Serializable
+
+   /**
+    * Stores the given stream in chunks, the first of which has already been read, and returns the entry standing for
+    * the whole value, which is left to the caller to store. If the stream fails, the chunks stored so far are removed.
+    */
+   def storeChunks(chunks: Cache[ChunkKey, Array[Byte]], key: String, contentType: String, first: Array[Byte],
+                   in: InputStream, storeChunk: (ChunkKey, Array[Byte]) => Unit): ChunkedEntry = {
+      val uploadId = UUID.randomUUID.getLeastSignificantBits
+      val chunkHashes = new ArrayBuffer[Long]
+      var length = 0L
+      var chunk = first
+      var read = first.length
+      try {
+         while (read > 0) {
+            // Chunks are kept by the cache, so each gets its own array, of the exact size of what was read
+            val data = if (read == chunk.length) chunk else Arrays.copyOf(chunk, read)
+            storeChunk(ChunkKey(key, uploadId, chunkHashes.size), data)
+            chunkHashes += EntityTags.hash(data)
+            length += read
+            chunk = new Array[Byte](ChunkSize)
+            read = readChunk(in, chunk)
+         }
+      } catch {
+         case e: IOException => {
+            for (i <- 0 until chunkHashes.size) chunks.remove(ChunkKey(key, uploadId, i))
+            throw e
+         }
+      }
+      new ChunkedEntry(contentType, length, chunkHashes.size, uploadId, System.currentTimeMillis / 1000 * 1000,
+         EntityTags.of(contentType, chunkHashes.toArray))
+   }
+
+   /**
+    * Fills the given chunk from the stream, unless it ends before, and returns the number of bytes read.
+    */
+   def readChunk(in: InputStream, chunk: Array[Byte]): Int = {
+      var read = 0
+      var n = 0
+      while (read < chunk.length && n >= 0) {
+         n = in.read(chunk, read, chunk.length - read)
+         if (n > 0) read += n
+      }
+      read
+   }
+}
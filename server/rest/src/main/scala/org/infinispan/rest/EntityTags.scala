@@ -0,0 +1,34 @@
+package org.infinispan.rest
+
+import org.infinispan.remoting.MIMECacheEntry
+import org.infinispan.util.hash.MurmurHash3
+
+/**
+ * Calculates the entity tags of stored values. Tags are calculated once, when values are stored, and kept along with
+ * them, so that conditional requests do not hash the whole payload every time.
+ *
+ * @since 5.0
+ */
+object EntityTags {
+   private val hashFunc = new MurmurHash3
+
+   def of(contentType: String, data: Array[Byte]): String = contentType + hashFunc.hash(data)
+
+   def of(entry: MIMECacheEntry): String = if (entry.etag != null) entry.etag else of(entry.contentType, entry.data)
+
+   /**
+    * Calculates the tag of a value stored in chunks from the hashes of each chunk.
+    */
+   def of(contentType: String, chunkHashes: Array[Long]): String = contentType + hashFunc.hash(chunkHashes)
+
+   def hash(data: Array[Byte]): Int = hashFunc.hash(data)
+
+   /**
+    * Creates an entry whose tag is already calculated.
+    */
+   def newEntry(contentType: String, data: Array[Byte]): MIMECacheEntry = {
+      val entry = new MIMECacheEntry(contentType, data)
+      entry.etag = of(contentType, data)
+      entry
+   }
+}
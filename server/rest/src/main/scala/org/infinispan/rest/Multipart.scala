@@ -0,0 +1,137 @@
+package org.infinispan.rest
+
+import java.io._
+import java.net.{URLDecoder, URLEncoder}
+import java.util.{TreeMap, UUID}
+import javax.ws.rs.core.MediaType
+
+/**
+ * Reading and writing of multipart/mixed bodies, which carry several entries in a single request or response. Each
+ * part holds a single entry, whose key, URL encoded, is in the part's Key header.
+ *
+ * @since 5.0
+ */
+object Multipart {
+   val MultipartMixed = "multipart/mixed"
+   val KeyHeader = "Key"
+
+   def newBoundary: String = "infinispan-" + UUID.randomUUID
+
+   def contentType(boundary: String): String = MultipartMixed + "; boundary=" + boundary
+
+   /**
+    * Returns the boundary of a multipart/mixed content type, or null if the content type is any other.
+    */
+   def boundary(contentType: String): String = {
+      if (contentType == null) return null
+      val mediaType = MediaType.valueOf(contentType)
+      if (mediaType.getType == "multipart" && mediaType.getSubtype == "mixed")
+         mediaType.getParameters.get("boundary")
+      else null
+   }
+
+   def encodeKey(key: String): String = URLEncoder.encode(key, "UTF-8")
+
+   def decodeKey(encodedKey: String): String = URLDecoder.decode(encodedKey, "UTF-8")
+
+   /**
+    * Writes the delimiter and headers starting a part, whose content is then to be written as is.
+    */
+   def writePartStart(out: OutputStream, boundary: String, headers: (String, Any)*) {
+      val sb = new StringBuilder().append("--").append(boundary).append("\r\n")
+      for ((name, value) <- headers) sb.append(name).append(": ").append(value).append("\r\n")
+      sb.append("\r\n")
+      out.write(sb.toString.getBytes("US-ASCII"))
+   }
+
+   def writePartEnd(out: OutputStream) {
+      out.write(CRLF)
+   }
+
+   def writeClose(out: OutputStream, boundary: String) {
+      out.write(("--" + boundary + "--\r\n").getBytes("US-ASCII"))
+   }
+
+   private val CRLF = "\r\n".getBytes
+}
+
+/**
+ * Reads the parts of a multipart/mixed body one at a time, so that only one part is held in memory at once.
+ */
+class MultipartReader(in: InputStream, boundary: String) {
+   private val input = new BufferedInputStream(in)
+   // Every delimiter but the first is preceded by a line break, which belongs to the delimiter rather than to the part
+   private val delimiter = ("\r\n--" + boundary).getBytes("US-ASCII")
+   private var finished = false
+
+   // The first delimiter is read as if it had been preceded by a line break too, skipping the preamble if any
+   readUntilDelimiter(null, 2)
+   readDelimiterEnd
+
+   /**
+    * Returns the next part, or null once the closing delimiter has been read.
+    */
+   def next: MultipartPart = {
+      if (finished) return null
+      val headers = new TreeMap[String, String](String.CASE_INSENSITIVE_ORDER)
+      var line = readLine
+      while (!line.isEmpty) {
+         val colon = line.indexOf(':')
+         if (colon < 0) throw new IOException("Malformed part header: " + line)
+         headers.put(line.substring(0, colon).trim, line.substring(colon + 1).trim)
+         line = readLine
+      }
+      val content = new ByteArrayOutputStream
+      readUntilDelimiter(content, 0)
+      readDelimiterEnd
+      new MultipartPart(headers, content.toByteArray)
+   }
+
+   private def readUntilDelimiter(out: OutputStream, alreadyMatched: Int) {
+      var matched = alreadyMatched
+      while (matched < delimiter.length) {
+         val b = input.read
+         if (b < 0) throw new EOFException("Multipart body ended before its closing delimiter")
+         if (b == delimiter(matched)) {
+            matched += 1
+         } else {
+            // The delimiter only has a carriage return at its start, so a mismatch can only restart a match there
+            if (out != null) out.write(delimiter, 0, matched)
+            if (b == delimiter(0)) {
+               matched = 1
+            } else {
+               if (out != null) out.write(b)
+               matched = 0
+            }
+         }
+      }
+   }
+
+   /**
+    * Reads what follows a delimiter, which is either "--" for the closing delimiter, or the end of the line.
+    */
+   private def readDelimiterEnd {
+      input.mark(2)
+      finished = input.read == '-' && input.read == '-'
+      // Anything after the closing delimiter is ignored, so the body may end right after it
+      if (!finished) {
+         input.reset
+         readLine
+      }
+   }
+
+   private def readLine: String = {
+      val sb = new StringBuilder
+      var b = input.read
+      while (b != '\n') {
+         if (b < 0) throw new EOFException("Multipart body ended in the middle of a line")
+         if (b != '\r') sb.append(b.toChar)
+         b = input.read
+      }
+      sb.toString
+   }
+}
+
+class MultipartPart(val headers: java.util.Map[String, String], val content: Array[Byte]) {
+   def header(name: String): String = headers.get(name)
+}
@@ -2,8 +2,8 @@ package org.infinispan.rest
 
 import com.thoughtworks.xstream.XStream
 import java.io._
-import java.util.Date
-import java.util.concurrent.TimeUnit
+import java.util.{Arrays, Date}
+import java.util.concurrent.{ExecutionException, Future, TimeUnit}
 import javax.ws.rs._
 import core._
 import core.Response.{ResponseBuilder, Status}
@@ -11,7 +11,14 @@ import org.infinispan.remoting.MIMECacheEntry
 import org.infinispan.manager._
 import org.codehaus.jackson.map.ObjectMapper
 import org.infinispan.{CacheException, Cache}
-import org.infinispan.util.hash.MurmurHash3
+import org.infinispan.eviction.EvictionStrategy
+import org.infinispan.notifications.Listener
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryEvicted
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvictedEvent
+import org.infinispan.util.concurrent.{FutureListener, NotifyingFuture}
+import scala.collection.JavaConversions._
+import ChunkedEntry.ChunkKey
+import Multipart._
 
 /**
  * Integration server linking REST requests with Infinispan calls.
@@ -35,9 +42,24 @@ class Server(@Context request: Request, @HeaderParam("performAsync") useAsync: B
          ManagerInstance.getEntry(cacheName, key) match {
             case b: MIMECacheEntry => {
                val lastMod = new Date(b.lastModified)
-               request.evaluatePreconditions(lastMod, calcETAG(b)) match {
+               val etag = calcETAG(b)
+               request.evaluatePreconditions(lastMod, etag) match {
                   case bldr: ResponseBuilder => bldr.build
-                  case null => Response.ok(b.data, b.contentType).lastModified(lastMod).tag(calcETAG(b)).build
+                  case null => Response.ok(b.data, b.contentType).lastModified(lastMod).tag(etag).build
+               }
+            }
+            case c: ChunkedEntry => {
+               val chunks = ManagerInstance.getChunkCache(cacheName)
+               val lastMod = new Date(c.lastModified)
+               val etag = new EntityTag(c.etag)
+               if (!c.hasAllChunks(chunks, key)) {
+                  removeExpired(cacheName, key, c)
+               } else request.evaluatePreconditions(lastMod, etag) match {
+                  case bldr: ResponseBuilder => bldr.build
+                  case null =>
+                     // Chunks are retrieved as the response is written, so the value is never held in memory whole
+                     Response.ok(streamIt(c.writeTo(_, chunks, key)), c.contentType)
+                        .header("Content-Length", c.length).lastModified(lastMod).tag(etag).build
                }
             }
             case s: String => Response.ok(s, "text/plain").build
@@ -64,6 +86,64 @@ class Server(@Context request: Request, @HeaderParam("performAsync") useAsync: B
       }
    }
 
+   @GET
+   @Path("/{cacheName}")
+   def getEntries(@PathParam("cacheName") cacheName: String, @QueryParam("key") keys: java.util.List[String]): Response = {
+      protectCacheNotFound(request, useAsync) { (request, useAsync) =>
+         val cache = ManagerInstance.getCache(cacheName)
+         if (keys.isEmpty) {
+            Response.status(Status.BAD_REQUEST).build
+         } else {
+            val boundary = newBoundary
+            val chunks = ManagerInstance.getChunkCache(cacheName)
+            // Entries are retrieved as the response is written, one at a time
+            Response.ok(streamIt(writeEntries(_, boundary, keys, cache, chunks)), Multipart.contentType(boundary)).build
+         }
+      }
+   }
+
+   /**
+    * Writes the entries found as the parts of a multipart/mixed body, leaving out the missing ones.
+    */
+   private def writeEntries(out: OutputStream, boundary: String, keys: java.util.List[String], cache: Cache[String, Any],
+                            chunks: Cache[ChunkKey, Array[Byte]]) {
+      for (key <- asIterable(keys)) {
+         cache.get(key) match {
+            case b: MIMECacheEntry => writePart(out, boundary, key, b.contentType, b.data.length, EntityTags.of(b))(_.write(b.data))
+            case c: ChunkedEntry =>
+               if (c.hasAllChunks(chunks, key))
+                  writePart(out, boundary, key, c.contentType, c.length, c.etag)(c.writeTo(_, chunks, key))
+            case s: String => {
+               val data = s.getBytes("UTF-8")
+               writePart(out, boundary, key, "text/plain", data.length, null)(_.write(data))
+            }
+            case ba: Array[Byte] =>
+               writePart(out, boundary, key, "application/x-java-serialized-object", ba.length, null)(_.write(ba))
+            case ser: Serializable => {
+               val bytes = new ByteArrayOutputStream
+               val oos = new ObjectOutputStream(bytes)
+               oos.writeObject(ser)
+               oos.close
+               val data = bytes.toByteArray
+               writePart(out, boundary, key, "application/x-java-serialized-object", data.length, null)(_.write(data))
+            }
+            case _ => // Neither missing nor non serializable entries can be sent
+         }
+      }
+      writeClose(out, boundary)
+   }
+
+   private def writePart(out: OutputStream, boundary: String, key: String, contentType: String, length: Long,
+                         etag: String)(content: OutputStream => Unit) {
+      if (etag == null)
+         writePartStart(out, boundary, (KeyHeader, encodeKey(key)), ("Content-Type", contentType), ("Content-Length", length))
+      else
+         writePartStart(out, boundary, (KeyHeader, encodeKey(key)), ("Content-Type", contentType), ("Content-Length", length),
+            ("ETag", new EntityTag(etag)))
+      content(out)
+      writePartEnd(out)
+   }
+
    /**create a JAX-RS streaming output */
    def streamIt(action: (OutputStream) => Unit) = new StreamingOutput {def write(o: OutputStream) = {action(o)}}
 
@@ -79,6 +159,16 @@ class Server(@Context request: Request, @HeaderParam("performAsync") useAsync: B
                   case null => Response.ok.`type`(b.contentType).lastModified(lastMod).tag(calcETAG(b)).build
                }
             }
+            case c: ChunkedEntry => {
+               val lastMod = new Date(c.lastModified)
+               val etag = new EntityTag(c.etag)
+               if (!c.hasAllChunks(ManagerInstance.getChunkCache(cacheName), key)) {
+                  removeExpired(cacheName, key, c)
+               } else request.evaluatePreconditions(lastMod, etag) match {
+                  case bldr: ResponseBuilder => bldr.build
+                  case null => Response.ok.`type`(c.contentType).header("Content-Length", c.length).lastModified(lastMod).tag(etag).build
+               }
+            }
             case x: Any => Response.ok.build
             case null => Response status (Status.NOT_FOUND) build
          }
@@ -89,7 +179,8 @@ class Server(@Context request: Request, @HeaderParam("performAsync") useAsync: B
    @POST
    @Path("/{cacheName}/{cacheKey}")
    def putEntry(@PathParam("cacheName") cacheName: String, @PathParam("cacheKey") key: String,
-                @HeaderParam("Content-Type") mediaType: String, data: Array[Byte],
+                @HeaderParam("Content-Type") mediaType: String,
+                @DefaultValue("-1") @HeaderParam("Content-Length") contentLength: Long, data: InputStream,
                 @DefaultValue("-1") @HeaderParam("timeToLiveSeconds") ttl: Long,
                 @DefaultValue("-1") @HeaderParam("maxIdleTimeSeconds") idleTime: Long): Response = {
       protectCacheNotFound(request, useAsync) { (request, useAsync) =>
@@ -97,15 +188,75 @@ class Server(@Context request: Request, @HeaderParam("performAsync") useAsync: B
          if (request.getMethod == "POST" && cache.containsKey(key)) {
             Response.status(Status.CONFLICT).build()
          } else {
-            val obj = if (isBinaryType(mediaType)) data else new MIMECacheEntry(mediaType, data)
+            val chunks = ManagerInstance.getChunkCache(cacheName)
+            val start = System.currentTimeMillis
+            val obj =
+               if (isBinaryType(mediaType)) {
+                  readFully(data, contentLength)
+               } else if (contentLength >= 0 && contentLength <= ChunkedEntry.ChunkSize) {
+                  EntityTags.newEntry(mediaType, readFully(data, contentLength))
+               } else {
+                  // Values of unknown length are read a chunk at a time, until they turn out to need storing in chunks
+                  val first = new Array[Byte](ChunkedEntry.ChunkSize)
+                  val read = ChunkedEntry.readChunk(data, first)
+                  if (read < first.length)
+                     EntityTags.newEntry(mediaType, Arrays.copyOf(first, read))
+                  else
+                     ChunkedEntry.storeChunks(chunks, key, mediaType, first, data, putInCache(chunks, _, _, ttl, idleTime))
+               }
+            // Chunks live for the lifespan from the time they were stored, so the entry is only given what remains of
+            // it, not to outlive them
+            val entryTtl = obj match {
+               case c: ChunkedEntry if ttl > 0 => math.max(ttl - (System.currentTimeMillis - start + 999) / 1000, 1)
+               case _ => ttl
+            }
+            replaceInCache(cache, chunks, key, obj, entryTtl, idleTime, useAsync)
+            Response.ok.build
+         }
+      }
+   }
+
+   @POST
+   @Path("/{cacheName}")
+   def putEntries(@PathParam("cacheName") cacheName: String, @HeaderParam("Content-Type") mediaType: String,
+                  data: InputStream,
+                  @DefaultValue("-1") @HeaderParam("timeToLiveSeconds") ttl: Long,
+                  @DefaultValue("-1") @HeaderParam("maxIdleTimeSeconds") idleTime: Long): Response = {
+      protectCacheNotFound(request, useAsync) { (request, useAsync) =>
+         val cache = ManagerInstance.getCache(cacheName)
+         val chunks = ManagerInstance.getChunkCache(cacheName)
+         val boundary = Multipart.boundary(mediaType)
+         if (boundary == null) {
+            Response.status(Status.UNSUPPORTED_MEDIA_TYPE).build
+         } else {
+            val entries = new java.util.HashMap[String, Any]
+            try {
+               val reader = new MultipartReader(data, boundary)
+               var part = reader.next
+               while (part != null) {
+                  val encodedKey = part.header(KeyHeader)
+                  if (encodedKey == null) throw new WebApplicationException(Status.BAD_REQUEST)
+                  val contentType = part.header("Content-Type")
+                  entries.put(decodeKey(encodedKey),
+                     if (isBinaryType(contentType)) part.content else EntityTags.newEntry(contentType, part.content))
+                  part = reader.next
+               }
+            } catch {
+               case e: IOException => throw new WebApplicationException(e, Status.BAD_REQUEST)
+            }
+            // Batches are meant for small values, so none of them is stored in chunks, but they may replace chunked ones
+            val replaced = (for (key <- asIterable(entries.keySet)) yield (key, cache.get(key))).toList
+            def removeReplacedChunks() = for ((key, previous) <- replaced) removeChunks(chunks, key, previous)
             (ttl, idleTime, useAsync) match {
-               case (0, 0, false) => cache.put(key, obj)
-               case (x, 0, false) => cache.put(key, obj, ttl, TimeUnit.SECONDS)
-               case (x, y, false) => cache.put(key, obj, ttl, TimeUnit.SECONDS, idleTime, TimeUnit.SECONDS)
-               case (0, 0, true) => cache.putAsync(key, obj)
-               case (x, 0, true) => cache.putAsync(key, obj, ttl, TimeUnit.SECONDS)
-               case (x, y, true) => cache.putAsync(key, obj, ttl, TimeUnit.SECONDS, idleTime, TimeUnit.SECONDS)
+               case (0, 0, false) => cache.putAll(entries)
+               case (x, 0, false) => cache.putAll(entries, ttl, TimeUnit.SECONDS)
+               case (x, y, false) => cache.putAll(entries, ttl, TimeUnit.SECONDS, idleTime, TimeUnit.SECONDS)
+               case (0, 0, true) => onSuccess(cache.putAllAsync(entries))(_ => removeReplacedChunks())
+               case (x, 0, true) => onSuccess(cache.putAllAsync(entries, ttl, TimeUnit.SECONDS))(_ => removeReplacedChunks())
+               case (x, y, true) =>
+                  onSuccess(cache.putAllAsync(entries, ttl, TimeUnit.SECONDS, idleTime, TimeUnit.SECONDS))(_ => removeReplacedChunks())
             }
+            if (!useAsync) removeReplacedChunks()
             Response.ok.build
          }
       }
@@ -114,10 +265,16 @@ class Server(@Context request: Request, @HeaderParam("performAsync") useAsync: B
    @DELETE
    @Path("/{cacheName}/{cacheKey}")
    def removeEntry(@PathParam("cacheName") cacheName: String, @PathParam("cacheKey") key: String) = {
+      val cache = ManagerInstance.getCache(cacheName)
+      val chunks = ManagerInstance.getChunkCache(cacheName)
       if (useAsync) {
-         ManagerInstance.getCache(cacheName).removeAsync(key)
+         val removal = cache.removeAsync(key)
+         onSuccess(removal)(removeChunks(chunks, key, _))
+         removal
       } else {
-         ManagerInstance.getCache(cacheName).remove(key)
+         val previous = cache.remove(key)
+         removeChunks(chunks, key, previous)
+         previous
       }
    }
 
@@ -125,11 +282,91 @@ class Server(@Context request: Request, @HeaderParam("performAsync") useAsync: B
    @Path("/{cacheName}")
    def killCache(@PathParam("cacheName") cacheName: String) = {
       ManagerInstance.getCache(cacheName).clear
+      ManagerInstance.getChunkCache(cacheName).clear
+   }
+
+   /**
+    * Stores the given value, then removes the chunks of the value it replaced, if it was stored in chunks, once the new
+    * value has been stored, as the old one may be being read until then.
+    */
+   private def replaceInCache(cache: Cache[String, Any], chunks: Cache[ChunkKey, Array[Byte]], key: String, obj: Any,
+                              ttl: Long, idleTime: Long, useAsync: Boolean) {
+      if (useAsync) {
+         val future = (ttl, idleTime) match {
+            case (0, 0) => cache.putAsync(key, obj)
+            case (x, 0) => cache.putAsync(key, obj, ttl, TimeUnit.SECONDS)
+            case (x, y) => cache.putAsync(key, obj, ttl, TimeUnit.SECONDS, idleTime, TimeUnit.SECONDS)
+         }
+         onSuccess(future)(removeChunks(chunks, key, _))
+      } else {
+         removeChunks(chunks, key, putInCache(cache, key, obj, ttl, idleTime))
+      }
    }
 
-   val hashFunc = new MurmurHash3()
+   /**
+    * Stores the given value, returning the one it replaced.
+    */
+   private def putInCache[K, V](cache: Cache[K, V], key: K, obj: V, ttl: Long, idleTime: Long): V = {
+      (ttl, idleTime) match {
+         case (0, 0) => cache.put(key, obj)
+         case (x, 0) => cache.put(key, obj, ttl, TimeUnit.SECONDS)
+         case (x, y) => cache.put(key, obj, ttl, TimeUnit.SECONDS, idleTime, TimeUnit.SECONDS)
+      }
+   }
 
-   def calcETAG(entry: MIMECacheEntry) = new EntityTag(entry.contentType + hashFunc.hash(entry.data))
+   /**
+    * Runs the given action with the result of an asynchronous write, once it has succeeded.
+    */
+   private def onSuccess[T](future: NotifyingFuture[T])(action: T => Unit) {
+      future.attachListener(new FutureListener[T] {
+         def futureDone(f: Future[T]) {
+            try {
+               action(f.get)
+            } catch {
+               case e: ExecutionException => // The write failed, so the chunks of the previous value are still in use
+            }
+         }
+      })
+   }
+
+   /**
+    * Removes the chunks of the given entry, if it was stored in chunks, once it's been replaced or removed.
+    */
+   private def removeChunks(chunks: Cache[ChunkKey, Array[Byte]], key: String, entry: Any) {
+      entry match {
+         case c: ChunkedEntry => c.removeChunks(chunks, key)
+         case _ => // Nothing else is stored in chunks
+      }
+   }
+
+   /**
+    * Removes an entry stored in chunks some of which have expired, unless it has been replaced meanwhile, and reports
+    * it missing.
+    */
+   private def removeExpired(cacheName: String, key: String, entry: ChunkedEntry): Response = {
+      if (ManagerInstance.getCache(cacheName).remove(key, entry))
+         entry.removeChunks(ManagerInstance.getChunkCache(cacheName), key)
+      Response status (Status.NOT_FOUND) build
+   }
+
+   private def readFully(in: InputStream, contentLength: Long): Array[Byte] = {
+      if (contentLength >= 0) {
+         val data = new Array[Byte](contentLength.toInt)
+         if (ChunkedEntry.readChunk(in, data) < data.length) throw new EOFException("Request body shorter than its length")
+         data
+      } else {
+         val out = new ByteArrayOutputStream
+         val buffer = new Array[Byte](8192)
+         var read = in.read(buffer)
+         while (read >= 0) {
+            out.write(buffer, 0, read)
+            read = in.read(buffer)
+         }
+         out.toByteArray
+      }
+   }
+
+   def calcETAG(entry: MIMECacheEntry) = new EntityTag(EntityTags.of(entry))
 
    private def protectCacheNotFound(request: Request, useAsync: Boolean) (op: (Request, Boolean) => Response): Response = {
       try {
@@ -150,8 +387,15 @@ class Server(@Context request: Request, @HeaderParam("performAsync") useAsync: B
 object ManagerInstance {
    var instance: EmbeddedCacheManager = null
 
+   /**
+    * Prefix of the names of the internal caches holding the chunks of large values, which cannot be reached through
+    * REST, like the topology cache of the Hot Rod server.
+    */
+   val ChunkCachePrefix = "___restChunks."
+
    def getCache(name: String): Cache[String, Any] = {
-      if (name != CacheContainer.DEFAULT_CACHE_NAME && !instance.getCacheNames.contains(name))
+      if (name.startsWith(ChunkCachePrefix) ||
+            (name != CacheContainer.DEFAULT_CACHE_NAME && !instance.getCacheNames.contains(name)))
          throw new CacheNotFoundException("Cache with name '" + name + "' not found amongst the configured caches")
 
       if (name == CacheContainer.DEFAULT_CACHE_NAME) instance.getCache[String, Any]
@@ -160,6 +404,46 @@ object ManagerInstance {
 
    def getEntry(cacheName: String, key: String): Any = getCache(cacheName).get(key)
 
+   /**
+    * Returns the internal cache holding the chunks of the large values of the given cache.  It is configured like the
+    * cache, so that chunks are clustered and stored the same way, but without eviction nor expiration of its own: chunks
+    * only expire with the lifespan and maximum idle time given to the value, and are removed along with it otherwise.
+    * Chunk caches are defined when the server starts, so that they exist on every node, or else on first use.
+    */
+   def getChunkCache(name: String): Cache[ChunkKey, Array[Byte]] = {
+      val chunkCacheName = ChunkCachePrefix + name
+      if (!instance.getCacheNames.contains(chunkCacheName)) {
+         instance.synchronized {
+            if (!instance.getCacheNames.contains(chunkCacheName)) {
+               val cache = getCache(name)
+               val cfg = cache.getConfiguration.clone
+               cfg.setEvictionStrategy(EvictionStrategy.NONE)
+               cfg.setEvictionMaxEntries(-1)
+               cfg.setExpirationLifespan(-1)
+               cfg.setExpirationMaxIdle(-1)
+               instance.defineConfiguration(chunkCacheName, cfg)
+               if (cfg.getCacheLoaderManagerConfig.getCacheLoaderConfigs.isEmpty)
+                  cache.addListener(new ChunkRemovalListener(instance.getCache(chunkCacheName)))
+            }
+         }
+      }
+      instance.getCache(chunkCacheName)
+   }
+
+   /**
+    * Removes the chunks of the values evicted from a cache without a cache store, which are gone for good.
+    */
+   @Listener(sync = false)
+   class ChunkRemovalListener(chunks: Cache[ChunkKey, Array[Byte]]) {
+      @CacheEntryEvicted
+      def entryEvicted(e: CacheEntryEvictedEvent[String, Any]) {
+         if (!e.isPre) e.getValue match {
+            case c: ChunkedEntry => c.removeChunks(chunks, e.getKey)
+            case _ => // Nothing else is stored in chunks
+         }
+      }
+   }
+
 }
 
 class CacheNotFoundException(msg: String) extends CacheException(msg)
@@ -2,7 +2,7 @@ package org.infinispan.rest
 
 import scala.collection.JavaConversions._
 import javax.servlet.http.HttpServlet
-import org.infinispan.manager.{EmbeddedCacheManager, DefaultCacheManager}
+import org.infinispan.manager.{CacheContainer, EmbeddedCacheManager, DefaultCacheManager}
 import org.infinispan.server.core.Logging
 import javax.servlet.{ServletContext, ServletConfig}
 
@@ -36,10 +36,15 @@ class StartupListener extends HttpServlet with Logging {
       }
 
       // Start defined caches to avoid issues with lazily started caches
-      for (cacheName <- asIterator(ManagerInstance.instance.getCacheNames.iterator))
+      val cacheNames = ManagerInstance.instance.getCacheNames.toList
+      for (cacheName <- cacheNames)
          ManagerInstance.instance.getCache(cacheName)
       // Finally, start default cache as well
       ManagerInstance.instance.getCache[String, Any]()
+      // Start the caches holding the chunks of large values too, so that they exist on every node
+      for (cacheName <- cacheNames if !cacheName.startsWith(ManagerInstance.ChunkCachePrefix))
+         ManagerInstance.getChunkCache(cacheName)
+      ManagerInstance.getChunkCache(CacheContainer.DEFAULT_CACHE_NAME)
    }
 
    /**
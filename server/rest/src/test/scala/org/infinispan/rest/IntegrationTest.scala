@@ -12,7 +12,7 @@ import org.infinispan.manager.CacheContainer
 import scala.math._
 import org.infinispan.test.TestingUtil
 import java.text.SimpleDateFormat
-import org.apache.commons.httpclient.{HttpMethodBase, Header, HttpClient}
+import org.apache.commons.httpclient.{NameValuePair, HttpMethodBase, Header, HttpClient}
 import java.util.{Arrays, Calendar, Locale}
 
 /**
@@ -388,6 +388,114 @@ class IntegrationTest {
       assertTrue(Arrays.equals(data, dataBack))
    }
 
+   def testLargeValueStoredInChunks(m: Method) {
+      val data = new Array[Byte](ChunkedEntry.ChunkSize * 3 + 100)
+      new java.util.Random(m.getName.hashCode).nextBytes(data)
+      put(m, data, "application/octet-stream")
+      val entry = ManagerInstance.getEntry(cacheName, m.getName).asInstanceOf[ChunkedEntry]
+      assertEquals(entry.chunkCount, 4)
+      assertEquals(entry.length, data.length.toLong)
+      val chunks = ManagerInstance.getChunkCache(cacheName)
+      assertTrue(entry.hasAllChunks(chunks, m.getName))
+
+      val get = Client.call(new GetMethod(fullPathKey(m)))
+      assertEquals(get.getStatusCode, HttpServletResponse.SC_OK)
+      assertTrue(Arrays.equals(get.getResponseBody, data))
+      assertEquals(get.getResponseHeader("Content-Type").getValue, "application/octet-stream")
+
+      val conditionalGet = new GetMethod(fullPathKey(m))
+      conditionalGet.setRequestHeader("If-None-Match", get.getResponseHeader("ETag").getValue)
+      assertEquals(Client.call(conditionalGet).getStatusCode, HttpServletResponse.SC_NOT_MODIFIED)
+
+      // Replacing the value removes its chunks
+      put(m, "data")
+      assertEquals(get(m).getResponseBodyAsString, "data")
+      assertNull(chunks.get(entry.chunkKey(m.getName, 0)))
+   }
+
+   def testChunkCacheNotReachable(m: Method) {
+      val data = new Array[Byte](ChunkedEntry.ChunkSize + 100)
+      put(m, data, "application/octet-stream")
+      val get = Client.call(new GetMethod(HOST + "rest/" + ManagerInstance.ChunkCachePrefix + cacheName + "/" + m.getName))
+      assertEquals(get.getStatusCode, HttpServletResponse.SC_NOT_FOUND)
+   }
+
+   def testLargeValueWithMissingChunkNotFound(m: Method) {
+      val data = new Array[Byte](ChunkedEntry.ChunkSize * 2)
+      put(m, data, "application/octet-stream")
+      val entry = ManagerInstance.getEntry(cacheName, m.getName).asInstanceOf[ChunkedEntry]
+      val chunks = ManagerInstance.getChunkCache(cacheName)
+      chunks.remove(entry.chunkKey(m.getName, 1))
+
+      assertEquals(Client.call(new GetMethod(fullPathKey(m))).getStatusCode, HttpServletResponse.SC_NOT_FOUND)
+      assertNull(ManagerInstance.getEntry(cacheName, m.getName))
+      assertNull(chunks.get(entry.chunkKey(m.getName, 0)))
+   }
+
+   def testIfNoneMatch(m: Method) {
+      put(m, "data")
+      val etag = get(m).getResponseHeader("ETag").getValue
+      val conditionalGet = new GetMethod(fullPathKey(m))
+      conditionalGet.setRequestHeader("If-None-Match", etag)
+      assertEquals(Client.call(conditionalGet).getStatusCode, HttpServletResponse.SC_NOT_MODIFIED)
+   }
+
+   def testGetMultipleEntries(m: Method) {
+      val k1 = m.getName + "-1"
+      val k2 = m.getName + " 2"
+      ManagerInstance.getCache(cacheName).put(k1, EntityTags.newEntry("application/text", "v1".getBytes))
+      ManagerInstance.getCache(cacheName).put(k2, "v2")
+      val get = new GetMethod(fullPath)
+      get.setQueryString(Array(new NameValuePair("key", k1), new NameValuePair("key", m.getName + "-missing"),
+         new NameValuePair("key", k2)))
+      Client.call(get)
+      assertEquals(get.getStatusCode, HttpServletResponse.SC_OK)
+      val reader = new MultipartReader(get.getResponseBodyAsStream,
+         Multipart.boundary(get.getResponseHeader("Content-Type").getValue))
+      val first = reader.next
+      assertEquals(Multipart.decodeKey(first.header(Multipart.KeyHeader)), k1)
+      assertEquals(first.header("Content-Type"), "application/text")
+      assertNotNull(first.header("ETag"))
+      assertEquals(new String(first.content), "v1")
+      val second = reader.next
+      assertEquals(Multipart.decodeKey(second.header(Multipart.KeyHeader)), k2)
+      assertEquals(new String(second.content), "v2")
+      assertNull(reader.next)
+   }
+
+   def testPutMultipleEntries(m: Method) {
+      val boundary = Multipart.newBoundary
+      val body = new ByteArrayOutputStream
+      for (i <- 1 to 3) {
+         Multipart.writePartStart(body, boundary, (Multipart.KeyHeader, Multipart.encodeKey(m.getName + "-" + i)),
+            ("Content-Type", "application/text"))
+         body.write(("data\r\n--" + i).getBytes)
+         Multipart.writePartEnd(body)
+      }
+      Multipart.writeClose(body, boundary)
+      val post = new PostMethod(fullPath)
+      post.setRequestEntity(new ByteArrayRequestEntity(body.toByteArray, Multipart.contentType(boundary)))
+      Client.call(post)
+      assertEquals(post.getStatusCode, HttpServletResponse.SC_OK)
+      for (i <- 1 to 3) {
+         val get = Client.call(new GetMethod(fullPath + "/" + m.getName + "-" + i))
+         assertEquals(get.getResponseBodyAsString, "data\r\n--" + i)
+         assertEquals(get.getResponseHeader("Content-Type").getValue, "application/text")
+      }
+   }
+
+   def testPutMultipleEntriesWithoutKey(m: Method) {
+      val boundary = Multipart.newBoundary
+      val body = new ByteArrayOutputStream
+      Multipart.writePartStart(body, boundary, ("Content-Type", "application/text"))
+      body.write("data".getBytes)
+      Multipart.writePartEnd(body)
+      Multipart.writeClose(body, boundary)
+      val post = new PostMethod(fullPath)
+      post.setRequestEntity(new ByteArrayRequestEntity(body.toByteArray, Multipart.contentType(boundary)))
+      assertEquals(Client.call(post).getStatusCode, HttpServletResponse.SC_BAD_REQUEST)
+   }
+
    private def put(m: Method): HttpMethodBase = put(m, "data", "application/text")
 
    private def put(m: Method, data: Any): HttpMethodBase = put(m, data, "application/text")
@@ -0,0 +1,100 @@
+package org.infinispan.rest
+
+import org.apache.commons.httpclient.methods.{GetMethod, PutMethod, ByteArrayRequestEntity, InputStreamRequestEntity}
+import org.apache.commons.httpclient.{HttpClient, MultiThreadedHttpConnectionManager}
+import org.infinispan.manager.CacheContainer
+import org.infinispan.util.logging.LogFactory
+import org.testng.annotations.Test
+import org.testng.Assert._
+import java.io.{InputStream, ByteArrayInputStream}
+import java.util.concurrent.TimeUnit
+import javax.servlet.http.HttpServletResponse
+
+/**
+ * Measures the throughput of storing and retrieving 1 MB values from a number of threads, both with the length of
+ * the values known beforehand and streamed in chunks of unknown length, which the server stores in chunks either way.
+ *
+ * @since 5.0
+ */
+@Test(groups = Array("profiling"), enabled = false, testName = "rest.LargeValuePerfTest")
+class LargeValuePerfTest {
+   private val log = LogFactory.getLog(classOf[LargeValuePerfTest])
+   private val Threads = 4
+   private val OperationsPerThread = 100
+   private val Keys = 10
+   private val ValueSize = 1024 * 1024
+   private val path = "http://localhost:8888/rest/" + CacheContainer.DEFAULT_CACHE_NAME + "/perf-"
+
+   def testThroughput {
+      ServerInstance.server
+      val connectionManager = new MultiThreadedHttpConnectionManager
+      connectionManager.getParams.setDefaultMaxConnectionsPerHost(Threads)
+      val client = new HttpClient(connectionManager)
+      val value = new Array[Byte](ValueSize)
+      new java.util.Random(0).nextBytes(value)
+      try {
+         // The first round warms up
+         for (round <- 0 until 3; streamed <- List(false, true)) {
+            val report = measure(client, value, streamed)
+            if (round > 0) log.info(report)
+         }
+      } finally {
+         connectionManager.shutdown
+      }
+   }
+
+   private def measure(client: HttpClient, value: Array[Byte], streamed: Boolean): String = {
+      var putTime = 0L
+      var getTime = 0L
+      val threads = for (t <- 0 until Threads) yield new Thread {
+         override def run {
+            for (i <- 0 until OperationsPerThread) {
+               val key = path + t + "-" + (i % Keys)
+               val put = new PutMethod(key)
+               put.setRequestEntity(
+                  if (streamed) new InputStreamRequestEntity(new ByteArrayInputStream(value), "application/octet-stream")
+                  else new ByteArrayRequestEntity(value, "application/octet-stream"))
+               var begin = System.nanoTime
+               try {
+                  assertEquals(client.executeMethod(put), HttpServletResponse.SC_OK)
+               } finally {
+                  put.releaseConnection
+               }
+               val putElapsed = System.nanoTime - begin
+               val get = new GetMethod(key)
+               begin = System.nanoTime
+               try {
+                  assertEquals(client.executeMethod(get), HttpServletResponse.SC_OK)
+                  assertEquals(drain(get.getResponseBodyAsStream), value.length)
+               } finally {
+                  get.releaseConnection
+               }
+               val getElapsed = System.nanoTime - begin
+               LargeValuePerfTest.this.synchronized {
+                  putTime += putElapsed
+                  getTime += getElapsed
+               }
+            }
+         }
+      }
+      val begin = System.nanoTime
+      threads.foreach(_.start)
+      threads.foreach(_.join)
+      val elapsed = System.nanoTime - begin
+      val operations = Threads * OperationsPerThread
+      "%s 1 MB values: %d MB/s, put %d ms, get %d ms".format(if (streamed) "Streamed" else "Sized",
+         TimeUnit.SECONDS.toNanos(1) * operations * 2 / elapsed,
+         TimeUnit.NANOSECONDS.toMillis(putTime / operations), TimeUnit.NANOSECONDS.toMillis(getTime / operations))
+   }
+
+   private def drain(in: InputStream): Int = {
+      val buffer = new Array[Byte](8192)
+      var total = 0
+      var read = in.read(buffer)
+      while (read >= 0) {
+         total += read
+         read = in.read(buffer)
+      }
+      total
+   }
+}